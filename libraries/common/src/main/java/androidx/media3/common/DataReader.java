@@ -15,8 +15,11 @@
  */
 package androidx.media3.common;
 
+import static java.lang.Math.min;
+
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** Reads bytes from a data stream. */
 @UnstableApi
@@ -38,4 +41,45 @@ public interface DataReader {
    * @throws IOException If an error occurs reading from the input.
    */
   int read(byte[] buffer, int offset, int length) throws IOException;
+
+  /**
+   * Reads up to {@link ByteBuffer#remaining()} bytes of data from the input into a {@link
+   * ByteBuffer}, starting at its {@link ByteBuffer#position() position}.
+   *
+   * <p>The position of the buffer is advanced by the number of bytes read. Its limit is not
+   * modified. The return value and blocking behavior are the same as for {@link #read(byte[], int,
+   * int)}.
+   *
+   * <p>The default implementation reads into the buffer's backing array if it has one, and
+   * otherwise allocates a temporary array on each call, reads into it and copies the data into the
+   * buffer. It's only intended as a fallback for implementations that are rarely read into direct
+   * buffers. Implementations that may be read into direct buffers regularly should override this
+   * method, either to write into the buffer without the intermediate copy, for example because
+   * they read from a {@link java.nio.channels.FileChannel}, or to reuse a scratch array across
+   * calls.
+   *
+   * @param buffer The {@link ByteBuffer} into which data should be written.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the input has ended.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  default int read(ByteBuffer buffer) throws IOException {
+    if (!buffer.hasRemaining()) {
+      return 0;
+    }
+    int bytesRead;
+    if (buffer.hasArray()) {
+      bytesRead =
+          read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      if (bytesRead > 0) {
+        buffer.position(buffer.position() + bytesRead);
+      }
+    } else {
+      byte[] data = new byte[min(buffer.remaining(), 16 * 1024)];
+      bytesRead = read(data, /* offset= */ 0, data.length);
+      if (bytesRead > 0) {
+        buffer.put(data, /* offset= */ 0, bytesRead);
+      }
+    }
+    return bytesRead;
+  }
 }
@@ -65,6 +65,11 @@ import java.util.List;
  *   <li>Begin {@linkplain #queueInput(ByteBuffer) queuing input} and handling the {@linkplain
  *       #getOutput() output} in the new configuration.
  * </ul>
+ *
+ * <p>By default, consecutive active {@link StatelessAudioProcessor} instances are fused, so that
+ * they process each buffer in a single pass over arrays of samples. Their {@link
+ * AudioProcessor#queueInput(ByteBuffer)} and {@link AudioProcessor#getOutput()} methods are then
+ * not called.
  */
 @UnstableApi
 public final class AudioProcessingPipeline {
@@ -72,9 +77,18 @@ public final class AudioProcessingPipeline {
   /** The {@link AudioProcessor} instances passed to {@link AudioProcessingPipeline}. */
   private final ImmutableList<AudioProcessor> audioProcessors;
 
+  /** Whether consecutive active {@link StatelessAudioProcessor} instances are fused. */
+  private final boolean fuseStatelessAudioProcessors;
+
+  /**
+   * The {@link AudioFormat} that each of the {@link #audioProcessors} was configured with, followed
+   * by the {@link #pendingOutputAudioFormat}.
+   */
+  private ImmutableList<AudioFormat> pendingAudioFormats;
+
   /**
    * The processors that are {@linkplain AudioProcessor#isActive() active} based on the current
-   * configuration.
+   * configuration, where any fused processors are replaced by a single processor.
    */
   private final List<AudioProcessor> activeAudioProcessors;
 
@@ -99,7 +113,21 @@ public final class AudioProcessingPipeline {
    * @param audioProcessors The {@link AudioProcessor} instances to be used for processing buffers.
    */
   public AudioProcessingPipeline(ImmutableList<AudioProcessor> audioProcessors) {
+    this(audioProcessors, /* fuseStatelessAudioProcessors= */ true);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param audioProcessors The {@link AudioProcessor} instances to be used for processing buffers.
+   * @param fuseStatelessAudioProcessors Whether consecutive active {@link StatelessAudioProcessor}
+   *     instances are fused, so that they process each buffer in a single pass.
+   */
+  public AudioProcessingPipeline(
+      ImmutableList<AudioProcessor> audioProcessors, boolean fuseStatelessAudioProcessors) {
     this.audioProcessors = audioProcessors;
+    this.fuseStatelessAudioProcessors = fuseStatelessAudioProcessors;
+    pendingAudioFormats = ImmutableList.of();
     activeAudioProcessors = new ArrayList<>();
     outputBuffers = new ByteBuffer[0];
     outputAudioFormat = AudioFormat.NOT_SET;
@@ -130,9 +158,11 @@ public final class AudioProcessingPipeline {
     }
 
     AudioFormat intermediateAudioFormat = inputAudioFormat;
+    ImmutableList.Builder<AudioFormat> audioFormats = ImmutableList.builder();
 
     for (int i = 0; i < audioProcessors.size(); i++) {
       AudioProcessor audioProcessor = audioProcessors.get(i);
+      audioFormats.add(intermediateAudioFormat);
       AudioFormat nextFormat = audioProcessor.configure(intermediateAudioFormat);
       if (audioProcessor.isActive()) {
         checkState(!nextFormat.equals(AudioFormat.NOT_SET));
@@ -140,6 +170,7 @@ public final class AudioProcessingPipeline {
       }
     }
 
+    pendingAudioFormats = audioFormats.add(intermediateAudioFormat).build();
     return pendingOutputAudioFormat = intermediateAudioFormat;
   }
 
@@ -156,13 +187,27 @@ public final class AudioProcessingPipeline {
     outputAudioFormat = pendingOutputAudioFormat;
     inputEnded = false;
 
+    List<StatelessAudioProcessor> statelessAudioProcessors = new ArrayList<>();
+    List<AudioFormat> statelessAudioFormats = new ArrayList<>();
     for (int i = 0; i < audioProcessors.size(); i++) {
       AudioProcessor audioProcessor = audioProcessors.get(i);
       audioProcessor.flush();
-      if (audioProcessor.isActive()) {
-        activeAudioProcessors.add(audioProcessor);
+      if (!audioProcessor.isActive()) {
+        continue;
+      }
+      if (fuseStatelessAudioProcessors && audioProcessor instanceof StatelessAudioProcessor) {
+        if (statelessAudioProcessors.isEmpty()) {
+          statelessAudioFormats.add(pendingAudioFormats.get(i));
+        }
+        statelessAudioProcessors.add((StatelessAudioProcessor) audioProcessor);
+        // The output format of the processor is the input format of the next one.
+        statelessAudioFormats.add(pendingAudioFormats.get(i + 1));
+        continue;
       }
+      addStatelessAudioProcessors(statelessAudioProcessors, statelessAudioFormats);
+      activeAudioProcessors.add(audioProcessor);
     }
+    addStatelessAudioProcessors(statelessAudioProcessors, statelessAudioFormats);
 
     outputBuffers = new ByteBuffer[activeAudioProcessors.size()];
     for (int i = 0; i <= getFinalOutputBufferIndex(); i++) {
@@ -275,6 +320,7 @@ public final class AudioProcessingPipeline {
     outputBuffers = new ByteBuffer[0];
     outputAudioFormat = AudioFormat.NOT_SET;
     pendingOutputAudioFormat = AudioFormat.NOT_SET;
+    pendingAudioFormats = ImmutableList.of();
     inputEnded = false;
   }
 
@@ -342,6 +388,28 @@ public final class AudioProcessingPipeline {
     }
   }
 
+  /**
+   * Adds consecutive active stateless processors to {@link #activeAudioProcessors}, fused into a
+   * single processor where possible, and clears the lists.
+   */
+  private void addStatelessAudioProcessors(
+      List<StatelessAudioProcessor> statelessAudioProcessors,
+      List<AudioFormat> statelessAudioFormats) {
+    if (statelessAudioProcessors.isEmpty()) {
+      return;
+    }
+    if (FusedAudioProcessor.canFuse(
+        statelessAudioFormats.get(0),
+        statelessAudioFormats.get(statelessAudioFormats.size() - 1))) {
+      activeAudioProcessors.add(
+          FusedAudioProcessor.create(statelessAudioProcessors, statelessAudioFormats));
+    } else {
+      activeAudioProcessors.addAll(statelessAudioProcessors);
+    }
+    statelessAudioProcessors.clear();
+    statelessAudioFormats.clear();
+  }
+
   private int getFinalOutputBufferIndex() {
     return outputBuffers.length - 1;
   }
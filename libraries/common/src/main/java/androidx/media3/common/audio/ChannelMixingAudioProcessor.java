@@ -16,26 +16,33 @@
 package androidx.media3.common.audio;
 
 import static androidx.media3.common.util.Assertions.checkStateNotNull;
+import static androidx.media3.common.util.Util.constrainValue;
 
 import android.util.SparseArray;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.UnstableApi;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * An {@link AudioProcessor} that handles mixing and scaling audio channels. Call {@link
  * #putChannelMixingMatrix(ChannelMixingMatrix)} specifying mixing matrices to apply for each
- * possible input channel count before using the audio processor. Input and output are 16-bit PCM.
+ * possible input channel count before using the audio processor. Input must be 16-bit or float PCM,
+ * and output has the same encoding as the input.
  */
 @UnstableApi
-public final class ChannelMixingAudioProcessor extends BaseAudioProcessor {
+public final class ChannelMixingAudioProcessor extends BaseAudioProcessor
+    implements StatelessAudioProcessor {
 
   private final SparseArray<ChannelMixingMatrix> matrixByInputChannelCount;
 
+  private float[] channelSamples;
+
   /** Creates a new audio processor for mixing and scaling audio channels. */
   public ChannelMixingAudioProcessor() {
     matrixByInputChannelCount = new SparseArray<>();
+    channelSamples = new float[0];
   }
 
   /**
@@ -51,8 +58,8 @@ public final class ChannelMixingAudioProcessor extends BaseAudioProcessor {
   @Override
   protected AudioFormat onConfigure(AudioFormat inputAudioFormat)
       throws UnhandledAudioFormatException {
-    // TODO(b/290002731): Expand to allow float due to AudioMixingUtil built-in support for float.
-    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT) {
       throw new UnhandledAudioFormatException(inputAudioFormat);
     }
     @Nullable
@@ -68,7 +75,7 @@ public final class ChannelMixingAudioProcessor extends BaseAudioProcessor {
     return new AudioFormat(
         inputAudioFormat.sampleRate,
         channelMixingMatrix.getOutputChannelCount(),
-        C.ENCODING_PCM_16BIT);
+        inputAudioFormat.encoding);
   }
 
   @Override
@@ -89,4 +96,46 @@ public final class ChannelMixingAudioProcessor extends BaseAudioProcessor {
         /* clipFloatOutput= */ true);
     outputBuffer.flip();
   }
+
+  @Override
+  protected void onReset() {
+    channelSamples = new float[0];
+  }
+
+  @Override
+  public void processFrames(float[] input, float[] output, int frameCount) {
+    ChannelMixingMatrix channelMixingMatrix =
+        checkStateNotNull(matrixByInputChannelCount.get(inputAudioFormat.channelCount));
+    int inputChannelCount = channelMixingMatrix.getInputChannelCount();
+    int outputChannelCount = channelMixingMatrix.getOutputChannelCount();
+    boolean int16Input = inputAudioFormat.encoding == C.ENCODING_PCM_16BIT;
+    boolean int16Output = outputAudioFormat.encoding == C.ENCODING_PCM_16BIT;
+    float minValue = int16Output ? Short.MIN_VALUE : -1f;
+    float maxValue = int16Output ? Short.MAX_VALUE : 1f;
+    if (channelSamples.length < frameCount) {
+      channelSamples = new float[frameCount];
+    }
+
+    // Mix one output channel at a time, so that the sums for different frames don't depend on each
+    // other. The input channels are summed in the same order as in AudioMixingUtil, so that the
+    // output is identical.
+    for (int outputChannel = 0; outputChannel < outputChannelCount; outputChannel++) {
+      Arrays.fill(channelSamples, 0, frameCount, 0f);
+      for (int inputChannel = 0; inputChannel < inputChannelCount; inputChannel++) {
+        float coefficient = channelMixingMatrix.getMixingCoefficient(inputChannel, outputChannel);
+        if (coefficient == 0 && int16Input) {
+          // Adding zero doesn't change the sum, as 16-bit samples are finite.
+          continue;
+        }
+        for (int frame = 0; frame < frameCount; frame++) {
+          channelSamples[frame] += input[frame * inputChannelCount + inputChannel] * coefficient;
+        }
+      }
+      for (int frame = 0; frame < frameCount; frame++) {
+        float sample = constrainValue(channelSamples[frame], minValue, maxValue);
+        // 16-bit samples are truncated, as they are when they're written to a buffer.
+        output[frame * outputChannelCount + outputChannel] = int16Output ? (short) sample : sample;
+      }
+    }
+  }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.common.audio;
+
+import static java.lang.Math.max;
+
+import androidx.media3.common.C;
+import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * An {@link AudioProcessor} that applies consecutive {@link StatelessAudioProcessor} instances in a
+ * single pass over arrays of samples.
+ *
+ * <p>Input is converted to an array of float samples once, each processor writes its output to an
+ * array that's the input of the next processor, and the output of the last processor is converted
+ * to the output encoding once. The conversion loops read and write primitive arrays, so that they
+ * can be vectorized by the compiler.
+ *
+ * <p>The fused processors must have been configured and flushed by the caller, which must flush
+ * them again before they're used without this processor.
+ */
+/* package */ final class FusedAudioProcessor extends BaseAudioProcessor {
+
+  private static final double PCM_32_BIT_INT_TO_PCM_32_BIT_FLOAT_FACTOR = 1.0 / 0x7FFFFFFF;
+
+  private final ImmutableList<StatelessAudioProcessor> audioProcessors;
+  private final int[] channelCounts;
+  private final AudioFormat fusedOutputAudioFormat;
+
+  private float[] samples;
+  private float[] processedSamples;
+  private byte[] bytes;
+  private short[] shorts;
+
+  /**
+   * Returns whether the processors from {@code inputAudioFormat} to {@code outputAudioFormat} can
+   * be fused.
+   */
+  public static boolean canFuse(AudioFormat inputAudioFormat, AudioFormat outputAudioFormat) {
+    switch (inputAudioFormat.encoding) {
+      case C.ENCODING_PCM_16BIT:
+      case C.ENCODING_PCM_24BIT:
+      case C.ENCODING_PCM_24BIT_BIG_ENDIAN:
+      case C.ENCODING_PCM_32BIT:
+      case C.ENCODING_PCM_32BIT_BIG_ENDIAN:
+      case C.ENCODING_PCM_FLOAT:
+        break;
+      default:
+        return false;
+    }
+    return outputAudioFormat.encoding == C.ENCODING_PCM_16BIT
+        || outputAudioFormat.encoding == C.ENCODING_PCM_FLOAT;
+  }
+
+  /**
+   * Creates a flushed instance.
+   *
+   * @param audioProcessors The active processors to fuse, in processing order.
+   * @param audioFormats The input format of each processor, followed by the output format of the
+   *     last processor. {@link #canFuse} must be {@code true} for the first and last formats.
+   */
+  public static FusedAudioProcessor create(
+      List<StatelessAudioProcessor> audioProcessors, List<AudioFormat> audioFormats) {
+    FusedAudioProcessor fusedAudioProcessor =
+        new FusedAudioProcessor(audioProcessors, audioFormats);
+    try {
+      fusedAudioProcessor.configure(audioFormats.get(0));
+    } catch (UnhandledAudioFormatException e) {
+      // Never happens.
+      throw new IllegalStateException(e);
+    }
+    fusedAudioProcessor.flush();
+    return fusedAudioProcessor;
+  }
+
+  private FusedAudioProcessor(
+      List<StatelessAudioProcessor> audioProcessors, List<AudioFormat> audioFormats) {
+    this.audioProcessors = ImmutableList.copyOf(audioProcessors);
+    channelCounts = new int[audioFormats.size()];
+    for (int i = 0; i < channelCounts.length; i++) {
+      channelCounts[i] = audioFormats.get(i).channelCount;
+    }
+    fusedOutputAudioFormat = audioFormats.get(audioFormats.size() - 1);
+    samples = new float[0];
+    processedSamples = new float[0];
+    bytes = new byte[0];
+    shorts = new short[0];
+  }
+
+  @Override
+  protected AudioFormat onConfigure(AudioFormat inputAudioFormat) {
+    return fusedOutputAudioFormat;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int frameCount = inputBuffer.remaining() / inputAudioFormat.bytesPerFrame;
+    if (frameCount == 0) {
+      return;
+    }
+    readSamples(inputBuffer, frameCount * inputAudioFormat.channelCount);
+    for (int i = 0; i < audioProcessors.size(); i++) {
+      int outputSampleCount = frameCount * channelCounts[i + 1];
+      if (processedSamples.length < outputSampleCount) {
+        processedSamples = new float[max(outputSampleCount, samples.length)];
+      }
+      audioProcessors.get(i).processFrames(samples, processedSamples, frameCount);
+      float[] nextSamples = processedSamples;
+      processedSamples = samples;
+      samples = nextSamples;
+    }
+    writeSamples(frameCount * outputAudioFormat.channelCount);
+  }
+
+  /** Reads {@code sampleCount} samples from the input buffer into {@link #samples}. */
+  private void readSamples(ByteBuffer inputBuffer, int sampleCount) {
+    if (samples.length < sampleCount) {
+      samples = new float[sampleCount];
+    }
+    switch (inputAudioFormat.encoding) {
+      case C.ENCODING_PCM_16BIT:
+        if (shorts.length < sampleCount) {
+          shorts = new short[sampleCount];
+        }
+        inputBuffer.asShortBuffer().get(shorts, 0, sampleCount);
+        inputBuffer.position(inputBuffer.position() + sampleCount * 2);
+        for (int i = 0; i < sampleCount; i++) {
+          samples[i] = shorts[i];
+        }
+        break;
+      case C.ENCODING_PCM_FLOAT:
+        inputBuffer.asFloatBuffer().get(samples, 0, sampleCount);
+        inputBuffer.position(inputBuffer.position() + sampleCount * 4);
+        break;
+      case C.ENCODING_PCM_24BIT:
+        readBytes(inputBuffer, sampleCount * 3);
+        for (int i = 0; i < sampleCount; i++) {
+          int pcm32BitInteger =
+              ((bytes[i * 3] & 0xFF) << 8)
+                  | ((bytes[i * 3 + 1] & 0xFF) << 16)
+                  | ((bytes[i * 3 + 2] & 0xFF) << 24);
+          samples[i] = (float) (PCM_32_BIT_INT_TO_PCM_32_BIT_FLOAT_FACTOR * pcm32BitInteger);
+        }
+        break;
+      case C.ENCODING_PCM_24BIT_BIG_ENDIAN:
+        readBytes(inputBuffer, sampleCount * 3);
+        for (int i = 0; i < sampleCount; i++) {
+          int pcm32BitInteger =
+              ((bytes[i * 3 + 2] & 0xFF) << 8)
+                  | ((bytes[i * 3 + 1] & 0xFF) << 16)
+                  | ((bytes[i * 3] & 0xFF) << 24);
+          samples[i] = (float) (PCM_32_BIT_INT_TO_PCM_32_BIT_FLOAT_FACTOR * pcm32BitInteger);
+        }
+        break;
+      case C.ENCODING_PCM_32BIT:
+        readBytes(inputBuffer, sampleCount * 4);
+        for (int i = 0; i < sampleCount; i++) {
+          int pcm32BitInteger =
+              (bytes[i * 4] & 0xFF)
+                  | ((bytes[i * 4 + 1] & 0xFF) << 8)
+                  | ((bytes[i * 4 + 2] & 0xFF) << 16)
+                  | ((bytes[i * 4 + 3] & 0xFF) << 24);
+          samples[i] = (float) (PCM_32_BIT_INT_TO_PCM_32_BIT_FLOAT_FACTOR * pcm32BitInteger);
+        }
+        break;
+      case C.ENCODING_PCM_32BIT_BIG_ENDIAN:
+        readBytes(inputBuffer, sampleCount * 4);
+        for (int i = 0; i < sampleCount; i++) {
+          int pcm32BitInteger =
+              (bytes[i * 4 + 3] & 0xFF)
+                  | ((bytes[i * 4 + 2] & 0xFF) << 8)
+                  | ((bytes[i * 4 + 1] & 0xFF) << 16)
+                  | ((bytes[i * 4] & 0xFF) << 24);
+          samples[i] = (float) (PCM_32_BIT_INT_TO_PCM_32_BIT_FLOAT_FACTOR * pcm32BitInteger);
+        }
+        break;
+      default:
+        // Never happens.
+        throw new IllegalStateException();
+    }
+  }
+
+  private void readBytes(ByteBuffer inputBuffer, int length) {
+    if (bytes.length < length) {
+      bytes = new byte[length];
+    }
+    inputBuffer.get(bytes, 0, length);
+  }
+
+  /** Writes {@code sampleCount} samples from {@link #samples} to a new output buffer. */
+  private void writeSamples(int sampleCount) {
+    boolean int16Output = outputAudioFormat.encoding == C.ENCODING_PCM_16BIT;
+    int outputSize = sampleCount * (int16Output ? 2 : 4);
+    ByteBuffer outputBuffer = replaceOutputBuffer(outputSize);
+    if (int16Output) {
+      if (shorts.length < sampleCount) {
+        shorts = new short[sampleCount];
+      }
+      // The samples hold integer values in the 16-bit range.
+      for (int i = 0; i < sampleCount; i++) {
+        shorts[i] = (short) samples[i];
+      }
+      outputBuffer.asShortBuffer().put(shorts, 0, sampleCount);
+    } else {
+      outputBuffer.asFloatBuffer().put(samples, 0, sampleCount);
+    }
+    outputBuffer.position(outputSize);
+    outputBuffer.flip();
+  }
+}
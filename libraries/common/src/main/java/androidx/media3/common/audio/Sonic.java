@@ -19,6 +19,7 @@ package androidx.media3.common.audio;
 import static androidx.media3.common.util.Assertions.checkState;
 import static java.lang.Math.min;
 
+import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
 
@@ -26,29 +27,41 @@ import java.util.Arrays;
  * Sonic audio stream processor for time/pitch stretching.
  *
  * <p>Based on https://github.com/waywardgeek/sonic.
+ *
+ * <p>Audio is processed as either 16-bit integer or 32-bit float interleaved samples, with any
+ * number of channels. Float samples are time-stretched and resampled in float, and the pitch
+ * period search runs on a down-sampled copy of the input that's scaled to the 16-bit range, so
+ * that both sample types find the same pitch periods for the same audio.
  */
 /* package */ final class Sonic {
 
   private static final int MINIMUM_PITCH = 65;
   private static final int MAXIMUM_PITCH = 400;
   private static final int AMDF_FREQUENCY = 4000;
-  private static final int BYTES_PER_SAMPLE = 2;
+  private static final int BYTES_PER_INT16_SAMPLE = 2;
+  private static final int BYTES_PER_FLOAT_SAMPLE = 4;
 
   private final int inputSampleRateHz;
   private final int channelCount;
   private final float speed;
   private final float pitch;
   private final float rate;
+  private final boolean useFloatSamples;
+  private final int bytesPerSample;
   private final int minPeriod;
   private final int maxPeriod;
   private final int maxRequiredFrameCount;
   private final short[] downSampleBuffer;
 
+  // Only the 16-bit integer or the float buffers are used, depending on useFloatSamples.
   private short[] inputBuffer;
+  private float[] floatInputBuffer;
   private int inputFrameCount;
   private short[] outputBuffer;
+  private float[] floatOutputBuffer;
   private int outputFrameCount;
   private short[] pitchBuffer;
+  private float[] floatPitchBuffer;
   private int pitchFrameCount;
   private int oldRatePosition;
   private int newRatePosition;
@@ -71,7 +84,7 @@ import java.util.Arrays;
   private double accumulatedSpeedAdjustmentError;
 
   /**
-   * Creates a new Sonic audio stream processor.
+   * Creates a new Sonic audio stream processor for 16-bit integer samples.
    *
    * @param inputSampleRateHz The sample rate of input audio, in hertz.
    * @param channelCount The number of channels in the input audio.
@@ -81,18 +94,52 @@ import java.util.Arrays;
    */
   public Sonic(
       int inputSampleRateHz, int channelCount, float speed, float pitch, int outputSampleRateHz) {
+    this(
+        inputSampleRateHz,
+        channelCount,
+        speed,
+        pitch,
+        outputSampleRateHz,
+        /* useFloatSamples= */ false);
+  }
+
+  /**
+   * Creates a new Sonic audio stream processor.
+   *
+   * @param inputSampleRateHz The sample rate of input audio, in hertz.
+   * @param channelCount The number of channels in the input audio.
+   * @param speed The speedup factor for output audio.
+   * @param pitch The pitch factor for output audio.
+   * @param outputSampleRateHz The sample rate for output audio, in hertz.
+   * @param useFloatSamples Whether input and output audio have 32-bit float samples, which are
+   *     queued and read with {@link FloatBuffer FloatBuffers}, rather than 16-bit integer samples,
+   *     which are queued and read with {@link ShortBuffer ShortBuffers}.
+   */
+  public Sonic(
+      int inputSampleRateHz,
+      int channelCount,
+      float speed,
+      float pitch,
+      int outputSampleRateHz,
+      boolean useFloatSamples) {
     this.inputSampleRateHz = inputSampleRateHz;
     this.channelCount = channelCount;
     this.speed = speed;
     this.pitch = pitch;
+    this.useFloatSamples = useFloatSamples;
+    bytesPerSample = useFloatSamples ? BYTES_PER_FLOAT_SAMPLE : BYTES_PER_INT16_SAMPLE;
     rate = (float) inputSampleRateHz / outputSampleRateHz;
     minPeriod = inputSampleRateHz / MAXIMUM_PITCH;
     maxPeriod = inputSampleRateHz / MINIMUM_PITCH;
     maxRequiredFrameCount = 2 * maxPeriod;
     downSampleBuffer = new short[maxRequiredFrameCount];
-    inputBuffer = new short[maxRequiredFrameCount * channelCount];
-    outputBuffer = new short[maxRequiredFrameCount * channelCount];
-    pitchBuffer = new short[maxRequiredFrameCount * channelCount];
+    int initialSampleCount = maxRequiredFrameCount * channelCount;
+    inputBuffer = new short[useFloatSamples ? 0 : initialSampleCount];
+    outputBuffer = new short[useFloatSamples ? 0 : initialSampleCount];
+    pitchBuffer = new short[useFloatSamples ? 0 : initialSampleCount];
+    floatInputBuffer = new float[useFloatSamples ? initialSampleCount : 0];
+    floatOutputBuffer = new float[useFloatSamples ? initialSampleCount : 0];
+    floatPitchBuffer = new float[useFloatSamples ? initialSampleCount : 0];
   }
 
   /**
@@ -100,16 +147,17 @@ import java.util.Arrays;
    * data is provided.
    */
   public int getPendingInputBytes() {
-    return inputFrameCount * channelCount * BYTES_PER_SAMPLE;
+    return inputFrameCount * channelCount * bytesPerSample;
   }
 
   /**
    * Queues remaining data from {@code buffer}, and advances its position by the number of bytes
-   * consumed.
+   * consumed. Must only be called if the instance uses 16-bit integer samples.
    *
    * @param buffer A {@link ShortBuffer} containing input data between its position and limit.
    */
   public void queueInput(ShortBuffer buffer) {
+    checkState(!useFloatSamples);
     int framesToWrite = buffer.remaining() / channelCount;
     int bytesToWrite = framesToWrite * channelCount * 2;
     inputBuffer = ensureSpaceForAdditionalFrames(inputBuffer, inputFrameCount, framesToWrite);
@@ -118,13 +166,31 @@ import java.util.Arrays;
     processStreamInput();
   }
 
+  /**
+   * Queues remaining data from {@code buffer}, and advances its position by the number of samples
+   * consumed. Must only be called if the instance uses float samples.
+   *
+   * @param buffer A {@link FloatBuffer} containing input data between its position and limit.
+   */
+  public void queueInput(FloatBuffer buffer) {
+    checkState(useFloatSamples);
+    int framesToWrite = buffer.remaining() / channelCount;
+    floatInputBuffer =
+        ensureSpaceForAdditionalFrames(floatInputBuffer, inputFrameCount, framesToWrite);
+    buffer.get(floatInputBuffer, inputFrameCount * channelCount, framesToWrite * channelCount);
+    inputFrameCount += framesToWrite;
+    processStreamInput();
+  }
+
   /**
    * Gets available output, outputting to the start of {@code buffer}. The buffer's position will be
-   * advanced by the number of bytes written.
+   * advanced by the number of bytes written. Must only be called if the instance uses 16-bit
+   * integer samples.
    *
    * @param buffer A {@link ShortBuffer} into which output will be written.
    */
   public void getOutput(ShortBuffer buffer) {
+    checkState(!useFloatSamples);
     int framesToRead = min(buffer.remaining() / channelCount, outputFrameCount);
     buffer.put(outputBuffer, 0, framesToRead * channelCount);
     outputFrameCount -= framesToRead;
@@ -136,6 +202,26 @@ import java.util.Arrays;
         outputFrameCount * channelCount);
   }
 
+  /**
+   * Gets available output, outputting to the start of {@code buffer}. The buffer's position will be
+   * advanced by the number of samples written. Must only be called if the instance uses float
+   * samples.
+   *
+   * @param buffer A {@link FloatBuffer} into which output will be written.
+   */
+  public void getOutput(FloatBuffer buffer) {
+    checkState(useFloatSamples);
+    int framesToRead = min(buffer.remaining() / channelCount, outputFrameCount);
+    buffer.put(floatOutputBuffer, 0, framesToRead * channelCount);
+    outputFrameCount -= framesToRead;
+    System.arraycopy(
+        floatOutputBuffer,
+        framesToRead * channelCount,
+        floatOutputBuffer,
+        0,
+        outputFrameCount * channelCount);
+  }
+
   /**
    * Forces generating output using whatever data has been queued already. No extra delay will be
    * added to the output, but flushing in the middle of words could introduce distortion.
@@ -164,11 +250,23 @@ import java.util.Arrays;
     accumulatedSpeedAdjustmentError = 0;
 
     // Add enough silence to flush both input and pitch buffers.
-    inputBuffer =
-        ensureSpaceForAdditionalFrames(
-            inputBuffer, inputFrameCount, remainingFrameCount + 2 * maxRequiredFrameCount);
-    for (int xSample = 0; xSample < 2 * maxRequiredFrameCount * channelCount; xSample++) {
-      inputBuffer[remainingFrameCount * channelCount + xSample] = 0;
+    if (useFloatSamples) {
+      floatInputBuffer =
+          ensureSpaceForAdditionalFrames(
+              floatInputBuffer, inputFrameCount, remainingFrameCount + 2 * maxRequiredFrameCount);
+      int silenceStart = remainingFrameCount * channelCount;
+      Arrays.fill(
+          floatInputBuffer,
+          silenceStart,
+          silenceStart + 2 * maxRequiredFrameCount * channelCount,
+          /* val= */ 0f);
+    } else {
+      inputBuffer =
+          ensureSpaceForAdditionalFrames(
+              inputBuffer, inputFrameCount, remainingFrameCount + 2 * maxRequiredFrameCount);
+      for (int xSample = 0; xSample < 2 * maxRequiredFrameCount * channelCount; xSample++) {
+        inputBuffer[remainingFrameCount * channelCount + xSample] = 0;
+      }
     }
     inputFrameCount += 2 * maxRequiredFrameCount;
     processStreamInput();
@@ -197,9 +295,12 @@ import java.util.Arrays;
     accumulatedSpeedAdjustmentError = 0;
   }
 
-  /** Returns the size of output that can be read with {@link #getOutput(ShortBuffer)}, in bytes. */
+  /**
+   * Returns the size of output that can be read with {@link #getOutput(ShortBuffer)} or {@link
+   * #getOutput(FloatBuffer)}, in bytes.
+   */
   public int getOutputSize() {
-    return outputFrameCount * channelCount * BYTES_PER_SAMPLE;
+    return outputFrameCount * channelCount * bytesPerSample;
   }
 
   // Internal methods.
@@ -225,41 +326,97 @@ import java.util.Arrays;
     }
   }
 
+  /**
+   * Returns {@code buffer} or a copy of it, such that there is enough space in the returned buffer
+   * to store {@code newFrameCount} additional frames.
+   *
+   * @see #ensureSpaceForAdditionalFrames(short[], int, int)
+   */
+  private float[] ensureSpaceForAdditionalFrames(
+      float[] buffer, int frameCount, int additionalFrameCount) {
+    int currentCapacityFrames = buffer.length / channelCount;
+    if (frameCount + additionalFrameCount <= currentCapacityFrames) {
+      return buffer;
+    } else {
+      int newCapacityFrames = 3 * currentCapacityFrames / 2 + additionalFrameCount;
+      return Arrays.copyOf(buffer, newCapacityFrames * channelCount);
+    }
+  }
+
   private void removeProcessedInputFrames(int positionFrames) {
     int remainingFrames = inputFrameCount - positionFrames;
-    System.arraycopy(
-        inputBuffer, positionFrames * channelCount, inputBuffer, 0, remainingFrames * channelCount);
+    if (useFloatSamples) {
+      System.arraycopy(
+          floatInputBuffer,
+          positionFrames * channelCount,
+          floatInputBuffer,
+          0,
+          remainingFrames * channelCount);
+    } else {
+      System.arraycopy(
+          inputBuffer,
+          positionFrames * channelCount,
+          inputBuffer,
+          0,
+          remainingFrames * channelCount);
+    }
     inputFrameCount = remainingFrames;
   }
 
-  private void copyToOutput(short[] samples, int positionFrames, int frameCount) {
-    outputBuffer = ensureSpaceForAdditionalFrames(outputBuffer, outputFrameCount, frameCount);
-    System.arraycopy(
-        samples,
-        positionFrames * channelCount,
-        outputBuffer,
-        outputFrameCount * channelCount,
-        frameCount * channelCount);
+  private void copyToOutput(int positionFrames, int frameCount) {
+    if (useFloatSamples) {
+      floatOutputBuffer =
+          ensureSpaceForAdditionalFrames(floatOutputBuffer, outputFrameCount, frameCount);
+      System.arraycopy(
+          floatInputBuffer,
+          positionFrames * channelCount,
+          floatOutputBuffer,
+          outputFrameCount * channelCount,
+          frameCount * channelCount);
+    } else {
+      outputBuffer = ensureSpaceForAdditionalFrames(outputBuffer, outputFrameCount, frameCount);
+      System.arraycopy(
+          inputBuffer,
+          positionFrames * channelCount,
+          outputBuffer,
+          outputFrameCount * channelCount,
+          frameCount * channelCount);
+    }
     outputFrameCount += frameCount;
   }
 
   private int copyInputToOutput(int positionFrames) {
     int frameCount = min(maxRequiredFrameCount, remainingInputToCopyFrameCount);
-    copyToOutput(inputBuffer, positionFrames, frameCount);
+    copyToOutput(positionFrames, frameCount);
     remainingInputToCopyFrameCount -= frameCount;
     return frameCount;
   }
 
-  private void downSampleInput(short[] samples, int position, int skip) {
+  private void downSampleInput(int position, int skip) {
     // If skip is greater than one, average skip samples together and write them to the down-sample
     // buffer. If channelCount is greater than one, mix the channels together as we down sample.
+    // Float samples are scaled to the 16-bit range, so that the pitch period search finds the same
+    // period for both sample types.
     int frameCount = maxRequiredFrameCount / skip;
     int samplesPerValue = channelCount * skip;
     position *= channelCount;
+    if (useFloatSamples) {
+      float scale = 32768f / samplesPerValue;
+      for (int i = 0; i < frameCount; i++) {
+        float value = 0;
+        int samplePosition = position + i * samplesPerValue;
+        for (int j = 0; j < samplesPerValue; j++) {
+          value += floatInputBuffer[samplePosition + j];
+        }
+        downSampleBuffer[i] = toInt16Sample(value * scale);
+      }
+      return;
+    }
     for (int i = 0; i < frameCount; i++) {
       int value = 0;
+      int samplePosition = position + i * samplesPerValue;
       for (int j = 0; j < samplesPerValue; j++) {
-        value += samples[position + i * samplesPerValue + j];
+        value += inputBuffer[samplePosition + j];
       }
       value /= samplesPerValue;
       downSampleBuffer[i] = (short) value;
@@ -317,7 +474,7 @@ import java.util.Arrays;
     return true;
   }
 
-  private int findPitchPeriod(short[] samples, int position) {
+  private int findPitchPeriod(int position) {
     // Find the pitch period. This is a critical step, and we may have to try multiple ways to get a
     // good answer. This version uses AMDF. To improve speed, we down sample by an integer factor
     // get in the 11 kHz range, and then do it again with a narrower frequency range without down
@@ -325,10 +482,11 @@ import java.util.Arrays;
     int period;
     int retPeriod;
     int skip = inputSampleRateHz > AMDF_FREQUENCY ? inputSampleRateHz / AMDF_FREQUENCY : 1;
-    if (channelCount == 1 && skip == 1) {
-      period = findPitchPeriodInRange(samples, position, minPeriod, maxPeriod);
+    boolean searchInputDirectly = channelCount == 1 && !useFloatSamples;
+    if (searchInputDirectly && skip == 1) {
+      period = findPitchPeriodInRange(inputBuffer, position, minPeriod, maxPeriod);
     } else {
-      downSampleInput(samples, position, skip);
+      downSampleInput(position, skip);
       period = findPitchPeriodInRange(downSampleBuffer, 0, minPeriod / skip, maxPeriod / skip);
       if (skip != 1) {
         period *= skip;
@@ -340,10 +498,10 @@ import java.util.Arrays;
         if (maxP > maxPeriod) {
           maxP = maxPeriod;
         }
-        if (channelCount == 1) {
-          period = findPitchPeriodInRange(samples, position, minP, maxP);
+        if (searchInputDirectly) {
+          period = findPitchPeriodInRange(inputBuffer, position, minP, maxP);
         } else {
-          downSampleInput(samples, position, 1);
+          downSampleInput(position, 1);
           period = findPitchPeriodInRange(downSampleBuffer, 0, minP, maxP);
         }
       }
@@ -360,13 +518,24 @@ import java.util.Arrays;
 
   private void moveNewSamplesToPitchBuffer(int originalOutputFrameCount) {
     int frameCount = outputFrameCount - originalOutputFrameCount;
-    pitchBuffer = ensureSpaceForAdditionalFrames(pitchBuffer, pitchFrameCount, frameCount);
-    System.arraycopy(
-        outputBuffer,
-        originalOutputFrameCount * channelCount,
-        pitchBuffer,
-        pitchFrameCount * channelCount,
-        frameCount * channelCount);
+    if (useFloatSamples) {
+      floatPitchBuffer =
+          ensureSpaceForAdditionalFrames(floatPitchBuffer, pitchFrameCount, frameCount);
+      System.arraycopy(
+          floatOutputBuffer,
+          originalOutputFrameCount * channelCount,
+          floatPitchBuffer,
+          pitchFrameCount * channelCount,
+          frameCount * channelCount);
+    } else {
+      pitchBuffer = ensureSpaceForAdditionalFrames(pitchBuffer, pitchFrameCount, frameCount);
+      System.arraycopy(
+          outputBuffer,
+          originalOutputFrameCount * channelCount,
+          pitchBuffer,
+          pitchFrameCount * channelCount,
+          frameCount * channelCount);
+    }
     outputFrameCount = originalOutputFrameCount;
     pitchFrameCount += frameCount;
   }
@@ -375,12 +544,21 @@ import java.util.Arrays;
     if (frameCount == 0) {
       return;
     }
-    System.arraycopy(
-        pitchBuffer,
-        frameCount * channelCount,
-        pitchBuffer,
-        0,
-        (pitchFrameCount - frameCount) * channelCount);
+    if (useFloatSamples) {
+      System.arraycopy(
+          floatPitchBuffer,
+          frameCount * channelCount,
+          floatPitchBuffer,
+          0,
+          (pitchFrameCount - frameCount) * channelCount);
+    } else {
+      System.arraycopy(
+          pitchBuffer,
+          frameCount * channelCount,
+          pitchBuffer,
+          0,
+          (pitchFrameCount - frameCount) * channelCount);
+    }
     pitchFrameCount -= frameCount;
   }
 
@@ -395,6 +573,17 @@ import java.util.Arrays;
     return (short) ((ratio * left + (width - ratio) * right) / width);
   }
 
+  private float interpolate(float[] in, int inPos, long oldSampleRate, long newSampleRate) {
+    float left = in[inPos];
+    float right = in[inPos + channelCount];
+    long position = newRatePosition * oldSampleRate;
+    long leftPosition = oldRatePosition * newSampleRate;
+    long rightPosition = (oldRatePosition + 1) * newSampleRate;
+    long ratio = rightPosition - position;
+    long width = rightPosition - leftPosition;
+    return (ratio * left + (width - ratio) * right) / width;
+  }
+
   private void adjustRate(float rate, int originalOutputFrameCount) {
     if (outputFrameCount == originalOutputFrameCount) {
       return;
@@ -417,12 +606,23 @@ import java.util.Arrays;
     for (int position = 0; position < pitchFrameCount - 1; position++) {
       // Cast to long to avoid overflow.
       while ((oldRatePosition + 1) * newSampleRate > newRatePosition * oldSampleRate) {
-        outputBuffer =
-            ensureSpaceForAdditionalFrames(
-                outputBuffer, outputFrameCount, /* additionalFrameCount= */ 1);
-        for (int i = 0; i < channelCount; i++) {
-          outputBuffer[outputFrameCount * channelCount + i] =
-              interpolate(pitchBuffer, position * channelCount + i, oldSampleRate, newSampleRate);
+        if (useFloatSamples) {
+          floatOutputBuffer =
+              ensureSpaceForAdditionalFrames(
+                  floatOutputBuffer, outputFrameCount, /* additionalFrameCount= */ 1);
+          for (int i = 0; i < channelCount; i++) {
+            floatOutputBuffer[outputFrameCount * channelCount + i] =
+                interpolate(
+                    floatPitchBuffer, position * channelCount + i, oldSampleRate, newSampleRate);
+          }
+        } else {
+          outputBuffer =
+              ensureSpaceForAdditionalFrames(
+                  outputBuffer, outputFrameCount, /* additionalFrameCount= */ 1);
+          for (int i = 0; i < channelCount; i++) {
+            outputBuffer[outputFrameCount * channelCount + i] =
+                interpolate(pitchBuffer, position * channelCount + i, oldSampleRate, newSampleRate);
+          }
         }
         newRatePosition++;
         outputFrameCount++;
@@ -437,7 +637,7 @@ import java.util.Arrays;
     removePitchFrames(pitchFrameCount - 1);
   }
 
-  private int skipPitchPeriod(short[] samples, int position, double speed, int period) {
+  private int skipPitchPeriod(int position, double speed, int period) {
     // Skip over a pitch period, and copy period/speed samples to the output.
     int newFrameCount;
     if (speed >= 2.0f) {
@@ -451,21 +651,35 @@ import java.util.Arrays;
       remainingInputToCopyFrameCount = (int) Math.round(expectedInputToCopy);
       accumulatedSpeedAdjustmentError = expectedInputToCopy - remainingInputToCopyFrameCount;
     }
-    outputBuffer = ensureSpaceForAdditionalFrames(outputBuffer, outputFrameCount, newFrameCount);
-    overlapAdd(
-        newFrameCount,
-        channelCount,
-        outputBuffer,
-        outputFrameCount,
-        samples,
-        position,
-        samples,
-        position + period);
+    if (useFloatSamples) {
+      floatOutputBuffer =
+          ensureSpaceForAdditionalFrames(floatOutputBuffer, outputFrameCount, newFrameCount);
+      overlapAdd(
+          newFrameCount,
+          channelCount,
+          floatOutputBuffer,
+          outputFrameCount,
+          floatInputBuffer,
+          position,
+          floatInputBuffer,
+          position + period);
+    } else {
+      outputBuffer = ensureSpaceForAdditionalFrames(outputBuffer, outputFrameCount, newFrameCount);
+      overlapAdd(
+          newFrameCount,
+          channelCount,
+          outputBuffer,
+          outputFrameCount,
+          inputBuffer,
+          position,
+          inputBuffer,
+          position + period);
+    }
     outputFrameCount += newFrameCount;
     return newFrameCount;
   }
 
-  private int insertPitchPeriod(short[] samples, int position, double speed, int period) {
+  private int insertPitchPeriod(int position, double speed, int period) {
     // Insert a pitch period, and determine how much input to copy directly.
     int newFrameCount;
     if (speed < 0.5f) {
@@ -479,23 +693,44 @@ import java.util.Arrays;
       remainingInputToCopyFrameCount = (int) Math.round(expectedInputToCopy);
       accumulatedSpeedAdjustmentError = expectedInputToCopy - remainingInputToCopyFrameCount;
     }
-    outputBuffer =
-        ensureSpaceForAdditionalFrames(outputBuffer, outputFrameCount, period + newFrameCount);
-    System.arraycopy(
-        samples,
-        position * channelCount,
-        outputBuffer,
-        outputFrameCount * channelCount,
-        period * channelCount);
-    overlapAdd(
-        newFrameCount,
-        channelCount,
-        outputBuffer,
-        outputFrameCount + period,
-        samples,
-        position + period,
-        samples,
-        position);
+    if (useFloatSamples) {
+      floatOutputBuffer =
+          ensureSpaceForAdditionalFrames(
+              floatOutputBuffer, outputFrameCount, period + newFrameCount);
+      System.arraycopy(
+          floatInputBuffer,
+          position * channelCount,
+          floatOutputBuffer,
+          outputFrameCount * channelCount,
+          period * channelCount);
+      overlapAdd(
+          newFrameCount,
+          channelCount,
+          floatOutputBuffer,
+          outputFrameCount + period,
+          floatInputBuffer,
+          position + period,
+          floatInputBuffer,
+          position);
+    } else {
+      outputBuffer =
+          ensureSpaceForAdditionalFrames(outputBuffer, outputFrameCount, period + newFrameCount);
+      System.arraycopy(
+          inputBuffer,
+          position * channelCount,
+          outputBuffer,
+          outputFrameCount * channelCount,
+          period * channelCount);
+      overlapAdd(
+          newFrameCount,
+          channelCount,
+          outputBuffer,
+          outputFrameCount + period,
+          inputBuffer,
+          position + period,
+          inputBuffer,
+          position);
+    }
     outputFrameCount += period + newFrameCount;
     return newFrameCount;
   }
@@ -510,11 +745,11 @@ import java.util.Arrays;
       if (remainingInputToCopyFrameCount > 0) {
         positionFrames += copyInputToOutput(positionFrames);
       } else {
-        int period = findPitchPeriod(inputBuffer, positionFrames);
+        int period = findPitchPeriod(positionFrames);
         if (speed > 1.0) {
-          positionFrames += period + skipPitchPeriod(inputBuffer, positionFrames, speed, period);
+          positionFrames += period + skipPitchPeriod(positionFrames, speed, period);
         } else {
-          positionFrames += insertPitchPeriod(inputBuffer, positionFrames, speed, period);
+          positionFrames += insertPitchPeriod(positionFrames, speed, period);
         }
       }
     } while (positionFrames + maxRequiredFrameCount <= frameCount);
@@ -529,7 +764,7 @@ import java.util.Arrays;
     if (s > 1.00001 || s < 0.99999) {
       changeSpeed(s);
     } else {
-      copyToOutput(inputBuffer, 0, inputFrameCount);
+      copyToOutput(/* positionFrames= */ 0, inputFrameCount);
       inputFrameCount = 0;
     }
     if (r != 1.0f) {
@@ -558,4 +793,38 @@ import java.util.Arrays;
       }
     }
   }
+
+  private static void overlapAdd(
+      int frameCount,
+      int channelCount,
+      float[] out,
+      int outPosition,
+      float[] rampDown,
+      int rampDownPosition,
+      float[] rampUp,
+      int rampUpPosition) {
+    float weightPerFrame = 1f / frameCount;
+    for (int i = 0; i < channelCount; i++) {
+      int o = outPosition * channelCount + i;
+      int u = rampUpPosition * channelCount + i;
+      int d = rampDownPosition * channelCount + i;
+      for (int t = 0; t < frameCount; t++) {
+        float rampUpWeight = t * weightPerFrame;
+        out[o] = rampDown[d] * (1 - rampUpWeight) + rampUp[u] * rampUpWeight;
+        o += channelCount;
+        d += channelCount;
+        u += channelCount;
+      }
+    }
+  }
+
+  /** Returns a sample in the range of 16-bit integer samples, clamping it if necessary. */
+  private static short toInt16Sample(float sample) {
+    if (sample >= Short.MAX_VALUE) {
+      return Short.MAX_VALUE;
+    } else if (sample <= Short.MIN_VALUE) {
+      return Short.MIN_VALUE;
+    }
+    return (short) sample;
+  }
 }
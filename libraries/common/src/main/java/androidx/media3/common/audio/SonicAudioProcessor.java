@@ -24,10 +24,14 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
 /**
  * An {@link AudioProcessor} that uses the Sonic library to modify audio speed/pitch/sample rate.
+ *
+ * <p>Input must be {@link C#ENCODING_PCM_16BIT 16-bit integer} or {@link C#ENCODING_PCM_FLOAT
+ * float} PCM, with any number of channels. The output has the same encoding as the input.
  */
 @UnstableApi
 public class SonicAudioProcessor implements AudioProcessor {
@@ -57,6 +61,7 @@ public class SonicAudioProcessor implements AudioProcessor {
   @Nullable private Sonic sonic;
   private ByteBuffer buffer;
   private ShortBuffer shortBuffer;
+  private FloatBuffer floatBuffer;
   private ByteBuffer outputBuffer;
   private long inputBytes;
   private long outputBytes;
@@ -72,6 +77,7 @@ public class SonicAudioProcessor implements AudioProcessor {
     outputAudioFormat = AudioFormat.NOT_SET;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
+    floatBuffer = buffer.asFloatBuffer();
     outputBuffer = EMPTY_BUFFER;
     pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
   }
@@ -179,7 +185,8 @@ public class SonicAudioProcessor implements AudioProcessor {
   @Override
   public final AudioFormat configure(AudioFormat inputAudioFormat)
       throws UnhandledAudioFormatException {
-    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT) {
       throw new UnhandledAudioFormatException(inputAudioFormat);
     }
     int outputSampleRateHz =
@@ -188,7 +195,8 @@ public class SonicAudioProcessor implements AudioProcessor {
             : pendingOutputSampleRate;
     pendingInputAudioFormat = inputAudioFormat;
     pendingOutputAudioFormat =
-        new AudioFormat(outputSampleRateHz, inputAudioFormat.channelCount, C.ENCODING_PCM_16BIT);
+        new AudioFormat(
+            outputSampleRateHz, inputAudioFormat.channelCount, inputAudioFormat.encoding);
     pendingSonicRecreation = true;
     return pendingOutputAudioFormat;
   }
@@ -207,10 +215,13 @@ public class SonicAudioProcessor implements AudioProcessor {
       return;
     }
     Sonic sonic = checkNotNull(this.sonic);
-    ShortBuffer shortBuffer = inputBuffer.asShortBuffer();
     int inputSize = inputBuffer.remaining();
     inputBytes += inputSize;
-    sonic.queueInput(shortBuffer);
+    if (inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+      sonic.queueInput(inputBuffer.asFloatBuffer());
+    } else {
+      sonic.queueInput(inputBuffer.asShortBuffer());
+    }
     inputBuffer.position(inputBuffer.position() + inputSize);
   }
 
@@ -232,11 +243,17 @@ public class SonicAudioProcessor implements AudioProcessor {
         if (buffer.capacity() < outputSize) {
           buffer = ByteBuffer.allocateDirect(outputSize).order(ByteOrder.nativeOrder());
           shortBuffer = buffer.asShortBuffer();
+          floatBuffer = buffer.asFloatBuffer();
         } else {
           buffer.clear();
           shortBuffer.clear();
+          floatBuffer.clear();
+        }
+        if (outputAudioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+          sonic.getOutput(floatBuffer);
+        } else {
+          sonic.getOutput(shortBuffer);
         }
-        sonic.getOutput(shortBuffer);
         outputBytes += outputSize;
         buffer.limit(outputSize);
         outputBuffer = buffer;
@@ -264,7 +281,8 @@ public class SonicAudioProcessor implements AudioProcessor {
                 inputAudioFormat.channelCount,
                 speed,
                 pitch,
-                outputAudioFormat.sampleRate);
+                outputAudioFormat.sampleRate,
+                /* useFloatSamples= */ inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT);
       } else if (sonic != null) {
         sonic.flush();
       }
@@ -285,6 +303,7 @@ public class SonicAudioProcessor implements AudioProcessor {
     outputAudioFormat = AudioFormat.NOT_SET;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
+    floatBuffer = buffer.asFloatBuffer();
     outputBuffer = EMPTY_BUFFER;
     pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
     pendingSonicRecreation = false;
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.common.audio;
+
+import androidx.media3.common.util.UnstableApi;
+
+/**
+ * An {@link AudioProcessor} that outputs one frame for each input frame, and processes each frame
+ * independently of all other frames.
+ *
+ * <p>An {@link AudioProcessingPipeline} fuses consecutive active stateless audio processors, so
+ * that they process audio in a single pass over arrays of samples using {@link #processFrames},
+ * instead of each writing its output to a {@link java.nio.ByteBuffer} that's read by the next one.
+ *
+ * <p>The arrays hold interleaved samples as floats. Samples with encoding {@link
+ * androidx.media3.common.C#ENCODING_PCM_16BIT} are represented by their integer value, and samples
+ * with any other encoding by their value in the range [-1.0, 1.0], as in {@link
+ * androidx.media3.common.C#ENCODING_PCM_FLOAT}. The output of {@link #processFrames} must be
+ * identical to the output of {@link #queueInput} for the same input.
+ */
+@UnstableApi
+public interface StatelessAudioProcessor extends AudioProcessor {
+
+  /**
+   * Processes frames of audio in the configuration that was applied by the last call to {@link
+   * #flush()}.
+   *
+   * @param input The input samples, holding {@code frameCount} frames in the input format.
+   * @param output The array to write output samples to, with room for {@code frameCount} frames in
+   *     the output format.
+   * @param frameCount The number of frames to process.
+   */
+  void processFrames(float[] input, float[] output, int frameCount);
+}
@@ -26,6 +26,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -254,6 +255,182 @@ public final class AudioProcessingPipelineTest {
     assertThat(bytesOutput.get(12)).isEqualTo((byte) 0);
   }
 
+  @Test
+  public void consecutiveStatelessAudioProcessors_areFusedIntoSinglePass() throws Exception {
+    FakeGainAudioProcessor audioProcessorOne = new FakeGainAudioProcessor();
+    FakeGainAudioProcessor audioProcessorTwo = new FakeGainAudioProcessor();
+    AudioProcessingPipeline audioProcessingPipeline =
+        new AudioProcessingPipeline(ImmutableList.of(audioProcessorOne, audioProcessorTwo));
+    audioProcessingPipeline.configure(AUDIO_FORMAT);
+    audioProcessingPipeline.flush();
+
+    audioProcessingPipeline.queueInput(createInt16Buffer(new short[] {1, -2, 3, -4}));
+    ByteBuffer outputBuffer = audioProcessingPipeline.getOutput();
+
+    assertThat(createInt16Array(outputBuffer)).isEqualTo(new short[] {4, -8, 12, -16});
+    assertThat(audioProcessorOne.processedFrameCount).isEqualTo(2);
+    assertThat(audioProcessorTwo.processedFrameCount).isEqualTo(2);
+    assertThat(audioProcessorOne.queueInputCount).isEqualTo(0);
+    assertThat(audioProcessorTwo.queueInputCount).isEqualTo(0);
+  }
+
+  @Test
+  public void fuseStatelessAudioProcessorsDisabled_queuesInputToEachProcessor() throws Exception {
+    FakeGainAudioProcessor audioProcessorOne = new FakeGainAudioProcessor();
+    FakeGainAudioProcessor audioProcessorTwo = new FakeGainAudioProcessor();
+    AudioProcessingPipeline audioProcessingPipeline =
+        new AudioProcessingPipeline(
+            ImmutableList.of(audioProcessorOne, audioProcessorTwo),
+            /* fuseStatelessAudioProcessors= */ false);
+    audioProcessingPipeline.configure(AUDIO_FORMAT);
+    audioProcessingPipeline.flush();
+
+    audioProcessingPipeline.queueInput(createInt16Buffer(new short[] {1, -2, 3, -4}));
+    ByteBuffer outputBuffer = audioProcessingPipeline.getOutput();
+
+    assertThat(createInt16Array(outputBuffer)).isEqualTo(new short[] {4, -8, 12, -16});
+    assertThat(audioProcessorOne.processedFrameCount).isEqualTo(0);
+    assertThat(audioProcessorTwo.processedFrameCount).isEqualTo(0);
+    assertThat(audioProcessorOne.queueInputCount).isGreaterThan(0);
+    assertThat(audioProcessorTwo.queueInputCount).isGreaterThan(0);
+  }
+
+  @Test
+  public void fusedChannelMixing_outputMatchesUnfusedOutput() throws Exception {
+    for (@C.PcmEncoding int encoding : new int[] {C.ENCODING_PCM_16BIT, C.ENCODING_PCM_FLOAT}) {
+      AudioFormat inputAudioFormat =
+          new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 6, encoding);
+      ByteBuffer inputBuffer = createRandomBuffer(inputAudioFormat, /* frameCount= */ 1000);
+
+      ByteBuffer fusedOutput =
+          processToEnd(
+              createDownmixingPipeline(/* fuseStatelessAudioProcessors= */ true),
+              inputAudioFormat,
+              inputBuffer.duplicate().order(ByteOrder.nativeOrder()));
+      ByteBuffer unfusedOutput =
+          processToEnd(
+              createDownmixingPipeline(/* fuseStatelessAudioProcessors= */ false),
+              inputAudioFormat,
+              inputBuffer.duplicate().order(ByteOrder.nativeOrder()));
+
+      assertThat(fusedOutput.remaining()).isEqualTo(1000 * inputAudioFormat.bytesPerFrame / 6);
+      assertThat(fusedOutput).isEqualTo(unfusedOutput);
+    }
+  }
+
+  /**
+   * Creates a pipeline that downmixes six channels to stereo and then to mono, with an audio
+   * processor that isn't stateless between the two downmixing processors.
+   */
+  private static AudioProcessingPipeline createDownmixingPipeline(
+      boolean fuseStatelessAudioProcessors) {
+    ChannelMixingAudioProcessor sixToStereoAudioProcessor = new ChannelMixingAudioProcessor();
+    sixToStereoAudioProcessor.putChannelMixingMatrix(
+        new ChannelMixingMatrix(
+            /* inputChannelCount= */ 6,
+            /* outputChannelCount= */ 2,
+            new float[] {1, 0, 0, 1, 0.7f, 0.7f, 0.3f, 0.3f, 0.7f, 0, 0, 0.7f}));
+    ChannelMixingAudioProcessor stereoToMonoAudioProcessor = new ChannelMixingAudioProcessor();
+    stereoToMonoAudioProcessor.putChannelMixingMatrix(
+        ChannelMixingMatrix.create(/* inputChannelCount= */ 2, /* outputChannelCount= */ 1));
+    ChannelMixingAudioProcessor monoAudioProcessor = new ChannelMixingAudioProcessor();
+    monoAudioProcessor.putChannelMixingMatrix(
+        ChannelMixingMatrix.create(/* inputChannelCount= */ 1, /* outputChannelCount= */ 1)
+            .scaleBy(0.9f));
+    return new AudioProcessingPipeline(
+        ImmutableList.of(
+            sixToStereoAudioProcessor,
+            new FakeAudioProcessor(/* active= */ true),
+            stereoToMonoAudioProcessor,
+            monoAudioProcessor),
+        fuseStatelessAudioProcessors);
+  }
+
+  private static ByteBuffer processToEnd(
+      AudioProcessingPipeline audioProcessingPipeline,
+      AudioFormat inputAudioFormat,
+      ByteBuffer inputBuffer)
+      throws Exception {
+    audioProcessingPipeline.configure(inputAudioFormat);
+    audioProcessingPipeline.flush();
+    ByteBuffer output = ByteBuffer.allocate(inputBuffer.remaining());
+    while (!audioProcessingPipeline.isEnded()) {
+      output.put(audioProcessingPipeline.getOutput());
+      if (inputBuffer.hasRemaining()) {
+        // Queue input in small buffers, so that the processors are applied several times.
+        int limit = inputBuffer.limit();
+        int maxInputSize = 100 * inputAudioFormat.bytesPerFrame;
+        inputBuffer.limit(min(limit, inputBuffer.position() + maxInputSize));
+        audioProcessingPipeline.queueInput(inputBuffer);
+        inputBuffer.limit(limit);
+      } else {
+        audioProcessingPipeline.queueEndOfStream();
+      }
+    }
+    output.flip();
+    return output;
+  }
+
+  private static ByteBuffer createRandomBuffer(AudioFormat audioFormat, int frameCount) {
+    Random random = new Random(/* seed= */ 0);
+    ByteBuffer buffer =
+        ByteBuffer.allocateDirect(frameCount * audioFormat.bytesPerFrame)
+            .order(ByteOrder.nativeOrder());
+    for (int i = 0; i < frameCount * audioFormat.channelCount; i++) {
+      if (audioFormat.encoding == C.ENCODING_PCM_16BIT) {
+        buffer.putShort((short) random.nextInt());
+      } else {
+        buffer.putFloat(random.nextFloat() * 2 - 1);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer createInt16Buffer(short[] samples) {
+    ByteBuffer buffer =
+        ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+    buffer.asShortBuffer().put(samples);
+    return buffer;
+  }
+
+  private static short[] createInt16Array(ByteBuffer buffer) {
+    short[] samples = new short[buffer.remaining() / 2];
+    buffer.asShortBuffer().get(samples);
+    return samples;
+  }
+
+  /** A stateless 16-bit audio processor that doubles the value of samples. */
+  private static final class FakeGainAudioProcessor extends BaseAudioProcessor
+      implements StatelessAudioProcessor {
+
+    public int queueInputCount;
+    public int processedFrameCount;
+
+    @Override
+    protected AudioFormat onConfigure(AudioFormat inputAudioFormat) {
+      return inputAudioFormat;
+    }
+
+    @Override
+    public void queueInput(ByteBuffer inputBuffer) {
+      queueInputCount++;
+      ByteBuffer outputBuffer = replaceOutputBuffer(inputBuffer.remaining());
+      while (inputBuffer.hasRemaining()) {
+        outputBuffer.putShort((short) (inputBuffer.getShort() * 2));
+      }
+      outputBuffer.flip();
+    }
+
+    @Override
+    public void processFrames(float[] input, float[] output, int frameCount) {
+      processedFrameCount += frameCount;
+      for (int i = 0; i < frameCount * inputAudioFormat.channelCount; i++) {
+        output[i] = input[i] * 2;
+      }
+    }
+  }
+
   private static class FakeAudioProcessor extends BaseAudioProcessor {
     private final int maxInputBytesAtOnce;
     private final boolean duplicateBytes;
@@ -155,6 +155,18 @@ public final class ChannelMixingAudioProcessorTest {
     assertThat(audioProcessor.getOutput()).isEqualTo(getByteBufferFromShortValues(32767, 0, 16383));
   }
 
+  @Test
+  public void stereoToMonoMixingMatrix_floatInput_outputIsMonoFloat() throws Exception {
+    AudioFormat outputAudioFormat =
+        audioProcessor.configure(
+            new AudioFormat(/* sampleRate= */ 48000, /* channelCount= */ 2, C.ENCODING_PCM_FLOAT));
+    audioProcessor.flush();
+    audioProcessor.queueInput(getByteBufferFromFloatValues(0f, 0f, 0.5f, 0.25f, 1f, 1f));
+
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_FLOAT);
+    assertThat(audioProcessor.getOutput()).isEqualTo(getByteBufferFromFloatValues(0f, 0.375f, 1f));
+  }
+
   private static ByteBuffer getByteBufferFromShortValues(int... values) {
     ByteBuffer buffer = ByteBuffer.allocateDirect(values.length * 2).order(ByteOrder.nativeOrder());
     for (int s : values) {
@@ -163,4 +175,13 @@ public final class ChannelMixingAudioProcessorTest {
     buffer.rewind();
     return buffer;
   }
+
+  private static ByteBuffer getByteBufferFromFloatValues(float... values) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder());
+    for (float f : values) {
+      buffer.putFloat(f);
+    }
+    buffer.rewind();
+    return buffer;
+  }
 }
@@ -16,12 +16,15 @@
 package androidx.media3.common.audio;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
 import static org.junit.Assert.fail;
 
 import androidx.media3.common.C;
 import androidx.media3.common.audio.AudioProcessor.AudioFormat;
 import androidx.media3.common.audio.AudioProcessor.UnhandledAudioFormatException;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -91,6 +94,55 @@ public final class SonicAudioProcessorTest {
     assertThat(sonicAudioProcessor.isActive()).isFalse();
   }
 
+  @Test
+  public void configure_floatInput_outputsFloat() throws Exception {
+    sonicAudioProcessor.setOutputSampleRateHz(48000);
+
+    AudioFormat outputAudioFormat =
+        sonicAudioProcessor.configure(
+            new AudioFormat(
+                /* sampleRate= */ 44100,
+                /* channelCount= */ 6,
+                /* encoding= */ C.ENCODING_PCM_FLOAT));
+
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_FLOAT);
+    assertThat(outputAudioFormat.channelCount).isEqualTo(6);
+    assertThat(outputAudioFormat.sampleRate).isEqualTo(48000);
+  }
+
+  @Test
+  public void queueInput_floatInputWithSpeedChange_outputsFloatSamples() throws Exception {
+    sonicAudioProcessor.setSpeed(2f);
+    AudioFormat audioFormat =
+        new AudioFormat(
+            /* sampleRate= */ 44100, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_FLOAT);
+    sonicAudioProcessor.configure(audioFormat);
+    sonicAudioProcessor.flush();
+    int frameCount = 44100;
+    ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(frameCount * audioFormat.bytesPerFrame)
+            .order(ByteOrder.nativeOrder());
+    for (int i = 0; i < frameCount; i++) {
+      float sample = (float) (0.5 * Math.sin(2 * Math.PI * 440 * i / 44100));
+      inputBuffer.putFloat(sample).putFloat(sample);
+    }
+    inputBuffer.flip();
+
+    sonicAudioProcessor.queueInput(inputBuffer);
+    sonicAudioProcessor.queueEndOfStream();
+    ByteBuffer outputBuffer = sonicAudioProcessor.getOutput();
+
+    assertThat(inputBuffer.hasRemaining()).isFalse();
+    assertThat(sonicAudioProcessor.isEnded()).isTrue();
+    int outputFrameCount = outputBuffer.remaining() / audioFormat.bytesPerFrame;
+    assertThat(outputFrameCount).isWithin(10).of(frameCount / 2);
+    float maxAbsSample = 0;
+    while (outputBuffer.hasRemaining()) {
+      maxAbsSample = max(maxAbsSample, Math.abs(outputBuffer.getFloat()));
+    }
+    assertThat(maxAbsSample).isWithin(0.01f).of(0.5f);
+  }
+
   @Test
   public void doesNotSupportNon16BitInput() throws Exception {
     try {
@@ -18,6 +18,7 @@ package androidx.media3.common.audio;
 import static com.google.common.truth.Truth.assertThat;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 import org.junit.Rule;
 import org.junit.Test;
@@ -107,4 +108,97 @@ public class SonicTest {
 
     assertThat(outputBuffer.array()).isEqualTo(new short[] {0, 4, 8});
   }
+
+  @Test
+  public void resample_floatSamples_toDoubleRate_linearlyInterpolatesSamples() {
+    FloatBuffer inputBuffer = FloatBuffer.wrap(new float[] {0f, 0.1f, 0.2f, 0.3f, 0.4f, 0.5f});
+    Sonic sonic =
+        new Sonic(
+            /* inputSampleRateHz= */ 44100,
+            /* channelCount= */ 1,
+            /* speed= */ 1,
+            /* pitch= */ 1,
+            /* outputSampleRateHz= */ 88200,
+            /* useFloatSamples= */ true);
+    sonic.queueInput(inputBuffer);
+    sonic.queueEndOfStream();
+    FloatBuffer outputBuffer = FloatBuffer.allocate(sonic.getOutputSize() / 4);
+    sonic.getOutput(outputBuffer);
+
+    // End of stream is padded with silence, so last sample will be interpolated between (0.5; 0).
+    assertThat(outputBuffer.array())
+        .usingTolerance(1e-6)
+        .containsExactly(
+            new float[] {
+              0f, 0.05f, 0.1f, 0.15f, 0.2f, 0.25f, 0.3f, 0.35f, 0.4f, 0.45f, 0.5f, 0.25f
+            })
+        .inOrder();
+  }
+
+  @Test
+  public void timeStretch_floatSamples_matchesInt16Samples() {
+    int channelCount = 6;
+    short[] int16Input = createMultichannelTone(/* frameCount= */ 8000, channelCount);
+    float[] floatInput = new float[int16Input.length];
+    for (int i = 0; i < int16Input.length; i++) {
+      floatInput[i] = int16Input[i] / 32768f;
+    }
+
+    for (float speed : new float[] {0.5f, 0.75f, 1.5f, 3f}) {
+      short[] int16Output =
+          process(
+              new Sonic(
+                  /* inputSampleRateHz= */ 44100,
+                  channelCount,
+                  speed,
+                  /* pitch= */ 1.25f,
+                  /* outputSampleRateHz= */ 48000),
+              int16Input);
+      float[] floatOutput =
+          process(
+              new Sonic(
+                  /* inputSampleRateHz= */ 44100,
+                  channelCount,
+                  speed,
+                  /* pitch= */ 1.25f,
+                  /* outputSampleRateHz= */ 48000,
+                  /* useFloatSamples= */ true),
+              floatInput);
+
+      // The integer path truncates when overlap-adding and interpolating, so samples can differ by
+      // up to a couple of 16-bit steps.
+      assertThat(floatOutput).hasLength(int16Output.length);
+      for (int i = 0; i < int16Output.length; i++) {
+        assertThat((double) floatOutput[i] * 32768).isWithin(2).of(int16Output[i]);
+      }
+    }
+  }
+
+  private static short[] createMultichannelTone(int frameCount, int channelCount) {
+    short[] samples = new short[frameCount * channelCount];
+    for (int i = 0; i < frameCount; i++) {
+      for (int channel = 0; channel < channelCount; channel++) {
+        double phase = 2 * Math.PI * 220 * i / 44100 + channel;
+        samples[i * channelCount + channel] =
+            (short) (12000 * Math.sin(phase) + 4000 * Math.sin(2.7 * phase));
+      }
+    }
+    return samples;
+  }
+
+  private static short[] process(Sonic sonic, short[] input) {
+    sonic.queueInput(ShortBuffer.wrap(input));
+    sonic.queueEndOfStream();
+    ShortBuffer outputBuffer = ShortBuffer.allocate(sonic.getOutputSize() / 2);
+    sonic.getOutput(outputBuffer);
+    return outputBuffer.array();
+  }
+
+  private static float[] process(Sonic sonic, float[] input) {
+    sonic.queueInput(FloatBuffer.wrap(input));
+    sonic.queueEndOfStream();
+    FloatBuffer outputBuffer = FloatBuffer.allocate(sonic.getOutputSize() / 4);
+    sonic.getOutput(outputBuffer);
+    return outputBuffer.array();
+  }
 }
@@ -17,12 +17,14 @@ package androidx.media3.datasource;
 
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Util.castNonNull;
+import static java.lang.Math.min;
 
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import javax.crypto.Cipher;
@@ -31,10 +33,13 @@ import javax.crypto.Cipher;
 @UnstableApi
 public final class AesCipherDataSource implements DataSource {
 
+  private static final int BYTE_BUFFER_READ_SCRATCH_SIZE = 16 * 1024;
+
   private final DataSource upstream;
   private final byte[] secretKey;
 
   @Nullable private AesFlushingCipher cipher;
+  @Nullable private byte[] byteBufferReadScratch;
 
   public AesCipherDataSource(byte[] secretKey, DataSource upstream) {
     this.upstream = upstream;
@@ -72,6 +77,24 @@ public final class AesCipherDataSource implements DataSource {
     return read;
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray() || !buffer.hasRemaining()) {
+      return DataSource.super.read(buffer);
+    }
+    // The cipher can only decrypt in place in an array, so read via a scratch array.
+    @Nullable byte[] scratch = byteBufferReadScratch;
+    if (scratch == null) {
+      scratch = new byte[BYTE_BUFFER_READ_SCRATCH_SIZE];
+      byteBufferReadScratch = scratch;
+    }
+    int bytesRead = read(scratch, /* offset= */ 0, min(buffer.remaining(), scratch.length));
+    if (bytesRead > 0) {
+      buffer.put(scratch, /* offset= */ 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
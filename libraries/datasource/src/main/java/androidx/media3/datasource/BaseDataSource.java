@@ -17,9 +17,12 @@ package androidx.media3.datasource;
 
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Util.castNonNull;
+import static java.lang.Math.min;
 
 import androidx.annotation.Nullable;
 import androidx.media3.common.util.UnstableApi;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 /**
@@ -32,11 +35,14 @@ import java.util.ArrayList;
 @UnstableApi
 public abstract class BaseDataSource implements DataSource {
 
+  private static final int BYTE_BUFFER_READ_SCRATCH_SIZE = 16 * 1024;
+
   private final boolean isNetwork;
   private final ArrayList<TransferListener> listeners;
 
   private int listenerCount;
   @Nullable private DataSpec dataSpec;
+  @Nullable private byte[] byteBufferReadScratch;
 
   /**
    * Creates base data source.
@@ -48,6 +54,29 @@ public abstract class BaseDataSource implements DataSource {
     this.listeners = new ArrayList<>(/* initialCapacity= */ 1);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>This implementation reads into the buffer's backing array if it has one, and otherwise
+   * reads into a scratch array that's reused across calls and copies the data into the buffer.
+   */
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray() || !buffer.hasRemaining()) {
+      return DataSource.super.read(buffer);
+    }
+    @Nullable byte[] scratch = byteBufferReadScratch;
+    if (scratch == null) {
+      scratch = new byte[BYTE_BUFFER_READ_SCRATCH_SIZE];
+      byteBufferReadScratch = scratch;
+    }
+    int bytesRead = read(scratch, /* offset= */ 0, min(buffer.remaining(), scratch.length));
+    if (bytesRead > 0) {
+      buffer.put(scratch, /* offset= */ 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
   @UnstableApi
   @Override
   public final void addTransferListener(TransferListener transferListener) {
@@ -25,6 +25,7 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -281,6 +282,12 @@ public final class DefaultDataSource implements DataSource {
     return Assertions.checkNotNull(dataSource).read(buffer, offset, length);
   }
 
+  @UnstableApi
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    return Assertions.checkNotNull(dataSource).read(buffer);
+  }
+
   @UnstableApi
   @Override
   @Nullable
@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import com.google.common.net.HttpHeaders;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link DataSource} that reads HTTP resources with several concurrent range requests, to
+ * increase the throughput of large progressive media files and downloads when a single connection
+ * is limited by its congestion window.
+ *
+ * <p>The requested range is split into chunks of a fixed size. Up to a maximum number of chunks
+ * are requested at the same time, each by an {@link HttpDataSource} created by the upstream {@link
+ * HttpDataSource.Factory}, and their data is returned in order. With an HTTP stack that supports
+ * HTTP/2, such as OkHttp or Cronet, the concurrent requests to a server are multiplexed on a single
+ * connection.
+ *
+ * <p>The first chunk is requested when the data source is opened. The range is only split if the
+ * response to this request shows that the server supports range requests and gives the size of
+ * the resource. Otherwise, and for requests that are no longer than a chunk, that allow gzip
+ * compression or that aren't GET requests without a body, the data is read with a single request,
+ * as it would be by the upstream data source. When the range is split, {@link
+ * #getResponseHeaders()} returns the headers of the response to the first request.
+ *
+ * <p>Up to {@code maxParallelRequests * chunkSize} bytes are held in memory while reading.
+ */
+@UnstableApi
+public final class ParallelRangeDataSource extends BaseDataSource {
+
+  /** {@link DataSource.Factory} for {@link ParallelRangeDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final HttpDataSource.Factory upstreamDataSourceFactory;
+
+    private int chunkSize;
+    private int maxParallelRequests;
+    @Nullable private Executor executor;
+    @Nullable private TransferListener transferListener;
+
+    /**
+     * Creates an instance.
+     *
+     * @param upstreamDataSourceFactory The {@link HttpDataSource.Factory} that creates the data
+     *     sources that make the requests.
+     */
+    public Factory(HttpDataSource.Factory upstreamDataSourceFactory) {
+      this.upstreamDataSourceFactory = upstreamDataSourceFactory;
+      chunkSize = DEFAULT_CHUNK_SIZE;
+      maxParallelRequests = DEFAULT_MAX_PARALLEL_REQUESTS;
+    }
+
+    /**
+     * Sets the size of the chunks that are requested, in bytes.
+     *
+     * <p>The default is {@link #DEFAULT_CHUNK_SIZE}.
+     *
+     * @param chunkSize The size of the chunks, in bytes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setChunkSize(int chunkSize) {
+      checkArgument(chunkSize > 0);
+      this.chunkSize = chunkSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of chunks that are requested at the same time.
+     *
+     * <p>The default is {@link #DEFAULT_MAX_PARALLEL_REQUESTS}.
+     *
+     * @param maxParallelRequests The maximum number of concurrent requests.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setMaxParallelRequests(int maxParallelRequests) {
+      checkArgument(maxParallelRequests > 0);
+      this.maxParallelRequests = maxParallelRequests;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} on which chunks are requested.
+     *
+     * <p>The default is {@code null}, in which case each data source starts its own threads when
+     * it's opened, and stops them when it's closed.
+     *
+     * @param executor The {@link Executor}, which must be able to run {@link
+     *     #setMaxParallelRequests maxParallelRequests} tasks at the same time for each open data
+     *     source. If the executor rejects a task, reading the chunk that the task would have
+     *     requested fails with an {@link IOException}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setExecutor(@Nullable Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Sets the {@link TransferListener} that will be used.
+     *
+     * <p>The default is {@code null}.
+     *
+     * <p>See {@link DataSource#addTransferListener(TransferListener)}.
+     *
+     * @param transferListener The listener that will be used.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setTransferListener(@Nullable TransferListener transferListener) {
+      this.transferListener = transferListener;
+      return this;
+    }
+
+    @Override
+    public ParallelRangeDataSource createDataSource() {
+      ParallelRangeDataSource dataSource =
+          new ParallelRangeDataSource(
+              upstreamDataSourceFactory, chunkSize, maxParallelRequests, executor);
+      if (transferListener != null) {
+        dataSource.addTransferListener(transferListener);
+      }
+      return dataSource;
+    }
+  }
+
+  /** The default size of the chunks that are requested, in bytes. */
+  public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+  /** The default maximum number of chunks that are requested at the same time. */
+  public static final int DEFAULT_MAX_PARALLEL_REQUESTS = 4;
+
+  private static final String THREAD_NAME = "ExoPlayer:ParallelRangeDataSource";
+
+  private final HttpDataSource.Factory upstreamDataSourceFactory;
+  private final int chunkSize;
+  private final int maxParallelRequests;
+  @Nullable private final Executor executor;
+  private final ArrayDeque<Chunk> chunks;
+
+  @Nullable private DataSpec dataSpec;
+  @Nullable private Uri uri;
+  private Map<String, List<String>> responseHeaders;
+  @Nullable private DataSource currentDataSource;
+  private long bytesRemaining;
+  @Nullable private ExecutorService ownedExecutorService;
+  private long nextChunkPosition;
+  private long endPosition;
+  private int readPositionInChunk;
+  private boolean opened;
+
+  private ParallelRangeDataSource(
+      HttpDataSource.Factory upstreamDataSourceFactory,
+      int chunkSize,
+      int maxParallelRequests,
+      @Nullable Executor executor) {
+    super(/* isNetwork= */ true);
+    this.upstreamDataSourceFactory = upstreamDataSourceFactory;
+    this.chunkSize = chunkSize;
+    this.maxParallelRequests = maxParallelRequests;
+    this.executor = executor;
+    chunks = new ArrayDeque<>();
+    responseHeaders = Collections.emptyMap();
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    this.dataSpec = dataSpec;
+    transferInitializing(dataSpec);
+    if (maxParallelRequests == 1
+        || (dataSpec.length != C.LENGTH_UNSET && dataSpec.length <= chunkSize)
+        || dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)
+        || dataSpec.httpMethod != DataSpec.HTTP_METHOD_GET
+        || dataSpec.httpBody != null) {
+      return openSingleRequest(dataSpec);
+    }
+
+    HttpDataSource firstChunkDataSource = upstreamDataSourceFactory.createDataSource();
+    currentDataSource = firstChunkDataSource;
+    firstChunkDataSource.open(dataSpec.subrange(/* offset= */ 0, chunkSize));
+    long documentSize =
+        HttpUtil.getDocumentSize(
+            getHeader(firstChunkDataSource.getResponseHeaders(), HttpHeaders.CONTENT_RANGE));
+    if (documentSize == C.LENGTH_UNSET) {
+      // The server doesn't support range requests or doesn't give the size of the resource, so the
+      // range can't be split.
+      currentDataSource = null;
+      firstChunkDataSource.close();
+      return openSingleRequest(dataSpec);
+    }
+
+    uri = firstChunkDataSource.getUri();
+    responseHeaders = firstChunkDataSource.getResponseHeaders();
+    bytesRemaining = max(0, documentSize - dataSpec.position);
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      bytesRemaining = min(bytesRemaining, dataSpec.length);
+    }
+    long resolvedLength = dataSpec.length != C.LENGTH_UNSET ? dataSpec.length : bytesRemaining;
+    if (bytesRemaining > chunkSize) {
+      // Read the first chunk and the following ones in parallel.
+      currentDataSource = null;
+      if (executor == null) {
+        ownedExecutorService =
+            Executors.newFixedThreadPool(
+                maxParallelRequests, runnable -> new Thread(runnable, THREAD_NAME));
+      }
+      endPosition = dataSpec.position + bytesRemaining;
+      nextChunkPosition = dataSpec.position;
+      readPositionInChunk = 0;
+      startNextChunk(firstChunkDataSource, /* data= */ null);
+      while (chunks.size() < maxParallelRequests && nextChunkPosition < endPosition) {
+        startNextChunk(/* openedDataSource= */ null, /* data= */ null);
+      }
+    }
+    // Else the first chunk contains all of the data, so carry on reading it on this thread.
+    opened = true;
+    transferStarted(dataSpec);
+    return resolvedLength;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    int bytesRead;
+    if (currentDataSource != null) {
+      if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead =
+          bytesRemaining == C.LENGTH_UNSET ? length : (int) min(length, bytesRemaining);
+      bytesRead = currentDataSource.read(buffer, offset, bytesToRead);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      if (bytesRemaining != C.LENGTH_UNSET) {
+        bytesRemaining -= bytesRead;
+      }
+    } else {
+      @Nullable Chunk chunk = chunks.peekFirst();
+      if (chunk == null) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      bytesRead = chunk.read(readPositionInChunk, buffer, offset, length);
+      readPositionInChunk += bytesRead;
+      if (readPositionInChunk == chunk.length) {
+        chunks.removeFirst();
+        readPositionInChunk = 0;
+        if (nextChunkPosition < endPosition) {
+          startNextChunk(/* openedDataSource= */ null, chunk.data);
+        }
+      }
+    }
+    bytesTransferred(bytesRead);
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return currentDataSource != null ? currentDataSource.getUri() : uri;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return currentDataSource != null ? currentDataSource.getResponseHeaders() : responseHeaders;
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (Chunk chunk : chunks) {
+      chunk.cancel();
+    }
+    chunks.clear();
+    if (ownedExecutorService != null) {
+      ownedExecutorService.shutdownNow();
+      ownedExecutorService = null;
+    }
+    dataSpec = null;
+    uri = null;
+    responseHeaders = Collections.emptyMap();
+    try {
+      if (currentDataSource != null) {
+        currentDataSource.close();
+      }
+    } finally {
+      currentDataSource = null;
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+  }
+
+  private long openSingleRequest(DataSpec dataSpec) throws IOException {
+    DataSource dataSource = upstreamDataSourceFactory.createDataSource();
+    currentDataSource = dataSource;
+    long resolvedLength = dataSource.open(dataSpec);
+    bytesRemaining = C.LENGTH_UNSET;
+    opened = true;
+    transferStarted(dataSpec);
+    return resolvedLength;
+  }
+
+  /**
+   * Starts loading the chunk at {@link #nextChunkPosition}.
+   *
+   * @param openedDataSource A data source that's already open to read the chunk, or null if the
+   *     chunk needs to be requested.
+   * @param data An array of {@link #chunkSize} bytes to reuse for the data of the chunk, or null to
+   *     allocate one.
+   */
+  private void startNextChunk(@Nullable DataSource openedDataSource, @Nullable byte[] data) {
+    DataSpec dataSpec = checkNotNull(this.dataSpec);
+    int length = (int) min(chunkSize, endPosition - nextChunkPosition);
+    DataSpec chunkDataSpec =
+        dataSpec.subrange(nextChunkPosition - dataSpec.position, length).withUri(checkNotNull(uri));
+    Chunk chunk =
+        new Chunk(
+            upstreamDataSourceFactory,
+            chunkDataSpec,
+            openedDataSource,
+            data != null ? data : new byte[chunkSize],
+            length);
+    chunks.addLast(chunk);
+    nextChunkPosition += length;
+    chunk.start(executor != null ? executor : checkNotNull(ownedExecutorService));
+  }
+
+  @Nullable
+  private static String getHeader(Map<String, List<String>> headers, String name) {
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+        return header.getValue().get(0);
+      }
+    }
+    return null;
+  }
+
+  /** A chunk of the requested range, which is loaded on a thread of the executor. */
+  private static final class Chunk implements Runnable {
+
+    public final byte[] data;
+    public final int length;
+
+    private final HttpDataSource.Factory upstreamDataSourceFactory;
+    private final DataSpec dataSpec;
+    @Nullable private final DataSource openedDataSource;
+    private final FutureTask<Void> task;
+    private final AtomicBoolean started;
+
+    private volatile boolean canceled;
+
+    @GuardedBy("this")
+    private int bytesLoaded;
+
+    @GuardedBy("this")
+    @Nullable
+    private IOException error;
+
+    public Chunk(
+        HttpDataSource.Factory upstreamDataSourceFactory,
+        DataSpec dataSpec,
+        @Nullable DataSource openedDataSource,
+        byte[] data,
+        int length) {
+      this.upstreamDataSourceFactory = upstreamDataSourceFactory;
+      this.dataSpec = dataSpec;
+      this.openedDataSource = openedDataSource;
+      this.data = data;
+      this.length = length;
+      task = new FutureTask<>(this, /* result= */ null);
+      started = new AtomicBoolean();
+    }
+
+    public void start(Executor executor) {
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        if (started.compareAndSet(false, true)) {
+          DataSourceUtil.closeQuietly(openedDataSource);
+        }
+        onError(new IOException(e));
+      }
+    }
+
+    public void cancel() {
+      canceled = true;
+      if (started.compareAndSet(false, true)) {
+        // The chunk will never be loaded, so close the data source that's already open for it.
+        DataSourceUtil.closeQuietly(openedDataSource);
+      } else {
+        task.cancel(/* mayInterruptIfRunning= */ true);
+      }
+    }
+
+    /**
+     * Reads data of the chunk, waiting for it to be loaded if necessary.
+     *
+     * @param position The position in the chunk of the data to read.
+     * @param target The array into which the data is read.
+     * @param offset The offset in {@code target} at which the data is written.
+     * @param readLength The maximum number of bytes to read.
+     * @return The number of bytes read.
+     * @throws IOException If loading the chunk failed before {@code position}, or if the thread is
+     *     interrupted while waiting for data.
+     */
+    public synchronized int read(int position, byte[] target, int offset, int readLength)
+        throws IOException {
+      while (bytesLoaded <= position) {
+        if (error != null) {
+          throw error;
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      int bytesToRead = min(readLength, bytesLoaded - position);
+      System.arraycopy(data, position, target, offset, bytesToRead);
+      return bytesToRead;
+    }
+
+    @Override
+    public void run() {
+      if (!started.compareAndSet(false, true)) {
+        return;
+      }
+      DataSource dataSource =
+          openedDataSource != null
+              ? openedDataSource
+              : upstreamDataSourceFactory.createDataSource();
+      try {
+        if (openedDataSource == null) {
+          dataSource.open(dataSpec);
+        }
+        int position = 0;
+        while (position < length && !canceled) {
+          int bytesRead = dataSource.read(data, position, length - position);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            throw new EOFException();
+          }
+          position += bytesRead;
+          onBytesLoaded(position);
+        }
+      } catch (IOException e) {
+        onError(e);
+      } catch (RuntimeException e) {
+        onError(new IOException(e));
+      } finally {
+        DataSourceUtil.closeQuietly(dataSource);
+      }
+    }
+
+    private synchronized void onBytesLoaded(int bytesLoaded) {
+      this.bytesLoaded = bytesLoaded;
+      notifyAll();
+    }
+
+    private synchronized void onError(IOException error) {
+      this.error = error;
+      notifyAll();
+    }
+  }
+}
@@ -19,6 +19,7 @@ import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** A DataSource which provides no data. {@link #open(DataSpec)} throws {@link IOException}. */
 @UnstableApi
@@ -46,6 +47,11 @@ public final class PlaceholderDataSource implements DataSource {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public int read(ByteBuffer buffer) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -22,6 +22,7 @@ import androidx.media3.common.PriorityTaskManager;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
@@ -108,6 +109,12 @@ public final class PriorityDataSource implements DataSource {
     return upstream.read(buffer, offset, length);
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    priorityTaskManager.proceedOrThrow(priority);
+    return upstream.read(buffer);
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
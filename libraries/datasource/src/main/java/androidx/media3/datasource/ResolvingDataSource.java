@@ -21,6 +21,7 @@ import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
@@ -115,6 +116,11 @@ public final class ResolvingDataSource implements DataSource {
     return upstreamDataSource.read(buffer, offset, length);
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    return upstreamDataSource.read(buffer);
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -21,6 +21,7 @@ import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -106,6 +107,15 @@ public final class StatsDataSource implements DataSource {
     return bytesRead;
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    int bytesRead = dataSource.read(buffer);
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      this.bytesRead += bytesRead;
+    }
+    return bytesRead;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
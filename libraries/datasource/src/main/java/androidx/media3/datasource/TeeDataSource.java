@@ -15,12 +15,15 @@
  */
 package androidx.media3.datasource;
 
+import static java.lang.Math.min;
+
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
@@ -28,11 +31,14 @@ import java.util.Map;
 @UnstableApi
 public final class TeeDataSource implements DataSource {
 
+  private static final int BYTE_BUFFER_READ_SCRATCH_SIZE = 16 * 1024;
+
   private final DataSource upstream;
   private final DataSink dataSink;
 
   private boolean dataSinkNeedsClosing;
   private long bytesRemaining;
+  @Nullable private byte[] byteBufferReadScratch;
 
   /**
    * @param upstream The upstream {@link DataSource}.
@@ -80,6 +86,24 @@ public final class TeeDataSource implements DataSource {
     return bytesRead;
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray() || !buffer.hasRemaining()) {
+      return DataSource.super.read(buffer);
+    }
+    // The sink can only be written from an array, so read via a scratch array.
+    @Nullable byte[] scratch = byteBufferReadScratch;
+    if (scratch == null) {
+      scratch = new byte[BYTE_BUFFER_READ_SCRATCH_SIZE];
+      byteBufferReadScratch = scratch;
+    }
+    int bytesRead = read(scratch, /* offset= */ 0, min(buffer.remaining(), scratch.length));
+    if (bytesRead > 0) {
+      buffer.put(scratch, /* offset= */ 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
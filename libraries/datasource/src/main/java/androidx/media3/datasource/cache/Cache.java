@@ -19,8 +19,12 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.media3.common.C;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.NavigableSet;
 import java.util.Set;
 
@@ -233,6 +237,41 @@ public interface Cache {
   @WorkerThread
   void commitFile(File file, long length) throws CacheException;
 
+  /**
+   * Opens an {@link OutputStream} for writing data into a file obtained from {@link
+   * #startFile(String, long, long)}. Must only be called when holding a corresponding hole {@link
+   * CacheSpan} obtained from {@link #startReadWrite(String, long, long)}.
+   *
+   * <p>The default implementation opens a {@link FileOutputStream} for the file. Implementations
+   * that don't store data in the files returned by {@link #startFile(String, long, long)} override
+   * this method to write the data directly to where it's stored.
+   *
+   * @param file A file obtained from {@link #startFile(String, long, long)}.
+   * @return The {@link OutputStream}, which the caller must close before calling {@link
+   *     #commitFile(File, long)}.
+   * @throws IOException If an error is encountered.
+   */
+  @WorkerThread
+  default OutputStream openFileOutputStream(File file) throws IOException {
+    return new FileOutputStream(file);
+  }
+
+  /**
+   * Returns a {@link DataSource.Factory} for reading the data of cached spans, or {@code null} if
+   * the data of a span should be read from {@link CacheSpan#file}, for example using a {@link
+   * androidx.media3.datasource.FileDataSource}.
+   *
+   * <p>A data source created by the factory reads a {@link CacheSpan} when opened with a {@link
+   * DataSpec} whose URI is {@code Uri.fromFile(span.file)}, and whose position is in the range of
+   * the span's data within the file.
+   *
+   * <p>The default implementation returns {@code null}.
+   */
+  @Nullable
+  default DataSource.Factory getReadDataSourceFactory() {
+    return null;
+  }
+
   /**
    * Releases a {@link CacheSpan} obtained from {@link #startReadWrite(String, long, long)} which
    * corresponded to a hole in the cache.
@@ -30,7 +30,6 @@ import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.cache.Cache.CacheException;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
@@ -245,17 +244,16 @@ public final class CacheDataSink implements DataSink {
     file =
         cache.startFile(
             castNonNull(dataSpec.key), dataSpec.position + dataSpecBytesWritten, length);
-    FileOutputStream underlyingFileOutputStream = new FileOutputStream(file);
+    OutputStream underlyingOutputStream = cache.openFileOutputStream(file);
     if (bufferSize > 0) {
       if (bufferedOutputStream == null) {
-        bufferedOutputStream =
-            new ReusableBufferedOutputStream(underlyingFileOutputStream, bufferSize);
+        bufferedOutputStream = new ReusableBufferedOutputStream(underlyingOutputStream, bufferSize);
       } else {
-        bufferedOutputStream.reset(underlyingFileOutputStream);
+        bufferedOutputStream.reset(underlyingOutputStream);
       }
       outputStream = bufferedOutputStream;
     } else {
-      outputStream = underlyingFileOutputStream;
+      outputStream = underlyingOutputStream;
     }
     outputStreamBytesWritten = 0;
   }
@@ -49,6 +49,7 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -66,7 +67,7 @@ public final class CacheDataSource implements DataSource {
   public static final class Factory implements DataSource.Factory {
 
     private @MonotonicNonNull Cache cache;
-    private DataSource.Factory cacheReadDataSourceFactory;
+    @Nullable private DataSource.Factory cacheReadDataSourceFactory;
     @Nullable private DataSink.Factory cacheWriteDataSinkFactory;
     private CacheKeyFactory cacheKeyFactory;
     private boolean cacheIsReadOnly;
@@ -75,9 +76,9 @@ public final class CacheDataSource implements DataSource {
     private @C.Priority int upstreamPriority;
     private @CacheDataSource.Flags int flags;
     @Nullable private CacheDataSource.EventListener eventListener;
+    @Nullable private InFlightCacheWrites inFlightCacheWrites;
 
     public Factory() {
-      cacheReadDataSourceFactory = new FileDataSource.Factory();
       cacheKeyFactory = CacheKeyFactory.DEFAULT;
     }
 
@@ -108,7 +109,8 @@ public final class CacheDataSource implements DataSource {
      * Sets the {@link DataSource.Factory} for {@link DataSource DataSources} for reading from the
      * cache.
      *
-     * <p>The default is a {@link FileDataSource.Factory} in its default configuration.
+     * <p>The default is the factory returned by {@link Cache#getReadDataSourceFactory()} if it's
+     * not null, and otherwise a {@link FileDataSource.Factory} in its default configuration.
      *
      * @param cacheReadDataSourceFactory The {@link DataSource.Factory} for reading from the cache.
      * @return This factory.
@@ -252,6 +254,27 @@ public final class CacheDataSource implements DataSource {
       return this;
     }
 
+    /**
+     * Sets the {@link InFlightCacheWrites} through which created instances share the data they
+     * write to the cache.
+     *
+     * <p>If set, an instance that needs data that another instance is writing to the cache follows
+     * the write instead of requesting the data from upstream or, if {@link #FLAG_BLOCK_ON_CACHE} is
+     * set, waiting for the write to complete. The same {@link InFlightCacheWrites} must be set on
+     * all factories that use the same {@link Cache}.
+     *
+     * <p>The default is {@code null}.
+     *
+     * @param inFlightCacheWrites The {@link InFlightCacheWrites}, or {@code null} to not share
+     *     writes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setInFlightCacheWrites(@Nullable InFlightCacheWrites inFlightCacheWrites) {
+      this.inFlightCacheWrites = inFlightCacheWrites;
+      return this;
+    }
+
     @Override
     public CacheDataSource createDataSource() {
       return createDataSourceInternal(
@@ -313,13 +336,16 @@ public final class CacheDataSource implements DataSource {
       return new CacheDataSource(
           cache,
           upstreamDataSource,
-          cacheReadDataSourceFactory.createDataSource(),
+          cacheReadDataSourceFactory != null
+              ? cacheReadDataSourceFactory.createDataSource()
+              : createDefaultCacheReadDataSource(cache),
           cacheWriteDataSink,
           cacheKeyFactory,
           flags,
           upstreamPriorityTaskManager,
           upstreamPriority,
-          eventListener);
+          eventListener,
+          inFlightCacheWrites);
     }
   }
 
@@ -408,6 +434,8 @@ public final class CacheDataSource implements DataSource {
   private final DataSource upstreamDataSource;
   private final CacheKeyFactory cacheKeyFactory;
   @Nullable private final EventListener eventListener;
+  @Nullable private final InFlightCacheWrites inFlightCacheWrites;
+  @Nullable private final InFlightWriteDataSource inFlightWriteDataSource;
 
   private final boolean blockOnCache;
   private final boolean ignoreCacheOnError;
@@ -421,6 +449,7 @@ public final class CacheDataSource implements DataSource {
   private long readPosition;
   private long bytesRemaining;
   @Nullable private CacheSpan currentHoleSpan;
+  @Nullable private InFlightCacheWrites.Write currentWrite;
   private boolean seenCacheError;
   private boolean currentRequestIgnoresCache;
   private long totalCachedBytesRead;
@@ -452,7 +481,7 @@ public final class CacheDataSource implements DataSource {
     this(
         cache,
         upstreamDataSource,
-        new FileDataSource(),
+        createDefaultCacheReadDataSource(cache),
         new CacheDataSink(cache, CacheDataSink.DEFAULT_FRAGMENT_SIZE),
         flags,
         /* eventListener= */ null);
@@ -523,7 +552,8 @@ public final class CacheDataSource implements DataSource {
         flags,
         /* upstreamPriorityTaskManager= */ null,
         /* upstreamPriority= */ C.PRIORITY_PLAYBACK,
-        eventListener);
+        eventListener,
+        /* inFlightCacheWrites= */ null);
   }
 
   private CacheDataSource(
@@ -535,7 +565,8 @@ public final class CacheDataSource implements DataSource {
       @Flags int flags,
       @Nullable PriorityTaskManager upstreamPriorityTaskManager,
       @C.Priority int upstreamPriority,
-      @Nullable EventListener eventListener) {
+      @Nullable EventListener eventListener,
+      @Nullable InFlightCacheWrites inFlightCacheWrites) {
     this.cache = cache;
     this.cacheReadDataSource = cacheReadDataSource;
     this.cacheKeyFactory = cacheKeyFactory != null ? cacheKeyFactory : CacheKeyFactory.DEFAULT;
@@ -559,6 +590,9 @@ public final class CacheDataSource implements DataSource {
       this.cacheWriteDataSource = null;
     }
     this.eventListener = eventListener;
+    this.inFlightCacheWrites = inFlightCacheWrites;
+    this.inFlightWriteDataSource =
+        inFlightCacheWrites != null ? new InFlightWriteDataSource() : null;
   }
 
   /** Returns the {@link Cache} used by this instance. */
@@ -576,6 +610,9 @@ public final class CacheDataSource implements DataSource {
     checkNotNull(transferListener);
     cacheReadDataSource.addTransferListener(transferListener);
     upstreamDataSource.addTransferListener(transferListener);
+    if (inFlightWriteDataSource != null) {
+      inFlightWriteDataSource.addTransferListener(transferListener);
+    }
   }
 
   @Override
@@ -626,6 +663,26 @@ public final class CacheDataSource implements DataSource {
     if (length == 0) {
       return 0;
     }
+    return readInternal(buffer, offset, length, /* byteBuffer= */ null);
+  }
+
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    if (!buffer.hasRemaining()) {
+      return 0;
+    }
+    return readInternal(
+        /* buffer= */ null, /* offset= */ 0, /* length= */ buffer.remaining(), buffer);
+  }
+
+  /**
+   * Reads into {@code byteBuffer} if it's not null, and otherwise into {@code buffer}, so that
+   * reads from a cache file into a direct {@link ByteBuffer} don't go through an intermediate
+   * array.
+   */
+  private int readInternal(
+      @Nullable byte[] buffer, int offset, int length, @Nullable ByteBuffer byteBuffer)
+      throws IOException {
     if (bytesRemaining == 0) {
       return C.RESULT_END_OF_INPUT;
     }
@@ -635,11 +692,22 @@ public final class CacheDataSource implements DataSource {
       if (readPosition >= checkCachePosition) {
         openNextSource(requestDataSpec, true);
       }
-      int bytesRead = checkNotNull(currentDataSource).read(buffer, offset, length);
+      DataSource dataSource = checkNotNull(currentDataSource);
+      int bytesRead =
+          byteBuffer != null
+              ? dataSource.read(byteBuffer)
+              : dataSource.read(checkNotNull(buffer), offset, length);
       if (bytesRead != C.RESULT_END_OF_INPUT) {
         if (isReadingFromCache()) {
           totalCachedBytesRead += bytesRead;
         }
+        if (currentWrite != null) {
+          if (byteBuffer != null) {
+            currentWrite.append(byteBuffer, bytesRead);
+          } else {
+            currentWrite.append(checkNotNull(buffer), offset, bytesRead);
+          }
+        }
         readPosition += bytesRead;
         currentDataSourceBytesRead += bytesRead;
         if (bytesRemaining != C.LENGTH_UNSET) {
@@ -651,11 +719,17 @@ public final class CacheDataSource implements DataSource {
         // We've encountered RESULT_END_OF_INPUT from the upstream DataSource at a position not
         // imposed by the current DataSpec. This must mean that we've reached the end of the
         // resource.
+        if (currentWrite != null) {
+          currentWrite.setResourceLength(readPosition);
+        }
+        setNoBytesRemainingAndMaybeStoreLength(castNonNull(requestDataSpec.key));
+      } else if (isFollowingWrite() && checkNotNull(inFlightWriteDataSource).isAtEndOfResource()) {
+        // The write we're following reached the end of the resource.
         setNoBytesRemainingAndMaybeStoreLength(castNonNull(requestDataSpec.key));
       } else if (bytesRemaining > 0 || bytesRemaining == C.LENGTH_UNSET) {
         closeCurrentSource();
         openNextSource(requestDataSpec, false);
-        return read(buffer, offset, length);
+        return readInternal(buffer, offset, length, byteBuffer);
       }
       return bytesRead;
     } catch (Throwable e) {
@@ -694,8 +768,10 @@ public final class CacheDataSource implements DataSource {
 
   /**
    * Opens the next source. If the cache contains data spanning the current read position then
-   * {@link #cacheReadDataSource} is opened to read from it. Else {@link #upstreamDataSource} is
-   * opened to read from the upstream source and write into the cache.
+   * {@link #cacheReadDataSource} is opened to read from it. Else if another instance is writing the
+   * data into the cache and the write can be followed, {@link #inFlightWriteDataSource} is opened
+   * to follow it. Else {@link #upstreamDataSource} is opened to read from the upstream source and
+   * write into the cache.
    *
    * <p>There must not be a currently open source when this method is called, except in the case
    * that {@code checkCache} is true. If {@code checkCache} is true then there must be a currently
@@ -709,34 +785,44 @@ public final class CacheDataSource implements DataSource {
    */
   private void openNextSource(DataSpec requestDataSpec, boolean checkCache) throws IOException {
     @Nullable CacheSpan nextSpan;
+    @Nullable InFlightCacheWrites.Write writeToFollow = null;
     String key = castNonNull(requestDataSpec.key);
     if (currentRequestIgnoresCache) {
       nextSpan = null;
-    } else if (blockOnCache) {
-      try {
-        nextSpan = cache.startReadWrite(key, readPosition, bytesRemaining);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        throw new InterruptedIOException();
-      }
+    } else if (blockOnCache && inFlightCacheWrites == null) {
+      nextSpan = startReadWriteBlocking(key);
     } else {
       nextSpan = cache.startReadWriteNonBlocking(key, readPosition, bytesRemaining);
+      if (nextSpan == null && inFlightCacheWrites != null) {
+        // The data is locked in the cache. Follow the write of the instance that holds the lock if
+        // possible, rather than waiting for it or reading the same data from upstream.
+        writeToFollow = inFlightCacheWrites.findWrite(key, readPosition);
+        if (writeToFollow == null && blockOnCache) {
+          nextSpan = startReadWriteBlocking(key);
+        }
+      }
     }
 
     DataSpec nextDataSpec;
     DataSource nextDataSource;
-    if (nextSpan == null) {
+    if (writeToFollow != null) {
+      InFlightWriteDataSource inFlightWriteDataSource = checkNotNull(this.inFlightWriteDataSource);
+      inFlightWriteDataSource.setWrite(writeToFollow);
+      nextDataSource = inFlightWriteDataSource;
+      nextDataSpec =
+          requestDataSpec.buildUpon().setPosition(readPosition).setLength(bytesRemaining).build();
+    } else if (nextSpan == null) {
       // The data is locked in the cache, or we're ignoring the cache. Bypass the cache and read
       // from upstream.
       nextDataSource = upstreamDataSource;
       nextDataSpec =
           requestDataSpec.buildUpon().setPosition(readPosition).setLength(bytesRemaining).build();
     } else if (nextSpan.isCached) {
-      // Data is cached in a span file starting at nextSpan.position.
+      // Data is cached in a span file, where nextSpan.position is stored at nextSpan.fileOffset.
       Uri fileUri = Uri.fromFile(castNonNull(nextSpan.file));
-      long filePositionOffset = nextSpan.position;
+      long filePositionOffset = nextSpan.position - nextSpan.fileOffset;
       long positionInFile = readPosition - filePositionOffset;
-      long length = nextSpan.length - positionInFile;
+      long length = nextSpan.length - (readPosition - nextSpan.position);
       if (bytesRemaining != C.LENGTH_UNSET) {
         length = min(length, bytesRemaining);
       }
@@ -785,7 +871,7 @@ public final class CacheDataSource implements DataSource {
       try {
         closeCurrentSource();
       } catch (Throwable e) {
-        if (castNonNull(nextSpan).isHoleSpan()) {
+        if (nextSpan != null && nextSpan.isHoleSpan()) {
           // Release the hole span before throwing, else we'll hold it forever.
           cache.releaseHoleSpan(nextSpan);
         }
@@ -799,6 +885,11 @@ public final class CacheDataSource implements DataSource {
     currentDataSource = nextDataSource;
     currentDataSpec = nextDataSpec;
     currentDataSourceBytesRead = 0;
+    if (inFlightCacheWrites != null && isWritingToCache()) {
+      // Register the write before opening upstream, so that other instances follow it rather than
+      // making their own upstream requests while this one is being opened.
+      currentWrite = inFlightCacheWrites.startWrite(key, readPosition, nextDataSpec.length);
+    }
     long resolvedLength = nextDataSource.open(nextDataSpec);
 
     // Update bytesRemaining, actualUri and (if writing to cache) the cache metadata.
@@ -806,6 +897,9 @@ public final class CacheDataSource implements DataSource {
     if (nextDataSpec.length == C.LENGTH_UNSET && resolvedLength != C.LENGTH_UNSET) {
       bytesRemaining = resolvedLength;
       ContentMetadataMutations.setContentLength(mutations, readPosition + bytesRemaining);
+      if (currentWrite != null) {
+        currentWrite.setResourceLength(readPosition + bytesRemaining);
+      }
     }
     if (isReadingFromUpstream()) {
       actualUri = nextDataSource.getUri();
@@ -817,6 +911,15 @@ public final class CacheDataSource implements DataSource {
     }
   }
 
+  private CacheSpan startReadWriteBlocking(String key) throws IOException {
+    try {
+      return cache.startReadWrite(key, readPosition, bytesRemaining);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
   private void setNoBytesRemainingAndMaybeStoreLength(String key) throws IOException {
     bytesRemaining = 0;
     if (isWritingToCache()) {
@@ -831,8 +934,15 @@ public final class CacheDataSource implements DataSource {
     return redirectedUri != null ? redirectedUri : defaultUri;
   }
 
+  private static DataSource createDefaultCacheReadDataSource(Cache cache) {
+    @Nullable DataSource.Factory readDataSourceFactory = cache.getReadDataSourceFactory();
+    return readDataSourceFactory != null
+        ? readDataSourceFactory.createDataSource()
+        : new FileDataSource();
+  }
+
   private boolean isReadingFromUpstream() {
-    return !isReadingFromCache();
+    return !isReadingFromCache() && !isFollowingWrite();
   }
 
   private boolean isBypassingCache() {
@@ -847,6 +957,10 @@ public final class CacheDataSource implements DataSource {
     return currentDataSource == cacheWriteDataSource;
   }
 
+  private boolean isFollowingWrite() {
+    return inFlightWriteDataSource != null && currentDataSource == inFlightWriteDataSource;
+  }
+
   private void closeCurrentSource() throws IOException {
     if (currentDataSource == null) {
       return;
@@ -856,6 +970,10 @@ public final class CacheDataSource implements DataSource {
     } finally {
       currentDataSpec = null;
       currentDataSource = null;
+      if (currentWrite != null) {
+        currentWrite.end();
+        currentWrite = null;
+      }
       if (currentHoleSpan != null) {
         cache.releaseHoleSpan(currentHoleSpan);
         currentHoleSpan = null;
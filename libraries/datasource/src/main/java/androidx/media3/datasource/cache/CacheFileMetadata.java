@@ -15,14 +15,23 @@
  */
 package androidx.media3.datasource.cache;
 
+import androidx.annotation.Nullable;
+
 /** Metadata associated with a cache file. */
 /* package */ final class CacheFileMetadata {
 
   public final long length;
   public final long lastTouchTimestamp;
 
-  public CacheFileMetadata(long length, long lastTouchTimestamp) {
+  /**
+   * The path of the directory containing the file, relative to the cache directory, or {@code
+   * null} if unknown.
+   */
+  @Nullable public final String directory;
+
+  public CacheFileMetadata(long length, long lastTouchTimestamp, @Nullable String directory) {
     this.length = length;
     this.lastTouchTimestamp = lastTouchTimestamp;
+    this.directory = directory;
   }
 }
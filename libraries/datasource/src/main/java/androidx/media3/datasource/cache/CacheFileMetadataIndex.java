@@ -21,6 +21,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.database.DatabaseIOException;
@@ -35,21 +36,24 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /* package */ final class CacheFileMetadataIndex {
 
   private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "CacheFileMetadata";
-  private static final int TABLE_VERSION = 1;
+  private static final int TABLE_VERSION = 2;
+  private static final int TABLE_VERSION_DIRECTORY_INTRODUCED = 2;
 
   private static final String COLUMN_NAME = "name";
   private static final String COLUMN_LENGTH = "length";
   private static final String COLUMN_LAST_TOUCH_TIMESTAMP = "last_touch_timestamp";
+  private static final String COLUMN_DIRECTORY = "directory";
 
   private static final int COLUMN_INDEX_NAME = 0;
   private static final int COLUMN_INDEX_LENGTH = 1;
   private static final int COLUMN_INDEX_LAST_TOUCH_TIMESTAMP = 2;
+  private static final int COLUMN_INDEX_DIRECTORY = 3;
 
   private static final String WHERE_NAME_EQUALS = COLUMN_NAME + " = ?";
 
   private static final String[] COLUMNS =
       new String[] {
-        COLUMN_NAME, COLUMN_LENGTH, COLUMN_LAST_TOUCH_TIMESTAMP,
+        COLUMN_NAME, COLUMN_LENGTH, COLUMN_LAST_TOUCH_TIMESTAMP, COLUMN_DIRECTORY,
       };
   private static final String TABLE_SCHEMA =
       "("
@@ -58,7 +62,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           + COLUMN_LENGTH
           + " INTEGER NOT NULL,"
           + COLUMN_LAST_TOUCH_TIMESTAMP
-          + " INTEGER NOT NULL)";
+          + " INTEGER NOT NULL,"
+          + COLUMN_DIRECTORY
+          + " TEXT)";
 
   private final DatabaseProvider databaseProvider;
 
@@ -124,8 +130,15 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         try {
           VersionTable.setVersion(
               writableDatabase, VersionTable.FEATURE_CACHE_FILE_METADATA, hexUid, TABLE_VERSION);
-          dropTable(writableDatabase, tableName);
-          writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+          if (version != VersionTable.VERSION_UNSET
+              && version < TABLE_VERSION_DIRECTORY_INTRODUCED) {
+            // Retain existing metadata. The directory is unknown for existing files.
+            writableDatabase.execSQL(
+                "ALTER TABLE " + tableName + " ADD COLUMN " + COLUMN_DIRECTORY + " TEXT");
+          } else {
+            dropTable(writableDatabase, tableName);
+            writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+          }
           writableDatabase.setTransactionSuccessful();
         } finally {
           writableDatabase.endTransaction();
@@ -153,7 +166,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         String name = checkNotNull(cursor.getString(COLUMN_INDEX_NAME));
         long length = cursor.getLong(COLUMN_INDEX_LENGTH);
         long lastTouchTimestamp = cursor.getLong(COLUMN_INDEX_LAST_TOUCH_TIMESTAMP);
-        fileMetadata.put(name, new CacheFileMetadata(length, lastTouchTimestamp));
+        @Nullable
+        String directory =
+            cursor.isNull(COLUMN_INDEX_DIRECTORY) ? null : cursor.getString(COLUMN_INDEX_DIRECTORY);
+        fileMetadata.put(name, new CacheFileMetadata(length, lastTouchTimestamp, directory));
       }
       return fileMetadata;
     } catch (SQLException e) {
@@ -162,7 +178,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   }
 
   /**
-   * Sets metadata for a given file.
+   * Sets metadata for a given file, whose directory is unknown.
    *
    * <p>This method may be slow and shouldn't normally be called on the main thread.
    *
@@ -173,14 +189,51 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    */
   @WorkerThread
   public void set(String name, long length, long lastTouchTimestamp) throws DatabaseIOException {
+    set(name, new CacheFileMetadata(length, lastTouchTimestamp, /* directory= */ null));
+  }
+
+  /**
+   * Sets metadata for a given file.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param name The name of the file.
+   * @param metadata The file metadata.
+   * @throws DatabaseIOException If an error occurs setting the metadata.
+   */
+  @WorkerThread
+  public void set(String name, CacheFileMetadata metadata) throws DatabaseIOException {
     Assertions.checkNotNull(tableName);
     try {
       SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
-      ContentValues values = new ContentValues();
-      values.put(COLUMN_NAME, name);
-      values.put(COLUMN_LENGTH, length);
-      values.put(COLUMN_LAST_TOUCH_TIMESTAMP, lastTouchTimestamp);
-      writableDatabase.replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
+      replaceRow(writableDatabase, name, metadata);
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  /**
+   * Sets metadata for multiple files.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param fileMetadata The file metadata to set, keyed by file name.
+   * @throws DatabaseIOException If an error occurs setting the metadata.
+   */
+  @WorkerThread
+  public void setAll(Map<String, CacheFileMetadata> fileMetadata) throws DatabaseIOException {
+    Assertions.checkNotNull(tableName);
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        for (Map.Entry<String, CacheFileMetadata> entry : fileMetadata.entrySet()) {
+          replaceRow(writableDatabase, entry.getKey(), entry.getValue());
+        }
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
     } catch (SQLException e) {
       throw new DatabaseIOException(e);
     }
@@ -232,6 +285,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
   }
 
+  private void replaceRow(
+      SQLiteDatabase writableDatabase, String name, CacheFileMetadata metadata) {
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_NAME, name);
+    values.put(COLUMN_LENGTH, metadata.length);
+    values.put(COLUMN_LAST_TOUCH_TIMESTAMP, metadata.lastTouchTimestamp);
+    values.put(COLUMN_DIRECTORY, metadata.directory);
+    writableDatabase.replaceOrThrow(checkNotNull(tableName), /* nullColumnHack= */ null, values);
+  }
+
   private Cursor getCursor() {
     Assertions.checkNotNull(tableName);
     return databaseProvider
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+
+/** Weights assigned to cache keys according to the prefixes with which they start. */
+/* package */ final class CacheKeyWeights {
+
+  /** Weights that assign the default weight of 1 to all keys. */
+  public static final CacheKeyWeights NONE = new CacheKeyWeights(ImmutableMap.of());
+
+  private final ImmutableMap<String, Integer> keyPrefixWeights;
+
+  /**
+   * Creates an instance.
+   *
+   * @param keyPrefixWeights The weight of keys starting with each prefix. Weights must be at least
+   *     1.
+   */
+  public CacheKeyWeights(Map<String, Integer> keyPrefixWeights) {
+    for (int weight : keyPrefixWeights.values()) {
+      checkArgument(weight >= 1);
+    }
+    this.keyPrefixWeights = ImmutableMap.copyOf(keyPrefixWeights);
+  }
+
+  /**
+   * Returns the weight of a key, which is the weight of the longest prefix with which it starts, or
+   * 1 if it doesn't start with any of the prefixes.
+   */
+  public int getWeight(String key) {
+    int weight = 1;
+    int matchedPrefixLength = -1;
+    for (Map.Entry<String, Integer> entry : keyPrefixWeights.entrySet()) {
+      String prefix = entry.getKey();
+      if (prefix.length() > matchedPrefixLength && key.startsWith(prefix)) {
+        weight = entry.getValue();
+        matchedPrefixLength = prefix.length();
+      }
+    }
+    return weight;
+  }
+}
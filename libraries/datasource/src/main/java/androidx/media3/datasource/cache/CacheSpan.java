@@ -41,6 +41,12 @@ public class CacheSpan implements Comparable<CacheSpan> {
   /** The file corresponding to this {@link CacheSpan}, or null if {@link #isCached} is false. */
   @Nullable public final File file;
 
+  /**
+   * The offset in {@link #file} at which the data of this {@link CacheSpan} starts, or 0 if {@link
+   * #isCached} is false.
+   */
+  public final long fileOffset;
+
   /** The last touch timestamp, or {@link C#TIME_UNSET} if {@link #isCached} is false. */
   public final long lastTouchTimestamp;
 
@@ -70,11 +76,35 @@ public class CacheSpan implements Comparable<CacheSpan> {
    */
   public CacheSpan(
       String key, long position, long length, long lastTouchTimestamp, @Nullable File file) {
+    this(key, position, length, lastTouchTimestamp, file, /* fileOffset= */ 0);
+  }
+
+  /**
+   * Creates a CacheSpan whose data is stored at an offset within a file.
+   *
+   * @param key The cache key that uniquely identifies the resource.
+   * @param position The position of the {@link CacheSpan} in the resource.
+   * @param length The length of the {@link CacheSpan}, or {@link C#LENGTH_UNSET} if this is an
+   *     open-ended hole.
+   * @param lastTouchTimestamp The last touch timestamp, or {@link C#TIME_UNSET} if {@link
+   *     #isCached} is false.
+   * @param file The file corresponding to this {@link CacheSpan}, or null if it's a hole.
+   * @param fileOffset The offset in {@code file} at which the data of the span starts. Must be 0 if
+   *     {@code file} is null.
+   */
+  public CacheSpan(
+      String key,
+      long position,
+      long length,
+      long lastTouchTimestamp,
+      @Nullable File file,
+      long fileOffset) {
     this.key = key;
     this.position = position;
     this.length = length;
     this.isCached = file != null;
     this.file = file;
+    this.fileOffset = fileOffset;
     this.lastTouchTimestamp = lastTouchTimestamp;
   }
 
@@ -30,6 +30,7 @@ import android.util.SparseBooleanArray;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
+import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.AtomicFile;
 import androidx.media3.common.util.NullableType;
@@ -39,11 +40,14 @@ import androidx.media3.database.DatabaseProvider;
 import androidx.media3.database.VersionTable;
 import com.google.common.collect.ImmutableSet;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -57,6 +61,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -69,6 +74,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /* package */ class CachedContentIndex {
 
   /* package */ static final String FILE_NAME_ATOMIC = "cached_content_index.exi";
+  /* package */ static final String FILE_NAME_JOURNAL = "cached_content_index.journal";
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
@@ -108,7 +114,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   /** Returns whether the file is an index file. */
   public static boolean isIndexFile(String fileName) {
     // Atomic file backups add additional suffixes to the file name.
-    return fileName.startsWith(FILE_NAME_ATOMIC);
+    return fileName.startsWith(FILE_NAME_ATOMIC) || fileName.startsWith(FILE_NAME_JOURNAL);
   }
 
   /**
@@ -186,6 +192,24 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
   }
 
+  /**
+   * Creates an instance supporting journal storage only. A change to the index is persisted by
+   * appending a record to the journal, so the cost of {@link #store()} is proportional to the
+   * number of changes since the index was last stored, rather than to the size of the index.
+   *
+   * @param journalStorageDir The directory in which the journal is stored.
+   * @param databaseProvider Provides the database from which index data previously persisted using
+   *     database storage is migrated, or {@code null} if there's no such data to migrate.
+   */
+  public CachedContentIndex(File journalStorageDir, @Nullable DatabaseProvider databaseProvider) {
+    keyToContent = new HashMap<>();
+    idToKey = new SparseArray<>();
+    removedIds = new SparseBooleanArray();
+    newIds = new SparseBooleanArray();
+    storage = new JournalStorage(new File(journalStorageDir, FILE_NAME_JOURNAL));
+    previousStorage = databaseProvider != null ? new DatabaseStorage(databaseProvider) : null;
+  }
+
   /**
    * Loads the index data for the given cache UID.
    *
@@ -732,6 +756,253 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
   }
 
+  /**
+   * {@link Storage} implementation that appends changes to a journal file. The journal is
+   * compacted by rewriting it when it contains many more records than there are entries in the
+   * index.
+   *
+   * <p>The journal consists of a version followed by a sequence of records. Each record is written
+   * as its length, followed by its payload and a CRC32 checksum of the payload. A truncated or
+   * corrupt record at the end of the journal (e.g. as a result of the process being killed whilst
+   * appending to it) is discarded when the journal is loaded.
+   */
+  private static final class JournalStorage implements Storage {
+
+    private static final int VERSION = 1;
+
+    private static final int RECORD_TYPE_UPDATE = 0;
+    private static final int RECORD_TYPE_REMOVE = 1;
+
+    /** The minimum number of records in the journal before it's considered for compaction. */
+    private static final int MIN_RECORD_COUNT_FOR_COMPACTION = 1024;
+
+    /**
+     * The journal is compacted when the number of records it contains exceeds this multiple of the
+     * number of entries in the index.
+     */
+    private static final int MAX_RECORD_COUNT_PER_ENTRY = 2;
+
+    private final File file;
+    private final AtomicFile atomicFile;
+    private final SparseArray<@NullableType CachedContent> pendingUpdates;
+    private final CRC32 crc32;
+
+    private int recordCount;
+    private boolean compactionRequired;
+
+    public JournalStorage(File file) {
+      this.file = file;
+      atomicFile = new AtomicFile(file);
+      pendingUpdates = new SparseArray<>();
+      crc32 = new CRC32();
+    }
+
+    @Override
+    public void initialize(long uid) {
+      // Do nothing. Journal storage uses a separate file for each cache.
+    }
+
+    @Override
+    public boolean exists() {
+      return atomicFile.exists();
+    }
+
+    @Override
+    public void delete() {
+      atomicFile.delete();
+      recordCount = 0;
+    }
+
+    @Override
+    public void load(
+        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      checkState(pendingUpdates.size() == 0);
+      recordCount = 0;
+      if (!atomicFile.exists()) {
+        return;
+      }
+      @Nullable DataInputStream input = null;
+      try {
+        input = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+        long remainingLength = file.length();
+        int version;
+        try {
+          version = input.readInt();
+        } catch (EOFException e) {
+          version = C.INDEX_UNSET;
+        }
+        if (version != VERSION) {
+          // The journal is from an unknown version, or is corrupt.
+          content.clear();
+          idToKey.clear();
+          atomicFile.delete();
+          return;
+        }
+        remainingLength -= 4;
+        while (remainingLength > 0) {
+          // Each record has a 4 byte length and a 4 byte checksum in addition to its payload.
+          int recordLength = remainingLength >= 8 ? input.readInt() : C.LENGTH_UNSET;
+          if (recordLength <= 0 || recordLength > remainingLength - 8) {
+            // The record is truncated or corrupt.
+            compactionRequired = true;
+            break;
+          }
+          byte[] record = new byte[recordLength];
+          input.readFully(record);
+          int checksum = input.readInt();
+          if (checksum != getChecksum(record) || !applyRecord(record, content, idToKey)) {
+            compactionRequired = true;
+            break;
+          }
+          recordCount++;
+          remainingLength -= recordLength + 8;
+        }
+      } finally {
+        Util.closeQuietly(input);
+      }
+    }
+
+    @Override
+    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+      @Nullable DataOutputStream output = null;
+      try {
+        OutputStream outputStream = atomicFile.startWrite();
+        output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.writeInt(VERSION);
+        for (CachedContent cachedContent : content.values()) {
+          writeRecord(output, cachedContent.id, cachedContent);
+        }
+        atomicFile.endWrite(output);
+        output = null;
+      } finally {
+        Util.closeQuietly(output);
+      }
+      recordCount = content.size();
+      compactionRequired = false;
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+      if (pendingUpdates.size() == 0 && !compactionRequired) {
+        return;
+      }
+      int newRecordCount = recordCount + pendingUpdates.size();
+      if (compactionRequired
+          || !file.exists()
+          || (newRecordCount >= MIN_RECORD_COUNT_FOR_COMPACTION
+              && newRecordCount > MAX_RECORD_COUNT_PER_ENTRY * content.size())) {
+        storeFully(content);
+        return;
+      }
+      FileOutputStream fileOutputStream = new FileOutputStream(file, /* append= */ true);
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+      try {
+        for (int i = 0; i < pendingUpdates.size(); i++) {
+          writeRecord(output, pendingUpdates.keyAt(i), pendingUpdates.valueAt(i));
+        }
+        output.flush();
+        fileOutputStream.getFD().sync();
+      } catch (IOException e) {
+        // A partially written record may have been appended. Rewrite the journal next time.
+        compactionRequired = true;
+        throw e;
+      } finally {
+        Util.closeQuietly(output);
+      }
+      recordCount = newRecordCount;
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void onUpdate(CachedContent cachedContent) {
+      pendingUpdates.put(cachedContent.id, cachedContent);
+    }
+
+    @Override
+    public void onRemove(CachedContent cachedContent, boolean neverStored) {
+      if (neverStored) {
+        pendingUpdates.delete(cachedContent.id);
+      } else {
+        pendingUpdates.put(cachedContent.id, null);
+      }
+    }
+
+    /**
+     * Writes a record to the journal.
+     *
+     * @param output The output to write to.
+     * @param id The id of the {@link CachedContent} that was updated or removed.
+     * @param cachedContent The updated {@link CachedContent}, or {@code null} if it was removed.
+     * @throws IOException If an error occurs writing the record.
+     */
+    private void writeRecord(
+        DataOutputStream output, int id, @Nullable CachedContent cachedContent) throws IOException {
+      ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream();
+      DataOutputStream recordOutput = new DataOutputStream(recordOutputStream);
+      if (cachedContent == null) {
+        recordOutput.writeByte(RECORD_TYPE_REMOVE);
+        recordOutput.writeInt(id);
+      } else {
+        recordOutput.writeByte(RECORD_TYPE_UPDATE);
+        recordOutput.writeInt(id);
+        recordOutput.writeUTF(cachedContent.key);
+        writeContentMetadata(cachedContent.getMetadata(), recordOutput);
+      }
+      byte[] record = recordOutputStream.toByteArray();
+      output.writeInt(record.length);
+      output.write(record);
+      output.writeInt(getChecksum(record));
+    }
+
+    /**
+     * Applies a record read from the journal.
+     *
+     * @param record The payload of the record.
+     * @param content The key to content map to update.
+     * @param idToKey The id to key map to update.
+     * @return Whether the record was valid.
+     * @throws IOException If an error occurs parsing the record.
+     */
+    private static boolean applyRecord(
+        byte[] record,
+        HashMap<String, CachedContent> content,
+        SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+      int type = input.readByte();
+      int id = input.readInt();
+      if (type == RECORD_TYPE_UPDATE) {
+        String key = input.readUTF();
+        DefaultContentMetadata metadata = readContentMetadata(input);
+        @Nullable CachedContent previousContent = content.get(key);
+        if (previousContent != null && previousContent.id != id) {
+          idToKey.remove(previousContent.id);
+        }
+        content.put(key, new CachedContent(id, key, metadata));
+        idToKey.put(id, key);
+        return true;
+      } else if (type == RECORD_TYPE_REMOVE) {
+        @Nullable String key = idToKey.get(id);
+        idToKey.remove(id);
+        // Only remove the content if its key hasn't since been assigned a different id.
+        @Nullable CachedContent cachedContent = key != null ? content.get(key) : null;
+        if (cachedContent != null && cachedContent.id == id) {
+          content.remove(key);
+        }
+        return true;
+      }
+      return false;
+    }
+
+    private int getChecksum(byte[] record) {
+      crc32.reset();
+      crc32.update(record, 0, record.length);
+      return (int) crc32.getValue();
+    }
+  }
+
   /** {@link Storage} implementation that uses an SQL database. */
   private static final class DatabaseStorage implements Storage {
 
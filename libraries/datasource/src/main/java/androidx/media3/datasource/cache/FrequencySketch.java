@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * A count-min sketch that estimates the access frequency of items, using a small, fixed amount of
+ * memory per item.
+ *
+ * <p>Counters saturate at {@link #MAX_FREQUENCY}. Once the number of increments reaches ten times
+ * the width of the sketch, all counters are halved, so that the estimates favor recent accesses.
+ * The width of the sketch is at least four times the number of items, so that estimates are rarely
+ * inflated by collisions.
+ */
+/* package */ final class FrequencySketch {
+
+  /** The maximum frequency that's estimated for an item. */
+  public static final int MAX_FREQUENCY = 15;
+
+  private static final int DEPTH = 4;
+  private static final int MIN_WIDTH = 1024;
+  private static final int MAX_WIDTH = 1 << 26;
+  private static final int[] SEEDS = {0x97cb3127, 0xb19fd2b1, 0x2f36dbcb, 0x7f4a7c15};
+
+  private byte[] table;
+  private int width;
+  private int sampleSize;
+  private int additions;
+
+  /** Creates an instance. */
+  public FrequencySketch() {
+    table = new byte[0];
+    ensureCapacity(/* maximumSize= */ 0);
+  }
+
+  /**
+   * Ensures that the sketch is wide enough to estimate frequencies for the given number of items
+   * with a low error rate. Growing the sketch resets all of the estimates.
+   *
+   * @param maximumSize The number of items.
+   */
+  public void ensureCapacity(int maximumSize) {
+    int minWidth = max(MIN_WIDTH, min(maximumSize, MAX_WIDTH / 4) * 4);
+    int newWidth = Integer.highestOneBit(minWidth - 1) << 1;
+    if (newWidth <= width) {
+      return;
+    }
+    width = newWidth;
+    table = new byte[DEPTH * width];
+    sampleSize = 10 * width;
+    additions = 0;
+  }
+
+  /** Returns the estimated frequency of an item, between 0 and {@link #MAX_FREQUENCY}. */
+  public int getFrequency(int itemHash) {
+    int frequency = MAX_FREQUENCY;
+    for (int i = 0; i < DEPTH; i++) {
+      frequency = min(frequency, table[getIndex(itemHash, i)]);
+    }
+    return frequency;
+  }
+
+  /** Increments the estimated frequency of an item. */
+  public void increment(int itemHash) {
+    boolean incremented = false;
+    for (int i = 0; i < DEPTH; i++) {
+      int index = getIndex(itemHash, i);
+      if (table[index] < MAX_FREQUENCY) {
+        table[index]++;
+        incremented = true;
+      }
+    }
+    if (incremented && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (byte) (table[i] >> 1);
+    }
+    additions /= 2;
+  }
+
+  private int getIndex(int itemHash, int row) {
+    // Mix the hash with the seed of the row using the MurmurHash3 finalizer.
+    int hash = (itemHash ^ SEEDS[row]) * 0x9e3779b9;
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return row * width + (hash & (width - 1));
+  }
+}
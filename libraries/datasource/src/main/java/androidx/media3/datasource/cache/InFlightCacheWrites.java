@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * Tracks the writes of upstream data into a {@link Cache} by {@link CacheDataSource} instances, so
+ * that other instances that read the same data at the same time follow the write instead of
+ * requesting the data from upstream again.
+ *
+ * <p>When a {@link CacheDataSource} can't read some data from the cache because another instance
+ * is writing it, it reads the data that the other instance has written so far, and then waits for
+ * more data to be written. Only a single upstream request is made for the data, and all of the
+ * readers receive it as quickly as it's loaded.
+ *
+ * <p>The data most recently written by each write is kept in memory, in a window of a fixed size.
+ * The full window is only allocated once a reader follows the write. Until then only the last
+ * {@value #UNFOLLOWED_WINDOW_SIZE} bytes are kept, so that a reader can still follow a write that
+ * started shortly before it. A reader that falls behind a write by more than the window, or whose
+ * write stops making progress for longer than the stall timeout (for example because the writing
+ * reader stopped reading), stops following the write and reads the rest of the data as it would
+ * without this class. Writes don't make progress while their reader isn't reading, so the stall
+ * timeout should be short.
+ *
+ * <p>The same instance must be {@linkplain CacheDataSource.Factory#setInFlightCacheWrites set} on
+ * all of the {@link CacheDataSource.Factory} instances that use the same {@link Cache}.
+ */
+@UnstableApi
+public final class InFlightCacheWrites {
+
+  /** The default size of the window of data kept in memory for each followed write, in bytes. */
+  public static final int DEFAULT_WINDOW_SIZE = 1024 * 1024;
+
+  /** The default time after which a write that doesn't make progress isn't followed. */
+  public static final long DEFAULT_STALL_TIMEOUT_MS = 1000;
+
+  /** The size of the window of data kept in memory for a write that isn't followed, in bytes. */
+  /* package */ static final int UNFOLLOWED_WINDOW_SIZE = 64 * 1024;
+
+  private final int windowSize;
+  private final long stallTimeoutMs;
+
+  @GuardedBy("writes")
+  private final HashMap<String, List<Write>> writes;
+
+  /**
+   * Creates an instance with a window size of {@link #DEFAULT_WINDOW_SIZE} and a stall timeout of
+   * {@link #DEFAULT_STALL_TIMEOUT_MS}.
+   */
+  public InFlightCacheWrites() {
+    this(DEFAULT_WINDOW_SIZE, DEFAULT_STALL_TIMEOUT_MS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param windowSize The size of the window of data kept in memory for each followed write, in
+   *     bytes.
+   * @param stallTimeoutMs The time after which a write that doesn't make progress isn't followed,
+   *     in milliseconds.
+   */
+  public InFlightCacheWrites(int windowSize, long stallTimeoutMs) {
+    checkArgument(windowSize > 0 && stallTimeoutMs > 0);
+    this.windowSize = windowSize;
+    this.stallTimeoutMs = stallTimeoutMs;
+    writes = new HashMap<>();
+  }
+
+  /**
+   * Registers a write of the data of a resource.
+   *
+   * @param key The cache key of the resource.
+   * @param position The position of the first byte that will be written.
+   * @param length The number of bytes that will be written, or {@link C#LENGTH_UNSET} if unknown.
+   * @return The {@link Write}, which must be {@linkplain Write#end() ended} once it's complete.
+   */
+  /* package */ Write startWrite(String key, long position, long length) {
+    Write write = new Write(key, position, length);
+    synchronized (writes) {
+      @Nullable List<Write> writesForKey = writes.get(key);
+      if (writesForKey == null) {
+        writesForKey = new ArrayList<>();
+        writes.put(key, writesForKey);
+      }
+      writesForKey.add(write);
+    }
+    return write;
+  }
+
+  /**
+   * Returns a write that can be followed to read the data of a resource from a position, or
+   * {@code null} if there's no such write.
+   *
+   * @param key The cache key of the resource.
+   * @param position The position from which to read.
+   */
+  @Nullable
+  /* package */ Write findWrite(String key, long position) {
+    synchronized (writes) {
+      @Nullable List<Write> writesForKey = writes.get(key);
+      if (writesForKey == null) {
+        return null;
+      }
+      for (int i = 0; i < writesForKey.size(); i++) {
+        Write write = writesForKey.get(i);
+        if (write.follow(position)) {
+          return write;
+        }
+      }
+      return null;
+    }
+  }
+
+  private void removeWrite(Write write) {
+    synchronized (writes) {
+      @Nullable List<Write> writesForKey = writes.get(write.key);
+      if (writesForKey != null && writesForKey.remove(write) && writesForKey.isEmpty()) {
+        writes.remove(write.key);
+      }
+    }
+  }
+
+  /**
+   * A write of contiguous data of a resource, whose most recently written data can be read while
+   * it's being written.
+   */
+  /* package */ final class Write {
+
+    /** The cache key of the resource. */
+    public final String key;
+
+    /** The position of the first byte of the write. */
+    public final long startPosition;
+
+    /** The number of bytes of the write, or {@link C#LENGTH_UNSET} if unknown. */
+    public final long length;
+
+    @GuardedBy("this")
+    private byte @MonotonicNonNull [] window;
+
+    @GuardedBy("this")
+    private int windowCapacity;
+
+    @GuardedBy("this")
+    private long endPosition;
+
+    @GuardedBy("this")
+    private long lastProgressTimeMs;
+
+    @GuardedBy("this")
+    private boolean ended;
+
+    @GuardedBy("this")
+    private long resourceLength;
+
+    private Write(String key, long startPosition, long length) {
+      this.key = key;
+      this.startPosition = startPosition;
+      this.length = length;
+      endPosition = startPosition;
+      resourceLength = C.LENGTH_UNSET;
+      windowCapacity = min(windowSize, UNFOLLOWED_WINDOW_SIZE);
+      lastProgressTimeMs = SystemClock.elapsedRealtime();
+    }
+
+    /** Appends data that has been written. */
+    public synchronized void append(byte[] data, int offset, int dataLength) {
+      byte[] window = getWindow();
+      while (dataLength > 0) {
+        int windowOffset = getWindowOffset(endPosition);
+        int bytesToCopy = min(dataLength, windowCapacity - windowOffset);
+        System.arraycopy(data, offset, window, windowOffset, bytesToCopy);
+        offset += bytesToCopy;
+        dataLength -= bytesToCopy;
+        endPosition += bytesToCopy;
+      }
+      onProgress();
+    }
+
+    /**
+     * Appends data that has been written, which is the {@code dataLength} bytes before the position
+     * of {@code data}. The position of {@code data} isn't modified.
+     */
+    public synchronized void append(ByteBuffer data, int dataLength) {
+      byte[] window = getWindow();
+      ByteBuffer source = data.duplicate();
+      source.position(data.position() - dataLength);
+      while (dataLength > 0) {
+        int windowOffset = getWindowOffset(endPosition);
+        int bytesToCopy = min(dataLength, windowCapacity - windowOffset);
+        source.get(window, windowOffset, bytesToCopy);
+        dataLength -= bytesToCopy;
+        endPosition += bytesToCopy;
+      }
+      onProgress();
+    }
+
+    /** Sets the length of the resource, once it's known. */
+    public synchronized void setResourceLength(long resourceLength) {
+      this.resourceLength = resourceLength;
+      notifyAll();
+    }
+
+    /**
+     * Ends the write. Readers following the write can still read the data that's in the window,
+     * but no more data will be appended.
+     */
+    public void end() {
+      synchronized (this) {
+        ended = true;
+        notifyAll();
+      }
+      removeWrite(this);
+    }
+
+    /**
+     * Returns whether the write reached the end of the resource, and there's no more data to read
+     * from {@code position}.
+     */
+    public synchronized boolean isEndOfResource(long position) {
+      return resourceLength != C.LENGTH_UNSET && position >= resourceLength;
+    }
+
+    /**
+     * Reads data of the write, waiting for it to be written if necessary.
+     *
+     * @param position The position of the data to read.
+     * @param target The array into which the data is read.
+     * @param offset The offset in {@code target} at which the data is written.
+     * @param length The maximum number of bytes to read.
+     * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the data can't be read
+     *     by following the write, because the write is complete, has ended, has stalled or has
+     *     overwritten the data in its window.
+     * @throws InterruptedIOException If the thread is interrupted while waiting for data.
+     */
+    public synchronized int read(long position, byte[] target, int offset, int length)
+        throws InterruptedIOException {
+      if (length == 0) {
+        return 0;
+      }
+      while (position >= endPosition) {
+        if (ended || isComplete() || position > endPosition) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        long waitTimeMs = lastProgressTimeMs + stallTimeoutMs - SystemClock.elapsedRealtime();
+        if (waitTimeMs <= 0) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        try {
+          wait(waitTimeMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (position < getWindowStartPosition()) {
+        // The data has been overwritten.
+        return C.RESULT_END_OF_INPUT;
+      }
+      byte[] window = getWindow();
+      int bytesToRead = (int) min(length, endPosition - position);
+      int bytesRead = 0;
+      while (bytesRead < bytesToRead) {
+        int windowOffset = getWindowOffset(position + bytesRead);
+        int bytesToCopy = min(bytesToRead - bytesRead, windowCapacity - windowOffset);
+        System.arraycopy(window, windowOffset, target, offset + bytesRead, bytesToCopy);
+        bytesRead += bytesToCopy;
+      }
+      return bytesRead;
+    }
+
+    /**
+     * Returns whether the write can be followed from {@code position}, and if so makes sure that
+     * the full window is allocated for the reader that follows it.
+     */
+    private synchronized boolean follow(long position) {
+      if (position < getWindowStartPosition() || position > endPosition) {
+        return false;
+      }
+      boolean canFollow =
+          position < endPosition
+              || (!ended
+                  && !isComplete()
+                  && SystemClock.elapsedRealtime() - lastProgressTimeMs < stallTimeoutMs);
+      if (canFollow && windowCapacity < windowSize) {
+        growWindow();
+      }
+      return canFollow;
+    }
+
+    @GuardedBy("this")
+    private boolean isComplete() {
+      return (resourceLength != C.LENGTH_UNSET && endPosition >= resourceLength)
+          || (length != C.LENGTH_UNSET && endPosition >= startPosition + length);
+    }
+
+    @GuardedBy("this")
+    private long getWindowStartPosition() {
+      return max(startPosition, endPosition - windowCapacity);
+    }
+
+    @GuardedBy("this")
+    private int getWindowOffset(long position) {
+      return (int) ((position - startPosition) % windowCapacity);
+    }
+
+    @GuardedBy("this")
+    private byte[] getWindow() {
+      if (window == null) {
+        window = new byte[windowCapacity];
+      }
+      return window;
+    }
+
+    /** Grows the window to {@code windowSize}, keeping the data that it holds. */
+    @GuardedBy("this")
+    private void growWindow() {
+      byte[] newWindow = new byte[windowSize];
+      if (window != null) {
+        long position = getWindowStartPosition();
+        int newWindowOffset = (int) ((position - startPosition) % windowSize);
+        while (position < endPosition) {
+          int windowOffset = getWindowOffset(position);
+          int bytesToCopy =
+              (int)
+                  min(
+                      endPosition - position,
+                      min(windowCapacity - windowOffset, windowSize - newWindowOffset));
+          System.arraycopy(window, windowOffset, newWindow, newWindowOffset, bytesToCopy);
+          position += bytesToCopy;
+          newWindowOffset = (newWindowOffset + bytesToCopy) % windowSize;
+        }
+      }
+      window = newWindow;
+      windowCapacity = windowSize;
+    }
+
+    @GuardedBy("this")
+    private void onProgress() {
+      lastProgressTimeMs = SystemClock.elapsedRealtime();
+      notifyAll();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSpec;
+import java.io.IOException;
+
+/**
+ * A {@link androidx.media3.datasource.DataSource} that reads data by following an {@link
+ * InFlightCacheWrites.Write}.
+ *
+ * <p>Reading returns {@link C#RESULT_END_OF_INPUT} once the data can no longer be read by
+ * following the write, which may be before the end of the resource.
+ */
+/* package */ final class InFlightWriteDataSource extends BaseDataSource {
+
+  @Nullable private InFlightCacheWrites.Write write;
+  @Nullable private Uri uri;
+  private long readPosition;
+  private long bytesRemaining;
+  private boolean opened;
+
+  public InFlightWriteDataSource() {
+    super(/* isNetwork= */ false);
+  }
+
+  /** Sets the write to follow. Must be called before each call to {@link #open(DataSpec)}. */
+  public void setWrite(InFlightCacheWrites.Write write) {
+    this.write = write;
+  }
+
+  /** Returns whether the followed write reached the end of the resource at the read position. */
+  public boolean isAtEndOfResource() {
+    return write != null && write.isEndOfResource(readPosition);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    checkNotNull(write);
+    uri = dataSpec.uri;
+    transferInitializing(dataSpec);
+    readPosition = dataSpec.position;
+    bytesRemaining = dataSpec.length;
+    opened = true;
+    transferStarted(dataSpec);
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    int bytesToRead = bytesRemaining == C.LENGTH_UNSET ? length : (int) min(length, bytesRemaining);
+    int bytesRead = checkNotNull(write).read(readPosition, buffer, offset, bytesToRead);
+    if (bytesRead == C.RESULT_END_OF_INPUT) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    readPosition += bytesRead;
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      bytesRemaining -= bytesRead;
+    }
+    bytesTransferred(bytesRead);
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() {
+    uri = null;
+    write = null;
+    if (opened) {
+      opened = false;
+      transferEnded();
+    }
+  }
+}
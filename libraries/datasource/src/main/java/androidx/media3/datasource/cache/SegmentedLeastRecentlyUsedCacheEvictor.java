@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import com.google.common.collect.ImmutableMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts cache files using a segmented least recently used (SLRU) policy.
+ *
+ * <p>Spans are added to a probationary segment, and are promoted to a protected segment when
+ * they're accessed again. Spans are evicted from the probationary segment first, in least recently
+ * used order, so that spans that are only read once, for example during a sequential scan of on
+ * demand content, don't cause spans that are read repeatedly to be evicted. When the protected
+ * segment exceeds its maximum size, its least recently used spans are moved back to the
+ * probationary segment.
+ *
+ * <p>Spans whose key starts with a prefix that has a weight greater than 1 are added directly to
+ * the protected segment. This can be used to keep manifests and initialization segments in
+ * preference to media segments.
+ */
+@UnstableApi
+public final class SegmentedLeastRecentlyUsedCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that's used for the protected segment. */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final CacheKeyWeights keyWeights;
+  private final TreeMap<CacheSpan, Node> nodes;
+  private final LinkedHashSet<Node> probationSegment;
+  private final LinkedHashSet<Node> protectedSegment;
+
+  private long currentSize;
+  private long protectedSize;
+
+  /**
+   * Creates an instance that uses {@link #DEFAULT_PROTECTED_FRACTION} of the cache for the
+   * protected segment.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_PROTECTED_FRACTION, ImmutableMap.of());
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param protectedFraction The fraction of the cache that's used for the protected segment.
+   * @param keyPrefixWeights The weights of keys starting with each prefix. Spans of keys with a
+   *     weight greater than 1 are added directly to the protected segment. If a key starts with
+   *     more than one of the prefixes, the weight of the longest prefix is used. Keys that don't
+   *     start with any of the prefixes have a weight of 1.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(
+      long maxBytes, float protectedFraction, Map<String, Integer> keyPrefixWeights) {
+    checkArgument(protectedFraction >= 0 && protectedFraction <= 1);
+    this.maxBytes = maxBytes;
+    this.maxProtectedBytes = (long) (maxBytes * protectedFraction);
+    this.keyWeights = new CacheKeyWeights(keyPrefixWeights);
+    nodes = new TreeMap<>();
+    probationSegment = new LinkedHashSet<>();
+    protectedSegment = new LinkedHashSet<>();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    Node node = new Node(span);
+    nodes.put(span, node);
+    currentSize += span.length;
+    if (keyWeights.getWeight(span.key) > 1) {
+      addToProtectedSegment(node);
+    } else {
+      probationSegment.add(node);
+    }
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    @Nullable Node node = nodes.get(span);
+    if (node != null) {
+      removeNode(node);
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Node node = nodes.remove(oldSpan);
+    if (node == null) {
+      onSpanAdded(cache, newSpan);
+      return;
+    }
+    node.span = newSpan;
+    nodes.put(newSpan, node);
+    if (node.isProtected) {
+      // Move the span to the most recently used end of the protected segment.
+      protectedSegment.remove(node);
+      protectedSegment.add(node);
+    } else {
+      probationSegment.remove(node);
+      addToProtectedSegment(node);
+    }
+  }
+
+  private void addToProtectedSegment(Node node) {
+    node.isProtected = true;
+    protectedSegment.add(node);
+    protectedSize += node.span.length;
+    while (protectedSize > maxProtectedBytes && protectedSegment.size() > 1) {
+      // Demote the least recently used span to the most recently used end of the probationary
+      // segment.
+      Node demotedNode = protectedSegment.iterator().next();
+      protectedSegment.remove(demotedNode);
+      protectedSize -= demotedNode.span.length;
+      demotedNode.isProtected = false;
+      probationSegment.add(demotedNode);
+    }
+  }
+
+  private void removeNode(Node node) {
+    nodes.remove(node.span);
+    currentSize -= node.span.length;
+    if (node.isProtected) {
+      protectedSegment.remove(node);
+      protectedSize -= node.span.length;
+    } else {
+      probationSegment.remove(node);
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes && !nodes.isEmpty()) {
+      Node victim =
+          probationSegment.isEmpty()
+              ? protectedSegment.iterator().next()
+              : probationSegment.iterator().next();
+      // Remove the node before removing the span, so that eviction makes progress even if the span
+      // is no longer in the cache.
+      removeNode(victim);
+      cache.removeSpan(victim.span);
+    }
+  }
+
+  private static final class Node {
+
+    public CacheSpan span;
+    public boolean isProtected;
+
+    public Node(CacheSpan span) {
+      this.span = span;
+    }
+  }
+}
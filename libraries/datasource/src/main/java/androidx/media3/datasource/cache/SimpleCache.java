@@ -15,8 +15,11 @@
  */
 package androidx.media3.datasource.cache;
 
+import static java.lang.Math.min;
+
 import android.os.ConditionVariable;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
@@ -31,11 +34,16 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -43,6 +51,23 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  *
  * <p>Only one instance of SimpleCache is allowed for a given directory at a given time.
  *
+ * <p>The cache is safe for use from multiple threads. Queries that don't modify the in-memory
+ * representation (e.g. {@link #isCached(String, long, long)} and {@link #getCachedBytes(String,
+ * long, long)}) can run concurrently with each other. Starting reads and writes of content whose
+ * key is already in the cache, and releasing hole spans, only lock the key being accessed, so they
+ * can run concurrently for different keys. File system access and updates to the file metadata
+ * index are performed without blocking operations on other keys. Threads blocked in {@link
+ * #startReadWrite(String, long, long)} are only woken up by changes to the key they're waiting
+ * for.
+ *
+ * <p>If a {@link DatabaseProvider} is used, the cache is initialized from the file metadata stored
+ * in the database without scanning the cache directory. The cache directory is then verified in
+ * the background, whilst the cache is available for use. Until verification has completed, spans
+ * whose files were modified or deleted other than through the cache are still reported by queries
+ * such as {@link #isCached(String, long, long)} and {@link #getCachedSpans(String)}. Such spans are
+ * never returned for reading by {@link #startReadWrite(String, long, long)}, which checks the file
+ * of a span before returning it.
+ *
  * <p>To delete a SimpleCache, use {@link #delete(File, DatabaseProvider)} rather than deleting the
  * directory and its contents directly. This is necessary to ensure that associated index data is
  * also removed.
@@ -60,7 +85,13 @@ public final class SimpleCache implements Cache {
    */
   private static final int SUBDIRECTORY_COUNT = 10;
 
-  private static final String UID_FILE_SUFFIX = ".uid";
+  /* package */ static final String UID_FILE_SUFFIX = ".uid";
+
+  /** The number of files verified per acquisition of the cache lock by {@link #verifyDirectory}. */
+  private static final int VERIFY_DIRECTORY_BATCH_SIZE = 1000;
+
+  /** The number of {@link KeyLock KeyLocks} between which cache keys are distributed. */
+  private static final int KEY_LOCK_COUNT = 64;
 
   private static final HashSet<File> lockedCacheDirs = new HashSet<>();
 
@@ -72,6 +103,30 @@ public final class SimpleCache implements Cache {
   private final Random random;
   private final boolean touchCacheSpans;
 
+  /**
+   * Guards the in-memory representation. Holding the read lock is sufficient to read it, and to
+   * modify the locked ranges of content that's already in {@link #contentIndex} whilst also holding
+   * the content's {@link KeyLock}. All other modifications require the write lock.
+   */
+  private final Lock readLock;
+
+  private final Lock writeLock;
+
+  /**
+   * Locks between which cache keys are distributed by {@link #getKeyLock(String)}. A key lock must
+   * only be acquired after {@link #readLock} or {@link #writeLock}, or without holding either.
+   */
+  private final KeyLock[] keyLocks;
+
+  private final ConditionVariable directoryVerifiedCondition;
+
+  /**
+   * Names of files returned by {@link #startFile(String, long, long)} whilst the cache directory is
+   * being verified, or {@code null} if the directory isn't being verified. Guarded by {@link
+   * #writeLock}.
+   */
+  @Nullable private HashSet<String> filesStartedDuringVerification;
+
   private long uid;
   private long totalSpace;
   private boolean released;
@@ -167,6 +222,43 @@ public final class SimpleCache implements Cache {
         /* preferLegacyIndex= */ false);
   }
 
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * <p>If {@code useJournalIndex} is {@code true}, the cache index is stored in an append-only
+   * journal in the cache directory. Storing a change to the index then costs time proportional to
+   * the size of the change, rather than to the size of the index, which is beneficial for caches
+   * containing a very large number of keys. Any cache index that was previously stored in the
+   * database is migrated to the journal. Switching from a journal index back to a database index
+   * is not supported, and will result in the cache contents being deleted.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which cache file metadata and, if {@code
+   *     useJournalIndex} is {@code false}, the cache index are stored.
+   * @param useJournalIndex Whether to store the cache index in a journal in the cache directory.
+   */
+  public SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      DatabaseProvider databaseProvider,
+      boolean useJournalIndex) {
+    this(
+        cacheDir,
+        evictor,
+        useJournalIndex
+            ? new CachedContentIndex(cacheDir, databaseProvider)
+            : new CachedContentIndex(
+                databaseProvider,
+                cacheDir,
+                /* legacyStorageSecretKey= */ null,
+                /* legacyStorageEncrypt= */ false,
+                /* preferLegacyStorage= */ false),
+        new CacheFileMetadataIndex(databaseProvider));
+  }
+
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the cache directory.
    * Hence the directory cannot be used to store other files.
@@ -223,6 +315,14 @@ public final class SimpleCache implements Cache {
     listeners = new HashMap<>();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    readLock = lock.readLock();
+    writeLock = lock.writeLock();
+    keyLocks = new KeyLock[KEY_LOCK_COUNT];
+    for (int i = 0; i < KEY_LOCK_COUNT; i++) {
+      keyLocks[i] = new KeyLock();
+    }
+    directoryVerifiedCondition = new ConditionVariable();
     uid = UID_UNSET;
 
     // Start cache initialization.
@@ -230,288 +330,515 @@ public final class SimpleCache implements Cache {
     new Thread("ExoPlayer:SimpleCacheInit") {
       @Override
       public void run() {
-        synchronized (SimpleCache.this) {
+        boolean requiresDirectoryVerification;
+        writeLock.lock();
+        try {
           conditionVariable.open();
           initialize();
           SimpleCache.this.evictor.onCacheInitialized();
+          requiresDirectoryVerification = filesStartedDuringVerification != null;
+        } finally {
+          writeLock.unlock();
+        }
+        if (requiresDirectoryVerification) {
+          verifyDirectory();
         }
+        directoryVerifiedCondition.open();
       }
     }.start();
     conditionVariable.block();
   }
 
+  /**
+   * Blocks until verification of the cache directory has completed. The cache directory is
+   * verified after the cache has been made available if its in-memory representation was loaded
+   * from the file index.
+   */
+  @VisibleForTesting
+  /* package */ void blockUntilDirectoryVerified() {
+    directoryVerifiedCondition.block();
+  }
+
   /**
    * Checks whether the cache was initialized successfully.
    *
    * @throws CacheException If an error occurred during initialization.
    */
-  public synchronized void checkInitialization() throws CacheException {
-    if (initializationException != null) {
-      throw initializationException;
+  public void checkInitialization() throws CacheException {
+    readLock.lock();
+    try {
+      if (initializationException != null) {
+        throw initializationException;
+      }
+    } finally {
+      readLock.unlock();
     }
   }
 
   @Override
-  public synchronized long getUid() {
-    return uid;
+  public long getUid() {
+    readLock.lock();
+    try {
+      return uid;
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
-  public synchronized void release() {
-    if (released) {
-      return;
-    }
-    listeners.clear();
-    removeStaleSpans();
+  public void release() {
+    writeLock.lock();
     try {
-      contentIndex.store();
-    } catch (IOException e) {
-      Log.e(TAG, "Storing index file failed", e);
+      if (released) {
+        return;
+      }
+      listeners.clear();
+      removeStaleSpans();
+      try {
+        contentIndex.store();
+      } catch (IOException e) {
+        Log.e(TAG, "Storing index file failed", e);
+      } finally {
+        unlockFolder(cacheDir);
+        released = true;
+      }
     } finally {
-      unlockFolder(cacheDir);
-      released = true;
+      writeLock.unlock();
     }
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
-    Assertions.checkState(!released);
-    Assertions.checkNotNull(key);
-    Assertions.checkNotNull(listener);
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey == null) {
-      listenersForKey = new ArrayList<>();
-      listeners.put(key, listenersForKey);
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    writeLock.lock();
+    try {
+      Assertions.checkState(!released);
+      Assertions.checkNotNull(key);
+      Assertions.checkNotNull(listener);
+      ArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey == null) {
+        listenersForKey = new ArrayList<>();
+        listeners.put(key, listenersForKey);
+      }
+      listenersForKey.add(listener);
+      return getCachedSpans(key);
+    } finally {
+      writeLock.unlock();
     }
-    listenersForKey.add(listener);
-    return getCachedSpans(key);
   }
 
   @Override
-  public synchronized void removeListener(String key, Listener listener) {
-    if (released) {
-      return;
-    }
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey != null) {
-      listenersForKey.remove(listener);
-      if (listenersForKey.isEmpty()) {
-        listeners.remove(key);
+  public void removeListener(String key, Listener listener) {
+    writeLock.lock();
+    try {
+      if (released) {
+        return;
+      }
+      ArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey != null) {
+        listenersForKey.remove(listener);
+        if (listenersForKey.isEmpty()) {
+          listeners.remove(key);
+        }
       }
+    } finally {
+      writeLock.unlock();
     }
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
-    Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent == null || cachedContent.isEmpty()
-        ? new TreeSet<>()
-        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent == null || cachedContent.isEmpty()
+          ? new TreeSet<>()
+          : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
-    Assertions.checkState(!released);
-    return new HashSet<>(contentIndex.getKeys());
+  public Set<String> getKeys() {
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      return new HashSet<>(contentIndex.getKeys());
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
-  public synchronized long getCacheSpace() {
-    Assertions.checkState(!released);
-    return totalSpace;
+  public long getCacheSpace() {
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      return totalSpace;
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position, long length)
+  public CacheSpan startReadWrite(String key, long position, long length)
       throws InterruptedException, CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
-
     while (true) {
-      CacheSpan span = startReadWriteNonBlocking(key, position, length);
+      // Read the generation before trying to start, so that changes made after the attempt fails
+      // and before this thread starts waiting aren't missed.
+      KeyLock keyLock = getKeyLock(key);
+      int keyGeneration = keyLock.getGeneration();
+      @Nullable CacheSpan span = startReadWriteNonBlocking(key, position, length);
       if (span != null) {
         return span;
-      } else {
-        // Lock not available. We'll be woken up when a span is added, or when a locked span is
-        // released. We'll be able to make progress when either:
-        // 1. A span is added for the requested key that covers the requested position, in which
-        //    case a read can be started.
-        // 2. The lock for the requested key is released, in which case a write can be started.
-        wait();
       }
+      // Lock not available. We'll be woken up when a span is added for the requested key, or when
+      // a locked span for the requested key is released. We'll be able to make progress when
+      // either:
+      // 1. A span is added for the requested key that covers the requested position, in which
+      //    case a read can be started.
+      // 2. The lock for the requested key is released, in which case a write can be started.
+      keyLock.awaitChange(keyGeneration);
     }
   }
 
   @Override
   @Nullable
-  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position, long length)
+  public CacheSpan startReadWriteNonBlocking(String key, long position, long length)
       throws CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      checkInitialization();
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      if (cachedContent != null) {
+        // The key is in the cache, so its range locks can be modified holding only its key lock.
+        KeyLock keyLock = getKeyLock(key);
+        keyLock.lock.lock();
+        try {
+          SimpleCacheSpan span = cachedContent.getSpan(position, length);
+          if (!span.isCached) {
+            // Write case, or lock not available.
+            return cachedContent.lockRange(position, span.length) ? span : null;
+          }
+          if (!touchCacheSpans && Assertions.checkNotNull(span.file).length() == span.length) {
+            // Read case.
+            return span;
+          }
+        } finally {
+          keyLock.lock.unlock();
+        }
+      }
+    } finally {
+      readLock.unlock();
+    }
 
-    SimpleCacheSpan span = getSpan(key, position, length);
+    // The key isn't in the cache, the span has to be touched, or the file of the span has been
+    // modified or deleted. Each of these requires modifying the in-memory representation.
+    writeLock.lock();
+    boolean holdsWriteLock = true;
+    try {
+      Assertions.checkState(!released);
+      checkInitialization();
+      SimpleCacheSpan span = getSpan(key, position, length);
+
+      if (span.isCached) {
+        // Read case.
+        SimpleCacheSpan touchedSpan = touchSpan(key, span);
+        if (touchCacheSpans && fileIndex != null) {
+          // Persist the touch timestamp holding only the read lock. This allows other threads to
+          // read whilst the database is written, and prevents the span from being removed, which
+          // would leave a stale entry in the file index.
+          readLock.lock();
+          writeLock.unlock();
+          holdsWriteLock = false;
+          try {
+            updateFileIndexForTouchedSpan(touchedSpan);
+          } finally {
+            readLock.unlock();
+          }
+        }
+        return touchedSpan;
+      }
 
-    if (span.isCached) {
-      // Read case.
-      return touchSpan(key, span);
-    }
+      CachedContent cachedContent = contentIndex.getOrAdd(key);
+      if (cachedContent.lockRange(position, span.length)) {
+        // Write case.
+        return span;
+      }
 
-    CachedContent cachedContent = contentIndex.getOrAdd(key);
-    if (cachedContent.lockRange(position, span.length)) {
-      // Write case.
-      return span;
+      // Lock not available.
+      return null;
+    } finally {
+      if (holdsWriteLock) {
+        writeLock.unlock();
+      }
     }
-
-    // Lock not available.
-    return null;
   }
 
   @Override
-  public synchronized File startFile(String key, long position, long length) throws CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
+  public File startFile(String key, long position, long length) throws CacheException {
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      checkInitialization();
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(key));
+      KeyLock keyLock = getKeyLock(key);
+      keyLock.lock.lock();
+      try {
+        Assertions.checkState(cachedContent.isFullyLocked(position, length));
+      } finally {
+        keyLock.lock.unlock();
+      }
+    } finally {
+      readLock.unlock();
+    }
 
-    CachedContent cachedContent = contentIndex.get(key);
-    Assertions.checkNotNull(cachedContent);
-    Assertions.checkState(cachedContent.isFullyLocked(position, length));
     if (!cacheDir.exists()) {
-      // The cache directory has been deleted from underneath us. Recreate it, and remove in-memory
-      // spans corresponding to cache files that no longer exist.
-      createCacheDirectories(cacheDir);
-      removeStaleSpans();
+      writeLock.lock();
+      try {
+        if (!cacheDir.exists()) {
+          // The cache directory has been deleted from underneath us. Recreate it, and remove
+          // in-memory spans corresponding to cache files that no longer exist.
+          createCacheDirectories(cacheDir);
+          removeStaleSpans();
+        }
+      } finally {
+        writeLock.unlock();
+      }
     }
-    evictor.onStartFile(this, key, position, length);
-    // Randomly distribute files into subdirectories with a uniform distribution.
-    File cacheSubDir = new File(cacheDir, Integer.toString(random.nextInt(SUBDIRECTORY_COUNT)));
+
+    File file;
+    writeLock.lock();
+    try {
+      Assertions.checkState(!released);
+      evictor.onStartFile(this, key, position, length);
+      // Randomly distribute files into subdirectories with a uniform distribution.
+      File cacheSubDir = new File(cacheDir, Integer.toString(random.nextInt(SUBDIRECTORY_COUNT)));
+      long lastTouchTimestamp = System.currentTimeMillis();
+      // The caller holds the lock for the range, so the content can't have been removed.
+      int id = Assertions.checkNotNull(contentIndex.get(key)).id;
+      file = SimpleCacheSpan.getCacheFile(cacheSubDir, id, position, lastTouchTimestamp);
+      if (filesStartedDuringVerification != null) {
+        filesStartedDuringVerification.add(file.getName());
+      }
+    } finally {
+      writeLock.unlock();
+    }
+
+    File cacheSubDir = Assertions.checkNotNull(file.getParentFile());
     if (!cacheSubDir.exists()) {
       createCacheDirectories(cacheSubDir);
     }
-    long lastTouchTimestamp = System.currentTimeMillis();
-    return SimpleCacheSpan.getCacheFile(
-        cacheSubDir, cachedContent.id, position, lastTouchTimestamp);
+    return file;
   }
 
   @Override
-  public synchronized void commitFile(File file, long length) throws CacheException {
-    Assertions.checkState(!released);
-    if (!file.exists()) {
-      return;
-    }
-    if (length == 0) {
-      file.delete();
-      return;
-    }
+  public void commitFile(File file, long length) throws CacheException {
+    SimpleCacheSpan span;
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      if (!file.exists()) {
+        return;
+      }
+      if (length == 0) {
+        file.delete();
+        return;
+      }
 
-    SimpleCacheSpan span =
-        Assertions.checkNotNull(SimpleCacheSpan.createCacheEntry(file, length, contentIndex));
-    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
-    Assertions.checkState(cachedContent.isFullyLocked(span.position, span.length));
+      // Files returned by startFile never need upgrading, so creating the span doesn't modify the
+      // content index.
+      span = Assertions.checkNotNull(SimpleCacheSpan.createCacheEntry(file, length, contentIndex));
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
+      KeyLock keyLock = getKeyLock(span.key);
+      keyLock.lock.lock();
+      try {
+        Assertions.checkState(cachedContent.isFullyLocked(span.position, span.length));
+      } finally {
+        keyLock.lock.unlock();
+      }
 
-    // Check if the span conflicts with the set content length
-    long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
-    if (contentLength != C.LENGTH_UNSET) {
-      Assertions.checkState((span.position + span.length) <= contentLength);
+      // Check if the span conflicts with the set content length
+      long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
+      if (contentLength != C.LENGTH_UNSET) {
+        Assertions.checkState((span.position + span.length) <= contentLength);
+      }
+    } finally {
+      readLock.unlock();
     }
 
+    // The caller holds the lock for the range covered by the span, so no other thread can commit
+    // an overlapping span whilst the file index is being updated outside of the cache lock.
     if (fileIndex != null) {
       String fileName = file.getName();
       try {
-        fileIndex.set(fileName, span.length, span.lastTouchTimestamp);
+        fileIndex.set(
+            fileName,
+            new CacheFileMetadata(span.length, span.lastTouchTimestamp, getDirectoryName(file)));
       } catch (IOException e) {
         throw new CacheException(e);
       }
     }
-    addSpan(span);
+
+    writeLock.lock();
     try {
-      contentIndex.store();
-    } catch (IOException e) {
-      throw new CacheException(e);
+      Assertions.checkState(!released);
+      addSpan(span);
+      try {
+        contentIndex.store();
+      } catch (IOException e) {
+        throw new CacheException(e);
+      } finally {
+        getKeyLock(span.key).signalChange();
+      }
+    } finally {
+      writeLock.unlock();
     }
-    notifyAll();
   }
 
   @Override
-  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
-    Assertions.checkState(!released);
-    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
-    cachedContent.unlockRange(holeSpan.position);
-    contentIndex.maybeRemove(cachedContent.key);
-    notifyAll();
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    boolean maybeRemovable;
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
+      KeyLock keyLock = getKeyLock(holeSpan.key);
+      keyLock.lock.lock();
+      try {
+        cachedContent.unlockRange(holeSpan.position);
+        maybeRemovable = cachedContent.isEmpty() && cachedContent.isFullyUnlocked();
+        keyLock.signalChange();
+      } finally {
+        keyLock.lock.unlock();
+      }
+    } finally {
+      readLock.unlock();
+    }
+    if (maybeRemovable) {
+      writeLock.lock();
+      try {
+        if (!released) {
+          // The content may have been locked again since the read lock was released, in which
+          // case it's not removed.
+          contentIndex.maybeRemove(holeSpan.key);
+        }
+      } finally {
+        writeLock.unlock();
+      }
+    }
   }
 
   @Override
-  public synchronized void removeResource(String key) {
-    Assertions.checkState(!released);
-    for (CacheSpan span : getCachedSpans(key)) {
-      removeSpanInternal(span);
+  public void removeResource(String key) {
+    writeLock.lock();
+    try {
+      Assertions.checkState(!released);
+      for (CacheSpan span : getCachedSpans(key)) {
+        removeSpanInternal(span);
+      }
+    } finally {
+      writeLock.unlock();
     }
   }
 
   @Override
-  public synchronized void removeSpan(CacheSpan span) {
-    Assertions.checkState(!released);
-    removeSpanInternal(span);
+  public void removeSpan(CacheSpan span) {
+    writeLock.lock();
+    try {
+      Assertions.checkState(!released);
+      removeSpanInternal(span);
+    } finally {
+      writeLock.unlock();
+    }
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
-    Assertions.checkState(!released);
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
+  public boolean isCached(String key, long position, long length) {
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent != null
+          && cachedContent.getCachedBytesLength(position, length) >= length;
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
-    Assertions.checkState(!released);
-    if (length == C.LENGTH_UNSET) {
-      length = Long.MAX_VALUE;
+  public long getCachedLength(String key, long position, long length) {
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      if (length == C.LENGTH_UNSET) {
+        length = Long.MAX_VALUE;
+      }
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+    } finally {
+      readLock.unlock();
     }
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
   }
 
   @Override
-  public synchronized long getCachedBytes(String key, long position, long length) {
+  public long getCachedBytes(String key, long position, long length) {
     long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
     if (endPosition < 0) {
       // The calculation rolled over (length is probably Long.MAX_VALUE).
       endPosition = Long.MAX_VALUE;
     }
-    long currentPosition = position;
-    long cachedBytes = 0;
-    while (currentPosition < endPosition) {
-      long maxRemainingLength = endPosition - currentPosition;
-      long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
-      if (blockLength > 0) {
-        cachedBytes += blockLength;
-      } else {
-        // There's a hole of length -blockLength.
-        blockLength = -blockLength;
+    readLock.lock();
+    try {
+      long currentPosition = position;
+      long cachedBytes = 0;
+      while (currentPosition < endPosition) {
+        long maxRemainingLength = endPosition - currentPosition;
+        long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
+        if (blockLength > 0) {
+          cachedBytes += blockLength;
+        } else {
+          // There's a hole of length -blockLength.
+          blockLength = -blockLength;
+        }
+        currentPosition += blockLength;
       }
-      currentPosition += blockLength;
+      return cachedBytes;
+    } finally {
+      readLock.unlock();
     }
-    return cachedBytes;
   }
 
   @Override
-  public synchronized void applyContentMetadataMutations(
-      String key, ContentMetadataMutations mutations) throws CacheException {
-    Assertions.checkState(!released);
-    checkInitialization();
-
-    contentIndex.applyContentMetadataMutations(key, mutations);
+  public void applyContentMetadataMutations(String key, ContentMetadataMutations mutations)
+      throws CacheException {
+    writeLock.lock();
     try {
-      contentIndex.store();
-    } catch (IOException e) {
-      throw new CacheException(e);
+      Assertions.checkState(!released);
+      checkInitialization();
+
+      contentIndex.applyContentMetadataMutations(key, mutations);
+      try {
+        contentIndex.store();
+      } catch (IOException e) {
+        throw new CacheException(e);
+      }
+    } finally {
+      writeLock.unlock();
     }
   }
 
   @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
-    Assertions.checkState(!released);
-    return contentIndex.getContentMetadata(key);
+  public ContentMetadata getContentMetadata(String key) {
+    readLock.lock();
+    try {
+      Assertions.checkState(!released);
+      return contentIndex.getContentMetadata(key);
+    } finally {
+      readLock.unlock();
+    }
   }
 
   /** Ensures that the cache's in-memory representation has been initialized. */
@@ -550,10 +877,26 @@ public final class SimpleCache implements Cache {
       if (fileIndex != null) {
         fileIndex.initialize(uid);
         Map<String, CacheFileMetadata> fileMetadata = fileIndex.getAll();
-        loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
+        if (isDirectoryKnownForAllFiles(fileMetadata)) {
+          // Make the cache available without scanning the cache directory. The directory is
+          // verified by verifyDirectory once initialization has completed.
+          loadFromFileIndex(fileMetadata);
+          filesStartedDuringVerification = new HashSet<>();
+          return;
+        }
+        HashMap<String, CacheFileMetadata> updatedFileMetadata = new HashMap<>();
+        loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata, updatedFileMetadata);
         fileIndex.removeAll(fileMetadata.keySet());
+        // Store the directories of loaded files, so that they can be loaded from the file index
+        // without scanning the cache directory next time.
+        fileIndex.setAll(updatedFileMetadata);
       } else {
-        loadDirectory(cacheDir, /* isRoot= */ true, files, /* fileMetadata= */ null);
+        loadDirectory(
+            cacheDir,
+            /* isRoot= */ true,
+            files,
+            /* fileMetadata= */ null,
+            /* updatedFileMetadata= */ null);
       }
     } catch (IOException e) {
       String message = "Failed to initialize cache indices: " + cacheDir;
@@ -579,12 +922,16 @@ public final class SimpleCache implements Cache {
    * @param fileMetadata A mutable map containing cache file metadata, keyed by file name. The map
    *     is modified by removing entries for all loaded files. When the method call returns, the map
    *     will contain only metadata that was unused. May be null if no file metadata is available.
+   * @param updatedFileMetadata A map to which metadata is added for loaded files whose directory
+   *     wasn't present in {@code fileMetadata}, keyed by file name. May be null if no file metadata
+   *     is available.
    */
   private void loadDirectory(
       File directory,
       boolean isRoot,
       @Nullable File[] files,
-      @Nullable Map<String, CacheFileMetadata> fileMetadata) {
+      @Nullable Map<String, CacheFileMetadata> fileMetadata,
+      @Nullable Map<String, CacheFileMetadata> updatedFileMetadata) {
     if (files == null || files.length == 0) {
       // Either (a) directory isn't really a directory (b) it's empty, or (c) listing files failed.
       if (!isRoot) {
@@ -597,7 +944,8 @@ public final class SimpleCache implements Cache {
     for (File file : files) {
       String fileName = file.getName();
       if (isRoot && fileName.indexOf('.') == -1) {
-        loadDirectory(file, /* isRoot= */ false, file.listFiles(), fileMetadata);
+        loadDirectory(
+            file, /* isRoot= */ false, file.listFiles(), fileMetadata, updatedFileMetadata);
       } else {
         if (isRoot
             && (CachedContentIndex.isIndexFile(fileName) || fileName.endsWith(UID_FILE_SUFFIX))) {
@@ -617,6 +965,13 @@ public final class SimpleCache implements Cache {
             SimpleCacheSpan.createCacheEntry(file, length, lastTouchTimestamp, contentIndex);
         if (span != null) {
           addSpan(span);
+          if (updatedFileMetadata != null && (metadata == null || metadata.directory == null)) {
+            File spanFile = Assertions.checkNotNull(span.file);
+            updatedFileMetadata.put(
+                spanFile.getName(),
+                new CacheFileMetadata(
+                    span.length, span.lastTouchTimestamp, getDirectoryName(spanFile)));
+          }
         } else {
           file.delete();
         }
@@ -624,10 +979,186 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Loads the in-memory representation from file metadata, without accessing the cache directory.
+   * Must only be called if {@link #isDirectoryKnownForAllFiles(Map)} returns {@code true} for the
+   * metadata.
+   *
+   * @param fileMetadata The cache file metadata, keyed by file name.
+   * @throws IOException If an error occurs removing unusable metadata from the file index.
+   */
+  private void loadFromFileIndex(Map<String, CacheFileMetadata> fileMetadata) throws IOException {
+    HashSet<String> unusedFileNames = new HashSet<>();
+    for (Map.Entry<String, CacheFileMetadata> entry : fileMetadata.entrySet()) {
+      String fileName = entry.getKey();
+      CacheFileMetadata metadata = entry.getValue();
+      File file = new File(getDirectory(Assertions.checkNotNull(metadata.directory)), fileName);
+      @Nullable
+      SimpleCacheSpan span =
+          SimpleCacheSpan.createCacheEntry(
+              file, metadata.length, metadata.lastTouchTimestamp, contentIndex);
+      if (span != null) {
+        addSpan(span);
+      } else {
+        // The file will be deleted by verifyDirectory, if it exists.
+        unusedFileNames.add(fileName);
+      }
+    }
+    Assertions.checkNotNull(fileIndex).removeAll(unusedFileNames);
+  }
+
+  /**
+   * Verifies the cache directory against an in-memory representation that was loaded by {@link
+   * #loadFromFileIndex(Map)}. Files that aren't part of the in-memory representation are loaded,
+   * or deleted if they're invalid or overlap with existing spans. Spans whose files no longer exist
+   * are removed.
+   *
+   * <p>The cache is available whilst the directory is being verified. Hence this method acquires
+   * {@link #writeLock} only for short periods, and must not be called whilst holding it.
+   */
+  @WorkerThread
+  private void verifyDirectory() {
+    ArrayList<File> files = new ArrayList<>();
+    listCacheFiles(cacheDir, /* isRoot= */ true, cacheDir.listFiles(), files);
+    HashSet<String> fileNames = new HashSet<>();
+    for (int i = 0; i < files.size(); i += VERIFY_DIRECTORY_BATCH_SIZE) {
+      HashMap<String, CacheFileMetadata> loadedFileMetadata = new HashMap<>();
+      writeLock.lock();
+      try {
+        if (released) {
+          return;
+        }
+        int batchEndIndex = min(files.size(), i + VERIFY_DIRECTORY_BATCH_SIZE);
+        for (int j = i; j < batchEndIndex; j++) {
+          File file = files.get(j);
+          fileNames.add(file.getName());
+          verifyFile(file, loadedFileMetadata);
+        }
+      } finally {
+        writeLock.unlock();
+      }
+      if (!loadedFileMetadata.isEmpty()) {
+        try {
+          Assertions.checkNotNull(fileIndex).setAll(loadedFileMetadata);
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to add file index entries for loaded files.");
+        }
+      }
+    }
+
+    writeLock.lock();
+    try {
+      if (released) {
+        return;
+      }
+      ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
+      for (CachedContent cachedContent : contentIndex.getAll()) {
+        for (CacheSpan span : cachedContent.getSpans()) {
+          // Spans added since the directory was listed won't be in fileNames, so also check
+          // whether the file exists.
+          File file = Assertions.checkNotNull(span.file);
+          if (!fileNames.contains(file.getName()) && !file.exists()) {
+            spansToBeRemoved.add(span);
+          }
+        }
+      }
+      for (int i = 0; i < spansToBeRemoved.size(); i++) {
+        removeSpanInternal(spansToBeRemoved.get(i));
+      }
+      filesStartedDuringVerification = null;
+      contentIndex.removeEmpty();
+      try {
+        contentIndex.store();
+      } catch (IOException e) {
+        Log.e(TAG, "Storing index file failed", e);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Verifies a single file found by {@link #verifyDirectory()}. Must be called whilst holding
+   * {@link #writeLock}.
+   *
+   * @param file The file.
+   * @param loadedFileMetadata A map to which metadata is added if the file is loaded, keyed by file
+   *     name.
+   */
+  private void verifyFile(File file, Map<String, CacheFileMetadata> loadedFileMetadata) {
+    if (Assertions.checkNotNull(filesStartedDuringVerification).contains(file.getName())) {
+      // The file is being written, or was committed after the cache was initialized.
+      return;
+    }
+    @Nullable
+    SimpleCacheSpan span = SimpleCacheSpan.createCacheEntry(file, C.LENGTH_UNSET, contentIndex);
+    if (span == null) {
+      file.delete();
+      return;
+    }
+    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
+    SimpleCacheSpan existingSpan = cachedContent.getSpan(span.position, span.length);
+    File spanFile = Assertions.checkNotNull(span.file);
+    if (existingSpan.isCached && spanFile.equals(existingSpan.file)) {
+      // The file was loaded from the file index.
+      return;
+    }
+    if (existingSpan.isCached
+        || existingSpan.length < span.length
+        || cachedContent.isPartiallyLocked(span.position, span.length)) {
+      // The file overlaps with data that's cached or being written.
+      file.delete();
+      return;
+    }
+    addSpan(span);
+    loadedFileMetadata.put(
+        spanFile.getName(),
+        new CacheFileMetadata(span.length, span.lastTouchTimestamp, getDirectoryName(spanFile)));
+  }
+
+  /**
+   * Lists the cache files in a cache directory. If the root directory is passed, also lists the
+   * files in any subdirectories.
+   *
+   * @param directory The directory.
+   * @param isRoot Whether the directory is the root directory.
+   * @param files The files belonging to the directory.
+   * @param cacheFiles A list to which the cache files are added.
+   */
+  private static void listCacheFiles(
+      File directory, boolean isRoot, @Nullable File[] files, List<File> cacheFiles) {
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String fileName = file.getName();
+      if (isRoot && fileName.indexOf('.') == -1) {
+        listCacheFiles(file, /* isRoot= */ false, file.listFiles(), cacheFiles);
+      } else if (!isRoot
+          || !(CachedContentIndex.isIndexFile(fileName) || fileName.endsWith(UID_FILE_SUFFIX))) {
+        cacheFiles.add(file);
+      }
+    }
+  }
+
+  /** Returns the directory corresponding to a path relative to the cache directory. */
+  private File getDirectory(String relativePath) {
+    return relativePath.isEmpty() ? cacheDir : new File(cacheDir, relativePath);
+  }
+
+  /** Returns the path of the directory containing a cache file, relative to the cache directory. */
+  private String getDirectoryName(File file) {
+    @Nullable File directory = file.getParentFile();
+    return directory == null || directory.equals(cacheDir) ? "" : directory.getName();
+  }
+
   /**
    * Touches a cache span, returning the updated result. If the evictor does not require cache spans
    * to be touched, then this method does nothing and the span is returned without modification.
    *
+   * <p>If a file index is being used, then it's not updated by this method. Instead {@link
+   * #updateFileIndexForTouchedSpan(CacheSpan)} should be called with the returned span.
+   *
    * @param key The key of the span being touched.
    * @param span The span being touched.
    * @return The updated span.
@@ -636,21 +1167,10 @@ public final class SimpleCache implements Cache {
     if (!touchCacheSpans) {
       return span;
     }
-    String fileName = Assertions.checkNotNull(span.file).getName();
-    long length = span.length;
     long lastTouchTimestamp = System.currentTimeMillis();
-    boolean updateFile = false;
-    if (fileIndex != null) {
-      try {
-        fileIndex.set(fileName, length, lastTouchTimestamp);
-      } catch (IOException e) {
-        Log.w(TAG, "Failed to update index with new touch timestamp.");
-      }
-    } else {
-      // Updating the file itself to incorporate the new last touch timestamp is much slower than
-      // updating the file index. Hence we only update the file if we don't have a file index.
-      updateFile = true;
-    }
+    // Updating the file itself to incorporate the new last touch timestamp is much slower than
+    // updating the file index. Hence we only update the file if we don't have a file index.
+    boolean updateFile = fileIndex == null;
     SimpleCacheSpan newSpan =
         Assertions.checkNotNull(contentIndex.get(key))
             .setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
@@ -658,6 +1178,31 @@ public final class SimpleCache implements Cache {
     return newSpan;
   }
 
+  /**
+   * Persists the last touch timestamp of a span returned by {@link #touchSpan(String,
+   * SimpleCacheSpan)} to the file index. Must be called whilst holding {@link #readLock}, and not
+   * {@link #writeLock}, so that the span can't be removed whilst the file index is updated, but
+   * other threads can read the cache.
+   *
+   * @param span The touched span.
+   */
+  private void updateFileIndexForTouchedSpan(CacheSpan span) {
+    File file = Assertions.checkNotNull(span.file);
+    try {
+      Assertions.checkNotNull(fileIndex)
+          .set(
+              file.getName(),
+              new CacheFileMetadata(span.length, span.lastTouchTimestamp, getDirectoryName(file)));
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to update index with new touch timestamp.");
+    }
+  }
+
+  /** Returns the {@link KeyLock} for a cache key. */
+  private KeyLock getKeyLock(String key) {
+    return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % KEY_LOCK_COUNT];
+  }
+
   /**
    * Returns the cache span corresponding to the provided key and range. See {@link
    * Cache#startReadWrite(String, long, long)} for detailed descriptions of the returned spans.
@@ -763,13 +1308,30 @@ public final class SimpleCache implements Cache {
     evictor.onSpanTouched(this, oldSpan, newSpan);
   }
 
+  /**
+   * Returns whether the directory is known for all of the cache files in the file index, meaning
+   * that the in-memory representation can be loaded from the file index without scanning the cache
+   * directory.
+   */
+  private static boolean isDirectoryKnownForAllFiles(Map<String, CacheFileMetadata> fileMetadata) {
+    if (fileMetadata.isEmpty()) {
+      return false;
+    }
+    for (CacheFileMetadata metadata : fileMetadata.values()) {
+      if (metadata.directory == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Loads the cache UID from the files belonging to the root directory.
    *
    * @param files The files belonging to the root directory.
    * @return The loaded UID, or {@link #UID_UNSET} if a UID has not yet been created.
    */
-  private static long loadUid(File[] files) {
+  /* package */ static long loadUid(File[] files) {
     for (File file : files) {
       String fileName = file.getName();
       if (fileName.endsWith(UID_FILE_SUFFIX)) {
@@ -786,7 +1348,7 @@ public final class SimpleCache implements Cache {
   }
 
   @SuppressWarnings("TrulyRandom")
-  private static long createUid(File directory) throws IOException {
+  /* package */ static long createUid(File directory) throws IOException {
     // Generate a non-negative UID.
     long uid = new SecureRandom().nextLong();
     uid = uid == Long.MIN_VALUE ? 0 : Math.abs(uid);
@@ -804,7 +1366,7 @@ public final class SimpleCache implements Cache {
     return Long.parseLong(fileName.substring(0, fileName.indexOf('.')), /* radix= */ 16);
   }
 
-  private static void createCacheDirectories(File cacheDir) throws CacheException {
+  /* package */ static void createCacheDirectories(File cacheDir) throws CacheException {
     // If mkdirs() returns false, double check that the directory doesn't exist before throwing.
     if (!cacheDir.mkdirs() && !cacheDir.isDirectory()) {
       String message = "Failed to create cache directory: " + cacheDir;
@@ -813,11 +1375,72 @@ public final class SimpleCache implements Cache {
     }
   }
 
-  private static synchronized boolean lockFolder(File cacheDir) {
+  /* package */ static synchronized boolean lockFolder(File cacheDir) {
     return lockedCacheDirs.add(cacheDir.getAbsoluteFile());
   }
 
-  private static synchronized void unlockFolder(File cacheDir) {
+  /* package */ static synchronized void unlockFolder(File cacheDir) {
     lockedCacheDirs.remove(cacheDir.getAbsoluteFile());
   }
+
+  /**
+   * A lock guarding the locked ranges of the content of the keys assigned to it, and on which
+   * threads wait for changes to the spans and locked ranges of those keys.
+   */
+  private static final class KeyLock {
+
+    public final ReentrantLock lock;
+
+    private final Condition changed;
+
+    /**
+     * Incremented each time the spans or locked ranges of one of the keys change. Guarded by {@link
+     * #lock}.
+     */
+    private int generation;
+
+    public KeyLock() {
+      lock = new ReentrantLock();
+      changed = lock.newCondition();
+    }
+
+    /** Returns the current generation, to be passed to {@link #awaitChange(int)}. */
+    public int getGeneration() {
+      lock.lock();
+      try {
+        return generation;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Blocks until {@link #signalChange()} has been called since {@code generation} was returned by
+     * {@link #getGeneration()}.
+     *
+     * @param generation The generation returned by {@link #getGeneration()}.
+     * @throws InterruptedException If the thread is interrupted whilst waiting.
+     */
+    public void awaitChange(int generation) throws InterruptedException {
+      lock.lock();
+      try {
+        while (this.generation == generation) {
+          changed.await();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /** Wakes up all threads blocked in {@link #awaitChange(int)}. */
+    public void signalChange() {
+      lock.lock();
+      try {
+        generation++;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
 }
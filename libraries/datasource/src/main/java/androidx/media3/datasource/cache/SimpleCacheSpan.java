@@ -23,7 +23,10 @@ import java.io.File;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-/** A {@link CacheSpan} that encodes metadata into the names of the underlying cache files. */
+/**
+ * A {@link CacheSpan} that encodes metadata into the names of the underlying cache files, or that
+ * is stored at an offset within a slab file of a {@link SlabCache}.
+ */
 /* package */ final class SimpleCacheSpan extends CacheSpan {
 
   /* package */ static final String COMMON_SUFFIX = ".exo";
@@ -140,6 +143,27 @@ import java.util.regex.Pattern;
     return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file);
   }
 
+  /**
+   * Creates a cache span whose data is stored at an offset within a slab file.
+   *
+   * @param key The cache key of the resource.
+   * @param position The position of the span in the resource.
+   * @param length The length of the span.
+   * @param lastTouchTimestamp The last touch timestamp.
+   * @param slabFile The slab file.
+   * @param fileOffset The offset in {@code slabFile} at which the data of the span starts.
+   * @return The span.
+   */
+  public static SimpleCacheSpan createSlabEntry(
+      String key,
+      long position,
+      long length,
+      long lastTouchTimestamp,
+      File slabFile,
+      long fileOffset) {
+    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, slabFile, fileOffset);
+  }
+
   /**
    * Upgrades the cache file if it is created by an earlier version of {@link SimpleCache}.
    *
@@ -188,7 +212,17 @@ import java.util.regex.Pattern;
    */
   private SimpleCacheSpan(
       String key, long position, long length, long lastTouchTimestamp, @Nullable File file) {
-    super(key, position, length, lastTouchTimestamp, file);
+    this(key, position, length, lastTouchTimestamp, file, /* fileOffset= */ 0);
+  }
+
+  private SimpleCacheSpan(
+      String key,
+      long position,
+      long length,
+      long lastTouchTimestamp,
+      @Nullable File file,
+      long fileOffset) {
+    super(key, position, length, lastTouchTimestamp, file, fileOffset);
   }
 
   /**
@@ -201,6 +235,19 @@ import java.util.regex.Pattern;
    */
   public SimpleCacheSpan copyWithFileAndLastTouchTimestamp(File file, long lastTouchTimestamp) {
     Assertions.checkState(isCached);
-    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file);
+    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file, fileOffset);
+  }
+
+  /**
+   * Returns a copy of this CacheSpan with a new file and file offset.
+   *
+   * @param file The new file.
+   * @param fileOffset The new file offset.
+   * @return A copy with the new file and file offset.
+   * @throws IllegalStateException If called on a non-cached span (i.e. {@link #isCached} is false).
+   */
+  public SimpleCacheSpan copyWithFileAndFileOffset(File file, long fileOffset) {
+    Assertions.checkState(isCached);
+    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file, fileOffset);
   }
 }
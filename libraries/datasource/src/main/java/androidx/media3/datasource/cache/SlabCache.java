@@ -0,0 +1,1560 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static java.lang.Math.max;
+
+import android.net.Uri;
+import android.os.ConditionVariable;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceException;
+import androidx.media3.datasource.DataSpec;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * A {@link Cache} implementation that packs cached spans into large, append-only slab files.
+ *
+ * <p>{@link SimpleCache} stores each span in its own file. For content that's cached as a large
+ * number of small spans, such as the partial segments of low latency live streams, the cost of
+ * creating, touching and deleting a file per span can dominate. This implementation instead
+ * reserves a region of the current slab file for each file returned by {@link #startFile(String,
+ * long, long)}, and the returned spans refer to the offset of their data within the slab (see
+ * {@link CacheSpan#fileOffset}).
+ *
+ * <p>Data is written straight into the reserved region by the stream returned by {@link
+ * #openFileOutputStream(File)}, which {@link CacheDataSink} uses, and which can't write more than
+ * the length passed to {@link #startFile(String, long, long)}. If that length is {@link
+ * C#LENGTH_UNSET}, the data is written to a slab of its own. Files returned by {@link
+ * #startFile(String, long, long)} are only created if a caller writes to them directly, in which
+ * case their data is copied into the slab when they're committed.
+ *
+ * <p>Each slab is kept open while the cache is in use, and spans are read through the open slab
+ * by the data sources created by {@link #getReadDataSourceFactory()}, which {@link
+ * CacheDataSource} uses by default. A cache holds roughly one open file per {@code maxSlabLength}
+ * bytes of cached data.
+ *
+ * <p>Removing a span marks its record in the slab as removed. Once the live data in a slab that's
+ * no longer being appended to falls below half of the slab's length, the slab is compacted by
+ * copying its remaining spans into the current slab, after which it's deleted. The spans are copied
+ * by the thread that removed the span, before the call that removed it returns, but without holding
+ * the lock on the cache. Relocated spans are reported to listeners and to the {@link CacheEvictor}
+ * as touched. As with spans that are removed, a reader that obtained a span before it was
+ * relocated may fail to read it.
+ *
+ * <p>Only one {@link SlabCache} or {@link SimpleCache} instance is allowed for a given directory at
+ * a given time. The cache index is stored in a journal in the cache directory.
+ */
+@UnstableApi
+public final class SlabCache implements Cache {
+
+  /** The default maximum length of a slab file, in bytes. */
+  public static final long DEFAULT_MAX_SLAB_LENGTH = 4 * 1024 * 1024;
+
+  private static final String TAG = "SlabCache";
+
+  private static final String SLAB_FILE_SUFFIX = ".slab" + SimpleCacheSpan.COMMON_SUFFIX;
+  private static final Pattern SLAB_FILE_PATTERN = Pattern.compile("^(\\d+)\\.slab\\.exo$");
+  private static final String STAGING_FILE_SUFFIX = ".staging";
+
+  /**
+   * Each record in a slab consists of a header followed by the region reserved for the data of the
+   * span. The header contains the state of the record, the id of the content, the position of the
+   * span, the length of the reserved region, and the length and last touch timestamp of the span.
+   */
+  private static final int RECORD_HEADER_LENGTH = 40;
+
+  private static final int RECORD_OFFSET_CAPACITY = 16;
+  private static final int RECORD_OFFSET_LAST_TOUCH_TIMESTAMP = 32;
+
+  /**
+   * The state of a record whose data is still being written. Records in this state are discarded
+   * when the cache is initialized. If the length of the reserved region isn't known, any following
+   * data in the slab is discarded too.
+   */
+  private static final int RECORD_STATE_INCOMPLETE = 0;
+
+  private static final int RECORD_STATE_LIVE = 1;
+  private static final int RECORD_STATE_REMOVED = 2;
+
+  private final File cacheDir;
+  private final CacheEvictor evictor;
+  private final CachedContentIndex contentIndex;
+  private final long maxSlabLength;
+  private final HashMap<String, ArrayList<Listener>> listeners;
+  private final HashMap<File, Slab> slabs;
+
+  /** The records reserved for the files returned by {@link #startFile(String, long, long)}. */
+  private final HashMap<File, PendingRecord> pendingRecords;
+
+  /** The slabs that are waiting to be compacted by {@link #compactPendingSlabs()}. */
+  private final ArrayDeque<Slab> slabsToCompact;
+
+  private final boolean touchCacheSpans;
+
+  private long uid;
+  private long totalSpace;
+  private int nextSlabId;
+  private int nextStagingFileId;
+  @Nullable private Slab currentSlab;
+  private boolean released;
+  private @MonotonicNonNull CacheException initializationException;
+
+  /**
+   * Constructs the cache using slabs of up to {@link #DEFAULT_MAX_SLAB_LENGTH} bytes. The cache
+   * will delete any unrecognized files from the directory. Hence the directory cannot be used to
+   * store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   */
+  public SlabCache(File cacheDir, CacheEvictor evictor) {
+    this(cacheDir, evictor, DEFAULT_MAX_SLAB_LENGTH);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param maxSlabLength The length in bytes after which a new slab is started. A span that's
+   *     longer than this length is stored in a slab of its own.
+   */
+  public SlabCache(File cacheDir, CacheEvictor evictor, long maxSlabLength) {
+    Assertions.checkArgument(maxSlabLength > 0);
+    if (!SimpleCache.lockFolder(cacheDir)) {
+      throw new IllegalStateException("Another cache instance uses the folder: " + cacheDir);
+    }
+
+    this.cacheDir = cacheDir;
+    this.evictor = evictor;
+    this.maxSlabLength = maxSlabLength;
+    contentIndex = new CachedContentIndex(cacheDir, /* databaseProvider= */ null);
+    listeners = new HashMap<>();
+    slabs = new HashMap<>();
+    pendingRecords = new HashMap<>();
+    slabsToCompact = new ArrayDeque<>();
+    touchCacheSpans = evictor.requiresCacheSpanTouches();
+    uid = UID_UNSET;
+
+    // Start cache initialization.
+    final ConditionVariable conditionVariable = new ConditionVariable();
+    new Thread("ExoPlayer:SlabCacheInit") {
+      @Override
+      public void run() {
+        synchronized (SlabCache.this) {
+          conditionVariable.open();
+          initialize();
+          SlabCache.this.evictor.onCacheInitialized();
+        }
+      }
+    }.start();
+    conditionVariable.block();
+  }
+
+  /**
+   * Checks whether the cache was initialized successfully.
+   *
+   * @throws CacheException If an error occurred during initialization.
+   */
+  public synchronized void checkInitialization() throws CacheException {
+    if (initializationException != null) {
+      throw initializationException;
+    }
+  }
+
+  @Override
+  public synchronized long getUid() {
+    return uid;
+  }
+
+  @Override
+  public synchronized void release() {
+    if (released) {
+      return;
+    }
+    listeners.clear();
+    for (Slab slab : slabs.values()) {
+      slab.close();
+    }
+    slabs.clear();
+    slabsToCompact.clear();
+    currentSlab = null;
+    try {
+      contentIndex.store();
+    } catch (IOException e) {
+      Log.e(TAG, "Storing index file failed", e);
+    } finally {
+      SimpleCache.unlockFolder(cacheDir);
+      released = true;
+    }
+  }
+
+  @Override
+  public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    Assertions.checkState(!released);
+    Assertions.checkNotNull(key);
+    Assertions.checkNotNull(listener);
+    ArrayList<Listener> listenersForKey = listeners.get(key);
+    if (listenersForKey == null) {
+      listenersForKey = new ArrayList<>();
+      listeners.put(key, listenersForKey);
+    }
+    listenersForKey.add(listener);
+    return getCachedSpans(key);
+  }
+
+  @Override
+  public synchronized void removeListener(String key, Listener listener) {
+    if (released) {
+      return;
+    }
+    ArrayList<Listener> listenersForKey = listeners.get(key);
+    if (listenersForKey != null) {
+      listenersForKey.remove(listener);
+      if (listenersForKey.isEmpty()) {
+        listeners.remove(key);
+      }
+    }
+  }
+
+  @Override
+  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+    Assertions.checkState(!released);
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    return cachedContent == null || cachedContent.isEmpty()
+        ? new TreeSet<>()
+        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+  }
+
+  @Override
+  public synchronized Set<String> getKeys() {
+    Assertions.checkState(!released);
+    return new HashSet<>(contentIndex.getKeys());
+  }
+
+  @Override
+  public synchronized long getCacheSpace() {
+    Assertions.checkState(!released);
+    return totalSpace;
+  }
+
+  @Override
+  public synchronized CacheSpan startReadWrite(String key, long position, long length)
+      throws InterruptedException, CacheException {
+    Assertions.checkState(!released);
+    checkInitialization();
+
+    while (true) {
+      @Nullable CacheSpan span = startReadWriteNonBlocking(key, position, length);
+      if (span != null) {
+        return span;
+      } else {
+        // Lock not available. We'll be woken up when a span is added, or when a locked span is
+        // released.
+        wait();
+      }
+    }
+  }
+
+  @Override
+  @Nullable
+  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position, long length)
+      throws CacheException {
+    Assertions.checkState(!released);
+    checkInitialization();
+
+    SimpleCacheSpan span = getSpan(key, position, length);
+
+    if (span.isCached) {
+      // Read case.
+      return touchSpan(span);
+    }
+
+    CachedContent cachedContent = contentIndex.getOrAdd(key);
+    if (cachedContent.lockRange(position, span.length)) {
+      // Write case.
+      return span;
+    }
+
+    // Lock not available.
+    return null;
+  }
+
+  @Override
+  public File startFile(String key, long position, long length) throws CacheException {
+    try {
+      return startFileInternal(key, position, length);
+    } finally {
+      // Spans that were evicted to make room for the file may have left slabs to compact.
+      compactPendingSlabs();
+    }
+  }
+
+  @Override
+  public synchronized OutputStream openFileOutputStream(File file) throws IOException {
+    Assertions.checkState(!released);
+    @Nullable PendingRecord record = pendingRecords.get(file);
+    if (record == null) {
+      throw new FileNotFoundException(file.getPath());
+    }
+    return new RecordOutputStream(
+        this, record.slab.getChannel(), record.slab.file, record.getDataOffset(), record.capacity);
+  }
+
+  @Override
+  public void commitFile(File file, long length) throws CacheException {
+    try {
+      commitFileInternal(file, length);
+    } finally {
+      compactPendingSlabs();
+    }
+  }
+
+  @Override
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    try {
+      synchronized (this) {
+        Assertions.checkState(!released);
+        CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
+        cachedContent.unlockRange(holeSpan.position);
+        discardPendingRecords(holeSpan);
+        contentIndex.maybeRemove(cachedContent.key);
+        notifyAll();
+      }
+    } finally {
+      compactPendingSlabs();
+    }
+  }
+
+  @Override
+  public void removeResource(String key) {
+    try {
+      synchronized (this) {
+        Assertions.checkState(!released);
+        for (CacheSpan span : getCachedSpans(key)) {
+          removeSpanInternal(span);
+        }
+      }
+    } finally {
+      compactPendingSlabs();
+    }
+  }
+
+  @Override
+  public void removeSpan(CacheSpan span) {
+    try {
+      synchronized (this) {
+        Assertions.checkState(!released);
+        removeSpanInternal(span);
+      }
+    } finally {
+      compactPendingSlabs();
+    }
+  }
+
+  @Override
+  public synchronized boolean isCached(String key, long position, long length) {
+    Assertions.checkState(!released);
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
+  }
+
+  @Override
+  public synchronized long getCachedLength(String key, long position, long length) {
+    Assertions.checkState(!released);
+    if (length == C.LENGTH_UNSET) {
+      length = Long.MAX_VALUE;
+    }
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+  }
+
+  @Override
+  public synchronized long getCachedBytes(String key, long position, long length) {
+    long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
+    if (endPosition < 0) {
+      // The calculation rolled over (length is probably Long.MAX_VALUE).
+      endPosition = Long.MAX_VALUE;
+    }
+    long currentPosition = position;
+    long cachedBytes = 0;
+    while (currentPosition < endPosition) {
+      long maxRemainingLength = endPosition - currentPosition;
+      long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
+      if (blockLength > 0) {
+        cachedBytes += blockLength;
+      } else {
+        // There's a hole of length -blockLength.
+        blockLength = -blockLength;
+      }
+      currentPosition += blockLength;
+    }
+    return cachedBytes;
+  }
+
+  @Override
+  public synchronized void applyContentMetadataMutations(
+      String key, ContentMetadataMutations mutations) throws CacheException {
+    Assertions.checkState(!released);
+    checkInitialization();
+
+    contentIndex.applyContentMetadataMutations(key, mutations);
+    try {
+      contentIndex.store();
+    } catch (IOException e) {
+      throw new CacheException(e);
+    }
+  }
+
+  @Override
+  public synchronized ContentMetadata getContentMetadata(String key) {
+    Assertions.checkState(!released);
+    return contentIndex.getContentMetadata(key);
+  }
+
+  @Override
+  public DataSource.Factory getReadDataSourceFactory() {
+    return () -> new SlabDataSource(this);
+  }
+
+  private synchronized File startFileInternal(String key, long position, long length)
+      throws CacheException {
+    Assertions.checkState(!released);
+    checkInitialization();
+
+    CachedContent cachedContent = contentIndex.get(key);
+    Assertions.checkNotNull(cachedContent);
+    Assertions.checkState(cachedContent.isFullyLocked(position, length));
+    if (!cacheDir.exists()) {
+      // The cache directory has been deleted from underneath us. Recreate it, and remove in-memory
+      // spans corresponding to slabs that no longer exist.
+      SimpleCache.createCacheDirectories(cacheDir);
+      removeStaleSpans();
+    }
+    evictor.onStartFile(this, key, position, length);
+    PendingRecord record;
+    try {
+      record = reserveRecord(cachedContent, position, length);
+    } catch (IOException e) {
+      throw new CacheException(e);
+    }
+    File file = new File(cacheDir, nextStagingFileId++ + STAGING_FILE_SUFFIX);
+    pendingRecords.put(file, record);
+    return file;
+  }
+
+  private synchronized void commitFileInternal(File file, long length) throws CacheException {
+    Assertions.checkState(!released);
+    @Nullable PendingRecord record = pendingRecords.remove(file);
+    if (record == null) {
+      // The record was discarded when its hole span was released.
+      file.delete();
+      return;
+    }
+    if (length == 0 || record.slab.closed) {
+      file.delete();
+      discardRecord(record);
+      return;
+    }
+
+    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(record.key));
+    Assertions.checkState(cachedContent.isFullyLocked(record.position, length));
+
+    // Check if the span conflicts with the set content length
+    long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
+    if (contentLength != C.LENGTH_UNSET) {
+      Assertions.checkState((record.position + length) <= contentLength);
+    }
+
+    long lastTouchTimestamp = System.currentTimeMillis();
+    try {
+      SimpleCacheSpan span;
+      if (file.exists()) {
+        // The data was written to the file rather than to the stream returned by
+        // openFileOutputStream, so it needs to be copied into the slab.
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+          FileChannel fileChannel = inputStream.getChannel();
+          if (record.capacity == C.LENGTH_UNSET || length <= record.capacity) {
+            copyToRecord(
+                record.slab.getChannel(),
+                record.getDataOffset(),
+                fileChannel,
+                /* sourceOffset= */ 0,
+                length);
+            span = commitRecord(record, length, lastTouchTimestamp);
+          } else {
+            discardRecord(record);
+            span =
+                appendToSlab(
+                    cachedContent,
+                    record.position,
+                    length,
+                    lastTouchTimestamp,
+                    fileChannel,
+                    /* sourceOffset= */ 0);
+          }
+        }
+        file.delete();
+      } else {
+        Assertions.checkArgument(record.capacity == C.LENGTH_UNSET || length <= record.capacity);
+        span = commitRecord(record, length, lastTouchTimestamp);
+      }
+      addSpan(cachedContent, span);
+      contentIndex.store();
+    } catch (IOException e) {
+      discardRecord(record);
+      throw new CacheException(e);
+    } finally {
+      notifyAll();
+    }
+  }
+
+  /** Ensures that the cache's in-memory representation has been initialized. */
+  private void initialize() {
+    if (!cacheDir.exists()) {
+      try {
+        SimpleCache.createCacheDirectories(cacheDir);
+      } catch (CacheException e) {
+        initializationException = e;
+        return;
+      }
+    }
+
+    @Nullable File[] files = cacheDir.listFiles();
+    if (files == null) {
+      String message = "Failed to list cache directory files: " + cacheDir;
+      Log.e(TAG, message);
+      initializationException = new CacheException(message);
+      return;
+    }
+
+    uid = SimpleCache.loadUid(files);
+    if (uid == UID_UNSET) {
+      try {
+        uid = SimpleCache.createUid(cacheDir);
+      } catch (IOException e) {
+        String message = "Failed to create cache UID: " + cacheDir;
+        Log.e(TAG, message, e);
+        initializationException = new CacheException(message, e);
+        return;
+      }
+    }
+
+    try {
+      contentIndex.initialize(uid);
+    } catch (IOException e) {
+      String message = "Failed to initialize cache indices: " + cacheDir;
+      Log.e(TAG, message, e);
+      initializationException = new CacheException(message, e);
+      return;
+    }
+
+    for (File file : files) {
+      String fileName = file.getName();
+      Matcher matcher = SLAB_FILE_PATTERN.matcher(fileName);
+      if (matcher.matches()) {
+        int slabId;
+        try {
+          slabId = Integer.parseInt(Assertions.checkNotNull(matcher.group(1)));
+        } catch (NumberFormatException e) {
+          file.delete();
+          continue;
+        }
+        nextSlabId = max(nextSlabId, slabId + 1);
+        loadSlab(file);
+      } else if (!fileName.endsWith(SimpleCache.UID_FILE_SUFFIX)
+          && !CachedContentIndex.isIndexFile(fileName)) {
+        // Staging files from an earlier instance, and any unrecognized files, are deleted.
+        Util.recursiveDelete(file);
+      }
+    }
+
+    contentIndex.removeEmpty();
+    try {
+      contentIndex.store();
+    } catch (IOException e) {
+      Log.e(TAG, "Storing index file failed", e);
+    }
+  }
+
+  /**
+   * Loads the live records of a slab into the in-memory representation. Records whose header is
+   * incomplete are truncated from the slab, and records that can't be used are marked as removed.
+   * The slab is deleted if it doesn't contain any live records.
+   */
+  private void loadSlab(File file) {
+    Slab slab;
+    try {
+      slab = new Slab(file);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to open slab: " + file, e);
+      file.delete();
+      return;
+    }
+    try {
+      FileChannel channel = slab.getChannel();
+      long fileLength = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+      long recordOffset = 0;
+      while (recordOffset < fileLength) {
+        header.clear();
+        boolean headerComplete = readFully(channel, header, recordOffset);
+        header.flip();
+        int state = headerComplete ? header.getInt() : RECORD_STATE_INCOMPLETE;
+        int id = headerComplete ? header.getInt() : 0;
+        long position = headerComplete ? header.getLong() : 0;
+        long capacity = headerComplete ? header.getLong() : C.LENGTH_UNSET;
+        long length = headerComplete ? header.getLong() : 0;
+        long lastTouchTimestamp = headerComplete ? header.getLong() : 0;
+        long fileOffset = recordOffset + RECORD_HEADER_LENGTH;
+        if ((state != RECORD_STATE_INCOMPLETE
+                && state != RECORD_STATE_LIVE
+                && state != RECORD_STATE_REMOVED)
+            || position < 0
+            || capacity <= 0
+            || length < 0
+            || length > capacity) {
+          // The header was being written when the cache was last used, or the length of the
+          // record wasn't known, so the start of the next record can't be determined.
+          channel.truncate(recordOffset);
+          break;
+        }
+        @Nullable SimpleCacheSpan span = null;
+        if (state == RECORD_STATE_LIVE && length > 0 && length <= fileLength - fileOffset) {
+          span = createLoadedSpan(file, fileOffset, id, position, length, lastTouchTimestamp);
+        }
+        if (span != null) {
+          slab.addSpan(span);
+        } else if (state != RECORD_STATE_REMOVED) {
+          writeRecordState(channel, recordOffset, RECORD_STATE_REMOVED);
+        }
+        recordOffset = fileOffset + capacity;
+      }
+      slab.length = recordOffset;
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to load slab: " + file, e);
+      for (SimpleCacheSpan span : slab.spans.values()) {
+        CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
+        cachedContent.removeSpan(span, /* deleteFile= */ false);
+      }
+      slab.close();
+      file.delete();
+      return;
+    }
+
+    if (slab.spans.isEmpty()) {
+      slab.close();
+      file.delete();
+      return;
+    }
+    slabs.put(file, slab);
+    for (SimpleCacheSpan span : slab.spans.values()) {
+      totalSpace += span.length;
+      notifySpanAdded(span);
+    }
+  }
+
+  /**
+   * Returns a span for a live record loaded from a slab, having added it to the corresponding
+   * {@link CachedContent}, or {@code null} if the record can't be used.
+   */
+  @Nullable
+  private SimpleCacheSpan createLoadedSpan(
+      File file, long fileOffset, int id, long position, long length, long lastTouchTimestamp) {
+    @Nullable String key = contentIndex.getKeyForId(id);
+    if (key == null) {
+      return null;
+    }
+    CachedContent cachedContent = contentIndex.getOrAdd(key);
+    if (cachedContent.getCachedBytesLength(position, length) != -length) {
+      // The record overlaps with a span that's already been loaded.
+      return null;
+    }
+    long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
+    if (contentLength != C.LENGTH_UNSET && position + length > contentLength) {
+      return null;
+    }
+    SimpleCacheSpan span =
+        SimpleCacheSpan.createSlabEntry(
+            key, position, length, lastTouchTimestamp, file, fileOffset);
+    cachedContent.addSpan(span);
+    return span;
+  }
+
+  /**
+   * Reserves a record for a span in the current slab, starting a new slab if necessary, and writes
+   * its header as incomplete.
+   *
+   * @param cachedContent The content to which the span belongs.
+   * @param position The position of the span in the resource.
+   * @param capacity The maximum length of the span, or {@link C#LENGTH_UNSET} if unknown, in which
+   *     case the record is reserved in a new slab of its own.
+   * @return The reserved record.
+   * @throws IOException If an error occurs writing the header of the record.
+   */
+  private PendingRecord reserveRecord(CachedContent cachedContent, long position, long capacity)
+      throws IOException {
+    Slab slab;
+    if (capacity == C.LENGTH_UNSET) {
+      // Other records can't be reserved after this one until its length is known.
+      slab = createSlab();
+    } else {
+      if (currentSlab != null
+          && currentSlab.length > 0
+          && currentSlab.length + RECORD_HEADER_LENGTH + capacity > maxSlabLength) {
+        // Stop appending to the current slab. It becomes eligible for compaction the next time one
+        // of its spans is removed.
+        currentSlab = null;
+      }
+      if (currentSlab == null) {
+        currentSlab = createSlab();
+      }
+      slab = currentSlab;
+    }
+    long recordOffset = slab.length;
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+    header.putInt(RECORD_STATE_INCOMPLETE);
+    header.putInt(cachedContent.id);
+    header.putLong(position);
+    header.putLong(capacity);
+    header.putLong(/* length= */ 0);
+    header.putLong(/* lastTouchTimestamp= */ 0);
+    header.flip();
+    try {
+      writeFully(slab.getChannel(), header, recordOffset);
+    } catch (IOException e) {
+      if (slab != currentSlab) {
+        deleteSlab(slab);
+      }
+      throw e;
+    }
+    slab.length =
+        recordOffset + RECORD_HEADER_LENGTH + (capacity == C.LENGTH_UNSET ? 0 : capacity);
+    slab.pendingRecordCount++;
+    return new PendingRecord(cachedContent.key, position, slab, recordOffset, capacity);
+  }
+
+  /**
+   * Completes the header of a pending record whose data has been written, and marks it as live.
+   *
+   * @return The span, which has not yet been added to the in-memory representation.
+   * @throws IOException If an error occurs writing the header.
+   */
+  private SimpleCacheSpan commitRecord(PendingRecord record, long length, long lastTouchTimestamp)
+      throws IOException {
+    Slab slab = record.slab;
+    // Complete the header before marking the record as live, so that the record is discarded if the
+    // cache is interrupted part way through.
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH - RECORD_OFFSET_CAPACITY);
+    buffer.putLong(record.capacity == C.LENGTH_UNSET ? length : record.capacity);
+    buffer.putLong(length);
+    buffer.putLong(lastTouchTimestamp);
+    buffer.flip();
+    FileChannel channel = slab.getChannel();
+    writeFully(channel, buffer, record.offset + RECORD_OFFSET_CAPACITY);
+    writeRecordState(channel, record.offset, RECORD_STATE_LIVE);
+    record.finished = true;
+    slab.pendingRecordCount--;
+    if (record.capacity == C.LENGTH_UNSET) {
+      slab.length = record.getDataOffset() + length;
+    }
+    return SimpleCacheSpan.createSlabEntry(
+        record.key, record.position, length, lastTouchTimestamp, slab.file, record.getDataOffset());
+  }
+
+  /**
+   * Discards a pending record that won't be committed. Does nothing if the record has already been
+   * committed or discarded.
+   */
+  private void discardRecord(PendingRecord record) {
+    if (record.finished) {
+      return;
+    }
+    record.finished = true;
+    Slab slab = record.slab;
+    slab.pendingRecordCount--;
+    if (slab.closed) {
+      return;
+    }
+    if (record.capacity == C.LENGTH_UNSET) {
+      // The record is the only one in its slab.
+      deleteSlab(slab);
+      return;
+    }
+    try {
+      writeRecordState(slab.getChannel(), record.offset, RECORD_STATE_REMOVED);
+    } catch (IOException e) {
+      // The record is still discarded the next time the cache is initialized.
+      Log.w(TAG, "Failed to discard record in slab: " + slab.file);
+    }
+    maybeCompactSlab(slab);
+  }
+
+  /**
+   * Copies data into the region reserved for the data of a pending record.
+   *
+   * @param destination The channel of the slab in which the record is reserved.
+   * @param dataOffset The offset of the region reserved for the data in {@code destination}.
+   * @param source The channel from which to copy the data.
+   * @param sourceOffset The offset in {@code source} at which the data starts.
+   * @param length The length of the data.
+   * @throws IOException If an error occurs copying the data.
+   */
+  private static void copyToRecord(
+      FileChannel destination,
+      long dataOffset,
+      FileChannel source,
+      long sourceOffset,
+      long length)
+      throws IOException {
+    // The channels of slabs are otherwise only accessed at explicit offsets, and only compaction
+    // copies from them, so their positions are free to be used here.
+    source.position(sourceOffset);
+    long bytesTransferred = 0;
+    while (bytesTransferred < length) {
+      long count =
+          destination.transferFrom(
+              source, dataOffset + bytesTransferred, length - bytesTransferred);
+      if (count <= 0) {
+        throw new EOFException();
+      }
+      bytesTransferred += count;
+    }
+  }
+
+  /**
+   * Appends the data of a span to the current slab, starting a new slab if necessary.
+   *
+   * @param cachedContent The content to which the span belongs.
+   * @param position The position of the span in the resource.
+   * @param length The length of the span.
+   * @param lastTouchTimestamp The last touch timestamp of the span.
+   * @param source The channel from which to copy the data of the span.
+   * @param sourceOffset The offset in {@code source} at which the data of the span starts.
+   * @return The span, which has not yet been added to the in-memory representation.
+   * @throws IOException If an error occurs writing the span.
+   */
+  private SimpleCacheSpan appendToSlab(
+      CachedContent cachedContent,
+      long position,
+      long length,
+      long lastTouchTimestamp,
+      FileChannel source,
+      long sourceOffset)
+      throws IOException {
+    PendingRecord record = reserveRecord(cachedContent, position, length);
+    try {
+      copyToRecord(
+          record.slab.getChannel(), record.getDataOffset(), source, sourceOffset, length);
+      return commitRecord(record, length, lastTouchTimestamp);
+    } catch (IOException e) {
+      discardRecord(record);
+      throw e;
+    }
+  }
+
+  private Slab createSlab() throws IOException {
+    Slab slab = new Slab(new File(cacheDir, nextSlabId++ + SLAB_FILE_SUFFIX));
+    slabs.put(slab.file, slab);
+    return slab;
+  }
+
+  private void deleteSlab(Slab slab) {
+    slabs.remove(slab.file);
+    if (slab == currentSlab) {
+      currentSlab = null;
+    }
+    slab.close();
+    slab.file.delete();
+  }
+
+  /**
+   * Returns the channel of an open slab, or {@code null} if the slab has been compacted or removed.
+   *
+   * @param file The slab file.
+   * @return The channel, or {@code null}.
+   * @throws IOException If the channel was closed by an interrupted thread, and reopening it
+   *     failed.
+   */
+  @Nullable
+  private synchronized FileChannel getSlabChannel(File file) throws IOException {
+    @Nullable Slab slab = released ? null : slabs.get(file);
+    return slab != null && !slab.closed ? slab.getChannel() : null;
+  }
+
+  /**
+   * Schedules a slab that's no longer being written to for compaction if less than half of its
+   * length is live data. The slab is compacted by {@link #compactPendingSlabs()}.
+   */
+  private void maybeCompactSlab(Slab slab) {
+    if (slab == currentSlab
+        || slab.closed
+        || slab.compacting
+        || slab.pendingRecordCount > 0
+        || slab.liveLength * 2 >= slab.length) {
+      return;
+    }
+    slab.compacting = true;
+    slabsToCompact.add(slab);
+  }
+
+  /**
+   * Compacts the slabs scheduled by {@link #maybeCompactSlab(Slab)}. Does nothing if the calling
+   * thread holds the lock on the cache, in which case the slabs are compacted by the outermost call
+   * into the cache once it's released the lock.
+   */
+  private void compactPendingSlabs() {
+    if (Thread.holdsLock(this)) {
+      return;
+    }
+    while (true) {
+      Slab slab;
+      synchronized (this) {
+        @Nullable Slab nextSlab = slabsToCompact.poll();
+        if (nextSlab == null) {
+          return;
+        }
+        slab = nextSlab;
+      }
+      compactSlab(slab);
+    }
+  }
+
+  /**
+   * Compacts a slab by relocating its live spans to the current slab, and deletes the slab once it
+   * no longer contains any live spans.
+   *
+   * <p>Must be called without holding the lock on the cache. The data of each span is copied
+   * without holding the lock, so that other operations on the cache aren't blocked by the copy.
+   */
+  private void compactSlab(Slab slab) {
+    ArrayList<SimpleCacheSpan> spans;
+    synchronized (this) {
+      spans = new ArrayList<>(slab.spans.values());
+    }
+    for (int i = 0; i < spans.size(); i++) {
+      SimpleCacheSpan span = spans.get(i);
+      PendingRecord record;
+      FileChannel source;
+      FileChannel destination;
+      synchronized (this) {
+        if (released || slab.closed) {
+          return;
+        }
+        if (!slab.spans.containsKey(span.fileOffset)) {
+          // The span has been removed since compaction started.
+          continue;
+        }
+        try {
+          record =
+              reserveRecord(
+                  Assertions.checkNotNull(contentIndex.get(span.key)), span.position, span.length);
+          source = slab.getChannel();
+          destination = record.slab.getChannel();
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to compact slab: " + slab.file, e);
+          slab.compacting = false;
+          return;
+        }
+      }
+      @Nullable IOException copyException = null;
+      try {
+        copyToRecord(destination, record.getDataOffset(), source, span.fileOffset, span.length);
+      } catch (IOException e) {
+        copyException = e;
+      }
+      synchronized (this) {
+        if (released) {
+          return;
+        }
+        // The span may have been touched while its data was copied, in which case it's been
+        // replaced by a span with a new last touch timestamp.
+        @Nullable SimpleCacheSpan currentSpan = slab.spans.get(span.fileOffset);
+        if (copyException != null || slab.closed || currentSpan == null || record.slab.closed) {
+          discardRecord(record);
+          if (copyException != null) {
+            Log.w(TAG, "Failed to compact slab: " + slab.file, copyException);
+            slab.compacting = false;
+            return;
+          }
+          continue;
+        }
+        SimpleCacheSpan newSpan;
+        try {
+          newSpan = commitRecord(record, currentSpan.length, currentSpan.lastTouchTimestamp);
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to compact slab: " + slab.file, e);
+          discardRecord(record);
+          slab.compacting = false;
+          return;
+        }
+        CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
+        cachedContent.removeSpan(currentSpan, /* deleteFile= */ false);
+        cachedContent.addSpan(newSpan);
+        slab.spans.remove(currentSpan.fileOffset);
+        slab.liveLength -= currentSpan.length;
+        record.slab.addSpan(newSpan);
+        notifySpanTouched(currentSpan, newSpan);
+      }
+    }
+    synchronized (this) {
+      if (released || slab.closed) {
+        return;
+      }
+      if (slab.spans.isEmpty()) {
+        deleteSlab(slab);
+      } else {
+        slab.compacting = false;
+      }
+    }
+  }
+
+  /**
+   * Touches a cache span, returning the updated result. If the evictor does not require cache spans
+   * to be touched, then this method does nothing and the span is returned without modification.
+   *
+   * @param span The span being touched.
+   * @return The updated span.
+   */
+  private SimpleCacheSpan touchSpan(SimpleCacheSpan span) {
+    if (!touchCacheSpans) {
+      return span;
+    }
+    long lastTouchTimestamp = System.currentTimeMillis();
+    SimpleCacheSpan newSpan =
+        Assertions.checkNotNull(contentIndex.get(span.key))
+            .setLastTouchTimestamp(span, lastTouchTimestamp, /* updateFile= */ false);
+    @Nullable Slab slab = slabs.get(Assertions.checkNotNull(span.file));
+    if (slab != null) {
+      slab.spans.put(newSpan.fileOffset, newSpan);
+      ByteBuffer buffer = ByteBuffer.allocate(8);
+      buffer.putLong(lastTouchTimestamp);
+      buffer.flip();
+      try {
+        writeFully(
+            slab.getChannel(),
+            buffer,
+            newSpan.fileOffset - RECORD_HEADER_LENGTH + RECORD_OFFSET_LAST_TOUCH_TIMESTAMP);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to update touch timestamp in slab: " + slab.file);
+      }
+    }
+    notifySpanTouched(span, newSpan);
+    return newSpan;
+  }
+
+  /**
+   * Returns the cache span corresponding to the provided key and range. See {@link
+   * Cache#startReadWrite(String, long, long)} for detailed descriptions of the returned spans.
+   *
+   * <p>Unlike {@link SimpleCache}, the slab files aren't checked, since spans are read through the
+   * slabs that are held open by the cache. Slabs that were deleted from underneath the cache are
+   * detected when the cache directory is found to be missing by {@link #startFile(String, long,
+   * long)}.
+   *
+   * @param key The key of the span being requested.
+   * @param position The position of the span being requested.
+   * @param length The length of the span, or {@link C#LENGTH_UNSET} if unbounded.
+   * @return The corresponding cache {@link SimpleCacheSpan}.
+   */
+  private SimpleCacheSpan getSpan(String key, long position, long length) {
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    if (cachedContent == null) {
+      return SimpleCacheSpan.createHole(key, position, length);
+    }
+    return cachedContent.getSpan(position, length);
+  }
+
+  private void addSpan(CachedContent cachedContent, SimpleCacheSpan span) {
+    cachedContent.addSpan(span);
+    Assertions.checkNotNull(slabs.get(Assertions.checkNotNull(span.file))).addSpan(span);
+    totalSpace += span.length;
+    notifySpanAdded(span);
+  }
+
+  private void removeSpanInternal(CacheSpan span) {
+    @Nullable CachedContent cachedContent = contentIndex.get(span.key);
+    if (cachedContent == null) {
+      return;
+    }
+    // Remove the span currently held in the in-memory representation, which may have been
+    // relocated since the caller obtained the span being removed.
+    SimpleCacheSpan cachedSpan = cachedContent.getSpan(span.position, span.length);
+    if (!cachedSpan.isCached
+        || cachedSpan.position != span.position
+        || !cachedContent.removeSpan(cachedSpan, /* deleteFile= */ false)) {
+      return;
+    }
+    totalSpace -= cachedSpan.length;
+    @Nullable Slab slab = slabs.get(Assertions.checkNotNull(cachedSpan.file));
+    if (slab != null) {
+      slab.spans.remove(cachedSpan.fileOffset);
+      slab.liveLength -= cachedSpan.length;
+      try {
+        writeRecordState(
+            slab.getChannel(),
+            cachedSpan.fileOffset - RECORD_HEADER_LENGTH,
+            RECORD_STATE_REMOVED);
+      } catch (IOException e) {
+        // The span will be loaded again next time the cache is initialized.
+        Log.w(TAG, "Failed to remove span from slab: " + slab.file);
+      }
+    }
+    contentIndex.maybeRemove(cachedContent.key);
+    notifySpanRemoved(cachedSpan);
+    if (slab != null) {
+      maybeCompactSlab(slab);
+    }
+  }
+
+  /**
+   * Removes the slabs whose files no longer exist, along with the spans that they contain. Pending
+   * records in the removed slabs are discarded when they're committed.
+   */
+  private void removeStaleSpans() {
+    ArrayList<Slab> staleSlabs = new ArrayList<>();
+    for (Slab slab : slabs.values()) {
+      if (!slab.file.exists()) {
+        staleSlabs.add(slab);
+      }
+    }
+    // Delete the slabs before removing their spans, so that removing the spans doesn't write to
+    // the slabs or try to compact them.
+    for (int i = 0; i < staleSlabs.size(); i++) {
+      deleteSlab(staleSlabs.get(i));
+    }
+    for (int i = 0; i < staleSlabs.size(); i++) {
+      for (SimpleCacheSpan span : new ArrayList<>(staleSlabs.get(i).spans.values())) {
+        removeSpanInternal(span);
+      }
+    }
+  }
+
+  /**
+   * Discards the records reserved for files returned by {@link #startFile(String, long, long)}
+   * within the range of a released hole span that weren't committed.
+   */
+  private void discardPendingRecords(CacheSpan holeSpan) {
+    Iterator<Map.Entry<File, PendingRecord>> iterator = pendingRecords.entrySet().iterator();
+    ArrayList<PendingRecord> recordsToDiscard = new ArrayList<>();
+    while (iterator.hasNext()) {
+      Map.Entry<File, PendingRecord> entry = iterator.next();
+      PendingRecord record = entry.getValue();
+      if (record.key.equals(holeSpan.key)
+          && record.position >= holeSpan.position
+          && (holeSpan.isOpenEnded() || record.position < holeSpan.position + holeSpan.length)) {
+        iterator.remove();
+        entry.getKey().delete();
+        recordsToDiscard.add(record);
+      }
+    }
+    // Discarding a record may compact its slab, which reserves further records.
+    for (int i = 0; i < recordsToDiscard.size(); i++) {
+      discardRecord(recordsToDiscard.get(i));
+    }
+  }
+
+  private void notifySpanRemoved(CacheSpan span) {
+    @Nullable ArrayList<Listener> keyListeners = listeners.get(span.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanRemoved(this, span);
+      }
+    }
+    evictor.onSpanRemoved(this, span);
+  }
+
+  private void notifySpanAdded(SimpleCacheSpan span) {
+    @Nullable ArrayList<Listener> keyListeners = listeners.get(span.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanAdded(this, span);
+      }
+    }
+    evictor.onSpanAdded(this, span);
+  }
+
+  private void notifySpanTouched(SimpleCacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanTouched(this, oldSpan, newSpan);
+      }
+    }
+    evictor.onSpanTouched(this, oldSpan, newSpan);
+  }
+
+  private static void writeRecordState(FileChannel channel, long recordOffset, int state)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(4);
+    buffer.putInt(state);
+    buffer.flip();
+    writeFully(channel, buffer, recordOffset);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      offset += channel.write(buffer, offset);
+    }
+  }
+
+  /**
+   * Reads from a channel until the buffer is full.
+   *
+   * @return Whether the buffer was filled, which is {@code false} if the end of the channel was
+   *     reached first.
+   */
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long offset)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int bytesRead = channel.read(buffer, offset);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return false;
+      }
+      offset += bytesRead;
+    }
+    return true;
+  }
+
+  /** A slab file, which is held open while it's in use, and the live spans that it contains. */
+  private static final class Slab {
+
+    public final File file;
+
+    /**
+     * The channel of the open slab file. It's shared by all readers and writers of the slab, which
+     * only access it at explicit offsets. A channel is closed when a thread that's using it is
+     * interrupted, in which case it's reopened by {@link #getChannel()}.
+     */
+    private FileChannel channel;
+
+    /** The live spans in the slab, keyed by the offset of their data in {@link #file}. */
+    public final HashMap<Long, SimpleCacheSpan> spans;
+
+    /** The length of the slab, including removed and pending records. */
+    public long length;
+
+    /** The total length of the live spans in the slab. */
+    public long liveLength;
+
+    /** The number of records in the slab that are reserved but not yet committed or discarded. */
+    public int pendingRecordCount;
+
+    /** Whether the slab is being compacted. */
+    public boolean compacting;
+
+    /** Whether the slab has been closed, after which it can no longer be read or written. */
+    public boolean closed;
+
+    public Slab(File file) throws IOException {
+      this.file = file;
+      channel = new RandomAccessFile(file, "rw").getChannel();
+      spans = new HashMap<>();
+    }
+
+    /**
+     * Returns the channel of the slab file, reopening it if it was closed because a thread that was
+     * using it was interrupted. Must only be called while holding the lock on the cache.
+     *
+     * @throws IOException If the slab has been closed, or if the channel couldn't be reopened.
+     */
+    public FileChannel getChannel() throws IOException {
+      if (!channel.isOpen()) {
+        if (closed) {
+          throw new ClosedChannelException();
+        }
+        channel = new RandomAccessFile(file, "rw").getChannel();
+      }
+      return channel;
+    }
+
+    public void addSpan(SimpleCacheSpan span) {
+      spans.put(span.fileOffset, span);
+      liveLength += span.length;
+    }
+
+    public void close() {
+      closed = true;
+      try {
+        channel.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to close slab: " + file, e);
+      }
+    }
+  }
+
+  /** A record reserved in a slab for a file returned by {@link #startFile(String, long, long)}. */
+  private static final class PendingRecord {
+
+    public final String key;
+    public final long position;
+    public final Slab slab;
+
+    /** The offset of the record's header in the slab. */
+    public final long offset;
+
+    /** The length of the region reserved for the data, or {@link C#LENGTH_UNSET} if unbounded. */
+    public final long capacity;
+
+    /** Whether the record has been committed or discarded. */
+    public boolean finished;
+
+    public PendingRecord(String key, long position, Slab slab, long offset, long capacity) {
+      this.key = key;
+      this.position = position;
+      this.slab = slab;
+      this.offset = offset;
+      this.capacity = capacity;
+    }
+
+    public long getDataOffset() {
+      return offset + RECORD_HEADER_LENGTH;
+    }
+  }
+
+  private static InterruptedIOException createInterruptedIOException(
+      ClosedByInterruptException cause) {
+    InterruptedIOException exception = new InterruptedIOException();
+    exception.initCause(cause);
+    return exception;
+  }
+
+  /** Writes data straight into the region reserved for a {@link PendingRecord}. */
+  private static final class RecordOutputStream extends OutputStream {
+
+    private final SlabCache cache;
+    private final File slabFile;
+    private final long dataOffset;
+    private final long capacity;
+
+    private FileChannel channel;
+    private long bytesWritten;
+
+    public RecordOutputStream(
+        SlabCache cache, FileChannel channel, File slabFile, long dataOffset, long capacity) {
+      this.cache = cache;
+      this.channel = channel;
+      this.slabFile = slabFile;
+      this.dataOffset = dataOffset;
+      this.capacity = capacity;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, /* off= */ 0, /* len= */ 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (capacity != C.LENGTH_UNSET && bytesWritten + len > capacity) {
+        throw new IOException("Write exceeds the length passed to startFile: " + capacity);
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      boolean reopenedChannel = false;
+      while (buffer.hasRemaining()) {
+        try {
+          channel.write(buffer, dataOffset + bytesWritten + buffer.position() - off);
+        } catch (ClosedByInterruptException e) {
+          throw createInterruptedIOException(e);
+        } catch (ClosedChannelException e) {
+          // The channel is shared with other threads, and was closed because one of them was
+          // interrupted while using it.
+          @Nullable FileChannel channel = reopenedChannel ? null : cache.getSlabChannel(slabFile);
+          if (channel == null) {
+            throw e;
+          }
+          this.channel = channel;
+          reopenedChannel = true;
+        }
+      }
+      bytesWritten += len;
+    }
+  }
+
+  /** A {@link DataSource} that reads spans through the open slabs of a {@link SlabCache}. */
+  private static final class SlabDataSource extends BaseDataSource {
+
+    private final SlabCache cache;
+
+    @Nullable private Uri uri;
+    @Nullable private File slabFile;
+    @Nullable private FileChannel channel;
+    private long readPosition;
+    private long bytesRemaining;
+    private boolean opened;
+
+    public SlabDataSource(SlabCache cache) {
+      super(/* isNetwork= */ false);
+      this.cache = cache;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws DataSourceException {
+      Uri uri = dataSpec.uri;
+      this.uri = uri;
+      transferInitializing(dataSpec);
+      File slabFile = new File(Assertions.checkNotNull(uri.getPath()));
+      this.slabFile = slabFile;
+      readPosition = dataSpec.position;
+      try {
+        @Nullable FileChannel channel = cache.getSlabChannel(slabFile);
+        if (channel == null) {
+          // The slab has been compacted or removed since the span was obtained.
+          throw new DataSourceException(PlaybackException.ERROR_CODE_IO_FILE_NOT_FOUND);
+        }
+        this.channel = channel;
+        bytesRemaining =
+            dataSpec.length == C.LENGTH_UNSET
+                ? channel.size() - dataSpec.position
+                : dataSpec.length;
+      } catch (DataSourceException e) {
+        throw e;
+      } catch (IOException e) {
+        throw new DataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+      }
+      if (bytesRemaining < 0) {
+        throw new DataSourceException(
+            /* message= */ null,
+            /* cause= */ null,
+            PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
+      }
+
+      opened = true;
+      transferStarted(dataSpec);
+
+      return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      return read(ByteBuffer.wrap(buffer, offset, length));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws InterruptedIOException If the thread was interrupted during the read, for example
+     *     because the load that the read belongs to was canceled. Other readers of the same slab
+     *     aren't affected.
+     */
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+      if (!buffer.hasRemaining()) {
+        return 0;
+      } else if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int limit = buffer.limit();
+      int bytesRead;
+      try {
+        if (bytesRemaining < buffer.remaining()) {
+          buffer.limit(buffer.position() + (int) bytesRemaining);
+        }
+        bytesRead = readFromChannel(buffer);
+      } catch (InterruptedIOException | DataSourceException e) {
+        throw e;
+      } catch (IOException e) {
+        throw new DataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+      } finally {
+        buffer.limit(limit);
+      }
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        // The slab is shorter than the span, which means that it's been modified underneath us.
+        throw new DataSourceException(
+            new EOFException(), PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
+      }
+
+      readPosition += bytesRead;
+      bytesRemaining -= bytesRead;
+      bytesTransferred(bytesRead);
+      return bytesRead;
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+      return uri;
+    }
+
+    @Override
+    public void close() {
+      // The channel belongs to the cache, which closes it when the slab is no longer in use.
+      uri = null;
+      slabFile = null;
+      channel = null;
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+
+    private int readFromChannel(ByteBuffer buffer) throws IOException {
+      try {
+        return Assertions.checkNotNull(channel).read(buffer, readPosition);
+      } catch (ClosedByInterruptException e) {
+        throw createInterruptedIOException(e);
+      } catch (ClosedChannelException e) {
+        // The channel is shared with other readers and writers of the slab, and was closed because
+        // one of them was interrupted while using it.
+        @Nullable FileChannel channel = cache.getSlabChannel(Assertions.checkNotNull(slabFile));
+        if (channel == null) {
+          // The slab has been compacted or removed since the span was obtained.
+          throw new DataSourceException(e, PlaybackException.ERROR_CODE_IO_FILE_NOT_FOUND);
+        }
+        this.channel = channel;
+        return channel.read(buffer, readPosition);
+      }
+    }
+  }
+}
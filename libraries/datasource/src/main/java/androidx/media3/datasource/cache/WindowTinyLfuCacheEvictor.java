@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts cache files using the W-TinyLFU policy, which takes into account how frequently spans are
+ * accessed as well as how recently.
+ *
+ * <p>Spans are added to a small admission window, which is managed in least recently used order.
+ * Spans that leave the window become candidates for admission to the main part of the cache, which
+ * is managed using a segmented least recently used policy (see {@link
+ * SegmentedLeastRecentlyUsedCacheEvictor}). When space needs to be freed, a candidate is only
+ * admitted in place of the span that the main part of the cache would evict if it has been accessed
+ * more frequently. Access frequencies are estimated using a count-min sketch, which is aged so that
+ * recent accesses carry more weight.
+ *
+ * <p>Unlike {@link LeastRecentlyUsedCacheEvictor}, space isn't freed when a writer starts writing
+ * to the cache, since whether a span is admitted can only be decided once it's been added. The size
+ * of the cache may therefore exceed the maximum size by the length of the spans being written.
+ *
+ * <p>The estimated frequency of a span is multiplied by the weight of its key when deciding whether
+ * it should be admitted or kept. This can be used to keep manifests and initialization segments in
+ * preference to media segments.
+ */
+@UnstableApi
+public final class WindowTinyLfuCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that's used for the admission window. */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.01f;
+
+  /** The fraction of the main part of the cache that's used for its protected segment. */
+  private static final float PROTECTED_FRACTION = 0.8f;
+
+  private static final int SEGMENT_WINDOW = 0;
+  private static final int SEGMENT_PROBATION = 1;
+  private static final int SEGMENT_PROTECTED = 2;
+
+  private final long maxBytes;
+  private final long maxWindowBytes;
+  private final long maxProtectedBytes;
+  private final CacheKeyWeights keyWeights;
+  private final FrequencySketch sketch;
+  private final TreeMap<CacheSpan, Node> nodes;
+  private final LinkedHashSet<Node> windowSegment;
+  private final LinkedHashSet<Node> probationSegment;
+  private final LinkedHashSet<Node> protectedSegment;
+
+  /** Spans that have left the window and not yet been admitted, most recent last. */
+  private final ArrayDeque<Node> candidates;
+
+  private long currentSize;
+  private long windowSize;
+  private long protectedSize;
+
+  /**
+   * Creates an instance that uses {@link #DEFAULT_WINDOW_FRACTION} of the cache for the admission
+   * window.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public WindowTinyLfuCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_WINDOW_FRACTION, ImmutableMap.of());
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param windowFraction The fraction of the cache that's used for the admission window.
+   * @param keyPrefixWeights The weights of keys starting with each prefix, by which the estimated
+   *     access frequencies of their spans are multiplied. If a key starts with more than one of the
+   *     prefixes, the weight of the longest prefix is used. Keys that don't start with any of the
+   *     prefixes have a weight of 1.
+   */
+  public WindowTinyLfuCacheEvictor(
+      long maxBytes, float windowFraction, Map<String, Integer> keyPrefixWeights) {
+    checkArgument(windowFraction >= 0 && windowFraction <= 1);
+    this.maxBytes = maxBytes;
+    this.maxWindowBytes = (long) (maxBytes * windowFraction);
+    this.maxProtectedBytes = (long) ((maxBytes - maxWindowBytes) * PROTECTED_FRACTION);
+    this.keyWeights = new CacheKeyWeights(keyPrefixWeights);
+    sketch = new FrequencySketch();
+    nodes = new TreeMap<>();
+    windowSegment = new LinkedHashSet<>();
+    probationSegment = new LinkedHashSet<>();
+    protectedSegment = new LinkedHashSet<>();
+    candidates = new ArrayDeque<>();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    // Do nothing. Whether a span is admitted can only be decided once it's been added.
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    Node node = new Node(span, keyWeights.getWeight(span.key));
+    nodes.put(span, node);
+    sketch.ensureCapacity(nodes.size());
+    sketch.increment(node.hash);
+    currentSize += span.length;
+    node.segment = SEGMENT_WINDOW;
+    windowSegment.add(node);
+    windowSize += span.length;
+    evictCache(cache);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    @Nullable Node node = nodes.get(span);
+    if (node != null) {
+      removeNode(node);
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Node node = nodes.remove(oldSpan);
+    if (node == null) {
+      onSpanAdded(cache, newSpan);
+      return;
+    }
+    node.span = newSpan;
+    nodes.put(newSpan, node);
+    sketch.increment(node.hash);
+    switch (node.segment) {
+      case SEGMENT_WINDOW:
+        windowSegment.remove(node);
+        windowSegment.add(node);
+        break;
+      case SEGMENT_PROBATION:
+        probationSegment.remove(node);
+        node.isCandidate = false;
+        addToProtectedSegment(node);
+        break;
+      case SEGMENT_PROTECTED:
+      default:
+        protectedSegment.remove(node);
+        protectedSegment.add(node);
+        break;
+    }
+  }
+
+  private void evictCache(Cache cache) {
+    // Move spans that no longer fit in the window to the main part of the cache, as candidates for
+    // admission.
+    while (windowSize > maxWindowBytes && !windowSegment.isEmpty()) {
+      Node node = windowSegment.iterator().next();
+      windowSegment.remove(node);
+      windowSize -= node.span.length;
+      node.segment = SEGMENT_PROBATION;
+      node.isCandidate = true;
+      probationSegment.add(node);
+      candidates.addLast(node);
+    }
+    if (candidates.size() > nodes.size()) {
+      removeStaleCandidates();
+    }
+
+    while (currentSize > maxBytes && !nodes.isEmpty()) {
+      Node victim = getVictim();
+      @Nullable Node candidate = pollCandidate();
+      Node evictedNode = victim;
+      if (candidate != null
+          && candidate != victim
+          && getAdmissionFrequency(candidate) <= getAdmissionFrequency(victim)) {
+        evictedNode = candidate;
+      }
+      // Remove the node before removing the span, so that eviction makes progress even if the span
+      // is no longer in the cache.
+      removeNode(evictedNode);
+      cache.removeSpan(evictedNode.span);
+    }
+  }
+
+  /**
+   * Returns the span that the main part of the cache would evict, or a window span if the main part
+   * is empty.
+   */
+  private Node getVictim() {
+    if (!probationSegment.isEmpty()) {
+      return probationSegment.iterator().next();
+    } else if (!protectedSegment.isEmpty()) {
+      return protectedSegment.iterator().next();
+    } else {
+      return windowSegment.iterator().next();
+    }
+  }
+
+  /** Returns the most recent candidate for admission, or null if there are no candidates. */
+  @Nullable
+  private Node pollCandidate() {
+    while (!candidates.isEmpty()) {
+      Node candidate = candidates.pollLast();
+      if (candidate.isCandidate) {
+        candidate.isCandidate = false;
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private void removeStaleCandidates() {
+    Iterator<Node> iterator = candidates.iterator();
+    while (iterator.hasNext()) {
+      if (!iterator.next().isCandidate) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private int getAdmissionFrequency(Node node) {
+    return sketch.getFrequency(node.hash) * node.weight;
+  }
+
+  private void addToProtectedSegment(Node node) {
+    node.segment = SEGMENT_PROTECTED;
+    protectedSegment.add(node);
+    protectedSize += node.span.length;
+    while (protectedSize > maxProtectedBytes && protectedSegment.size() > 1) {
+      // Demote the least recently used span to the most recently used end of the probationary
+      // segment.
+      Node demotedNode = protectedSegment.iterator().next();
+      protectedSegment.remove(demotedNode);
+      protectedSize -= demotedNode.span.length;
+      demotedNode.segment = SEGMENT_PROBATION;
+      probationSegment.add(demotedNode);
+    }
+  }
+
+  private void removeNode(Node node) {
+    nodes.remove(node.span);
+    currentSize -= node.span.length;
+    node.isCandidate = false;
+    switch (node.segment) {
+      case SEGMENT_WINDOW:
+        windowSegment.remove(node);
+        windowSize -= node.span.length;
+        break;
+      case SEGMENT_PROBATION:
+        probationSegment.remove(node);
+        break;
+      case SEGMENT_PROTECTED:
+      default:
+        protectedSegment.remove(node);
+        protectedSize -= node.span.length;
+        break;
+    }
+  }
+
+  private static int hash(CacheSpan span) {
+    return 31 * span.key.hashCode() + (int) (span.position ^ (span.position >>> 32));
+  }
+
+  private static final class Node {
+
+    public final int hash;
+    public final int weight;
+
+    public CacheSpan span;
+    public int segment;
+    public boolean isCandidate;
+
+    public Node(CacheSpan span, int weight) {
+      this.span = span;
+      this.weight = weight;
+      hash = WindowTinyLfuCacheEvictor.hash(span);
+    }
+  }
+}
@@ -15,16 +15,22 @@
  */
 package androidx.media3.datasource;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
 import android.net.Uri;
 import androidx.media3.test.utils.DataSourceContractTest;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.ImmutableList;
 import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import org.junit.Before;
 import org.junit.Rule;
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 
@@ -60,4 +66,21 @@ public class FileDataSourceContractTest extends DataSourceContractTest {
   protected DataSource createDataSource() {
     return new FileDataSource();
   }
+
+  @Test
+  public void readByteBuffer_whenInterrupted_throwsInterruptedIOException() throws Exception {
+    FileDataSource dataSource = new FileDataSource();
+    dataSource.open(new DataSpec(uri));
+    ByteBuffer buffer = ByteBuffer.allocate(DATA.length);
+
+    Thread.currentThread().interrupt();
+    try {
+      assertThrows(InterruptedIOException.class, () -> dataSource.read(buffer));
+    } finally {
+      // Clear the interrupted status so it doesn't leak into other tests.
+      Thread.interrupted();
+      dataSource.close();
+    }
+    assertThat(buffer.position()).isEqualTo(0);
+  }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.test.utils.TestUtil;
+import androidx.media3.test.utils.WebServerDispatcher;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParallelRangeDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public class ParallelRangeDataSourceTest {
+
+  private static final int CHUNK_SIZE = 16 * 1024;
+  private static final byte[] DATA = TestUtil.buildTestData(/* length= */ 100_000);
+
+  private MockWebServer mockWebServer;
+  private AtomicInteger concurrentRequestCount;
+  private AtomicInteger maxConcurrentRequestCount;
+  private volatile long responseDelayMs;
+
+  @Before
+  public void setUp() throws Exception {
+    WebServerDispatcher webServerDispatcher =
+        WebServerDispatcher.forResources(
+            ImmutableList.of(
+                new WebServerDispatcher.Resource.Builder()
+                    .setPath("/range-supported")
+                    .setData(DATA)
+                    .supportsRangeRequests(true)
+                    .build(),
+                new WebServerDispatcher.Resource.Builder()
+                    .setPath("/range-not-supported")
+                    .setData(DATA)
+                    .supportsRangeRequests(false)
+                    .build()));
+    concurrentRequestCount = new AtomicInteger();
+    maxConcurrentRequestCount = new AtomicInteger();
+    mockWebServer = new MockWebServer();
+    mockWebServer.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            int requestCount = concurrentRequestCount.incrementAndGet();
+            maxConcurrentRequestCount.accumulateAndGet(requestCount, Math::max);
+            try {
+              // Inject latency, so that concurrent requests overlap.
+              Thread.sleep(responseDelayMs);
+              return webServerDispatcher.dispatch(request);
+            } finally {
+              concurrentRequestCount.decrementAndGet();
+            }
+          }
+        });
+    mockWebServer.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void read_rangeSupported_readsAllChunksInOrder() throws Exception {
+    DataSource dataSource = createDataSource(/* maxParallelRequests= */ 4);
+
+    byte[] data = readAll(dataSource, new DataSpec(getUri("/range-supported")));
+
+    assertThat(data).isEqualTo(DATA);
+    // One request for each chunk.
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(7);
+    assertThat(mockWebServer.takeRequest().getHeader("Range")).isEqualTo("bytes=0-16383");
+  }
+
+  @Test
+  public void read_withPositionAndLength_readsRange() throws Exception {
+    DataSource dataSource = createDataSource(/* maxParallelRequests= */ 4);
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(getUri("/range-supported"))
+            .setPosition(10_000)
+            .setLength(50_000)
+            .build();
+
+    byte[] data = readAll(dataSource, dataSpec);
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(DATA, 10_000, 60_000));
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void read_rangeNotSupported_readsWithSingleRequest() throws Exception {
+    DataSource dataSource = createDataSource(/* maxParallelRequests= */ 4);
+
+    byte[] data = readAll(dataSource, new DataSpec(getUri("/range-not-supported")));
+
+    assertThat(data).isEqualTo(DATA);
+    // The response to the first chunk request doesn't have a Content-Range header, so it's
+    // followed by a single request for the whole resource.
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void read_gzipAllowed_readsWithSingleRequest() throws Exception {
+    DataSource dataSource = createDataSource(/* maxParallelRequests= */ 4);
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(getUri("/range-supported"))
+            .setFlags(DataSpec.FLAG_ALLOW_GZIP)
+            .build();
+
+    byte[] data = readAll(dataSource, dataSpec);
+
+    assertThat(data).isEqualTo(DATA);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void read_postRequest_readsWithSingleRequest() throws Exception {
+    DataSource dataSource = createDataSource(/* maxParallelRequests= */ 4);
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(getUri("/range-supported"))
+            .setHttpMethod(DataSpec.HTTP_METHOD_POST)
+            .setHttpBody(new byte[] {1, 2, 3})
+            .build();
+
+    byte[] data = readAll(dataSource, dataSpec);
+
+    assertThat(data).isEqualTo(DATA);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+    RecordedRequest request = mockWebServer.takeRequest();
+    assertThat(request.getMethod()).isEqualTo("POST");
+    assertThat(request.getHeader("Range")).isNull();
+  }
+
+  @Test
+  public void read_executorRejectsChunk_throwsIOException() throws Exception {
+    DataSource dataSource =
+        new ParallelRangeDataSource.Factory(new DefaultHttpDataSource.Factory())
+            .setChunkSize(CHUNK_SIZE)
+            .setMaxParallelRequests(4)
+            .setExecutor(
+                runnable -> {
+                  throw new RejectedExecutionException();
+                })
+            .createDataSource();
+
+    dataSource.open(new DataSpec(getUri("/range-supported")));
+    IOException exception;
+    try {
+      exception = assertThrows(IOException.class, () -> DataSourceUtil.readToEnd(dataSource));
+    } finally {
+      dataSource.close();
+    }
+
+    assertThat(exception).hasCauseThat().isInstanceOf(RejectedExecutionException.class);
+  }
+
+  @Test
+  public void read_withLatency_makesConcurrentRequests() throws Exception {
+    responseDelayMs = 50;
+    DataSource dataSource = createDataSource(/* maxParallelRequests= */ 4);
+
+    byte[] data = readAll(dataSource, new DataSpec(getUri("/range-supported")));
+
+    assertThat(data).isEqualTo(DATA);
+    assertThat(maxConcurrentRequestCount.get()).isGreaterThan(1);
+    assertThat(maxConcurrentRequestCount.get()).isAtMost(4);
+  }
+
+  @Test
+  public void read_withLatencyAndSingleRequest_makesSequentialRequests() throws Exception {
+    responseDelayMs = 50;
+    DataSource dataSource = createDataSource(/* maxParallelRequests= */ 1);
+
+    byte[] data = readAll(dataSource, new DataSpec(getUri("/range-supported")));
+
+    assertThat(data).isEqualTo(DATA);
+    assertThat(maxConcurrentRequestCount.get()).isEqualTo(1);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void close_beforeReadingAllChunks_allowsReopening() throws Exception {
+    responseDelayMs = 20;
+    DataSource dataSource = createDataSource(/* maxParallelRequests= */ 4);
+    DataSpec dataSpec = new DataSpec(getUri("/range-supported"));
+
+    dataSource.open(dataSpec);
+    DataSourceUtil.readExactly(dataSource, /* length= */ 20_000);
+    dataSource.close();
+    byte[] data = readAll(dataSource, dataSpec);
+
+    assertThat(data).isEqualTo(DATA);
+  }
+
+  private Uri getUri(String path) {
+    return Uri.parse(mockWebServer.url(path).toString());
+  }
+
+  private static DataSource createDataSource(int maxParallelRequests) {
+    return new ParallelRangeDataSource.Factory(new DefaultHttpDataSource.Factory())
+        .setChunkSize(CHUNK_SIZE)
+        .setMaxParallelRequests(maxParallelRequests)
+        .createDataSource();
+  }
+
+  private static byte[] readAll(DataSource dataSource, DataSpec dataSpec) throws Exception {
+    try {
+      dataSource.open(dataSpec);
+      return DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
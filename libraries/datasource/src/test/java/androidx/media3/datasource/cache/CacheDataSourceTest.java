@@ -28,11 +28,13 @@ import androidx.media3.datasource.DataSourceUtil;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.FileDataSource;
 import androidx.media3.test.utils.CacheAsserts;
+import androidx.media3.test.utils.FakeDataSet;
 import androidx.media3.test.utils.FakeDataSet.FakeData;
 import androidx.media3.test.utils.FakeDataSource;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.primitives.Bytes;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
@@ -522,6 +524,80 @@ public final class CacheDataSourceTest {
     cacheDataSource.close();
   }
 
+  @Test
+  public void readWhileOtherInstanceWritesSameData_withInFlightCacheWrites_followsWrite()
+      throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    fakeDataSet.newDefaultData().appendReadData(TEST_DATA);
+    FakeDataSource writingUpstream = new FakeDataSource(fakeDataSet);
+    FakeDataSource followingUpstream = new FakeDataSource(fakeDataSet);
+    InFlightCacheWrites inFlightCacheWrites = new InFlightCacheWrites();
+    CacheDataSource writingDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> writingUpstream)
+            .setFlags(CacheDataSource.FLAG_BLOCK_ON_CACHE)
+            .setInFlightCacheWrites(inFlightCacheWrites)
+            .createDataSource();
+    CacheDataSource followingDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> followingUpstream)
+            .setFlags(CacheDataSource.FLAG_BLOCK_ON_CACHE)
+            .setInFlightCacheWrites(inFlightCacheWrites)
+            .createDataSource();
+
+    writingDataSource.open(unboundedDataSpec);
+    byte[] writtenData = DataSourceUtil.readExactly(writingDataSource, /* length= */ 4);
+    // The data is locked by the writing instance, so this would block without following the write.
+    followingDataSource.open(unboundedDataSpec);
+    byte[] followedData = DataSourceUtil.readExactly(followingDataSource, /* length= */ 4);
+    writtenData = Bytes.concat(writtenData, DataSourceUtil.readToEnd(writingDataSource));
+    followedData = Bytes.concat(followedData, DataSourceUtil.readToEnd(followingDataSource));
+    writingDataSource.close();
+    followingDataSource.close();
+
+    assertThat(writtenData).isEqualTo(TEST_DATA);
+    assertThat(followedData).isEqualTo(TEST_DATA);
+    assertThat(writingUpstream.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(followingUpstream.getAndClearOpenedDataSpecs()).isEmpty();
+    CacheAsserts.assertDataCached(cache, unboundedDataSpec, TEST_DATA);
+  }
+
+  @Test
+  public void readWhileOtherInstanceWritesSameData_dataOutsideWindow_readsFromUpstream()
+      throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    fakeDataSet.newDefaultData().appendReadData(TEST_DATA);
+    FakeDataSource writingUpstream = new FakeDataSource(fakeDataSet);
+    FakeDataSource followingUpstream = new FakeDataSource(fakeDataSet);
+    InFlightCacheWrites inFlightCacheWrites =
+        new InFlightCacheWrites(/* windowSize= */ 4, InFlightCacheWrites.DEFAULT_STALL_TIMEOUT_MS);
+    CacheDataSource writingDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> writingUpstream)
+            .setInFlightCacheWrites(inFlightCacheWrites)
+            .createDataSource();
+    CacheDataSource followingDataSource =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(() -> followingUpstream)
+            .setInFlightCacheWrites(inFlightCacheWrites)
+            .createDataSource();
+
+    writingDataSource.open(unboundedDataSpec);
+    DataSourceUtil.readExactly(writingDataSource, /* length= */ 8);
+    // The first bytes are no longer in the window of the write, so they're read from upstream.
+    followingDataSource.open(unboundedDataSpec);
+    byte[] followedData = DataSourceUtil.readToEnd(followingDataSource);
+    followingDataSource.close();
+    writingDataSource.close();
+
+    assertThat(followedData).isEqualTo(TEST_DATA);
+    assertThat(followingUpstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
   private void assertCacheAndRead(DataSpec dataSpec, boolean unknownLength) throws IOException {
     assertCacheAndRead(dataSpec, unknownLength, /* cacheKeyFactory= */ null);
   }
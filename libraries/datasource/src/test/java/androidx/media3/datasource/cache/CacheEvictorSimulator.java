@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Supplier;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Replays traces of cache accesses against {@link CacheEvictor} implementations, to compare the
+ * hit ratios of eviction policies.
+ *
+ * <p>Each access in a trace reads a span of a resource. The span is a hit if it's in the simulated
+ * cache, in which case it's touched. Otherwise it's a miss, and the span is added to the simulated
+ * cache. No data is read or written.
+ */
+/* package */ final class CacheEvictorSimulator {
+
+  /** An access to a span of a resource. */
+  public static final class Access {
+
+    public final String key;
+    public final long position;
+    public final long length;
+
+    public Access(String key, long position, long length) {
+      this.key = key;
+      this.position = position;
+      this.length = length;
+    }
+  }
+
+  /** The result of replaying a trace. */
+  public static final class Result {
+
+    public final int accessCount;
+    public final int hitCount;
+    public final long byteCount;
+    public final long hitByteCount;
+
+    private Result(int accessCount, int hitCount, long byteCount, long hitByteCount) {
+      this.accessCount = accessCount;
+      this.hitCount = hitCount;
+      this.byteCount = byteCount;
+      this.hitByteCount = hitByteCount;
+    }
+
+    /** Returns the fraction of accesses that were hits. */
+    public double getHitRatio() {
+      return accessCount == 0 ? 0 : (double) hitCount / accessCount;
+    }
+
+    /** Returns the fraction of accessed bytes that were hits. */
+    public double getByteHitRatio() {
+      return byteCount == 0 ? 0 : (double) hitByteCount / byteCount;
+    }
+  }
+
+  private CacheEvictorSimulator() {}
+
+  /**
+   * Parses a trace in which each line contains the key, position and length of an access,
+   * separated by whitespace. Empty lines and lines starting with {@code #} are ignored.
+   */
+  public static List<Access> parseTrace(BufferedReader reader) throws IOException {
+    List<Access> trace = new ArrayList<>();
+    @Nullable String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      if (fields.length != 3) {
+        throw new IOException("Malformed trace line: " + line);
+      }
+      trace.add(new Access(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+    }
+    return trace;
+  }
+
+  /** Replays a trace against an evictor, returning the result. */
+  public static Result replay(List<Access> trace, CacheEvictor evictor) {
+    SimulatedCache cache = new SimulatedCache(evictor);
+    evictor.onCacheInitialized();
+    for (int i = 0; i < trace.size(); i++) {
+      cache.access(trace.get(i), /* timestamp= */ i);
+    }
+    return new Result(trace.size(), cache.hitCount, cache.byteCount, cache.hitByteCount);
+  }
+
+  /**
+   * Replays a trace against each of the given evictors, returning a report of the hit ratio of
+   * each.
+   */
+  public static String report(List<Access> trace, Map<String, Supplier<CacheEvictor>> evictors) {
+    StringBuilder report = new StringBuilder();
+    for (Map.Entry<String, Supplier<CacheEvictor>> entry : evictors.entrySet()) {
+      Result result = replay(trace, entry.getValue().get());
+      report.append(
+          String.format(
+              Locale.US,
+              "%s: hit ratio %.4f, byte hit ratio %.4f\n",
+              entry.getKey(),
+              result.getHitRatio(),
+              result.getByteHitRatio()));
+    }
+    return report.toString();
+  }
+
+  /** A {@link Cache} that only tracks which spans are cached, without storing any data. */
+  private static final class SimulatedCache implements Cache {
+
+    private static final File PLACEHOLDER_FILE = new File("simulated");
+
+    private final CacheEvictor evictor;
+    private final boolean touchCacheSpans;
+    private final TreeMap<CacheSpan, CacheSpan> spans;
+
+    private int hitCount;
+    private long byteCount;
+    private long hitByteCount;
+
+    public SimulatedCache(CacheEvictor evictor) {
+      this.evictor = evictor;
+      touchCacheSpans = evictor.requiresCacheSpanTouches();
+      spans = new TreeMap<>();
+    }
+
+    public void access(Access access, long timestamp) {
+      byteCount += access.length;
+      CacheSpan lookupSpan = new CacheSpan(access.key, access.position, access.length);
+      @Nullable CacheSpan span = spans.get(lookupSpan);
+      if (span != null) {
+        hitCount++;
+        hitByteCount += access.length;
+        if (touchCacheSpans) {
+          CacheSpan newSpan =
+              new CacheSpan(span.key, span.position, span.length, timestamp, PLACEHOLDER_FILE);
+          spans.put(newSpan, newSpan);
+          evictor.onSpanTouched(this, span, newSpan);
+        }
+        return;
+      }
+      evictor.onStartFile(this, access.key, access.position, access.length);
+      CacheSpan newSpan =
+          new CacheSpan(access.key, access.position, access.length, timestamp, PLACEHOLDER_FILE);
+      spans.put(newSpan, newSpan);
+      evictor.onSpanAdded(this, newSpan);
+    }
+
+    @Override
+    public void removeSpan(CacheSpan span) {
+      @Nullable CacheSpan removedSpan = spans.remove(span);
+      if (removedSpan != null) {
+        evictor.onSpanRemoved(this, removedSpan);
+      }
+    }
+
+    @Override
+    public long getUid() {
+      return 0;
+    }
+
+    @Override
+    public void release() {}
+
+    @Override
+    public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeListener(String key, Listener listener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<CacheSpan> getCachedSpans(String key) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<String> getKeys() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getCacheSpace() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CacheSpan startReadWrite(String key, long position, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Nullable
+    public CacheSpan startReadWriteNonBlocking(String key, long position, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public File startFile(String key, long position, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void commitFile(File file, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void releaseHoleSpan(CacheSpan holeSpan) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeResource(String key) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isCached(String key, long position, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getCachedLength(String key, long position, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getCachedBytes(String key, long position, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void applyContentMetadataMutations(String key, ContentMetadataMutations mutations) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ContentMetadata getContentMetadata(String key) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
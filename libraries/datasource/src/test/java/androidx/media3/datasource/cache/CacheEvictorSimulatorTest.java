@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.datasource.cache.CacheEvictorSimulator.Access;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.base.Supplier;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the hit ratios of {@link CacheEvictor} implementations using {@link
+ * CacheEvictorSimulator}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CacheEvictorSimulatorTest {
+
+  @Test
+  public void parseTrace() throws Exception {
+    String traceString = "# key position length\nkey1 0 100\n\nkey2   100 50\n";
+
+    List<Access> trace =
+        CacheEvictorSimulator.parseTrace(new BufferedReader(new StringReader(traceString)));
+
+    assertThat(trace).hasSize(2);
+    assertThat(trace.get(0).key).isEqualTo("key1");
+    assertThat(trace.get(0).position).isEqualTo(0);
+    assertThat(trace.get(0).length).isEqualTo(100);
+    assertThat(trace.get(1).key).isEqualTo("key2");
+    assertThat(trace.get(1).position).isEqualTo(100);
+    assertThat(trace.get(1).length).isEqualTo(50);
+  }
+
+  @Test
+  public void replay_hotSetWithPeriodicScans() {
+    // A hot set of 20 spans is read in each of 100 rounds. Every fifth round is followed by a scan
+    // of 100 spans that are only read once, which is larger than the cache.
+    List<Access> trace = new ArrayList<>();
+    int scanPosition = 0;
+    for (int round = 0; round < 100; round++) {
+      for (int i = 0; i < 20; i++) {
+        trace.add(new Access("hot" + i, 0, 1));
+      }
+      if (round % 5 == 4) {
+        for (int i = 0; i < 100; i++) {
+          trace.add(new Access("scan", scanPosition++, 1));
+        }
+      }
+    }
+    Map<String, Supplier<CacheEvictor>> evictors = new LinkedHashMap<>();
+    evictors.put("LRU", () -> new LeastRecentlyUsedCacheEvictor(50));
+    evictors.put("SLRU", () -> new SegmentedLeastRecentlyUsedCacheEvictor(50));
+    evictors.put("W-TinyLFU", () -> new WindowTinyLfuCacheEvictor(50));
+
+    String report = CacheEvictorSimulator.report(trace, evictors);
+
+    // The scans flush the hot set from the LRU cache, so the hot set misses in the following round.
+    // The frequency aware evictors only miss the hot set in the first round.
+    assertThat(report)
+        .isEqualTo(
+            "LRU: hit ratio 0.4000, byte hit ratio 0.4000\n"
+                + "SLRU: hit ratio 0.4950, byte hit ratio 0.4950\n"
+                + "W-TinyLFU: hit ratio 0.4950, byte hit ratio 0.4950\n");
+  }
+}
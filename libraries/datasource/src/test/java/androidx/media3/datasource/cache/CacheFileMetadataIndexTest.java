@@ -20,6 +20,7 @@ import static com.google.common.truth.Truth.assertThat;
 import androidx.media3.database.DatabaseIOException;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import org.junit.Test;
@@ -126,6 +127,39 @@ public class CacheFileMetadataIndexTest {
     assertThat(metadata.lastTouchTimestamp).isEqualTo(123);
   }
 
+  @Test
+  public void insertWithDirectory() throws DatabaseIOException {
+    CacheFileMetadataIndex index = newInitializedIndex();
+
+    index.set(
+        "name1", new CacheFileMetadata(/* length= */ 123, /* lastTouchTimestamp= */ 456, "1"));
+    index.set("name2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+
+    Map<String, CacheFileMetadata> all = index.getAll();
+    assertThat(all.get("name1").directory).isEqualTo("1");
+    assertThat(all.get("name2").directory).isNull();
+  }
+
+  @Test
+  public void setAll() throws DatabaseIOException {
+    CacheFileMetadataIndex index = newInitializedIndex();
+    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+
+    Map<String, CacheFileMetadata> fileMetadata = new HashMap<>();
+    fileMetadata.put(
+        "name1", new CacheFileMetadata(/* length= */ 123, /* lastTouchTimestamp= */ 456, "1"));
+    fileMetadata.put(
+        "name2", new CacheFileMetadata(/* length= */ 789, /* lastTouchTimestamp= */ 123, ""));
+    index.setAll(fileMetadata);
+
+    Map<String, CacheFileMetadata> all = index.getAll();
+    assertThat(all).hasSize(2);
+    assertThat(all.get("name1").length).isEqualTo(123);
+    assertThat(all.get("name1").directory).isEqualTo("1");
+    assertThat(all.get("name2").lastTouchTimestamp).isEqualTo(123);
+    assertThat(all.get("name2").directory).isEmpty();
+  }
+
   private static CacheFileMetadataIndex newInitializedIndex() throws DatabaseIOException {
     CacheFileMetadataIndex index =
         new CacheFileMetadataIndex(TestUtil.getInMemoryDatabaseProvider());
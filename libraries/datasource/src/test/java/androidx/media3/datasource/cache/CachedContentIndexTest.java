@@ -23,6 +23,7 @@ import android.net.Uri;
 import android.util.SparseArray;
 import androidx.annotation.Nullable;
 import androidx.media3.common.util.Util;
+import androidx.media3.database.DatabaseProvider;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -30,6 +31,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Collection;
 import java.util.Set;
 import org.junit.After;
@@ -324,6 +326,92 @@ public class CachedContentIndexTest {
     assertThat(ContentMetadata.getContentLength(metadata2)).isEqualTo(2560);
   }
 
+  @Test
+  public void journalStoreAndLoad() throws Exception {
+    assertStoredAndLoadedEqual(newJournalInstance(), newJournalInstance());
+  }
+
+  @Test
+  public void journalStoreAndLoad_afterRemoval() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.getOrAdd("key2");
+    index.store();
+
+    index.maybeRemove("key1");
+    index.store();
+    index.getOrAdd("key1");
+    index.store();
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key1", "key2");
+    assertThat(index2.get("key1")).isEqualTo(index.get("key1"));
+    assertThat(index2.get("key2")).isEqualTo(index.get("key2"));
+  }
+
+  @Test
+  public void journalStore_appendsOnlyChanges() throws Exception {
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    for (int i = 0; i < 100; i++) {
+      index.getOrAdd("key" + i);
+    }
+    index.store();
+    long fullLength = journalFile.length();
+
+    index.getOrAdd("newKey");
+    index.store();
+
+    long appendedLength = journalFile.length() - fullLength;
+    assertThat(appendedLength).isGreaterThan(0);
+    assertThat(appendedLength).isLessThan(fullLength / 50);
+    assertStoredAndLoadedEqual(index, newJournalInstance());
+  }
+
+  @Test
+  public void journalLoad_withTruncatedRecord_discardsRecord() throws Exception {
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.store();
+    index.getOrAdd("key2");
+    index.store();
+    try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+      file.setLength(file.length() - 1);
+    }
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key1");
+
+    // The corrupt record should be discarded when the index is next stored.
+    index2.getOrAdd("key3");
+    index2.store();
+    CachedContentIndex index3 = newJournalInstance();
+    index3.initialize(/* uid= */ 0);
+    assertThat(index3.getKeys()).containsExactly("key1", "key3");
+  }
+
+  @Test
+  public void journalInitialize_migratesFromDatabase() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    CachedContentIndex databaseIndex = new CachedContentIndex(databaseProvider);
+    databaseIndex.initialize(/* uid= */ 0);
+    databaseIndex.getOrAdd("key1");
+    databaseIndex.store();
+
+    CachedContentIndex journalIndex = new CachedContentIndex(cacheDir, databaseProvider);
+    journalIndex.initialize(/* uid= */ 0);
+
+    assertThat(journalIndex.getKeys()).containsExactly("key1");
+    assertThat(journalIndex.get("key1")).isEqualTo(databaseIndex.get("key1"));
+    assertThat(new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL).exists()).isTrue();
+  }
+
   @Test
   public void assignIdForKeyAndGetKeyForId() {
     CachedContentIndex index = newInstance();
@@ -469,6 +557,10 @@ public class CachedContentIndexTest {
     return newLegacyInstance(null);
   }
 
+  private CachedContentIndex newJournalInstance() {
+    return new CachedContentIndex(cacheDir, /* databaseProvider= */ null);
+  }
+
   private CachedContentIndex newLegacyInstance(@Nullable byte[] key) {
     return new CachedContentIndex(
         /* databaseProvider= */ null,
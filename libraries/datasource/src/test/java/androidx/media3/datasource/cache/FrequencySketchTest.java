@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link FrequencySketch}. */
+@RunWith(AndroidJUnit4.class)
+public class FrequencySketchTest {
+
+  @Test
+  public void increment_increasesFrequency() {
+    FrequencySketch sketch = new FrequencySketch();
+
+    for (int i = 0; i < 3; i++) {
+      sketch.increment(/* itemHash= */ 1);
+    }
+
+    assertThat(sketch.getFrequency(/* itemHash= */ 1)).isEqualTo(3);
+    assertThat(sketch.getFrequency(/* itemHash= */ 2)).isEqualTo(0);
+  }
+
+  @Test
+  public void increment_manyTimes_saturatesAtMaxFrequency() {
+    FrequencySketch sketch = new FrequencySketch();
+
+    for (int i = 0; i < 100; i++) {
+      sketch.increment(/* itemHash= */ 1);
+    }
+
+    assertThat(sketch.getFrequency(/* itemHash= */ 1)).isEqualTo(FrequencySketch.MAX_FREQUENCY);
+  }
+
+  @Test
+  public void increment_beyondSampleSize_agesFrequencies() {
+    FrequencySketch sketch = new FrequencySketch();
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(/* itemHash= */ 1);
+    }
+
+    // The default sketch is reset after 10240 increments.
+    for (int i = 0; i < 10240; i++) {
+      sketch.increment(/* itemHash= */ 1000 + i);
+    }
+
+    assertThat(sketch.getFrequency(/* itemHash= */ 1)).isLessThan(10);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.datasource.cache.InFlightCacheWrites.UNFOLLOWED_WINDOW_SIZE;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link InFlightCacheWrites}. */
+@RunWith(AndroidJUnit4.class)
+public class InFlightCacheWritesTest {
+
+  private static final String KEY = "key";
+
+  @Test
+  public void findWrite_withoutFollower_onlyKeepsUnfollowedWindow() {
+    InFlightCacheWrites inFlightCacheWrites = new InFlightCacheWrites();
+    InFlightCacheWrites.Write write =
+        inFlightCacheWrites.startWrite(KEY, /* position= */ 0, C.LENGTH_UNSET);
+
+    write.append(new byte[UNFOLLOWED_WINDOW_SIZE + 4], /* offset= */ 0, UNFOLLOWED_WINDOW_SIZE + 4);
+
+    assertThat(inFlightCacheWrites.findWrite(KEY, /* position= */ 0)).isNull();
+    assertThat(inFlightCacheWrites.findWrite(KEY, /* position= */ 4)).isSameInstanceAs(write);
+  }
+
+  @Test
+  public void read_afterFollowerAttached_keepsFullWindow() throws Exception {
+    InFlightCacheWrites inFlightCacheWrites = new InFlightCacheWrites();
+    InFlightCacheWrites.Write write =
+        inFlightCacheWrites.startWrite(KEY, /* position= */ 0, C.LENGTH_UNSET);
+    byte[] data = TestUtil.buildTestData(UNFOLLOWED_WINDOW_SIZE * 2);
+    write.append(data, /* offset= */ 0, /* dataLength= */ 4);
+
+    assertThat(inFlightCacheWrites.findWrite(KEY, /* position= */ 0)).isSameInstanceAs(write);
+    write.append(data, /* offset= */ 4, data.length - 4);
+    byte[] readData = new byte[data.length];
+    int bytesRead = 0;
+    while (bytesRead < data.length) {
+      bytesRead += write.read(bytesRead, readData, bytesRead, data.length - bytesRead);
+    }
+
+    assertThat(readData).isEqualTo(data);
+  }
+
+  @Test
+  public void read_afterWindowGrownFromWrappedUnfollowedWindow_returnsData() throws Exception {
+    InFlightCacheWrites inFlightCacheWrites = new InFlightCacheWrites();
+    InFlightCacheWrites.Write write =
+        inFlightCacheWrites.startWrite(KEY, /* position= */ 0, C.LENGTH_UNSET);
+    byte[] data = TestUtil.buildTestData(UNFOLLOWED_WINDOW_SIZE * 3);
+    int firstLength = UNFOLLOWED_WINDOW_SIZE + 100;
+    write.append(data, /* offset= */ 0, firstLength);
+
+    assertThat(inFlightCacheWrites.findWrite(KEY, /* position= */ 100)).isSameInstanceAs(write);
+    write.append(data, firstLength, data.length - firstLength);
+    byte[] readData = new byte[data.length - 100];
+    int bytesRead = 0;
+    while (bytesRead < readData.length) {
+      bytesRead += write.read(100 + bytesRead, readData, bytesRead, readData.length - bytesRead);
+    }
+
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 100, data.length));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.datasource.cache.CacheEvictorSimulator.Access;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+/** Unit tests for {@link SegmentedLeastRecentlyUsedCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class SegmentedLeastRecentlyUsedCacheEvictorTest {
+
+  @Test
+  public void contentBiggerThanMaxSizeDoesNotThrowException() throws Exception {
+    int maxBytes = 100;
+    SegmentedLeastRecentlyUsedCacheEvictor evictor =
+        new SegmentedLeastRecentlyUsedCacheEvictor(maxBytes);
+    evictor.onCacheInitialized();
+    evictor.onStartFile(Mockito.mock(Cache.class), "key", 0, maxBytes + 1);
+  }
+
+  @Test
+  public void spansReadTwice_areKeptDuringScan() {
+    List<Access> trace = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      trace.add(new Access("hot", i, 1));
+      trace.add(new Access("hot", i, 1));
+    }
+    for (int i = 0; i < 100; i++) {
+      trace.add(new Access("scan", i, 1));
+    }
+    for (int i = 0; i < 10; i++) {
+      trace.add(new Access("hot", i, 1));
+    }
+
+    CacheEvictorSimulator.Result result =
+        CacheEvictorSimulator.replay(trace, new SegmentedLeastRecentlyUsedCacheEvictor(50));
+
+    // The second read of each hot span, and the read after the scan.
+    assertThat(result.hitCount).isEqualTo(20);
+  }
+
+  @Test
+  public void keyPrefixWeights_addsWeightedSpansToProtectedSegment() {
+    List<Access> trace = new ArrayList<>();
+    int scanPosition = 0;
+    for (int i = 0; i < 10; i++) {
+      trace.add(new Access("manifest", 0, 1));
+      for (int j = 0; j < 60; j++) {
+        trace.add(new Access("segment", scanPosition++, 1));
+      }
+    }
+
+    CacheEvictorSimulator.Result unweightedResult =
+        CacheEvictorSimulator.replay(trace, new SegmentedLeastRecentlyUsedCacheEvictor(50));
+    CacheEvictorSimulator.Result weightedResult =
+        CacheEvictorSimulator.replay(
+            trace,
+            new SegmentedLeastRecentlyUsedCacheEvictor(
+                50,
+                SegmentedLeastRecentlyUsedCacheEvictor.DEFAULT_PROTECTED_FRACTION,
+                ImmutableMap.of("manifest", 2)));
+
+    assertThat(unweightedResult.hitCount).isEqualTo(0);
+    // Every read of the manifest after the first.
+    assertThat(weightedResult.hitCount).isEqualTo(9);
+  }
+}
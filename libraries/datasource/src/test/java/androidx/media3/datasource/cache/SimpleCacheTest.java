@@ -32,8 +32,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -148,6 +156,62 @@ public class SimpleCacheTest {
         .isEqualTo(Uri.parse("https://redirect.google.com"));
   }
 
+  @Test
+  public void newInstance_withExistingCacheDirectory_withDatabase_verifiesDirectory()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 15);
+    // Write a file that isn't committed, and so isn't in the file index.
+    File uncommittedFile = simpleCache.startFile(KEY_1, 30, 10);
+    try (FileOutputStream fos = new FileOutputStream(uncommittedFile)) {
+      fos.write(generateData(KEY_1, 30, 10));
+    }
+    simpleCache.releaseHoleSpan(holeSpan);
+    File deletedFile = simpleCache.getCachedSpans(KEY_1).last().file;
+    simpleCache.release();
+    // Delete a file that's in the file index. This is done after releasing the cache, because
+    // releasing removes spans whose files are missing from the file index.
+    assertThat(deletedFile.delete()).isTrue();
+
+    simpleCache = getSimpleCache();
+    // The span of the deleted file is loaded from the file index, and removed when the directory is
+    // verified.
+    simpleCache.blockUntilDirectoryVerified();
+
+    NavigableSet<CacheSpan> cachedSpans = simpleCache.getCachedSpans(KEY_1);
+    assertThat(cachedSpans).hasSize(2);
+    assertCachedDataReadCorrect(cachedSpans.first());
+    assertThat(cachedSpans.first().position).isEqualTo(0);
+    assertCachedDataReadCorrect(cachedSpans.last());
+    assertThat(cachedSpans.last().position).isEqualTo(30);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(25);
+  }
+
+  @Test
+  public void newInstance_withExistingCacheDirectory_withDatabase_doesNotReadDeletedFile()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    File deletedFile = simpleCache.getCachedSpans(KEY_1).last().file;
+    simpleCache.release();
+    assertThat(deletedFile.delete()).isTrue();
+
+    simpleCache = getSimpleCache();
+    // Whether or not the directory has been verified yet, the span of the deleted file mustn't be
+    // returned for reading.
+    CacheSpan span = simpleCache.startReadWrite(KEY_1, 15, LENGTH_UNSET);
+
+    assertThat(span.isCached).isFalse();
+    simpleCache.releaseHoleSpan(span);
+    simpleCache.blockUntilDirectoryVerified();
+    assertThat(simpleCache.getCachedBytes(KEY_1, 0, LENGTH_UNSET)).isEqualTo(15);
+  }
+
   @Test
   public void newInstance_withExistingCacheInstance_fails() {
     getSimpleCache();
@@ -620,6 +684,172 @@ public class SimpleCacheTest {
     assertThat(fileSpan.length).isEqualTo(15);
   }
 
+  @Test
+  public void startReadWrite_lockedRange_blocksUntilHoleSpanReleased() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    CountDownLatch startedLatch = new CountDownLatch(1);
+    AtomicReference<CacheSpan> blockedSpan = new AtomicReference<>();
+    Thread blockedThread =
+        new Thread(
+            () -> {
+              startedLatch.countDown();
+              try {
+                blockedSpan.set(simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET));
+              } catch (InterruptedException | CacheException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    blockedThread.start();
+    startedLatch.await();
+
+    // Activity on a different key should not unblock the thread.
+    CacheSpan otherHoleSpan = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_2, 0, 15);
+    simpleCache.releaseHoleSpan(otherHoleSpan);
+    blockedThread.join(/* millis= */ 100);
+    assertThat(blockedThread.isAlive()).isTrue();
+
+    simpleCache.releaseHoleSpan(holeSpan);
+    blockedThread.join();
+
+    assertThat(blockedSpan.get().isCached).isFalse();
+    assertThat(blockedSpan.get().position).isEqualTo(0);
+    simpleCache.releaseHoleSpan(blockedSpan.get());
+  }
+
+  @Test
+  public void startReadWrite_lockedRange_blocksUntilCoveringSpanCommitted() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    AtomicReference<CacheSpan> blockedSpan = new AtomicReference<>();
+    Thread blockedThread =
+        new Thread(
+            () -> {
+              try {
+                blockedSpan.set(simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET));
+              } catch (InterruptedException | CacheException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    blockedThread.start();
+
+    addCache(simpleCache, KEY_1, 0, 15);
+    blockedThread.join();
+
+    assertCachedDataReadCorrect(blockedSpan.get());
+    simpleCache.releaseHoleSpan(holeSpan);
+  }
+
+  @Test
+  public void concurrentReadsAndWrites_onManyKeys_cacheRemainsConsistent() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache(
+            cacheDir, new LeastRecentlyUsedCacheEvictor(Long.MAX_VALUE), databaseProvider);
+    int threadCount = 8;
+    int spansPerThread = 20;
+    int spanLength = 10;
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    CountDownLatch startLatch = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      String key = "key" + i;
+      String otherKey = "key" + ((i + 1) % threadCount);
+      futures.add(
+          executorService.submit(
+              () -> {
+                startLatch.await();
+                for (int j = 0; j < spansPerThread; j++) {
+                  int position = j * spanLength;
+                  CacheSpan holeSpan = simpleCache.startReadWrite(key, position, spanLength);
+                  addCache(simpleCache, key, position, spanLength);
+                  simpleCache.releaseHoleSpan(holeSpan);
+                  // Read from the key just written.
+                  CacheSpan readSpan = simpleCache.startReadWrite(key, position, spanLength);
+                  assertCachedDataReadCorrect(readSpan);
+                  assertThat(simpleCache.isCached(key, 0, position + spanLength)).isTrue();
+                  // Read from the key being written by another thread. Spans aren't evicted, so
+                  // the span is still cached when the read starts.
+                  long otherCachedBytes = simpleCache.getCachedBytes(otherKey, 0, LENGTH_UNSET);
+                  assertThat(otherCachedBytes % spanLength).isEqualTo(0);
+                  assertThat(otherCachedBytes).isAtMost((long) spansPerThread * spanLength);
+                  if (simpleCache.isCached(otherKey, position, spanLength)) {
+                    assertCachedDataReadCorrect(
+                        simpleCache.startReadWrite(otherKey, position, spanLength));
+                  }
+                }
+                return null;
+              }));
+    }
+
+    startLatch.countDown();
+    for (Future<?> future : futures) {
+      future.get(/* timeout= */ 10, TimeUnit.SECONDS);
+    }
+    executorService.shutdown();
+
+    assertThat(simpleCache.getKeys()).hasSize(threadCount);
+    assertThat(simpleCache.getCacheSpace())
+        .isEqualTo((long) threadCount * spansPerThread * spanLength);
+    for (int i = 0; i < threadCount; i++) {
+      assertThat(simpleCache.getCachedBytes("key" + i, 0, LENGTH_UNSET))
+          .isEqualTo((long) spansPerThread * spanLength);
+    }
+  }
+
+  @Test
+  public void concurrentTouchesAndRemovals_leaveNoStaleFileIndexEntries() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache(
+            cacheDir, new LeastRecentlyUsedCacheEvictor(Long.MAX_VALUE), databaseProvider);
+    int spanCount = 20;
+    int spanLength = 10;
+    for (int i = 0; i < spanCount; i++) {
+      CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, i * spanLength, spanLength);
+      addCache(simpleCache, KEY_1, i * spanLength, spanLength);
+      simpleCache.releaseHoleSpan(holeSpan);
+    }
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Random random = new Random(/* seed= */ i);
+      futures.add(
+          executorService.submit(
+              () -> {
+                // Touch spans whilst they're being removed.
+                for (int j = 0; j < 200; j++) {
+                  int position = random.nextInt(spanCount) * spanLength;
+                  CacheSpan span =
+                      simpleCache.startReadWriteNonBlocking(KEY_1, position, spanLength);
+                  if (span != null && !span.isCached) {
+                    simpleCache.releaseHoleSpan(span);
+                  }
+                }
+                return null;
+              }));
+    }
+    futures.add(
+        executorService.submit(
+            () -> {
+              for (CacheSpan span : simpleCache.getCachedSpans(KEY_1)) {
+                simpleCache.removeSpan(span);
+              }
+              return null;
+            }));
+    for (Future<?> future : futures) {
+      future.get(/* timeout= */ 10, TimeUnit.SECONDS);
+    }
+    executorService.shutdown();
+
+    List<String> cachedFileNames = new ArrayList<>();
+    for (CacheSpan span : simpleCache.getCachedSpans(KEY_1)) {
+      cachedFileNames.add(span.file.getName());
+    }
+    CacheFileMetadataIndex fileIndex = new CacheFileMetadataIndex(databaseProvider);
+    fileIndex.initialize(simpleCache.getUid());
+    assertThat(fileIndex.getAll().keySet()).containsExactlyElementsIn(cachedFileNames);
+  }
+
   @Test
   public void usingReleasedCache_throwsException() {
     SimpleCache simpleCache = getSimpleCache();
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.primitives.Bytes;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SlabCache}. */
+@RunWith(AndroidJUnit4.class)
+public class SlabCacheTest {
+
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+
+  private File testDir;
+  private File cacheDir;
+
+  @Before
+  public void createTestDir() throws Exception {
+    testDir = Util.createTempFile(ApplicationProvider.getApplicationContext(), "SlabCacheTest");
+    assertThat(testDir.delete()).isTrue();
+    assertThat(testDir.mkdirs()).isTrue();
+    cacheDir = new File(testDir, "cache");
+  }
+
+  @After
+  public void deleteTestDir() {
+    Util.recursiveDelete(testDir);
+  }
+
+  @Test
+  public void newInstance_withEmptyDirectory() {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+
+    long uid = cache.getUid();
+    assertThat(uid).isAtLeast(0L);
+    assertThat(cacheDir.exists()).isTrue();
+
+    cache.release();
+    cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    assertThat(cache.getUid()).isEqualTo(uid);
+    assertThat(cache.getKeys()).isEmpty();
+  }
+
+  @Test
+  public void commitFile_storesSpansInSingleSlab() throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+
+    addCache(cache, KEY_1, 0, 15);
+    addCache(cache, KEY_1, 15, 35);
+    addCache(cache, KEY_2, 0, 20);
+
+    NavigableSet<CacheSpan> spans1 = cache.getCachedSpans(KEY_1);
+    NavigableSet<CacheSpan> spans2 = cache.getCachedSpans(KEY_2);
+    assertThat(spans1).hasSize(2);
+    assertThat(spans2).hasSize(1);
+    File slabFile = spans1.first().file;
+    assertThat(spans1.last().file).isEqualTo(slabFile);
+    assertThat(spans2.first().file).isEqualTo(slabFile);
+    assertThat(spans1.last().fileOffset).isGreaterThan(spans1.first().fileOffset);
+    assertThat(spans2.first().fileOffset).isGreaterThan(spans1.last().fileOffset);
+    for (CacheSpan span : spans1) {
+      assertCachedDataReadCorrect(span);
+    }
+    assertCachedDataReadCorrect(spans2.first());
+    assertThat(cache.getCacheSpace()).isEqualTo(70);
+    // The data should have been written straight into the slab.
+    assertThat(getStagingFileCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void commitFile_withDataWrittenToFile_copiesDataIntoSlab() throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    addCache(cache, KEY_1, 0, 15);
+
+    CacheSpan holeSpan = cache.startReadWrite(KEY_1, 15, 35);
+    File file = cache.startFile(KEY_1, 15, 35);
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(generateData(KEY_1, 15, 35));
+    }
+    cache.commitFile(file, 35);
+    cache.releaseHoleSpan(holeSpan);
+
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(KEY_1);
+    assertThat(spans).hasSize(2);
+    assertThat(spans.last().file).isEqualTo(spans.first().file);
+    assertCachedDataReadCorrect(spans.last());
+    assertThat(file.exists()).isFalse();
+  }
+
+  @Test
+  public void openFileOutputStream_writingMoreThanStartedLength_throws() throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan holeSpan = cache.startReadWrite(KEY_1, 0, 20);
+    File file = cache.startFile(KEY_1, 0, 10);
+
+    try (OutputStream outputStream = cache.openFileOutputStream(file)) {
+      outputStream.write(new byte[10]);
+      assertThrows(IOException.class, () -> outputStream.write(0));
+    }
+    cache.releaseHoleSpan(holeSpan);
+
+    assertThat(cache.getKeys()).isEmpty();
+  }
+
+  @Test
+  public void newInstance_withUncommittedRecordBeforeCommittedRecord_loadsCommittedRecord()
+      throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    // Reserve a record for KEY_1, followed by a record for KEY_2, and only commit the second.
+    cache.startReadWrite(KEY_1, 0, 15);
+    File file1 = cache.startFile(KEY_1, 0, 15);
+    try (OutputStream outputStream = cache.openFileOutputStream(file1)) {
+      outputStream.write(generateData(KEY_1, 0, 5));
+    }
+    addCache(cache, KEY_2, 0, 20);
+    cache.release();
+
+    cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+
+    assertThat(cache.getCachedSpans(KEY_1)).isEmpty();
+    assertThat(cache.getCachedSpans(KEY_2)).hasSize(1);
+    assertCachedDataReadCorrect(cache.getCachedSpans(KEY_2).first());
+  }
+
+  @Test
+  public void startFile_withUnsetLength_writesSpanToSlabOfItsOwn() throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    addCache(cache, KEY_1, 0, 15);
+
+    CacheSpan holeSpan = cache.startReadWrite(KEY_2, 0, C.LENGTH_UNSET);
+    File file = cache.startFile(KEY_2, 0, C.LENGTH_UNSET);
+    try (OutputStream outputStream = cache.openFileOutputStream(file)) {
+      outputStream.write(generateData(KEY_2, 0, 20));
+    }
+    cache.commitFile(file, 20);
+    cache.releaseHoleSpan(holeSpan);
+    addCache(cache, KEY_1, 15, 35);
+
+    NavigableSet<CacheSpan> spans1 = cache.getCachedSpans(KEY_1);
+    CacheSpan span2 = cache.getCachedSpans(KEY_2).first();
+    assertThat(spans1.last().file).isEqualTo(spans1.first().file);
+    assertThat(span2.file).isNotEqualTo(spans1.first().file);
+    assertCachedDataReadCorrect(span2);
+
+    cache.release();
+    cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    assertThat(cache.getCachedBytes(KEY_1, 0, 50)).isEqualTo(50);
+    assertCachedDataReadCorrect(cache.getCachedSpans(KEY_2).first());
+  }
+
+  @Test
+  public void newInstance_withExistingSlabs_loadsSpans() throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    addCache(cache, KEY_1, 0, 15);
+    addCache(cache, KEY_1, 15, 35);
+    addCache(cache, KEY_2, 0, 20);
+    cache.removeSpan(cache.getCachedSpans(KEY_1).first());
+    cache.release();
+
+    cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+
+    NavigableSet<CacheSpan> spans1 = cache.getCachedSpans(KEY_1);
+    assertThat(spans1).hasSize(1);
+    assertThat(spans1.first().position).isEqualTo(15);
+    assertCachedDataReadCorrect(spans1.first());
+    assertCachedDataReadCorrect(cache.getCachedSpans(KEY_2).first());
+    assertThat(cache.getCacheSpace()).isEqualTo(55);
+  }
+
+  @Test
+  public void newInstance_withIncompleteRecord_discardsRecord() throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    addCache(cache, KEY_1, 0, 15);
+    File slabFile = cache.getCachedSpans(KEY_1).first().file;
+    cache.release();
+    long slabLength = slabFile.length();
+    // Simulate an append that was interrupted part way through writing a record header.
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(slabFile, "rw")) {
+      randomAccessFile.seek(slabLength);
+      randomAccessFile.write(new byte[10]);
+    }
+
+    cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+
+    assertThat(cache.getCachedSpans(KEY_1)).hasSize(1);
+    assertCachedDataReadCorrect(cache.getCachedSpans(KEY_1).first());
+    assertThat(slabFile.length()).isEqualTo(slabLength);
+  }
+
+  @Test
+  public void removeSpan_withMostOfSlabRemoved_compactsSlab() throws Exception {
+    // Each record consists of a 40 byte header and 40 bytes of data, so a slab fits three records.
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor(), /* maxSlabLength= */ 250);
+    for (int i = 0; i < 4; i++) {
+      addCache(cache, KEY_1, i * 40, 40);
+    }
+    ArrayList<CacheSpan> spans = new ArrayList<>(cache.getCachedSpans(KEY_1));
+    File firstSlabFile = spans.get(0).file;
+    File secondSlabFile = spans.get(3).file;
+    assertThat(spans.get(2).file).isEqualTo(firstSlabFile);
+    assertThat(secondSlabFile).isNotEqualTo(firstSlabFile);
+
+    cache.removeSpan(spans.get(0));
+
+    // Less than half of the first slab is live data, so its spans should have been relocated.
+    assertThat(firstSlabFile.exists()).isFalse();
+    NavigableSet<CacheSpan> compactedSpans = cache.getCachedSpans(KEY_1);
+    assertThat(compactedSpans).hasSize(3);
+    for (CacheSpan span : compactedSpans) {
+      assertThat(span.file).isEqualTo(secondSlabFile);
+      assertCachedDataReadCorrect(span);
+    }
+    assertThat(cache.getCacheSpace()).isEqualTo(120);
+
+    // The relocated spans should also be loaded when the cache is next initialized.
+    cache.release();
+    cache = new SlabCache(cacheDir, new NoOpCacheEvictor(), /* maxSlabLength= */ 250);
+    assertThat(cache.getCachedSpans(KEY_1)).hasSize(3);
+    assertThat(cache.getCachedBytes(KEY_1, 40, 120)).isEqualTo(120);
+  }
+
+  @Test
+  public void cacheDataSource_readsSpansFromSlab() throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    addCache(cache, KEY_2, 0, 20);
+    addCache(cache, KEY_1, 0, 15);
+    addCache(cache, KEY_1, 15, 35);
+    CacheDataSource dataSource = new CacheDataSource(cache, /* upstreamDataSource= */ null);
+
+    dataSource.open(
+        new DataSpec.Builder()
+            .setUri(Uri.parse("test://data"))
+            .setKey(KEY_1)
+            .setPosition(10)
+            .setLength(40)
+            .build());
+    byte[] data;
+    try {
+      data = DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+
+    byte[] expected = Bytes.concat(generateData(KEY_1, 0, 15), generateData(KEY_1, 15, 35));
+    assertThat(data).isEqualTo(Arrays.copyOfRange(expected, 10, 50));
+  }
+
+  @Test
+  public void read_afterOtherReaderOfSlabInterrupted_readsData() throws Exception {
+    SlabCache cache = new SlabCache(cacheDir, new NoOpCacheEvictor());
+    addCache(cache, KEY_1, 0, 50);
+    CacheSpan span = cache.getCachedSpans(KEY_1).first();
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(Uri.fromFile(span.file))
+            .setPosition(span.fileOffset)
+            .setLength(span.length)
+            .build();
+    DataSource interruptedDataSource = cache.getReadDataSourceFactory().createDataSource();
+    DataSource otherDataSource = cache.getReadDataSourceFactory().createDataSource();
+    interruptedDataSource.open(dataSpec);
+    otherDataSource.open(dataSpec);
+    byte[] buffer = new byte[10];
+    interruptedDataSource.read(buffer, /* offset= */ 0, buffer.length);
+
+    Thread.currentThread().interrupt();
+    IOException exception;
+    try {
+      exception =
+          assertThrows(
+              IOException.class,
+              () -> interruptedDataSource.read(buffer, /* offset= */ 0, buffer.length));
+    } finally {
+      // Clear the interrupted status of the thread.
+      Thread.interrupted();
+    }
+    byte[] data = DataSourceUtil.readToEnd(otherDataSource);
+
+    assertThat(exception).isInstanceOf(InterruptedIOException.class);
+    assertThat(data).isEqualTo(generateData(KEY_1, 0, 50));
+    interruptedDataSource.close();
+    otherDataSource.close();
+    // The slab can still be written to.
+    addCache(cache, KEY_1, 50, 20);
+    CacheSpan newSpan = cache.getCachedSpans(KEY_1).last();
+    assertThat(newSpan.file).isEqualTo(span.file);
+    assertCachedDataReadCorrect(newSpan);
+  }
+
+  private int getStagingFileCount() {
+    int count = 0;
+    for (File file : cacheDir.listFiles()) {
+      if (file.getName().endsWith(".staging")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void addCache(SlabCache cache, String key, int position, int length)
+      throws Exception {
+    CacheSpan holeSpan = cache.startReadWrite(key, position, length);
+    File file = cache.startFile(key, position, length);
+    try (OutputStream outputStream = cache.openFileOutputStream(file)) {
+      outputStream.write(generateData(key, position, length));
+    }
+    cache.commitFile(file, length);
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  private static void assertCachedDataReadCorrect(CacheSpan cacheSpan) throws IOException {
+    assertThat(cacheSpan.isCached).isTrue();
+    byte[] expected = generateData(cacheSpan.key, (int) cacheSpan.position, (int) cacheSpan.length);
+    byte[] actual = new byte[(int) cacheSpan.length];
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(cacheSpan.file, "r")) {
+      randomAccessFile.seek(cacheSpan.fileOffset);
+      randomAccessFile.readFully(actual);
+    }
+    assertThat(actual).isEqualTo(expected);
+  }
+
+  private static byte[] generateData(String key, int position, int length) {
+    byte[] bytes = new byte[length];
+    new Random(key.hashCode() ^ position).nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -41,6 +41,7 @@ import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaPeriod;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.MediaSourceEventListener;
+import androidx.media3.exoplayer.source.PlaylistSwitchInfo;
 import androidx.media3.exoplayer.source.ShuffleOrder;
 import androidx.media3.exoplayer.source.ShuffleOrder.DefaultShuffleOrder;
 import androidx.media3.exoplayer.upstream.Allocator;
@@ -666,6 +667,22 @@ import java.util.Set;
       }
     }
 
+    @Override
+    public void onPlaylistSwitched(
+        int windowIndex,
+        @Nullable MediaSource.MediaPeriodId mediaPeriodId,
+        PlaylistSwitchInfo playlistSwitchInfo) {
+      @Nullable
+      Pair<Integer, MediaSource.@NullableType MediaPeriodId> eventParameters =
+          getEventParameters(windowIndex, mediaPeriodId);
+      if (eventParameters != null) {
+        eventHandler.post(
+            () ->
+                eventListener.onPlaylistSwitched(
+                    eventParameters.first, eventParameters.second, playlistSwitchInfo));
+      }
+    }
+
     // DrmSessionEventListener implementation
 
     @Override
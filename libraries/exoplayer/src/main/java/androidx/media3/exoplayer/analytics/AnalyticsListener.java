@@ -61,6 +61,7 @@ import androidx.media3.exoplayer.metadata.MetadataOutput;
 import androidx.media3.exoplayer.source.LoadEventInfo;
 import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
+import androidx.media3.exoplayer.source.PlaylistSwitchInfo;
 import androidx.media3.exoplayer.trackselection.TrackSelection;
 import androidx.media3.exoplayer.video.VideoDecoderOutputBufferRenderer;
 import com.google.common.base.Objects;
@@ -235,7 +236,8 @@ public interface AnalyticsListener {
     EVENT_VIDEO_CODEC_ERROR,
     EVENT_AUDIO_TRACK_INITIALIZED,
     EVENT_AUDIO_TRACK_RELEASED,
-    EVENT_RENDERER_READY_CHANGED
+    EVENT_RENDERER_READY_CHANGED,
+    EVENT_PLAYLIST_SWITCHED
   })
   @interface EventFlags {}
 
@@ -448,6 +450,9 @@ public interface AnalyticsListener {
   /** A renderer changed its readiness for playback. */
   @UnstableApi int EVENT_RENDERER_READY_CHANGED = 1033;
 
+  /** Playback switched to a different media playlist of an adaptive stream. */
+  @UnstableApi int EVENT_PLAYLIST_SWITCHED = 1034;
+
   /** Time information of an event. */
   @UnstableApi
   final class EventTime {
@@ -919,6 +924,16 @@ public interface AnalyticsListener {
   @UnstableApi
   default void onUpstreamDiscarded(EventTime eventTime, MediaLoadData mediaLoadData) {}
 
+  /**
+   * Called when playback switches to a different media playlist of an adaptive stream, such as a
+   * different variant of an HLS stream, once the new playlist is available.
+   *
+   * @param eventTime The event time.
+   * @param playlistSwitchInfo The {@link PlaylistSwitchInfo} describing the switch.
+   */
+  @UnstableApi
+  default void onPlaylistSwitched(EventTime eventTime, PlaylistSwitchInfo playlistSwitchInfo) {}
+
   /**
    * Called when the bandwidth estimate for the current data source has been updated.
    *
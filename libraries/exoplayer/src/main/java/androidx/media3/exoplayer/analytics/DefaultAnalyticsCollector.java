@@ -57,6 +57,7 @@ import androidx.media3.exoplayer.drm.DrmSession;
 import androidx.media3.exoplayer.source.LoadEventInfo;
 import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
+import androidx.media3.exoplayer.source.PlaylistSwitchInfo;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -472,6 +473,18 @@ public class DefaultAnalyticsCollector implements AnalyticsCollector {
         listener -> listener.onDownstreamFormatChanged(eventTime, mediaLoadData));
   }
 
+  @Override
+  public final void onPlaylistSwitched(
+      int windowIndex,
+      @Nullable MediaPeriodId mediaPeriodId,
+      PlaylistSwitchInfo playlistSwitchInfo) {
+    EventTime eventTime = generateMediaPeriodEventTime(windowIndex, mediaPeriodId);
+    sendEvent(
+        eventTime,
+        AnalyticsListener.EVENT_PLAYLIST_SWITCHED,
+        listener -> listener.onPlaylistSwitched(eventTime, playlistSwitchInfo));
+  }
+
   // Player.Listener implementation.
 
   // TODO: Use Player.Listener.onEvents to know when a set of simultaneous callbacks finished.
@@ -20,6 +20,7 @@ import androidx.media3.common.C;
 import androidx.media3.common.Format;
 import androidx.media3.common.audio.AudioProcessor;
 import androidx.media3.common.audio.BaseAudioProcessor;
+import androidx.media3.common.audio.StatelessAudioProcessor;
 import androidx.media3.common.util.Assertions;
 import java.nio.ByteBuffer;
 
@@ -27,7 +28,8 @@ import java.nio.ByteBuffer;
  * An {@link AudioProcessor} that applies a mapping from input channels onto specified output
  * channels. This can be used to reorder, duplicate or discard channels.
  */
-/* package */ final class ChannelMappingAudioProcessor extends BaseAudioProcessor {
+/* package */ final class ChannelMappingAudioProcessor extends BaseAudioProcessor
+    implements StatelessAudioProcessor {
 
   @Nullable private int[] pendingOutputChannels;
   @Nullable private int[] outputChannels;
@@ -88,6 +90,20 @@ import java.nio.ByteBuffer;
     buffer.flip();
   }
 
+  @Override
+  public void processFrames(float[] input, float[] output, int frameCount) {
+    int[] outputChannels = Assertions.checkNotNull(this.outputChannels);
+    int inputChannelCount = inputAudioFormat.channelCount;
+    int outputChannelCount = outputChannels.length;
+    for (int frame = 0; frame < frameCount; frame++) {
+      int inputPosition = frame * inputChannelCount;
+      int outputPosition = frame * outputChannelCount;
+      for (int i = 0; i < outputChannelCount; i++) {
+        output[outputPosition + i] = input[inputPosition + outputChannels[i]];
+      }
+    }
+  }
+
   @Override
   protected void onFlush() {
     outputChannels = pendingOutputChannels;
@@ -1697,7 +1697,8 @@ public final class DefaultAudioSink implements AudioSink {
     //   https://github.com/google/ExoPlayer/issues/4803);
     // - when playing encoded audio via passthrough/offload, because modifying the audio stream
     //   would require decoding/re-encoding; and
-    // - when outputting float PCM audio, because SonicAudioProcessor outputs 16-bit integer PCM.
+    // - when outputting float PCM audio, because the float output path doesn't apply the audio
+    //   processor chain, whose SilenceSkippingAudioProcessor only handles 16-bit integer PCM.
     return !tunneling
         && configuration.outputMode == OUTPUT_MODE_PCM
         && !shouldUseFloatOutput(configuration.inputFormat.pcmEncoding);
@@ -19,6 +19,7 @@ import androidx.media3.common.C;
 import androidx.media3.common.Format;
 import androidx.media3.common.audio.AudioProcessor;
 import androidx.media3.common.audio.BaseAudioProcessor;
+import androidx.media3.common.audio.StatelessAudioProcessor;
 import androidx.media3.common.util.Util;
 import java.nio.ByteBuffer;
 
@@ -34,7 +35,8 @@ import java.nio.ByteBuffer;
  *   <li>{@link C#ENCODING_PCM_FLOAT} ({@link #isActive()} will return {@code false})
  * </ul>
  */
-/* package */ final class ToFloatPcmAudioProcessor extends BaseAudioProcessor {
+/* package */ final class ToFloatPcmAudioProcessor extends BaseAudioProcessor
+    implements StatelessAudioProcessor {
 
   private static final int FLOAT_NAN_AS_INT = Float.floatToIntBits(Float.NaN);
   private static final double PCM_32_BIT_INT_TO_PCM_32_BIT_FLOAT_FACTOR = 1.0 / 0x7FFFFFFF;
@@ -117,6 +119,12 @@ import java.nio.ByteBuffer;
     buffer.flip();
   }
 
+  @Override
+  public void processFrames(float[] input, float[] output, int frameCount) {
+    // Input samples are already represented by their float value.
+    System.arraycopy(input, 0, output, 0, frameCount * inputAudioFormat.channelCount);
+  }
+
   /**
    * Converts the provided 32-bit integer to a 32-bit float value and writes it to {@code buffer}.
    *
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.offline;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.UnstableApi;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adapts the number of segments that {@link SegmentDownloader SegmentDownloaders} download in
+ * parallel to the throughput that they achieve, within a budget of parallel requests that's shared
+ * by all of the downloads that use the controller.
+ *
+ * <p>Each download starts with a single request in flight. Its limit is doubled for as long as
+ * doing so increases the throughput of the download by a significant amount, and after that it's
+ * increased by one request at a time (additive increase). The limit is reduced by a factor
+ * (multiplicative decrease) when an additional request only adds latency to the other requests of
+ * the download without increasing its throughput, and when a request fails.
+ *
+ * <p>Downloads that are limited by the shared budget are given a fair share of it. When the budget
+ * is exhausted, a request that finishes makes room for a download that has fewer requests in flight
+ * than its fair share before any other download.
+ *
+ * <p>A controller is typically passed to a {@link DefaultDownloaderFactory}, together with an
+ * {@link Executor} that has at least as many threads as the {@linkplain
+ * Builder#setMaxParallelRequests maximum number of parallel requests}. Since the budget is shared,
+ * the {@link DownloadManager} can then be allowed to run more downloads in parallel without the
+ * total number of requests growing with the number of downloads.
+ */
+@UnstableApi
+public final class AdaptiveParallelismController {
+
+  /** Builder for {@link AdaptiveParallelismController} instances. */
+  public static final class Builder {
+
+    private int maxParallelRequests;
+    private int maxParallelRequestsPerDownload;
+    private Clock clock;
+
+    /** Creates a builder with default parameters. */
+    public Builder() {
+      maxParallelRequests = DEFAULT_MAX_PARALLEL_REQUESTS;
+      maxParallelRequestsPerDownload = DEFAULT_MAX_PARALLEL_REQUESTS_PER_DOWNLOAD;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the maximum number of parallel requests, across all downloads. The default is {@link
+     * #DEFAULT_MAX_PARALLEL_REQUESTS}.
+     *
+     * @param maxParallelRequests The maximum number of parallel requests. Must be positive.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxParallelRequests(int maxParallelRequests) {
+      checkArgument(maxParallelRequests > 0);
+      this.maxParallelRequests = maxParallelRequests;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of parallel requests of a single download. The default is {@link
+     * #DEFAULT_MAX_PARALLEL_REQUESTS_PER_DOWNLOAD}.
+     *
+     * @param maxParallelRequestsPerDownload The maximum number of parallel requests of a single
+     *     download. Must be positive.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxParallelRequestsPerDownload(int maxParallelRequestsPerDownload) {
+      checkArgument(maxParallelRequestsPerDownload > 0);
+      this.maxParallelRequestsPerDownload = maxParallelRequestsPerDownload;
+      return this;
+    }
+
+    /**
+     * Sets the clock used to measure the throughput of downloads. Should only be set for testing
+     * purposes.
+     *
+     * @param clock The clock.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /** Builds the controller. */
+    public AdaptiveParallelismController build() {
+      return new AdaptiveParallelismController(this);
+    }
+  }
+
+  /** The default maximum number of parallel requests, across all downloads. */
+  public static final int DEFAULT_MAX_PARALLEL_REQUESTS = 16;
+
+  /** The default maximum number of parallel requests of a single download. */
+  public static final int DEFAULT_MAX_PARALLEL_REQUESTS_PER_DOWNLOAD = 8;
+
+  /** The minimum relative throughput gain for which an increased limit is kept. */
+  @VisibleForTesting /* package */ static final float MIN_THROUGHPUT_GAIN = 0.1f;
+
+  /** The factor by which the limit is reduced when it no longer increases throughput. */
+  @VisibleForTesting /* package */ static final float CONGESTION_DECREASE_FACTOR = 0.75f;
+
+  /** The factor by which the limit is reduced when a request fails. */
+  @VisibleForTesting /* package */ static final float FAILURE_DECREASE_FACTOR = 0.5f;
+
+  /** The minimum duration over which the throughput of a download is measured. */
+  @VisibleForTesting /* package */ static final long MIN_MEASUREMENT_DURATION_MS = 100;
+
+  private final int maxParallelRequests;
+  private final int maxParallelRequestsPerDownload;
+  private final Clock clock;
+  private final ArrayList<Session> sessions;
+
+  private int requestCount;
+
+  private AdaptiveParallelismController(Builder builder) {
+    maxParallelRequests = builder.maxParallelRequests;
+    maxParallelRequestsPerDownload = builder.maxParallelRequestsPerDownload;
+    clock = builder.clock;
+    sessions = new ArrayList<>();
+  }
+
+  /** Returns the number of requests in flight, across all downloads. */
+  public synchronized int getParallelRequestCount() {
+    return requestCount;
+  }
+
+  /**
+   * Returns the number of requests that the downloads are currently allowed to have in flight in
+   * total, which is the sum of their limits capped by the maximum number of parallel requests.
+   */
+  public synchronized int getParallelRequestLimit() {
+    int parallelRequestLimit = 0;
+    for (int i = 0; i < sessions.size(); i++) {
+      parallelRequestLimit += sessions.get(i).maxRequestCount;
+    }
+    return min(parallelRequestLimit, maxParallelRequests);
+  }
+
+  /** Returns the number of downloads that are using the controller. */
+  public synchronized int getDownloadCount() {
+    return sessions.size();
+  }
+
+  /**
+   * Opens a {@link Session} for a download. The session must be {@linkplain Session#close() closed}
+   * when the download stops.
+   */
+  /* package */ synchronized Session openSession() {
+    Session session = new Session(clock.elapsedRealtime());
+    sessions.add(session);
+    return session;
+  }
+
+  private boolean canStartRequest(Session session) {
+    if (session.requestCount >= session.maxRequestCount || requestCount >= maxParallelRequests) {
+      return false;
+    }
+    int fairShare = max(1, maxParallelRequests / sessions.size());
+    if (session.requestCount < fairShare) {
+      return true;
+    }
+    // Leave room for any other download that's waiting to make a request, and that has fewer
+    // requests in flight than its fair share.
+    for (int i = 0; i < sessions.size(); i++) {
+      Session otherSession = sessions.get(i);
+      if (otherSession != session
+          && otherSession.isWaiting
+          && otherSession.requestCount < fairShare
+          && otherSession.requestCount < otherSession.maxRequestCount) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** The parallelism state of a single download. */
+  /* package */ final class Session {
+
+    private final AtomicLong bytesTransferred;
+
+    private int requestCount;
+    private int maxRequestCount;
+    private boolean isWaiting;
+    private boolean isSlowStart;
+    private long baselineThroughput;
+
+    private int measurementId;
+    private long measurementStartTimeMs;
+    private long measurementStartBytes;
+
+    private Session(long nowMs) {
+      bytesTransferred = new AtomicLong();
+      maxRequestCount = 1;
+      isSlowStart = true;
+      baselineThroughput = C.LENGTH_UNSET;
+      startMeasurement(nowMs);
+    }
+
+    /**
+     * Blocks until the download is allowed to make another request.
+     *
+     * @return The {@link Request}, which must be completed, failed or released when it finishes.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public Request acquire() throws InterruptedException {
+      synchronized (AdaptiveParallelismController.this) {
+        isWaiting = true;
+        try {
+          while (!canStartRequest(this)) {
+            AdaptiveParallelismController.this.wait();
+          }
+        } finally {
+          isWaiting = false;
+          // Other downloads may have been waiting for this one.
+          AdaptiveParallelismController.this.notifyAll();
+        }
+        requestCount++;
+        AdaptiveParallelismController.this.requestCount++;
+        return new Request(this, measurementId);
+      }
+    }
+
+    /** Closes the session. */
+    public void close() {
+      synchronized (AdaptiveParallelismController.this) {
+        sessions.remove(this);
+        AdaptiveParallelismController.this.notifyAll();
+      }
+    }
+
+    /** Returns the maximum number of requests that the download is currently allowed to make. */
+    @VisibleForTesting
+    /* package */ int getMaxRequestCount() {
+      synchronized (AdaptiveParallelismController.this) {
+        return maxRequestCount;
+      }
+    }
+
+    private void releaseRequest() {
+      requestCount--;
+      AdaptiveParallelismController.this.requestCount--;
+      AdaptiveParallelismController.this.notifyAll();
+    }
+
+    private void onRequestCompleted(int requestMeasurementId) {
+      long nowMs = clock.elapsedRealtime();
+      long elapsedMs = nowMs - measurementStartTimeMs;
+      // Wait for a request that was made with the current limit to complete before measuring
+      // throughput, so that the measurement reflects the limit.
+      if (requestMeasurementId != measurementId || elapsedMs < MIN_MEASUREMENT_DURATION_MS) {
+        return;
+      }
+      long throughput =
+          (bytesTransferred.get() - measurementStartBytes) * C.MILLIS_PER_SECOND / elapsedMs;
+      if (baselineThroughput == C.LENGTH_UNSET
+          || throughput >= baselineThroughput * (1 + MIN_THROUGHPUT_GAIN)) {
+        // The throughput increased with the limit, so probe whether it increases further.
+        baselineThroughput = throughput;
+        maxRequestCount =
+            min(isSlowStart ? maxRequestCount * 2 : maxRequestCount + 1, getMaxRequestCountCap());
+      } else if (maxRequestCount < getMaxRequestCountCap()
+          || throughput < baselineThroughput * (1 - MIN_THROUGHPUT_GAIN)) {
+        // The last increase only added latency, or the throughput decreased.
+        decreaseMaxRequestCount(CONGESTION_DECREASE_FACTOR);
+      }
+      startMeasurement(nowMs);
+    }
+
+    private void onRequestFailed() {
+      decreaseMaxRequestCount(FAILURE_DECREASE_FACTOR);
+      startMeasurement(clock.elapsedRealtime());
+    }
+
+    private int getMaxRequestCountCap() {
+      return min(maxParallelRequestsPerDownload, maxParallelRequests);
+    }
+
+    private void decreaseMaxRequestCount(float factor) {
+      maxRequestCount = max(1, (int) (maxRequestCount * factor));
+      isSlowStart = false;
+      baselineThroughput = C.LENGTH_UNSET;
+    }
+
+    private void startMeasurement(long nowMs) {
+      measurementId++;
+      measurementStartTimeMs = nowMs;
+      measurementStartBytes = bytesTransferred.get();
+    }
+  }
+
+  /** A request made by a download. */
+  /* package */ final class Request {
+
+    private final Session session;
+    private final int measurementId;
+
+    private boolean isReleased;
+
+    private Request(Session session, int measurementId) {
+      this.session = session;
+      this.measurementId = measurementId;
+    }
+
+    /** Called when bytes have been transferred by the request. May be called from any thread. */
+    public void onBytesTransferred(long bytes) {
+      session.bytesTransferred.addAndGet(bytes);
+    }
+
+    /** Releases the request after it completed successfully. */
+    public void complete() {
+      synchronized (AdaptiveParallelismController.this) {
+        if (!isReleased) {
+          isReleased = true;
+          session.releaseRequest();
+          session.onRequestCompleted(measurementId);
+        }
+      }
+    }
+
+    /** Releases the request after it failed. */
+    public void fail() {
+      synchronized (AdaptiveParallelismController.this) {
+        if (!isReleased) {
+          isReleased = true;
+          session.releaseRequest();
+          session.onRequestFailed();
+        }
+      }
+    }
+
+    /**
+     * Releases the request without affecting the limit of the download, if it hasn't already been
+     * completed, failed or released.
+     */
+    public void release() {
+      synchronized (AdaptiveParallelismController.this) {
+        if (!isReleased) {
+          isReleased = true;
+          session.releaseRequest();
+        }
+      }
+    }
+  }
+}
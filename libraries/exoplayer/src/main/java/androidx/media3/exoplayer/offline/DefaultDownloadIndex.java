@@ -38,15 +38,21 @@ import androidx.media3.database.VersionTable;
 import androidx.media3.exoplayer.offline.Download.FailureReason;
 import androidx.media3.exoplayer.offline.Download.State;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
-/** A {@link DownloadIndex} that uses SQLite to persist {@link Download Downloads}. */
+/**
+ * A {@link DownloadIndex} that uses SQLite to persist {@link Download Downloads}, and the {@link
+ * SegmentProgress} of downloads.
+ */
 @UnstableApi
-public final class DefaultDownloadIndex implements WritableDownloadIndex {
+public final class DefaultDownloadIndex implements WritableDownloadIndex, SegmentProgressIndex {
 
   private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "Downloads";
+  private static final String SEGMENT_PROGRESS_TABLE_PREFIX =
+      DatabaseProvider.TABLE_PREFIX + "DownloadSegmentProgress";
 
-  @VisibleForTesting /* package */ static final int TABLE_VERSION = 3;
+  @VisibleForTesting /* package */ static final int TABLE_VERSION = 4;
 
   private static final String COLUMN_ID = "id";
   private static final String COLUMN_MIME_TYPE = "mime_type";
@@ -138,10 +144,42 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
           + COLUMN_KEY_SET_ID
           + " BLOB NOT NULL)";
 
+  private static final String COLUMN_SEGMENT_LIST_HASH = "segment_list_hash";
+  private static final String COLUMN_SEGMENT_COUNT = "segment_count";
+  private static final String COLUMN_COMPLETED_SEGMENTS = "completed_segments";
+  private static final String COLUMN_COMPLETED_BYTES = "completed_bytes";
+
+  private static final int SEGMENT_PROGRESS_COLUMN_INDEX_SEGMENT_LIST_HASH = 0;
+  private static final int SEGMENT_PROGRESS_COLUMN_INDEX_SEGMENT_COUNT = 1;
+  private static final int SEGMENT_PROGRESS_COLUMN_INDEX_COMPLETED_SEGMENTS = 2;
+  private static final int SEGMENT_PROGRESS_COLUMN_INDEX_COMPLETED_BYTES = 3;
+
+  private static final String[] SEGMENT_PROGRESS_COLUMNS =
+      new String[] {
+        COLUMN_SEGMENT_LIST_HASH,
+        COLUMN_SEGMENT_COUNT,
+        COLUMN_COMPLETED_SEGMENTS,
+        COLUMN_COMPLETED_BYTES
+      };
+
+  private static final String SEGMENT_PROGRESS_TABLE_SCHEMA =
+      "("
+          + COLUMN_ID
+          + " TEXT PRIMARY KEY NOT NULL,"
+          + COLUMN_SEGMENT_LIST_HASH
+          + " INTEGER NOT NULL,"
+          + COLUMN_SEGMENT_COUNT
+          + " INTEGER NOT NULL,"
+          + COLUMN_COMPLETED_SEGMENTS
+          + " BLOB NOT NULL,"
+          + COLUMN_COMPLETED_BYTES
+          + " INTEGER NOT NULL)";
+
   private static final String TRUE = "1";
 
   private final String name;
   private final String tableName;
+  private final String segmentProgressTableName;
   private final DatabaseProvider databaseProvider;
   private final Object initializationLock;
 
@@ -177,6 +215,7 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
     this.name = name;
     this.databaseProvider = databaseProvider;
     tableName = TABLE_PREFIX + name;
+    segmentProgressTableName = SEGMENT_PROGRESS_TABLE_PREFIX + name;
     initializationLock = new Object();
   }
 
@@ -213,12 +252,39 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
     }
   }
 
+  @Override
+  public void putDownloads(List<Download> downloads) throws DatabaseIOException {
+    ensureInitialized();
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        for (int i = 0; i < downloads.size(); i++) {
+          putDownloadInternal(downloads.get(i), writableDatabase);
+        }
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
   @Override
   public void removeDownload(String id) throws DatabaseIOException {
     ensureInitialized();
     try {
-      databaseProvider.getWritableDatabase().delete(tableName, WHERE_ID_EQUALS, new String[] {id});
-    } catch (SQLiteException e) {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        writableDatabase.delete(tableName, WHERE_ID_EQUALS, new String[] {id});
+        writableDatabase.delete(segmentProgressTableName, WHERE_ID_EQUALS, new String[] {id});
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
       throw new DatabaseIOException(e);
     }
   }
@@ -282,6 +348,65 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
     }
   }
 
+  @Override
+  @Nullable
+  public SegmentProgress getSegmentProgress(String id) throws DatabaseIOException {
+    ensureInitialized();
+    try (Cursor cursor =
+        databaseProvider
+            .getReadableDatabase()
+            .query(
+                segmentProgressTableName,
+                SEGMENT_PROGRESS_COLUMNS,
+                WHERE_ID_EQUALS,
+                new String[] {id},
+                /* groupBy= */ null,
+                /* having= */ null,
+                /* orderBy= */ null)) {
+      if (!cursor.moveToNext()) {
+        return null;
+      }
+      return new SegmentProgress(
+          cursor.getLong(SEGMENT_PROGRESS_COLUMN_INDEX_SEGMENT_LIST_HASH),
+          cursor.getInt(SEGMENT_PROGRESS_COLUMN_INDEX_SEGMENT_COUNT),
+          BitSet.valueOf(cursor.getBlob(SEGMENT_PROGRESS_COLUMN_INDEX_COMPLETED_SEGMENTS)),
+          cursor.getLong(SEGMENT_PROGRESS_COLUMN_INDEX_COMPLETED_BYTES));
+    } catch (SQLiteException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  @Override
+  public void putSegmentProgress(String id, SegmentProgress segmentProgress)
+      throws DatabaseIOException {
+    ensureInitialized();
+    try {
+      ContentValues values = new ContentValues();
+      values.put(COLUMN_ID, id);
+      values.put(COLUMN_SEGMENT_LIST_HASH, segmentProgress.segmentListHash);
+      values.put(COLUMN_SEGMENT_COUNT, segmentProgress.segmentCount);
+      values.put(COLUMN_COMPLETED_SEGMENTS, segmentProgress.getCompletedSegments().toByteArray());
+      values.put(COLUMN_COMPLETED_BYTES, segmentProgress.completedBytes);
+      databaseProvider
+          .getWritableDatabase()
+          .replaceOrThrow(segmentProgressTableName, /* nullColumnHack= */ null, values);
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  @Override
+  public void removeSegmentProgress(String id) throws DatabaseIOException {
+    ensureInitialized();
+    try {
+      databaseProvider
+          .getWritableDatabase()
+          .delete(segmentProgressTableName, WHERE_ID_EQUALS, new String[] {id});
+    } catch (SQLiteException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
   private void ensureInitialized() throws DatabaseIOException {
     synchronized (initializationLock) {
       if (initialized) {
@@ -296,13 +421,20 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
           try {
             VersionTable.setVersion(
                 writableDatabase, VersionTable.FEATURE_OFFLINE, name, TABLE_VERSION);
-            List<Download> upgradedDownloads =
-                version == 2 ? loadDownloadsFromVersion2(writableDatabase) : new ArrayList<>();
-            writableDatabase.execSQL("DROP TABLE IF EXISTS " + tableName);
-            writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
-            for (Download download : upgradedDownloads) {
-              putDownloadInternal(download, writableDatabase);
+            // Version 4 only added the segment progress table, so the downloads table of version 3
+            // can be kept as it is.
+            if (version != 3) {
+              List<Download> upgradedDownloads =
+                  version == 2 ? loadDownloadsFromVersion2(writableDatabase) : new ArrayList<>();
+              writableDatabase.execSQL("DROP TABLE IF EXISTS " + tableName);
+              writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+              for (Download download : upgradedDownloads) {
+                putDownloadInternal(download, writableDatabase);
+              }
             }
+            writableDatabase.execSQL("DROP TABLE IF EXISTS " + segmentProgressTableName);
+            writableDatabase.execSQL(
+                "CREATE TABLE " + segmentProgressTableName + " " + SEGMENT_PROGRESS_TABLE_SCHEMA);
             writableDatabase.setTransactionSuccessful();
           } finally {
             writableDatabase.endTransaction();
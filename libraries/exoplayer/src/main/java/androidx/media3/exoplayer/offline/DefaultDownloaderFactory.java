@@ -39,6 +39,7 @@ public class DefaultDownloaderFactory implements DownloaderFactory {
 
   private final CacheDataSource.Factory cacheDataSourceFactory;
   private final Executor executor;
+  @Nullable private final AdaptiveParallelismController parallelismController;
 
   /**
    * Creates an instance.
@@ -64,8 +65,29 @@ public class DefaultDownloaderFactory implements DownloaderFactory {
    */
   public DefaultDownloaderFactory(
       CacheDataSource.Factory cacheDataSourceFactory, Executor executor) {
+    this(cacheDataSourceFactory, executor, /* parallelismController= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which
+   *     downloads will be written.
+   * @param executor An {@link Executor} used to download data. Passing {@code Runnable::run} will
+   *     cause each download task to download data on its own thread. Passing an {@link Executor}
+   *     that uses multiple threads will speed up download tasks that can be split into smaller
+   *     parts for parallel execution.
+   * @param parallelismController An {@link AdaptiveParallelismController} that limits the number
+   *     of segments that DASH, HLS and SmoothStreaming downloads download in parallel, or {@code
+   *     null} if the number is only limited by the {@code executor}.
+   */
+  public DefaultDownloaderFactory(
+      CacheDataSource.Factory cacheDataSourceFactory,
+      Executor executor,
+      @Nullable AdaptiveParallelismController parallelismController) {
     this.cacheDataSourceFactory = Assertions.checkNotNull(cacheDataSourceFactory);
     this.executor = Assertions.checkNotNull(executor);
+    this.parallelismController = parallelismController;
   }
 
   @Override
@@ -101,12 +123,17 @@ public class DefaultDownloaderFactory implements DownloaderFactory {
             .setStreamKeys(request.streamKeys)
             .setCustomCacheKey(request.customCacheKey)
             .build();
+    Downloader downloader;
     try {
-      return constructor.newInstance(mediaItem, cacheDataSourceFactory, executor);
+      downloader = constructor.newInstance(mediaItem, cacheDataSourceFactory, executor);
     } catch (Exception e) {
       throw new IllegalStateException(
           "Failed to instantiate downloader for content type " + contentType, e);
     }
+    if (parallelismController != null && downloader instanceof SegmentDownloader) {
+      ((SegmentDownloader<?>) downloader).setParallelismController(parallelismController);
+    }
+    return downloader;
   }
 
   private static SparseArray<Constructor<? extends Downloader>> createDownloaderConstructors() {
@@ -53,6 +53,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
@@ -167,13 +168,14 @@ public final class DownloadManager {
   private static final int MSG_SET_STOP_REASON = 4;
   private static final int MSG_SET_MAX_PARALLEL_DOWNLOADS = 5;
   private static final int MSG_SET_MIN_RETRY_COUNT = 6;
-  private static final int MSG_ADD_DOWNLOAD = 7;
-  private static final int MSG_REMOVE_DOWNLOAD = 8;
-  private static final int MSG_REMOVE_ALL_DOWNLOADS = 9;
-  private static final int MSG_TASK_STOPPED = 10;
-  private static final int MSG_CONTENT_LENGTH_CHANGED = 11;
-  private static final int MSG_UPDATE_PROGRESS = 12;
-  private static final int MSG_RELEASE = 13;
+  private static final int MSG_SET_SEGMENT_PROGRESS_ENABLED = 7;
+  private static final int MSG_ADD_DOWNLOAD = 8;
+  private static final int MSG_REMOVE_DOWNLOAD = 9;
+  private static final int MSG_REMOVE_ALL_DOWNLOADS = 10;
+  private static final int MSG_TASK_STOPPED = 11;
+  private static final int MSG_CONTENT_LENGTH_CHANGED = 12;
+  private static final int MSG_UPDATE_PROGRESS = 13;
+  private static final int MSG_RELEASE = 14;
 
   private static final String TAG = "DownloadManager";
 
@@ -183,6 +185,7 @@ public final class DownloadManager {
   private final InternalHandler internalHandler;
   private final RequirementsWatcher.Listener requirementsListener;
   private final CopyOnWriteArraySet<Listener> listeners;
+  private final DownloadTable downloads;
 
   private int pendingMessages;
   private int activeTaskCount;
@@ -190,9 +193,10 @@ public final class DownloadManager {
   private boolean downloadsPaused;
   private int maxParallelDownloads;
   private int minRetryCount;
+  private boolean segmentProgressEnabled;
   private int notMetRequirements;
   private boolean waitingForRequirements;
-  private List<Download> downloads;
+  @Nullable private List<Download> currentDownloads;
   private RequirementsWatcher requirementsWatcher;
 
   /**
@@ -240,7 +244,7 @@ public final class DownloadManager {
     maxParallelDownloads = DEFAULT_MAX_PARALLEL_DOWNLOADS;
     minRetryCount = DEFAULT_MIN_RETRY_COUNT;
     downloadsPaused = true;
-    downloads = Collections.emptyList();
+    downloads = new DownloadTable();
     listeners = new CopyOnWriteArraySet<>();
 
     @SuppressWarnings("nullness:methodref.receiver.bound")
@@ -256,6 +260,7 @@ public final class DownloadManager {
             mainHandler,
             maxParallelDownloads,
             minRetryCount,
+            segmentProgressEnabled,
             downloadsPaused);
 
     @SuppressWarnings("nullness:methodref.receiver.bound")
@@ -403,6 +408,41 @@ public final class DownloadManager {
         .sendToTarget();
   }
 
+  /**
+   * Returns whether segmented downloads store which segments they've completed, and skip them
+   * without checking the cache when they're resumed.
+   */
+  public boolean isSegmentProgressEnabled() {
+    return segmentProgressEnabled;
+  }
+
+  /**
+   * Sets whether segmented downloads store which segments they've completed, and skip them without
+   * checking the cache when they're resumed. Disabled by default.
+   *
+   * <p>This only has an effect if the download index is a {@link SegmentProgressIndex}, such as a
+   * {@link DefaultDownloadIndex}, and the downloads are performed by a {@link SegmentDownloader}.
+   *
+   * <p>Since segments that are stored as completed aren't checked again, this should only be
+   * enabled if downloaded data is only ever removed from the cache by removing the download. In
+   * particular, the cache should use a {@link NoOpCacheEvictor}, and resources of the downloads
+   * shouldn't be removed or invalidated by other means. Otherwise a resumed download may complete
+   * without the data of some of its segments.
+   *
+   * @param segmentProgressEnabled Whether segment progress is enabled.
+   */
+  public void setSegmentProgressEnabled(boolean segmentProgressEnabled) {
+    if (this.segmentProgressEnabled == segmentProgressEnabled) {
+      return;
+    }
+    this.segmentProgressEnabled = segmentProgressEnabled;
+    pendingMessages++;
+    internalHandler
+        .obtainMessage(
+            MSG_SET_SEGMENT_PROGRESS_ENABLED, segmentProgressEnabled ? 1 : 0, /* unused */ 0)
+        .sendToTarget();
+  }
+
   /** Returns the used {@link DownloadIndex}. */
   public DownloadIndex getDownloadIndex() {
     return downloadIndex;
@@ -414,7 +454,10 @@ public final class DownloadManager {
    * #getDownloadIndex()} instead.
    */
   public List<Download> getCurrentDownloads() {
-    return downloads;
+    if (currentDownloads == null) {
+      currentDownloads = downloads.copyDownloads();
+    }
+    return currentDownloads;
   }
 
   /** Returns whether downloads are currently paused. */
@@ -520,7 +563,8 @@ public final class DownloadManager {
       applicationHandler.removeCallbacksAndMessages(/* token= */ null);
       requirementsWatcher.stop();
       // Reset state.
-      downloads = Collections.emptyList();
+      downloads.clear();
+      currentDownloads = null;
       pendingMessages = 0;
       activeTaskCount = 0;
       initialized = false;
@@ -568,15 +612,8 @@ public final class DownloadManager {
   }
 
   private boolean updateWaitingForRequirements() {
-    boolean waitingForRequirements = false;
-    if (!downloadsPaused && notMetRequirements != 0) {
-      for (int i = 0; i < downloads.size(); i++) {
-        if (downloads.get(i).state == STATE_QUEUED) {
-          waitingForRequirements = true;
-          break;
-        }
-      }
-    }
+    boolean waitingForRequirements =
+        !downloadsPaused && notMetRequirements != 0 && downloads.getCount(STATE_QUEUED) > 0;
     boolean waitingForRequirementsChanged = this.waitingForRequirements != waitingForRequirements;
     this.waitingForRequirements = waitingForRequirements;
     return waitingForRequirementsChanged;
@@ -614,7 +651,11 @@ public final class DownloadManager {
 
   private void onInitialized(List<Download> downloads) {
     initialized = true;
-    this.downloads = Collections.unmodifiableList(downloads);
+    this.downloads.clear();
+    for (int i = 0; i < downloads.size(); i++) {
+      this.downloads.put(downloads.get(i));
+    }
+    currentDownloads = Collections.unmodifiableList(downloads);
     boolean waitingForRequirementsChanged = updateWaitingForRequirements();
     for (Listener listener : listeners) {
       listener.onInitialized(DownloadManager.this);
@@ -625,8 +666,15 @@ public final class DownloadManager {
   }
 
   private void onDownloadUpdate(DownloadUpdate update) {
-    downloads = Collections.unmodifiableList(update.downloads);
     Download updatedDownload = update.download;
+    // Updates only contain the changed download, so apply the change to the downloads of the main
+    // thread in the same way as the internal thread did.
+    if (update.isRemove || updatedDownload.isTerminalState()) {
+      downloads.remove(updatedDownload.request.id);
+    } else {
+      downloads.put(updatedDownload);
+    }
+    currentDownloads = null;
     boolean waitingForRequirementsChanged = updateWaitingForRequirements();
     if (update.isRemove) {
       for (Listener listener : listeners) {
@@ -687,13 +735,16 @@ public final class DownloadManager {
     private final WritableDownloadIndex downloadIndex;
     private final DownloaderFactory downloaderFactory;
     private final Handler mainHandler;
-    private final ArrayList<Download> downloads;
+    private final DownloadTable downloads;
     private final HashMap<String, Task> activeTasks;
+    private final LinkedHashMap<String, Download> pendingIndexWrites;
+    private final ArrayList<DownloadUpdate> pendingDownloadUpdates;
 
     private @Requirements.RequirementFlags int notMetRequirements;
     private boolean downloadsPaused;
     private int maxParallelDownloads;
     private int minRetryCount;
+    private boolean segmentProgressEnabled;
     private int activeDownloadTaskCount;
     private boolean hasActiveRemoveTask;
 
@@ -704,6 +755,7 @@ public final class DownloadManager {
         Handler mainHandler,
         int maxParallelDownloads,
         int minRetryCount,
+        boolean segmentProgressEnabled,
         boolean downloadsPaused) {
       super(thread.getLooper());
       this.thread = thread;
@@ -712,9 +764,12 @@ public final class DownloadManager {
       this.mainHandler = mainHandler;
       this.maxParallelDownloads = maxParallelDownloads;
       this.minRetryCount = minRetryCount;
+      this.segmentProgressEnabled = segmentProgressEnabled;
       this.downloadsPaused = downloadsPaused;
-      downloads = new ArrayList<>();
+      downloads = new DownloadTable();
       activeTasks = new HashMap<>();
+      pendingIndexWrites = new LinkedHashMap<>();
+      pendingDownloadUpdates = new ArrayList<>();
     }
 
     @Override
@@ -746,6 +801,10 @@ public final class DownloadManager {
           int minRetryCount = message.arg1;
           setMinRetryCount(minRetryCount);
           break;
+        case MSG_SET_SEGMENT_PROGRESS_ENABLED:
+          boolean segmentProgressEnabled = message.arg1 != 0;
+          setSegmentProgressEnabled(segmentProgressEnabled);
+          break;
         case MSG_ADD_DOWNLOAD:
           DownloadRequest request = (DownloadRequest) message.obj;
           stopReason = message.arg1;
@@ -766,9 +825,11 @@ public final class DownloadManager {
         case MSG_CONTENT_LENGTH_CHANGED:
           task = (Task) message.obj;
           onContentLengthChanged(task, Util.toLong(message.arg1, message.arg2));
+          flushPendingChanges();
           return; // No need to post back to mainHandler.
         case MSG_UPDATE_PROGRESS:
           updateProgress();
+          flushPendingChanges();
           return; // No need to post back to mainHandler.
         case MSG_RELEASE:
           release();
@@ -776,6 +837,7 @@ public final class DownloadManager {
         default:
           throw new IllegalStateException();
       }
+      flushPendingChanges();
       mainHandler
           .obtainMessage(MSG_PROCESSED, processedExternalMessage ? 1 : 0, activeTasks.size())
           .sendToTarget();
@@ -790,7 +852,7 @@ public final class DownloadManager {
             downloadIndex.getDownloads(
                 STATE_QUEUED, STATE_STOPPED, STATE_DOWNLOADING, STATE_REMOVING, STATE_RESTARTING);
         while (cursor.moveToNext()) {
-          downloads.add(cursor.getDownload());
+          downloads.put(cursor.getDownload());
         }
       } catch (IOException e) {
         Log.e(TAG, "Failed to load index.", e);
@@ -800,7 +862,7 @@ public final class DownloadManager {
       }
       // A copy must be used for the message to ensure that subsequent changes to the downloads list
       // are not visible to the main thread when it processes the message.
-      ArrayList<Download> downloadsForMessage = new ArrayList<>(downloads);
+      List<Download> downloadsForMessage = downloads.copyDownloads();
       mainHandler.obtainMessage(MSG_INITIALIZED, downloadsForMessage).sendToTarget();
       syncTasks();
     }
@@ -874,6 +936,10 @@ public final class DownloadManager {
       this.minRetryCount = minRetryCount;
     }
 
+    private void setSegmentProgressEnabled(boolean segmentProgressEnabled) {
+      this.segmentProgressEnabled = segmentProgressEnabled;
+    }
+
     private void addDownload(DownloadRequest request, int stopReason) {
       @Nullable Download download = getDownload(request.id, /* loadFromIndex= */ true);
       long nowMs = System.currentTimeMillis();
@@ -913,24 +979,22 @@ public final class DownloadManager {
         Log.e(TAG, "Failed to load downloads.");
       }
       for (int i = 0; i < downloads.size(); i++) {
-        downloads.set(i, copyDownloadWithState(downloads.get(i), STATE_REMOVING, STOP_REASON_NONE));
+        // The start time is unchanged, so the download stays at the same index.
+        downloads.put(copyDownloadWithState(downloads.get(i), STATE_REMOVING, STOP_REASON_NONE));
       }
       for (int i = 0; i < terminalDownloads.size(); i++) {
-        downloads.add(
+        downloads.put(
             copyDownloadWithState(terminalDownloads.get(i), STATE_REMOVING, STOP_REASON_NONE));
       }
-      Collections.sort(downloads, InternalHandler::compareStartTimes);
       try {
         downloadIndex.setStatesToRemoving();
       } catch (IOException e) {
         Log.e(TAG, "Failed to update index.", e);
       }
-      ArrayList<Download> updateList = new ArrayList<>(downloads);
       for (int i = 0; i < downloads.size(); i++) {
         DownloadUpdate update =
-            new DownloadUpdate(
-                downloads.get(i), /* isRemove= */ false, updateList, /* finalException= */ null);
-        mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+            new DownloadUpdate(downloads.get(i), /* isRemove= */ false, /* finalException= */ null);
+        pendingDownloadUpdates.add(update);
       }
       syncTasks();
     }
@@ -939,6 +1003,7 @@ public final class DownloadManager {
       for (Task task : activeTasks.values()) {
         task.cancel(/* released= */ true);
       }
+      flushPendingChanges();
       try {
         downloadIndex.setDownloadingStatesToQueued();
       } catch (IOException e) {
@@ -956,9 +1021,29 @@ public final class DownloadManager {
 
     private void syncTasks() {
       int accumulatingDownloadTaskCount = 0;
+      // Only downloads that have an active task, and queued and removing downloads for which a task
+      // may be started, need to be synced. Stop iterating once none of them are left, so that the
+      // cost doesn't grow with the number of downloads that are waiting.
+      int remainingActiveTaskCount = activeTasks.size();
+      int remainingQueuedCount = downloads.getCount(STATE_QUEUED);
+      int remainingRemovingCount =
+          downloads.getCount(STATE_REMOVING) + downloads.getCount(STATE_RESTARTING);
       for (int i = 0; i < downloads.size(); i++) {
+        if (remainingActiveTaskCount == 0
+            && (remainingQueuedCount == 0 || !canStartDownloadTask())
+            && (remainingRemovingCount == 0 || hasActiveRemoveTask)) {
+          break;
+        }
         Download download = downloads.get(i);
         @Nullable Task activeTask = activeTasks.get(download.request.id);
+        if (activeTask != null) {
+          remainingActiveTaskCount--;
+        }
+        if (download.state == STATE_QUEUED) {
+          remainingQueuedCount--;
+        } else if (download.state == STATE_REMOVING || download.state == STATE_RESTARTING) {
+          remainingRemovingCount--;
+        }
         switch (download.state) {
           case STATE_STOPPED:
             syncStoppedDownload(activeTask);
@@ -1004,13 +1089,13 @@ public final class DownloadManager {
         return activeTask;
       }
 
-      if (!canDownloadsRun() || activeDownloadTaskCount >= maxParallelDownloads) {
+      if (!canStartDownloadTask()) {
         return null;
       }
 
       // We can start a download task.
       download = putDownloadWithState(download, STATE_DOWNLOADING, STOP_REASON_NONE);
-      Downloader downloader = downloaderFactory.createDownloader(download.request);
+      Downloader downloader = createDownloader(download.request, /* isRemove= */ false);
       activeTask =
           new Task(
               download.request,
@@ -1052,7 +1137,7 @@ public final class DownloadManager {
       }
 
       // We can start a remove task.
-      Downloader downloader = downloaderFactory.createDownloader(download.request);
+      Downloader downloader = createDownloader(download.request, /* isRemove= */ true);
       activeTask =
           new Task(
               download.request,
@@ -1066,6 +1151,19 @@ public final class DownloadManager {
       activeTask.start();
     }
 
+    private Downloader createDownloader(DownloadRequest request, boolean isRemove) {
+      Downloader downloader = downloaderFactory.createDownloader(request);
+      if ((segmentProgressEnabled || isRemove)
+          && downloader instanceof SegmentDownloader
+          && downloadIndex instanceof SegmentProgressIndex) {
+        // Let the downloader resume from the segments it stored as completed. Remove tasks always
+        // get the index, so that progress stored while segment progress was enabled is removed.
+        ((SegmentDownloader<?>) downloader)
+            .setSegmentProgressIndex((SegmentProgressIndex) downloadIndex, request.id);
+      }
+      return downloader;
+    }
+
     // Task event processing.
 
     private void onContentLengthChanged(Task task, long contentLength) {
@@ -1143,17 +1241,11 @@ public final class DownloadManager {
               finalException == null ? FAILURE_REASON_NONE : FAILURE_REASON_UNKNOWN,
               download.progress);
       // The download is now in a terminal state, so should not be in the downloads list.
-      downloads.remove(getDownloadIndex(download.request.id));
+      downloads.remove(download.request.id);
       // We still need to update the download index and main thread.
-      try {
-        downloadIndex.putDownload(download);
-      } catch (IOException e) {
-        Log.e(TAG, "Failed to update index.", e);
-      }
-      DownloadUpdate update =
-          new DownloadUpdate(
-              download, /* isRemove= */ false, new ArrayList<>(downloads), finalException);
-      mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+      pendingIndexWrites.put(download.request.id, download);
+      DownloadUpdate update = new DownloadUpdate(download, /* isRemove= */ false, finalException);
+      pendingDownloadUpdates.add(update);
     }
 
     private void onRemoveTaskStopped(Download download) {
@@ -1163,34 +1255,27 @@ public final class DownloadManager {
         putDownloadWithState(download, state, download.stopReason);
         syncTasks();
       } else {
-        int removeIndex = getDownloadIndex(download.request.id);
-        downloads.remove(removeIndex);
+        downloads.remove(download.request.id);
+        pendingIndexWrites.remove(download.request.id);
         try {
           downloadIndex.removeDownload(download.request.id);
         } catch (IOException e) {
           Log.e(TAG, "Failed to remove from database");
         }
         DownloadUpdate update =
-            new DownloadUpdate(
-                download,
-                /* isRemove= */ true,
-                new ArrayList<>(downloads),
-                /* finalException= */ null);
-        mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+            new DownloadUpdate(download, /* isRemove= */ true, /* finalException= */ null);
+        pendingDownloadUpdates.add(update);
       }
     }
 
     // Progress updates.
 
     private void updateProgress() {
-      for (int i = 0; i < downloads.size(); i++) {
-        Download download = downloads.get(i);
-        if (download.state == STATE_DOWNLOADING) {
-          try {
-            downloadIndex.putDownload(download);
-          } catch (IOException e) {
-            Log.e(TAG, "Failed to update index.", e);
-          }
+      // Downloads that are downloading always have an active task.
+      for (Task task : activeTasks.values()) {
+        @Nullable Download download = downloads.get(task.request.id);
+        if (download != null && download.state == STATE_DOWNLOADING) {
+          pendingIndexWrites.put(download.request.id, download);
         }
       }
       sendEmptyMessageDelayed(MSG_UPDATE_PROGRESS, UPDATE_PROGRESS_INTERVAL_MS);
@@ -1202,6 +1287,32 @@ public final class DownloadManager {
       return !downloadsPaused && notMetRequirements == 0;
     }
 
+    private boolean canStartDownloadTask() {
+      return canDownloadsRun() && activeDownloadTaskCount < maxParallelDownloads;
+    }
+
+    /**
+     * Writes the downloads that changed while handling a message to the index in a single batch,
+     * and then posts the updates of the changed downloads to the main thread. Several changes to
+     * the same download are coalesced into a single write.
+     */
+    private void flushPendingChanges() {
+      if (!pendingIndexWrites.isEmpty()) {
+        List<Download> downloadsToWrite = new ArrayList<>(pendingIndexWrites.values());
+        pendingIndexWrites.clear();
+        try {
+          downloadIndex.putDownloads(downloadsToWrite);
+        } catch (IOException e) {
+          Log.e(TAG, "Failed to update index.", e);
+        }
+      }
+      for (int i = 0; i < pendingDownloadUpdates.size(); i++) {
+        DownloadUpdate update = pendingDownloadUpdates.get(i);
+        mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+      }
+      pendingDownloadUpdates.clear();
+    }
+
     private Download putDownloadWithState(
         Download download, @Download.State int state, int stopReason) {
       // Downloads in terminal states shouldn't be in the downloads list.
@@ -1212,37 +1323,19 @@ public final class DownloadManager {
     private Download putDownload(Download download) {
       // Downloads in terminal states shouldn't be in the downloads list.
       Assertions.checkState(download.state != STATE_COMPLETED && download.state != STATE_FAILED);
-      int changedIndex = getDownloadIndex(download.request.id);
-      if (changedIndex == C.INDEX_UNSET) {
-        downloads.add(download);
-        Collections.sort(downloads, InternalHandler::compareStartTimes);
-      } else {
-        boolean needsSort = download.startTimeMs != downloads.get(changedIndex).startTimeMs;
-        downloads.set(changedIndex, download);
-        if (needsSort) {
-          Collections.sort(downloads, InternalHandler::compareStartTimes);
-        }
-      }
-      try {
-        downloadIndex.putDownload(download);
-      } catch (IOException e) {
-        Log.e(TAG, "Failed to update index.", e);
-      }
+      downloads.put(download);
+      pendingIndexWrites.put(download.request.id, download);
       DownloadUpdate update =
-          new DownloadUpdate(
-              download,
-              /* isRemove= */ false,
-              new ArrayList<>(downloads),
-              /* finalException= */ null);
-      mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+          new DownloadUpdate(download, /* isRemove= */ false, /* finalException= */ null);
+      pendingDownloadUpdates.add(update);
       return download;
     }
 
     @Nullable
     private Download getDownload(String id, boolean loadFromIndex) {
-      int index = getDownloadIndex(id);
-      if (index != C.INDEX_UNSET) {
-        return downloads.get(index);
+      @Nullable Download download = downloads.get(id);
+      if (download != null) {
+        return download;
       }
       if (loadFromIndex) {
         try {
@@ -1254,16 +1347,6 @@ public final class DownloadManager {
       return null;
     }
 
-    private int getDownloadIndex(String id) {
-      for (int i = 0; i < downloads.size(); i++) {
-        Download download = downloads.get(i);
-        if (download.request.id.equals(id)) {
-          return i;
-        }
-      }
-      return C.INDEX_UNSET;
-    }
-
     private static Download copyDownloadWithState(
         Download download, @Download.State int state, int stopReason) {
       return new Download(
@@ -1276,10 +1359,6 @@ public final class DownloadManager {
           FAILURE_REASON_NONE,
           download.progress);
     }
-
-    private static int compareStartTimes(Download first, Download second) {
-      return Util.compareLong(first.startTimeMs, second.startTimeMs);
-    }
   }
 
   private static class Task extends Thread implements Downloader.ProgressListener {
@@ -1396,17 +1475,11 @@ public final class DownloadManager {
 
     public final Download download;
     public final boolean isRemove;
-    public final List<Download> downloads;
     @Nullable public final Exception finalException;
 
-    public DownloadUpdate(
-        Download download,
-        boolean isRemove,
-        List<Download> downloads,
-        @Nullable Exception finalException) {
+    public DownloadUpdate(Download download, boolean isRemove, @Nullable Exception finalException) {
       this.download = download;
       this.isRemove = isRemove;
-      this.downloads = downloads;
       this.finalException = finalException;
     }
   }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.offline;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An in-memory table of {@link Download Downloads}, ordered by {@link Download#startTimeMs start
+ * time}, indexed by ID, and with the number of downloads in each {@link Download.State state}.
+ *
+ * <p>Downloads with the same start time are ordered by when they were added, or when their start
+ * time last changed. Lookups by ID take {@code O(log n)} time, and adding, replacing and removing a
+ * download takes {@code O(log n)} time plus the time to shift the downloads that follow it.
+ */
+/* package */ final class DownloadTable {
+
+  private final ArrayList<Download> downloads;
+  private final HashMap<String, Download> downloadsById;
+  private final int[] stateCounts;
+
+  public DownloadTable() {
+    downloads = new ArrayList<>();
+    downloadsById = new HashMap<>();
+    stateCounts = new int[Download.STATE_RESTARTING + 1];
+  }
+
+  /** Returns the number of downloads. */
+  public int size() {
+    return downloads.size();
+  }
+
+  /** Returns the download at an index, in start time order. */
+  public Download get(int index) {
+    return downloads.get(index);
+  }
+
+  /** Returns the download with an ID, or {@code null} if there's no such download. */
+  @Nullable
+  public Download get(String id) {
+    return downloadsById.get(id);
+  }
+
+  /** Returns the number of downloads in a {@link Download.State}. */
+  public int getCount(@Download.State int state) {
+    return stateCounts[state];
+  }
+
+  /**
+   * Adds a download, or replaces the download with the same ID.
+   *
+   * @param download The {@link Download}.
+   * @return The index of the download, in start time order.
+   */
+  public int put(Download download) {
+    @Nullable Download previousDownload = downloadsById.put(download.request.id, download);
+    stateCounts[download.state]++;
+    if (previousDownload != null) {
+      stateCounts[previousDownload.state]--;
+      int index = indexOf(previousDownload);
+      if (previousDownload.startTimeMs == download.startTimeMs) {
+        downloads.set(index, download);
+        return index;
+      }
+      downloads.remove(index);
+    }
+    int index = getInsertionIndex(download.startTimeMs);
+    downloads.add(index, download);
+    return index;
+  }
+
+  /**
+   * Removes the download with an ID.
+   *
+   * @param id The ID of the download.
+   * @return The removed {@link Download}, or {@code null} if there was no such download.
+   */
+  @Nullable
+  public Download remove(String id) {
+    @Nullable Download download = downloadsById.remove(id);
+    if (download != null) {
+      stateCounts[download.state]--;
+      downloads.remove(indexOf(download));
+    }
+    return download;
+  }
+
+  /** Removes all downloads. */
+  public void clear() {
+    downloads.clear();
+    downloadsById.clear();
+    for (int i = 0; i < stateCounts.length; i++) {
+      stateCounts[i] = 0;
+    }
+  }
+
+  /** Returns an unmodifiable copy of the downloads, in start time order. */
+  public List<Download> copyDownloads() {
+    return Collections.unmodifiableList(new ArrayList<>(downloads));
+  }
+
+  private int indexOf(Download download) {
+    int index = getFirstIndex(download.startTimeMs);
+    while (downloads.get(index) != download) {
+      index++;
+    }
+    return index;
+  }
+
+  /** Returns the index of the first download whose start time is at least {@code startTimeMs}. */
+  private int getFirstIndex(long startTimeMs) {
+    int low = 0;
+    int high = downloads.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (downloads.get(mid).startTimeMs < startTimeMs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /** Returns the index after the last download whose start time is at most {@code startTimeMs}. */
+  private int getInsertionIndex(long startTimeMs) {
+    int low = 0;
+    int high = downloads.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (downloads.get(mid).startTimeMs <= startTimeMs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -16,6 +16,7 @@
 package androidx.media3.exoplayer.offline;
 
 import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
 
 import android.net.Uri;
 import androidx.annotation.Nullable;
@@ -25,6 +26,7 @@ import androidx.media3.common.PriorityTaskManager;
 import androidx.media3.common.PriorityTaskManager.PriorityTooLowException;
 import androidx.media3.common.StreamKey;
 import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.Log;
 import androidx.media3.common.util.RunnableFutureTask;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
@@ -35,13 +37,16 @@ import androidx.media3.datasource.cache.CacheDataSource;
 import androidx.media3.datasource.cache.CacheKeyFactory;
 import androidx.media3.datasource.cache.CacheWriter;
 import androidx.media3.datasource.cache.ContentMetadata;
+import androidx.media3.datasource.cache.NoOpCacheEvictor;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
 import androidx.media3.exoplayer.upstream.ParsingLoadable.Parser;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -77,8 +82,13 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
 
   public static final long DEFAULT_MAX_MERGED_SEGMENT_START_TIME_DIFF_MS = 20 * C.MILLIS_PER_SECOND;
 
+  private static final String TAG = "SegmentDownloader";
+
   private static final int BUFFER_SIZE_BYTES = 128 * 1024;
 
+  /** The number of times that segment progress is stored while all segments are downloaded. */
+  private static final int SEGMENT_PROGRESS_STORE_COUNT = 100;
+
   private final DataSpec manifestDataSpec;
   private final Parser<M> manifestParser;
   private final ArrayList<StreamKey> streamKeys;
@@ -99,6 +109,9 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
    */
   private final ArrayList<RunnableFutureTask<?, ?>> activeRunnables;
 
+  @Nullable private AdaptiveParallelismController parallelismController;
+  @Nullable private SegmentProgressIndex segmentProgressIndex;
+  @Nullable private String downloadId;
   private volatile boolean isCanceled;
 
   /**
@@ -150,11 +163,49 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     maxMergedSegmentStartTimeDiffUs = Util.msToUs(maxMergedSegmentStartTimeDiffMs);
   }
 
+  /**
+   * Sets an {@link AdaptiveParallelismController} that limits the number of segments that are
+   * downloaded in parallel, based on the throughput that's achieved. Must be called before {@link
+   * #download}.
+   *
+   * <p>If no controller is set, the number of segments that are downloaded in parallel is only
+   * limited by the {@link Executor}.
+   *
+   * @param parallelismController The {@link AdaptiveParallelismController}, or {@code null}.
+   */
+  public final void setParallelismController(
+      @Nullable AdaptiveParallelismController parallelismController) {
+    this.parallelismController = parallelismController;
+  }
+
+  /**
+   * Sets a {@link SegmentProgressIndex} in which the downloader stores which segments it has
+   * completely downloaded. When the download is resumed, the segments that are stored as completed
+   * are skipped without scanning the cache for their data. Must be called before {@link #download}.
+   *
+   * <p>Since stored segments aren't checked again, the index should only be used with a cache from
+   * which downloaded data is only ever removed by removing the download. In particular, the cache
+   * shouldn't evict downloaded data, so should use a {@link NoOpCacheEvictor}, and resources of
+   * the download shouldn't be removed from the cache by other means. A {@link DownloadManager}
+   * only sets an index if {@link DownloadManager#setSegmentProgressEnabled} is enabled, except
+   * when removing a download, so that any stored progress is removed as well.
+   *
+   * @param segmentProgressIndex The {@link SegmentProgressIndex}, or {@code null}.
+   * @param downloadId The ID of the download, under which its progress is stored.
+   */
+  public final void setSegmentProgressIndex(
+      @Nullable SegmentProgressIndex segmentProgressIndex, String downloadId) {
+    this.segmentProgressIndex = segmentProgressIndex;
+    this.downloadId = downloadId;
+  }
+
   @Override
   public final void download(@Nullable ProgressListener progressListener)
       throws IOException, InterruptedException {
     ArrayDeque<Segment> pendingSegments = new ArrayDeque<>();
     ArrayDeque<SegmentDownloadRunnable> recycledRunnables = new ArrayDeque<>();
+    @Nullable AdaptiveParallelismController.Session parallelismSession = null;
+    @Nullable SegmentProgressTracker segmentProgressTracker = null;
     if (priorityTaskManager != null) {
       priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
     }
@@ -171,23 +222,32 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       // content, and merge segments where possible to minimize the number of server round trips.
       Collections.sort(segments);
       mergeSegments(segments, cacheKeyFactory, maxMergedSegmentStartTimeDiffUs);
+      if (segmentProgressIndex != null) {
+        segmentProgressTracker =
+            new SegmentProgressTracker(segmentProgressIndex, checkNotNull(downloadId), segments);
+      }
 
       // Scan the segments, removing any that are fully downloaded.
       int totalSegments = segments.size();
       int segmentsDownloaded = 0;
       long contentLength = 0;
       long bytesDownloaded = 0;
+      long storedCompletedBytes = 0;
+      if (segmentProgressTracker != null) {
+        storedCompletedBytes = segmentProgressTracker.completedBytes;
+        bytesDownloaded += storedCompletedBytes;
+        contentLength += storedCompletedBytes;
+      }
       for (int i = segments.size() - 1; i >= 0; i--) {
+        if (segmentProgressTracker != null && segmentProgressTracker.isSegmentCompleted(i)) {
+          // The segment was stored as fully downloaded, so there's no need to scan the cache.
+          segmentsDownloaded++;
+          segments.remove(i);
+          continue;
+        }
         DataSpec dataSpec = segments.get(i).dataSpec;
         String cacheKey = cacheKeyFactory.buildCacheKey(dataSpec);
-        long segmentLength = dataSpec.length;
-        if (segmentLength == C.LENGTH_UNSET) {
-          long resourceLength =
-              ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
-          if (resourceLength != C.LENGTH_UNSET) {
-            segmentLength = resourceLength - dataSpec.position;
-          }
-        }
+        long segmentLength = getSegmentLength(dataSpec, cacheKey);
         long segmentBytesDownloaded =
             cache.getCachedBytes(cacheKey, dataSpec.position, segmentLength);
         bytesDownloaded += segmentBytesDownloaded;
@@ -195,7 +255,10 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
           if (segmentLength == segmentBytesDownloaded) {
             // The segment is fully downloaded.
             segmentsDownloaded++;
-            segments.remove(i);
+            Segment segment = segments.remove(i);
+            if (segmentProgressTracker != null) {
+              segmentProgressTracker.onSegmentCompleted(segment, segmentLength);
+            }
           }
           if (contentLength != C.LENGTH_UNSET) {
             contentLength += segmentLength;
@@ -217,11 +280,18 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
                   segmentsDownloaded)
               : null;
       pendingSegments.addAll(segments);
+      if (parallelismController != null) {
+        parallelismSession = parallelismController.openSession();
+      }
       while (!isCanceled && !pendingSegments.isEmpty()) {
         // Block until there aren't any higher priority tasks.
         if (priorityTaskManager != null) {
           priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
         }
+        // Block until the parallelism controller allows another request.
+        @Nullable
+        AdaptiveParallelismController.Request parallelismRequest =
+            parallelismSession != null ? parallelismSession.acquire() : null;
 
         // Create and execute a runnable to download the next segment.
         CacheDataSource segmentDataSource;
@@ -237,9 +307,24 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
         Segment segment = pendingSegments.removeFirst();
         SegmentDownloadRunnable downloadRunnable =
             new SegmentDownloadRunnable(
-                segment, segmentDataSource, progressNotifier, temporaryBuffer);
-        addActiveRunnable(downloadRunnable);
-        executor.execute(downloadRunnable);
+                segment, segmentDataSource, progressNotifier, temporaryBuffer, parallelismRequest);
+        try {
+          addActiveRunnable(downloadRunnable);
+        } catch (InterruptedException e) {
+          if (parallelismRequest != null) {
+            parallelismRequest.release();
+          }
+          throw e;
+        }
+        try {
+          executor.execute(downloadRunnable);
+        } catch (RuntimeException e) {
+          // The runnable won't run, so it won't release the request itself.
+          if (parallelismRequest != null) {
+            parallelismRequest.release();
+          }
+          throw e;
+        }
 
         // Clean up runnables that have finished.
         for (int j = activeRunnables.size() - 1; j >= 0; j--) {
@@ -252,6 +337,9 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
               activeRunnable.get();
               removeActiveRunnable(j);
               recycledRunnables.addLast(activeRunnable);
+              if (segmentProgressTracker != null) {
+                onSegmentDownloaded(segmentProgressTracker, activeRunnable.segment);
+              }
             } catch (ExecutionException e) {
               Throwable cause = Assertions.checkNotNull(e.getCause());
               if (cause instanceof PriorityTooLowException) {
@@ -283,8 +371,23 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       // Wait until the runnables have finished. In addition to the failure case, we also need to
       // do this for the case where the main download thread was interrupted as part of cancelation.
       for (int i = activeRunnables.size() - 1; i >= 0; i--) {
-        activeRunnables.get(i).blockUntilFinished();
+        RunnableFutureTask<?, ?> activeRunnable = activeRunnables.get(i);
+        activeRunnable.blockUntilFinished();
         removeActiveRunnable(i);
+        // Segments that were downloaded before the runnables were canceled still count as
+        // completed, so that they're skipped when the download is resumed.
+        if (segmentProgressTracker != null
+            && activeRunnable instanceof SegmentDownloadRunnable
+            && ((SegmentDownloadRunnable) activeRunnable).isDownloaded()) {
+          onSegmentDownloaded(
+              segmentProgressTracker, ((SegmentDownloadRunnable) activeRunnable).segment);
+        }
+      }
+      if (parallelismSession != null) {
+        parallelismSession.close();
+      }
+      if (segmentProgressTracker != null) {
+        segmentProgressTracker.store();
       }
       if (priorityTaskManager != null) {
         priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
@@ -318,6 +421,13 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     } finally {
       // Always attempt to remove the manifest.
       cache.removeResource(cacheKeyFactory.buildCacheKey(manifestDataSpec));
+      if (segmentProgressIndex != null) {
+        try {
+          segmentProgressIndex.removeSegmentProgress(checkNotNull(downloadId));
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to remove segment progress", e);
+        }
+      }
     }
   }
 
@@ -420,6 +530,28 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     return new DataSpec.Builder().setUri(uri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build();
   }
 
+  /**
+   * Returns the length of a segment, or {@link C#LENGTH_UNSET} if it's unknown.
+   *
+   * @param dataSpec The {@link DataSpec} of the segment.
+   * @param cacheKey The cache key of the segment.
+   */
+  private long getSegmentLength(DataSpec dataSpec, String cacheKey) {
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      return dataSpec.length;
+    }
+    long resourceLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+    return resourceLength != C.LENGTH_UNSET ? resourceLength - dataSpec.position : C.LENGTH_UNSET;
+  }
+
+  private void onSegmentDownloaded(SegmentProgressTracker segmentProgressTracker, Segment segment) {
+    DataSpec dataSpec = segment.dataSpec;
+    long segmentLength = getSegmentLength(dataSpec, cacheKeyFactory.buildCacheKey(dataSpec));
+    if (segmentLength != C.LENGTH_UNSET) {
+      segmentProgressTracker.onSegmentCompleted(segment, segmentLength);
+    }
+  }
+
   private <T> void addActiveRunnable(RunnableFutureTask<T, ?> runnable)
       throws InterruptedException {
     synchronized (activeRunnables) {
@@ -481,39 +613,167 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
         && dataSpec1.httpRequestHeaders.equals(dataSpec2.httpRequestHeaders);
   }
 
+  /**
+   * Tracks which segments are completely downloaded, and stores them in a {@link
+   * SegmentProgressIndex} each time another {@link #SEGMENT_PROGRESS_STORE_COUNT}th of the segments
+   * completes.
+   *
+   * <p>Segments are identified by their index in the list that was passed to the constructor, which
+   * is also the list to which the stored progress applies.
+   */
+  private final class SegmentProgressTracker {
+
+    private final SegmentProgressIndex segmentProgressIndex;
+    private final String downloadId;
+    private final long segmentListHash;
+    private final int segmentCount;
+    private final IdentityHashMap<Segment, Integer> segmentIndices;
+    private final BitSet completedSegments;
+    private final int storeInterval;
+
+    private long completedBytes;
+    private int unstoredSegmentCount;
+
+    public SegmentProgressTracker(
+        SegmentProgressIndex segmentProgressIndex, String downloadId, List<Segment> segments) {
+      this.segmentProgressIndex = segmentProgressIndex;
+      this.downloadId = downloadId;
+      segmentCount = segments.size();
+      segmentIndices = new IdentityHashMap<>();
+      long segmentListHash = segmentCount;
+      for (int i = 0; i < segmentCount; i++) {
+        DataSpec dataSpec = segments.get(i).dataSpec;
+        segmentListHash = 31 * segmentListHash + cacheKeyFactory.buildCacheKey(dataSpec).hashCode();
+        segmentListHash = 31 * segmentListHash + dataSpec.position;
+        segmentListHash = 31 * segmentListHash + dataSpec.length;
+        segmentIndices.put(segments.get(i), i);
+      }
+      this.segmentListHash = segmentListHash;
+      storeInterval = max(1, segmentCount / SEGMENT_PROGRESS_STORE_COUNT);
+
+      @Nullable SegmentProgress storedProgress = null;
+      try {
+        storedProgress = segmentProgressIndex.getSegmentProgress(downloadId);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to load segment progress", e);
+      }
+      if (storedProgress != null
+          && storedProgress.segmentListHash == segmentListHash
+          && storedProgress.segmentCount == segmentCount) {
+        completedSegments = storedProgress.getCompletedSegments();
+        completedBytes = storedProgress.completedBytes;
+      } else {
+        // The stored progress is missing, or it applies to a different list of segments.
+        completedSegments = new BitSet(segmentCount);
+      }
+    }
+
+    public boolean isSegmentCompleted(int segmentIndex) {
+      return completedSegments.get(segmentIndex);
+    }
+
+    public void onSegmentCompleted(Segment segment, long segmentLength) {
+      @Nullable Integer segmentIndex = segmentIndices.get(segment);
+      if (segmentIndex == null || completedSegments.get(segmentIndex)) {
+        return;
+      }
+      completedSegments.set(segmentIndex);
+      completedBytes += segmentLength;
+      if (++unstoredSegmentCount >= storeInterval) {
+        store();
+      }
+    }
+
+    public void store() {
+      if (unstoredSegmentCount == 0) {
+        return;
+      }
+      unstoredSegmentCount = 0;
+      try {
+        segmentProgressIndex.putSegmentProgress(
+            downloadId,
+            new SegmentProgress(segmentListHash, segmentCount, completedSegments, completedBytes));
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to store segment progress", e);
+      }
+    }
+  }
+
   private static final class SegmentDownloadRunnable extends RunnableFutureTask<Void, IOException> {
 
     public final Segment segment;
     public final CacheDataSource dataSource;
     @Nullable private final ProgressNotifier progressNotifier;
     public final byte[] temporaryBuffer;
+    @Nullable private final AdaptiveParallelismController.Request parallelismRequest;
     private final CacheWriter cacheWriter;
 
+    private volatile boolean downloaded;
+
     public SegmentDownloadRunnable(
         Segment segment,
         CacheDataSource dataSource,
         @Nullable ProgressNotifier progressNotifier,
-        byte[] temporaryBuffer) {
+        byte[] temporaryBuffer,
+        @Nullable AdaptiveParallelismController.Request parallelismRequest) {
       this.segment = segment;
       this.dataSource = dataSource;
       this.progressNotifier = progressNotifier;
       this.temporaryBuffer = temporaryBuffer;
+      this.parallelismRequest = parallelismRequest;
+      @Nullable CacheWriter.ProgressListener progressListener = progressNotifier;
+      if (parallelismRequest != null) {
+        progressListener =
+            (requestLength, bytesCached, newBytesCached) -> {
+              parallelismRequest.onBytesTransferred(newBytesCached);
+              if (progressNotifier != null) {
+                progressNotifier.onProgress(requestLength, bytesCached, newBytesCached);
+              }
+            };
+      }
       this.cacheWriter =
-          new CacheWriter(dataSource, segment.dataSpec, temporaryBuffer, progressNotifier);
+          new CacheWriter(dataSource, segment.dataSpec, temporaryBuffer, progressListener);
     }
 
     @Override
     protected Void doWork() throws IOException {
-      cacheWriter.cache();
+      try {
+        cacheWriter.cache();
+        downloaded = true;
+        if (parallelismRequest != null) {
+          parallelismRequest.complete();
+        }
+      } catch (IOException e) {
+        if (parallelismRequest != null
+            && !(e instanceof PriorityTooLowException)
+            && !isCancelled()) {
+          parallelismRequest.fail();
+        }
+        throw e;
+      } finally {
+        if (parallelismRequest != null) {
+          // Release the request if it was neither completed nor failed.
+          parallelismRequest.release();
+        }
+      }
       if (progressNotifier != null) {
         progressNotifier.onSegmentDownloaded();
       }
       return null;
     }
 
+    /** Returns whether the segment was completely downloaded, even if the runnable was canceled. */
+    public boolean isDownloaded() {
+      return downloaded;
+    }
+
     @Override
     protected void cancelWork() {
       cacheWriter.cancel();
+      if (parallelismRequest != null) {
+        // The runnable may have been canceled before it started, in which case doWork isn't called.
+        parallelismRequest.release();
+      }
     }
   }
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.offline;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import java.util.BitSet;
+
+/**
+ * The segments of a download that a {@link SegmentDownloader} has completely downloaded.
+ *
+ * <p>The segments are identified by their index in the sorted list of segments that the downloader
+ * downloads. The progress only applies to a list with the same {@link #segmentListHash}.
+ */
+@UnstableApi
+public final class SegmentProgress {
+
+  /** A hash of the list of segments to which the progress applies. */
+  public final long segmentListHash;
+
+  /** The number of segments in the list. */
+  public final int segmentCount;
+
+  /** The total length of the completed segments, in bytes. */
+  public final long completedBytes;
+
+  private final BitSet completedSegments;
+
+  /**
+   * Creates an instance.
+   *
+   * @param segmentListHash A hash of the list of segments to which the progress applies.
+   * @param segmentCount The number of segments in the list.
+   * @param completedSegments The indices of the completed segments.
+   * @param completedBytes The total length of the completed segments, in bytes.
+   */
+  public SegmentProgress(
+      long segmentListHash, int segmentCount, BitSet completedSegments, long completedBytes) {
+    this.segmentListHash = segmentListHash;
+    this.segmentCount = segmentCount;
+    this.completedSegments = (BitSet) completedSegments.clone();
+    this.completedBytes = completedBytes;
+  }
+
+  /** Returns whether the segment with the given index is completed. */
+  public boolean isSegmentCompleted(int segmentIndex) {
+    return completedSegments.get(segmentIndex);
+  }
+
+  /** Returns the number of completed segments. */
+  public int getCompletedSegmentCount() {
+    return completedSegments.cardinality();
+  }
+
+  /** Returns a copy of the indices of the completed segments. */
+  public BitSet getCompletedSegments() {
+    return (BitSet) completedSegments.clone();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    SegmentProgress other = (SegmentProgress) obj;
+    return segmentListHash == other.segmentListHash
+        && segmentCount == other.segmentCount
+        && completedBytes == other.completedBytes
+        && completedSegments.equals(other.completedSegments);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (segmentListHash ^ (segmentListHash >>> 32));
+    result = 31 * result + segmentCount;
+    result = 31 * result + (int) (completedBytes ^ (completedBytes >>> 32));
+    result = 31 * result + completedSegments.hashCode();
+    return result;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.offline;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.media3.common.util.UnstableApi;
+import java.io.IOException;
+
+/**
+ * An index of the {@link SegmentProgress} of downloads, which lets a {@link SegmentDownloader}
+ * resume a download without scanning the cache for the segments that it already downloaded.
+ */
+@WorkerThread
+@UnstableApi
+public interface SegmentProgressIndex {
+
+  /**
+   * Returns the {@link SegmentProgress} of the download with the given {@code id}, or null.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param id ID of a {@link Download}.
+   * @return The {@link SegmentProgress}, or null if no progress is stored for the download.
+   * @throws IOException If an error occurs reading the progress.
+   */
+  @Nullable
+  SegmentProgress getSegmentProgress(String id) throws IOException;
+
+  /**
+   * Adds or replaces the {@link SegmentProgress} of the download with the given {@code id}.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param id ID of a {@link Download}.
+   * @param segmentProgress The {@link SegmentProgress}.
+   * @throws IOException If an error occurs storing the progress.
+   */
+  void putSegmentProgress(String id, SegmentProgress segmentProgress) throws IOException;
+
+  /**
+   * Removes the {@link SegmentProgress} of the download with the given {@code id}. Does nothing if
+   * no progress is stored for the download.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param id ID of a {@link Download}.
+   * @throws IOException If an error occurs removing the progress.
+   */
+  void removeSegmentProgress(String id) throws IOException;
+}
@@ -18,6 +18,7 @@ package androidx.media3.exoplayer.offline;
 import androidx.annotation.WorkerThread;
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.util.List;
 
 /** A writable index of {@link Download Downloads}. */
 @WorkerThread
@@ -34,6 +35,24 @@ public interface WritableDownloadIndex extends DownloadIndex {
    */
   void putDownload(Download download) throws IOException;
 
+  /**
+   * Adds or replaces {@link Download Downloads}.
+   *
+   * <p>Implementations should write the downloads in a single batch, which is faster than calling
+   * {@link #putDownload(Download)} for each of them. The default implementation calls {@link
+   * #putDownload(Download)} for each download.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param downloads The {@link Download Downloads} to be added.
+   * @throws IOException If an error occurs setting the states.
+   */
+  default void putDownloads(List<Download> downloads) throws IOException {
+    for (int i = 0; i < downloads.size(); i++) {
+      putDownload(downloads.get(i));
+    }
+  }
+
   /**
    * Removes the download with the given ID. Does nothing if a download with the given ID does not
    * exist.
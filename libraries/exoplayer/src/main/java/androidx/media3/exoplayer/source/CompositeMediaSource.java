@@ -305,6 +305,16 @@ public abstract class CompositeMediaSource<T> extends BaseMediaSource {
       }
     }
 
+    @Override
+    public void onPlaylistSwitched(
+        int windowIndex,
+        @Nullable MediaPeriodId mediaPeriodId,
+        PlaylistSwitchInfo playlistSwitchInfo) {
+      if (maybeUpdateEventDispatcher(windowIndex, mediaPeriodId)) {
+        mediaSourceEventDispatcher.playlistSwitched(playlistSwitchInfo);
+      }
+    }
+
     // DrmSessionEventListener implementation
 
     @Override
@@ -39,6 +39,7 @@ import androidx.media3.exoplayer.source.ads.AdsLoader;
 import androidx.media3.exoplayer.source.ads.AdsMediaSource;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import androidx.media3.extractor.DefaultExtractorsFactory;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
@@ -416,6 +417,14 @@ public final class DefaultMediaSourceFactory implements MediaSourceFactory {
     return this;
   }
 
+  @CanIgnoreReturnValue
+  @UnstableApi
+  @Override
+  public DefaultMediaSourceFactory setLoaderExecutorPool(LoaderExecutorPool loaderExecutorPool) {
+    delegateFactoryLoader.setLoaderExecutorPool(checkNotNull(loaderExecutorPool));
+    return this;
+  }
+
   @CanIgnoreReturnValue
   @UnstableApi
   @Override
@@ -614,6 +623,7 @@ public final class DefaultMediaSourceFactory implements MediaSourceFactory {
     private boolean parseSubtitlesDuringExtraction;
     private SubtitleParser.Factory subtitleParserFactory;
     @Nullable private CmcdConfiguration.Factory cmcdConfigurationFactory;
+    @Nullable private LoaderExecutorPool loaderExecutorPool;
     @Nullable private DrmSessionManagerProvider drmSessionManagerProvider;
     @Nullable private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
 
@@ -644,6 +654,9 @@ public final class DefaultMediaSourceFactory implements MediaSourceFactory {
       if (cmcdConfigurationFactory != null) {
         mediaSourceFactory.setCmcdConfigurationFactory(cmcdConfigurationFactory);
       }
+      if (loaderExecutorPool != null) {
+        mediaSourceFactory.setLoaderExecutorPool(loaderExecutorPool);
+      }
       if (drmSessionManagerProvider != null) {
         mediaSourceFactory.setDrmSessionManagerProvider(drmSessionManagerProvider);
       }
@@ -690,6 +703,13 @@ public final class DefaultMediaSourceFactory implements MediaSourceFactory {
       }
     }
 
+    public void setLoaderExecutorPool(LoaderExecutorPool loaderExecutorPool) {
+      this.loaderExecutorPool = loaderExecutorPool;
+      for (MediaSource.Factory mediaSourceFactory : mediaSourceFactories.values()) {
+        mediaSourceFactory.setLoaderExecutorPool(loaderExecutorPool);
+      }
+    }
+
     public void setDrmSessionManagerProvider(DrmSessionManagerProvider drmSessionManagerProvider) {
       this.drmSessionManagerProvider = drmSessionManagerProvider;
       for (MediaSource.Factory mediaSourceFactory : mediaSourceFactories.values()) {
@@ -26,6 +26,7 @@ import androidx.media3.datasource.DataSource;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.TransferListener;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
@@ -94,6 +95,30 @@ import java.util.Map;
     return bytesRead;
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    if (bytesUntilMetadata == 0) {
+      if (readMetadata()) {
+        bytesUntilMetadata = metadataIntervalBytes;
+      } else {
+        return C.RESULT_END_OF_INPUT;
+      }
+    }
+    // Limit the read so that it stops at the next metadata block.
+    int limit = buffer.limit();
+    buffer.limit(buffer.position() + min(bytesUntilMetadata, buffer.remaining()));
+    int bytesRead;
+    try {
+      bytesRead = upstream.read(buffer);
+    } finally {
+      buffer.limit(limit);
+    }
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      bytesUntilMetadata -= bytesRead;
+    }
+    return bytesRead;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
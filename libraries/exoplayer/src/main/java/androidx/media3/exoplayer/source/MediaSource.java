@@ -30,6 +30,7 @@ import androidx.media3.exoplayer.drm.DrmSessionManagerProvider;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import androidx.media3.extractor.text.SubtitleParser;
 import java.io.IOException;
 
@@ -82,6 +83,20 @@ public interface MediaSource {
       return this;
     }
 
+    /**
+     * Sets the {@link LoaderExecutorPool} in which the manifest and media chunk loads of the
+     * created media sources run, instead of on threads created for each media source.
+     *
+     * <p>The default implementation ignores the pool, so the created media sources load on threads
+     * of their own.
+     *
+     * @return This factory, for convenience.
+     */
+    @UnstableApi
+    default Factory setLoaderExecutorPool(LoaderExecutorPool loaderExecutorPool) {
+      return this;
+    }
+
     /**
      * Sets the {@link DrmSessionManagerProvider} used to obtain a {@link DrmSessionManager} for a
      * {@link MediaItem}.
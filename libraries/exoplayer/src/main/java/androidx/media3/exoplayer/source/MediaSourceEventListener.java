@@ -144,6 +144,20 @@ public interface MediaSourceEventListener {
   default void onDownstreamFormatChanged(
       int windowIndex, @Nullable MediaPeriodId mediaPeriodId, MediaLoadData mediaLoadData) {}
 
+  /**
+   * Called when playback switches to a different media playlist of an adaptive stream, once the new
+   * playlist is available.
+   *
+   * @param windowIndex The window index in the timeline of the media source this switch belongs to.
+   * @param mediaPeriodId The {@link MediaPeriodId} the switch belongs to, or null if it doesn't
+   *     belong to a specific media period.
+   * @param playlistSwitchInfo The {@link PlaylistSwitchInfo} describing the switch.
+   */
+  default void onPlaylistSwitched(
+      int windowIndex,
+      @Nullable MediaPeriodId mediaPeriodId,
+      PlaylistSwitchInfo playlistSwitchInfo) {}
+
   /** Dispatches events to {@link MediaSourceEventListener MediaSourceEventListeners}. */
   class EventDispatcher {
 
@@ -460,6 +474,12 @@ public interface MediaSourceEventListener {
               listener.onDownstreamFormatChanged(windowIndex, mediaPeriodId, mediaLoadData));
     }
 
+    /** Dispatches {@link #onPlaylistSwitched(int, MediaPeriodId, PlaylistSwitchInfo)}. */
+    public void playlistSwitched(PlaylistSwitchInfo playlistSwitchInfo) {
+      dispatchEvent(
+          (listener) -> listener.onPlaylistSwitched(windowIndex, mediaPeriodId, playlistSwitchInfo));
+    }
+
     /** Dispatches to a function that supplies a {@link MediaSourceEventListener}. */
     public void dispatchEvent(Consumer<MediaSourceEventListener> event) {
       for (ListenerAndHandler listenerAndHandler : listenerAndHandlers) {
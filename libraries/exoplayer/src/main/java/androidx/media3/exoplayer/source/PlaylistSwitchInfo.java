@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import androidx.media3.common.util.UnstableApi;
+
+/**
+ * {@link MediaSource} information about playback switching between the media playlists of an
+ * adaptive stream, such as the variants of an HLS multivariant playlist.
+ */
+@UnstableApi
+public final class PlaylistSwitchInfo {
+
+  /** The {@link Uri} of the media playlist that was used for playback before the switch. */
+  public final Uri previousPlaylistUri;
+
+  /** The {@link Uri} of the media playlist that is used for playback after the switch. */
+  public final Uri playlistUri;
+
+  /** The value of {@link SystemClock#elapsedRealtime} at the time the switch happened. */
+  public final long elapsedRealtimeMs;
+
+  /**
+   * The time for which loading media from the new playlist was blocked because the playlist wasn't
+   * available yet, in milliseconds, or 0 if it was available when playback switched to it.
+   */
+  public final long switchLatencyMs;
+
+  /** Whether the new playlist was kept up to date ahead of the switch. */
+  public final boolean wasPrefetched;
+
+  /**
+   * Creates an instance.
+   *
+   * @param previousPlaylistUri The {@link Uri} of the media playlist that was used for playback
+   *     before the switch.
+   * @param playlistUri The {@link Uri} of the media playlist that is used for playback after the
+   *     switch.
+   * @param elapsedRealtimeMs The value of {@link SystemClock#elapsedRealtime} at the time the
+   *     switch happened.
+   * @param switchLatencyMs The time for which loading media from the new playlist was blocked
+   *     because the playlist wasn't available yet, in milliseconds.
+   * @param wasPrefetched Whether the new playlist was kept up to date ahead of the switch.
+   */
+  public PlaylistSwitchInfo(
+      Uri previousPlaylistUri,
+      Uri playlistUri,
+      long elapsedRealtimeMs,
+      long switchLatencyMs,
+      boolean wasPrefetched) {
+    this.previousPlaylistUri = previousPlaylistUri;
+    this.playlistUri = playlistUri;
+    this.elapsedRealtimeMs = elapsedRealtimeMs;
+    this.switchLatencyMs = switchLatencyMs;
+    this.wasPrefetched = wasPrefetched;
+  }
+}
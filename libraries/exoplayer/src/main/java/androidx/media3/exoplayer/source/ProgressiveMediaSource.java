@@ -35,6 +35,7 @@ import androidx.media3.exoplayer.drm.DrmSessionManagerProvider;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.LoaderThreadFactory;
 import androidx.media3.exoplayer.util.ReleasableExecutor;
 import androidx.media3.extractor.DefaultExtractorsFactory;
 import androidx.media3.extractor.Extractor;
@@ -42,6 +43,7 @@ import androidx.media3.extractor.ExtractorsFactory;
 import com.google.common.base.Supplier;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Provides one period that loads data from a {@link Uri} and extracted using an {@link Extractor}.
@@ -235,6 +237,23 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the {@link LoaderThreadFactory} that creates the threads on which the media is loaded.
+     *
+     * <p>This is a shorthand for {@link #setDownloadExecutor} with a single threaded executor
+     * whose thread is created by the {@link LoaderThreadFactory}, and replaces any download
+     * executor that was set before.
+     *
+     * @param loaderThreadFactory The {@link LoaderThreadFactory}.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setLoaderThreadFactory(LoaderThreadFactory loaderThreadFactory) {
+      return setDownloadExecutor(
+          () -> loaderThreadFactory.newSingleThreadExecutor(LOADER_THREAD_NAME),
+          ExecutorService::shutdown);
+    }
+
     /**
      * Returns a new {@link ProgressiveMediaSource} using the current parameters.
      *
@@ -268,6 +287,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
    */
   public static final int DEFAULT_LOADING_CHECK_INTERVAL_BYTES = 1024 * 1024;
 
+  private static final String LOADER_THREAD_NAME = "ExoPlayer:Loader:ProgressiveMediaPeriod";
+
   private final DataSource.Factory dataSourceFactory;
   private final ProgressiveMediaExtractor.Factory progressiveMediaExtractorFactory;
   private final DrmSessionManager drmSessionManager;
@@ -35,7 +35,15 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-/** A queue of media sample data. */
+/**
+ * A queue of media sample data.
+ *
+ * <p>If the allocator provides allocations backed by {@link Allocation#directBuffer direct
+ * buffers}, sample data is bulk transferred from them to decoder input buffers, without an
+ * intermediate copy on the heap. Sample data is also read into them with {@link
+ * DataReader#read(ByteBuffer)}, so readers that support direct buffers write into them without an
+ * intermediate copy.
+ */
 /* package */ class SampleDataQueue {
 
   private static final int INITIAL_SCRATCH_SIZE = 32;
@@ -174,11 +182,26 @@ import java.util.Arrays;
 
   public int sampleData(DataReader input, int length, boolean allowEndOfInput) throws IOException {
     length = preAppend(length);
-    int bytesAppended =
-        input.read(
-            writeAllocationNode.allocation.data,
-            writeAllocationNode.translateOffset(totalBytesWritten),
-            length);
+    int bytesAppended;
+    @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+    if (writeBuffer == null) {
+      bytesAppended =
+          input.read(
+              writeAllocationNode.allocation.data,
+              writeAllocationNode.translateOffset(totalBytesWritten),
+              length);
+    } else {
+      // Read straight into the direct buffer, so that readers that support it (for example a
+      // FileDataSource) don't copy the data through an array on the heap.
+      int offset = writeAllocationNode.translateOffset(totalBytesWritten);
+      writeBuffer.limit(offset + length);
+      writeBuffer.position(offset);
+      try {
+        bytesAppended = input.read(writeBuffer);
+      } finally {
+        writeBuffer.limit(writeBuffer.capacity());
+      }
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -192,10 +215,17 @@ import java.util.Arrays;
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(
-          writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten),
-          bytesAppended);
+      @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+      if (writeBuffer == null) {
+        buffer.readBytes(
+            writeAllocationNode.allocation.data,
+            writeAllocationNode.translateOffset(totalBytesWritten),
+            bytesAppended);
+      } else {
+        writeBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        writeBuffer.put(buffer.getData(), buffer.getPosition(), bytesAppended);
+        buffer.skipBytes(bytesAppended);
+      }
       length -= bytesAppended;
       postAppend(bytesAppended);
     }
@@ -404,8 +434,16 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      target.put(allocation.data, allocationNode.translateOffset(absolutePosition), toCopy);
+      int offset = allocationNode.translateOffset(absolutePosition);
+      @Nullable ByteBuffer readBuffer = allocationNode.readBuffer;
+      if (readBuffer == null) {
+        target.put(allocationNode.allocation.data, offset, toCopy);
+      } else {
+        readBuffer.limit(offset + toCopy);
+        readBuffer.position(offset);
+        target.put(readBuffer);
+        readBuffer.limit(readBuffer.capacity());
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -430,13 +468,15 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      System.arraycopy(
-          allocation.data,
-          allocationNode.translateOffset(absolutePosition),
-          target,
-          length - remaining,
-          toCopy);
+      int offset = allocationNode.translateOffset(absolutePosition);
+      @Nullable ByteBuffer readBuffer = allocationNode.readBuffer;
+      if (readBuffer == null) {
+        System.arraycopy(
+            allocationNode.allocation.data, offset, target, length - remaining, toCopy);
+      } else {
+        readBuffer.position(offset);
+        readBuffer.get(target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -478,6 +518,18 @@ import java.util.Arrays;
      */
     @Nullable public AllocationNode next;
 
+    /**
+     * A duplicate of the {@link #allocation}'s {@link Allocation#directBuffer} used by the loading
+     * thread, or {@code null} if the allocation isn't backed by a direct buffer.
+     */
+    @Nullable public ByteBuffer writeBuffer;
+
+    /**
+     * A duplicate of the {@link #allocation}'s {@link Allocation#directBuffer} used by the
+     * consuming thread, or {@code null} if the allocation isn't backed by a direct buffer.
+     */
+    @Nullable public ByteBuffer readBuffer;
+
     /**
      * @param startPosition See {@link #startPosition}.
      * @param allocationLength The length of the {@link Allocation} with which this node will be
@@ -508,11 +560,17 @@ import java.util.Arrays;
     public void initialize(Allocation allocation, AllocationNode next) {
       this.allocation = allocation;
       this.next = next;
+      if (allocation.directBuffer != null) {
+        // The loading and consuming threads may access the same allocation concurrently, so each
+        // needs its own position and limit.
+        writeBuffer = allocation.directBuffer.duplicate();
+        readBuffer = allocation.directBuffer.duplicate();
+      }
     }
 
     /**
-     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} that corresponds to
-     * the specified absolute position.
+     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} or {@link
+     * Allocation#directBuffer} that corresponds to the specified absolute position.
      *
      * @param absolutePosition The absolute position.
      * @return The corresponding offset into the allocation's data.
@@ -528,6 +586,8 @@ import java.util.Arrays;
      */
     public AllocationNode clear() {
       allocation = null;
+      writeBuffer = null;
+      readBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
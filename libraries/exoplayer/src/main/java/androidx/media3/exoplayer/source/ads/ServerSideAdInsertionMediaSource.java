@@ -54,6 +54,7 @@ import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaPeriod;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.MediaSourceEventListener;
+import androidx.media3.exoplayer.source.PlaylistSwitchInfo;
 import androidx.media3.exoplayer.source.SampleStream;
 import androidx.media3.exoplayer.source.TrackGroupArray;
 import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
@@ -552,6 +553,22 @@ public final class ServerSideAdInsertionMediaSource extends BaseMediaSource
     }
   }
 
+  @Override
+  public void onPlaylistSwitched(
+      int windowIndex,
+      @Nullable MediaPeriodId mediaPeriodId,
+      PlaylistSwitchInfo playlistSwitchInfo) {
+    @Nullable
+    MediaPeriodImpl mediaPeriod =
+        getMediaPeriodForEvent(
+            mediaPeriodId, /* mediaLoadData= */ null, /* useLoadingPeriod= */ false);
+    if (mediaPeriod == null) {
+      mediaSourceEventDispatcherWithoutId.playlistSwitched(playlistSwitchInfo);
+    } else {
+      mediaPeriod.mediaSourceEventDispatcher.playlistSwitched(playlistSwitchInfo);
+    }
+  }
+
   private void releaseLastUsedMediaPeriod() {
     if (lastUsedMediaPeriod != null) {
       lastUsedMediaPeriod.release(mediaSource);
@@ -29,6 +29,7 @@ import static android.media.MediaParser.PARSER_NAME_OGG;
 import static android.media.MediaParser.PARSER_NAME_PS;
 import static android.media.MediaParser.PARSER_NAME_TS;
 import static android.media.MediaParser.PARSER_NAME_WAV;
+import static java.lang.Math.min;
 
 import android.annotation.SuppressLint;
 import android.media.DrmInitData.SchemeInitData;
@@ -654,11 +655,32 @@ public final class OutputConsumerAdapterV30 implements MediaParser.OutputConsume
 
   private static final class DataReaderAdapter implements DataReader {
 
+    private static final int BYTE_BUFFER_READ_SCRATCH_SIZE = 16 * 1024;
+
     @Nullable public MediaParser.InputReader input;
+    @Nullable private byte[] byteBufferReadScratch;
 
     @Override
     public int read(byte[] buffer, int offset, int length) throws IOException {
       return Util.castNonNull(input).read(buffer, offset, length);
     }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+      if (buffer.hasArray() || !buffer.hasRemaining()) {
+        return DataReader.super.read(buffer);
+      }
+      // MediaParser inputs can only be read into an array, so read via a scratch array.
+      @Nullable byte[] scratch = byteBufferReadScratch;
+      if (scratch == null) {
+        scratch = new byte[BYTE_BUFFER_READ_SCRATCH_SIZE];
+        byteBufferReadScratch = scratch;
+      }
+      int bytesRead = read(scratch, /* offset= */ 0, min(buffer.remaining(), scratch.length));
+      if (bytesRead > 0) {
+        buffer.put(scratch, /* offset= */ 0, bytesRead);
+      }
+      return bytesRead;
+    }
   }
 }
@@ -46,6 +46,7 @@ import androidx.media3.exoplayer.trackselection.TrackSelector;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.BandwidthMeter;
 import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
@@ -72,6 +73,7 @@ public final class DefaultPreloadManager extends BasePreloadManager<Integer> {
     private Supplier<BandwidthMeter> bandwidthMeterSupplier;
     private Supplier<RenderersFactory> renderersFactorySupplier;
     private Supplier<LoadControl> loadControlSupplier;
+    @Nullable private LoaderExecutorPool loaderExecutorPool;
     private boolean buildCalled;
     private boolean buildExoPlayerCalled;
 
@@ -206,6 +208,27 @@ public final class DefaultPreloadManager extends BasePreloadManager<Integer> {
       return this;
     }
 
+    /**
+     * Sets a {@link LoaderExecutorPool} in which the media sources created by the {@link
+     * MediaSource.Factory} run their manifest and media chunk loads, so that the preloaded media
+     * sources share a bounded number of loading threads.
+     *
+     * <p>The pool is set on the {@link MediaSource.Factory} with {@link
+     * MediaSource.Factory#setLoaderExecutorPool(LoaderExecutorPool)} when the {@link
+     * DefaultPreloadManager} or {@link ExoPlayer} is built. By default, no pool is set.
+     *
+     * @param loaderExecutorPool A {@link LoaderExecutorPool}.
+     * @return This builder.
+     * @throws IllegalStateException If {@link #build()}, {@link #buildExoPlayer()} or {@link
+     *     #buildExoPlayer(ExoPlayer.Builder)} has already been called.
+     */
+    @CanIgnoreReturnValue
+    public Builder setLoaderExecutorPool(LoaderExecutorPool loaderExecutorPool) {
+      checkState(!buildCalled && !buildExoPlayerCalled);
+      this.loaderExecutorPool = checkNotNull(loaderExecutorPool);
+      return this;
+    }
+
     /**
      * Builds an {@link ExoPlayer}.
      *
@@ -234,6 +257,7 @@ public final class DefaultPreloadManager extends BasePreloadManager<Integer> {
      *   <li>{@link #setLoadControl(LoadControl) LoadControl}
      *   <li>{@link #setBandwidthMeter(BandwidthMeter) BandwidthMeter}
      *   <li>{@linkplain #setPreloadLooper(Looper)} preload looper}
+     *   <li>{@link #setLoaderExecutorPool(LoaderExecutorPool) LoaderExecutorPool}
      * </ul>
      *
      * <p>For the other configurations than above, the built {@link ExoPlayer} uses the values from
@@ -245,6 +269,7 @@ public final class DefaultPreloadManager extends BasePreloadManager<Integer> {
      */
     public ExoPlayer buildExoPlayer(ExoPlayer.Builder exoPlayerBuilder) {
       buildExoPlayerCalled = true;
+      maybeSetLoaderExecutorPool();
       return exoPlayerBuilder
           .setMediaSourceFactory(mediaSourceFactorySupplier.get())
           .setBandwidthMeter(bandwidthMeterSupplier.get())
@@ -264,8 +289,15 @@ public final class DefaultPreloadManager extends BasePreloadManager<Integer> {
     public DefaultPreloadManager build() {
       checkState(!buildCalled);
       buildCalled = true;
+      maybeSetLoaderExecutorPool();
       return new DefaultPreloadManager(this);
     }
+
+    private void maybeSetLoaderExecutorPool() {
+      if (loaderExecutorPool != null) {
+        mediaSourceFactorySupplier.get().setLoaderExecutorPool(loaderExecutorPool);
+      }
+    }
   }
 
   /**
@@ -46,6 +46,7 @@ import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.BandwidthMeter;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -170,6 +171,12 @@ public final class PreloadMediaSource extends WrappingMediaSource {
       return this;
     }
 
+    @Override
+    public Factory setLoaderExecutorPool(LoaderExecutorPool loaderExecutorPool) {
+      this.mediaSourceFactory.setLoaderExecutorPool(loaderExecutorPool);
+      return this;
+    }
+
     @Override
     public Factory setDrmSessionManagerProvider(
         DrmSessionManagerProvider drmSessionManagerProvider) {
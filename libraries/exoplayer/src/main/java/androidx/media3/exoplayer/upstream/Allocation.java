@@ -15,10 +15,13 @@
  */
 package androidx.media3.exoplayer.upstream;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import java.nio.ByteBuffer;
 
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array, or within a direct {@link ByteBuffer}.
  *
  * <p>The allocation's length is obtained by calling {@link
  * Allocator#getIndividualAllocationLength()} on the {@link Allocator} from which it was obtained.
@@ -27,14 +30,25 @@ import androidx.media3.common.util.UnstableApi;
 public final class Allocation {
 
   /**
-   * The array containing the allocated space. The allocated space might not be at the start of the
-   * array, and so {@link #offset} must be used when indexing into it.
+   * The array containing the allocated space, or an empty array if the allocation is in {@link
+   * #directBuffer}. The allocated space might not be at the start of the array, and so {@link
+   * #offset} must be used when indexing into it.
    */
   public final byte[] data;
 
-  /** The offset of the allocated space in {@link #data}. */
+  /** The offset of the allocated space in {@link #data} or {@link #directBuffer}. */
   public final int offset;
 
+  /**
+   * The direct buffer containing the allocated space, or {@code null} if the allocation is in
+   * {@link #data}. The allocated space might not be at the start of the buffer, and so {@link
+   * #offset} must be used when indexing into it.
+   *
+   * <p>The buffer may be shared with other allocations, so its position and limit must not be
+   * modified. Use a {@link ByteBuffer#duplicate() duplicate} for relative reads and writes.
+   */
+  @Nullable public final ByteBuffer directBuffer;
+
   /**
    * @param data The array containing the allocated space.
    * @param offset The offset of the allocated space in {@code data}.
@@ -42,5 +56,16 @@ public final class Allocation {
   public Allocation(byte[] data, int offset) {
     this.data = data;
     this.offset = offset;
+    this.directBuffer = null;
+  }
+
+  /**
+   * @param directBuffer The direct buffer containing the allocated space.
+   * @param offset The offset of the allocated space in {@code directBuffer}.
+   */
+  public Allocation(ByteBuffer directBuffer, int offset) {
+    this.data = Util.EMPTY_BYTE_ARRAY;
+    this.offset = offset;
+    this.directBuffer = directBuffer;
   }
 }
@@ -16,26 +16,165 @@
 package androidx.media3.exoplayer.upstream;
 
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import androidx.annotation.Nullable;
+import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.NullableType;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/** Default implementation of {@link Allocator}. */
+/**
+ * Default implementation of {@link Allocator}.
+ *
+ * <p>By default, all allocations and releases acquire a lock on the allocator. If the allocator is
+ * shared between many loading threads, for example because it's used by multiple players or by
+ * preloaded sources, it can instead be created with thread local caches enabled. Each thread then
+ * keeps a small cache of available allocations, which it allocates from and releases to without
+ * contending with other threads. Allocations are moved between the thread local caches and the
+ * shared pool in batches. The caches of threads that have exited are returned to the shared pool
+ * when another thread first uses the allocator. {@link #trim()} returns the allocations in all of
+ * the thread local caches to the shared pool before discarding any that exceed the target buffer
+ * size.
+ *
+ * <p>Allocations can also be backed by direct {@link ByteBuffer ByteBuffers} instead of byte
+ * arrays, which keeps buffered media outside of the Java heap and allows sample data to be copied
+ * to direct decoder input buffers without going through the heap.
+ */
 @UnstableApi
 public final class DefaultAllocator implements Allocator {
 
+  /** Builder for {@link DefaultAllocator}. */
+  public static final class Builder {
+
+    private boolean trimOnReset;
+    private int individualAllocationSize;
+    private int initialAllocationCount;
+    private boolean useThreadLocalCaches;
+    private boolean useDirectBuffers;
+
+    /** Creates a builder. */
+    public Builder() {
+      trimOnReset = true;
+      individualAllocationSize = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+    }
+
+    /**
+     * Sets whether memory is freed when the allocator is reset. Should be true unless the allocator
+     * will be re-used by multiple player instances. If set to false, trimming can be forced by
+     * calling {@link #setTargetBufferSize(int)} manually when required.
+     *
+     * <p>The default value is {@code true}.
+     *
+     * @param trimOnReset Whether memory is freed when the allocator is reset.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setTrimOnReset(boolean trimOnReset) {
+      this.trimOnReset = trimOnReset;
+      return this;
+    }
+
+    /**
+     * Sets the length of each individual {@link Allocation}.
+     *
+     * <p>The default value is {@link C#DEFAULT_BUFFER_SEGMENT_SIZE}.
+     *
+     * @param individualAllocationSize The length of each individual {@link Allocation}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setIndividualAllocationSize(int individualAllocationSize) {
+      this.individualAllocationSize = individualAllocationSize;
+      return this;
+    }
+
+    /**
+     * Sets the number of {@link Allocation Allocations} to create up front. These allocations will
+     * never be discarded by {@link #trim()}.
+     *
+     * <p>The default value is 0.
+     *
+     * @param initialAllocationCount The number of allocations to create up front.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitialAllocationCount(int initialAllocationCount) {
+      this.initialAllocationCount = initialAllocationCount;
+      return this;
+    }
+
+    /**
+     * Sets whether each thread should keep a cache of available allocations, to reduce contention
+     * when the allocator is used by many threads. Each cache holds a small number of allocations
+     * that aren't discarded until {@link #trim()} is called, or returned to the shared pool once
+     * its thread has exited and another thread starts using the allocator.
+     *
+     * <p>The default value is {@code false}.
+     *
+     * @param useThreadLocalCaches Whether to use thread local caches of available allocations.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setUseThreadLocalCaches(boolean useThreadLocalCaches) {
+      this.useThreadLocalCaches = useThreadLocalCaches;
+      return this;
+    }
+
+    /**
+     * Sets whether allocations are backed by direct {@link ByteBuffer ByteBuffers} rather than
+     * byte arrays. Direct allocations don't count towards the Java heap and can be copied to direct
+     * decoder input buffers without going through the heap, but can only be used by components
+     * that support {@link Allocation#directBuffer}.
+     *
+     * <p>The default value is {@code false}.
+     *
+     * @param useDirectBuffers Whether allocations are backed by direct buffers.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setUseDirectBuffers(boolean useDirectBuffers) {
+      this.useDirectBuffers = useDirectBuffers;
+      return this;
+    }
+
+    /** Builds a {@link DefaultAllocator}. */
+    public DefaultAllocator build() {
+      return new DefaultAllocator(
+          trimOnReset,
+          individualAllocationSize,
+          initialAllocationCount,
+          useThreadLocalCaches,
+          useDirectBuffers);
+    }
+  }
+
   private static final int AVAILABLE_EXTRA_CAPACITY = 100;
 
+  /** The maximum number of allocations in each thread local cache. */
+  private static final int THREAD_LOCAL_CACHE_CAPACITY = 16;
+
+  /** The number of allocations moved between a thread local cache and the shared pool at once. */
+  private static final int THREAD_LOCAL_CACHE_BATCH_SIZE = THREAD_LOCAL_CACHE_CAPACITY / 2;
+
   private final boolean trimOnReset;
   private final int individualAllocationSize;
+  private final boolean useDirectBuffers;
   @Nullable private final byte[] initialAllocationBlock;
+  @Nullable private final ByteBuffer initialAllocationDirectBlock;
+  @Nullable private final ThreadLocal<ThreadLocalCache> threadLocalCache;
+  private final ArrayList<ThreadLocalCache> threadLocalCaches;
+  private final AtomicInteger allocatedCount;
 
   private int targetBufferSize;
-  private int allocatedCount;
+  private int createdCount;
   private int availableCount;
   private @NullableType Allocation[] availableAllocations;
 
@@ -64,47 +203,168 @@ public final class DefaultAllocator implements Allocator {
    */
   public DefaultAllocator(
       boolean trimOnReset, int individualAllocationSize, int initialAllocationCount) {
+    this(
+        trimOnReset,
+        individualAllocationSize,
+        initialAllocationCount,
+        /* useThreadLocalCaches= */ false,
+        /* useDirectBuffers= */ false);
+  }
+
+  private DefaultAllocator(
+      boolean trimOnReset,
+      int individualAllocationSize,
+      int initialAllocationCount,
+      boolean useThreadLocalCaches,
+      boolean useDirectBuffers) {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.trimOnReset = trimOnReset;
     this.individualAllocationSize = individualAllocationSize;
+    this.useDirectBuffers = useDirectBuffers;
+    this.createdCount = initialAllocationCount;
     this.availableCount = initialAllocationCount;
     this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
-    if (initialAllocationCount > 0) {
+    if (initialAllocationCount > 0 && useDirectBuffers) {
+      initialAllocationBlock = null;
+      initialAllocationDirectBlock =
+          ByteBuffer.allocateDirect(initialAllocationCount * individualAllocationSize);
+      for (int i = 0; i < initialAllocationCount; i++) {
+        int allocationOffset = i * individualAllocationSize;
+        availableAllocations[i] = new Allocation(initialAllocationDirectBlock, allocationOffset);
+      }
+    } else if (initialAllocationCount > 0) {
       initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
+      initialAllocationDirectBlock = null;
       for (int i = 0; i < initialAllocationCount; i++) {
         int allocationOffset = i * individualAllocationSize;
         availableAllocations[i] = new Allocation(initialAllocationBlock, allocationOffset);
       }
     } else {
       initialAllocationBlock = null;
+      initialAllocationDirectBlock = null;
     }
+    threadLocalCache = useThreadLocalCaches ? new ThreadLocal<>() : null;
+    threadLocalCaches = new ArrayList<>();
+    allocatedCount = new AtomicInteger();
   }
 
-  public synchronized void reset() {
+  public void reset() {
     if (trimOnReset) {
       setTargetBufferSize(0);
     }
   }
 
-  public synchronized void setTargetBufferSize(int targetBufferSize) {
-    boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
-    this.targetBufferSize = targetBufferSize;
+  public void setTargetBufferSize(int targetBufferSize) {
+    boolean targetBufferSizeReduced;
+    synchronized (this) {
+      targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
+      this.targetBufferSize = targetBufferSize;
+    }
     if (targetBufferSizeReduced) {
       trim();
     }
   }
 
   @Override
-  public synchronized Allocation allocate() {
-    allocatedCount++;
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    if (threadLocalCache == null) {
+      synchronized (this) {
+        return allocateFromPool();
+      }
+    }
+    ThreadLocalCache cache = getThreadLocalCache(threadLocalCache);
+    synchronized (cache) {
+      if (cache.count == 0) {
+        synchronized (this) {
+          // Move a batch of allocations from the shared pool to the cache, leaving room for this
+          // thread to release allocations without returning them to the pool straight away.
+          int refillCount = max(1, min(availableCount, THREAD_LOCAL_CACHE_BATCH_SIZE));
+          for (int i = 0; i < refillCount; i++) {
+            cache.allocations[cache.count++] = allocateFromPool();
+          }
+        }
+      }
+      Allocation allocation = Assertions.checkNotNull(cache.allocations[--cache.count]);
+      cache.allocations[cache.count] = null;
+      return allocation;
+    }
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    if (threadLocalCache == null) {
+      synchronized (this) {
+        availableAllocations[availableCount++] = allocation;
+        allocatedCount.decrementAndGet();
+        // Wake up threads waiting for the allocated size to drop.
+        notifyAll();
+      }
+      return;
+    }
+    ThreadLocalCache cache = getThreadLocalCache(threadLocalCache);
+    synchronized (cache) {
+      releaseToThreadLocalCache(cache, allocation);
+    }
+  }
+
+  @Override
+  public void release(@Nullable AllocationNode allocationNode) {
+    if (threadLocalCache == null) {
+      synchronized (this) {
+        while (allocationNode != null) {
+          availableAllocations[availableCount++] = allocationNode.getAllocation();
+          allocatedCount.decrementAndGet();
+          allocationNode = allocationNode.next();
+        }
+        // Wake up threads waiting for the allocated size to drop.
+        notifyAll();
+      }
+      return;
+    }
+    ThreadLocalCache cache = getThreadLocalCache(threadLocalCache);
+    synchronized (cache) {
+      while (allocationNode != null) {
+        releaseToThreadLocalCache(cache, allocationNode.getAllocation());
+        allocationNode = allocationNode.next();
+      }
+    }
+  }
+
+  @Override
+  public void trim() {
+    if (threadLocalCache != null) {
+      returnThreadLocalCachesToPool(/* exitedThreadsOnly= */ false);
+    }
+    synchronized (this) {
+      trimPool();
+    }
+  }
+
+  @Override
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  // Must be called while holding the lock on this allocator.
+  private Allocation allocateFromPool() {
     Allocation allocation;
     if (availableCount > 0) {
       allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
       availableAllocations[availableCount] = null;
     } else {
-      allocation = new Allocation(new byte[individualAllocationSize], 0);
-      if (allocatedCount > availableAllocations.length) {
+      allocation =
+          useDirectBuffers
+              ? new Allocation(ByteBuffer.allocateDirect(individualAllocationSize), /* offset= */ 0)
+              : new Allocation(new byte[individualAllocationSize], /* offset= */ 0);
+      createdCount++;
+      if (createdCount > availableAllocations.length) {
         // Make availableAllocations be large enough to contain all allocations made by this
         // allocator so that release() does not need to grow the availableAllocations array. See
         // [Internal ref: b/209801945].
@@ -114,35 +374,84 @@ public final class DefaultAllocator implements Allocator {
     return allocation;
   }
 
-  @Override
-  public synchronized void release(Allocation allocation) {
-    availableAllocations[availableCount++] = allocation;
-    allocatedCount--;
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+  // Must be called while holding the lock on the cache.
+  private void releaseToThreadLocalCache(ThreadLocalCache cache, Allocation allocation) {
+    allocatedCount.decrementAndGet();
+    if (cache.count == THREAD_LOCAL_CACHE_CAPACITY) {
+      synchronized (this) {
+        // Return the least recently released batch of allocations to the shared pool.
+        for (int i = 0; i < THREAD_LOCAL_CACHE_BATCH_SIZE; i++) {
+          availableAllocations[availableCount++] = cache.allocations[i];
+        }
+        // Wake up threads waiting for the allocated size to drop.
+        notifyAll();
+      }
+      System.arraycopy(
+          cache.allocations,
+          THREAD_LOCAL_CACHE_BATCH_SIZE,
+          cache.allocations,
+          /* destPos= */ 0,
+          THREAD_LOCAL_CACHE_CAPACITY - THREAD_LOCAL_CACHE_BATCH_SIZE);
+      cache.count -= THREAD_LOCAL_CACHE_BATCH_SIZE;
+      Arrays.fill(cache.allocations, cache.count, THREAD_LOCAL_CACHE_CAPACITY, null);
+    }
+    cache.allocations[cache.count++] = allocation;
   }
 
-  @Override
-  public synchronized void release(@Nullable AllocationNode allocationNode) {
-    while (allocationNode != null) {
-      availableAllocations[availableCount++] = allocationNode.getAllocation();
-      allocatedCount--;
-      allocationNode = allocationNode.next();
+  private ThreadLocalCache getThreadLocalCache(ThreadLocal<ThreadLocalCache> threadLocalCache) {
+    @Nullable ThreadLocalCache cache = threadLocalCache.get();
+    if (cache == null) {
+      cache = new ThreadLocalCache(Thread.currentThread());
+      threadLocalCache.set(cache);
+      synchronized (this) {
+        threadLocalCaches.add(cache);
+      }
+      // Loading threads are typically replaced when their loads finish, so reclaim the allocations
+      // cached by threads that have exited rather than keeping them until the next trim.
+      returnThreadLocalCachesToPool(/* exitedThreadsOnly= */ true);
     }
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+    return cache;
   }
 
-  @Override
-  public synchronized void trim() {
+  private void returnThreadLocalCachesToPool(boolean exitedThreadsOnly) {
+    ThreadLocalCache[] caches;
+    synchronized (this) {
+      caches = threadLocalCaches.toArray(new ThreadLocalCache[0]);
+    }
+    // Locks are always acquired on a cache before the allocator, so the lock on the allocator can't
+    // be held while iterating over the caches.
+    for (ThreadLocalCache cache : caches) {
+      @Nullable Thread owner = cache.owner.get();
+      boolean ownerExited = owner == null || !owner.isAlive();
+      if (exitedThreadsOnly && !ownerExited) {
+        continue;
+      }
+      synchronized (cache) {
+        synchronized (this) {
+          for (int i = 0; i < cache.count; i++) {
+            availableAllocations[availableCount++] = cache.allocations[i];
+          }
+          Arrays.fill(cache.allocations, 0, cache.count, null);
+          cache.count = 0;
+          if (ownerExited) {
+            // The cache can't be used again.
+            threadLocalCaches.remove(cache);
+          }
+        }
+      }
+    }
+  }
+
+  // Must be called while holding the lock on this allocator.
+  private void trimPool() {
     int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
-    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount);
+    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount.get());
     if (targetAvailableCount >= availableCount) {
       // We're already at or below the target.
       return;
     }
 
-    if (initialAllocationBlock != null) {
+    if (initialAllocationBlock != null || initialAllocationDirectBlock != null) {
       // Some allocations are backed by an initial block. We need to make sure that we hold onto all
       // such allocations. Re-order the available allocations so that the ones backed by the initial
       // block come first.
@@ -150,11 +459,11 @@ public final class DefaultAllocator implements Allocator {
       int highIndex = availableCount - 1;
       while (lowIndex <= highIndex) {
         Allocation lowAllocation = Assertions.checkNotNull(availableAllocations[lowIndex]);
-        if (lowAllocation.data == initialAllocationBlock) {
+        if (isInitialAllocation(lowAllocation)) {
           lowIndex++;
         } else {
           Allocation highAllocation = Assertions.checkNotNull(availableAllocations[highIndex]);
-          if (highAllocation.data != initialAllocationBlock) {
+          if (!isInitialAllocation(highAllocation)) {
             highIndex--;
           } else {
             availableAllocations[lowIndex++] = highAllocation;
@@ -172,16 +481,27 @@ public final class DefaultAllocator implements Allocator {
 
     // Discard allocations beyond the target.
     Arrays.fill(availableAllocations, targetAvailableCount, availableCount, null);
+    createdCount -= availableCount - targetAvailableCount;
     availableCount = targetAvailableCount;
   }
 
-  @Override
-  public synchronized int getTotalBytesAllocated() {
-    return allocatedCount * individualAllocationSize;
+  private boolean isInitialAllocation(Allocation allocation) {
+    return initialAllocationDirectBlock != null
+        ? allocation.directBuffer == initialAllocationDirectBlock
+        : allocation.data == initialAllocationBlock;
   }
 
-  @Override
-  public int getIndividualAllocationLength() {
-    return individualAllocationSize;
+  /** A cache of available allocations that's used by a single thread. */
+  private static final class ThreadLocalCache {
+
+    public final WeakReference<Thread> owner;
+    public final @NullableType Allocation[] allocations;
+
+    public int count;
+
+    public ThreadLocalCache(Thread owner) {
+      this.owner = new WeakReference<>(owner);
+      allocations = new Allocation[THREAD_LOCAL_CACHE_CAPACITY];
+    }
   }
 }
@@ -236,6 +236,20 @@ public final class Loader implements LoaderErrorThrower {
             ExecutorService::shutdown));
   }
 
+  /**
+   * Constructs an instance whose thread is created by a {@link LoaderThreadFactory}.
+   *
+   * @param threadNameSuffix A name suffix for the loader's thread. This should be the name of the
+   *     component using the loader.
+   * @param threadFactory The {@link LoaderThreadFactory} that creates the loader's thread.
+   */
+  public Loader(String threadNameSuffix, LoaderThreadFactory threadFactory) {
+    this(
+        /* downloadExecutor= */ ReleasableExecutor.from(
+            threadFactory.newSingleThreadExecutor(THREAD_NAME_PREFIX + threadNameSuffix),
+            ExecutorService::shutdown));
+  }
+
   /**
    * Constructs an instance.
    *
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import androidx.annotation.IntDef;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of threads that runs the load tasks of {@link Loader} instances, which can be
+ * shared by many media sources instead of each {@link Loader} having a thread of its own.
+ *
+ * <p>Loads run in one of two lanes. The {@link #LANE_MANIFEST manifest lane} runs the loads of
+ * manifests, playlists and timing information, and the {@link #LANE_MEDIA media lane} runs the
+ * loads of media chunks. Each lane has its own maximum number of threads, so manifest loads don't
+ * wait for media loads to finish. Loads that are started while all threads of their lane are busy
+ * are queued. Threads are created when they're needed, and stop after having been idle for a few
+ * seconds.
+ *
+ * <p>The tasks of each {@link Loader} created with {@link #createLoader(int)} run one at a time in
+ * the order they're started, as they do on the thread of a {@link Loader} created with {@link
+ * Loader#Loader(String)}.
+ *
+ * <p>Loads that don't complete on their own, such as progressive media loads that wait for the
+ * player to continue loading, must not run in the pool, because they'd occupy a thread of their
+ * lane until they're canceled. Blocking playlist reloads of HLS live streams occupy a thread of the
+ * manifest lane until the server responds, so the manifest lane should have at least one more
+ * thread than the number of live HLS streams that are refreshed at the same time.
+ */
+@UnstableApi
+public final class LoaderExecutorPool {
+
+  /**
+   * The lane in which loads run. One of {@link #LANE_MANIFEST} or {@link #LANE_MEDIA}.
+   *
+   * <p>Note that new lanes may be added in the future.
+   */
+  @Documented
+  @Retention(RetentionPolicy.SOURCE)
+  @Target(TYPE_USE)
+  @IntDef({LANE_MANIFEST, LANE_MEDIA})
+  public @interface Lane {}
+
+  /** The lane for loading manifests, playlists and timing information. */
+  public static final int LANE_MANIFEST = 0;
+
+  /** The lane for loading media chunks. */
+  public static final int LANE_MEDIA = 1;
+
+  /** The default maximum number of threads of the {@link #LANE_MANIFEST manifest lane}. */
+  public static final int DEFAULT_MAX_MANIFEST_THREAD_COUNT = 4;
+
+  /** The default maximum number of threads of the {@link #LANE_MEDIA media lane}. */
+  public static final int DEFAULT_MAX_MEDIA_THREAD_COUNT = 4;
+
+  private static final String THREAD_NAME_PREFIX = "ExoPlayer:Loader:";
+  private static final long KEEP_ALIVE_TIME_MS = 10_000;
+
+  private final ThreadPoolExecutor manifestExecutor;
+  private final ThreadPoolExecutor mediaExecutor;
+
+  /**
+   * Creates an instance with {@link #DEFAULT_MAX_MANIFEST_THREAD_COUNT} manifest threads and
+   * {@link #DEFAULT_MAX_MEDIA_THREAD_COUNT} media threads.
+   */
+  public LoaderExecutorPool() {
+    this(DEFAULT_MAX_MANIFEST_THREAD_COUNT, DEFAULT_MAX_MEDIA_THREAD_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxManifestThreadCount The maximum number of threads of the {@link #LANE_MANIFEST
+   *     manifest lane}.
+   * @param maxMediaThreadCount The maximum number of threads of the {@link #LANE_MEDIA media
+   *     lane}.
+   */
+  public LoaderExecutorPool(int maxManifestThreadCount, int maxMediaThreadCount) {
+    this(maxManifestThreadCount, maxMediaThreadCount, LoaderThreadFactory.DEFAULT);
+  }
+
+  /**
+   * Creates an instance whose threads are created by a {@link LoaderThreadFactory}.
+   *
+   * @param maxManifestThreadCount The maximum number of threads of the {@link #LANE_MANIFEST
+   *     manifest lane}.
+   * @param maxMediaThreadCount The maximum number of threads of the {@link #LANE_MEDIA media
+   *     lane}.
+   * @param threadFactory The {@link LoaderThreadFactory} that creates the threads.
+   */
+  public LoaderExecutorPool(
+      int maxManifestThreadCount, int maxMediaThreadCount, LoaderThreadFactory threadFactory) {
+    checkArgument(maxManifestThreadCount > 0 && maxMediaThreadCount > 0);
+    manifestExecutor = createThreadPoolExecutor(maxManifestThreadCount, "Manifest", threadFactory);
+    mediaExecutor = createThreadPoolExecutor(maxMediaThreadCount, "Media", threadFactory);
+  }
+
+  /**
+   * Returns a new {@link Loader} whose loads run in a lane of the pool.
+   *
+   * @param lane The {@link Lane} in which the loads run.
+   */
+  public Loader createLoader(@Lane int lane) {
+    return new Loader(createExecutor(lane));
+  }
+
+  /**
+   * Returns a new {@link ReleasableExecutor} that runs its tasks one at a time, in the order
+   * they're submitted, in a lane of the pool.
+   *
+   * @param lane The {@link Lane} in which the tasks run.
+   */
+  public ReleasableExecutor createExecutor(@Lane int lane) {
+    Executor executor =
+        MoreExecutors.newSequentialExecutor(
+            lane == LANE_MANIFEST ? manifestExecutor : mediaExecutor);
+    // The threads are owned by the pool, so there's nothing to release.
+    return ReleasableExecutor.from(executor, /* releaseCallback= */ unused -> {});
+  }
+
+  /**
+   * Releases the pool. Tasks that are queued or running complete, but no new tasks are accepted.
+   * This method must only be called once no {@link Loader} that uses the pool is loading.
+   */
+  public void release() {
+    manifestExecutor.shutdown();
+    mediaExecutor.shutdown();
+  }
+
+  private static ThreadPoolExecutor createThreadPoolExecutor(
+      int maxThreadCount, String laneName, LoaderThreadFactory threadFactory) {
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ maxThreadCount,
+            /* maximumPoolSize= */ maxThreadCount,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable ->
+                threadFactory.newThread(
+                    runnable,
+                    THREAD_NAME_PREFIX + laneName + ":" + threadCount.incrementAndGet()));
+    // Don't keep idle threads alive, so that an idle pool doesn't use any threads.
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import androidx.media3.common.util.UnstableApi;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the threads on which {@link Loader} instances run their loads.
+ *
+ * <p>Loads block their thread while reading from a {@link androidx.media3.datasource.DataSource}.
+ * The {@link #DEFAULT} implementation creates a platform thread for each loader. On runtimes that
+ * support them, {@link VirtualThreadLoaderThreadFactory} creates virtual threads instead, which
+ * allows many more loads to run at the same time.
+ */
+@UnstableApi
+public interface LoaderThreadFactory {
+
+  /** The default {@link LoaderThreadFactory}, which creates platform threads. */
+  LoaderThreadFactory DEFAULT = Thread::new;
+
+  /**
+   * Returns a new, unstarted thread.
+   *
+   * @param runnable The {@link Runnable} that the thread runs.
+   * @param threadName The name of the thread.
+   * @return The thread.
+   */
+  Thread newThread(Runnable runnable, String threadName);
+
+  /**
+   * Returns a new single threaded {@link ExecutorService} whose thread is created by this factory.
+   *
+   * <p>The executor can be passed to {@link
+   * androidx.media3.exoplayer.source.ProgressiveMediaSource.Factory#setDownloadExecutor}, to be
+   * shut down by the release callback.
+   *
+   * @param threadName The name of the thread.
+   * @return The executor.
+   */
+  default ExecutorService newSingleThreadExecutor(String threadName) {
+    return Executors.newSingleThreadExecutor(runnable -> newThread(runnable, threadName));
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A {@link LoaderThreadFactory} that creates virtual threads.
+ *
+ * <p>Virtual threads are available on Java 21 and later, and aren't available on Android. They're
+ * useful when the library runs on a JVM, for example on a server that extracts or transforms many
+ * media files at the same time, because a load that blocks a virtual thread doesn't block an
+ * operating system thread.
+ *
+ * <p>On Java 21 to 23, a virtual thread that waits in {@link Object#wait()} inside a {@code
+ * synchronized} block pins the operating system thread that carries it until it's notified. Loads
+ * wait in this way when they block on a {@link androidx.media3.common.util.ConditionVariable}, for
+ * example while a {@link androidx.media3.exoplayer.source.ProgressiveMediaPeriod} waits for its
+ * buffered samples to be consumed, so many such loads can still occupy all of the carrier threads.
+ * Java 24 and later don't pin virtual threads in this case.
+ */
+@UnstableApi
+public final class VirtualThreadLoaderThreadFactory implements LoaderThreadFactory {
+
+  @Nullable private static final Method OF_VIRTUAL_METHOD;
+  @Nullable private static final Method BUILDER_NAME_METHOD;
+  @Nullable private static final Method BUILDER_UNSTARTED_METHOD;
+
+  static {
+    @Nullable Method ofVirtualMethod = null;
+    @Nullable Method builderNameMethod = null;
+    @Nullable Method builderUnstartedMethod = null;
+    try {
+      ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      builderNameMethod = builderClass.getMethod("name", String.class);
+      builderUnstartedMethod = builderClass.getMethod("unstarted", Runnable.class);
+    } catch (ClassNotFoundException | NoSuchMethodException e) {
+      // Virtual threads aren't supported.
+      ofVirtualMethod = null;
+      builderNameMethod = null;
+      builderUnstartedMethod = null;
+    }
+    OF_VIRTUAL_METHOD = ofVirtualMethod;
+    BUILDER_NAME_METHOD = builderNameMethod;
+    BUILDER_UNSTARTED_METHOD = builderUnstartedMethod;
+  }
+
+  /** Returns whether virtual threads are supported by the runtime. */
+  public static boolean isSupported() {
+    return OF_VIRTUAL_METHOD != null;
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @throws UnsupportedOperationException If virtual threads aren't {@linkplain #isSupported()
+   *     supported} by the runtime.
+   */
+  public VirtualThreadLoaderThreadFactory() {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Virtual threads aren't supported");
+    }
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable, String threadName) {
+    try {
+      Object builder = checkNotNull(OF_VIRTUAL_METHOD).invoke(/* obj= */ null);
+      builder = checkNotNull(BUILDER_NAME_METHOD).invoke(builder, threadName);
+      return (Thread) checkNotNull(BUILDER_UNSTARTED_METHOD).invoke(builder, runnable);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -43,6 +43,7 @@ import androidx.media3.exoplayer.audio.AudioSink;
 import androidx.media3.exoplayer.drm.DrmSession;
 import androidx.media3.exoplayer.source.LoadEventInfo;
 import androidx.media3.exoplayer.source.MediaLoadData;
+import androidx.media3.exoplayer.source.PlaylistSwitchInfo;
 import androidx.media3.exoplayer.trackselection.MappingTrackSelector;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
@@ -504,6 +505,18 @@ public class EventLogger implements AnalyticsListener {
     logd(eventTime, "downstreamFormat", Format.toLogString(mediaLoadData.trackFormat));
   }
 
+  @UnstableApi
+  @Override
+  public void onPlaylistSwitched(EventTime eventTime, PlaylistSwitchInfo playlistSwitchInfo) {
+    logd(
+        eventTime,
+        "playlistSwitched",
+        "latencyMs="
+            + playlistSwitchInfo.switchLatencyMs
+            + ", prefetched="
+            + playlistSwitchInfo.wasPrefetched);
+  }
+
   @UnstableApi
   @Override
   public void onDrmSessionAcquired(EventTime eventTime, @DrmSession.State int state) {
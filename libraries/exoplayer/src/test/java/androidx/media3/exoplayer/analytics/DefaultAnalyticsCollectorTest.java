@@ -36,6 +36,7 @@ import static androidx.media3.exoplayer.analytics.AnalyticsListener.EVENT_PLAYBA
 import static androidx.media3.exoplayer.analytics.AnalyticsListener.EVENT_PLAYBACK_STATE_CHANGED;
 import static androidx.media3.exoplayer.analytics.AnalyticsListener.EVENT_PLAYER_ERROR;
 import static androidx.media3.exoplayer.analytics.AnalyticsListener.EVENT_PLAYER_RELEASED;
+import static androidx.media3.exoplayer.analytics.AnalyticsListener.EVENT_PLAYLIST_SWITCHED;
 import static androidx.media3.exoplayer.analytics.AnalyticsListener.EVENT_PLAY_WHEN_READY_CHANGED;
 import static androidx.media3.exoplayer.analytics.AnalyticsListener.EVENT_POSITION_DISCONTINUITY;
 import static androidx.media3.exoplayer.analytics.AnalyticsListener.EVENT_RENDERED_FIRST_FRAME;
@@ -74,6 +75,7 @@ import static org.robolectric.shadows.ShadowLooper.idleMainLooper;
 import static org.robolectric.shadows.ShadowLooper.runMainLooperToNextTask;
 
 import android.graphics.SurfaceTexture;
+import android.net.Uri;
 import android.os.Looper;
 import android.util.SparseArray;
 import android.view.Surface;
@@ -96,6 +98,7 @@ import androidx.media3.common.util.Clock;
 import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.common.util.HandlerWrapper;
 import androidx.media3.common.util.Util;
+import androidx.media3.datasource.TransferListener;
 import androidx.media3.exoplayer.DecoderCounters;
 import androidx.media3.exoplayer.DecoderReuseEvaluation;
 import androidx.media3.exoplayer.ExoPlaybackException;
@@ -112,6 +115,7 @@ import androidx.media3.exoplayer.source.LoadEventInfo;
 import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
+import androidx.media3.exoplayer.source.PlaylistSwitchInfo;
 import androidx.media3.test.utils.ExoPlayerTestRunner;
 import androidx.media3.test.utils.FakeAudioRenderer;
 import androidx.media3.test.utils.FakeClock;
@@ -1397,6 +1401,38 @@ public final class DefaultAnalyticsCollectorTest {
     assertThat(listener.getEvents(EVENT_SEEK_STARTED)).containsExactly(period0);
   }
 
+  @Test
+  public void playlistSwitched_isForwardedToAnalyticsListener() throws Exception {
+    PlaylistSwitchInfo playlistSwitchInfo =
+        new PlaylistSwitchInfo(
+            Uri.parse("https://example.test/low.m3u8"),
+            Uri.parse("https://example.test/high.m3u8"),
+            /* elapsedRealtimeMs= */ 1000,
+            /* switchLatencyMs= */ 200,
+            /* wasPrefetched= */ false);
+    MediaSource mediaSource =
+        new FakeMediaSource(SINGLE_PERIOD_TIMELINE) {
+          @Override
+          public synchronized void prepareSourceInternal(
+              @Nullable TransferListener mediaTransferListener) {
+            super.prepareSourceInternal(mediaTransferListener);
+            createEventDispatcher(/* mediaPeriodId= */ null).playlistSwitched(playlistSwitchInfo);
+          }
+        };
+    ExoPlayer player = setupPlayer();
+    AnalyticsListener listener = mock(AnalyticsListener.class);
+    player.addAnalyticsListener(listener);
+
+    player.setMediaSource(mediaSource);
+    player.prepare();
+    runUntilPlaybackState(player, Player.STATE_READY);
+    player.release();
+
+    verify(listener).onPlaylistSwitched(any(), same(playlistSwitchInfo));
+    verify(listener)
+        .onEvents(same(player), argThat(events -> events.contains(EVENT_PLAYLIST_SWITCHED)));
+  }
+
   @Test
   public void drmEvents_singlePeriod() throws Exception {
     MediaSource mediaSource =
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.common.audio.AudioProcessingPipeline;
+import androidx.media3.common.audio.AudioProcessor.AudioFormat;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ToFloatPcmAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class ToFloatPcmAudioProcessorTest {
+
+  @Test
+  public void queueInput_24BitInput_outputsFloat() throws Exception {
+    ToFloatPcmAudioProcessor audioProcessor = new ToFloatPcmAudioProcessor();
+    AudioFormat outputAudioFormat =
+        audioProcessor.configure(
+            new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 1, C.ENCODING_PCM_24BIT));
+    audioProcessor.flush();
+
+    // The samples are 0x400000 (half of full scale) and -0x800000 (negative full scale).
+    audioProcessor.queueInput(createBuffer(new byte[] {0, 0, 0x40, 0, 0, (byte) 0x80}));
+    ByteBuffer output = audioProcessor.getOutput();
+
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_FLOAT);
+    assertThat(output.getFloat()).isWithin(1e-6f).of(0.5f);
+    assertThat(output.getFloat()).isWithin(1e-6f).of(-1f);
+    assertThat(output.hasRemaining()).isFalse();
+  }
+
+  @Test
+  public void fusedInPipeline_outputMatchesQueueInput() throws Exception {
+    assertFusedOutputMatchesQueueInput(C.ENCODING_PCM_24BIT);
+    assertFusedOutputMatchesQueueInput(C.ENCODING_PCM_24BIT_BIG_ENDIAN);
+    assertFusedOutputMatchesQueueInput(C.ENCODING_PCM_32BIT);
+    assertFusedOutputMatchesQueueInput(C.ENCODING_PCM_32BIT_BIG_ENDIAN);
+  }
+
+  private static void assertFusedOutputMatchesQueueInput(@C.PcmEncoding int encoding)
+      throws Exception {
+    AudioFormat inputAudioFormat =
+        new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 2, encoding);
+    byte[] input = new byte[1000 * inputAudioFormat.bytesPerFrame];
+    new Random(/* seed= */ 0).nextBytes(input);
+    ToFloatPcmAudioProcessor audioProcessor = new ToFloatPcmAudioProcessor();
+    audioProcessor.configure(inputAudioFormat);
+    audioProcessor.flush();
+    AudioProcessingPipeline audioProcessingPipeline =
+        new AudioProcessingPipeline(ImmutableList.of(new ToFloatPcmAudioProcessor()));
+    audioProcessingPipeline.configure(inputAudioFormat);
+    audioProcessingPipeline.flush();
+
+    audioProcessor.queueInput(createBuffer(input));
+    audioProcessingPipeline.queueInput(createBuffer(input));
+
+    assertThat(audioProcessingPipeline.getOutput()).isEqualTo(audioProcessor.getOutput());
+  }
+
+  private static ByteBuffer createBuffer(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.nativeOrder());
+    buffer.put(bytes).flip();
+    return buffer;
+  }
+}
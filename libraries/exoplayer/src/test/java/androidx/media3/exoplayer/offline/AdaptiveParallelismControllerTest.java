@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.offline;
+
+import static androidx.media3.exoplayer.offline.AdaptiveParallelismController.MIN_MEASUREMENT_DURATION_MS;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.test.utils.FakeClock;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link AdaptiveParallelismController}. */
+@RunWith(AndroidJUnit4.class)
+public class AdaptiveParallelismControllerTest {
+
+  private FakeClock clock;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+  }
+
+  @Test
+  public void openSession_allowsSingleRequest() throws Exception {
+    AdaptiveParallelismController controller = createController(/* maxParallelRequests= */ 16);
+
+    AdaptiveParallelismController.Session session = controller.openSession();
+    session.acquire();
+
+    assertThat(session.getMaxRequestCount()).isEqualTo(1);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void getParallelRequestLimit_returnsSumOfSessionLimitsCappedByMaximum() throws Exception {
+    AdaptiveParallelismController controller = createController(/* maxParallelRequests= */ 4);
+    AdaptiveParallelismController.Session session1 = controller.openSession();
+    runRequests(session1, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+    runRequests(session1, /* requestCount= */ 2, /* bytesPerRequest= */ 10_000);
+    AdaptiveParallelismController.Session session2 = controller.openSession();
+
+    assertThat(controller.getDownloadCount()).isEqualTo(2);
+    assertThat(controller.getParallelRequestLimit()).isEqualTo(4);
+    session1.close();
+    assertThat(controller.getDownloadCount()).isEqualTo(1);
+    assertThat(controller.getParallelRequestLimit()).isEqualTo(1);
+    session2.close();
+    assertThat(controller.getDownloadCount()).isEqualTo(0);
+    assertThat(controller.getParallelRequestLimit()).isEqualTo(0);
+  }
+
+  @Test
+  public void completeRequests_withIncreasingThroughput_doublesLimit() throws Exception {
+    AdaptiveParallelismController controller = createController(/* maxParallelRequests= */ 16);
+    AdaptiveParallelismController.Session session = controller.openSession();
+
+    runRequests(session, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+    assertThat(session.getMaxRequestCount()).isEqualTo(2);
+    runRequests(session, /* requestCount= */ 2, /* bytesPerRequest= */ 10_000);
+    assertThat(session.getMaxRequestCount()).isEqualTo(4);
+    runRequests(session, /* requestCount= */ 4, /* bytesPerRequest= */ 10_000);
+
+    assertThat(session.getMaxRequestCount()).isEqualTo(8);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void completeRequests_withoutThroughputGain_decreasesLimitAndThenIncreasesLinearly()
+      throws Exception {
+    AdaptiveParallelismController controller = createController(/* maxParallelRequests= */ 16);
+    AdaptiveParallelismController.Session session = controller.openSession();
+    runRequests(session, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+    runRequests(session, /* requestCount= */ 2, /* bytesPerRequest= */ 10_000);
+    runRequests(session, /* requestCount= */ 4, /* bytesPerRequest= */ 10_000);
+
+    // Twice as many requests transfer the same number of bytes.
+    runRequests(session, /* requestCount= */ 8, /* bytesPerRequest= */ 5_000);
+    assertThat(session.getMaxRequestCount()).isEqualTo(6);
+    runRequests(session, /* requestCount= */ 6, /* bytesPerRequest= */ 10_000);
+
+    assertThat(session.getMaxRequestCount()).isEqualTo(7);
+  }
+
+  @Test
+  public void completeRequests_atMaxParallelRequestsPerDownload_keepsLimit() throws Exception {
+    AdaptiveParallelismController controller =
+        new AdaptiveParallelismController.Builder()
+            .setMaxParallelRequestsPerDownload(2)
+            .setClock(clock)
+            .build();
+    AdaptiveParallelismController.Session session = controller.openSession();
+    runRequests(session, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+
+    runRequests(session, /* requestCount= */ 2, /* bytesPerRequest= */ 10_000);
+    runRequests(session, /* requestCount= */ 2, /* bytesPerRequest= */ 10_000);
+
+    assertThat(session.getMaxRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void failRequest_halvesLimit() throws Exception {
+    AdaptiveParallelismController controller = createController(/* maxParallelRequests= */ 16);
+    AdaptiveParallelismController.Session session = controller.openSession();
+    runRequests(session, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+    runRequests(session, /* requestCount= */ 2, /* bytesPerRequest= */ 10_000);
+
+    session.acquire().fail();
+
+    assertThat(session.getMaxRequestCount()).isEqualTo(2);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void releaseRequest_keepsLimit() throws Exception {
+    AdaptiveParallelismController controller = createController(/* maxParallelRequests= */ 16);
+    AdaptiveParallelismController.Session session = controller.openSession();
+    runRequests(session, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+
+    AdaptiveParallelismController.Request request = session.acquire();
+    request.release();
+    request.fail();
+
+    assertThat(session.getMaxRequestCount()).isEqualTo(2);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void acquire_withSharedBudgetExhausted_blocksUntilRequestIsReleased() throws Exception {
+    AdaptiveParallelismController controller = createController(/* maxParallelRequests= */ 2);
+    AdaptiveParallelismController.Session session1 = controller.openSession();
+    runRequests(session1, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+    AdaptiveParallelismController.Request request1 = session1.acquire();
+    AdaptiveParallelismController.Request request2 = session1.acquire();
+    AdaptiveParallelismController.Session session2 = controller.openSession();
+
+    AtomicReference<AdaptiveParallelismController.Request> session2Request =
+        new AtomicReference<>();
+    Thread thread = new Thread(() -> session2Request.set(acquireUninterruptibly(session2)));
+    thread.start();
+    thread.join(/* millis= */ 100);
+    assertThat(session2Request.get()).isNull();
+    request1.release();
+    thread.join();
+
+    assertThat(session2Request.get()).isNotNull();
+    assertThat(controller.getParallelRequestCount()).isEqualTo(2);
+    request2.release();
+  }
+
+  @Test
+  public void acquire_withOtherSessionWaitingBelowFairShare_givesRequestToOtherSession()
+      throws Exception {
+    AdaptiveParallelismController controller = createController(/* maxParallelRequests= */ 4);
+    AdaptiveParallelismController.Session session1 = controller.openSession();
+    runRequests(session1, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+    runRequests(session1, /* requestCount= */ 2, /* bytesPerRequest= */ 10_000);
+    AdaptiveParallelismController.Session session2 = controller.openSession();
+    runRequests(session2, /* requestCount= */ 1, /* bytesPerRequest= */ 10_000);
+    List<AdaptiveParallelismController.Request> session1Requests = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      session1Requests.add(session1.acquire());
+    }
+    AdaptiveParallelismController.Request session2Request = session2.acquire();
+
+    // Both sessions wait for a request. The fair share of each session is two requests.
+    AtomicReference<AdaptiveParallelismController.Request> session1NextRequest =
+        new AtomicReference<>();
+    AtomicReference<AdaptiveParallelismController.Request> session2NextRequest =
+        new AtomicReference<>();
+    Thread session1Thread =
+        new Thread(() -> session1NextRequest.set(acquireUninterruptibly(session1)));
+    Thread session2Thread =
+        new Thread(() -> session2NextRequest.set(acquireUninterruptibly(session2)));
+    session1Thread.start();
+    session2Thread.start();
+    waitUntilWaiting(session1Thread);
+    waitUntilWaiting(session2Thread);
+    session1Requests.get(0).release();
+    session2Thread.join();
+    session1Thread.join(/* millis= */ 100);
+
+    assertThat(session2NextRequest.get()).isNotNull();
+    assertThat(session1NextRequest.get()).isNull();
+    session2Request.release();
+    session1Thread.join();
+    assertThat(session1NextRequest.get()).isNotNull();
+  }
+
+  private AdaptiveParallelismController createController(int maxParallelRequests) {
+    return new AdaptiveParallelismController.Builder()
+        .setMaxParallelRequests(maxParallelRequests)
+        .setMaxParallelRequestsPerDownload(maxParallelRequests)
+        .setClock(clock)
+        .build();
+  }
+
+  private void runRequests(
+      AdaptiveParallelismController.Session session, int requestCount, int bytesPerRequest)
+      throws InterruptedException {
+    List<AdaptiveParallelismController.Request> requests = new ArrayList<>();
+    for (int i = 0; i < requestCount; i++) {
+      AdaptiveParallelismController.Request request = session.acquire();
+      request.onBytesTransferred(bytesPerRequest);
+      requests.add(request);
+    }
+    clock.advanceTime(MIN_MEASUREMENT_DURATION_MS);
+    for (int i = 0; i < requestCount; i++) {
+      requests.get(i).complete();
+    }
+  }
+
+  private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+    while (thread.getState() != Thread.State.WAITING) {
+      Thread.sleep(/* millis= */ 1);
+    }
+  }
+
+  private static AdaptiveParallelismController.Request acquireUninterruptibly(
+      AdaptiveParallelismController.Session session) {
+    try {
+      return session.acquire();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import androidx.annotation.Nullable;
 import androidx.media3.common.MimeTypes;
 import androidx.media3.common.StreamKey;
 import androidx.media3.database.DatabaseIOException;
+import androidx.media3.database.DatabaseProvider;
 import androidx.media3.database.StandaloneDatabaseProvider;
 import androidx.media3.database.VersionTable;
 import androidx.media3.test.utils.DownloadBuilder;
@@ -40,6 +41,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import org.junit.After;
 import org.junit.Before;
@@ -114,6 +116,19 @@ public class DefaultDownloadIndexTest {
     assertEqual(readDownload, download);
   }
 
+  @Test
+  public void putDownloads_addsAndReplacesDownloads() throws DatabaseIOException {
+    downloadIndex.putDownload(new DownloadBuilder("id1").setState(Download.STATE_QUEUED).build());
+    Download download1 =
+        new DownloadBuilder("id1").setState(STATE_DOWNLOADING).setBytesDownloaded(100).build();
+    Download download2 = new DownloadBuilder("id2").setState(STATE_STOPPED).build();
+
+    downloadIndex.putDownloads(ImmutableList.of(download1, download2));
+
+    assertEqual(downloadIndex.getDownload("id1"), download1);
+    assertEqual(downloadIndex.getDownload("id2"), download2);
+  }
+
   @Test
   public void releaseAndRecreateDownloadIndex_returnsTheSameDownload() throws DatabaseIOException {
     String id = "id";
@@ -142,6 +157,58 @@ public class DefaultDownloadIndexTest {
     assertThat(readDownload).isNull();
   }
 
+  @Test
+  public void removeDownload_existingId_removesSegmentProgress() throws DatabaseIOException {
+    String id = "id";
+    downloadIndex.putDownload(new DownloadBuilder(id).build());
+    downloadIndex.putSegmentProgress(id, createSegmentProgress(/* completedSegments...= */ 0, 2));
+
+    downloadIndex.removeDownload(id);
+
+    assertThat(downloadIndex.getSegmentProgress(id)).isNull();
+  }
+
+  @Test
+  public void getSegmentProgress_nonExistingId_returnsNull() throws DatabaseIOException {
+    assertThat(downloadIndex.getSegmentProgress("non existing id")).isNull();
+  }
+
+  @Test
+  public void putAndGetSegmentProgress_returnsTheSameSegmentProgress() throws DatabaseIOException {
+    SegmentProgress segmentProgress = createSegmentProgress(/* completedSegments...= */ 0, 2, 99);
+
+    downloadIndex.putSegmentProgress("id", segmentProgress);
+    SegmentProgress readSegmentProgress = downloadIndex.getSegmentProgress("id");
+
+    assertThat(readSegmentProgress).isEqualTo(segmentProgress);
+    assertThat(readSegmentProgress.getCompletedSegmentCount()).isEqualTo(3);
+    assertThat(readSegmentProgress.isSegmentCompleted(99)).isTrue();
+    assertThat(readSegmentProgress.isSegmentCompleted(1)).isFalse();
+  }
+
+  @Test
+  public void putSegmentProgress_existingId_replacesSegmentProgress() throws DatabaseIOException {
+    downloadIndex.putSegmentProgress("id", createSegmentProgress(/* completedSegments...= */ 0));
+    SegmentProgress segmentProgress = createSegmentProgress(/* completedSegments...= */ 0, 1);
+
+    downloadIndex.putSegmentProgress("id", segmentProgress);
+
+    assertThat(downloadIndex.getSegmentProgress("id")).isEqualTo(segmentProgress);
+  }
+
+  @Test
+  public void removeSegmentProgress_keepsDownload() throws DatabaseIOException {
+    String id = "id";
+    Download download = new DownloadBuilder(id).build();
+    downloadIndex.putDownload(download);
+    downloadIndex.putSegmentProgress(id, createSegmentProgress(/* completedSegments...= */ 0));
+
+    downloadIndex.removeSegmentProgress(id);
+
+    assertThat(downloadIndex.getSegmentProgress(id)).isNull();
+    assertEqual(downloadIndex.getDownload(id), download);
+  }
+
   @Test
   public void getDownloads_emptyDownloadIndex_returnsEmptyArray() throws DatabaseIOException {
     assertThat(downloadIndex.getDownloads().getCount()).isEqualTo(0);
@@ -261,6 +328,26 @@ public class DefaultDownloadIndexTest {
     assertEqual(downloadIndex.getDownload("http://www.test.com/video.mp4"), progressiveDownload);
   }
 
+  @Test
+  public void downloadIndex_upgradesFromVersion3_keepsDownloads() throws DatabaseIOException {
+    Download download = new DownloadBuilder("id1").build();
+    downloadIndex.putDownload(download);
+    SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+    VersionTable.setVersion(
+        writableDatabase, VersionTable.FEATURE_OFFLINE, EMPTY_NAME, /* version= */ 3);
+    writableDatabase.execSQL(
+        "DROP TABLE " + DatabaseProvider.TABLE_PREFIX + "DownloadSegmentProgress" + EMPTY_NAME);
+
+    downloadIndex = new DefaultDownloadIndex(databaseProvider);
+
+    assertEqual(downloadIndex.getDownload("id1"), download);
+    SegmentProgress segmentProgress = createSegmentProgress(/* completedSegments...= */ 0);
+    downloadIndex.putSegmentProgress("id1", segmentProgress);
+    assertThat(downloadIndex.getSegmentProgress("id1")).isEqualTo(segmentProgress);
+    assertThat(VersionTable.getVersion(writableDatabase, VersionTable.FEATURE_OFFLINE, EMPTY_NAME))
+        .isEqualTo(DefaultDownloadIndex.TABLE_VERSION);
+  }
+
   @Test
   public void setStopReason_setReasonToNone() throws Exception {
     String id = "id";
@@ -372,6 +459,18 @@ public class DefaultDownloadIndexTest {
     assertEqual(readDownload, download);
   }
 
+  private static SegmentProgress createSegmentProgress(int... completedSegments) {
+    BitSet completedSegmentsBitSet = new BitSet();
+    for (int segmentIndex : completedSegments) {
+      completedSegmentsBitSet.set(segmentIndex);
+    }
+    return new SegmentProgress(
+        /* segmentListHash= */ 1234,
+        /* segmentCount= */ 100,
+        completedSegmentsBitSet,
+        /* completedBytes= */ completedSegments.length * 1000L);
+  }
+
   private static void assertEqual(Download download, Download that) {
     assertThat(download.request).isEqualTo(that.request);
     assertThat(download.state).isEqualTo(that.state);
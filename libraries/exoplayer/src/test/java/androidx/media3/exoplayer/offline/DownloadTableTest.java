@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.offline;
+
+import static androidx.media3.exoplayer.offline.Download.STATE_DOWNLOADING;
+import static androidx.media3.exoplayer.offline.Download.STATE_QUEUED;
+import static androidx.media3.exoplayer.offline.Download.STATE_STOPPED;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.test.utils.DownloadBuilder;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DownloadTable}. */
+@RunWith(AndroidJUnit4.class)
+public class DownloadTableTest {
+
+  @Test
+  public void put_ordersDownloadsByStartTime() {
+    DownloadTable downloadTable = new DownloadTable();
+
+    downloadTable.put(createDownload("c", /* startTimeMs= */ 30, STATE_QUEUED));
+    downloadTable.put(createDownload("a", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("b", /* startTimeMs= */ 20, STATE_QUEUED));
+
+    assertThat(getIds(downloadTable)).containsExactly("a", "b", "c").inOrder();
+  }
+
+  @Test
+  public void put_sameStartTime_ordersDownloadsByWhenTheyWereAdded() {
+    DownloadTable downloadTable = new DownloadTable();
+
+    downloadTable.put(createDownload("b", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("a", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("c", /* startTimeMs= */ 10, STATE_QUEUED));
+
+    assertThat(getIds(downloadTable)).containsExactly("b", "a", "c").inOrder();
+  }
+
+  @Test
+  public void put_existingDownloadWithSameStartTime_replacesDownloadInPlace() {
+    DownloadTable downloadTable = new DownloadTable();
+    downloadTable.put(createDownload("a", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("b", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("c", /* startTimeMs= */ 10, STATE_QUEUED));
+    Download download = createDownload("a", /* startTimeMs= */ 10, STATE_DOWNLOADING);
+
+    int index = downloadTable.put(download);
+
+    assertThat(index).isEqualTo(0);
+    assertThat(downloadTable.get(0)).isSameInstanceAs(download);
+    assertThat(downloadTable.get("a")).isSameInstanceAs(download);
+    assertThat(getIds(downloadTable)).containsExactly("a", "b", "c").inOrder();
+  }
+
+  @Test
+  public void put_existingDownloadWithNewStartTime_movesDownload() {
+    DownloadTable downloadTable = new DownloadTable();
+    downloadTable.put(createDownload("a", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("b", /* startTimeMs= */ 20, STATE_QUEUED));
+    downloadTable.put(createDownload("c", /* startTimeMs= */ 30, STATE_QUEUED));
+
+    int index = downloadTable.put(createDownload("a", /* startTimeMs= */ 30, STATE_QUEUED));
+
+    assertThat(index).isEqualTo(2);
+    assertThat(getIds(downloadTable)).containsExactly("b", "c", "a").inOrder();
+    assertThat(downloadTable.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void remove_removesDownload() {
+    DownloadTable downloadTable = new DownloadTable();
+    downloadTable.put(createDownload("a", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("b", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("c", /* startTimeMs= */ 20, STATE_QUEUED));
+
+    Download removedDownload = downloadTable.remove("b");
+
+    assertThat(removedDownload.request.id).isEqualTo("b");
+    assertThat(downloadTable.get("b")).isNull();
+    assertThat(downloadTable.remove("b")).isNull();
+    assertThat(getIds(downloadTable)).containsExactly("a", "c").inOrder();
+  }
+
+  @Test
+  public void getCount_returnsNumberOfDownloadsInState() {
+    DownloadTable downloadTable = new DownloadTable();
+    downloadTable.put(createDownload("a", /* startTimeMs= */ 10, STATE_QUEUED));
+    downloadTable.put(createDownload("b", /* startTimeMs= */ 20, STATE_QUEUED));
+    downloadTable.put(createDownload("c", /* startTimeMs= */ 30, STATE_STOPPED));
+
+    downloadTable.put(createDownload("a", /* startTimeMs= */ 10, STATE_DOWNLOADING));
+    downloadTable.remove("c");
+
+    assertThat(downloadTable.getCount(STATE_QUEUED)).isEqualTo(1);
+    assertThat(downloadTable.getCount(STATE_DOWNLOADING)).isEqualTo(1);
+    assertThat(downloadTable.getCount(STATE_STOPPED)).isEqualTo(0);
+  }
+
+  @Test
+  public void copyDownloads_isNotAffectedByLaterChanges() {
+    DownloadTable downloadTable = new DownloadTable();
+    downloadTable.put(createDownload("a", /* startTimeMs= */ 10, STATE_QUEUED));
+
+    List<Download> downloads = downloadTable.copyDownloads();
+    downloadTable.put(createDownload("b", /* startTimeMs= */ 20, STATE_QUEUED));
+    downloadTable.clear();
+
+    assertThat(downloads).hasSize(1);
+    assertThat(downloads.get(0).request.id).isEqualTo("a");
+    assertThat(downloadTable.size()).isEqualTo(0);
+    assertThat(downloadTable.getCount(STATE_QUEUED)).isEqualTo(0);
+  }
+
+  private static Download createDownload(String id, long startTimeMs, @Download.State int state) {
+    return new DownloadBuilder(id).setStartTimeMs(startTimeMs).setState(state).build();
+  }
+
+  private static List<String> getIds(DownloadTable downloadTable) {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < downloadTable.size(); i++) {
+      ids.add(downloadTable.get(i).request.id);
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.ByteArrayDataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.primitives.Bytes;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link IcyDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class IcyDataSourceTest {
+
+  private static final int METADATA_INTERVAL_BYTES = 4;
+  // 16 bytes long, so that the metadata length byte is 1.
+  private static final String METADATA = "StreamTitle='x';";
+
+  @Test
+  public void readIntoDirectByteBuffer_stopsAtMetadataAndSplitsItOut() throws Exception {
+    byte[] streamData =
+        Bytes.concat(
+            new byte[] {1, 2, 3, 4},
+            new byte[] {1},
+            Util.getUtf8Bytes(METADATA),
+            new byte[] {5, 6, 7, 8});
+    ByteArrayDataSource upstream = new ByteArrayDataSource(streamData);
+    upstream.open(new DataSpec(Uri.EMPTY));
+    List<String> metadata = new ArrayList<>();
+    IcyDataSource icyDataSource =
+        new IcyDataSource(
+            upstream,
+            METADATA_INTERVAL_BYTES,
+            (ParsableByteArray data) -> metadata.add(data.readString(data.bytesLeft())));
+    ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+
+    int firstBytesRead = icyDataSource.read(buffer);
+    int secondBytesRead = icyDataSource.read(buffer);
+    int thirdBytesRead = icyDataSource.read(buffer);
+
+    assertThat(firstBytesRead).isEqualTo(4);
+    assertThat(secondBytesRead).isEqualTo(4);
+    assertThat(thirdBytesRead).isEqualTo(C.RESULT_END_OF_INPUT);
+    assertThat(metadata).containsExactly(METADATA);
+    assertThat(buffer.position()).isEqualTo(8);
+    assertThat(buffer.limit()).isEqualTo(16);
+    byte[] data = new byte[8];
+    buffer.flip();
+    buffer.get(data);
+    assertThat(data).isEqualTo(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+  }
+}
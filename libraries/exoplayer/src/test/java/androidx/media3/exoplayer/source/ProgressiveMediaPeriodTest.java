@@ -23,6 +23,7 @@ import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Consumer;
 import androidx.media3.datasource.AssetDataSource;
+import androidx.media3.datasource.FileDataSource;
 import androidx.media3.exoplayer.LoadingInfo;
 import androidx.media3.exoplayer.analytics.PlayerId;
 import androidx.media3.exoplayer.drm.DrmSessionEventListener;
@@ -30,25 +31,40 @@ import androidx.media3.exoplayer.drm.DrmSessionManager;
 import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
 import androidx.media3.exoplayer.upstream.DefaultAllocator;
 import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.LoaderThreadFactory;
+import androidx.media3.exoplayer.upstream.VirtualThreadLoaderThreadFactory;
 import androidx.media3.exoplayer.util.ReleasableExecutor;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.mp4.Mp4Extractor;
 import androidx.media3.extractor.png.PngExtractor;
 import androidx.media3.extractor.text.SubtitleParser;
+import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 
 /** Unit test for {@link ProgressiveMediaPeriod}. */
 @RunWith(AndroidJUnit4.class)
 public final class ProgressiveMediaPeriodTest {
 
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Test
   public void prepareUsingBundledExtractors_updatesSourceInfoBeforeOnPreparedCallback()
       throws TimeoutException {
@@ -90,6 +106,93 @@ public final class ProgressiveMediaPeriodTest {
     assertThat(hasReleaseCallbackRun.get()).isTrue();
   }
 
+  @Test
+  public void supplyingLoaderThreadFactory_downloadsOnThreadCreatedByFactory()
+      throws TimeoutException {
+    AtomicBoolean hasThreadRun = new AtomicBoolean(false);
+    List<String> createdThreadNames = Collections.synchronizedList(new ArrayList<>());
+    LoaderThreadFactory loaderThreadFactory =
+        (runnable, threadName) -> {
+          createdThreadNames.add(threadName);
+          return new ExecutionTrackingThread(runnable, hasThreadRun);
+        };
+
+    testExtractorsUpdatesSourceInfoBeforeOnPreparedCallback(
+        new BundledExtractorsAdapter(Mp4Extractor.newFactory(SubtitleParser.Factory.UNSUPPORTED)),
+        C.TIME_UNSET,
+        loaderThreadFactory.newSingleThreadExecutor("ProgressiveMediaPeriodTest"),
+        executor -> ((ExecutorService) executor).shutdown());
+
+    assertThat(createdThreadNames).containsExactly("ProgressiveMediaPeriodTest");
+    assertThat(hasThreadRun.get()).isTrue();
+  }
+
+  @Test
+  public void prepareManyConcurrently_withLoaderThreadFactory_preparesAllMediaPeriods()
+      throws Exception {
+    LoaderThreadFactory loaderThreadFactory =
+        VirtualThreadLoaderThreadFactory.isSupported()
+            ? new VirtualThreadLoaderThreadFactory()
+            : LoaderThreadFactory.DEFAULT;
+    File file = tempFolder.newFile();
+    Files.write(
+        Paths.get(file.getAbsolutePath()),
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "media/mp4/sample.mp4"));
+    int mediaPeriodCount = 200;
+    List<ProgressiveMediaPeriod> mediaPeriods = new ArrayList<>();
+    AtomicInteger preparedCount = new AtomicInteger();
+    AtomicInteger releasedExecutorCount = new AtomicInteger();
+    MediaPeriod.Callback callback =
+        new MediaPeriod.Callback() {
+          @Override
+          public void onPrepared(MediaPeriod mediaPeriod) {
+            preparedCount.incrementAndGet();
+          }
+
+          @Override
+          public void onContinueLoadingRequested(MediaPeriod source) {
+            // Do nothing.
+          }
+        };
+
+    for (int i = 0; i < mediaPeriodCount; i++) {
+      MediaPeriodId mediaPeriodId = new MediaPeriodId(/* periodUid= */ new Object());
+      ProgressiveMediaPeriod mediaPeriod =
+          new ProgressiveMediaPeriod(
+              Uri.fromFile(file),
+              new FileDataSource(),
+              new BundledExtractorsAdapter(
+                  Mp4Extractor.newFactory(SubtitleParser.Factory.UNSUPPORTED)),
+              DrmSessionManager.DRM_UNSUPPORTED,
+              new DrmSessionEventListener.EventDispatcher()
+                  .withParameters(/* windowIndex= */ 0, mediaPeriodId),
+              new DefaultLoadErrorHandlingPolicy(),
+              new MediaSourceEventListener.EventDispatcher()
+                  .withParameters(/* windowIndex= */ 0, mediaPeriodId),
+              (durationUs, isSeekable, isLive) -> {},
+              new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+              /* customCacheKey= */ null,
+              ProgressiveMediaSource.DEFAULT_LOADING_CHECK_INTERVAL_BYTES,
+              /* suppressPrepareError= */ false,
+              /* imageDurationUs= */ C.TIME_UNSET,
+              ReleasableExecutor.from(
+                  loaderThreadFactory.newSingleThreadExecutor("ProgressiveMediaPeriodTest:" + i),
+                  executor -> {
+                    executor.shutdown();
+                    releasedExecutorCount.incrementAndGet();
+                  }));
+      mediaPeriods.add(mediaPeriod);
+      mediaPeriod.prepare(callback, /* positionUs= */ 0);
+    }
+    runMainLooperUntil(() -> preparedCount.get() == mediaPeriodCount);
+    for (ProgressiveMediaPeriod mediaPeriod : mediaPeriods) {
+      mediaPeriod.release();
+    }
+    runMainLooperUntil(() -> releasedExecutorCount.get() == mediaPeriodCount);
+
+    assertThat(preparedCount.get()).isEqualTo(mediaPeriodCount);
+  }
+
   private static void testExtractorsUpdatesSourceInfoBeforeOnPreparedCallback(
       ProgressiveMediaExtractor extractor, long imageDurationUs) throws TimeoutException {
     testExtractorsUpdatesSourceInfoBeforeOnPreparedCallback(
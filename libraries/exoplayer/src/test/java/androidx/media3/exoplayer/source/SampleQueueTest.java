@@ -408,6 +408,18 @@ public final class SampleQueueTest {
     assertAllocationCount(0);
   }
 
+  @Test
+  public void readMultiSamples_withDirectBufferAllocations() {
+    useDirectBufferAllocator();
+    inputBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+    writeTestData();
+    assertAllocationCount(10);
+    assertReadTestData();
+    assertAllocationCount(10);
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
   @Test
   public void readMultiSamplesTwice() {
     writeTestData();
@@ -480,6 +492,20 @@ public final class SampleQueueTest {
     assertThat(inputBuffer.waitingForKeys).isFalse();
   }
 
+  @Test
+  public void readEncryptedSections_withDirectBufferAllocations() {
+    useDirectBufferAllocator();
+    when(mockDrmSession.getState()).thenReturn(DrmSession.STATE_OPENED_WITH_KEYS);
+    writeTestDataWithEncryptedSections();
+
+    int result =
+        sampleQueue.read(
+            formatHolder, inputBuffer, /* readFlags= */ 0, /* loadingFinished= */ false);
+    assertThat(result).isEqualTo(RESULT_FORMAT_READ);
+    assertReadEncryptedSample(/* sampleIndex= */ 0);
+    assertReadEncryptedSample(/* sampleIndex= */ 1);
+  }
+
   @Test
   public void readEncryptedSectionsPopulatesDrmSession() {
     when(mockDrmSession.getState()).thenReturn(DrmSession.STATE_OPENED_WITH_KEYS);
@@ -1951,6 +1977,16 @@ public final class SampleQueueTest {
    *
    * @param count The expected number of allocations.
    */
+  private void useDirectBufferAllocator() {
+    allocator =
+        new DefaultAllocator.Builder()
+            .setTrimOnReset(false)
+            .setIndividualAllocationSize(ALLOCATION_SIZE)
+            .setUseDirectBuffers(true)
+            .build();
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+  }
+
   private void assertAllocationCount(int count) {
     assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE * count);
   }
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  @Test
+  public void allocateAndRelease_updatesTotalBytesAllocated() {
+    DefaultAllocator allocator = new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    int totalBytesAllocatedBeforeRelease = allocator.getTotalBytesAllocated();
+    allocator.release(allocation1);
+
+    assertThat(totalBytesAllocatedBeforeRelease).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    assertThat(allocation2.data).hasLength(ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void allocate_afterRelease_reusesAllocation() {
+    DefaultAllocator allocator = newAllocatorWithThreadLocalCaches(/* initialAllocationCount= */ 0);
+
+    Allocation allocation = allocator.allocate();
+    allocator.release(allocation);
+
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void reset_withThreadLocalCaches_discardsCachedAllocations() {
+    DefaultAllocator allocator = newAllocatorWithThreadLocalCaches(/* initialAllocationCount= */ 0);
+    allocator.setTargetBufferSize(10 * ALLOCATION_SIZE);
+
+    Allocation allocation = allocator.allocate();
+    allocator.release(allocation);
+    allocator.reset();
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(allocator.allocate()).isNotSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void reset_withThreadLocalCaches_keepsInitialAllocations() {
+    DefaultAllocator allocator = newAllocatorWithThreadLocalCaches(/* initialAllocationCount= */ 1);
+    allocator.setTargetBufferSize(10 * ALLOCATION_SIZE);
+
+    Allocation allocation = allocator.allocate();
+    allocator.release(allocation);
+    allocator.reset();
+
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void releaseAllocationNode_withThreadLocalCaches_releasesAllAllocations() {
+    DefaultAllocator allocator = newAllocatorWithThreadLocalCaches(/* initialAllocationCount= */ 0);
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      allocations.add(allocator.allocate());
+    }
+
+    allocator.release(new AllocationListNode(allocations, /* index= */ 0));
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void allocateAndRelease_withThreadLocalCachesOnManyThreads_releasesAllAllocations()
+      throws Exception {
+    DefaultAllocator allocator = newAllocatorWithThreadLocalCaches(/* initialAllocationCount= */ 4);
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(
+          executorService.submit(
+              () -> {
+                List<Allocation> allocations = new ArrayList<>();
+                for (int j = 0; j < 1000; j++) {
+                  allocations.add(allocator.allocate());
+                  if (allocations.size() == 20) {
+                    for (Allocation allocation : allocations) {
+                      allocator.release(allocation);
+                    }
+                    allocations.clear();
+                  }
+                }
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executorService.shutdown();
+    allocator.trim();
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void allocate_withThreadLocalCachesOnNewThread_reusesAllocationCachedByExitedThread()
+      throws Exception {
+    DefaultAllocator allocator = newAllocatorWithThreadLocalCaches(/* initialAllocationCount= */ 0);
+    AtomicReference<Allocation> cachedAllocation = new AtomicReference<>();
+    Thread thread =
+        new Thread(
+            () -> {
+              Allocation allocation = allocator.allocate();
+              allocator.release(allocation);
+              cachedAllocation.set(allocation);
+            });
+    thread.start();
+    thread.join();
+
+    assertThat(allocator.allocate()).isSameInstanceAs(cachedAllocation.get());
+  }
+
+  @Test
+  public void allocate_withDirectBuffers_returnsDirectBufferAllocation() {
+    DefaultAllocator allocator =
+        new DefaultAllocator.Builder()
+            .setIndividualAllocationSize(ALLOCATION_SIZE)
+            .setUseDirectBuffers(true)
+            .build();
+
+    Allocation allocation = allocator.allocate();
+
+    assertThat(allocation.directBuffer.isDirect()).isTrue();
+    assertThat(allocation.directBuffer.capacity() - allocation.offset)
+        .isAtLeast(ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void reset_withDirectBuffers_keepsInitialAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator.Builder()
+            .setIndividualAllocationSize(ALLOCATION_SIZE)
+            .setInitialAllocationCount(2)
+            .setUseDirectBuffers(true)
+            .build();
+    allocator.setTargetBufferSize(10 * ALLOCATION_SIZE);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    Allocation allocation3 = allocator.allocate();
+    allocator.release(allocation1);
+    allocator.release(allocation2);
+    allocator.release(allocation3);
+    allocator.reset();
+
+    assertThat(allocation1.directBuffer).isSameInstanceAs(allocation2.directBuffer);
+    assertThat(allocator.allocate()).isAnyOf(allocation1, allocation2);
+    assertThat(allocator.allocate()).isAnyOf(allocation1, allocation2);
+    assertThat(allocator.allocate()).isNotSameInstanceAs(allocation3);
+  }
+
+  private static DefaultAllocator newAllocatorWithThreadLocalCaches(int initialAllocationCount) {
+    return new DefaultAllocator.Builder()
+        .setIndividualAllocationSize(ALLOCATION_SIZE)
+        .setInitialAllocationCount(initialAllocationCount)
+        .setUseThreadLocalCaches(true)
+        .build();
+  }
+
+  private static final class AllocationListNode implements Allocator.AllocationNode {
+
+    private final List<Allocation> allocations;
+    private final int index;
+
+    public AllocationListNode(List<Allocation> allocations, int index) {
+      this.allocations = allocations;
+      this.index = index;
+    }
+
+    @Override
+    public Allocation getAllocation() {
+      return allocations.get(index);
+    }
+
+    @Override
+    @Nullable
+    public Allocator.AllocationNode next() {
+      return index + 1 < allocations.size() ? new AllocationListNode(allocations, index + 1) : null;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.exoplayer.util.ReleasableExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LoaderExecutorPool}. */
+@RunWith(JUnit4.class)
+public final class LoaderExecutorPoolTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  private LoaderExecutorPool loaderExecutorPool;
+
+  @Before
+  public void setUp() {
+    loaderExecutorPool =
+        new LoaderExecutorPool(/* maxManifestThreadCount= */ 1, /* maxMediaThreadCount= */ 1);
+  }
+
+  @After
+  public void tearDown() {
+    loaderExecutorPool.release();
+  }
+
+  @Test
+  public void createExecutor_runsTasksInOrder() throws InterruptedException {
+    loaderExecutorPool.release();
+    loaderExecutorPool =
+        new LoaderExecutorPool(/* maxManifestThreadCount= */ 4, /* maxMediaThreadCount= */ 4);
+    ReleasableExecutor executor = loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA);
+    List<Integer> executedTasks = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch finished = new CountDownLatch(1);
+
+    for (int i = 0; i < 100; i++) {
+      int task = i;
+      executor.execute(() -> executedTasks.add(task));
+    }
+    executor.execute(finished::countDown);
+
+    assertThat(finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(executedTasks).hasSize(100);
+    for (int i = 0; i < 100; i++) {
+      assertThat(executedTasks.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void createExecutor_withBusyMediaLane_runsManifestTasks() throws InterruptedException {
+    ReleasableExecutor mediaExecutor =
+        loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA);
+    ReleasableExecutor manifestExecutor =
+        loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MANIFEST);
+    CountDownLatch blockMediaLane = new CountDownLatch(1);
+    CountDownLatch manifestTaskExecuted = new CountDownLatch(1);
+    mediaExecutor.execute(() -> awaitUninterruptibly(blockMediaLane));
+
+    manifestExecutor.execute(manifestTaskExecuted::countDown);
+
+    assertThat(manifestTaskExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    blockMediaLane.countDown();
+  }
+
+  @Test
+  public void createExecutor_withBusyLane_queuesTasksOfOtherExecutors()
+      throws InterruptedException {
+    ReleasableExecutor executor1 = loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA);
+    ReleasableExecutor executor2 = loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA);
+    CountDownLatch blockLane = new CountDownLatch(1);
+    CountDownLatch task2Executed = new CountDownLatch(1);
+    executor1.execute(() -> awaitUninterruptibly(blockLane));
+
+    executor2.execute(task2Executed::countDown);
+
+    assertThat(task2Executed.await(/* timeout= */ 100, TimeUnit.MILLISECONDS)).isFalse();
+    blockLane.countDown();
+    assertThat(task2Executed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+  }
+
+  @Test
+  public void createExecutor_release_doesNotShutDownLane() throws InterruptedException {
+    ReleasableExecutor executor1 = loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA);
+    ReleasableExecutor executor2 = loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA);
+    CountDownLatch taskExecuted = new CountDownLatch(1);
+
+    executor1.release();
+    executor2.execute(taskExecuted::countDown);
+
+    assertThat(taskExecuted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    while (true) {
+      try {
+        latch.await();
+        return;
+      } catch (InterruptedException e) {
+        // Keep waiting.
+      }
+    }
+  }
+}
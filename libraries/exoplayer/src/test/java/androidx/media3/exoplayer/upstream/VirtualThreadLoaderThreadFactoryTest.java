@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link VirtualThreadLoaderThreadFactory}.
+ *
+ * <p>Most of the tests only run on runtimes that support virtual threads (Java 21 and later).
+ */
+@RunWith(JUnit4.class)
+public final class VirtualThreadLoaderThreadFactoryTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Test
+  public void newThread_returnsUnstartedVirtualThreadWithName() throws Exception {
+    assumeTrue(VirtualThreadLoaderThreadFactory.isSupported());
+    AtomicBoolean hasRun = new AtomicBoolean();
+
+    Thread thread =
+        new VirtualThreadLoaderThreadFactory().newThread(() -> hasRun.set(true), "name");
+
+    assertThat(thread.getName()).isEqualTo("name");
+    assertThat(thread.getState()).isEqualTo(Thread.State.NEW);
+    assertThat(isVirtual(thread)).isTrue();
+    thread.start();
+    thread.join(TIMEOUT_MS);
+    assertThat(hasRun.get()).isTrue();
+  }
+
+  @Test
+  public void newSingleThreadExecutor_runsTasksOnVirtualThread() throws Exception {
+    assumeTrue(VirtualThreadLoaderThreadFactory.isSupported());
+    ExecutorService executor =
+        new VirtualThreadLoaderThreadFactory().newSingleThreadExecutor("name");
+    AtomicReference<Thread> taskThread = new AtomicReference<>();
+    CountDownLatch taskRun = new CountDownLatch(1);
+
+    executor.execute(
+        () -> {
+          taskThread.set(Thread.currentThread());
+          taskRun.countDown();
+        });
+    assertThat(taskRun.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    executor.shutdown();
+
+    assertThat(taskThread.get().getName()).isEqualTo("name");
+    assertThat(isVirtual(taskThread.get())).isTrue();
+  }
+
+  @Test
+  public void constructor_withoutVirtualThreadSupport_throws() {
+    assumeFalse(VirtualThreadLoaderThreadFactory.isSupported());
+
+    assertThrows(UnsupportedOperationException.class, VirtualThreadLoaderThreadFactory::new);
+  }
+
+  private static boolean isVirtual(Thread thread) throws Exception {
+    return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+  }
+}
@@ -58,6 +58,8 @@ import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoaderErrorThrower;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -91,6 +93,7 @@ import java.util.regex.Pattern;
   private final DashChunkSource.Factory chunkSourceFactory;
   @Nullable private final TransferListener transferListener;
   @Nullable private final CmcdConfiguration cmcdConfiguration;
+  @Nullable private final LoaderExecutorPool loaderExecutorPool;
   private final DrmSessionManager drmSessionManager;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final BaseUrlExclusionList baseUrlExclusionList;
@@ -125,6 +128,7 @@ import java.util.regex.Pattern;
       DashChunkSource.Factory chunkSourceFactory,
       @Nullable TransferListener transferListener,
       @Nullable CmcdConfiguration cmcdConfiguration,
+      @Nullable LoaderExecutorPool loaderExecutorPool,
       DrmSessionManager drmSessionManager,
       DrmSessionEventListener.EventDispatcher drmEventDispatcher,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
@@ -142,6 +146,7 @@ import java.util.regex.Pattern;
     this.chunkSourceFactory = chunkSourceFactory;
     this.transferListener = transferListener;
     this.cmcdConfiguration = cmcdConfiguration;
+    this.loaderExecutorPool = loaderExecutorPool;
     this.drmSessionManager = drmSessionManager;
     this.drmEventDispatcher = drmEventDispatcher;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
@@ -824,6 +829,11 @@ import java.util.regex.Pattern;
             transferListener,
             playerId,
             cmcdConfiguration);
+    @Nullable
+    ReleasableExecutor downloadExecutor =
+        loaderExecutorPool != null
+            ? loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA)
+            : null;
     ChunkSampleStream<DashChunkSource> stream =
         new ChunkSampleStream<>(
             trackGroupInfo.trackType,
@@ -838,7 +848,7 @@ import java.util.regex.Pattern;
             loadErrorHandlingPolicy,
             mediaSourceEventDispatcher,
             canReportInitialDiscontinuity,
-            /* downloadExecutor= */ null);
+            downloadExecutor);
     synchronized (this) {
       // The map is also accessed on the loading thread so synchronize access.
       trackEmsgHandlerBySampleStream.put(stream, trackPlayerEmsgHandler);
@@ -48,6 +48,7 @@ import androidx.media3.exoplayer.dash.PlayerEmsgHandler.PlayerEmsgCallback;
 import androidx.media3.exoplayer.dash.manifest.AdaptationSet;
 import androidx.media3.exoplayer.dash.manifest.DashManifest;
 import androidx.media3.exoplayer.dash.manifest.DashManifestParser;
+import androidx.media3.exoplayer.dash.manifest.DashManifestPatcher;
 import androidx.media3.exoplayer.dash.manifest.Period;
 import androidx.media3.exoplayer.dash.manifest.Representation;
 import androidx.media3.exoplayer.dash.manifest.UtcTimingElement;
@@ -73,6 +74,7 @@ import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import androidx.media3.exoplayer.upstream.Loader;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import androidx.media3.exoplayer.upstream.Loader.LoadErrorAction;
 import androidx.media3.exoplayer.upstream.LoaderErrorThrower;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
@@ -81,6 +83,7 @@ import androidx.media3.extractor.text.SubtitleParser;
 import com.google.common.math.LongMath;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -110,6 +113,7 @@ public final class DashMediaSource extends BaseMediaSource {
     @Nullable private final DataSource.Factory manifestDataSourceFactory;
 
     private CmcdConfiguration.Factory cmcdConfigurationFactory;
+    @Nullable private LoaderExecutorPool loaderExecutorPool;
     private DrmSessionManagerProvider drmSessionManagerProvider;
     private CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
@@ -173,6 +177,25 @@ public final class DashMediaSource extends BaseMediaSource {
       return this;
     }
 
+    /**
+     * Sets the {@link LoaderExecutorPool} in which the manifest and media chunk loads of the
+     * created media sources run. Manifest and timing loads run in the {@link
+     * LoaderExecutorPool#LANE_MANIFEST manifest lane}, and media chunk loads run in the {@link
+     * LoaderExecutorPool#LANE_MEDIA media lane}.
+     *
+     * <p>By default, each media source loads its manifest on a thread of its own, and each of its
+     * tracks loads media chunks on a thread of its own.
+     *
+     * @param loaderExecutorPool The {@link LoaderExecutorPool}.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    @Override
+    public Factory setLoaderExecutorPool(LoaderExecutorPool loaderExecutorPool) {
+      this.loaderExecutorPool = checkNotNull(loaderExecutorPool);
+      return this;
+    }
+
     @CanIgnoreReturnValue
     @Override
     public Factory setDrmSessionManagerProvider(
@@ -331,6 +354,7 @@ public final class DashMediaSource extends BaseMediaSource {
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
           cmcdConfiguration,
+          loaderExecutorPool,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
           fallbackTargetLiveOffsetMs,
@@ -369,6 +393,7 @@ public final class DashMediaSource extends BaseMediaSource {
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
           cmcdConfiguration,
+          loaderExecutorPool,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
           fallbackTargetLiveOffsetMs,
@@ -410,6 +435,7 @@ public final class DashMediaSource extends BaseMediaSource {
   private final DashChunkSource.Factory chunkSourceFactory;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
   @Nullable private final CmcdConfiguration cmcdConfiguration;
+  @Nullable private final LoaderExecutorPool loaderExecutorPool;
   private final DrmSessionManager drmSessionManager;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final BaseUrlExclusionList baseUrlExclusionList;
@@ -436,6 +462,9 @@ public final class DashMediaSource extends BaseMediaSource {
   private Uri manifestUri;
   private Uri initialManifestUri;
   private DashManifest manifest;
+  @Nullable private DashManifestPatcher manifestPatcher;
+  @Nullable private Uri manifestPatcherUri;
+  @Nullable private ManifestLoadParser loadingManifestParser;
   private boolean manifestLoadPending;
   private long manifestLoadStartTimestampMs;
   private long manifestLoadEndTimestampMs;
@@ -457,6 +486,7 @@ public final class DashMediaSource extends BaseMediaSource {
       DashChunkSource.Factory chunkSourceFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       @Nullable CmcdConfiguration cmcdConfiguration,
+      @Nullable LoaderExecutorPool loaderExecutorPool,
       DrmSessionManager drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       long fallbackTargetLiveOffsetMs,
@@ -470,6 +500,7 @@ public final class DashMediaSource extends BaseMediaSource {
     this.manifestParser = manifestParser;
     this.chunkSourceFactory = chunkSourceFactory;
     this.cmcdConfiguration = cmcdConfiguration;
+    this.loaderExecutorPool = loaderExecutorPool;
     this.drmSessionManager = drmSessionManager;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.fallbackTargetLiveOffsetMs = fallbackTargetLiveOffsetMs;
@@ -543,7 +574,10 @@ public final class DashMediaSource extends BaseMediaSource {
       processManifest(false);
     } else {
       dataSource = manifestDataSourceFactory.createDataSource();
-      loader = new Loader("DashMediaSource");
+      loader =
+          loaderExecutorPool != null
+              ? loaderExecutorPool.createLoader(LoaderExecutorPool.LANE_MANIFEST)
+              : new Loader("DashMediaSource");
       handler = Util.createHandlerForCurrentLooper();
       startLoadingManifest();
     }
@@ -568,6 +602,7 @@ public final class DashMediaSource extends BaseMediaSource {
             chunkSourceFactory,
             mediaTransferListener,
             cmcdConfiguration,
+            loaderExecutorPool,
             drmSessionManager,
             drmEventDispatcher,
             loadErrorHandlingPolicy,
@@ -600,6 +635,9 @@ public final class DashMediaSource extends BaseMediaSource {
     manifestLoadStartTimestampMs = 0;
     manifestLoadEndTimestampMs = 0;
     manifestUri = initialManifestUri;
+    manifestPatcher = null;
+    manifestPatcherUri = null;
+    loadingManifestParser = null;
     manifestFatalError = null;
     if (handler != null) {
       handler.removeCallbacksAndMessages(null);
@@ -688,6 +726,8 @@ public final class DashMediaSource extends BaseMediaSource {
     }
 
     manifest = newManifest;
+    manifestPatcher =
+        loadingManifestParser != null ? loadingManifestParser.getManifestPatcher() : null;
     manifestLoadPending &= manifest.dynamic;
     manifestLoadStartTimestampMs = elapsedRealtimeMs - loadDurationMs;
     manifestLoadEndTimestampMs = elapsedRealtimeMs;
@@ -697,14 +737,22 @@ public final class DashMediaSource extends BaseMediaSource {
       // Checks whether replaceManifestUri(Uri) was called to manually replace the URI between the
       // start and end of this load. If it was then isSameUriInstance evaluates to false, and we
       // prefer the manual replacement to one derived from the previous request.
+      boolean isPatch = loadingManifestParser != null && loadingManifestParser.isPatch();
       @SuppressWarnings("ReferenceEquality")
-      boolean isSameUriInstance = loadable.dataSpec.uri == manifestUri;
+      boolean isSameUriInstance =
+          (isPatch ? checkNotNull(loadingManifestParser).manifestUri : loadable.dataSpec.uri)
+              == manifestUri;
       if (isSameUriInstance) {
         // Replace the manifest URI with one specified by a manifest Location element (if present),
         // or with the final (possibly redirected) URI. This follows the recommendation in
         // DASH-IF-IOP 4.3, section 3.2.15.3. See: https://dashif.org/docs/DASH-IF-IOP-v4.3.pdf.
-        manifestUri = manifest.location != null ? manifest.location : loadable.getUri();
+        if (manifest.location != null) {
+          manifestUri = manifest.location;
+        } else if (!isPatch) {
+          manifestUri = loadable.getUri();
+        }
       }
+      manifestPatcherUri = isSameUriInstance ? manifestUri : null;
     }
 
     if (manifest.dynamic && elapsedRealtimeOffsetMs == C.TIME_UNSET) {
@@ -734,6 +782,16 @@ public final class DashMediaSource extends BaseMediaSource {
             elapsedRealtimeMs,
             loadDurationMs,
             loadable.bytesLoaded());
+    if (loadingManifestParser != null && loadingManifestParser.isPatch()) {
+      // Fall back to loading the whole manifest, rather than retrying the patch. The manifest is
+      // still loaded, so the failed patch load isn't reported as canceled.
+      Log.w(TAG, "Failed to load manifest patch", error);
+      manifestEventDispatcher.loadError(
+          loadEventInfo, loadable.type, error, /* wasCanceled= */ false);
+      loadErrorHandlingPolicy.onLoadTaskConcluded(loadable.loadTaskId);
+      scheduleManifestRefresh(/* delayUntilNextLoadMs= */ 0);
+      return Loader.DONT_RETRY;
+    }
     MediaLoadData mediaLoadData = new MediaLoadData(loadable.type);
     LoadErrorInfo loadErrorInfo =
         new LoadErrorInfo(loadEventInfo, mediaLoadData, error, errorCount);
@@ -1080,12 +1138,35 @@ public final class DashMediaSource extends BaseMediaSource {
       manifestUri = this.manifestUri;
     }
     manifestLoadPending = false;
+    // The patcher is modified by the load, so it can only be used once.
+    @Nullable
+    DashManifestPatcher manifestPatcher =
+        canLoadManifestPatch(manifestUri) ? this.manifestPatcher : null;
+    this.manifestPatcher = null;
+    loadingManifestParser =
+        new ManifestLoadParser(manifestParser, manifestUri, manifest, manifestPatcher);
+    Uri loadUri = manifestPatcher != null ? checkNotNull(manifest.patchLocation) : manifestUri;
     startLoading(
-        new ParsingLoadable<>(dataSource, manifestUri, C.DATA_TYPE_MANIFEST, manifestParser),
+        new ParsingLoadable<>(dataSource, loadUri, C.DATA_TYPE_MANIFEST, loadingManifestParser),
         manifestCallback,
         loadErrorHandlingPolicy.getMinimumLoadableRetryCount(C.DATA_TYPE_MANIFEST));
   }
 
+  @SuppressWarnings("ReferenceEquality") // Detects calls to replaceManifestUri(Uri).
+  private boolean canLoadManifestPatch(Uri manifestUri) {
+    if (manifestPatcher == null
+        || manifest == null
+        || manifest.patchLocation == null
+        || manifestUri != manifestPatcherUri) {
+      return false;
+    }
+    // The patch location can be used until its time to live has elapsed since the publish time.
+    return manifest.patchLocationTtlMs == C.TIME_UNSET
+        || manifest.publishTimeMs == C.TIME_UNSET
+        || Util.getNowUnixTimeMs(elapsedRealtimeOffsetMs)
+            < manifest.publishTimeMs + manifest.patchLocationTtlMs;
+  }
+
   private long getManifestLoadRetryDelayMillis() {
     return min((staleManifestReloadAttempt - 1) * 1000, 5000);
   }
@@ -1443,6 +1524,96 @@ public final class DashMediaSource extends BaseMediaSource {
     }
   }
 
+  /**
+   * Parses a loaded manifest, or applies a loaded MPD patch to the previous manifest and parses the
+   * result, and keeps the XML document of the manifest if it can be updated with MPD patches.
+   *
+   * <p>Keeping the document requires buffering the loaded manifest, so a manifest is only kept if
+   * the previous manifest declared a patch location. When a manifest first declares a patch
+   * location, the next refresh therefore still loads the whole manifest.
+   */
+  private static final class ManifestLoadParser implements ParsingLoadable.Parser<DashManifest> {
+
+    private final ParsingLoadable.Parser<? extends DashManifest> manifestParser;
+    private final Uri manifestUri;
+    @Nullable private final DashManifest previousManifest;
+    @Nullable private final DashManifestPatcher patcher;
+
+    @Nullable private volatile DashManifestPatcher manifestPatcher;
+
+    /**
+     * Creates an instance.
+     *
+     * @param manifestParser The parser for the manifest.
+     * @param manifestUri The {@link Uri} of the manifest.
+     * @param previousManifest The previous version of the manifest, or null.
+     * @param patcher The patcher holding the previous version of the manifest, if an MPD patch is
+     *     loaded, or null if the whole manifest is loaded.
+     */
+    public ManifestLoadParser(
+        ParsingLoadable.Parser<? extends DashManifest> manifestParser,
+        Uri manifestUri,
+        @Nullable DashManifest previousManifest,
+        @Nullable DashManifestPatcher patcher) {
+      this.manifestParser = manifestParser;
+      this.manifestUri = manifestUri;
+      this.previousManifest = previousManifest;
+      this.patcher = patcher;
+    }
+
+    /** Returns whether an MPD patch is loaded. */
+    public boolean isPatch() {
+      return patcher != null;
+    }
+
+    /**
+     * Returns a patcher holding the parsed manifest, or null if the manifest can't be updated with
+     * MPD patches.
+     */
+    @Nullable
+    public DashManifestPatcher getManifestPatcher() {
+      return manifestPatcher;
+    }
+
+    @Override
+    public DashManifest parse(Uri uri, InputStream inputStream) throws IOException {
+      if (patcher == null && (previousManifest == null || previousManifest.patchLocation == null)) {
+        // Parse the manifest without buffering it.
+        return parseManifest(uri, inputStream);
+      }
+      byte[] manifestData;
+      Uri documentUri;
+      if (patcher != null) {
+        patcher.applyPatch(inputStream);
+        manifestData = patcher.getMpdData();
+        documentUri = manifestUri;
+      } else {
+        manifestData = Util.toByteArray(inputStream);
+        documentUri = uri;
+      }
+      DashManifest manifest = parseManifest(documentUri, new ByteArrayInputStream(manifestData));
+      if (manifest.patchLocation != null) {
+        if (patcher != null) {
+          manifestPatcher = patcher;
+        } else {
+          try {
+            manifestPatcher = new DashManifestPatcher(new ByteArrayInputStream(manifestData));
+          } catch (IOException e) {
+            // Load the whole manifest when it's refreshed.
+            Log.w(TAG, "Manifest can't be updated with MPD patches", e);
+          }
+        }
+      }
+      return manifest;
+    }
+
+    private DashManifest parseManifest(Uri uri, InputStream inputStream) throws IOException {
+      return manifestParser instanceof DashManifestParser
+          ? ((DashManifestParser) manifestParser).parse(uri, inputStream, previousManifest)
+          : manifestParser.parse(uri, inputStream);
+    }
+  }
+
   private static final class XsDateTimeParser implements ParsingLoadable.Parser<Long> {
 
     @Override
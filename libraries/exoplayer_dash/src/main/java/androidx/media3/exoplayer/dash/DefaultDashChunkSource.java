@@ -1021,6 +1021,11 @@ public class DefaultDashChunkSource implements DashChunkSource {
             oldIndex);
       }
 
+      if (newRepresentation == representation && newPeriodDurationUs == periodDurationUs) {
+        // The manifest parser reused the unchanged representation.
+        return this;
+      }
+
       if (!oldIndex.isExplicit()) {
         // Segment numbers cannot shift if the index isn't explicit.
         return new RepresentationHolder(
@@ -86,11 +86,61 @@ public class DashManifest implements FilterableManifest<DashManifest> {
   /** The location of this manifest, or null if not present. */
   @Nullable public final Uri location;
 
+  /**
+   * The location of the MPD patch documents that update this manifest, as defined by ISO/IEC
+   * 23009-1:2022, or null if not present.
+   */
+  @Nullable public final Uri patchLocation;
+
+  /**
+   * The time after {@link #publishTimeMs} for which {@link #patchLocation} can be used, in
+   * milliseconds, or {@link C#TIME_UNSET} if not present.
+   */
+  public final long patchLocationTtlMs;
+
   /** The {@link ProgramInformation}, or null if not present. */
   @Nullable public final ProgramInformation programInformation;
 
   private final List<Period> periods;
 
+  /**
+   * @deprecated Use {@link #DashManifest(long, long, long, boolean, long, long, long, long,
+   *     ProgramInformation, UtcTimingElement, ServiceDescriptionElement, Uri, Uri, long, List)}
+   *     instead.
+   */
+  @Deprecated
+  public DashManifest(
+      long availabilityStartTimeMs,
+      long durationMs,
+      long minBufferTimeMs,
+      boolean dynamic,
+      long minUpdatePeriodMs,
+      long timeShiftBufferDepthMs,
+      long suggestedPresentationDelayMs,
+      long publishTimeMs,
+      @Nullable ProgramInformation programInformation,
+      @Nullable UtcTimingElement utcTiming,
+      @Nullable ServiceDescriptionElement serviceDescription,
+      @Nullable Uri location,
+      List<Period> periods) {
+    this(
+        availabilityStartTimeMs,
+        durationMs,
+        minBufferTimeMs,
+        dynamic,
+        minUpdatePeriodMs,
+        timeShiftBufferDepthMs,
+        suggestedPresentationDelayMs,
+        publishTimeMs,
+        programInformation,
+        utcTiming,
+        serviceDescription,
+        location,
+        /* patchLocation= */ null,
+        /* patchLocationTtlMs= */ C.TIME_UNSET,
+        periods);
+  }
+
   public DashManifest(
       long availabilityStartTimeMs,
       long durationMs,
@@ -104,6 +154,8 @@ public class DashManifest implements FilterableManifest<DashManifest> {
       @Nullable UtcTimingElement utcTiming,
       @Nullable ServiceDescriptionElement serviceDescription,
       @Nullable Uri location,
+      @Nullable Uri patchLocation,
+      long patchLocationTtlMs,
       List<Period> periods) {
     this.availabilityStartTimeMs = availabilityStartTimeMs;
     this.durationMs = durationMs;
@@ -116,6 +168,8 @@ public class DashManifest implements FilterableManifest<DashManifest> {
     this.programInformation = programInformation;
     this.utcTiming = utcTiming;
     this.location = location;
+    this.patchLocation = patchLocation;
+    this.patchLocationTtlMs = patchLocationTtlMs;
     this.serviceDescription = serviceDescription;
     this.periods = periods == null ? Collections.emptyList() : periods;
   }
@@ -177,6 +231,8 @@ public class DashManifest implements FilterableManifest<DashManifest> {
         utcTiming,
         serviceDescription,
         location,
+        patchLocation,
+        patchLocationTtlMs,
         copyPeriods);
   }
 
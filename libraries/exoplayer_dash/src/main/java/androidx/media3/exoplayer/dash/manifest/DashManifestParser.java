@@ -49,6 +49,7 @@ import androidx.media3.extractor.mp4.PsshAtomUtil;
 import com.google.common.base.Ascii;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -88,6 +89,9 @@ public class DashManifestParser extends DefaultHandler
       };
 
   private final XmlPullParserFactory xmlParserFactory;
+  private final boolean overridesBuildSegmentTimelineElement;
+
+  private boolean reuseUnchangedElements;
 
   public DashManifestParser() {
     try {
@@ -95,6 +99,26 @@ public class DashManifestParser extends DefaultHandler
     } catch (XmlPullParserException e) {
       throw new RuntimeException("Couldn't create XmlPullParserFactory instance", e);
     }
+    overridesBuildSegmentTimelineElement = overridesBuildSegmentTimelineElement(getClass());
+  }
+
+  /**
+   * Sets whether {@link #parse(Uri, InputStream, DashManifest)} replaces the {@link Period}, {@link
+   * AdaptationSet} and {@link Representation} instances of a refreshed manifest that are unchanged
+   * from the previous manifest with the previous instances. The default value is {@code false}.
+   *
+   * <p>Finding the unchanged elements requires comparing each element of the refreshed manifest to
+   * the previous one, which only pays off for live manifests that repeat many unchanged periods.
+   *
+   * <p>This method is experimental and will be renamed or removed in a future release.
+   *
+   * @param reuseUnchangedElements Whether to reuse unchanged elements of the previous manifest.
+   * @return This parser, for convenience.
+   */
+  @CanIgnoreReturnValue
+  public DashManifestParser experimentalSetReuseUnchangedElements(boolean reuseUnchangedElements) {
+    this.reuseUnchangedElements = reuseUnchangedElements;
+    return this;
   }
 
   // MPD parsing.
@@ -116,6 +140,56 @@ public class DashManifestParser extends DefaultHandler
     }
   }
 
+  /**
+   * Parses a refreshed version of a manifest. If {@link #experimentalSetReuseUnchangedElements}
+   * is enabled, the {@link Period}, {@link AdaptationSet} and {@link Representation} instances of
+   * the previous version that are unchanged are reused. Otherwise this is equivalent to {@link
+   * #parse(Uri, InputStream)}.
+   *
+   * <p>Reusing unchanged instances means that a live manifest whose earlier periods don't change
+   * only holds one copy of those periods, and allows components that hold on to manifest elements
+   * to detect that an element is unchanged by comparing references.
+   *
+   * @param uri The {@link Uri} of the manifest.
+   * @param inputStream An {@link InputStream} from which the manifest data can be read.
+   * @param previousManifest The previous version of the manifest, or null if there isn't one.
+   * @return The parsed manifest.
+   * @throws IOException If an error occurs reading or parsing the data.
+   */
+  public DashManifest parse(
+      Uri uri, InputStream inputStream, @Nullable DashManifest previousManifest)
+      throws IOException {
+    DashManifest manifest = parse(uri, inputStream);
+    if (!reuseUnchangedElements || previousManifest == null) {
+      return manifest;
+    }
+    List<Period> periods = new ArrayList<>(manifest.getPeriodCount());
+    for (int i = 0; i < manifest.getPeriodCount(); i++) {
+      periods.add(manifest.getPeriod(i));
+    }
+    List<Period> reusedPeriods =
+        ManifestElementReuser.reuseUnchangedElements(periods, previousManifest);
+    if (reusedPeriods == periods) {
+      return manifest;
+    }
+    return buildMediaPresentationDescription(
+        manifest.availabilityStartTimeMs,
+        manifest.durationMs,
+        manifest.minBufferTimeMs,
+        manifest.dynamic,
+        manifest.minUpdatePeriodMs,
+        manifest.timeShiftBufferDepthMs,
+        manifest.suggestedPresentationDelayMs,
+        manifest.publishTimeMs,
+        manifest.programInformation,
+        manifest.utcTiming,
+        manifest.serviceDescription,
+        manifest.location,
+        manifest.patchLocation,
+        manifest.patchLocationTtlMs,
+        reusedPeriods);
+  }
+
   protected DashManifest parseMediaPresentationDescription(XmlPullParser xpp, Uri documentBaseUri)
       throws XmlPullParserException, IOException {
     boolean dvbProfileDeclared =
@@ -135,6 +209,8 @@ public class DashManifestParser extends DefaultHandler
     ProgramInformation programInformation = null;
     UtcTimingElement utcTiming = null;
     Uri location = null;
+    Uri patchLocation = null;
+    long patchLocationTtlMs = C.TIME_UNSET;
     ServiceDescriptionElement serviceDescription = null;
     long baseUrlAvailabilityTimeOffsetUs = dynamic ? 0 : C.TIME_UNSET;
     BaseUrl documentBaseUrl =
@@ -165,6 +241,9 @@ public class DashManifestParser extends DefaultHandler
         utcTiming = parseUtcTiming(xpp);
       } else if (XmlPullParserUtil.isStartTag(xpp, "Location")) {
         location = UriUtil.resolveToUri(documentBaseUri.toString(), xpp.nextText());
+      } else if (XmlPullParserUtil.isStartTag(xpp, "PatchLocation")) {
+        patchLocationTtlMs = parsePatchLocationTtlMs(xpp);
+        patchLocation = UriUtil.resolveToUri(documentBaseUri.toString(), xpp.nextText());
       } else if (XmlPullParserUtil.isStartTag(xpp, "ServiceDescription")) {
         serviceDescription = parseServiceDescription(xpp);
       } else if (XmlPullParserUtil.isStartTag(xpp, "Period") && !seenEarlyAccessPeriod) {
@@ -225,9 +304,81 @@ public class DashManifestParser extends DefaultHandler
         utcTiming,
         serviceDescription,
         location,
+        patchLocation,
+        patchLocationTtlMs,
         periods);
   }
 
+  /**
+   * Builds a {@link DashManifest}.
+   *
+   * <p>The default implementation calls the deprecated overload without the patch location, so
+   * that subclasses that override it keep working, and adds the patch location to the manifest it
+   * returns if it's a {@link DashManifest} rather than a subclass.
+   */
+  protected DashManifest buildMediaPresentationDescription(
+      long availabilityStartTime,
+      long durationMs,
+      long minBufferTimeMs,
+      boolean dynamic,
+      long minUpdateTimeMs,
+      long timeShiftBufferDepthMs,
+      long suggestedPresentationDelayMs,
+      long publishTimeMs,
+      @Nullable ProgramInformation programInformation,
+      @Nullable UtcTimingElement utcTiming,
+      @Nullable ServiceDescriptionElement serviceDescription,
+      @Nullable Uri location,
+      @Nullable Uri patchLocation,
+      long patchLocationTtlMs,
+      List<Period> periods) {
+    @SuppressWarnings("deprecation") // Calling the deprecated overload in case it's overridden.
+    DashManifest manifest =
+        buildMediaPresentationDescription(
+            availabilityStartTime,
+            durationMs,
+            minBufferTimeMs,
+            dynamic,
+            minUpdateTimeMs,
+            timeShiftBufferDepthMs,
+            suggestedPresentationDelayMs,
+            publishTimeMs,
+            programInformation,
+            utcTiming,
+            serviceDescription,
+            location,
+            periods);
+    if (patchLocation == null || manifest.getClass() != DashManifest.class) {
+      return manifest;
+    }
+    List<Period> manifestPeriods = new ArrayList<>(manifest.getPeriodCount());
+    for (int i = 0; i < manifest.getPeriodCount(); i++) {
+      manifestPeriods.add(manifest.getPeriod(i));
+    }
+    return new DashManifest(
+        manifest.availabilityStartTimeMs,
+        manifest.durationMs,
+        manifest.minBufferTimeMs,
+        manifest.dynamic,
+        manifest.minUpdatePeriodMs,
+        manifest.timeShiftBufferDepthMs,
+        manifest.suggestedPresentationDelayMs,
+        manifest.publishTimeMs,
+        manifest.programInformation,
+        manifest.utcTiming,
+        manifest.serviceDescription,
+        manifest.location,
+        patchLocation,
+        patchLocationTtlMs,
+        manifestPeriods);
+  }
+
+  /**
+   * @deprecated Override {@link #buildMediaPresentationDescription(long, long, long, boolean, long,
+   *     long, long, long, ProgramInformation, UtcTimingElement, ServiceDescriptionElement, Uri,
+   *     Uri, long, List)} instead.
+   */
+  @Deprecated
   protected DashManifest buildMediaPresentationDescription(
       long availabilityStartTime,
       long durationMs,
@@ -255,6 +406,8 @@ public class DashManifestParser extends DefaultHandler
         utcTiming,
         serviceDescription,
         location,
+        /* patchLocation= */ null,
+        /* patchLocationTtlMs= */ C.TIME_UNSET,
         periods);
   }
 
@@ -1273,7 +1426,7 @@ public class DashManifestParser extends DefaultHandler
   protected List<SegmentTimelineElement> parseSegmentTimeline(
       XmlPullParser xpp, long timescale, long periodDurationMs)
       throws XmlPullParserException, IOException {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    SegmentTimeline.Builder segmentTimeline = new SegmentTimeline.Builder();
     long startTime = 0;
     long elementDuration = C.TIME_UNSET;
     int elementRepeatCount = 0;
@@ -1284,7 +1437,7 @@ public class DashManifestParser extends DefaultHandler
         long newStartTime = parseLong(xpp, "t", C.TIME_UNSET);
         if (havePreviousTimelineElement) {
           startTime =
-              addSegmentTimelineElementsToList(
+              addSegmentsToTimeline(
                   segmentTimeline,
                   startTime,
                   elementDuration,
@@ -1303,18 +1456,18 @@ public class DashManifestParser extends DefaultHandler
     } while (!XmlPullParserUtil.isEndTag(xpp, "SegmentTimeline"));
     if (havePreviousTimelineElement) {
       long periodDuration = Util.scaleLargeTimestamp(periodDurationMs, timescale, 1000);
-      addSegmentTimelineElementsToList(
+      addSegmentsToTimeline(
           segmentTimeline,
           startTime,
           elementDuration,
           elementRepeatCount,
           /* endTime= */ periodDuration);
     }
-    return segmentTimeline;
+    return segmentTimeline.build();
   }
 
   /**
-   * Adds timeline elements for one S tag to the segment timeline.
+   * Adds the segments for one S tag to the segment timeline.
    *
    * @param startTime Start time of the first timeline element.
    * @param elementDuration Duration of one timeline element.
@@ -1324,8 +1477,8 @@ public class DashManifestParser extends DefaultHandler
    *     unknown. Only needed if {@code repeatCount} is negative.
    * @return Calculated next start time.
    */
-  private long addSegmentTimelineElementsToList(
-      List<SegmentTimelineElement> segmentTimeline,
+  private long addSegmentsToTimeline(
+      SegmentTimeline.Builder segmentTimeline,
       long startTime,
       long elementDuration,
       int elementRepeatCount,
@@ -1334,17 +1487,50 @@ public class DashManifestParser extends DefaultHandler
         elementRepeatCount >= 0
             ? 1 + elementRepeatCount
             : (int) Util.ceilDivide(endTime - startTime, elementDuration);
-    for (int i = 0; i < count; i++) {
-      segmentTimeline.add(buildSegmentTimelineElement(startTime, elementDuration));
-      startTime += elementDuration;
+    if (count <= 0) {
+      return startTime;
+    }
+    if (overridesBuildSegmentTimelineElement) {
+      for (int i = 0; i < count; i++) {
+        @SuppressWarnings("deprecation") // Calling the deprecated method if it's overridden.
+        SegmentTimelineElement element =
+            buildSegmentTimelineElement(startTime + i * elementDuration, elementDuration);
+        segmentTimeline.addSegments(element.startTime, element.duration, /* count= */ 1);
+      }
+    } else {
+      segmentTimeline.addSegments(startTime, elementDuration, count);
     }
-    return startTime;
+    return startTime + count * elementDuration;
   }
 
+  /**
+   * @deprecated Segment timelines are parsed into a {@link SegmentTimeline}, which stores runs of
+   *     segments rather than {@link SegmentTimelineElement} instances. If a subclass overrides
+   *     this method, it's still called for each segment and the start time and duration of the
+   *     returned element are used, but this creates an element for every segment of the timeline.
+   */
+  @Deprecated
   protected SegmentTimelineElement buildSegmentTimelineElement(long startTime, long duration) {
     return new SegmentTimelineElement(startTime, duration);
   }
 
+  /**
+   * Returns whether {@code parserClass} overrides {@link #buildSegmentTimelineElement(long, long)}.
+   */
+  private static boolean overridesBuildSegmentTimelineElement(Class<?> parserClass) {
+    for (Class<?> clazz = parserClass;
+        clazz != null && clazz != DashManifestParser.class;
+        clazz = clazz.getSuperclass()) {
+      try {
+        clazz.getDeclaredMethod("buildSegmentTimelineElement", long.class, long.class);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // Check the superclass.
+      }
+    }
+    return false;
+  }
+
   @Nullable
   protected UrlTemplate parseUrlTemplate(
       XmlPullParser xpp, String name, @Nullable UrlTemplate defaultValue) {
@@ -1383,6 +1569,26 @@ public class DashManifestParser extends DefaultHandler
     return new RangedUri(urlText, rangeStart, rangeLength);
   }
 
+  /**
+   * Parses the {@code ttl} attribute of a PatchLocation element.
+   *
+   * @param xpp The parser from which to read.
+   * @return The time to live of the patch location in milliseconds, or {@link C#TIME_UNSET} if the
+   *     attribute is absent or malformed.
+   */
+  protected long parsePatchLocationTtlMs(XmlPullParser xpp) {
+    @Nullable String ttl = xpp.getAttributeValue(null, "ttl");
+    if (ttl == null) {
+      return C.TIME_UNSET;
+    }
+    try {
+      return (long) (Double.parseDouble(ttl) * C.MILLIS_PER_SECOND);
+    } catch (NumberFormatException e) {
+      // Ignore the attribute if it's malformed.
+      return C.TIME_UNSET;
+    }
+  }
+
   protected ProgramInformation parseProgramInformation(XmlPullParser xpp)
       throws IOException, XmlPullParserException {
     String title = null;
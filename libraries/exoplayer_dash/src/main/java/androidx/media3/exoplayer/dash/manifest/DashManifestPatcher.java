@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.ParserException;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFactoryConfigurationException;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Holds the XML document of a media presentation description (MPD), and updates it by applying MPD
+ * patch documents, as defined by ISO/IEC 23009-1:2022.
+ *
+ * <p>A patch document consists of the {@code add}, {@code replace} and {@code remove} operations
+ * defined by RFC 5261, whose {@code sel} attributes are XPath expressions that select nodes of the
+ * MPD. Namespace declarations can't be added by a patch.
+ *
+ * <p>Applying a patch fails if it wasn't produced for the MPD it's applied to, as identified by the
+ * {@code mpdId} and {@code originalPublishTime} attributes of the patch. An instance must not be
+ * used after applying a patch failed, because the document may have been partially patched.
+ *
+ * <p>Documents that contain a document type declaration are rejected, so that neither the MPD nor a
+ * patch can declare entities.
+ */
+@UnstableApi
+public final class DashManifestPatcher {
+
+  private static final String FEATURE_DISALLOW_DOCTYPE_DECL =
+      "http://apache.org/xml/features/disallow-doctype-decl";
+
+  private final Document document;
+  private final DocumentBuilder documentBuilder;
+  private final XPath xPath;
+
+  /**
+   * Creates an instance.
+   *
+   * @param mpdInputStream An {@link InputStream} from which the MPD can be read.
+   * @throws IOException If an error occurs reading or parsing the MPD.
+   */
+  public DashManifestPatcher(InputStream mpdInputStream) throws IOException {
+    try {
+      documentBuilder = createDocumentBuilderFactory().newDocumentBuilder();
+    } catch (ParserConfigurationException e) {
+      throw ParserException.createForMalformedManifest(/* message= */ null, /* cause= */ e);
+    }
+    document = parseDocument(documentBuilder, mpdInputStream);
+    if (!"MPD".equals(getLocalName(document.getDocumentElement()))) {
+      throw ParserException.createForMalformedManifest(
+          "Document is not a media presentation description", /* cause= */ null);
+    }
+    XPathFactory xPathFactory = XPathFactory.newInstance();
+    try {
+      xPathFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    } catch (XPathFactoryConfigurationException e) {
+      // Not supported by the platform. Patch selectors can't call extension functions regardless,
+      // because no function resolver is set.
+    }
+    xPath = xPathFactory.newXPath();
+  }
+
+  /**
+   * Applies a patch document to the MPD.
+   *
+   * @param patchInputStream An {@link InputStream} from which the patch document can be read.
+   * @throws IOException If an error occurs reading the patch, if the patch wasn't produced for the
+   *     MPD, or if one of its operations can't be applied.
+   */
+  public void applyPatch(InputStream patchInputStream) throws IOException {
+    Element patch = parseDocument(documentBuilder, patchInputStream).getDocumentElement();
+    Element mpd = document.getDocumentElement();
+    if (!"Patch".equals(getLocalName(patch))) {
+      throw ParserException.createForMalformedManifest("Not a patch document", /* cause= */ null);
+    }
+    if (!mpd.hasAttribute("id") || !mpd.getAttribute("id").equals(patch.getAttribute("mpdId"))) {
+      throw ParserException.createForMalformedManifest(
+          "Patch mpdId doesn't match the MPD", /* cause= */ null);
+    }
+    if (!mpd.hasAttribute("publishTime")
+        || Util.parseXsDateTime(mpd.getAttribute("publishTime"))
+            != Util.parseXsDateTime(patch.getAttribute("originalPublishTime"))) {
+      throw ParserException.createForMalformedManifest(
+          "Patch originalPublishTime doesn't match the MPD", /* cause= */ null);
+    }
+    String originalPublishTime = mpd.getAttribute("publishTime");
+    for (Node child = patch.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() == Node.ELEMENT_NODE) {
+        applyOperation((Element) child);
+      }
+    }
+    if (originalPublishTime.equals(mpd.getAttribute("publishTime"))
+        && patch.hasAttribute("publishTime")) {
+      // The patch is expected to update the publish time, but keep it consistent if it doesn't.
+      mpd.setAttribute("publishTime", patch.getAttribute("publishTime"));
+    }
+  }
+
+  /**
+   * Returns the current MPD.
+   *
+   * @throws IOException If the MPD can't be serialized.
+   */
+  public byte[] getMpdData() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try {
+      TransformerFactory.newInstance()
+          .newTransformer()
+          .transform(new DOMSource(document), new StreamResult(outputStream));
+    } catch (TransformerException e) {
+      throw new IOException(e);
+    }
+    return outputStream.toByteArray();
+  }
+
+  private void applyOperation(Element operation) throws ParserException {
+    Node target = selectNode(operation.getAttribute("sel"));
+    switch (getLocalName(operation)) {
+      case "add":
+        add(operation, target);
+        break;
+      case "replace":
+        replace(operation, target);
+        break;
+      case "remove":
+        remove(target);
+        break;
+      default:
+        throw ParserException.createForMalformedManifest(
+            "Unsupported patch operation: " + operation.getTagName(), /* cause= */ null);
+    }
+  }
+
+  private void add(Element operation, Node target) throws ParserException {
+    if (target.getNodeType() != Node.ELEMENT_NODE) {
+      throw ParserException.createForMalformedManifest(
+          "Patch add target is not an element", /* cause= */ null);
+    }
+    Element targetElement = (Element) target;
+    String type = operation.getAttribute("type");
+    if (!type.isEmpty()) {
+      if (!type.startsWith("@")) {
+        throw ParserException.createForMalformedManifest(
+            "Unsupported patch add type: " + type, /* cause= */ null);
+      }
+      targetElement.setAttribute(type.substring(1), operation.getTextContent());
+      return;
+    }
+    String position = operation.getAttribute("pos");
+    // Nodes are inserted before a fixed reference node, or appended, so that they keep their order.
+    Node parent;
+    @Nullable Node referenceNode;
+    switch (position) {
+      case "before":
+        parent = getParentElement(targetElement);
+        referenceNode = targetElement;
+        break;
+      case "after":
+        parent = getParentElement(targetElement);
+        referenceNode = targetElement.getNextSibling();
+        break;
+      case "prepend":
+        parent = targetElement;
+        referenceNode = targetElement.getFirstChild();
+        break;
+      case "":
+        parent = targetElement;
+        referenceNode = null;
+        break;
+      default:
+        throw ParserException.createForMalformedManifest(
+            "Unsupported patch add pos: " + position, /* cause= */ null);
+    }
+    for (Node child = operation.getFirstChild(); child != null; child = child.getNextSibling()) {
+      parent.insertBefore(document.importNode(child, /* deep= */ true), referenceNode);
+    }
+  }
+
+  private void replace(Element operation, Node target) throws ParserException {
+    switch (target.getNodeType()) {
+      case Node.ATTRIBUTE_NODE:
+        ((Attr) target).setValue(operation.getTextContent());
+        break;
+      case Node.TEXT_NODE:
+      case Node.CDATA_SECTION_NODE:
+        target.setNodeValue(operation.getTextContent());
+        break;
+      case Node.ELEMENT_NODE:
+        @Nullable Element replacement = null;
+        for (Node child = operation.getFirstChild();
+            child != null;
+            child = child.getNextSibling()) {
+          if (child.getNodeType() == Node.ELEMENT_NODE) {
+            if (replacement != null) {
+              throw ParserException.createForMalformedManifest(
+                  "Patch replace has more than one element", /* cause= */ null);
+            }
+            replacement = (Element) child;
+          }
+        }
+        if (replacement == null) {
+          throw ParserException.createForMalformedManifest(
+              "Patch replace has no element", /* cause= */ null);
+        }
+        target
+            .getParentNode()
+            .replaceChild(document.importNode(replacement, /* deep= */ true), target);
+        break;
+      default:
+        throw ParserException.createForMalformedManifest(
+            "Unsupported patch replace target", /* cause= */ null);
+    }
+  }
+
+  private void remove(Node target) throws ParserException {
+    if (target.getNodeType() == Node.ATTRIBUTE_NODE) {
+      Attr attribute = (Attr) target;
+      attribute.getOwnerElement().removeAttributeNode(attribute);
+    } else if (target == document.getDocumentElement()) {
+      throw ParserException.createForMalformedManifest(
+          "Patch can't remove the MPD element", /* cause= */ null);
+    } else {
+      target.getParentNode().removeChild(target);
+    }
+  }
+
+  private Node selectNode(String selector) throws ParserException {
+    NodeList nodes;
+    try {
+      nodes = (NodeList) xPath.evaluate(selector, document, XPathConstants.NODESET);
+    } catch (XPathExpressionException e) {
+      throw ParserException.createForMalformedManifest(
+          "Invalid patch selector: " + selector, /* cause= */ e);
+    }
+    if (nodes.getLength() != 1) {
+      throw ParserException.createForMalformedManifest(
+          "Patch selector matches " + nodes.getLength() + " nodes: " + selector, /* cause= */ null);
+    }
+    return nodes.item(0);
+  }
+
+  private static DocumentBuilderFactory createDocumentBuilderFactory() {
+    DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    documentBuilderFactory.setExpandEntityReferences(false);
+    // MPDs and patches come from the network, so prevent XML external entity (XXE) and entity
+    // expansion attacks where the platform's parser supports it. Documents with a document type
+    // declaration are also rejected after parsing, for parsers that support neither feature.
+    trySetFeature(documentBuilderFactory, XMLConstants.FEATURE_SECURE_PROCESSING);
+    trySetFeature(documentBuilderFactory, FEATURE_DISALLOW_DOCTYPE_DECL);
+    return documentBuilderFactory;
+  }
+
+  private static void trySetFeature(DocumentBuilderFactory documentBuilderFactory, String name) {
+    try {
+      documentBuilderFactory.setFeature(name, true);
+    } catch (ParserConfigurationException e) {
+      // Not supported by the platform's parser.
+    }
+  }
+
+  private static Document parseDocument(DocumentBuilder documentBuilder, InputStream inputStream)
+      throws IOException {
+    Document document;
+    try {
+      document = documentBuilder.parse(inputStream);
+    } catch (SAXException e) {
+      throw ParserException.createForMalformedManifest(/* message= */ null, /* cause= */ e);
+    }
+    if (document.getDoctype() != null) {
+      throw ParserException.createForMalformedManifest(
+          "Document type declarations aren't supported", /* cause= */ null);
+    }
+    return document;
+  }
+
+  private static Node getParentElement(Element element) throws ParserException {
+    @Nullable Node parent = element.getParentNode();
+    if (parent == null || parent.getNodeType() != Node.ELEMENT_NODE) {
+      throw ParserException.createForMalformedManifest(
+          "Patch add target has no parent element", /* cause= */ null);
+    }
+    return parent;
+  }
+
+  private static String getLocalName(Node node) {
+    String name = node.getNodeName();
+    return name.substring(name.indexOf(':') + 1);
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.dash.manifest.Representation.MultiSegmentRepresentation;
+import androidx.media3.exoplayer.dash.manifest.Representation.SingleSegmentRepresentation;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.MultiSegmentBase;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentList;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentTemplate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replaces the elements of a newly parsed manifest that are unchanged from a previous manifest with
+ * the instances of the previous manifest.
+ *
+ * <p>Only instances of {@link Period}, {@link AdaptationSet}, {@link SingleSegmentRepresentation}
+ * and {@link MultiSegmentRepresentation} themselves are reused, because the fields of subclasses
+ * can't be compared.
+ */
+/* package */ final class ManifestElementReuser {
+
+  private ManifestElementReuser() {}
+
+  /**
+   * Returns {@code periods}, with each element that's unchanged from an element of {@code
+   * previousManifest} replaced by that element.
+   *
+   * @param periods The periods of the new manifest.
+   * @param previousManifest The previous manifest.
+   * @return The periods, or {@code periods} itself if no element could be reused.
+   */
+  public static List<Period> reuseUnchangedElements(
+      List<Period> periods, DashManifest previousManifest) {
+    @Nullable List<Period> result = null;
+    for (int i = 0; i < periods.size(); i++) {
+      Period period = periods.get(i);
+      @Nullable Period previousPeriod = findPreviousPeriod(period, previousManifest);
+      Period newPeriod = previousPeriod != null ? reusePeriod(period, previousPeriod) : period;
+      if (newPeriod != period && result == null) {
+        result = new ArrayList<>(periods.subList(0, i));
+      }
+      if (result != null) {
+        result.add(newPeriod);
+      }
+    }
+    return result != null ? result : periods;
+  }
+
+  @Nullable
+  private static Period findPreviousPeriod(Period period, DashManifest previousManifest) {
+    for (int i = 0; i < previousManifest.getPeriodCount(); i++) {
+      Period previousPeriod = previousManifest.getPeriod(i);
+      if (period.id != null
+          ? period.id.equals(previousPeriod.id)
+          : previousPeriod.id == null && period.startMs == previousPeriod.startMs) {
+        return previousPeriod;
+      }
+    }
+    return null;
+  }
+
+  private static Period reusePeriod(Period period, Period previousPeriod) {
+    if (period.getClass() != Period.class || previousPeriod.getClass() != Period.class) {
+      return period;
+    }
+    List<AdaptationSet> adaptationSets = new ArrayList<>(period.adaptationSets.size());
+    boolean reusedAdaptationSet = false;
+    boolean reusedAllAdaptationSets =
+        period.adaptationSets.size() == previousPeriod.adaptationSets.size();
+    for (int i = 0; i < period.adaptationSets.size(); i++) {
+      AdaptationSet adaptationSet = period.adaptationSets.get(i);
+      @Nullable
+      AdaptationSet previousAdaptationSet =
+          findPreviousAdaptationSet(adaptationSet, i, previousPeriod);
+      AdaptationSet newAdaptationSet =
+          previousAdaptationSet != null
+              ? reuseAdaptationSet(adaptationSet, previousAdaptationSet)
+              : adaptationSet;
+      reusedAdaptationSet |= newAdaptationSet != adaptationSet;
+      reusedAllAdaptationSets =
+          reusedAllAdaptationSets && newAdaptationSet == previousPeriod.adaptationSets.get(i);
+      adaptationSets.add(newAdaptationSet);
+    }
+    if (reusedAllAdaptationSets
+        && period.startMs == previousPeriod.startMs
+        && Util.areEqual(period.assetIdentifier, previousPeriod.assetIdentifier)
+        && eventStreamsEqual(period.eventStreams, previousPeriod.eventStreams)) {
+      return previousPeriod;
+    }
+    if (!reusedAdaptationSet) {
+      return period;
+    }
+    return new Period(
+        period.id, period.startMs, adaptationSets, period.eventStreams, period.assetIdentifier);
+  }
+
+  @Nullable
+  private static AdaptationSet findPreviousAdaptationSet(
+      AdaptationSet adaptationSet, int index, Period previousPeriod) {
+    List<AdaptationSet> previousAdaptationSets = previousPeriod.adaptationSets;
+    if (adaptationSet.id == AdaptationSet.ID_UNSET) {
+      return index < previousAdaptationSets.size() ? previousAdaptationSets.get(index) : null;
+    }
+    for (int i = 0; i < previousAdaptationSets.size(); i++) {
+      if (previousAdaptationSets.get(i).id == adaptationSet.id) {
+        return previousAdaptationSets.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static AdaptationSet reuseAdaptationSet(
+      AdaptationSet adaptationSet, AdaptationSet previousAdaptationSet) {
+    if (adaptationSet.getClass() != AdaptationSet.class
+        || previousAdaptationSet.getClass() != AdaptationSet.class) {
+      return adaptationSet;
+    }
+    List<Representation> representations = adaptationSet.representations;
+    List<Representation> previousRepresentations = previousAdaptationSet.representations;
+    List<Representation> newRepresentations = new ArrayList<>(representations.size());
+    boolean reusedRepresentation = false;
+    boolean reusedAllRepresentations = representations.size() == previousRepresentations.size();
+    for (int i = 0; i < representations.size(); i++) {
+      Representation representation = representations.get(i);
+      @Nullable
+      Representation previousRepresentation =
+          findPreviousRepresentation(representation, i, previousRepresentations);
+      boolean reuse =
+          previousRepresentation != null
+              && representationsEqual(representation, previousRepresentation);
+      reusedRepresentation |= reuse;
+      reusedAllRepresentations =
+          reusedAllRepresentations
+              && reuse
+              && previousRepresentations.get(i) == previousRepresentation;
+      newRepresentations.add(reuse ? previousRepresentation : representation);
+    }
+    if (reusedAllRepresentations
+        && adaptationSet.type == previousAdaptationSet.type
+        && adaptationSet.accessibilityDescriptors.equals(
+            previousAdaptationSet.accessibilityDescriptors)
+        && adaptationSet.essentialProperties.equals(previousAdaptationSet.essentialProperties)
+        && adaptationSet.supplementalProperties.equals(
+            previousAdaptationSet.supplementalProperties)) {
+      return previousAdaptationSet;
+    }
+    if (!reusedRepresentation) {
+      return adaptationSet;
+    }
+    return new AdaptationSet(
+        adaptationSet.id,
+        adaptationSet.type,
+        newRepresentations,
+        adaptationSet.accessibilityDescriptors,
+        adaptationSet.essentialProperties,
+        adaptationSet.supplementalProperties);
+  }
+
+  @Nullable
+  private static Representation findPreviousRepresentation(
+      Representation representation, int index, List<Representation> previousRepresentations) {
+    if (representation.format.id == null) {
+      return index < previousRepresentations.size() ? previousRepresentations.get(index) : null;
+    }
+    for (int i = 0; i < previousRepresentations.size(); i++) {
+      if (representation.format.id.equals(previousRepresentations.get(i).format.id)) {
+        return previousRepresentations.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static boolean representationsEqual(
+      Representation representation, Representation previousRepresentation) {
+    if (representation.getClass() != previousRepresentation.getClass()
+        || representation.revisionId != previousRepresentation.revisionId
+        || representation.presentationTimeOffsetUs
+            != previousRepresentation.presentationTimeOffsetUs
+        || !representation.format.equals(previousRepresentation.format)
+        || !representation.baseUrls.equals(previousRepresentation.baseUrls)
+        || !representation.inbandEventStreams.equals(previousRepresentation.inbandEventStreams)
+        || !representation.essentialProperties.equals(previousRepresentation.essentialProperties)
+        || !representation.supplementalProperties.equals(
+            previousRepresentation.supplementalProperties)
+        || !Util.areEqual(
+            representation.getInitializationUri(),
+            previousRepresentation.getInitializationUri())) {
+      return false;
+    }
+    if (representation.getClass() == SingleSegmentRepresentation.class) {
+      SingleSegmentRepresentation single = (SingleSegmentRepresentation) representation;
+      SingleSegmentRepresentation previousSingle =
+          (SingleSegmentRepresentation) previousRepresentation;
+      return single.contentLength == previousSingle.contentLength
+          && Util.areEqual(single.getCacheKey(), previousSingle.getCacheKey())
+          && Util.areEqual(single.getIndexUri(), previousSingle.getIndexUri());
+    } else if (representation.getClass() == MultiSegmentRepresentation.class) {
+      return segmentBasesEqual(
+          ((MultiSegmentRepresentation) representation).segmentBase,
+          ((MultiSegmentRepresentation) previousRepresentation).segmentBase);
+    }
+    return false;
+  }
+
+  private static boolean segmentBasesEqual(
+      MultiSegmentBase segmentBase, MultiSegmentBase previousSegmentBase) {
+    if (segmentBase.getClass() != previousSegmentBase.getClass()
+        || !Util.areEqual(segmentBase.initialization, previousSegmentBase.initialization)
+        || segmentBase.timescale != previousSegmentBase.timescale
+        || segmentBase.presentationTimeOffset != previousSegmentBase.presentationTimeOffset
+        || segmentBase.startNumber != previousSegmentBase.startNumber
+        || segmentBase.duration != previousSegmentBase.duration
+        || segmentBase.availabilityTimeOffsetUs != previousSegmentBase.availabilityTimeOffsetUs
+        || segmentBase.timeShiftBufferDepthUs != previousSegmentBase.timeShiftBufferDepthUs
+        || segmentBase.periodStartUnixTimeUs != previousSegmentBase.periodStartUnixTimeUs
+        || !Util.areEqual(segmentBase.segmentTimeline, previousSegmentBase.segmentTimeline)) {
+      return false;
+    }
+    if (segmentBase instanceof SegmentTemplate) {
+      SegmentTemplate segmentTemplate = (SegmentTemplate) segmentBase;
+      SegmentTemplate previousSegmentTemplate = (SegmentTemplate) previousSegmentBase;
+      return segmentTemplate.endNumber == previousSegmentTemplate.endNumber
+          && Util.areEqual(
+              segmentTemplate.initializationTemplate,
+              previousSegmentTemplate.initializationTemplate)
+          && Util.areEqual(segmentTemplate.mediaTemplate, previousSegmentTemplate.mediaTemplate);
+    } else if (segmentBase instanceof SegmentList) {
+      return Util.areEqual(
+          ((SegmentList) segmentBase).mediaSegments,
+          ((SegmentList) previousSegmentBase).mediaSegments);
+    }
+    return false;
+  }
+
+  private static boolean eventStreamsEqual(
+      List<EventStream> eventStreams, List<EventStream> previousEventStreams) {
+    if (eventStreams.size() != previousEventStreams.size()) {
+      return false;
+    }
+    for (int i = 0; i < eventStreams.size(); i++) {
+      EventStream eventStream = eventStreams.get(i);
+      EventStream previousEventStream = previousEventStreams.get(i);
+      if (eventStream.timescale != previousEventStream.timescale
+          || !eventStream.schemeIdUri.equals(previousEventStream.schemeIdUri)
+          || !Util.areEqual(eventStream.value, previousEventStream.value)
+          || !Arrays.equals(
+              eventStream.presentationTimesUs, previousEventStream.presentationTimesUs)
+          || !Arrays.equals(eventStream.events, previousEventStream.events)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -119,9 +119,9 @@ public abstract class SegmentBase {
 
     /* package */ final long startNumber;
     /* package */ final long duration;
-    @Nullable /* package */ final List<SegmentTimelineElement> segmentTimeline;
-    private final long timeShiftBufferDepthUs;
-    private final long periodStartUnixTimeUs;
+    @Nullable /* package */ final SegmentTimeline segmentTimeline;
+    /* package */ final long timeShiftBufferDepthUs;
+    /* package */ final long periodStartUnixTimeUs;
 
     /**
      * Offset to the current realtime at which segments become available, in microseconds, or {@link
@@ -144,7 +144,8 @@ public abstract class SegmentBase {
      *     segmentTimeline} is non-null then this parameter is ignored.
      * @param segmentTimeline A segment timeline corresponding to the segments. If null, then
      *     segments are assumed to be of fixed duration as specified by the {@code duration}
-     *     parameter.
+     *     parameter. Passing a {@link SegmentTimeline} allows it to be shared with other instances
+     *     without being copied.
      * @param availabilityTimeOffsetUs The offset to the current realtime at which segments become
      *     available in microseconds, or {@link C#TIME_UNSET} if not applicable.
      * @param timeShiftBufferDepthUs The time shift buffer depth in microseconds.
@@ -164,7 +165,8 @@ public abstract class SegmentBase {
       super(initialization, timescale, presentationTimeOffset);
       this.startNumber = startNumber;
       this.duration = duration;
-      this.segmentTimeline = segmentTimeline;
+      this.segmentTimeline =
+          segmentTimeline != null ? SegmentTimeline.copyOf(segmentTimeline) : null;
       this.availabilityTimeOffsetUs = availabilityTimeOffsetUs;
       this.timeShiftBufferDepthUs = timeShiftBufferDepthUs;
       this.periodStartUnixTimeUs = periodStartUnixTimeUs;
@@ -188,28 +190,43 @@ public abstract class SegmentBase {
                 ? segmentNum
                 : min(segmentNum, firstSegmentNum + segmentCount - 1);
       } else {
-        // The index cannot be unbounded. Identify the segment using binary search.
-        long lowIndex = firstSegmentNum;
-        long highIndex = firstSegmentNum + segmentCount - 1;
-        while (lowIndex <= highIndex) {
-          long midIndex = lowIndex + (highIndex - lowIndex) / 2;
-          long midTimeUs = getSegmentTimeUs(midIndex);
-          if (midTimeUs < timeUs) {
-            lowIndex = midIndex + 1;
-          } else if (midTimeUs > timeUs) {
-            highIndex = midIndex - 1;
+        // The index cannot be unbounded. Identify the run of segments that contains the segment,
+        // and then the segment within the run, using binary search.
+        SegmentTimeline segmentTimeline = this.segmentTimeline;
+        int lowRun = 0;
+        int highRun = segmentTimeline.getRunCount() - 1;
+        while (lowRun <= highRun) {
+          int midRun = lowRun + (highRun - lowRun) / 2;
+          if (getSegmentTimelineTimeUs(segmentTimeline.getRunStartTime(midRun)) <= timeUs) {
+            lowRun = midRun + 1;
+          } else {
+            highRun = midRun - 1;
+          }
+        }
+        if (highRun < 0) {
+          return firstSegmentNum;
+        }
+        long runStartTime = segmentTimeline.getRunStartTime(highRun);
+        long runDuration = segmentTimeline.getRunDuration(highRun);
+        int lowOffset = 1;
+        int highOffset = segmentTimeline.getRunLength(highRun) - 1;
+        while (lowOffset <= highOffset) {
+          int midOffset = lowOffset + (highOffset - lowOffset) / 2;
+          if (getSegmentTimelineTimeUs(runStartTime + midOffset * runDuration) <= timeUs) {
+            lowOffset = midOffset + 1;
           } else {
-            return midIndex;
+            highOffset = midOffset - 1;
           }
         }
-        return lowIndex == firstSegmentNum ? lowIndex : highIndex;
+        long segmentNum = firstSegmentNum + segmentTimeline.getRunStartIndex(highRun) + highOffset;
+        return min(segmentNum, firstSegmentNum + segmentCount - 1);
       }
     }
 
     /** See {@link DashSegmentIndex#getDurationUs(long, long)}. */
     public final long getSegmentDurationUs(long sequenceNumber, long periodDurationUs) {
       if (segmentTimeline != null) {
-        long duration = segmentTimeline.get((int) (sequenceNumber - startNumber)).duration;
+        long duration = segmentTimeline.getDuration((int) (sequenceNumber - startNumber));
         return (duration * C.MICROS_PER_SECOND) / timescale;
       } else {
         long segmentCount = getSegmentCount(periodDurationUs);
@@ -222,14 +239,11 @@ public abstract class SegmentBase {
 
     /** See {@link DashSegmentIndex#getTimeUs(long)}. */
     public final long getSegmentTimeUs(long sequenceNumber) {
-      long unscaledSegmentTime;
       if (segmentTimeline != null) {
-        unscaledSegmentTime =
-            segmentTimeline.get((int) (sequenceNumber - startNumber)).startTime
-                - presentationTimeOffset;
-      } else {
-        unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
+        return getSegmentTimelineTimeUs(
+            segmentTimeline.getStartTime((int) (sequenceNumber - startNumber)));
       }
+      long unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
       return Util.scaleLargeTimestamp(unscaledSegmentTime, C.MICROS_PER_SECOND, timescale);
     }
 
@@ -297,6 +311,12 @@ public abstract class SegmentBase {
 
     /** See {@link DashSegmentIndex#getSegmentCount(long)}. */
     public abstract long getSegmentCount(long periodDurationUs);
+
+    /** Converts a time in the segment timeline to a time in the period, in microseconds. */
+    private long getSegmentTimelineTimeUs(long segmentTimelineTime) {
+      return Util.scaleLargeTimestamp(
+          segmentTimelineTime - presentationTimeOffset, C.MICROS_PER_SECOND, timescale);
+    }
   }
 
   /** A {@link MultiSegmentBase} that uses a SegmentList to define its segments. */
@@ -443,7 +463,7 @@ public abstract class SegmentBase {
     public RangedUri getSegmentUrl(Representation representation, long sequenceNumber) {
       long time;
       if (segmentTimeline != null) {
-        time = segmentTimeline.get((int) (sequenceNumber - startNumber)).startTime;
+        time = segmentTimeline.getStartTime((int) (sequenceNumber - startNumber));
       } else {
         time = (sequenceNumber - startNumber) * duration;
       }
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentTimelineElement;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The segments of a SegmentTimeline manifest element.
+ *
+ * <p>Consecutive segments that have the same duration and follow each other without a gap are
+ * stored as a single run of segments in primitive arrays, so a timeline that uses repeat counts
+ * takes the same amount of memory regardless of how many segments it has. The start time and
+ * duration of a segment can be read without allocating, in logarithmic time in the number of runs.
+ *
+ * <p>Instances are immutable. Their {@link List} elements are created when they're requested.
+ */
+@UnstableApi
+public final class SegmentTimeline extends AbstractList<SegmentTimelineElement>
+    implements RandomAccess {
+
+  /** Builds {@link SegmentTimeline} instances. */
+  public static final class Builder {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] runStartTimes;
+    private long[] runDurations;
+    private int[] runStartIndices;
+    private int runCount;
+    private int size;
+
+    /** Creates an instance. */
+    public Builder() {
+      runStartTimes = new long[INITIAL_CAPACITY];
+      runDurations = new long[INITIAL_CAPACITY];
+      runStartIndices = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends segments of equal duration that follow each other without a gap.
+     *
+     * @param startTime The start time of the first segment. The value in seconds is the division of
+     *     this value and the {@code timescale} of the enclosing element.
+     * @param duration The duration of each segment. The value in seconds is the division of this
+     *     value and the {@code timescale} of the enclosing element.
+     * @param count The number of segments to append.
+     * @return This builder, for convenience.
+     */
+    public Builder addSegments(long startTime, long duration, int count) {
+      checkArgument(count >= 0);
+      if (count == 0) {
+        return this;
+      }
+      if (runCount > 0) {
+        int lastRun = runCount - 1;
+        int lastRunLength = size - runStartIndices[lastRun];
+        if (runDurations[lastRun] == duration
+            && runStartTimes[lastRun] + lastRunLength * duration == startTime) {
+          // The segments extend the last run.
+          size += count;
+          return this;
+        }
+      }
+      if (runCount == runStartTimes.length) {
+        int newCapacity = runCount * 2;
+        runStartTimes = Arrays.copyOf(runStartTimes, newCapacity);
+        runDurations = Arrays.copyOf(runDurations, newCapacity);
+        runStartIndices = Arrays.copyOf(runStartIndices, newCapacity);
+      }
+      runStartTimes[runCount] = startTime;
+      runDurations[runCount] = duration;
+      runStartIndices[runCount] = size;
+      runCount++;
+      size += count;
+      return this;
+    }
+
+    /** Builds the {@link SegmentTimeline}. */
+    public SegmentTimeline build() {
+      return new SegmentTimeline(
+          Arrays.copyOf(runStartTimes, runCount),
+          Arrays.copyOf(runDurations, runCount),
+          Arrays.copyOf(runStartIndices, runCount),
+          size);
+    }
+  }
+
+  /**
+   * Returns a {@link SegmentTimeline} with the given elements, or {@code elements} itself if it's
+   * already a {@link SegmentTimeline}.
+   */
+  public static SegmentTimeline copyOf(List<SegmentTimelineElement> elements) {
+    if (elements instanceof SegmentTimeline) {
+      return (SegmentTimeline) elements;
+    }
+    Builder builder = new Builder();
+    for (int i = 0; i < elements.size(); i++) {
+      SegmentTimelineElement element = elements.get(i);
+      builder.addSegments(element.startTime, element.duration, /* count= */ 1);
+    }
+    return builder.build();
+  }
+
+  private final long[] runStartTimes;
+  private final long[] runDurations;
+  private final int[] runStartIndices;
+  private final int size;
+
+  private int hashCode;
+
+  private SegmentTimeline(
+      long[] runStartTimes, long[] runDurations, int[] runStartIndices, int size) {
+    this.runStartTimes = runStartTimes;
+    this.runDurations = runDurations;
+    this.runStartIndices = runStartIndices;
+    this.size = size;
+  }
+
+  /**
+   * Returns the start time of a segment. The value in seconds is the division of this value and
+   * the {@code timescale} of the enclosing element.
+   *
+   * @param index The index of the segment.
+   */
+  public long getStartTime(int index) {
+    int run = getRun(index);
+    return runStartTimes[run] + (index - runStartIndices[run]) * runDurations[run];
+  }
+
+  /**
+   * Returns the duration of a segment. The value in seconds is the division of this value and the
+   * {@code timescale} of the enclosing element.
+   *
+   * @param index The index of the segment.
+   */
+  public long getDuration(int index) {
+    return runDurations[getRun(index)];
+  }
+
+  @Override
+  public SegmentTimelineElement get(int index) {
+    int run = getRun(index);
+    long startTime = runStartTimes[run] + (index - runStartIndices[run]) * runDurations[run];
+    return new SegmentTimelineElement(startTime, runDurations[run]);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof SegmentTimeline) {
+      // Instances are always built from maximal runs, so equal lists have equal runs.
+      SegmentTimeline other = (SegmentTimeline) o;
+      return size == other.size
+          && Arrays.equals(runStartIndices, other.runStartIndices)
+          && Arrays.equals(runStartTimes, other.runStartTimes)
+          && Arrays.equals(runDurations, other.runDurations);
+    }
+    if (!(o instanceof List) || ((List<?>) o).size() != size) {
+      return false;
+    }
+    // Compare the elements of the other list with the runs, without creating elements.
+    Iterator<?> otherElements = ((List<?>) o).iterator();
+    for (int run = 0; run < runStartIndices.length; run++) {
+      long startTime = runStartTimes[run];
+      long duration = runDurations[run];
+      int runLength = getRunLength(run);
+      for (int i = 0; i < runLength; i++) {
+        Object otherElement = otherElements.next();
+        if (!(otherElement instanceof SegmentTimelineElement)
+            || ((SegmentTimelineElement) otherElement).startTime != startTime + i * duration
+            || ((SegmentTimelineElement) otherElement).duration != duration) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the hash code of the list, as defined by {@link List#hashCode()}, computed from the
+   * runs without creating elements.
+   */
+  @Override
+  public int hashCode() {
+    int hashCode = this.hashCode;
+    if (hashCode == 0) {
+      hashCode = 1;
+      for (int run = 0; run < runStartIndices.length; run++) {
+        // SegmentTimelineElement.hashCode is 31 * (int) startTime + (int) duration, which increases
+        // by 31 * (int) duration from one segment of the run to the next.
+        int elementHashCode = 31 * (int) runStartTimes[run] + (int) runDurations[run];
+        int elementHashCodeIncrement = 31 * (int) runDurations[run];
+        int runLength = getRunLength(run);
+        for (int i = 0; i < runLength; i++) {
+          hashCode = 31 * hashCode + elementHashCode;
+          elementHashCode += elementHashCodeIncrement;
+        }
+      }
+      this.hashCode = hashCode;
+    }
+    return hashCode;
+  }
+
+  /** Returns the number of runs of segments. */
+  /* package */ int getRunCount() {
+    return runStartIndices.length;
+  }
+
+  /** Returns the index of the first segment of a run. */
+  /* package */ int getRunStartIndex(int run) {
+    return runStartIndices[run];
+  }
+
+  /** Returns the number of segments in a run. */
+  /* package */ int getRunLength(int run) {
+    return (run + 1 < runStartIndices.length ? runStartIndices[run + 1] : size)
+        - runStartIndices[run];
+  }
+
+  /** Returns the start time of the first segment of a run. */
+  /* package */ long getRunStartTime(int run) {
+    return runStartTimes[run];
+  }
+
+  /** Returns the duration of the segments of a run. */
+  /* package */ long getRunDuration(int run) {
+    return runDurations[run];
+  }
+
+  private int getRun(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    if (runStartIndices.length == size) {
+      // Each run has a single segment.
+      return index;
+    }
+    return Util.binarySearchFloor(
+        runStartIndices, index, /* inclusive= */ true, /* stayInBounds= */ true);
+  }
+}
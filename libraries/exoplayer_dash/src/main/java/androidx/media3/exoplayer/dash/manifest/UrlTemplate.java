@@ -15,6 +15,7 @@
  */
 package androidx.media3.exoplayer.dash.manifest;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.util.UnstableApi;
 import java.util.ArrayList;
 import java.util.List;
@@ -97,6 +98,28 @@ public final class UrlTemplate {
     return builder.toString();
   }
 
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    UrlTemplate other = (UrlTemplate) obj;
+    return urlPieces.equals(other.urlPieces)
+        && identifiers.equals(other.identifiers)
+        && identifierFormatTags.equals(other.identifierFormatTags);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = urlPieces.hashCode();
+    result = 31 * result + identifiers.hashCode();
+    result = 31 * result + identifierFormatTags.hashCode();
+    return result;
+  }
+
   /**
    * Parses {@code template}, placing the decomposed components into the provided lists.
    *
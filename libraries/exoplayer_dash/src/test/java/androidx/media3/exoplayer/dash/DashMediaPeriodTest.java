@@ -217,6 +217,7 @@ public final class DashMediaPeriodTest {
         chunkSourceFactory,
         mock(TransferListener.class),
         /* cmcdConfiguration= */ null,
+        /* loaderExecutorPool= */ null,
         DrmSessionManager.DRM_UNSUPPORTED,
         new DrmSessionEventListener.EventDispatcher()
             .withParameters(/* windowIndex= */ 0, mediaPeriodId),
@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.fail;
 
 import android.net.Uri;
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.MediaItem.LiveConfiguration;
@@ -26,13 +27,22 @@ import androidx.media3.common.ParserException;
 import androidx.media3.common.StreamKey;
 import androidx.media3.common.Timeline;
 import androidx.media3.common.Timeline.Window;
+import androidx.media3.common.util.Clock;
 import androidx.media3.common.util.Util;
 import androidx.media3.datasource.ByteArrayDataSource;
 import androidx.media3.datasource.DataSource;
 import androidx.media3.datasource.FileDataSource;
+import androidx.media3.datasource.ResolvingDataSource;
 import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.dash.manifest.DashManifest;
+import androidx.media3.exoplayer.dash.manifest.Representation.MultiSegmentRepresentation;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaSource;
+import androidx.media3.exoplayer.source.MediaSourceEventListener;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
 import androidx.media3.test.utils.TestUtil;
 import androidx.media3.test.utils.robolectric.RobolectricUtil;
 import androidx.test.core.app.ApplicationProvider;
@@ -40,6 +50,9 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.ImmutableList;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -61,6 +74,19 @@ public final class DashMediaSourceTest {
       "media/mpd/sample_mpd_live_with_offset_too_short";
   private static final String SAMPLE_MPD_LIVE_WITH_OFFSET_TOO_LONG =
       "media/mpd/sample_mpd_live_with_offset_too_long";
+  private static final String LIVE_MPD_URI = "https://example.test/live.mpd";
+  private static final String PATCH_URI = "https://example.test/patch.mpp";
+  private static final long PATCHED_PUBLISH_TIME_MS =
+      Util.parseXsDateTime("2024-01-01T00:01:02Z");
+  // Adds a segment to the live MPD built by buildLiveMpd.
+  private static final String PATCH =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Patch xmlns=\"urn:mpeg:dash:schema:mpd-patch:2020\" mpdId=\"live\""
+          + " originalPublishTime=\"2024-01-01T00:01:00Z\""
+          + " publishTime=\"2024-01-01T00:01:02Z\">"
+          + "<add sel=\"/MPD/Period[@id='0']/AdaptationSet[@id='0']"
+          + "/SegmentTemplate/SegmentTimeline\"><S d=\"2000\"/></add>"
+          + "</Patch>";
 
   @Test
   public void iso8601ParserParse() throws IOException {
@@ -584,6 +610,133 @@ public final class DashMediaSourceTest {
     assertThat(window.mediaItem).isEqualTo(updatedMediaItem);
   }
 
+  @Test
+  public void refreshManifest_withPatchLocation_loadsPatchAfterSecondFullLoad() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(LIVE_MPD_URI, Util.getUtf8Bytes(buildLiveMpd(/* patchTtlSeconds= */ 60)))
+            .setData(PATCH_URI, Util.getUtf8Bytes(PATCH));
+    List<Uri> loadedUris = new CopyOnWriteArrayList<>();
+    MediaSource mediaSource = createLiveMediaSource(fakeDataSet, loadedUris);
+    AtomicReference<DashManifest> manifest = new AtomicReference<>();
+
+    prepareSource(mediaSource, manifest);
+    RobolectricUtil.runMainLooperUntil(
+        () -> manifest.get() != null && manifest.get().publishTimeMs == PATCHED_PUBLISH_TIME_MS,
+        /* timeoutMs= */ 60_000,
+        Clock.DEFAULT);
+
+    assertThat(loadedUris)
+        .containsExactly(Uri.parse(LIVE_MPD_URI), Uri.parse(LIVE_MPD_URI), Uri.parse(PATCH_URI))
+        .inOrder();
+    MultiSegmentRepresentation representation =
+        (MultiSegmentRepresentation)
+            manifest.get().getPeriod(0).adaptationSets.get(0).representations.get(0);
+    assertThat(representation.segmentBase.segmentTimeline).hasSize(31);
+  }
+
+  @Test
+  public void refreshManifest_withExpiredPatchLocation_loadsWholeManifest() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(LIVE_MPD_URI, Util.getUtf8Bytes(buildLiveMpd(/* patchTtlSeconds= */ 1)))
+            .setData(PATCH_URI, Util.getUtf8Bytes(PATCH));
+    List<Uri> loadedUris = new CopyOnWriteArrayList<>();
+    MediaSource mediaSource = createLiveMediaSource(fakeDataSet, loadedUris);
+
+    prepareSource(mediaSource, new AtomicReference<>());
+    RobolectricUtil.runMainLooperUntil(
+        () -> loadedUris.size() == 3, /* timeoutMs= */ 60_000, Clock.DEFAULT);
+
+    assertThat(loadedUris)
+        .containsExactly(
+            Uri.parse(LIVE_MPD_URI), Uri.parse(LIVE_MPD_URI), Uri.parse(LIVE_MPD_URI));
+  }
+
+  @Test
+  public void refreshManifest_withFailingPatchLoad_fallsBackToWholeManifest() throws Exception {
+    // The patch isn't in the data set, so loading it fails.
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(LIVE_MPD_URI, Util.getUtf8Bytes(buildLiveMpd(/* patchTtlSeconds= */ 60)));
+    List<Uri> loadedUris = new CopyOnWriteArrayList<>();
+    MediaSource mediaSource = createLiveMediaSource(fakeDataSet, loadedUris);
+    List<Boolean> loadErrorsWereCanceled = new ArrayList<>();
+    mediaSource.addEventListener(
+        Util.createHandlerForCurrentLooper(),
+        new MediaSourceEventListener() {
+          @Override
+          public void onLoadError(
+              int windowIndex,
+              @Nullable MediaSource.MediaPeriodId mediaPeriodId,
+              LoadEventInfo loadEventInfo,
+              MediaLoadData mediaLoadData,
+              IOException error,
+              boolean wasCanceled) {
+            loadErrorsWereCanceled.add(wasCanceled);
+          }
+        });
+
+    prepareSource(mediaSource, new AtomicReference<>());
+    RobolectricUtil.runMainLooperUntil(
+        () -> loadedUris.size() == 4, /* timeoutMs= */ 60_000, Clock.DEFAULT);
+
+    assertThat(loadedUris)
+        .containsExactly(
+            Uri.parse(LIVE_MPD_URI),
+            Uri.parse(LIVE_MPD_URI),
+            Uri.parse(PATCH_URI),
+            Uri.parse(LIVE_MPD_URI))
+        .inOrder();
+    RobolectricUtil.runMainLooperUntil(() -> !loadErrorsWereCanceled.isEmpty());
+    assertThat(loadErrorsWereCanceled).containsExactly(false);
+  }
+
+  private static MediaSource createLiveMediaSource(FakeDataSet fakeDataSet, List<Uri> loadedUris) {
+    DataSource.Factory dataSourceFactory =
+        new ResolvingDataSource.Factory(
+            new FakeDataSource.Factory().setFakeDataSet(fakeDataSet),
+            dataSpec -> {
+              loadedUris.add(dataSpec.uri);
+              return dataSpec;
+            });
+    return new DashMediaSource.Factory(dataSourceFactory)
+        .createMediaSource(MediaItem.fromUri(LIVE_MPD_URI));
+  }
+
+  private static void prepareSource(
+      MediaSource mediaSource, AtomicReference<DashManifest> manifest) {
+    mediaSource.prepareSource(
+        (source, timeline) ->
+            manifest.set(
+                (DashManifest)
+                    timeline.getWindow(/* windowIndex= */ 0, new Timeline.Window()).manifest),
+        /* mediaTransferListener= */ null,
+        PlayerId.UNSET);
+  }
+
+  private static String buildLiveMpd(int patchTtlSeconds) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" id=\"live\" type=\"dynamic\""
+        + " availabilityStartTime=\"2024-01-01T00:00:00Z\""
+        + " publishTime=\"2024-01-01T00:01:00Z\" minimumUpdatePeriod=\"PT2S\""
+        + " timeShiftBufferDepth=\"PT30S\">\n"
+        + "<PatchLocation ttl=\""
+        + patchTtlSeconds
+        + "\">patch.mpp</PatchLocation>\n"
+        + "<UTCTiming schemeIdUri=\"urn:mpeg:dash:utc:direct:2014\""
+        + " value=\"2024-01-01T00:01:00Z\"/>\n"
+        + "<Period id=\"0\" start=\"PT0S\">\n"
+        + "<AdaptationSet id=\"0\" contentType=\"video\" mimeType=\"video/mp4\">\n"
+        + "<SegmentTemplate timescale=\"1000\" media=\"$Time$.m4s\">\n"
+        + "<SegmentTimeline><S t=\"0\" d=\"2000\" r=\"29\"/></SegmentTimeline>\n"
+        + "</SegmentTemplate>\n"
+        + "<Representation id=\"video0\" codecs=\"avc1.640028\" bandwidth=\"5000000\"/>\n"
+        + "</AdaptationSet>\n"
+        + "</Period>\n"
+        + "</MPD>\n";
+  }
+
   private static Window prepareAndWaitForTimelineRefresh(MediaSource mediaSource) throws Exception {
     AtomicReference<Timeline.Window> windowReference = new AtomicReference<>();
     mediaSource.prepareSource(
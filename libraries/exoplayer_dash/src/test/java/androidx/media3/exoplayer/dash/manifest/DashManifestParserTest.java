@@ -33,6 +33,7 @@ import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
@@ -85,6 +86,8 @@ public class DashManifestParserTest {
       "media/mpd/sample_mpd_clear_key_license_url";
   private static final String SAMPLE_MPD_DASHIF_LICENSE_URL =
       "media/mpd/sample_mpd_dashif_license_url";
+  private static final String SAMPLE_MPD_LIVE_PATCH_LOCATION =
+      "media/mpd/sample_mpd_live_patch_location";
 
   private static final String NEXT_TAG_NAME = "Next";
   private static final String NEXT_TAG = "<" + NEXT_TAG_NAME + "/>";
@@ -387,6 +390,35 @@ public class DashManifestParserTest {
     assertNextTag(xpp);
   }
 
+  @Test
+  public void parseSegmentTimeline_withDeprecatedBuildMethodOverridden_callsOverride()
+      throws Exception {
+    DashManifestParser parser =
+        new DashManifestParser() {
+          @SuppressWarnings("deprecation") // Testing the deprecated method.
+          @Override
+          protected SegmentTimelineElement buildSegmentTimelineElement(
+              long startTime, long duration) {
+            return super.buildSegmentTimelineElement(startTime * 2, duration * 2);
+          }
+        };
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTimeline><S d=\"96000\" r=\"1\"/></SegmentTimeline>" + NEXT_TAG));
+    xpp.next();
+
+    List<SegmentTimelineElement> elements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000);
+
+    assertThat(elements)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 192000),
+            new SegmentTimelineElement(/* startTime= */ 192000, /* duration= */ 192000))
+        .inOrder();
+    assertNextTag(xpp);
+  }
+
   @Test
   public void parseSegmentTimeline_singleUndefinedRepeatCount() throws Exception {
     DashManifestParser parser = new DashManifestParser();
@@ -985,6 +1017,178 @@ public class DashManifestParserTest {
     assertThat(schemeData1.licenseServerUrl).isEqualTo("https://testserver2.test/AcquireLicense");
   }
 
+  @Test
+  public void parsePatchLocation() throws IOException {
+    DashManifestParser parser = new DashManifestParser();
+
+    DashManifest manifest =
+        parser.parse(
+            Uri.parse("https://example.com/live/test.mpd"),
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE_PATCH_LOCATION));
+
+    assertThat(manifest.patchLocation)
+        .isEqualTo(Uri.parse("https://example.com/live/patch/live.mpp"));
+    assertThat(manifest.patchLocationTtlMs).isEqualTo(60_000);
+  }
+
+  @Test
+  public void parsePatchLocation_withMalformedTtl_ttlUnset() throws IOException {
+    DashManifestParser parser = new DashManifestParser();
+    String manifestString =
+        TestUtil.getString(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE_PATCH_LOCATION)
+            .replace("ttl=\"60\"", "ttl=\"sixty\"");
+
+    DashManifest manifest =
+        parser.parse(
+            Uri.parse("https://example.com/live/test.mpd"),
+            new ByteArrayInputStream(Util.getUtf8Bytes(manifestString)));
+
+    assertThat(manifest.patchLocation)
+        .isEqualTo(Uri.parse("https://example.com/live/patch/live.mpp"));
+    assertThat(manifest.patchLocationTtlMs).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void parse_withoutPatchLocation_patchLocationUnset() throws IOException {
+    DashManifestParser parser = new DashManifestParser();
+
+    DashManifest manifest =
+        parser.parse(
+            Uri.parse("https://example.com/test.mpd"),
+            TestUtil.getInputStream(ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE));
+
+    assertThat(manifest.patchLocation).isNull();
+    assertThat(manifest.patchLocationTtlMs).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void parse_withUnchangedPreviousManifest_reusesAllPeriods() throws IOException {
+    DashManifestParser parser =
+        new DashManifestParser()
+            .experimentalSetReuseUnchangedElements(/* reuseUnchangedElements= */ true);
+    Uri uri = Uri.parse("https://example.com/test.mpd");
+    DashManifest previousManifest =
+        parser.parse(
+            uri,
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE_PATCH_LOCATION));
+
+    DashManifest manifest =
+        parser.parse(
+            uri,
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE_PATCH_LOCATION),
+            previousManifest);
+
+    assertThat(manifest).isNotSameInstanceAs(previousManifest);
+    assertThat(manifest.getPeriodCount()).isEqualTo(2);
+    assertThat(manifest.getPeriod(0)).isSameInstanceAs(previousManifest.getPeriod(0));
+    assertThat(manifest.getPeriod(1)).isSameInstanceAs(previousManifest.getPeriod(1));
+  }
+
+  @Test
+  public void parse_withPreviousManifestAndReuseDisabled_doesNotReusePeriods() throws IOException {
+    DashManifestParser parser = new DashManifestParser();
+    Uri uri = Uri.parse("https://example.com/test.mpd");
+    DashManifest previousManifest =
+        parser.parse(
+            uri,
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE_PATCH_LOCATION));
+
+    DashManifest manifest =
+        parser.parse(
+            uri,
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE_PATCH_LOCATION),
+            previousManifest);
+
+    assertThat(manifest.getPeriod(0)).isNotSameInstanceAs(previousManifest.getPeriod(0));
+    assertThat(manifest.getPeriod(1)).isNotSameInstanceAs(previousManifest.getPeriod(1));
+  }
+
+  @Test
+  @SuppressWarnings("deprecation") // Testing the deprecated overload.
+  public void parse_withDeprecatedBuildMethodOverridden_callsOverride() throws IOException {
+    DashManifestParser parser =
+        new DashManifestParser() {
+          @Override
+          protected DashManifest buildMediaPresentationDescription(
+              long availabilityStartTime,
+              long durationMs,
+              long minBufferTimeMs,
+              boolean dynamic,
+              long minUpdateTimeMs,
+              long timeShiftBufferDepthMs,
+              long suggestedPresentationDelayMs,
+              long publishTimeMs,
+              @Nullable ProgramInformation programInformation,
+              @Nullable UtcTimingElement utcTiming,
+              @Nullable ServiceDescriptionElement serviceDescription,
+              @Nullable Uri location,
+              List<Period> periods) {
+            return super.buildMediaPresentationDescription(
+                availabilityStartTime,
+                /* durationMs= */ 1234,
+                minBufferTimeMs,
+                dynamic,
+                minUpdateTimeMs,
+                timeShiftBufferDepthMs,
+                suggestedPresentationDelayMs,
+                publishTimeMs,
+                programInformation,
+                utcTiming,
+                serviceDescription,
+                location,
+                periods);
+          }
+        };
+
+    DashManifest manifest =
+        parser.parse(
+            Uri.parse("https://example.com/live/test.mpd"),
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE_PATCH_LOCATION));
+
+    assertThat(manifest.durationMs).isEqualTo(1234);
+    assertThat(manifest.patchLocation)
+        .isEqualTo(Uri.parse("https://example.com/live/patch/live.mpp"));
+  }
+
+  @Test
+  public void parse_withChangedPreviousManifest_reusesOnlyUnchangedElements() throws IOException {
+    DashManifestParser parser =
+        new DashManifestParser()
+            .experimentalSetReuseUnchangedElements(/* reuseUnchangedElements= */ true);
+    Uri uri = Uri.parse("https://example.com/test.mpd");
+    String previousManifestString =
+        TestUtil.getString(
+            ApplicationProvider.getApplicationContext(), SAMPLE_MPD_LIVE_PATCH_LOCATION);
+    DashManifest previousManifest =
+        parser.parse(uri, new ByteArrayInputStream(Util.getUtf8Bytes(previousManifestString)));
+    // Add a video segment to the last period.
+    String manifestString =
+        previousManifestString.replace(
+            "<S t=\"30000\" d=\"2000\" r=\"9\"/>", "<S t=\"30000\" d=\"2000\" r=\"10\"/>");
+
+    DashManifest manifest =
+        parser.parse(
+            uri, new ByteArrayInputStream(Util.getUtf8Bytes(manifestString)), previousManifest);
+
+    assertThat(manifest.getPeriod(0)).isSameInstanceAs(previousManifest.getPeriod(0));
+    Period period = manifest.getPeriod(1);
+    Period previousPeriod = previousManifest.getPeriod(1);
+    assertThat(period).isNotSameInstanceAs(previousPeriod);
+    assertThat(period.adaptationSets.get(0))
+        .isNotSameInstanceAs(previousPeriod.adaptationSets.get(0));
+    assertThat(period.adaptationSets.get(1)).isSameInstanceAs(previousPeriod.adaptationSets.get(1));
+    MultiSegmentRepresentation representation =
+        (MultiSegmentRepresentation) period.adaptationSets.get(0).representations.get(0);
+    assertThat(representation.segmentBase.segmentTimeline).hasSize(11);
+  }
+
   private static List<Descriptor> buildCea608AccessibilityDescriptors(String value) {
     return Collections.singletonList(new Descriptor("urn:scte:dash:cc:cea-608:2015", value, null));
   }
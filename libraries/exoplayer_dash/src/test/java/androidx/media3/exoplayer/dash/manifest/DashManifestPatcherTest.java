@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.ParserException;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.dash.manifest.Representation.MultiSegmentRepresentation;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentTimelineElement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DashManifestPatcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class DashManifestPatcherTest {
+
+  private static final String MPD =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" id=\"live\" type=\"dynamic\""
+          + " availabilityStartTime=\"2024-01-01T00:00:00Z\""
+          + " publishTime=\"2024-01-01T00:01:00Z\" minimumUpdatePeriod=\"PT2S\">\n"
+          + "<PatchLocation ttl=\"60\">live.mpp</PatchLocation>\n"
+          + "<Period id=\"0\" start=\"PT0S\">\n"
+          + "<AdaptationSet id=\"0\" contentType=\"video\" mimeType=\"video/mp4\">\n"
+          + "<SegmentTemplate timescale=\"1000\" media=\"$RepresentationID$/$Time$.m4s\">\n"
+          + "<SegmentTimeline><S t=\"0\" d=\"2000\" r=\"1\"/></SegmentTimeline>\n"
+          + "</SegmentTemplate>\n"
+          + "<Representation id=\"video0\" codecs=\"avc1.640028\" bandwidth=\"5000000\"/>\n"
+          + "</AdaptationSet>\n"
+          + "</Period>\n"
+          + "</MPD>\n";
+
+  @Test
+  public void applyPatch_addsSegmentsAndUpdatesPublishTime() throws IOException {
+    DashManifestPatcher patcher = new DashManifestPatcher(toInputStream(MPD));
+
+    patcher.applyPatch(
+        toInputStream(
+            buildPatch(
+                "<replace sel=\"/MPD/@publishTime\">2024-01-01T00:01:04Z</replace>"
+                    + "<add sel=\"/MPD/Period[@id='0']/AdaptationSet[@id='0']"
+                    + "/SegmentTemplate/SegmentTimeline\"><S d=\"2000\" r=\"1\"/></add>")));
+
+    DashManifest manifest = parse(patcher.getMpdData());
+    assertThat(manifest.publishTimeMs).isEqualTo(Util.parseXsDateTime("2024-01-01T00:01:04Z"));
+    MultiSegmentRepresentation representation =
+        (MultiSegmentRepresentation)
+            manifest.getPeriod(0).adaptationSets.get(0).representations.get(0);
+    assertThat(representation.segmentBase.segmentTimeline)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 2000),
+            new SegmentTimelineElement(/* startTime= */ 2000, /* duration= */ 2000),
+            new SegmentTimelineElement(/* startTime= */ 4000, /* duration= */ 2000),
+            new SegmentTimelineElement(/* startTime= */ 6000, /* duration= */ 2000))
+        .inOrder();
+  }
+
+  @Test
+  public void applyPatch_withoutPublishTimeReplacement_usesPatchPublishTime() throws IOException {
+    DashManifestPatcher patcher = new DashManifestPatcher(toInputStream(MPD));
+
+    patcher.applyPatch(toInputStream(buildPatch(/* operations= */ "")));
+
+    assertThat(parse(patcher.getMpdData()).publishTimeMs)
+        .isEqualTo(Util.parseXsDateTime("2024-01-01T00:01:04Z"));
+  }
+
+  @Test
+  public void applyPatch_addsAndRemovesPeriodsInOrder() throws IOException {
+    DashManifestPatcher patcher = new DashManifestPatcher(toInputStream(MPD));
+
+    patcher.applyPatch(
+        toInputStream(
+            buildPatch(
+                "<add sel=\"/MPD/Period[@id='0']\" pos=\"after\">"
+                    + "<Period id=\"1\" start=\"PT4S\"/><Period id=\"2\" start=\"PT8S\"/></add>"
+                    + "<remove sel=\"/MPD/Period[@id='0']\"/>")));
+
+    DashManifest manifest = parse(patcher.getMpdData());
+    assertThat(manifest.getPeriodCount()).isEqualTo(2);
+    assertThat(manifest.getPeriod(0).id).isEqualTo("1");
+    assertThat(manifest.getPeriod(1).id).isEqualTo("2");
+  }
+
+  @Test
+  public void applyPatch_addsAndRemovesAttributes() throws IOException {
+    DashManifestPatcher patcher = new DashManifestPatcher(toInputStream(MPD));
+
+    patcher.applyPatch(
+        toInputStream(
+            buildPatch(
+                "<add sel=\"/MPD\" type=\"@mediaPresentationDuration\">PT8S</add>"
+                    + "<remove sel=\"/MPD/@minimumUpdatePeriod\"/>")));
+
+    DashManifest manifest = parse(patcher.getMpdData());
+    assertThat(manifest.durationMs).isEqualTo(8_000);
+    assertThat(manifest.minUpdatePeriodMs).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void applyPatch_twice_failsForOutdatedPatch() throws IOException {
+    DashManifestPatcher patcher = new DashManifestPatcher(toInputStream(MPD));
+    String patch = buildPatch(/* operations= */ "");
+    patcher.applyPatch(toInputStream(patch));
+
+    assertThrows(ParserException.class, () -> patcher.applyPatch(toInputStream(patch)));
+  }
+
+  @Test
+  public void applyPatch_withDifferentMpdId_fails() throws IOException {
+    DashManifestPatcher patcher = new DashManifestPatcher(toInputStream(MPD));
+    String patch = buildPatch(/* operations= */ "").replace("mpdId=\"live\"", "mpdId=\"other\"");
+
+    assertThrows(ParserException.class, () -> patcher.applyPatch(toInputStream(patch)));
+  }
+
+  @Test
+  public void applyPatch_withSelectorMatchingNoNode_fails() throws IOException {
+    DashManifestPatcher patcher = new DashManifestPatcher(toInputStream(MPD));
+    String patch = buildPatch("<remove sel=\"/MPD/Period[@id='1']\"/>");
+
+    assertThrows(ParserException.class, () -> patcher.applyPatch(toInputStream(patch)));
+  }
+
+  @Test
+  public void createPatcher_withDocumentOtherThanMpd_fails() {
+    assertThrows(
+        ParserException.class,
+        () -> new DashManifestPatcher(toInputStream(buildPatch(/* operations= */ ""))));
+  }
+
+  @Test
+  public void createPatcher_withDocumentTypeDeclaration_fails() {
+    String mpd = MPD.replace("<MPD ", "<!DOCTYPE MPD [<!ENTITY title \"Title\">]>\n<MPD ");
+
+    assertThrows(ParserException.class, () -> new DashManifestPatcher(toInputStream(mpd)));
+  }
+
+  @Test
+  public void applyPatch_withExternalEntity_fails() throws IOException {
+    DashManifestPatcher patcher = new DashManifestPatcher(toInputStream(MPD));
+    String patch =
+        buildPatch("<replace sel=\"/MPD/@publishTime\">&external;</replace>")
+            .replace(
+                "<Patch ",
+                "<!DOCTYPE Patch [<!ENTITY external SYSTEM \"file:///etc/hosts\">]>\n<Patch ");
+
+    assertThrows(ParserException.class, () -> patcher.applyPatch(toInputStream(patch)));
+  }
+
+  private static String buildPatch(String operations) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<Patch xmlns=\"urn:mpeg:dash:schema:mpd-patch:2020\" mpdId=\"live\""
+        + " originalPublishTime=\"2024-01-01T00:01:00Z\""
+        + " publishTime=\"2024-01-01T00:01:04Z\">"
+        + operations
+        + "</Patch>";
+  }
+
+  private static DashManifest parse(byte[] mpdData) throws IOException {
+    return new DashManifestParser()
+        .parse(Uri.parse("https://example.com/test.mpd"), new ByteArrayInputStream(mpdData));
+  }
+
+  private static InputStream toInputStream(String data) {
+    return new ByteArrayInputStream(Util.getUtf8Bytes(data));
+  }
+}
@@ -191,6 +191,8 @@ public class DashManifestTest {
     assertThat(actual.publishTimeMs).isEqualTo(expected.publishTimeMs);
     assertThat(actual.utcTiming).isEqualTo(expected.utcTiming);
     assertThat(actual.location).isEqualTo(expected.location);
+    assertThat(actual.patchLocation).isEqualTo(expected.patchLocation);
+    assertThat(actual.patchLocationTtlMs).isEqualTo(expected.patchLocationTtlMs);
     assertThat(actual.getPeriodCount()).isEqualTo(expected.getPeriodCount());
     assertThat(actual.serviceDescription).isEqualTo(expected.serviceDescription);
     for (int i = 0; i < expected.getPeriodCount(); i++) {
@@ -252,6 +254,8 @@ public class DashManifestTest {
         UTC_TIMING,
         serviceDescription,
         Uri.EMPTY,
+        /* patchLocation= */ Uri.parse("https://example.com/patch.mpp"),
+        /* patchLocationTtlMs= */ 60_000,
         Arrays.asList(periods));
   }
 
@@ -221,4 +221,50 @@ public final class SegmentBaseTest {
             /* periodStartUnixTimeUs= */ C.TIME_UNSET);
     assertThat(segmentTemplate.getSegmentCount(1618875028000000L)).isEqualTo(8994299808L);
   }
+
+  @Test
+  public void getSegmentNum_withSegmentTimeline_returnsSegmentContainingTime() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .addSegments(/* startTime= */ 1000, /* duration= */ 2000, /* count= */ 3)
+            .addSegments(/* startTime= */ 7000, /* duration= */ 1000, /* count= */ 2)
+            .addSegments(/* startTime= */ 10_000, /* duration= */ 3000, /* count= */ 2)
+            .build();
+    SegmentBase.SegmentTemplate segmentTemplate =
+        new SegmentBase.SegmentTemplate(
+            /* initialization= */ null,
+            /* timescale= */ 1000,
+            /* presentationTimeOffset= */ 1000,
+            /* startNumber= */ 10,
+            /* endNumber= */ C.INDEX_UNSET,
+            /* duration= */ C.TIME_UNSET,
+            segmentTimeline,
+            /* availabilityTimeOffsetUs= */ C.TIME_UNSET,
+            /* initializationTemplate= */ null,
+            /* mediaTemplate= */ null,
+            /* timeShiftBufferDepthUs= */ C.TIME_UNSET,
+            /* periodStartUnixTimeUs= */ C.TIME_UNSET);
+
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 0, C.TIME_UNSET)).isEqualTo(10);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 1_999_999, C.TIME_UNSET))
+        .isEqualTo(10);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 2_000_000, C.TIME_UNSET))
+        .isEqualTo(11);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 5_500_000, C.TIME_UNSET))
+        .isEqualTo(12);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 6_000_000, C.TIME_UNSET))
+        .isEqualTo(13);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 7_000_000, C.TIME_UNSET))
+        .isEqualTo(14);
+    // The gap between the second and third runs belongs to the last segment before it.
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 8_500_000, C.TIME_UNSET))
+        .isEqualTo(14);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 12_000_000, C.TIME_UNSET))
+        .isEqualTo(16);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 100_000_000, C.TIME_UNSET))
+        .isEqualTo(16);
+    assertThat(segmentTemplate.getSegmentTimeUs(/* sequenceNumber= */ 15)).isEqualTo(9_000_000);
+    assertThat(segmentTemplate.getSegmentDurationUs(/* sequenceNumber= */ 15, C.TIME_UNSET))
+        .isEqualTo(3_000_000);
+  }
 }
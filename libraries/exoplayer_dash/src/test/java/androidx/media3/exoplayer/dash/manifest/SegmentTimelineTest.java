@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentTimelineElement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link SegmentTimeline}. */
+@RunWith(AndroidJUnit4.class)
+public final class SegmentTimelineTest {
+
+  @Test
+  public void build_mergesContiguousSegmentsOfEqualDuration() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .addSegments(/* startTime= */ 0, /* duration= */ 10, /* count= */ 2)
+            .addSegments(/* startTime= */ 20, /* duration= */ 10, /* count= */ 3)
+            .addSegments(/* startTime= */ 50, /* duration= */ 5, /* count= */ 1)
+            .addSegments(/* startTime= */ 60, /* duration= */ 5, /* count= */ 2)
+            .addSegments(/* startTime= */ 70, /* duration= */ 5, /* count= */ 0)
+            .build();
+
+    assertThat(segmentTimeline).hasSize(8);
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(3);
+    assertThat(segmentTimeline.getRunStartIndex(1)).isEqualTo(5);
+    assertThat(segmentTimeline.getRunLength(1)).isEqualTo(1);
+    assertThat(segmentTimeline.getRunLength(2)).isEqualTo(2);
+  }
+
+  @Test
+  public void getStartTimeAndDuration_returnValuesOfSegment() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .addSegments(/* startTime= */ 100, /* duration= */ 10, /* count= */ 4)
+            .addSegments(/* startTime= */ 150, /* duration= */ 20, /* count= */ 2)
+            .build();
+
+    assertThat(segmentTimeline.getStartTime(0)).isEqualTo(100);
+    assertThat(segmentTimeline.getStartTime(3)).isEqualTo(130);
+    assertThat(segmentTimeline.getDuration(3)).isEqualTo(10);
+    assertThat(segmentTimeline.getStartTime(5)).isEqualTo(170);
+    assertThat(segmentTimeline.getDuration(5)).isEqualTo(20);
+    assertThrows(IndexOutOfBoundsException.class, () -> segmentTimeline.getStartTime(6));
+    assertThrows(IndexOutOfBoundsException.class, () -> segmentTimeline.getDuration(-1));
+  }
+
+  @Test
+  public void equals_comparesElements() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .addSegments(/* startTime= */ 0, /* duration= */ 10, /* count= */ 2)
+            .addSegments(/* startTime= */ 25, /* duration= */ 10, /* count= */ 1)
+            .build();
+
+    assertThat(segmentTimeline)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 10, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 25, /* duration= */ 10))
+        .inOrder();
+  }
+
+  @Test
+  public void equalsAndHashCode_withOtherList_matchListContract() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .addSegments(/* startTime= */ 0, /* duration= */ 10, /* count= */ 2)
+            .addSegments(/* startTime= */ 25, /* duration= */ 10, /* count= */ 1)
+            .build();
+    ImmutableList<SegmentTimelineElement> elements =
+        ImmutableList.of(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 10, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 25, /* duration= */ 10));
+    ImmutableList<SegmentTimelineElement> otherElements =
+        ImmutableList.of(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 10, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 20, /* duration= */ 10));
+
+    assertThat(segmentTimeline.equals(elements)).isTrue();
+    assertThat(segmentTimeline.hashCode()).isEqualTo(elements.hashCode());
+    assertThat(segmentTimeline.equals(otherElements)).isFalse();
+    assertThat(new SegmentTimeline.Builder().build().hashCode())
+        .isEqualTo(ImmutableList.of().hashCode());
+  }
+
+  @Test
+  public void copyOf_withList_returnsEqualTimeline() {
+    ImmutableList<SegmentTimelineElement> elements =
+        ImmutableList.of(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 10, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 20, /* duration= */ 15));
+
+    SegmentTimeline segmentTimeline = SegmentTimeline.copyOf(elements);
+
+    assertThat(segmentTimeline).isEqualTo(elements);
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void copyOf_withSegmentTimeline_returnsSameInstance() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .addSegments(/* startTime= */ 0, /* duration= */ 10, /* count= */ 2)
+            .build();
+
+    assertThat(SegmentTimeline.copyOf(segmentTimeline)).isSameInstanceAs(segmentTimeline);
+  }
+}
@@ -21,14 +21,18 @@ import static androidx.media3.exoplayer.dash.offline.DashDownloadTestData.TEST_M
 import static androidx.media3.test.utils.CacheAsserts.assertCacheEmpty;
 import static androidx.media3.test.utils.CacheAsserts.assertCachedData;
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import android.net.Uri;
+import androidx.media3.common.C;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.MimeTypes;
+import androidx.media3.common.PriorityTaskManager.PriorityTooLowException;
 import androidx.media3.common.StreamKey;
+import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.common.util.Util;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.PlaceholderDataSource;
@@ -36,12 +40,16 @@ import androidx.media3.datasource.cache.Cache;
 import androidx.media3.datasource.cache.CacheDataSource;
 import androidx.media3.datasource.cache.NoOpCacheEvictor;
 import androidx.media3.datasource.cache.SimpleCache;
+import androidx.media3.exoplayer.offline.AdaptiveParallelismController;
+import androidx.media3.exoplayer.offline.DefaultDownloadIndex;
 import androidx.media3.exoplayer.offline.DefaultDownloaderFactory;
 import androidx.media3.exoplayer.offline.DownloadException;
 import androidx.media3.exoplayer.offline.DownloadRequest;
 import androidx.media3.exoplayer.offline.Downloader;
 import androidx.media3.exoplayer.offline.DownloaderFactory;
+import androidx.media3.exoplayer.offline.SegmentProgress;
 import androidx.media3.test.utils.CacheAsserts.RequestSet;
+import androidx.media3.test.utils.FakeClock;
 import androidx.media3.test.utils.FakeDataSet;
 import androidx.media3.test.utils.FakeDataSource;
 import androidx.media3.test.utils.TestUtil;
@@ -51,6 +59,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -62,6 +75,8 @@ import org.mockito.MockitoAnnotations;
 @RunWith(AndroidJUnit4.class)
 public class DashDownloaderTest {
 
+  private static final long TIMEOUT_MS = 10_000;
+
   private SimpleCache cache;
   private File tempFolder;
   private ProgressListener progressListener;
@@ -292,6 +307,107 @@ public class DashDownloaderTest {
     progressListener.assertBytesDownloaded(10 + 4 + 5 + 6);
   }
 
+  @Test
+  public void downloadRepresentationFailure_withSegmentProgressIndex_storesCompletedSegments()
+      throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .newData("audio_segment_2")
+            .appendReadData(TestUtil.buildTestData(2))
+            .appendReadError(new IOException())
+            .appendReadData(TestUtil.buildTestData(3))
+            .endData()
+            .setRandomData("audio_segment_3", 6);
+    DefaultDownloadIndex segmentProgressIndex =
+        new DefaultDownloadIndex(TestUtil.getInMemoryDatabaseProvider());
+
+    DashDownloader dashDownloader = getDashDownloader(fakeDataSet, new StreamKey(0, 0, 0));
+    dashDownloader.setSegmentProgressIndex(segmentProgressIndex, /* downloadId= */ "id");
+    try {
+      dashDownloader.download(progressListener);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+
+    // The init data and segment 1 are stored as completed.
+    SegmentProgress segmentProgress = segmentProgressIndex.getSegmentProgress("id");
+    assertThat(segmentProgress.segmentCount).isEqualTo(4);
+    assertThat(segmentProgress.getCompletedSegmentCount()).isEqualTo(2);
+    assertThat(segmentProgress.completedBytes).isEqualTo(10 + 4);
+
+    dashDownloader.download(progressListener);
+    segmentProgress = segmentProgressIndex.getSegmentProgress("id");
+    assertThat(segmentProgress.getCompletedSegmentCount()).isEqualTo(4);
+    assertThat(segmentProgress.completedBytes).isEqualTo(10 + 4 + 5 + 6);
+    assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
+  }
+
+  @Test
+  public void download_withStoredSegmentProgress_skipsCompletedSegments() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .newData("audio_segment_2")
+            .appendReadData(TestUtil.buildTestData(2))
+            .appendReadError(new IOException())
+            .endData();
+    DefaultDownloadIndex segmentProgressIndex =
+        new DefaultDownloadIndex(TestUtil.getInMemoryDatabaseProvider());
+    DashDownloader dashDownloader = getDashDownloader(fakeDataSet, new StreamKey(0, 0, 0));
+    dashDownloader.setSegmentProgressIndex(segmentProgressIndex, /* downloadId= */ "id");
+    try {
+      dashDownloader.download(progressListener);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+
+    // Remove the downloaded data from the cache, and the completed segments from the upstream data,
+    // so that the download can only succeed if it skips the segments that are stored as completed.
+    for (String key : cache.getKeys()) {
+      cache.removeResource(key);
+    }
+    fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6);
+    dashDownloader = getDashDownloader(fakeDataSet, new StreamKey(0, 0, 0));
+    dashDownloader.setSegmentProgressIndex(segmentProgressIndex, /* downloadId= */ "id");
+    dashDownloader.download(progressListener);
+
+    progressListener.assertBytesDownloaded(10 + 4 + 5 + 6);
+    assertThat(segmentProgressIndex.getSegmentProgress("id").getCompletedSegmentCount())
+        .isEqualTo(4);
+  }
+
+  @Test
+  public void remove_withSegmentProgressIndex_removesSegmentProgress() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6);
+    DefaultDownloadIndex segmentProgressIndex =
+        new DefaultDownloadIndex(TestUtil.getInMemoryDatabaseProvider());
+    DashDownloader dashDownloader = getDashDownloader(fakeDataSet, new StreamKey(0, 0, 0));
+    dashDownloader.setSegmentProgressIndex(segmentProgressIndex, /* downloadId= */ "id");
+    dashDownloader.download(progressListener);
+
+    dashDownloader.remove();
+
+    assertThat(segmentProgressIndex.getSegmentProgress("id")).isNull();
+    assertCacheEmpty(cache);
+  }
+
   @Test
   public void remove() throws Exception {
     FakeDataSet fakeDataSet =
@@ -330,6 +446,178 @@ public class DashDownloaderTest {
     assertCacheEmpty(cache);
   }
 
+  @Test
+  public void download_withParallelismControllerAndFailure_closesSession()
+      throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .newData("audio_segment_2")
+            .appendReadData(TestUtil.buildTestData(2))
+            .appendReadError(new IOException())
+            .endData()
+            .setRandomData("audio_segment_3", 6);
+    AdaptiveParallelismController controller = new AdaptiveParallelismController.Builder().build();
+    DashDownloader dashDownloader =
+        getDashDownloader(
+            fakeDataSet, /* executor= */ Runnable::run, controller, new StreamKey(0, 0, 0));
+
+    try {
+      dashDownloader.download(progressListener);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+
+    assertThat(controller.getDownloadCount()).isEqualTo(0);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void download_withParallelismControllerAndPriorityTooLow_doesNotReduceLimit()
+      throws Exception {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    AdaptiveParallelismController controller =
+        new AdaptiveParallelismController.Builder().setClock(clock).build();
+    AtomicInteger parallelRequestLimitOnRetry = new AtomicInteger(C.INDEX_UNSET);
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .newData("audio_init_data")
+            // Take long enough for the first request to be measured, which doubles the limit.
+            .appendReadAction(() -> clock.advanceTime(/* timeDiffMs= */ 100))
+            .appendReadData(TestUtil.buildTestData(10))
+            .endData()
+            .newData("audio_segment_1")
+            .appendReadError(
+                new PriorityTooLowException(
+                    C.PRIORITY_DOWNLOAD, /* highestPriority= */ C.PRIORITY_PLAYBACK))
+            .appendReadAction(
+                () -> parallelRequestLimitOnRetry.set(controller.getParallelRequestLimit()))
+            .appendReadData(TestUtil.buildTestData(4))
+            .endData()
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6);
+    DashDownloader dashDownloader =
+        getDashDownloader(
+            fakeDataSet, /* executor= */ Runnable::run, controller, new StreamKey(0, 0, 0));
+
+    dashDownloader.download(progressListener);
+
+    assertThat(parallelRequestLimitOnRetry.get()).isEqualTo(2);
+    assertThat(controller.getDownloadCount()).isEqualTo(0);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(0);
+    assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
+  }
+
+  @Test
+  public void download_withParallelismControllerAndRejectedSegmentTask_releasesRequest()
+      throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6);
+    AdaptiveParallelismController controller = new AdaptiveParallelismController.Builder().build();
+    // Run the task that loads the manifest, and reject the segment tasks.
+    AtomicBoolean ranManifestTask = new AtomicBoolean();
+    Executor executor =
+        runnable -> {
+          if (ranManifestTask.getAndSet(true)) {
+            throw new RejectedExecutionException();
+          }
+          runnable.run();
+        };
+    DashDownloader dashDownloader =
+        getDashDownloader(fakeDataSet, executor, controller, new StreamKey(0, 0, 0));
+
+    assertThrows(
+        RejectedExecutionException.class, () -> dashDownloader.download(progressListener));
+
+    assertThat(controller.getParallelRequestCount()).isEqualTo(0);
+    assertThat(controller.getDownloadCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void cancel_withParallelismControllerBeforeSegmentDownloadStarts_releasesRequest()
+      throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6);
+    AdaptiveParallelismController controller = new AdaptiveParallelismController.Builder().build();
+    SegmentHoldingExecutor executor = new SegmentHoldingExecutor();
+    DashDownloader dashDownloader =
+        getDashDownloader(fakeDataSet, executor, controller, new StreamKey(0, 0, 0));
+    Thread downloadThread =
+        startDownloadThread(dashDownloader, /* downloadException= */ new AtomicReference<>());
+    assertThat(executor.segmentTaskHeld.block(TIMEOUT_MS)).isTrue();
+    int parallelRequestCountBeforeCancel = controller.getParallelRequestCount();
+
+    dashDownloader.cancel();
+    downloadThread.join(TIMEOUT_MS);
+
+    assertThat(downloadThread.isAlive()).isFalse();
+    assertThat(parallelRequestCountBeforeCancel).isEqualTo(1);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(0);
+    assertThat(controller.getDownloadCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void cancel_withParallelismControllerWhileWaitingForRequest_closesSession()
+      throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6)
+            .setRandomData("text_segment_1", 1)
+            .setRandomData("text_segment_2", 2)
+            .setRandomData("text_segment_3", 3);
+    AdaptiveParallelismController controller =
+        new AdaptiveParallelismController.Builder().setMaxParallelRequests(1).build();
+    // The first download holds the only request that the controller allows.
+    SegmentHoldingExecutor executor = new SegmentHoldingExecutor();
+    DashDownloader holdingDownloader =
+        getDashDownloader(fakeDataSet, executor, controller, new StreamKey(0, 0, 0));
+    Thread holdingDownloadThread =
+        startDownloadThread(holdingDownloader, /* downloadException= */ new AtomicReference<>());
+    assertThat(executor.segmentTaskHeld.block(TIMEOUT_MS)).isTrue();
+    DashDownloader waitingDownloader =
+        getDashDownloader(
+            fakeDataSet, /* executor= */ Runnable::run, controller, new StreamKey(0, 1, 0));
+    AtomicReference<Exception> waitingDownloadException = new AtomicReference<>();
+    Thread waitingDownloadThread =
+        startDownloadThread(waitingDownloader, waitingDownloadException);
+    waitUntilWaiting(waitingDownloadThread);
+    int downloadCountBeforeCancel = controller.getDownloadCount();
+
+    // Cancel the download in the same way as DownloadManager does.
+    waitingDownloader.cancel();
+    waitingDownloadThread.interrupt();
+    waitingDownloadThread.join(TIMEOUT_MS);
+
+    assertThat(waitingDownloadThread.isAlive()).isFalse();
+    assertThat(waitingDownloadException.get()).isInstanceOf(InterruptedException.class);
+    assertThat(downloadCountBeforeCancel).isEqualTo(2);
+    assertThat(controller.getDownloadCount()).isEqualTo(1);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(1);
+    holdingDownloader.cancel();
+    holdingDownloadThread.join(TIMEOUT_MS);
+    assertThat(holdingDownloadThread.isAlive()).isFalse();
+    assertThat(controller.getDownloadCount()).isEqualTo(0);
+    assertThat(controller.getParallelRequestCount()).isEqualTo(0);
+  }
+
   private DashDownloader getDashDownloader(FakeDataSet fakeDataSet, StreamKey... keys) {
     return getDashDownloader(new FakeDataSource.Factory().setFakeDataSet(fakeDataSet), keys);
   }
@@ -345,12 +633,76 @@ public class DashDownloaderTest {
         cacheDataSourceFactory);
   }
 
+  private DashDownloader getDashDownloader(
+      FakeDataSet fakeDataSet,
+      Executor executor,
+      AdaptiveParallelismController parallelismController,
+      StreamKey... keys) {
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(new FakeDataSource.Factory().setFakeDataSet(fakeDataSet));
+    DashDownloader dashDownloader =
+        new DashDownloader(
+            new MediaItem.Builder().setUri(TEST_MPD_URI).setStreamKeys(keysList(keys)).build(),
+            cacheDataSourceFactory,
+            executor);
+    dashDownloader.setParallelismController(parallelismController);
+    return dashDownloader;
+  }
+
+  private static Thread startDownloadThread(
+      Downloader downloader, AtomicReference<Exception> downloadException) {
+    Thread downloadThread =
+        new Thread(
+            () -> {
+              try {
+                downloader.download(/* progressListener= */ null);
+              } catch (Exception e) {
+                downloadException.set(e);
+              }
+            });
+    downloadThread.start();
+    return downloadThread;
+  }
+
+  private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+    while (thread.getState() != Thread.State.WAITING) {
+      Thread.sleep(/* millis= */ 1);
+    }
+  }
+
   private static ArrayList<StreamKey> keysList(StreamKey... keys) {
     ArrayList<StreamKey> keysList = new ArrayList<>();
     Collections.addAll(keysList, keys);
     return keysList;
   }
 
+  /**
+   * An {@link Executor} that runs the first task, which loads the manifest, and holds back all
+   * other tasks without ever running them.
+   */
+  private static final class SegmentHoldingExecutor implements Executor {
+
+    public final ConditionVariable segmentTaskHeld;
+
+    private boolean ranManifestTask;
+
+    public SegmentHoldingExecutor() {
+      segmentTaskHeld = new ConditionVariable();
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+      if (!ranManifestTask) {
+        ranManifestTask = true;
+        runnable.run();
+      } else {
+        segmentTaskHeld.open();
+      }
+    }
+  }
+
   private static final class ProgressListener implements Downloader.ProgressListener {
 
     private long bytesDownloaded;
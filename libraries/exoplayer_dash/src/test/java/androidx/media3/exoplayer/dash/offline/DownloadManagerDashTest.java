@@ -35,6 +35,7 @@ import androidx.media3.exoplayer.offline.DefaultDownloadIndex;
 import androidx.media3.exoplayer.offline.DefaultDownloaderFactory;
 import androidx.media3.exoplayer.offline.DownloadManager;
 import androidx.media3.exoplayer.offline.DownloadRequest;
+import androidx.media3.exoplayer.offline.SegmentProgress;
 import androidx.media3.exoplayer.scheduler.Requirements;
 import androidx.media3.test.utils.CacheAsserts.RequestSet;
 import androidx.media3.test.utils.DummyMainThread;
@@ -209,6 +210,60 @@ public class DownloadManagerDashTest {
     assertCacheEmpty(cache);
   }
 
+  @Test
+  public void handleDownloadRequest_segmentProgressDisabledByDefault_doesNotStoreProgress()
+      throws Throwable {
+    handleDownloadRequest(fakeStreamKey1, fakeStreamKey2);
+    downloadManagerListener.blockUntilIdleAndThrowAnyFailure();
+
+    assertThat(downloadManager.isSegmentProgressEnabled()).isFalse();
+    assertThat(downloadIndex.getSegmentProgress(TEST_ID)).isNull();
+  }
+
+  @Test
+  public void handleDownloadRequest_withSegmentProgressEnabled_storesAllSegmentsAsCompleted()
+      throws Throwable {
+    runOnMainThread(() -> downloadManager.setSegmentProgressEnabled(true));
+
+    handleDownloadRequest(fakeStreamKey1, fakeStreamKey2);
+    downloadManagerListener.blockUntilIdleAndThrowAnyFailure();
+
+    SegmentProgress segmentProgress = downloadIndex.getSegmentProgress(TEST_ID);
+    assertThat(segmentProgress).isNotNull();
+    assertThat(segmentProgress.getCompletedSegmentCount()).isEqualTo(segmentProgress.segmentCount);
+    assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
+  }
+
+  @Test
+  public void handleRemoveAction_withSegmentProgressStored_removesProgress() throws Throwable {
+    runOnMainThread(() -> downloadManager.setSegmentProgressEnabled(true));
+    handleDownloadRequest(fakeStreamKey1, fakeStreamKey2);
+    downloadManagerListener.blockUntilIdleAndThrowAnyFailure();
+    runOnMainThread(() -> downloadManager.setSegmentProgressEnabled(false));
+
+    handleRemoveAction();
+    downloadManagerListener.blockUntilIdleAndThrowAnyFailure();
+
+    assertThat(downloadIndex.getSegmentProgress(TEST_ID)).isNull();
+    assertCacheEmpty(cache);
+  }
+
+  @Test
+  public void handleDownloadRequest_segmentProgressDisabledAfterDataRemoved_downloadsDataAgain()
+      throws Throwable {
+    runOnMainThread(() -> downloadManager.setSegmentProgressEnabled(true));
+    handleDownloadRequest(fakeStreamKey1, fakeStreamKey2);
+    downloadManagerListener.blockUntilIdleAndThrowAnyFailure();
+    // Remove a segment behind the download manager's back, for example as an evictor would.
+    cache.removeResource("audio_segment_2");
+    runOnMainThread(() -> downloadManager.setSegmentProgressEnabled(false));
+
+    handleDownloadRequest(fakeStreamKey1, fakeStreamKey2);
+    downloadManagerListener.blockUntilIdleAndThrowAnyFailure();
+
+    assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
+  }
+
   private void handleDownloadRequest(StreamKey... keys) {
     DownloadRequest request = getDownloadRequest(keys);
     runOnMainThread(() -> downloadManager.addDownload(request));
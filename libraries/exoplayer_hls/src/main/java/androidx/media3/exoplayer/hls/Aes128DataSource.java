@@ -15,6 +15,8 @@
  */
 package androidx.media3.exoplayer.hls;
 
+import static java.lang.Math.min;
+
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
@@ -24,6 +26,7 @@ import androidx.media3.datasource.DataSourceInputStream;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.TransferListener;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -47,11 +50,14 @@ import javax.crypto.spec.SecretKeySpec;
  */
 /* package */ class Aes128DataSource implements DataSource {
 
+  private static final int BYTE_BUFFER_READ_SCRATCH_SIZE = 16 * 1024;
+
   private final DataSource upstream;
   private final byte[] encryptionKey;
   private final byte[] encryptionIv;
 
   @Nullable private CipherInputStream cipherInputStream;
+  @Nullable private byte[] byteBufferReadScratch;
 
   /**
    * @param upstream The upstream {@link DataSource}.
@@ -105,6 +111,24 @@ import javax.crypto.spec.SecretKeySpec;
     return bytesRead;
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray() || !buffer.hasRemaining()) {
+      return DataSource.super.read(buffer);
+    }
+    // The cipher stream can only be read into an array, so read via a scratch array.
+    @Nullable byte[] scratch = byteBufferReadScratch;
+    if (scratch == null) {
+      scratch = new byte[BYTE_BUFFER_READ_SCRATCH_SIZE];
+      byteBufferReadScratch = scratch;
+    }
+    int bytesRead = read(scratch, /* offset= */ 0, min(buffer.remaining(), scratch.length));
+    if (bytesRead > 0) {
+      buffer.put(scratch, /* offset= */ 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
   @Override
   @Nullable
   public final Uri getUri() {
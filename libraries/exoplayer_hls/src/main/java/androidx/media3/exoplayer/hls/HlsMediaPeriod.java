@@ -51,6 +51,8 @@ import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
 import androidx.media3.extractor.Extractor;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -74,6 +76,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final HlsDataSourceFactory dataSourceFactory;
   @Nullable private final TransferListener mediaTransferListener;
   @Nullable private final CmcdConfiguration cmcdConfiguration;
+  @Nullable private final LoaderExecutorPool loaderExecutorPool;
   private final DrmSessionManager drmSessionManager;
   private final DrmSessionEventListener.EventDispatcher drmEventDispatcher;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
@@ -109,6 +112,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @param mediaTransferListener The transfer listener to inform of any media data transfers. May
    *     be null if no listener is available.
    * @param cmcdConfiguration The {@link CmcdConfiguration} for the period.
+   * @param loaderExecutorPool The {@link LoaderExecutorPool} in which media chunks are loaded, or
+   *     null to load them on a thread for each sample stream wrapper.
    * @param drmSessionManager The {@link DrmSessionManager} to acquire {@link DrmSession
    *     DrmSessions} with.
    * @param drmEventDispatcher A {@link DrmSessionEventListener.EventDispatcher} used to distribute
@@ -132,6 +137,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       HlsDataSourceFactory dataSourceFactory,
       @Nullable TransferListener mediaTransferListener,
       @Nullable CmcdConfiguration cmcdConfiguration,
+      @Nullable LoaderExecutorPool loaderExecutorPool,
       DrmSessionManager drmSessionManager,
       DrmSessionEventListener.EventDispatcher drmEventDispatcher,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
@@ -148,6 +154,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     this.dataSourceFactory = dataSourceFactory;
     this.mediaTransferListener = mediaTransferListener;
     this.cmcdConfiguration = cmcdConfiguration;
+    this.loaderExecutorPool = loaderExecutorPool;
     this.drmSessionManager = drmSessionManager;
     this.drmEventDispatcher = drmEventDispatcher;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
@@ -805,6 +812,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             muxedCaptionFormats,
             playerId,
             cmcdConfiguration);
+    @Nullable
+    ReleasableExecutor downloadExecutor =
+        loaderExecutorPool != null
+            ? loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA)
+            : null;
     return new HlsSampleStreamWrapper(
         uid,
         trackType,
@@ -818,7 +830,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         drmEventDispatcher,
         loadErrorHandlingPolicy,
         eventDispatcher,
-        metadataType);
+        metadataType,
+        downloadExecutor);
   }
 
   private static Map<String, DrmInitData> deriveOverridingDrmInitData(
@@ -57,6 +57,7 @@ import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.text.SubtitleParser;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
@@ -112,6 +113,7 @@ public final class HlsMediaSource extends BaseMediaSource
     private HlsPlaylistTracker.Factory playlistTrackerFactory;
     private CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
     @Nullable private CmcdConfiguration.Factory cmcdConfigurationFactory;
+    @Nullable private LoaderExecutorPool loaderExecutorPool;
     private DrmSessionManagerProvider drmSessionManagerProvider;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
 
@@ -335,6 +337,26 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the {@link LoaderExecutorPool} in which the playlist and media chunk loads of the
+     * created media sources run. Playlist loads run in the {@link LoaderExecutorPool#LANE_MANIFEST
+     * manifest lane} if the {@link HlsPlaylistTracker.Factory} supports it, and media chunk loads
+     * run in the {@link LoaderExecutorPool#LANE_MEDIA media lane}.
+     *
+     * <p>By default, each media source loads the multivariant playlist and each media playlist on a
+     * thread of its own, and each of its sample stream wrappers loads media chunks on a thread of
+     * its own.
+     *
+     * @param loaderExecutorPool The {@link LoaderExecutorPool}.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    @Override
+    public Factory setLoaderExecutorPool(LoaderExecutorPool loaderExecutorPool) {
+      this.loaderExecutorPool = checkNotNull(loaderExecutorPool);
+      return this;
+    }
+
     @CanIgnoreReturnValue
     @Override
     public Factory setDrmSessionManagerProvider(
@@ -407,6 +429,15 @@ public final class HlsMediaSource extends BaseMediaSource
           cmcdConfigurationFactory == null
               ? null
               : cmcdConfigurationFactory.createCmcdConfiguration(mediaItem);
+      HlsPlaylistTracker playlistTracker =
+          loaderExecutorPool != null
+              ? playlistTrackerFactory.createTracker(
+                  hlsDataSourceFactory,
+                  loadErrorHandlingPolicy,
+                  playlistParserFactory,
+                  loaderExecutorPool)
+              : playlistTrackerFactory.createTracker(
+                  hlsDataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory);
 
       return new HlsMediaSource(
           mediaItem,
@@ -414,10 +445,10 @@ public final class HlsMediaSource extends BaseMediaSource
           extractorFactory,
           compositeSequenceableLoaderFactory,
           cmcdConfiguration,
+          loaderExecutorPool,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          playlistTrackerFactory.createTracker(
-              hlsDataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory),
+          playlistTracker,
           elapsedRealTimeOffsetMs,
           allowChunklessPreparation,
           metadataType,
@@ -435,6 +466,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final HlsDataSourceFactory dataSourceFactory;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
   @Nullable private final CmcdConfiguration cmcdConfiguration;
+  @Nullable private final LoaderExecutorPool loaderExecutorPool;
   private final DrmSessionManager drmSessionManager;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final boolean allowChunklessPreparation;
@@ -456,6 +488,7 @@ public final class HlsMediaSource extends BaseMediaSource
       HlsExtractorFactory extractorFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       @Nullable CmcdConfiguration cmcdConfiguration,
+      @Nullable LoaderExecutorPool loaderExecutorPool,
       DrmSessionManager drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       HlsPlaylistTracker playlistTracker,
@@ -470,6 +503,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.extractorFactory = extractorFactory;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
     this.cmcdConfiguration = cmcdConfiguration;
+    this.loaderExecutorPool = loaderExecutorPool;
     this.drmSessionManager = drmSessionManager;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.playlistTracker = playlistTracker;
@@ -532,6 +566,7 @@ public final class HlsMediaSource extends BaseMediaSource
         dataSourceFactory,
         mediaTransferListener,
         cmcdConfiguration,
+        loaderExecutorPool,
         drmSessionManager,
         drmEventDispatcher,
         loadErrorHandlingPolicy,
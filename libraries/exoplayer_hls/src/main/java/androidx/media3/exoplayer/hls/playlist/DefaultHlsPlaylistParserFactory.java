@@ -23,6 +23,24 @@ import androidx.media3.exoplayer.upstream.ParsingLoadable;
 @UnstableApi
 public final class DefaultHlsPlaylistParserFactory implements HlsPlaylistParserFactory {
 
+  private final boolean reuseUnchangedSegments;
+
+  /** Creates an instance. */
+  public DefaultHlsPlaylistParserFactory() {
+    this(/* reuseUnchangedSegments= */ false);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param reuseUnchangedSegments Whether media playlists should reuse the segments of the previous
+   *     playlist that are unchanged, rather than parsing them again. See {@link
+   *     HlsPlaylistParser#HlsPlaylistParser(HlsMultivariantPlaylist, HlsMediaPlaylist, boolean)}.
+   */
+  public DefaultHlsPlaylistParserFactory(boolean reuseUnchangedSegments) {
+    this.reuseUnchangedSegments = reuseUnchangedSegments;
+  }
+
   @Override
   public ParsingLoadable.Parser<HlsPlaylist> createPlaylistParser() {
     return new HlsPlaylistParser();
@@ -32,6 +50,7 @@ public final class DefaultHlsPlaylistParserFactory implements HlsPlaylistParserF
   public ParsingLoadable.Parser<HlsPlaylist> createPlaylistParser(
       HlsMultivariantPlaylist multivariantPlaylist,
       @Nullable HlsMediaPlaylist previousMediaPlaylist) {
-    return new HlsPlaylistParser(multivariantPlaylist, previousMediaPlaylist);
+    return new HlsPlaylistParser(
+        multivariantPlaylist, previousMediaPlaylist, reuseUnchangedSegments);
   }
 }
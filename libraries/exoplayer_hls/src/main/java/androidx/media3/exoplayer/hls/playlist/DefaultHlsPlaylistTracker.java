@@ -24,6 +24,7 @@ import android.os.Handler;
 import android.os.SystemClock;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
+import androidx.media3.common.Format;
 import androidx.media3.common.ParserException;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
@@ -38,14 +39,19 @@ import androidx.media3.exoplayer.hls.playlist.HlsMultivariantPlaylist.Variant;
 import androidx.media3.exoplayer.source.LoadEventInfo;
 import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaSourceEventListener.EventDispatcher;
+import androidx.media3.exoplayer.source.PlaylistSwitchInfo;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import androidx.media3.exoplayer.upstream.Loader;
 import androidx.media3.exoplayer.upstream.Loader.LoadErrorAction;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
 import com.google.common.collect.Iterables;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -55,7 +61,32 @@ public final class DefaultHlsPlaylistTracker
     implements HlsPlaylistTracker, Loader.Callback<ParsingLoadable<HlsPlaylist>> {
 
   /** Factory for {@link DefaultHlsPlaylistTracker} instances. */
-  public static final Factory FACTORY = DefaultHlsPlaylistTracker::new;
+  public static final Factory FACTORY =
+      new Factory() {
+        @Override
+        public HlsPlaylistTracker createTracker(
+            HlsDataSourceFactory dataSourceFactory,
+            LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+            HlsPlaylistParserFactory playlistParserFactory) {
+          return new DefaultHlsPlaylistTracker(
+              dataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory);
+        }
+
+        @Override
+        public HlsPlaylistTracker createTracker(
+            HlsDataSourceFactory dataSourceFactory,
+            LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+            HlsPlaylistParserFactory playlistParserFactory,
+            LoaderExecutorPool loaderExecutorPool) {
+          return new DefaultHlsPlaylistTracker(
+              dataSourceFactory,
+              loadErrorHandlingPolicy,
+              playlistParserFactory,
+              DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT,
+              DEFAULT_MAX_PREFETCHED_VARIANT_COUNT,
+              loaderExecutorPool);
+        }
+      };
 
   /**
    * Default coefficient applied on the target duration of a playlist to determine the amount of
@@ -63,12 +94,20 @@ public final class DefaultHlsPlaylistTracker
    */
   public static final double DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT = 3.5;
 
+  /**
+   * The default maximum number of variant playlists that are kept up to date in addition to the
+   * playlist used for playback. Prefetching is disabled by default.
+   */
+  public static final int DEFAULT_MAX_PREFETCHED_VARIANT_COUNT = 0;
+
   private final HlsDataSourceFactory dataSourceFactory;
   private final HlsPlaylistParserFactory playlistParserFactory;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final HashMap<Uri, MediaPlaylistBundle> playlistBundles;
   private final CopyOnWriteArrayList<PlaylistEventListener> listeners;
   private final double playlistStuckTargetDurationCoefficient;
+  private final int maxPrefetchedVariantCount;
+  @Nullable private final LoaderExecutorPool loaderExecutorPool;
 
   @Nullable private EventDispatcher eventDispatcher;
   @Nullable private Loader initialPlaylistLoader;
@@ -77,6 +116,7 @@ public final class DefaultHlsPlaylistTracker
   @Nullable private HlsMultivariantPlaylist multivariantPlaylist;
   @Nullable private Uri primaryMediaPlaylistUrl;
   @Nullable private HlsMediaPlaylist primaryMediaPlaylistSnapshot;
+  @Nullable private Uri playbackVariantUrl;
   private boolean isLive;
   private long initialStartTimeUs;
 
@@ -114,10 +154,85 @@ public final class DefaultHlsPlaylistTracker
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       HlsPlaylistParserFactory playlistParserFactory,
       double playlistStuckTargetDurationCoefficient) {
+    this(
+        dataSourceFactory,
+        loadErrorHandlingPolicy,
+        playlistParserFactory,
+        playlistStuckTargetDurationCoefficient,
+        DEFAULT_MAX_PREFETCHED_VARIANT_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * <p>If {@code maxPrefetchedVariantCount} is positive, the playlists of the variants whose
+   * bitrates are closest above and below the bitrate of the variant used for playback are kept up
+   * to date while it's playing, alternating between higher and lower bitrates, so that switching to
+   * one of them doesn't have to wait for its playlist to load. Live playlists are refreshed with
+   * blocking playlist reloads where the server supports them, so each prefetched variant has at
+   * most one playlist request in flight.
+   *
+   * @param dataSourceFactory A factory for {@link DataSource} instances.
+   * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy}.
+   * @param playlistParserFactory An {@link HlsPlaylistParserFactory}.
+   * @param playlistStuckTargetDurationCoefficient A coefficient to apply to the target duration of
+   *     media playlists in order to determine that a non-changing playlist is stuck. Once a
+   *     playlist is deemed stuck, a {@link PlaylistStuckException} is thrown via {@link
+   *     #maybeThrowPlaylistRefreshError(Uri)}.
+   * @param maxPrefetchedVariantCount The maximum number of variant playlists to keep up to date in
+   *     addition to the playlist used for playback, or 0 to only load variant playlists when
+   *     they're needed.
+   */
+  public DefaultHlsPlaylistTracker(
+      HlsDataSourceFactory dataSourceFactory,
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      HlsPlaylistParserFactory playlistParserFactory,
+      double playlistStuckTargetDurationCoefficient,
+      int maxPrefetchedVariantCount) {
+    this(
+        dataSourceFactory,
+        loadErrorHandlingPolicy,
+        playlistParserFactory,
+        playlistStuckTargetDurationCoefficient,
+        maxPrefetchedVariantCount,
+        /* loaderExecutorPool= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * <p>See {@link #DefaultHlsPlaylistTracker(HlsDataSourceFactory, LoadErrorHandlingPolicy,
+   * HlsPlaylistParserFactory, double, int)} for how variant playlists are prefetched.
+   *
+   * @param dataSourceFactory A factory for {@link DataSource} instances.
+   * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy}.
+   * @param playlistParserFactory An {@link HlsPlaylistParserFactory}.
+   * @param playlistStuckTargetDurationCoefficient A coefficient to apply to the target duration of
+   *     media playlists in order to determine that a non-changing playlist is stuck. Once a
+   *     playlist is deemed stuck, a {@link PlaylistStuckException} is thrown via {@link
+   *     #maybeThrowPlaylistRefreshError(Uri)}.
+   * @param maxPrefetchedVariantCount The maximum number of variant playlists to keep up to date in
+   *     addition to the playlist used for playback, or 0 to only load variant playlists when
+   *     they're needed.
+   * @param loaderExecutorPool The {@link LoaderExecutorPool} in whose {@link
+   *     LoaderExecutorPool#LANE_MANIFEST manifest lane} playlists are loaded, or null to load the
+   *     multivariant playlist and each media playlist on a thread of its own. Note that a blocking
+   *     playlist reload occupies a thread of the lane until the server responds.
+   */
+  public DefaultHlsPlaylistTracker(
+      HlsDataSourceFactory dataSourceFactory,
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      HlsPlaylistParserFactory playlistParserFactory,
+      double playlistStuckTargetDurationCoefficient,
+      int maxPrefetchedVariantCount,
+      @Nullable LoaderExecutorPool loaderExecutorPool) {
+    Assertions.checkArgument(maxPrefetchedVariantCount >= 0);
     this.dataSourceFactory = dataSourceFactory;
     this.playlistParserFactory = playlistParserFactory;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.playlistStuckTargetDurationCoefficient = playlistStuckTargetDurationCoefficient;
+    this.maxPrefetchedVariantCount = maxPrefetchedVariantCount;
+    this.loaderExecutorPool = loaderExecutorPool;
     listeners = new CopyOnWriteArrayList<>();
     playlistBundles = new HashMap<>();
     initialStartTimeUs = C.TIME_UNSET;
@@ -140,7 +255,7 @@ public final class DefaultHlsPlaylistTracker
             C.DATA_TYPE_MANIFEST,
             playlistParserFactory.createPlaylistParser());
     Assertions.checkState(initialPlaylistLoader == null);
-    initialPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MultivariantPlaylist");
+    initialPlaylistLoader = createLoader("DefaultHlsPlaylistTracker:MultivariantPlaylist");
     long elapsedRealtime =
         initialPlaylistLoader.startLoading(
             multivariantPlaylistLoadable,
@@ -159,6 +274,7 @@ public final class DefaultHlsPlaylistTracker
   public void stop() {
     primaryMediaPlaylistUrl = null;
     primaryMediaPlaylistSnapshot = null;
+    playbackVariantUrl = null;
     multivariantPlaylist = null;
     initialStartTimeUs = C.TIME_UNSET;
     initialPlaylistLoader.release();
@@ -194,6 +310,7 @@ public final class DefaultHlsPlaylistTracker
     MediaPlaylistBundle bundle = playlistBundles.get(url);
     @Nullable HlsMediaPlaylist snapshot = bundle.getPlaylistSnapshot();
     if (snapshot != null && isForPlayback) {
+      maybeSetPlaybackVariantUrl(url);
       maybeSetPrimaryUrl(url);
       maybeActivateForPlayback(url);
     }
@@ -227,7 +344,15 @@ public final class DefaultHlsPlaylistTracker
 
   @Override
   public void refreshPlaylist(Uri url) {
-    playlistBundles.get(url).loadPlaylist(/* allowDeliveryDirectives= */ true);
+    MediaPlaylistBundle bundle = playlistBundles.get(url);
+    if (bundle.switchRequestTimeMs == C.TIME_UNSET
+        && playbackVariantUrl != null
+        && !url.equals(playbackVariantUrl)
+        && isVariantUrl(url)) {
+      // Playback is waiting for this playlist in order to switch to it.
+      bundle.switchRequestTimeMs = SystemClock.elapsedRealtime();
+    }
+    bundle.loadPlaylist(/* allowDeliveryDirectives= */ true);
   }
 
   @Override
@@ -378,6 +503,99 @@ public final class DefaultHlsPlaylistTracker
     }
   }
 
+  private void maybeSetPlaybackVariantUrl(Uri url) {
+    if (url.equals(playbackVariantUrl) || !isVariantUrl(url)) {
+      return;
+    }
+    @Nullable Uri previousPlaybackVariantUrl = playbackVariantUrl;
+    playbackVariantUrl = url;
+    MediaPlaylistBundle bundle = playlistBundles.get(url);
+    if (previousPlaybackVariantUrl != null) {
+      long nowMs = SystemClock.elapsedRealtime();
+      long switchLatencyMs =
+          bundle.switchRequestTimeMs != C.TIME_UNSET ? nowMs - bundle.switchRequestTimeMs : 0;
+      eventDispatcher.playlistSwitched(
+          new PlaylistSwitchInfo(
+              previousPlaybackVariantUrl,
+              url,
+              nowMs,
+              switchLatencyMs,
+              /* wasPrefetched= */ bundle.prefetching));
+    }
+    bundle.switchRequestTimeMs = C.TIME_UNSET;
+    updatePrefetchedVariants();
+  }
+
+  /**
+   * Updates which variant playlists are kept up to date, based on the bitrate of the variant used
+   * for playback, or of the primary variant if playback hasn't started yet.
+   */
+  private void updatePrefetchedVariants() {
+    @Nullable
+    Uri anchorUrl = playbackVariantUrl != null ? playbackVariantUrl : primaryMediaPlaylistUrl;
+    if (maxPrefetchedVariantCount == 0 || multivariantPlaylist == null || anchorUrl == null) {
+      return;
+    }
+    List<Variant> variants = multivariantPlaylist.variants;
+    int anchorBitrate = Format.NO_VALUE;
+    for (int i = 0; i < variants.size(); i++) {
+      if (variants.get(i).url.equals(anchorUrl)) {
+        anchorBitrate = variants.get(i).format.bitrate;
+        break;
+      }
+    }
+    // Split the other variants that aren't excluded into those with higher and lower bitrates,
+    // closest first.
+    long nowMs = SystemClock.elapsedRealtime();
+    List<Variant> higherVariants = new ArrayList<>();
+    List<Variant> lowerVariants = new ArrayList<>();
+    for (int i = 0; i < variants.size(); i++) {
+      Variant variant = variants.get(i);
+      @Nullable MediaPlaylistBundle variantBundle = playlistBundles.get(variant.url);
+      if (variant.url.equals(anchorUrl)
+          || (variantBundle != null && nowMs < variantBundle.excludeUntilMs)) {
+        continue;
+      }
+      if (variant.format.bitrate > anchorBitrate) {
+        higherVariants.add(variant);
+      } else {
+        lowerVariants.add(variant);
+      }
+    }
+    Collections.sort(
+        higherVariants, (v1, v2) -> Integer.compare(v1.format.bitrate, v2.format.bitrate));
+    Collections.sort(
+        lowerVariants, (v1, v2) -> Integer.compare(v2.format.bitrate, v1.format.bitrate));
+    HashSet<Uri> prefetchedUrls = new HashSet<>();
+    int higherIndex = 0;
+    int lowerIndex = 0;
+    while (prefetchedUrls.size() < maxPrefetchedVariantCount
+        && (higherIndex < higherVariants.size() || lowerIndex < lowerVariants.size())) {
+      if (higherIndex < higherVariants.size()) {
+        prefetchedUrls.add(higherVariants.get(higherIndex++).url);
+      }
+      if (lowerIndex < lowerVariants.size() && prefetchedUrls.size() < maxPrefetchedVariantCount) {
+        prefetchedUrls.add(lowerVariants.get(lowerIndex++).url);
+      }
+    }
+    for (MediaPlaylistBundle bundle : playlistBundles.values()) {
+      boolean prefetching = prefetchedUrls.contains(bundle.playlistUrl);
+      if (prefetching == bundle.prefetching) {
+        continue;
+      }
+      // Bundles that stop being prefetched aren't reloaded again once their current load finishes,
+      // unless they're the primary playlist or active for playback.
+      bundle.prefetching = prefetching;
+      @Nullable HlsMediaPlaylist snapshot = bundle.playlistSnapshot;
+      if (prefetching && (snapshot == null || !snapshot.hasEndTag)) {
+        bundle.loadPlaylistInternal(
+            snapshot == null
+                ? getRequestUriForPrimaryChange(bundle.playlistUrl)
+                : bundle.getMediaPlaylistUriForReload());
+      }
+    }
+  }
+
   private void maybeActivateForPlayback(Uri url) {
     MediaPlaylistBundle playlistBundle = playlistBundles.get(url);
     @Nullable HlsMediaPlaylist playlistSnapshot = playlistBundle.getPlaylistSnapshot();
@@ -426,6 +644,12 @@ public final class DefaultHlsPlaylistTracker
     return false;
   }
 
+  private Loader createLoader(String threadNameSuffix) {
+    return loaderExecutorPool != null
+        ? loaderExecutorPool.createLoader(LoaderExecutorPool.LANE_MANIFEST)
+        : new Loader(threadNameSuffix);
+  }
+
   private void createBundles(List<Uri> urls) {
     int listSize = urls.size();
     for (int i = 0; i < listSize; i++) {
@@ -443,13 +667,17 @@ public final class DefaultHlsPlaylistTracker
    */
   private void onPlaylistUpdated(Uri url, HlsMediaPlaylist newSnapshot) {
     if (url.equals(primaryMediaPlaylistUrl)) {
-      if (primaryMediaPlaylistSnapshot == null) {
-        // This is the first primary url snapshot.
+      boolean isFirstPrimarySnapshot = primaryMediaPlaylistSnapshot == null;
+      if (isFirstPrimarySnapshot) {
         isLive = !newSnapshot.hasEndTag;
         initialStartTimeUs = newSnapshot.startTimeUs;
       }
       primaryMediaPlaylistSnapshot = newSnapshot;
       primaryPlaylistListener.onPrimaryPlaylistRefreshed(newSnapshot);
+      if (isFirstPrimarySnapshot) {
+        // Start prefetching once the rendition reports of the primary playlist are known.
+        updatePrefetchedVariants();
+      }
     }
     for (PlaylistEventListener listener : listeners) {
       listener.onPlaylistChanged();
@@ -553,11 +781,14 @@ public final class DefaultHlsPlaylistTracker
     private boolean loadPending;
     @Nullable private IOException playlistError;
     private boolean activeForPlayback;
+    private boolean prefetching;
+    private long switchRequestTimeMs;
 
     public MediaPlaylistBundle(Uri playlistUrl) {
       this.playlistUrl = playlistUrl;
-      mediaPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MediaPlaylist");
+      mediaPlaylistLoader = createLoader("DefaultHlsPlaylistTracker:MediaPlaylist");
       mediaPlaylistDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST);
+      switchRequestTimeMs = C.TIME_UNSET;
     }
 
     @Nullable
@@ -796,11 +1027,11 @@ public final class DefaultHlsPlaylistTracker
       }
       earliestNextLoadTimeMs =
           currentTimeMs + Util.usToMs(durationUntilNextLoadUs) - loadEventInfo.loadDurationMs;
-      // Schedule a load if this is the primary or playback playlist and it doesn't have an end tag.
-      // Else the next load will be scheduled when refreshPlaylist is called, or when this playlist
-      // becomes the primary or active for playback.
+      // Schedule a load if this is the primary, playback or a prefetched playlist and it doesn't
+      // have an end tag. Else the next load will be scheduled when refreshPlaylist is called, or
+      // when this playlist becomes the primary, active for playback or prefetched.
       if (!playlistSnapshot.hasEndTag
-          && (playlistUrl.equals(primaryMediaPlaylistUrl) || activeForPlayback)) {
+          && (playlistUrl.equals(primaryMediaPlaylistUrl) || activeForPlayback || prefetching)) {
         loadPlaylistInternal(getMediaPlaylistUriForReload());
       }
     }
@@ -842,6 +1073,11 @@ public final class DefaultHlsPlaylistTracker
      */
     private boolean excludePlaylist(long exclusionDurationMs) {
       excludeUntilMs = SystemClock.elapsedRealtime() + exclusionDurationMs;
+      if (prefetching) {
+        // Stop reloading the excluded playlist, and prefetch the next closest variant instead.
+        prefetching = false;
+        updatePrefetchedVariants();
+      }
       return playlistUrl.equals(primaryMediaPlaylistUrl) && !maybeSelectNewPrimaryUrl();
     }
   }
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.hls.playlist;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import java.util.Arrays;
+
+/**
+ * Splits the attribute list of an HLS tag line into its attributes, as defined in RFC 8216 Section
+ * 4.2.
+ *
+ * <p>A line is split in a single pass, which only records the positions of the attribute names and
+ * values. Values are only copied out of the line when they're read as strings, so an instance can
+ * be {@link #reset(String) reset} and reused for every line of a playlist.
+ *
+ * <p>Numeric and enumerated values are read leniently, in the same way as they were when the
+ * attributes were matched with regular expressions: anything that follows a valid value is ignored
+ * if it's separated from the value by a character that can't be part of a word. Similarly, an
+ * attribute that follows a comma inside a quoted-string value, as in {@code
+ * URI="part.ts,BYTERANGE-START=0"}, is found if there's no attribute with the same name outside
+ * quoted-string values, so that lines with a misplaced closing quote are read as before.
+ */
+/* package */ final class HlsAttributeList {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private String line;
+  private int[] nameStarts;
+  private int[] nameEnds;
+  private int[] valueStarts;
+  private int[] valueEnds;
+  private boolean[] isQuoted;
+  private boolean[] isInsideQuotedString;
+  private int size;
+  private boolean hasAttributesInsideQuotedStrings;
+
+  /** Creates an instance. */
+  public HlsAttributeList() {
+    line = "";
+    nameStarts = new int[INITIAL_CAPACITY];
+    nameEnds = new int[INITIAL_CAPACITY];
+    valueStarts = new int[INITIAL_CAPACITY];
+    valueEnds = new int[INITIAL_CAPACITY];
+    isQuoted = new boolean[INITIAL_CAPACITY];
+    isInsideQuotedString = new boolean[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Splits the attribute list that follows the first colon of a tag line. Malformed attributes are
+   * skipped.
+   *
+   * @param line The tag line.
+   * @return This instance, for convenience.
+   */
+  public HlsAttributeList reset(String line) {
+    this.line = line;
+    size = 0;
+    hasAttributesInsideQuotedStrings = false;
+    int length = line.length();
+    int colonIndex = line.indexOf(':');
+    int position = colonIndex == C.INDEX_UNSET ? length : colonIndex + 1;
+    while (position < length) {
+      char c = line.charAt(position);
+      if (c == ',' || c == ' ' || c == '\t') {
+        position++;
+        continue;
+      }
+      int nameStart = position;
+      while (position < length && line.charAt(position) != '=' && line.charAt(position) != ',') {
+        position++;
+      }
+      if (position == length || line.charAt(position) == ',') {
+        // The attribute has no value.
+        continue;
+      }
+      int nameEnd = position;
+      int valueStart = position + 1;
+      int valueEnd;
+      boolean quoted = false;
+      int closingQuoteIndex =
+          valueStart < length && line.charAt(valueStart) == '"'
+              ? line.indexOf('"', valueStart + 1)
+              : C.INDEX_UNSET;
+      if (closingQuoteIndex != C.INDEX_UNSET) {
+        quoted = true;
+        valueStart++;
+        valueEnd = closingQuoteIndex;
+        position = line.indexOf(',', closingQuoteIndex);
+        if (position == C.INDEX_UNSET) {
+          position = length;
+        }
+      } else {
+        position = line.indexOf(',', valueStart);
+        if (position == C.INDEX_UNSET) {
+          position = length;
+        }
+        valueEnd = position;
+        while (valueEnd > valueStart && Character.isWhitespace(line.charAt(valueEnd - 1))) {
+          valueEnd--;
+        }
+      }
+      add(nameStart, nameEnd, valueStart, valueEnd, quoted, /* insideQuotedString= */ false);
+      if (quoted) {
+        addAttributesInsideQuotedString(valueStart, valueEnd);
+      }
+    }
+    return this;
+  }
+
+  /** Returns the line that was last passed to {@link #reset(String)}. */
+  public String getLine() {
+    return line;
+  }
+
+  /**
+   * Returns the value of a quoted-string attribute, without the quotes, or null if the attribute is
+   * absent, isn't quoted or is empty.
+   */
+  @Nullable
+  public String getQuotedString(String name) {
+    int index = indexOf(name);
+    if (index == C.INDEX_UNSET || !isQuoted[index] || valueStarts[index] == valueEnds[index]) {
+      return null;
+    }
+    return line.substring(valueStarts[index], valueEnds[index]);
+  }
+
+  /**
+   * Returns the value of an attribute that isn't quoted, such as an enumerated-string or a
+   * hexadecimal-sequence, or null if the attribute is absent, is quoted or is empty.
+   */
+  @Nullable
+  public String getString(String name) {
+    int index = indexOf(name);
+    if (index == C.INDEX_UNSET || isQuoted[index] || valueStarts[index] == valueEnds[index]) {
+      return null;
+    }
+    return line.substring(valueStarts[index], valueEnds[index]);
+  }
+
+  /**
+   * Returns whether an attribute that isn't quoted has the given value, without copying the value
+   * out of the line.
+   */
+  public boolean hasValue(String name, String value) {
+    int index = indexOf(name);
+    if (index == C.INDEX_UNSET || isQuoted[index]) {
+      return false;
+    }
+    int valueEnd = valueStarts[index] + value.length();
+    return line.startsWith(value, valueStarts[index])
+        && (valueEnd == valueEnds[index] || !isWordCharacter(line.charAt(valueEnd)));
+  }
+
+  /**
+   * Returns the value of a decimal-integer attribute, or {@code defaultValue} if the attribute is
+   * absent or malformed.
+   *
+   * @throws NumberFormatException If the value doesn't fit in a {@code long}.
+   */
+  public long getDecimalInteger(String name, long defaultValue) {
+    int index = indexOf(name);
+    if (index == C.INDEX_UNSET || isQuoted[index]) {
+      return defaultValue;
+    }
+    long value = parseDecimalInteger(line, valueStarts[index], valueEnds[index]);
+    return value == C.INDEX_UNSET ? defaultValue : value;
+  }
+
+  /**
+   * Returns the value of a decimal-floating-point or signed-decimal-floating-point attribute, or
+   * {@code defaultValue} if the attribute is absent or malformed.
+   */
+  public double getDecimalFloatingPoint(String name, double defaultValue) {
+    int index = indexOf(name);
+    if (index == C.INDEX_UNSET || isQuoted[index]) {
+      return defaultValue;
+    }
+    int start = valueStarts[index];
+    int end = start < valueEnds[index] && line.charAt(start) == '-' ? start + 1 : start;
+    while (end < valueEnds[index] && (isDigit(line.charAt(end)) || line.charAt(end) == '.')) {
+      end++;
+    }
+    if (end == start || line.charAt(end - 1) == '-' || !isValueEnd(end, valueEnds[index])) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(line.substring(start, end));
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Parses the decimal integer at the start of the region of {@code string} between {@code start}
+   * (inclusive) and {@code end} (exclusive).
+   *
+   * @return The integer, or {@link C#INDEX_UNSET} if the region doesn't start with a digit, or if
+   *     the digits are followed by a character that can be part of a word.
+   * @throws NumberFormatException If the integer doesn't fit in a {@code long}.
+   */
+  public static long parseDecimalInteger(String string, int start, int end) {
+    long value = 0;
+    int position = start;
+    for (; position < end && isDigit(string.charAt(position)); position++) {
+      int digit = string.charAt(position) - '0';
+      if (value > (Long.MAX_VALUE - digit) / 10) {
+        throw new NumberFormatException(string.substring(start, end));
+      }
+      value = value * 10 + digit;
+    }
+    if (position == start || (position < end && isWordCharacter(string.charAt(position)))) {
+      return C.INDEX_UNSET;
+    }
+    return value;
+  }
+
+  private boolean isValueEnd(int position, int valueEnd) {
+    return position == valueEnd || !isWordCharacter(line.charAt(position));
+  }
+
+  /**
+   * Adds the attributes that follow a comma inside the quoted-string value between {@code start}
+   * (inclusive) and {@code end} (exclusive). Their values aren't quoted, and end at the next comma
+   * or at the end of the quoted-string value.
+   */
+  private void addAttributesInsideQuotedString(int start, int end) {
+    int position = line.indexOf(',', start);
+    while (position != C.INDEX_UNSET && position < end) {
+      int nameStart = position + 1;
+      int nameEnd = nameStart;
+      while (nameEnd < end && isAttributeNameCharacter(line.charAt(nameEnd))) {
+        nameEnd++;
+      }
+      position = line.indexOf(',', nameEnd);
+      if (nameEnd > nameStart && nameEnd < end && line.charAt(nameEnd) == '=') {
+        int valueEnd = position == C.INDEX_UNSET || position > end ? end : position;
+        add(
+            nameStart,
+            nameEnd,
+            /* valueStart= */ nameEnd + 1,
+            valueEnd,
+            /* quoted= */ false,
+            /* insideQuotedString= */ true);
+        hasAttributesInsideQuotedStrings = true;
+      }
+    }
+  }
+
+  private int indexOf(String name) {
+    int index = indexOf(name, /* insideQuotedString= */ false);
+    if (index == C.INDEX_UNSET && hasAttributesInsideQuotedStrings) {
+      index = indexOf(name, /* insideQuotedString= */ true);
+    }
+    return index;
+  }
+
+  private int indexOf(String name, boolean insideQuotedString) {
+    int nameLength = name.length();
+    for (int i = 0; i < size; i++) {
+      if (isInsideQuotedString[i] == insideQuotedString
+          && nameEnds[i] - nameStarts[i] == nameLength
+          && line.startsWith(name, nameStarts[i])) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  private void add(
+      int nameStart,
+      int nameEnd,
+      int valueStart,
+      int valueEnd,
+      boolean quoted,
+      boolean insideQuotedString) {
+    if (size == nameStarts.length) {
+      int newCapacity = size * 2;
+      nameStarts = Arrays.copyOf(nameStarts, newCapacity);
+      nameEnds = Arrays.copyOf(nameEnds, newCapacity);
+      valueStarts = Arrays.copyOf(valueStarts, newCapacity);
+      valueEnds = Arrays.copyOf(valueEnds, newCapacity);
+      isQuoted = Arrays.copyOf(isQuoted, newCapacity);
+      isInsideQuotedString = Arrays.copyOf(isInsideQuotedString, newCapacity);
+    }
+    nameStarts[size] = nameStart;
+    nameEnds[size] = nameEnd;
+    valueStarts[size] = valueStart;
+    valueEnds[size] = valueEnd;
+    isQuoted[size] = quoted;
+    isInsideQuotedString[size] = insideQuotedString;
+    size++;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isAttributeNameCharacter(char c) {
+    return isDigit(c) || (c >= 'A' && c <= 'Z') || c == '-';
+  }
+
+  private static boolean isWordCharacter(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+  }
+}
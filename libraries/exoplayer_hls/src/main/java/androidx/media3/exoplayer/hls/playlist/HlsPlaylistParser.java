@@ -44,12 +44,12 @@ import androidx.media3.exoplayer.hls.playlist.HlsMultivariantPlaylist.Rendition;
 import androidx.media3.exoplayer.hls.playlist.HlsMultivariantPlaylist.Variant;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
 import androidx.media3.extractor.mp4.PsshAtomUtil;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.math.BigDecimal;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -58,6 +58,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
@@ -130,103 +131,67 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
   private static final String ATTR_CLOSED_CAPTIONS_NONE = "CLOSED-CAPTIONS=NONE";
 
-  private static final Pattern REGEX_AVERAGE_BANDWIDTH =
-      Pattern.compile("AVERAGE-BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_VIDEO = Pattern.compile("VIDEO=\"(.+?)\"");
-  private static final Pattern REGEX_AUDIO = Pattern.compile("AUDIO=\"(.+?)\"");
-  private static final Pattern REGEX_SUBTITLES = Pattern.compile("SUBTITLES=\"(.+?)\"");
-  private static final Pattern REGEX_CLOSED_CAPTIONS = Pattern.compile("CLOSED-CAPTIONS=\"(.+?)\"");
-  private static final Pattern REGEX_BANDWIDTH = Pattern.compile("[^-]BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_CHANNELS = Pattern.compile("CHANNELS=\"(.+?)\"");
-  private static final Pattern REGEX_CODECS = Pattern.compile("CODECS=\"(.+?)\"");
-  private static final Pattern REGEX_RESOLUTION = Pattern.compile("RESOLUTION=(\\d+x\\d+)");
-  private static final Pattern REGEX_FRAME_RATE = Pattern.compile("FRAME-RATE=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_TARGET_DURATION =
-      Pattern.compile(TAG_TARGET_DURATION + ":(\\d+)\\b");
-  private static final Pattern REGEX_ATTR_DURATION = Pattern.compile("DURATION=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_PART_TARGET_DURATION =
-      Pattern.compile("PART-TARGET=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_VERSION = Pattern.compile(TAG_VERSION + ":(\\d+)\\b");
-  private static final Pattern REGEX_PLAYLIST_TYPE =
-      Pattern.compile(TAG_PLAYLIST_TYPE + ":(.+)\\b");
-  private static final Pattern REGEX_CAN_SKIP_UNTIL =
-      Pattern.compile("CAN-SKIP-UNTIL=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_CAN_SKIP_DATE_RANGES =
-      compileBooleanAttrPattern("CAN-SKIP-DATERANGES");
-  private static final Pattern REGEX_SKIPPED_SEGMENTS =
-      Pattern.compile("SKIPPED-SEGMENTS=(\\d+)\\b");
-  private static final Pattern REGEX_HOLD_BACK = Pattern.compile("[:|,]HOLD-BACK=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_PART_HOLD_BACK =
-      Pattern.compile("PART-HOLD-BACK=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_CAN_BLOCK_RELOAD =
-      compileBooleanAttrPattern("CAN-BLOCK-RELOAD");
-  private static final Pattern REGEX_MEDIA_SEQUENCE =
-      Pattern.compile(TAG_MEDIA_SEQUENCE + ":(\\d+)\\b");
-  private static final Pattern REGEX_MEDIA_DURATION =
-      Pattern.compile(TAG_MEDIA_DURATION + ":([\\d\\.]+)\\b");
-  private static final Pattern REGEX_MEDIA_TITLE =
-      Pattern.compile(TAG_MEDIA_DURATION + ":[\\d\\.]+\\b,(.+)");
-  private static final Pattern REGEX_LAST_MSN = Pattern.compile("LAST-MSN" + "=(\\d+)\\b");
-  private static final Pattern REGEX_LAST_PART = Pattern.compile("LAST-PART" + "=(\\d+)\\b");
-  private static final Pattern REGEX_TIME_OFFSET = Pattern.compile("TIME-OFFSET=(-?[\\d\\.]+)\\b");
-  private static final Pattern REGEX_BYTERANGE =
-      Pattern.compile(TAG_BYTERANGE + ":(\\d+(?:@\\d+)?)\\b");
-  private static final Pattern REGEX_ATTR_BYTERANGE =
-      Pattern.compile("BYTERANGE=\"(\\d+(?:@\\d+)?)\\b\"");
-  private static final Pattern REGEX_BYTERANGE_START = Pattern.compile("BYTERANGE-START=(\\d+)\\b");
-  private static final Pattern REGEX_BYTERANGE_LENGTH =
-      Pattern.compile("BYTERANGE-LENGTH=(\\d+)\\b");
-  private static final Pattern REGEX_METHOD =
-      Pattern.compile(
-          "METHOD=("
-              + METHOD_NONE
-              + "|"
-              + METHOD_AES_128
-              + "|"
-              + METHOD_SAMPLE_AES
-              + "|"
-              + METHOD_SAMPLE_AES_CENC
-              + "|"
-              + METHOD_SAMPLE_AES_CTR
-              + ")"
-              + "\\s*(?:,|$)");
-  private static final Pattern REGEX_KEYFORMAT = Pattern.compile("KEYFORMAT=\"(.+?)\"");
-  private static final Pattern REGEX_KEYFORMATVERSIONS =
-      Pattern.compile("KEYFORMATVERSIONS=\"(.+?)\"");
-  private static final Pattern REGEX_URI = Pattern.compile("URI=\"(.+?)\"");
-  private static final Pattern REGEX_IV = Pattern.compile("IV=([^,.*]+)");
-  private static final Pattern REGEX_TYPE =
-      Pattern.compile(
-          "TYPE=("
-              + TYPE_AUDIO
-              + "|"
-              + TYPE_VIDEO
-              + "|"
-              + TYPE_SUBTITLES
-              + "|"
-              + TYPE_CLOSED_CAPTIONS
-              + ")");
-  private static final Pattern REGEX_PRELOAD_HINT_TYPE =
-      Pattern.compile("TYPE=(" + TYPE_PART + "|" + TYPE_MAP + ")");
-  private static final Pattern REGEX_LANGUAGE = Pattern.compile("LANGUAGE=\"(.+?)\"");
-  private static final Pattern REGEX_NAME = Pattern.compile("NAME=\"(.+?)\"");
-  private static final Pattern REGEX_GROUP_ID = Pattern.compile("GROUP-ID=\"(.+?)\"");
-  private static final Pattern REGEX_CHARACTERISTICS = Pattern.compile("CHARACTERISTICS=\"(.+?)\"");
-  private static final Pattern REGEX_INSTREAM_ID =
-      Pattern.compile("INSTREAM-ID=\"((?:CC|SERVICE)\\d+)\"");
-  private static final Pattern REGEX_AUTOSELECT = compileBooleanAttrPattern("AUTOSELECT");
-  private static final Pattern REGEX_DEFAULT = compileBooleanAttrPattern("DEFAULT");
-  private static final Pattern REGEX_FORCED = compileBooleanAttrPattern("FORCED");
-  private static final Pattern REGEX_INDEPENDENT = compileBooleanAttrPattern("INDEPENDENT");
-  private static final Pattern REGEX_GAP = compileBooleanAttrPattern("GAP");
-  private static final Pattern REGEX_PRECISE = compileBooleanAttrPattern("PRECISE");
-  private static final Pattern REGEX_VALUE = Pattern.compile("VALUE=\"(.+?)\"");
-  private static final Pattern REGEX_IMPORT = Pattern.compile("IMPORT=\"(.+?)\"");
+  private static final String ATTR_AVERAGE_BANDWIDTH = "AVERAGE-BANDWIDTH";
+  private static final String ATTR_VIDEO = "VIDEO";
+  private static final String ATTR_AUDIO = "AUDIO";
+  private static final String ATTR_SUBTITLES = "SUBTITLES";
+  private static final String ATTR_CLOSED_CAPTIONS = "CLOSED-CAPTIONS";
+  private static final String ATTR_BANDWIDTH = "BANDWIDTH";
+  private static final String ATTR_CHANNELS = "CHANNELS";
+  private static final String ATTR_CODECS = "CODECS";
+  private static final String ATTR_RESOLUTION = "RESOLUTION";
+  private static final String ATTR_FRAME_RATE = "FRAME-RATE";
+  private static final String ATTR_DURATION = "DURATION";
+  private static final String ATTR_PART_TARGET_DURATION = "PART-TARGET";
+  private static final String ATTR_CAN_SKIP_UNTIL = "CAN-SKIP-UNTIL";
+  private static final String ATTR_CAN_SKIP_DATE_RANGES = "CAN-SKIP-DATERANGES";
+  private static final String ATTR_SKIPPED_SEGMENTS = "SKIPPED-SEGMENTS";
+  private static final String ATTR_HOLD_BACK = "HOLD-BACK";
+  private static final String ATTR_PART_HOLD_BACK = "PART-HOLD-BACK";
+  private static final String ATTR_CAN_BLOCK_RELOAD = "CAN-BLOCK-RELOAD";
+  private static final String ATTR_LAST_MSN = "LAST-MSN";
+  private static final String ATTR_LAST_PART = "LAST-PART";
+  private static final String ATTR_TIME_OFFSET = "TIME-OFFSET";
+  private static final String ATTR_BYTERANGE = "BYTERANGE";
+  private static final String ATTR_BYTERANGE_START = "BYTERANGE-START";
+  private static final String ATTR_BYTERANGE_LENGTH = "BYTERANGE-LENGTH";
+  private static final String ATTR_METHOD = "METHOD";
+  private static final String ATTR_KEYFORMAT = "KEYFORMAT";
+  private static final String ATTR_KEYFORMATVERSIONS = "KEYFORMATVERSIONS";
+  private static final String ATTR_URI = "URI";
+  private static final String ATTR_IV = "IV";
+  private static final String ATTR_TYPE = "TYPE";
+  private static final String ATTR_LANGUAGE = "LANGUAGE";
+  private static final String ATTR_NAME = "NAME";
+  private static final String ATTR_GROUP_ID = "GROUP-ID";
+  private static final String ATTR_CHARACTERISTICS = "CHARACTERISTICS";
+  private static final String ATTR_INSTREAM_ID = "INSTREAM-ID";
+  private static final String ATTR_AUTOSELECT = "AUTOSELECT";
+  private static final String ATTR_DEFAULT = "DEFAULT";
+  private static final String ATTR_FORCED = "FORCED";
+  private static final String ATTR_INDEPENDENT = "INDEPENDENT";
+  private static final String ATTR_GAP = "GAP";
+  private static final String ATTR_PRECISE = "PRECISE";
+  private static final String ATTR_VALUE = "VALUE";
+  private static final String ATTR_IMPORT = "IMPORT";
+
+  private static final ImmutableSet<String> METHODS =
+      ImmutableSet.of(
+          METHOD_NONE,
+          METHOD_AES_128,
+          METHOD_SAMPLE_AES,
+          METHOD_SAMPLE_AES_CENC,
+          METHOD_SAMPLE_AES_CTR);
+  private static final ImmutableSet<String> RENDITION_TYPES =
+      ImmutableSet.of(TYPE_AUDIO, TYPE_VIDEO, TYPE_SUBTITLES, TYPE_CLOSED_CAPTIONS);
+  private static final ImmutableSet<String> PRELOAD_HINT_TYPES =
+      ImmutableSet.of(TYPE_PART, TYPE_MAP);
   private static final Pattern REGEX_VARIABLE_REFERENCE =
       Pattern.compile("\\{\\$([a-zA-Z0-9\\-_]+)\\}");
 
   private final HlsMultivariantPlaylist multivariantPlaylist;
   @Nullable private final HlsMediaPlaylist previousMediaPlaylist;
+  private final boolean reuseUnchangedSegments;
 
   /**
    * Creates an instance where media playlists are parsed without inheriting attributes from a
@@ -248,8 +213,32 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   public HlsPlaylistParser(
       HlsMultivariantPlaylist multivariantPlaylist,
       @Nullable HlsMediaPlaylist previousMediaPlaylist) {
+    this(multivariantPlaylist, previousMediaPlaylist, /* reuseUnchangedSegments= */ false);
+  }
+
+  /**
+   * Creates an instance where parsed media playlists inherit attributes from the given multivariant
+   * playlist.
+   *
+   * @param multivariantPlaylist The multivariant playlist from which media playlists will inherit
+   *     attributes.
+   * @param previousMediaPlaylist The previous media playlist from which the new media playlist may
+   *     inherit skipped segments.
+   * @param reuseUnchangedSegments Whether segments that are also in {@code previousMediaPlaylist}
+   *     should be reused rather than parsed again. Segments are matched by their media sequence
+   *     numbers, and are reused if their URIs and the state that applies to them (such as the
+   *     initialization segment, encryption and byte range) are unchanged. Their {@code #EXTINF}
+   *     tags aren't parsed, since RFC 8216 doesn't allow a server to change the tags of a segment
+   *     while it's in the playlist. This avoids most of the work of parsing long live playlists,
+   *     where only a few segments change between refreshes.
+   */
+  public HlsPlaylistParser(
+      HlsMultivariantPlaylist multivariantPlaylist,
+      @Nullable HlsMediaPlaylist previousMediaPlaylist,
+      boolean reuseUnchangedSegments) {
     this.multivariantPlaylist = multivariantPlaylist;
     this.previousMediaPlaylist = previousMediaPlaylist;
+    this.reuseUnchangedSegments = reuseUnchangedSegments;
   }
 
   @Override
@@ -281,6 +270,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           return parseMediaPlaylist(
               multivariantPlaylist,
               previousMediaPlaylist,
+              reuseUnchangedSegments,
               new LineIterator(extraLines, reader),
               uri.toString());
         } else {
@@ -339,6 +329,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     List<Format> muxedCaptionFormats = null;
     boolean noClosedCaptions = false;
     boolean hasIndependentSegmentsTag = false;
+    HlsAttributeList attributes = new HlsAttributeList();
 
     String line;
     while (iterator.hasNext()) {
@@ -351,9 +342,11 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       boolean isIFrameOnlyVariant = line.startsWith(TAG_I_FRAME_STREAM_INF);
 
       if (line.startsWith(TAG_DEFINE)) {
+
+        attributes.reset(line);
         variableDefinitions.put(
-            /* key= */ parseStringAttr(line, REGEX_NAME, variableDefinitions),
-            /* value= */ parseStringAttr(line, REGEX_VALUE, variableDefinitions));
+            /* key= */ parseStringAttr(attributes, ATTR_NAME, variableDefinitions),
+            /* value= */ parseStringAttr(attributes, ATTR_VALUE, variableDefinitions));
       } else if (line.equals(TAG_INDEPENDENT_SEGMENTS)) {
         hasIndependentSegmentsTag = true;
       } else if (line.startsWith(TAG_MEDIA)) {
@@ -361,53 +354,59 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         // tags.
         mediaTags.add(line);
       } else if (line.startsWith(TAG_SESSION_KEY)) {
+        attributes.reset(line);
         String keyFormat =
-            parseOptionalStringAttr(line, REGEX_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
-        SchemeData schemeData = parseDrmSchemeData(line, keyFormat, variableDefinitions);
+            parseOptionalStringAttr(
+                attributes, ATTR_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
+        SchemeData schemeData = parseDrmSchemeData(attributes, keyFormat, variableDefinitions);
         if (schemeData != null) {
-          String method = parseStringAttr(line, REGEX_METHOD, variableDefinitions);
+          String method = parseEnumeratedStringAttr(attributes, ATTR_METHOD, METHODS);
           String scheme = parseEncryptionScheme(method);
           sessionKeyDrmInitData.add(new DrmInitData(scheme, schemeData));
         }
       } else if (line.startsWith(TAG_STREAM_INF) || isIFrameOnlyVariant) {
+        attributes.reset(line);
         noClosedCaptions |= line.contains(ATTR_CLOSED_CAPTIONS_NONE);
         int roleFlags = isIFrameOnlyVariant ? C.ROLE_FLAG_TRICK_PLAY : 0;
-        int peakBitrate = parseIntAttr(line, REGEX_BANDWIDTH);
-        int averageBitrate = parseOptionalIntAttr(line, REGEX_AVERAGE_BANDWIDTH, -1);
-        String codecs = parseOptionalStringAttr(line, REGEX_CODECS, variableDefinitions);
-        String resolutionString =
-            parseOptionalStringAttr(line, REGEX_RESOLUTION, variableDefinitions);
-        int width;
-        int height;
+        int peakBitrate = parseIntAttr(attributes, ATTR_BANDWIDTH);
+        int averageBitrate = parseOptionalIntAttr(attributes, ATTR_AVERAGE_BANDWIDTH, -1);
+        String codecs = parseOptionalStringAttr(attributes, ATTR_CODECS, variableDefinitions);
+        @Nullable String resolutionString = attributes.getString(ATTR_RESOLUTION);
+        int width = Format.NO_VALUE;
+        int height = Format.NO_VALUE;
         if (resolutionString != null) {
-          String[] widthAndHeight = Util.split(resolutionString, "x");
-          width = Integer.parseInt(widthAndHeight[0]);
-          height = Integer.parseInt(widthAndHeight[1]);
-          if (width <= 0 || height <= 0) {
+          int separatorIndex = resolutionString.indexOf('x');
+          long parsedWidth =
+              HlsAttributeList.parseDecimalInteger(
+                  resolutionString, /* start= */ 0, separatorIndex);
+          long parsedHeight =
+              HlsAttributeList.parseDecimalInteger(
+                  resolutionString, separatorIndex + 1, resolutionString.length());
+          if (parsedWidth > 0
+              && parsedWidth <= Integer.MAX_VALUE
+              && parsedHeight > 0
+              && parsedHeight <= Integer.MAX_VALUE) {
+            width = (int) parsedWidth;
+            height = (int) parsedHeight;
+          } else {
             // Resolution string is invalid.
-            width = Format.NO_VALUE;
-            height = Format.NO_VALUE;
           }
-        } else {
-          width = Format.NO_VALUE;
-          height = Format.NO_VALUE;
-        }
-        float frameRate = Format.NO_VALUE;
-        String frameRateString =
-            parseOptionalStringAttr(line, REGEX_FRAME_RATE, variableDefinitions);
-        if (frameRateString != null) {
-          frameRate = Float.parseFloat(frameRateString);
         }
-        String videoGroupId = parseOptionalStringAttr(line, REGEX_VIDEO, variableDefinitions);
-        String audioGroupId = parseOptionalStringAttr(line, REGEX_AUDIO, variableDefinitions);
+        float frameRate =
+            (float)
+                attributes.getDecimalFloatingPoint(
+                    ATTR_FRAME_RATE, /* defaultValue= */ Format.NO_VALUE);
+        String videoGroupId = parseOptionalStringAttr(attributes, ATTR_VIDEO, variableDefinitions);
+        String audioGroupId = parseOptionalStringAttr(attributes, ATTR_AUDIO, variableDefinitions);
         String subtitlesGroupId =
-            parseOptionalStringAttr(line, REGEX_SUBTITLES, variableDefinitions);
+            parseOptionalStringAttr(attributes, ATTR_SUBTITLES, variableDefinitions);
         String closedCaptionsGroupId =
-            parseOptionalStringAttr(line, REGEX_CLOSED_CAPTIONS, variableDefinitions);
+            parseOptionalStringAttr(attributes, ATTR_CLOSED_CAPTIONS, variableDefinitions);
         Uri uri;
         if (isIFrameOnlyVariant) {
           uri =
-              UriUtil.resolveToUri(baseUri, parseStringAttr(line, REGEX_URI, variableDefinitions));
+              UriUtil.resolveToUri(
+                  baseUri, parseStringAttr(attributes, ATTR_URI, variableDefinitions));
         } else if (!iterator.hasNext()) {
           throw ParserException.createForMalformedManifest(
               "#EXT-X-STREAM-INF must be followed by another line", /* cause= */ null);
@@ -469,22 +468,24 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
     for (int i = 0; i < mediaTags.size(); i++) {
       line = mediaTags.get(i);
-      String groupId = parseStringAttr(line, REGEX_GROUP_ID, variableDefinitions);
-      String name = parseStringAttr(line, REGEX_NAME, variableDefinitions);
+      attributes.reset(line);
+      String groupId = parseStringAttr(attributes, ATTR_GROUP_ID, variableDefinitions);
+      String name = parseStringAttr(attributes, ATTR_NAME, variableDefinitions);
       Format.Builder formatBuilder =
           new Format.Builder()
               .setId(groupId + ":" + name)
               .setLabel(name)
               .setContainerMimeType(MimeTypes.APPLICATION_M3U8)
-              .setSelectionFlags(parseSelectionFlags(line))
-              .setRoleFlags(parseRoleFlags(line, variableDefinitions))
-              .setLanguage(parseOptionalStringAttr(line, REGEX_LANGUAGE, variableDefinitions));
+              .setSelectionFlags(parseSelectionFlags(attributes))
+              .setRoleFlags(parseRoleFlags(attributes, variableDefinitions))
+              .setLanguage(parseOptionalStringAttr(attributes, ATTR_LANGUAGE, variableDefinitions));
 
-      @Nullable String referenceUri = parseOptionalStringAttr(line, REGEX_URI, variableDefinitions);
+      @Nullable
+      String referenceUri = parseOptionalStringAttr(attributes, ATTR_URI, variableDefinitions);
       @Nullable Uri uri = referenceUri == null ? null : UriUtil.resolveToUri(baseUri, referenceUri);
       Metadata metadata =
           new Metadata(new HlsTrackMetadataEntry(groupId, name, Collections.emptyList()));
-      switch (parseStringAttr(line, REGEX_TYPE, variableDefinitions)) {
+      switch (parseEnumeratedStringAttr(attributes, ATTR_TYPE, RENDITION_TYPES)) {
         case TYPE_VIDEO:
           @Nullable Variant variant = getVariantWithVideoGroup(variants, groupId);
           if (variant != null) {
@@ -516,7 +517,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
           @Nullable
           String channelsString =
-              parseOptionalStringAttr(line, REGEX_CHANNELS, variableDefinitions);
+              parseOptionalStringAttr(attributes, ATTR_CHANNELS, variableDefinitions);
           if (channelsString != null) {
             int channelCount = Integer.parseInt(Util.splitAtFirst(channelsString, "/")[0]);
             formatBuilder.setChannelCount(channelCount);
@@ -554,7 +555,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
           break;
         case TYPE_CLOSED_CAPTIONS:
-          String instreamId = parseStringAttr(line, REGEX_INSTREAM_ID, variableDefinitions);
+          String instreamId = parseInstreamId(attributes);
           int accessibilityChannel;
           if (instreamId.startsWith("CC")) {
             sampleMimeType = MimeTypes.APPLICATION_CEA608;
@@ -633,6 +634,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   private static HlsMediaPlaylist parseMediaPlaylist(
       HlsMultivariantPlaylist multivariantPlaylist,
       @Nullable HlsMediaPlaylist previousMediaPlaylist,
+      boolean reuseUnchangedSegments,
       LineIterator iterator,
       String baseUri)
       throws IOException {
@@ -652,9 +654,12 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     @Nullable Part preloadPart = null;
     List<RenditionReport> renditionReports = new ArrayList<>();
     List<String> tags = new ArrayList<>();
+    HlsAttributeList attributes = new HlsAttributeList();
 
     long segmentDurationUs = 0;
     String segmentTitle = "";
+    // The #EXTINF tag of a segment that may be reused, which is only parsed if it isn't.
+    @Nullable String unparsedMediaDurationLine = null;
     boolean hasDiscontinuitySequence = false;
     int playlistDiscontinuitySequence = 0;
     int relativeDiscontinuitySequence = 0;
@@ -693,7 +698,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       }
 
       if (line.startsWith(TAG_PLAYLIST_TYPE)) {
-        String playlistTypeString = parseStringAttr(line, REGEX_PLAYLIST_TYPE, variableDefinitions);
+        String playlistTypeString = parseTagValue(line);
         if ("VOD".equals(playlistTypeString)) {
           playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_VOD;
         } else if ("EVENT".equals(playlistTypeString)) {
@@ -702,17 +707,22 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       } else if (line.equals(TAG_IFRAME)) {
         isIFrameOnly = true;
       } else if (line.startsWith(TAG_START)) {
-        startOffsetUs = (long) (parseDoubleAttr(line, REGEX_TIME_OFFSET) * C.MICROS_PER_SECOND);
+        attributes.reset(line);
+        startOffsetUs =
+            (long) (parseDoubleAttr(attributes, ATTR_TIME_OFFSET) * C.MICROS_PER_SECOND);
         preciseStart =
-            parseOptionalBooleanAttribute(line, REGEX_PRECISE, /* defaultValue= */ false);
+            parseOptionalBooleanAttribute(attributes, ATTR_PRECISE, /* defaultValue= */ false);
       } else if (line.startsWith(TAG_SERVER_CONTROL)) {
-        serverControl = parseServerControl(line);
+        attributes.reset(line);
+        serverControl = parseServerControl(attributes);
       } else if (line.startsWith(TAG_PART_INF)) {
-        double partTargetDurationSeconds = parseDoubleAttr(line, REGEX_PART_TARGET_DURATION);
+        attributes.reset(line);
+        double partTargetDurationSeconds = parseDoubleAttr(attributes, ATTR_PART_TARGET_DURATION);
         partTargetDurationUs = (long) (partTargetDurationSeconds * C.MICROS_PER_SECOND);
       } else if (line.startsWith(TAG_INIT_SEGMENT)) {
-        String uri = parseStringAttr(line, REGEX_URI, variableDefinitions);
-        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
+        attributes.reset(line);
+        String uri = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
+        String byteRange = parseOptionalStringAttr(attributes, ATTR_BYTERANGE, variableDefinitions);
         if (byteRange != null) {
           String[] splitByteRange = Util.split(byteRange, "@");
           segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
@@ -743,14 +753,15 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         }
         segmentByteRangeLength = C.LENGTH_UNSET;
       } else if (line.startsWith(TAG_TARGET_DURATION)) {
-        targetDurationUs = parseIntAttr(line, REGEX_TARGET_DURATION) * C.MICROS_PER_SECOND;
+        targetDurationUs = parseIntTagValue(line) * C.MICROS_PER_SECOND;
       } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
-        mediaSequence = parseLongAttr(line, REGEX_MEDIA_SEQUENCE);
+        mediaSequence = parseLongTagValue(line);
         segmentMediaSequence = mediaSequence;
       } else if (line.startsWith(TAG_VERSION)) {
-        version = parseIntAttr(line, REGEX_VERSION);
+        version = parseIntTagValue(line);
       } else if (line.startsWith(TAG_DEFINE)) {
-        String importName = parseOptionalStringAttr(line, REGEX_IMPORT, variableDefinitions);
+        attributes.reset(line);
+        String importName = parseOptionalStringAttr(attributes, ATTR_IMPORT, variableDefinitions);
         if (importName != null) {
           String value = multivariantPlaylist.variableDefinitions.get(importName);
           if (value != null) {
@@ -760,14 +771,20 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         } else {
           variableDefinitions.put(
-              parseStringAttr(line, REGEX_NAME, variableDefinitions),
-              parseStringAttr(line, REGEX_VALUE, variableDefinitions));
+              parseStringAttr(attributes, ATTR_NAME, variableDefinitions),
+              parseStringAttr(attributes, ATTR_VALUE, variableDefinitions));
         }
       } else if (line.startsWith(TAG_MEDIA_DURATION)) {
-        segmentDurationUs = parseTimeSecondsToUs(line, REGEX_MEDIA_DURATION);
-        segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        if (reuseUnchangedSegments
+            && getSegment(previousMediaPlaylist, segmentMediaSequence) != null) {
+          unparsedMediaDurationLine = line;
+        } else {
+          segmentDurationUs = parseMediaDurationUs(line);
+          segmentTitle = parseMediaTitle(line, variableDefinitions);
+        }
       } else if (line.startsWith(TAG_SKIP)) {
-        int skippedSegmentCount = parseIntAttr(line, REGEX_SKIPPED_SEGMENTS);
+        attributes.reset(line);
+        int skippedSegmentCount = parseIntAttr(attributes, ATTR_SKIPPED_SEGMENTS);
         checkState(previousMediaPlaylist != null && segments.isEmpty());
         int startIndex = (int) (mediaSequence - castNonNull(previousMediaPlaylist).mediaSequence);
         int endIndex = startIndex + skippedSegmentCount;
@@ -804,20 +821,27 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           segmentMediaSequence++;
         }
       } else if (line.startsWith(TAG_KEY)) {
-        String method = parseStringAttr(line, REGEX_METHOD, variableDefinitions);
+        attributes.reset(line);
+        String method = parseEnumeratedStringAttr(attributes, ATTR_METHOD, METHODS);
         String keyFormat =
-            parseOptionalStringAttr(line, REGEX_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
+            parseOptionalStringAttr(
+                attributes, ATTR_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
         fullSegmentEncryptionKeyUri = null;
         fullSegmentEncryptionIV = null;
         if (METHOD_NONE.equals(method)) {
           currentSchemeDatas.clear();
           cachedDrmInitData = null;
         } else /* !METHOD_NONE.equals(method) */ {
-          fullSegmentEncryptionIV = parseOptionalStringAttr(line, REGEX_IV, variableDefinitions);
+          @Nullable String encryptionIV = attributes.getString(ATTR_IV);
+          fullSegmentEncryptionIV =
+              encryptionIV != null
+                  ? replaceVariableReferences(encryptionIV, variableDefinitions)
+                  : null;
           if (KEYFORMAT_IDENTITY.equals(keyFormat)) {
             if (METHOD_AES_128.equals(method)) {
               // The segment is fully encrypted using an identity key.
-              fullSegmentEncryptionKeyUri = parseStringAttr(line, REGEX_URI, variableDefinitions);
+              fullSegmentEncryptionKeyUri =
+                  parseStringAttr(attributes, ATTR_URI, variableDefinitions);
             } else {
               // Do nothing. Samples are encrypted using an identity key, but this is not supported.
               // Hopefully, a traditional DRM alternative is also provided.
@@ -826,7 +850,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
             if (encryptionScheme == null) {
               encryptionScheme = parseEncryptionScheme(method);
             }
-            SchemeData schemeData = parseDrmSchemeData(line, keyFormat, variableDefinitions);
+            SchemeData schemeData = parseDrmSchemeData(attributes, keyFormat, variableDefinitions);
             if (schemeData != null) {
               cachedDrmInitData = null;
               currentSchemeDatas.put(keyFormat, schemeData);
@@ -834,7 +858,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
       } else if (line.startsWith(TAG_BYTERANGE)) {
-        String byteRange = parseStringAttr(line, REGEX_BYTERANGE, variableDefinitions);
+        String byteRange = parseTagValue(line);
         String[] splitByteRange = Util.split(byteRange, "@");
         segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
         if (splitByteRange.length > 1) {
@@ -858,24 +882,28 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       } else if (line.equals(TAG_ENDLIST)) {
         hasEndTag = true;
       } else if (line.startsWith(TAG_RENDITION_REPORT)) {
-        long lastMediaSequence = parseOptionalLongAttr(line, REGEX_LAST_MSN, C.INDEX_UNSET);
-        int lastPartIndex = parseOptionalIntAttr(line, REGEX_LAST_PART, C.INDEX_UNSET);
-        String uri = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        attributes.reset(line);
+        long lastMediaSequence = parseOptionalLongAttr(attributes, ATTR_LAST_MSN, C.INDEX_UNSET);
+        int lastPartIndex = parseOptionalIntAttr(attributes, ATTR_LAST_PART, C.INDEX_UNSET);
+        String uri = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
         Uri playlistUri = Uri.parse(UriUtil.resolve(baseUri, uri));
         renditionReports.add(new RenditionReport(playlistUri, lastMediaSequence, lastPartIndex));
       } else if (line.startsWith(TAG_PRELOAD_HINT)) {
+        attributes.reset(line);
         if (preloadPart != null) {
           continue;
         }
-        String type = parseStringAttr(line, REGEX_PRELOAD_HINT_TYPE, variableDefinitions);
+        String type = parseEnumeratedStringAttr(attributes, ATTR_TYPE, PRELOAD_HINT_TYPES);
         if (!TYPE_PART.equals(type)) {
           continue;
         }
-        String url = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        String url = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
         long byteRangeStart =
-            parseOptionalLongAttr(line, REGEX_BYTERANGE_START, /* defaultValue= */ C.LENGTH_UNSET);
+            parseOptionalLongAttr(
+                attributes, ATTR_BYTERANGE_START, /* defaultValue= */ C.LENGTH_UNSET);
         long byteRangeLength =
-            parseOptionalLongAttr(line, REGEX_BYTERANGE_LENGTH, /* defaultValue= */ C.LENGTH_UNSET);
+            parseOptionalLongAttr(
+                attributes, ATTR_BYTERANGE_LENGTH, /* defaultValue= */ C.LENGTH_UNSET);
         @Nullable
         String segmentEncryptionIV =
             getSegmentEncryptionIV(
@@ -906,20 +934,22 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
                   /* isPreload= */ true);
         }
       } else if (line.startsWith(TAG_PART)) {
+        attributes.reset(line);
         @Nullable
         String segmentEncryptionIV =
             getSegmentEncryptionIV(
                 segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV);
-        String url = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        String url = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
         long partDurationUs =
-            (long) (parseDoubleAttr(line, REGEX_ATTR_DURATION) * C.MICROS_PER_SECOND);
+            (long) (parseDoubleAttr(attributes, ATTR_DURATION) * C.MICROS_PER_SECOND);
         boolean isIndependent =
-            parseOptionalBooleanAttribute(line, REGEX_INDEPENDENT, /* defaultValue= */ false);
+            parseOptionalBooleanAttribute(attributes, ATTR_INDEPENDENT, /* defaultValue= */ false);
         // The first part of a segment is always independent if the segments are independent.
         isIndependent |= hasIndependentSegmentsTag && trailingParts.isEmpty();
-        boolean isGap = parseOptionalBooleanAttribute(line, REGEX_GAP, /* defaultValue= */ false);
+        boolean isGap =
+            parseOptionalBooleanAttribute(attributes, ATTR_GAP, /* defaultValue= */ false);
         @Nullable
-        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
+        String byteRange = parseOptionalStringAttr(attributes, ATTR_BYTERANGE, variableDefinitions);
         long partByteRangeLength = C.LENGTH_UNSET;
         if (byteRange != null) {
           String[] splitByteRange = Util.split(byteRange, "@");
@@ -962,6 +992,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         String segmentEncryptionIV =
             getSegmentEncryptionIV(
                 segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV);
+        @Nullable
+        Segment previousSegment =
+            reuseUnchangedSegments ? getSegment(previousMediaPlaylist, segmentMediaSequence) : null;
         segmentMediaSequence++;
         String segmentUri = replaceVariableReferences(line, variableDefinitions);
         @Nullable Segment inferredInitSegment = urlToInferredInitSegment.get(segmentUri);
@@ -992,21 +1025,55 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
 
-        segments.add(
-            new Segment(
+        if (previousSegment != null
+            && inferredInitSegment == null
+            && castNonNull(previousMediaPlaylist).discontinuitySequence
+                    + previousSegment.relativeDiscontinuitySequence
+                == playlistDiscontinuitySequence + relativeDiscontinuitySequence
+            && isUnchangedSegment(
+                previousSegment,
                 segmentUri,
-                initializationSegment != null ? initializationSegment : inferredInitSegment,
-                segmentTitle,
-                segmentDurationUs,
-                relativeDiscontinuitySequence,
-                segmentStartTimeUs,
+                initializationSegment,
                 cachedDrmInitData,
                 fullSegmentEncryptionKeyUri,
                 segmentEncryptionIV,
                 segmentByteRangeOffset,
                 segmentByteRangeLength,
                 hasGapTag,
-                trailingParts));
+                trailingParts)) {
+          // Reuse the previous instance, and the instances it refers to, rather than creating
+          // equal ones.
+          Segment segment = previousSegment;
+          if (segment.relativeStartTimeUs != segmentStartTimeUs
+              || segment.relativeDiscontinuitySequence != relativeDiscontinuitySequence) {
+            segment = segment.copyWith(segmentStartTimeUs, relativeDiscontinuitySequence);
+          }
+          segments.add(segment);
+          segmentDurationUs = segment.durationUs;
+          initializationSegment = segment.initializationSegment;
+          cachedDrmInitData = segment.drmInitData;
+        } else {
+          if (unparsedMediaDurationLine != null) {
+            segmentDurationUs = parseMediaDurationUs(unparsedMediaDurationLine);
+            segmentTitle = parseMediaTitle(unparsedMediaDurationLine, variableDefinitions);
+          }
+          segments.add(
+              new Segment(
+                  segmentUri,
+                  initializationSegment != null ? initializationSegment : inferredInitSegment,
+                  segmentTitle,
+                  segmentDurationUs,
+                  relativeDiscontinuitySequence,
+                  segmentStartTimeUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  segmentEncryptionIV,
+                  segmentByteRangeOffset,
+                  segmentByteRangeLength,
+                  hasGapTag,
+                  trailingParts));
+        }
+        unparsedMediaDurationLine = null;
         segmentStartTimeUs += segmentDurationUs;
         partStartTimeUs = segmentStartTimeUs;
         segmentDurationUs = 0;
@@ -1065,6 +1132,78 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         renditionReportMap);
   }
 
+  /**
+   * Returns the segment of a playlist with the given media sequence number, or null if the playlist
+   * is null or doesn't contain the segment.
+   */
+  @Nullable
+  private static Segment getSegment(@Nullable HlsMediaPlaylist playlist, long mediaSequence) {
+    if (playlist == null) {
+      return null;
+    }
+    long index = mediaSequence - playlist.mediaSequence;
+    return index >= 0 && index < playlist.segments.size()
+        ? playlist.segments.get((int) index)
+        : null;
+  }
+
+  /**
+   * Returns whether a segment of the previous playlist is unchanged, given the URI and state that
+   * apply to the segment with the same media sequence number in the playlist being parsed.
+   */
+  private static boolean isUnchangedSegment(
+      Segment previousSegment,
+      String url,
+      @Nullable Segment initializationSegment,
+      @Nullable DrmInitData drmInitData,
+      @Nullable String fullSegmentEncryptionKeyUri,
+      @Nullable String encryptionIV,
+      long byteRangeOffset,
+      long byteRangeLength,
+      boolean hasGapTag,
+      List<Part> parts) {
+    if (!previousSegment.url.equals(url)
+        || previousSegment.byteRangeLength != byteRangeLength
+        || (byteRangeLength != C.LENGTH_UNSET && previousSegment.byteRangeOffset != byteRangeOffset)
+        || previousSegment.hasGapTag != hasGapTag
+        || !Objects.equals(previousSegment.fullSegmentEncryptionKeyUri, fullSegmentEncryptionKeyUri)
+        || !Objects.equals(previousSegment.encryptionIV, encryptionIV)
+        || !Objects.equals(previousSegment.drmInitData, drmInitData)
+        || !isSameInitializationSegment(
+            previousSegment.initializationSegment, initializationSegment)
+        || previousSegment.parts.size() != parts.size()) {
+      return false;
+    }
+    for (int i = 0; i < parts.size(); i++) {
+      Part previousPart = previousSegment.parts.get(i);
+      Part part = parts.get(i);
+      if (!previousPart.url.equals(part.url)
+          || previousPart.durationUs != part.durationUs
+          || previousPart.byteRangeOffset != part.byteRangeOffset
+          || previousPart.byteRangeLength != part.byteRangeLength
+          || previousPart.hasGapTag != part.hasGapTag
+          || previousPart.isIndependent != part.isIndependent) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSameInitializationSegment(
+      @Nullable Segment previousSegment, @Nullable Segment segment) {
+    if (previousSegment == segment) {
+      return true;
+    } else if (previousSegment == null || segment == null) {
+      return false;
+    }
+    return previousSegment.url.equals(segment.url)
+        && previousSegment.byteRangeOffset == segment.byteRangeOffset
+        && previousSegment.byteRangeLength == segment.byteRangeLength
+        && Objects.equals(
+            previousSegment.fullSegmentEncryptionKeyUri, segment.fullSegmentEncryptionKeyUri)
+        && Objects.equals(previousSegment.encryptionIV, segment.encryptionIV);
+  }
+
   private static DrmInitData getPlaylistProtectionSchemes(
       @Nullable String encryptionScheme, SchemeData[] schemeDatas) {
     SchemeData[] playlistSchemeDatas = new SchemeData[schemeDatas.length];
@@ -1087,24 +1226,24 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return Long.toHexString(segmentMediaSequence);
   }
 
-  private static @C.SelectionFlags int parseSelectionFlags(String line) {
+  private static @C.SelectionFlags int parseSelectionFlags(HlsAttributeList attributes) {
     int flags = 0;
-    if (parseOptionalBooleanAttribute(line, REGEX_DEFAULT, false)) {
+    if (parseOptionalBooleanAttribute(attributes, ATTR_DEFAULT, false)) {
       flags |= C.SELECTION_FLAG_DEFAULT;
     }
-    if (parseOptionalBooleanAttribute(line, REGEX_FORCED, false)) {
+    if (parseOptionalBooleanAttribute(attributes, ATTR_FORCED, false)) {
       flags |= C.SELECTION_FLAG_FORCED;
     }
-    if (parseOptionalBooleanAttribute(line, REGEX_AUTOSELECT, false)) {
+    if (parseOptionalBooleanAttribute(attributes, ATTR_AUTOSELECT, false)) {
       flags |= C.SELECTION_FLAG_AUTOSELECT;
     }
     return flags;
   }
 
   private static @C.RoleFlags int parseRoleFlags(
-      String line, Map<String, String> variableDefinitions) {
+      HlsAttributeList attributes, Map<String, String> variableDefinitions) {
     String concatenatedCharacteristics =
-        parseOptionalStringAttr(line, REGEX_CHARACTERISTICS, variableDefinitions);
+        parseOptionalStringAttr(attributes, ATTR_CHARACTERISTICS, variableDefinitions);
     if (TextUtils.isEmpty(concatenatedCharacteristics)) {
       return 0;
     }
@@ -1127,20 +1266,20 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
   @Nullable
   private static SchemeData parseDrmSchemeData(
-      String line, String keyFormat, Map<String, String> variableDefinitions)
+      HlsAttributeList attributes, String keyFormat, Map<String, String> variableDefinitions)
       throws ParserException {
     String keyFormatVersions =
-        parseOptionalStringAttr(line, REGEX_KEYFORMATVERSIONS, "1", variableDefinitions);
+        parseOptionalStringAttr(attributes, ATTR_KEYFORMATVERSIONS, "1", variableDefinitions);
     if (KEYFORMAT_WIDEVINE_PSSH_BINARY.equals(keyFormat)) {
-      String uriString = parseStringAttr(line, REGEX_URI, variableDefinitions);
+      String uriString = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
       return new SchemeData(
           C.WIDEVINE_UUID,
           MimeTypes.VIDEO_MP4,
           Base64.decode(uriString.substring(uriString.indexOf(',')), Base64.DEFAULT));
     } else if (KEYFORMAT_WIDEVINE_PSSH_JSON.equals(keyFormat)) {
-      return new SchemeData(C.WIDEVINE_UUID, "hls", Util.getUtf8Bytes(line));
+      return new SchemeData(C.WIDEVINE_UUID, "hls", Util.getUtf8Bytes(attributes.getLine()));
     } else if (KEYFORMAT_PLAYREADY.equals(keyFormat) && "1".equals(keyFormatVersions)) {
-      String uriString = parseStringAttr(line, REGEX_URI, variableDefinitions);
+      String uriString = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
       byte[] data = Base64.decode(uriString.substring(uriString.indexOf(',')), Base64.DEFAULT);
       byte[] psshData = PsshAtomUtil.buildPsshAtom(C.PLAYREADY_UUID, data);
       return new SchemeData(C.PLAYREADY_UUID, MimeTypes.VIDEO_MP4, psshData);
@@ -1148,28 +1287,30 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return null;
   }
 
-  private static HlsMediaPlaylist.ServerControl parseServerControl(String line) {
+  private static HlsMediaPlaylist.ServerControl parseServerControl(HlsAttributeList attributes) {
     double skipUntilSeconds =
-        parseOptionalDoubleAttr(line, REGEX_CAN_SKIP_UNTIL, /* defaultValue= */ C.TIME_UNSET);
+        parseOptionalDoubleAttr(attributes, ATTR_CAN_SKIP_UNTIL, /* defaultValue= */ C.TIME_UNSET);
     long skipUntilUs =
         skipUntilSeconds == C.TIME_UNSET
             ? C.TIME_UNSET
             : (long) (skipUntilSeconds * C.MICROS_PER_SECOND);
     boolean canSkipDateRanges =
-        parseOptionalBooleanAttribute(line, REGEX_CAN_SKIP_DATE_RANGES, /* defaultValue= */ false);
+        parseOptionalBooleanAttribute(
+            attributes, ATTR_CAN_SKIP_DATE_RANGES, /* defaultValue= */ false);
     double holdBackSeconds =
-        parseOptionalDoubleAttr(line, REGEX_HOLD_BACK, /* defaultValue= */ C.TIME_UNSET);
+        parseOptionalDoubleAttr(attributes, ATTR_HOLD_BACK, /* defaultValue= */ C.TIME_UNSET);
     long holdBackUs =
         holdBackSeconds == C.TIME_UNSET
             ? C.TIME_UNSET
             : (long) (holdBackSeconds * C.MICROS_PER_SECOND);
-    double partHoldBackSeconds = parseOptionalDoubleAttr(line, REGEX_PART_HOLD_BACK, C.TIME_UNSET);
+    double partHoldBackSeconds =
+        parseOptionalDoubleAttr(attributes, ATTR_PART_HOLD_BACK, C.TIME_UNSET);
     long partHoldBackUs =
         partHoldBackSeconds == C.TIME_UNSET
             ? C.TIME_UNSET
             : (long) (partHoldBackSeconds * C.MICROS_PER_SECOND);
     boolean canBlockReload =
-        parseOptionalBooleanAttribute(line, REGEX_CAN_BLOCK_RELOAD, /* defaultValue= */ false);
+        parseOptionalBooleanAttribute(attributes, ATTR_CAN_BLOCK_RELOAD, /* defaultValue= */ false);
 
     return new HlsMediaPlaylist.ServerControl(
         skipUntilUs, canSkipDateRanges, holdBackUs, partHoldBackUs, canBlockReload);
@@ -1181,80 +1322,171 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         : C.CENC_TYPE_cbcs;
   }
 
-  private static int parseIntAttr(String line, Pattern pattern) throws ParserException {
-    return Integer.parseInt(parseStringAttr(line, pattern, Collections.emptyMap()));
+  private static int parseIntTagValue(String line) throws ParserException {
+    return toInt(parseLongTagValue(line));
   }
 
-  private static int parseOptionalIntAttr(String line, Pattern pattern, int defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return Integer.parseInt(checkNotNull(matcher.group(1)));
+  /** Parses the decimal-integer value of a tag such as {@code #EXT-X-VERSION}. */
+  private static long parseLongTagValue(String line) throws ParserException {
+    long value =
+        HlsAttributeList.parseDecimalInteger(line, line.indexOf(':') + 1, line.length());
+    if (value == C.INDEX_UNSET) {
+      throw ParserException.createForMalformedManifest(
+          "Couldn't parse decimal integer in " + line, /* cause= */ null);
     }
-    return defaultValue;
+    return value;
   }
 
-  private static long parseLongAttr(String line, Pattern pattern) throws ParserException {
-    return Long.parseLong(parseStringAttr(line, pattern, Collections.emptyMap()));
+  private static String parseTagValue(String line) throws ParserException {
+    int colonIndex = line.indexOf(':');
+    if (colonIndex == C.INDEX_UNSET || colonIndex == line.length() - 1) {
+      throw ParserException.createForMalformedManifest(
+          "Couldn't parse value in " + line, /* cause= */ null);
+    }
+    return line.substring(colonIndex + 1);
   }
 
-  private static long parseOptionalLongAttr(String line, Pattern pattern, long defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return Long.parseLong(checkNotNull(matcher.group(1)));
+  /**
+   * Parses the duration of an {@code #EXTINF} tag, in microseconds, without going through a
+   * floating point representation. Digits that represent less than a microsecond are ignored.
+   */
+  private static long parseMediaDurationUs(String line) throws ParserException {
+    int position = line.indexOf(':') + 1;
+    long seconds = 0;
+    long fractionUs = 0;
+    long fractionDigitScale = C.MICROS_PER_SECOND;
+    boolean hasDigits = false;
+    boolean hasDecimalPoint = false;
+    for (; position < line.length(); position++) {
+      char c = line.charAt(position);
+      if (isDigit(c)) {
+        hasDigits = true;
+        if (!hasDecimalPoint) {
+          seconds = seconds * 10 + (c - '0');
+        } else if (fractionDigitScale > 1) {
+          fractionDigitScale /= 10;
+          fractionUs += (c - '0') * fractionDigitScale;
+        }
+      } else if (c == '.' && !hasDecimalPoint) {
+        hasDecimalPoint = true;
+      } else {
+        break;
+      }
     }
-    return defaultValue;
+    if (!hasDigits) {
+      throw ParserException.createForMalformedManifest(
+          "Couldn't parse duration in " + line, /* cause= */ null);
+    }
+    return seconds * C.MICROS_PER_SECOND + fractionUs;
+  }
+
+  /** Returns the title of an {@code #EXTINF} tag, or an empty string if it has none. */
+  private static String parseMediaTitle(String line, Map<String, String> variableDefinitions) {
+    int position = line.indexOf(':') + 1;
+    while (position < line.length()
+        && (isDigit(line.charAt(position)) || line.charAt(position) == '.')) {
+      position++;
+    }
+    if (position + 1 >= line.length() || line.charAt(position) != ',') {
+      return "";
+    }
+    return replaceVariableReferences(line.substring(position + 1), variableDefinitions);
   }
 
-  private static long parseTimeSecondsToUs(String line, Pattern pattern) throws ParserException {
-    String timeValueSeconds = parseStringAttr(line, pattern, Collections.emptyMap());
-    BigDecimal timeValue = new BigDecimal(timeValueSeconds);
-    return timeValue.multiply(new BigDecimal(C.MICROS_PER_SECOND)).longValue();
+  private static int parseIntAttr(HlsAttributeList attributes, String name) throws ParserException {
+    return toInt(parseLongAttr(attributes, name));
+  }
+
+  private static int parseOptionalIntAttr(
+      HlsAttributeList attributes, String name, int defaultValue) {
+    return toInt(attributes.getDecimalInteger(name, defaultValue));
+  }
+
+  private static long parseLongAttr(HlsAttributeList attributes, String name)
+      throws ParserException {
+    long value = attributes.getDecimalInteger(name, /* defaultValue= */ C.INDEX_UNSET);
+    if (value == C.INDEX_UNSET) {
+      throw createMissingAttributeException(attributes, name);
+    }
+    return value;
   }
 
-  private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
-    return Double.parseDouble(parseStringAttr(line, pattern, Collections.emptyMap()));
+  private static long parseOptionalLongAttr(
+      HlsAttributeList attributes, String name, long defaultValue) {
+    return attributes.getDecimalInteger(name, defaultValue);
+  }
+
+  private static double parseDoubleAttr(HlsAttributeList attributes, String name)
+      throws ParserException {
+    double value = attributes.getDecimalFloatingPoint(name, /* defaultValue= */ Double.NaN);
+    if (Double.isNaN(value)) {
+      throw createMissingAttributeException(attributes, name);
+    }
+    return value;
+  }
+
+  private static double parseOptionalDoubleAttr(
+      HlsAttributeList attributes, String name, double defaultValue) {
+    return attributes.getDecimalFloatingPoint(name, defaultValue);
+  }
+
+  private static String parseEnumeratedStringAttr(
+      HlsAttributeList attributes, String name, ImmutableSet<String> values)
+      throws ParserException {
+    @Nullable String value = attributes.getString(name);
+    if (value == null || !values.contains(value)) {
+      throw createMissingAttributeException(attributes, name);
+    }
+    return value;
+  }
+
+  private static String parseInstreamId(HlsAttributeList attributes) throws ParserException {
+    @Nullable String instreamId = attributes.getQuotedString(ATTR_INSTREAM_ID);
+    if (instreamId != null) {
+      int prefixLength =
+          instreamId.startsWith("CC") ? 2 : instreamId.startsWith("SERVICE") ? 7 : 0;
+      if (prefixLength > 0
+          && HlsAttributeList.parseDecimalInteger(instreamId, prefixLength, instreamId.length())
+              != C.INDEX_UNSET) {
+        return instreamId;
+      }
+    }
+    throw createMissingAttributeException(attributes, ATTR_INSTREAM_ID);
   }
 
   private static String parseStringAttr(
-      String line, Pattern pattern, Map<String, String> variableDefinitions)
+      HlsAttributeList attributes, String name, Map<String, String> variableDefinitions)
       throws ParserException {
-    String value = parseOptionalStringAttr(line, pattern, variableDefinitions);
+    String value = parseOptionalStringAttr(attributes, name, variableDefinitions);
     if (value != null) {
       return value;
     } else {
-      throw ParserException.createForMalformedManifest(
-          "Couldn't match " + pattern.pattern() + " in " + line, /* cause= */ null);
+      throw createMissingAttributeException(attributes, name);
     }
   }
 
   @Nullable
   private static String parseOptionalStringAttr(
-      String line, Pattern pattern, Map<String, String> variableDefinitions) {
-    return parseOptionalStringAttr(line, pattern, null, variableDefinitions);
+      HlsAttributeList attributes, String name, Map<String, String> variableDefinitions) {
+    return parseOptionalStringAttr(attributes, name, null, variableDefinitions);
   }
 
   private static @PolyNull String parseOptionalStringAttr(
-      String line,
-      Pattern pattern,
+      HlsAttributeList attributes,
+      String name,
       @PolyNull String defaultValue,
       Map<String, String> variableDefinitions) {
-    Matcher matcher = pattern.matcher(line);
-    @PolyNull String value = matcher.find() ? checkNotNull(matcher.group(1)) : defaultValue;
-    return variableDefinitions.isEmpty() || value == null
-        ? value
-        : replaceVariableReferences(value, variableDefinitions);
-  }
-
-  private static double parseOptionalDoubleAttr(String line, Pattern pattern, double defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return Double.parseDouble(checkNotNull(matcher.group(1)));
-    }
-    return defaultValue;
+    @Nullable String quotedString = attributes.getQuotedString(name);
+    @PolyNull String value = quotedString != null ? quotedString : defaultValue;
+    return value == null ? value : replaceVariableReferences(value, variableDefinitions);
   }
 
   private static String replaceVariableReferences(
       String string, Map<String, String> variableDefinitions) {
+    if (variableDefinitions.isEmpty() || !string.contains("{$")) {
+      // There are no references that can be replaced.
+      return string;
+    }
     Matcher matcher = REGEX_VARIABLE_REFERENCE.matcher(string);
     // TODO: Replace StringBuffer with StringBuilder once Java 9 is available.
     StringBuffer stringWithReplacements = new StringBuffer();
@@ -1272,16 +1504,30 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   }
 
   private static boolean parseOptionalBooleanAttribute(
-      String line, Pattern pattern, boolean defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return BOOLEAN_TRUE.equals(matcher.group(1));
+      HlsAttributeList attributes, String name, boolean defaultValue) {
+    if (attributes.hasValue(name, BOOLEAN_TRUE)) {
+      return true;
+    } else if (attributes.hasValue(name, BOOLEAN_FALSE)) {
+      return false;
     }
     return defaultValue;
   }
 
-  private static Pattern compileBooleanAttrPattern(String attribute) {
-    return Pattern.compile(attribute + "=(" + BOOLEAN_FALSE + "|" + BOOLEAN_TRUE + ")");
+  private static ParserException createMissingAttributeException(
+      HlsAttributeList attributes, String name) {
+    return ParserException.createForMalformedManifest(
+        "Couldn't match " + name + " in " + attributes.getLine(), /* cause= */ null);
+  }
+
+  private static int toInt(long value) {
+    if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+      throw new NumberFormatException("Value out of range: " + value);
+    }
+    return (int) value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
   }
 
   private static class LineIterator {
@@ -22,6 +22,7 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.exoplayer.hls.HlsDataSourceFactory;
 import androidx.media3.exoplayer.source.MediaSourceEventListener.EventDispatcher;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import java.io.IOException;
 
 /**
@@ -53,6 +54,26 @@ public interface HlsPlaylistTracker {
         HlsDataSourceFactory dataSourceFactory,
         LoadErrorHandlingPolicy loadErrorHandlingPolicy,
         HlsPlaylistParserFactory playlistParserFactory);
+
+    /**
+     * Creates a new tracker instance that loads playlists in the {@link
+     * LoaderExecutorPool#LANE_MANIFEST manifest lane} of a {@link LoaderExecutorPool}.
+     *
+     * <p>The default implementation ignores the pool, and calls {@link
+     * #createTracker(HlsDataSourceFactory, LoadErrorHandlingPolicy, HlsPlaylistParserFactory)}.
+     *
+     * @param dataSourceFactory The {@link HlsDataSourceFactory} to use for playlist loading.
+     * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy} for playlist load errors.
+     * @param playlistParserFactory The {@link HlsPlaylistParserFactory} for playlist parsing.
+     * @param loaderExecutorPool The {@link LoaderExecutorPool} in which playlists are loaded.
+     */
+    default HlsPlaylistTracker createTracker(
+        HlsDataSourceFactory dataSourceFactory,
+        LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+        HlsPlaylistParserFactory playlistParserFactory,
+        LoaderExecutorPool loaderExecutorPool) {
+      return createTracker(dataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory);
+    }
   }
 
   /** Listener for primary playlist changes. */
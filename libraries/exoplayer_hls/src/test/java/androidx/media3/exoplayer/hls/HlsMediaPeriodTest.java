@@ -88,6 +88,7 @@ public final class HlsMediaPeriodTest {
               mockDataSourceFactory,
               mock(TransferListener.class),
               /* cmcdConfiguration= */ null,
+              /* loaderExecutorPool= */ null,
               mock(DrmSessionManager.class),
               new DrmSessionEventListener.EventDispatcher()
                   .withParameters(/* windowIndex= */ 0, mediaPeriodId),
@@ -18,9 +18,13 @@ package androidx.media3.exoplayer.hls.playlist;
 import static com.google.common.truth.Truth.assertThat;
 
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.Nullable;
 import androidx.media3.datasource.DataSource;
 import androidx.media3.datasource.DefaultHttpDataSource;
 import androidx.media3.exoplayer.source.MediaSourceEventListener;
+import androidx.media3.exoplayer.source.PlaylistSwitchInfo;
 import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
 import androidx.media3.test.utils.TestUtil;
@@ -28,19 +32,25 @@ import androidx.media3.test.utils.robolectric.RobolectricUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
 import okio.Buffer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.robolectric.shadows.ShadowSystemClock;
 
 /** Unit test for {@link DefaultHlsPlaylistTracker}. */
 @RunWith(AndroidJUnit4.class)
@@ -644,6 +654,266 @@ public class DefaultHlsPlaylistTrackerTest {
     assertThat(mediaPlaylists.get(2).mediaSequence).isEqualTo(12);
   }
 
+  @Test
+  public void start_withPrefetchedVariants_loadsPlaylistsOfClosestVariants() throws Exception {
+    dispatchVodPlaylists();
+    DefaultHlsPlaylistTracker defaultHlsPlaylistTracker =
+        createPlaylistTrackerWithPrefetchedVariants(/* maxPrefetchedVariantCount= */ 2);
+
+    defaultHlsPlaylistTracker.start(
+        Uri.parse(mockWebServer.url("/multivariant.m3u8").toString()),
+        new MediaSourceEventListener.EventDispatcher(),
+        mediaPlaylist -> {});
+    Uri higherVariantUrl = Uri.parse(mockWebServer.url("/media2/playlist.m3u8").toString());
+    Uri lowerVariantUrl = Uri.parse(mockWebServer.url("/media1/playlist.m3u8").toString());
+    RobolectricUtil.runMainLooperUntil(
+        () ->
+            defaultHlsPlaylistTracker.isSnapshotValid(higherVariantUrl)
+                && defaultHlsPlaylistTracker.isSnapshotValid(lowerVariantUrl));
+    defaultHlsPlaylistTracker.stop();
+
+    // The multivariant playlist, the primary playlist and the two closest variants.
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void getPlaylistSnapshot_switchToPrefetchedVariant_reportsSwitchWithoutLatency()
+      throws Exception {
+    dispatchVodPlaylists();
+    DefaultHlsPlaylistTracker defaultHlsPlaylistTracker =
+        createPlaylistTrackerWithPrefetchedVariants(/* maxPrefetchedVariantCount= */ 1);
+    List<PlaylistSwitchInfo> playlistSwitchInfos = new ArrayList<>();
+    MediaSourceEventListener.EventDispatcher eventDispatcher =
+        createEventDispatcherCollectingPlaylistSwitches(playlistSwitchInfos);
+    Uri primaryUrl = Uri.parse(mockWebServer.url("/media0/playlist.m3u8").toString());
+    Uri higherVariantUrl = Uri.parse(mockWebServer.url("/media2/playlist.m3u8").toString());
+
+    defaultHlsPlaylistTracker.start(
+        Uri.parse(mockWebServer.url("/multivariant.m3u8").toString()),
+        eventDispatcher,
+        mediaPlaylist -> {});
+    RobolectricUtil.runMainLooperUntil(
+        () -> defaultHlsPlaylistTracker.isSnapshotValid(higherVariantUrl));
+    defaultHlsPlaylistTracker.getPlaylistSnapshot(primaryUrl, /* isForPlayback= */ true);
+    defaultHlsPlaylistTracker.getPlaylistSnapshot(higherVariantUrl, /* isForPlayback= */ true);
+    RobolectricUtil.runMainLooperUntil(() -> !playlistSwitchInfos.isEmpty());
+    defaultHlsPlaylistTracker.stop();
+
+    assertThat(playlistSwitchInfos).hasSize(1);
+    PlaylistSwitchInfo playlistSwitchInfo = playlistSwitchInfos.get(0);
+    assertThat(playlistSwitchInfo.previousPlaylistUri).isEqualTo(primaryUrl);
+    assertThat(playlistSwitchInfo.playlistUri).isEqualTo(higherVariantUrl);
+    assertThat(playlistSwitchInfo.switchLatencyMs).isEqualTo(0);
+    assertThat(playlistSwitchInfo.wasPrefetched).isTrue();
+  }
+
+  @Test
+  public void getPlaylistSnapshot_switchToVariantThatIsNotPrefetched_reportsSwitch()
+      throws Exception {
+    dispatchVodPlaylists();
+    DefaultHlsPlaylistTracker defaultHlsPlaylistTracker =
+        createPlaylistTrackerWithPrefetchedVariants(/* maxPrefetchedVariantCount= */ 1);
+    List<PlaylistSwitchInfo> playlistSwitchInfos = new ArrayList<>();
+    MediaSourceEventListener.EventDispatcher eventDispatcher =
+        createEventDispatcherCollectingPlaylistSwitches(playlistSwitchInfos);
+    Uri primaryUrl = Uri.parse(mockWebServer.url("/media0/playlist.m3u8").toString());
+    Uri lowestVariantUrl = Uri.parse(mockWebServer.url("/media3/playlist.m3u8").toString());
+
+    defaultHlsPlaylistTracker.start(
+        Uri.parse(mockWebServer.url("/multivariant.m3u8").toString()),
+        eventDispatcher,
+        mediaPlaylist -> {});
+    RobolectricUtil.runMainLooperUntil(() -> defaultHlsPlaylistTracker.isSnapshotValid(primaryUrl));
+    defaultHlsPlaylistTracker.getPlaylistSnapshot(primaryUrl, /* isForPlayback= */ true);
+    defaultHlsPlaylistTracker.refreshPlaylist(lowestVariantUrl);
+    // Simulate the time taken to load the playlist that playback is waiting for.
+    ShadowSystemClock.advanceBy(Duration.ofMillis(100));
+    RobolectricUtil.runMainLooperUntil(
+        () -> defaultHlsPlaylistTracker.isSnapshotValid(lowestVariantUrl));
+    defaultHlsPlaylistTracker.getPlaylistSnapshot(lowestVariantUrl, /* isForPlayback= */ true);
+    RobolectricUtil.runMainLooperUntil(() -> !playlistSwitchInfos.isEmpty());
+    defaultHlsPlaylistTracker.stop();
+
+    assertThat(playlistSwitchInfos).hasSize(1);
+    PlaylistSwitchInfo playlistSwitchInfo = playlistSwitchInfos.get(0);
+    assertThat(playlistSwitchInfo.previousPlaylistUri).isEqualTo(primaryUrl);
+    assertThat(playlistSwitchInfo.playlistUri).isEqualTo(lowestVariantUrl);
+    assertThat(playlistSwitchInfo.switchLatencyMs).isEqualTo(100);
+    assertThat(playlistSwitchInfo.wasPrefetched).isFalse();
+  }
+
+  @Test
+  public void excludeMediaPlaylist_prefetchedVariant_stopsPrefetchingIt() throws Exception {
+    dispatchVodPlaylists();
+    DefaultHlsPlaylistTracker defaultHlsPlaylistTracker =
+        createPlaylistTrackerWithPrefetchedVariants(/* maxPrefetchedVariantCount= */ 1);
+    List<PlaylistSwitchInfo> playlistSwitchInfos = new ArrayList<>();
+    MediaSourceEventListener.EventDispatcher eventDispatcher =
+        createEventDispatcherCollectingPlaylistSwitches(playlistSwitchInfos);
+    Uri primaryUrl = Uri.parse(mockWebServer.url("/media0/playlist.m3u8").toString());
+    Uri higherVariantUrl = Uri.parse(mockWebServer.url("/media2/playlist.m3u8").toString());
+    Uri lowerVariantUrl = Uri.parse(mockWebServer.url("/media1/playlist.m3u8").toString());
+
+    defaultHlsPlaylistTracker.start(
+        Uri.parse(mockWebServer.url("/multivariant.m3u8").toString()),
+        eventDispatcher,
+        mediaPlaylist -> {});
+    RobolectricUtil.runMainLooperUntil(
+        () -> defaultHlsPlaylistTracker.isSnapshotValid(higherVariantUrl));
+    defaultHlsPlaylistTracker.getPlaylistSnapshot(primaryUrl, /* isForPlayback= */ true);
+    defaultHlsPlaylistTracker.excludeMediaPlaylist(
+        higherVariantUrl, /* exclusionDurationMs= */ 60_000);
+    // The next closest variant is prefetched instead of the excluded one.
+    RobolectricUtil.runMainLooperUntil(
+        () -> defaultHlsPlaylistTracker.isSnapshotValid(lowerVariantUrl));
+    defaultHlsPlaylistTracker.getPlaylistSnapshot(higherVariantUrl, /* isForPlayback= */ true);
+    RobolectricUtil.runMainLooperUntil(() -> !playlistSwitchInfos.isEmpty());
+    defaultHlsPlaylistTracker.stop();
+
+    assertThat(playlistSwitchInfos).hasSize(1);
+    assertThat(playlistSwitchInfos.get(0).playlistUri).isEqualTo(higherVariantUrl);
+    assertThat(playlistSwitchInfos.get(0).wasPrefetched).isFalse();
+  }
+
+  @Test
+  public void start_withPrefetchedLiveVariant_loadsItWithBlockingReloads() throws Exception {
+    String multivariantPlaylist =
+        "#EXTM3U\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=2000000\n"
+            + "media0/playlist.m3u8\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=1000000\n"
+            + "media1/playlist.m3u8\n";
+    String primaryMediaPlaylist =
+        "#EXTM3U\n"
+            + "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXTINF:4.0,\n"
+            + "segment10.ts\n"
+            + "#EXTINF:4.0,\n"
+            + "segment11.ts\n"
+            + "#EXT-X-RENDITION-REPORT:URI=\"../media1/playlist.m3u8\",LAST-MSN=11\n";
+    String prefetchedMediaPlaylist =
+        "#EXTM3U\n"
+            + "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXTINF:4.0,\n"
+            + "segment10.ts\n"
+            + "#EXTINF:4.0,\n"
+            + "segment11.ts\n";
+    List<String> requestPaths = Collections.synchronizedList(new ArrayList<>());
+    mockWebServer.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            String path = request.getPath();
+            requestPaths.add(path);
+            switch (path) {
+              case "/multivariant.m3u8":
+                return new MockResponse().setResponseCode(200).setBody(multivariantPlaylist);
+              case "/media0/playlist.m3u8":
+                return new MockResponse().setResponseCode(200).setBody(primaryMediaPlaylist);
+              case "/media1/playlist.m3u8?_HLS_msn=11":
+                return new MockResponse().setResponseCode(200).setBody(prefetchedMediaPlaylist);
+              default:
+                // Blocking reloads for the next segment don't complete during the test.
+                return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+            }
+          }
+        });
+    DefaultHlsPlaylistTracker defaultHlsPlaylistTracker =
+        createPlaylistTrackerWithPrefetchedVariants(/* maxPrefetchedVariantCount= */ 1);
+    Uri prefetchedVariantUrl = Uri.parse(mockWebServer.url("/media1/playlist.m3u8").toString());
+
+    defaultHlsPlaylistTracker.start(
+        Uri.parse(mockWebServer.url("/multivariant.m3u8").toString()),
+        new MediaSourceEventListener.EventDispatcher(),
+        mediaPlaylist -> {});
+    RobolectricUtil.runMainLooperUntil(
+        () -> requestPaths.contains("/media1/playlist.m3u8?_HLS_msn=12"));
+    boolean isPrefetchedSnapshotValid =
+        defaultHlsPlaylistTracker.isSnapshotValid(prefetchedVariantUrl);
+    defaultHlsPlaylistTracker.stop();
+
+    // The first load uses the rendition report of the primary playlist, and the reload blocks
+    // until the next segment is available.
+    List<String> prefetchedVariantRequestPaths = new ArrayList<>();
+    for (String path : new ArrayList<>(requestPaths)) {
+      if (path.startsWith("/media1/")) {
+        prefetchedVariantRequestPaths.add(path);
+      }
+    }
+    assertThat(prefetchedVariantRequestPaths)
+        .containsExactly("/media1/playlist.m3u8?_HLS_msn=11", "/media1/playlist.m3u8?_HLS_msn=12")
+        .inOrder();
+    assertThat(isPrefetchedSnapshotValid).isTrue();
+  }
+
+  /**
+   * Serves a multivariant playlist with four variants, whose bitrates are 2, 1, 3 and 0.5 Mbps, and
+   * their media playlists, in any order.
+   */
+  private void dispatchVodPlaylists() {
+    String multivariantPlaylist =
+        "#EXTM3U\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=2000000\n"
+            + "media0/playlist.m3u8\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=1000000\n"
+            + "media1/playlist.m3u8\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=3000000\n"
+            + "media2/playlist.m3u8\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=500000\n"
+            + "media3/playlist.m3u8\n";
+    String mediaPlaylist =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:0\n"
+            + "#EXTINF:4.0,\n"
+            + "segment0.ts\n"
+            + "#EXT-X-ENDLIST\n";
+    mockWebServer.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            String body =
+                request.getPath().equals("/multivariant.m3u8")
+                    ? multivariantPlaylist
+                    : mediaPlaylist;
+            return new MockResponse().setResponseCode(200).setBody(body);
+          }
+        });
+  }
+
+  private static MediaSourceEventListener.EventDispatcher
+      createEventDispatcherCollectingPlaylistSwitches(
+          List<PlaylistSwitchInfo> playlistSwitchInfos) {
+    MediaSourceEventListener.EventDispatcher eventDispatcher =
+        new MediaSourceEventListener.EventDispatcher();
+    eventDispatcher.addEventListener(
+        new Handler(Looper.getMainLooper()),
+        new MediaSourceEventListener() {
+          @Override
+          public void onPlaylistSwitched(
+              int windowIndex,
+              @Nullable MediaPeriodId mediaPeriodId,
+              PlaylistSwitchInfo playlistSwitchInfo) {
+            playlistSwitchInfos.add(playlistSwitchInfo);
+          }
+        });
+    return eventDispatcher;
+  }
+
+  private static DefaultHlsPlaylistTracker createPlaylistTrackerWithPrefetchedVariants(
+      int maxPrefetchedVariantCount) {
+    return new DefaultHlsPlaylistTracker(
+        dataType -> new DefaultHttpDataSource.Factory().createDataSource(),
+        new DefaultLoadErrorHandlingPolicy(),
+        new DefaultHlsPlaylistParserFactory(),
+        DefaultHlsPlaylistTracker.DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT,
+        maxPrefetchedVariantCount);
+  }
+
   private List<HttpUrl> enqueueWebServerResponses(String[] paths, MockResponse... mockResponses) {
     assertThat(paths).hasLength(mockResponses.length);
     for (MockResponse mockResponse : mockResponses) {
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HlsAttributeList}. */
+@RunWith(AndroidJUnit4.class)
+public final class HlsAttributeListTest {
+
+  @Test
+  public void reset_withQuotedStringsContainingSeparators_splitsAttributes() {
+    HlsAttributeList attributes =
+        new HlsAttributeList()
+            .reset("#EXT-X-STREAM-INF:CODECS=\"avc1.640028,mp4a.40.2\",BANDWIDTH=1280000");
+
+    assertThat(attributes.getQuotedString("CODECS")).isEqualTo("avc1.640028,mp4a.40.2");
+    assertThat(attributes.getDecimalInteger("BANDWIDTH", /* defaultValue= */ -1))
+        .isEqualTo(1280000);
+  }
+
+  @Test
+  public void getters_matchWholeAttributeNames() {
+    HlsAttributeList attributes =
+        new HlsAttributeList()
+            .reset("#EXT-X-SERVER-CONTROL:PART-HOLD-BACK=1.5,AVERAGE-BANDWIDTH=800000");
+
+    assertThat(attributes.getDecimalFloatingPoint("HOLD-BACK", /* defaultValue= */ -1))
+        .isEqualTo(-1.0);
+    assertThat(attributes.getDecimalFloatingPoint("PART-HOLD-BACK", /* defaultValue= */ -1))
+        .isEqualTo(1.5);
+    assertThat(attributes.getDecimalInteger("BANDWIDTH", /* defaultValue= */ -1)).isEqualTo(-1);
+  }
+
+  @Test
+  public void getters_ignoreAttributesInsideQuotedStrings() {
+    HlsAttributeList attributes =
+        new HlsAttributeList()
+            .reset("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part.ts?BYTERANGE-START=0\"");
+
+    assertThat(attributes.getDecimalInteger("BYTERANGE-START", /* defaultValue= */ -1))
+        .isEqualTo(-1);
+    assertThat(attributes.getString("TYPE")).isEqualTo("PART");
+  }
+
+  @Test
+  public void getters_withAttributeAfterCommaInsideQuotedString_findAttribute() {
+    HlsAttributeList attributes =
+        new HlsAttributeList()
+            .reset("#EXT-X-PRELOAD-HINT:URI=\"part.ts,BYTERANGE-START=0\",BYTERANGE-LENGTH=5");
+
+    assertThat(attributes.getDecimalInteger("BYTERANGE-START", /* defaultValue= */ -1))
+        .isEqualTo(0);
+    assertThat(attributes.getDecimalInteger("BYTERANGE-LENGTH", /* defaultValue= */ -1))
+        .isEqualTo(5);
+    assertThat(attributes.getQuotedString("URI")).isEqualTo("part.ts,BYTERANGE-START=0");
+  }
+
+  @Test
+  public void getters_withAttributeOutsideAndInsideQuotedString_preferAttributeOutside() {
+    HlsAttributeList attributes =
+        new HlsAttributeList()
+            .reset("#EXT-X-PRELOAD-HINT:URI=\"part.ts,BYTERANGE-START=0\",BYTERANGE-START=10");
+
+    assertThat(attributes.getDecimalInteger("BYTERANGE-START", /* defaultValue= */ -1))
+        .isEqualTo(10);
+  }
+
+  @Test
+  public void getters_withMismatchedQuoting_returnNull() {
+    HlsAttributeList attributes =
+        new HlsAttributeList().reset("#EXT-X-MEDIA:TYPE=\"AUDIO\",URI=audio.m3u8,NAME=\"\"");
+
+    assertThat(attributes.getString("TYPE")).isNull();
+    assertThat(attributes.getQuotedString("URI")).isNull();
+    assertThat(attributes.getQuotedString("NAME")).isNull();
+  }
+
+  @Test
+  public void getters_withValuesFollowedByNonWordCharacters_parseValues() {
+    HlsAttributeList attributes =
+        new HlsAttributeList().reset("#EXT-X-START:TIME-OFFSET=-15.5#,PRECISE=YES#");
+
+    assertThat(attributes.getDecimalFloatingPoint("TIME-OFFSET", /* defaultValue= */ 0))
+        .isEqualTo(-15.5);
+    assertThat(attributes.hasValue("PRECISE", "YES")).isTrue();
+  }
+
+  @Test
+  public void getters_withValuesFollowedByWordCharacters_returnDefaultValues() {
+    HlsAttributeList attributes =
+        new HlsAttributeList().reset("#EXT-X-STREAM-INF:BANDWIDTH=100k,FRAME-RATE=30fps");
+
+    assertThat(attributes.getDecimalInteger("BANDWIDTH", /* defaultValue= */ -1)).isEqualTo(-1);
+    assertThat(attributes.getDecimalFloatingPoint("FRAME-RATE", /* defaultValue= */ -1))
+        .isEqualTo(-1.0);
+  }
+
+  @Test
+  public void reset_replacesAttributesOfPreviousLine() {
+    HlsAttributeList attributes = new HlsAttributeList();
+    attributes.reset("#EXT-X-KEY:METHOD=AES-128,URI=\"key1\"");
+
+    attributes.reset("#EXT-X-MAP:URI=\"init.mp4\"");
+
+    assertThat(attributes.getString("METHOD")).isNull();
+    assertThat(attributes.getQuotedString("URI")).isEqualTo("init.mp4");
+  }
+}
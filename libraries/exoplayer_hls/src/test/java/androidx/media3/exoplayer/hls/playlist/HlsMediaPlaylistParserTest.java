@@ -464,6 +464,158 @@ public class HlsMediaPlaylistParserTest {
     assertThat(playlist.trailingParts.get(0).relativeDiscontinuitySequence).isEqualTo(1);
   }
 
+  @Test
+  public void parseMediaPlaylist_reusingUnchangedSegments_reusesSegmentsOfPreviousPlaylist()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:263\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence263.mp4\n"
+            + "#EXT-X-DISCONTINUITY\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n";
+    String playlistString =
+        previousPlaylistString + "#EXTINF:4.00008,\n" + "fileSequence266.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(
+                    HlsMultivariantPlaylist.EMPTY,
+                    previousPlaylist,
+                    /* reuseUnchangedSegments= */ true)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(4);
+    for (int i = 0; i < 3; i++) {
+      assertThat(playlist.segments.get(i)).isSameInstanceAs(previousPlaylist.segments.get(i));
+    }
+    assertThat(playlist.segments.get(3).url).isEqualTo("fileSequence266.mp4");
+    assertThat(playlist.segments.get(3).relativeStartTimeUs).isEqualTo(12000240);
+    assertThat(playlist.segments.get(3).relativeDiscontinuitySequence).isEqualTo(1);
+  }
+
+  @Test
+  public void parseMediaPlaylist_reusingUnchangedSegmentsWithSlidingWindow_updatesSegmentTimes()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-DISCONTINUITY-SEQUENCE:1234\n"
+            + "#EXT-X-MEDIA-SEQUENCE:263\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence263.mp4\n"
+            + "#EXT-X-DISCONTINUITY\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-DISCONTINUITY-SEQUENCE:1235\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence266.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(
+                    HlsMultivariantPlaylist.EMPTY,
+                    previousPlaylist,
+                    /* reuseUnchangedSegments= */ true)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+    HlsMediaPlaylist parsedPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(3);
+    for (int i = 0; i < 3; i++) {
+      Segment segment = playlist.segments.get(i);
+      Segment parsedSegment = parsedPlaylist.segments.get(i);
+      assertThat(segment.url).isEqualTo(parsedSegment.url);
+      assertThat(segment.durationUs).isEqualTo(parsedSegment.durationUs);
+      assertThat(segment.relativeStartTimeUs).isEqualTo(parsedSegment.relativeStartTimeUs);
+      assertThat(segment.relativeDiscontinuitySequence)
+          .isEqualTo(parsedSegment.relativeDiscontinuitySequence);
+    }
+    assertThat(playlist.segments.get(1).relativeStartTimeUs).isEqualTo(4000080);
+  }
+
+  @Test
+  public void parseMediaPlaylist_reusingUnchangedSegmentsWithChangedSegment_parsesSegmentAgain()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:263\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence263.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:263\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence263.mp4\n"
+            + "#EXTINF:3.0,\n"
+            + "fileSequence264b.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(
+                    HlsMultivariantPlaylist.EMPTY,
+                    previousPlaylist,
+                    /* reuseUnchangedSegments= */ true)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(3);
+    assertThat(playlist.segments.get(0)).isSameInstanceAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(1).url).isEqualTo("fileSequence264b.mp4");
+    assertThat(playlist.segments.get(1).durationUs).isEqualTo(3000000);
+    assertThat(playlist.segments.get(2).url).isEqualTo("fileSequence265.mp4");
+    assertThat(playlist.segments.get(2).relativeStartTimeUs).isEqualTo(7000080);
+  }
+
   @Test
   public void parseMediaPlaylist_withParts_parsesPartWithAllAttributes() throws IOException {
     Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
@@ -1430,6 +1582,25 @@ public class HlsMediaPlaylistParserTest {
     assertThat(segment.url).isEqualTo("segment{$name_1}");
   }
 
+  @Test
+  public void variableSubstitution_inEncryptionIV() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/substitution.m3u8");
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-VERSION:8\n"
+            + "#EXT-X-DEFINE:NAME=\"iv\",VALUE=\"0x1566B\"\n"
+            + "#EXT-X-TARGETDURATION:5\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key\",IV={$iv}\n"
+            + "#EXTINF:5.005,\n"
+            + "segment1.ts\n";
+    InputStream inputStream = new ByteArrayInputStream(Util.getUtf8Bytes(playlistString));
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, inputStream);
+    Segment segment = playlist.segments.get(0);
+    assertThat(segment.encryptionIV).isEqualTo("0x1566B");
+  }
+
   @Test
   public void inheritedVariableSubstitution() throws IOException {
     Uri playlistUri = Uri.parse("https://example.com/test3.m3u8");
@@ -28,6 +28,7 @@ import androidx.media3.datasource.TransferListener;
 import androidx.media3.datasource.UdpDataSource;
 import com.google.common.primitives.Ints;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** An {@link RtpDataChannel} for UDP transport. */
 /* package */ final class UdpDataSourceRtpDataChannel implements RtpDataChannel {
@@ -111,6 +112,19 @@ import java.io.IOException;
     }
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    try {
+      return dataSource.read(buffer);
+    } catch (UdpDataSource.UdpDataSourceException e) {
+      if (e.reason == PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_TIMEOUT) {
+        return C.RESULT_END_OF_INPUT;
+      } else {
+        throw e;
+      }
+    }
+  }
+
   public void setRtcpChannel(UdpDataSourceRtpDataChannel rtcpChannel) {
     checkArgument(this != rtcpChannel);
     this.rtcpChannel = rtcpChannel;
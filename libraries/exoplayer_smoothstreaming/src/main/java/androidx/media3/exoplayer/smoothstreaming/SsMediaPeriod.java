@@ -41,6 +41,8 @@ import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoaderErrorThrower;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
+import androidx.media3.exoplayer.util.ReleasableExecutor;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import java.io.IOException;
@@ -56,6 +58,7 @@ import java.util.List;
   private final LoaderErrorThrower manifestLoaderErrorThrower;
   private final DrmSessionManager drmSessionManager;
   @Nullable private final CmcdConfiguration cmcdConfiguration;
+  @Nullable private final LoaderExecutorPool loaderExecutorPool;
   private final DrmSessionEventListener.EventDispatcher drmEventDispatcher;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final MediaSourceEventListener.EventDispatcher mediaSourceEventDispatcher;
@@ -74,6 +77,7 @@ import java.util.List;
       @Nullable TransferListener transferListener,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       @Nullable CmcdConfiguration cmcdConfiguration,
+      @Nullable LoaderExecutorPool loaderExecutorPool,
       DrmSessionManager drmSessionManager,
       DrmSessionEventListener.EventDispatcher drmEventDispatcher,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
@@ -85,6 +89,7 @@ import java.util.List;
     this.transferListener = transferListener;
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.cmcdConfiguration = cmcdConfiguration;
+    this.loaderExecutorPool = loaderExecutorPool;
     this.drmSessionManager = drmSessionManager;
     this.drmEventDispatcher = drmEventDispatcher;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
@@ -253,6 +258,11 @@ import java.util.List;
             selection,
             transferListener,
             cmcdConfiguration);
+    @Nullable
+    ReleasableExecutor downloadExecutor =
+        loaderExecutorPool != null
+            ? loaderExecutorPool.createExecutor(LoaderExecutorPool.LANE_MEDIA)
+            : null;
     return new ChunkSampleStream<>(
         manifest.streamElements[streamElementIndex].type,
         null,
@@ -266,7 +276,7 @@ import java.util.List;
         loadErrorHandlingPolicy,
         mediaSourceEventDispatcher,
         /* canReportInitialDiscontinuity= */ false,
-        /* downloadExecutor= */ null);
+        downloadExecutor);
   }
 
   private static TrackGroupArray buildTrackGroups(
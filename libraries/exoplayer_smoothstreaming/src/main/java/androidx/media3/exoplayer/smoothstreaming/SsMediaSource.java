@@ -64,6 +64,7 @@ import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import androidx.media3.exoplayer.upstream.Loader;
 import androidx.media3.exoplayer.upstream.Loader.LoadErrorAction;
 import androidx.media3.exoplayer.upstream.LoaderErrorThrower;
+import androidx.media3.exoplayer.upstream.LoaderExecutorPool;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
 import androidx.media3.extractor.text.SubtitleParser;
 import com.google.common.collect.ImmutableList;
@@ -90,6 +91,7 @@ public final class SsMediaSource extends BaseMediaSource
 
     private CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
     @Nullable private CmcdConfiguration.Factory cmcdConfigurationFactory;
+    @Nullable private LoaderExecutorPool loaderExecutorPool;
     private DrmSessionManagerProvider drmSessionManagerProvider;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private long livePresentationDelayMs;
@@ -226,6 +228,25 @@ public final class SsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the {@link LoaderExecutorPool} in which the manifest and media chunk loads of the
+     * created media sources run. Manifest loads run in the {@link LoaderExecutorPool#LANE_MANIFEST
+     * manifest lane}, and media chunk loads run in the {@link LoaderExecutorPool#LANE_MEDIA media
+     * lane}.
+     *
+     * <p>By default, each media source loads its manifest on a thread of its own, and each of its
+     * tracks loads media chunks on a thread of its own.
+     *
+     * @param loaderExecutorPool The {@link LoaderExecutorPool}.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    @Override
+    public Factory setLoaderExecutorPool(LoaderExecutorPool loaderExecutorPool) {
+      this.loaderExecutorPool = checkNotNull(loaderExecutorPool);
+      return this;
+    }
+
     @CanIgnoreReturnValue
     @Override
     public Factory setDrmSessionManagerProvider(
@@ -289,6 +310,7 @@ public final class SsMediaSource extends BaseMediaSource
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
           cmcdConfiguration,
+          loaderExecutorPool,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
           livePresentationDelayMs);
@@ -326,6 +348,7 @@ public final class SsMediaSource extends BaseMediaSource
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
           cmcdConfiguration,
+          loaderExecutorPool,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
           livePresentationDelayMs);
@@ -357,6 +380,7 @@ public final class SsMediaSource extends BaseMediaSource
   private final SsChunkSource.Factory chunkSourceFactory;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
   @Nullable private final CmcdConfiguration cmcdConfiguration;
+  @Nullable private final LoaderExecutorPool loaderExecutorPool;
   private final DrmSessionManager drmSessionManager;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final long livePresentationDelayMs;
@@ -383,6 +407,7 @@ public final class SsMediaSource extends BaseMediaSource
       SsChunkSource.Factory chunkSourceFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       @Nullable CmcdConfiguration cmcdConfiguration,
+      @Nullable LoaderExecutorPool loaderExecutorPool,
       DrmSessionManager drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       long livePresentationDelayMs) {
@@ -399,6 +424,7 @@ public final class SsMediaSource extends BaseMediaSource
     this.chunkSourceFactory = chunkSourceFactory;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
     this.cmcdConfiguration = cmcdConfiguration;
+    this.loaderExecutorPool = loaderExecutorPool;
     this.drmSessionManager = drmSessionManager;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.livePresentationDelayMs = livePresentationDelayMs;
@@ -440,7 +466,10 @@ public final class SsMediaSource extends BaseMediaSource
       processManifest();
     } else {
       manifestDataSource = manifestDataSourceFactory.createDataSource();
-      manifestLoader = new Loader("SsMediaSource");
+      manifestLoader =
+          loaderExecutorPool != null
+              ? loaderExecutorPool.createLoader(LoaderExecutorPool.LANE_MANIFEST)
+              : new Loader("SsMediaSource");
       manifestLoaderErrorThrower = manifestLoader;
       manifestRefreshHandler = Util.createHandlerForCurrentLooper();
       startLoadingManifest();
@@ -463,6 +492,7 @@ public final class SsMediaSource extends BaseMediaSource
             mediaTransferListener,
             compositeSequenceableLoaderFactory,
             cmcdConfiguration,
+            loaderExecutorPool,
             drmSessionManager,
             drmEventDispatcher,
             loadErrorHandlingPolicy,
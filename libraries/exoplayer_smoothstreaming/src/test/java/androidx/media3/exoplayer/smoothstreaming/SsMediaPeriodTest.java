@@ -136,6 +136,7 @@ public class SsMediaPeriodTest {
         mock(TransferListener.class),
         mock(CompositeSequenceableLoaderFactory.class),
         /* cmcdConfiguration= */ null,
+        /* loaderExecutorPool= */ null,
         mock(DrmSessionManager.class),
         new DrmSessionEventListener.EventDispatcher()
             .withParameters(/* windowIndex= */ 0, mediaPeriodId),
@@ -26,6 +26,7 @@ import androidx.media3.common.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /** An {@link ExtractorInput} that wraps a {@link DataReader}. */
@@ -74,6 +75,23 @@ public final class DefaultExtractorInput implements ExtractorInput {
     return bytesRead;
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    int bytesRead;
+    if (peekBufferLength > 0) {
+      bytesRead = min(peekBufferLength, buffer.remaining());
+      buffer.put(peekBuffer, /* offset= */ 0, bytesRead);
+      updatePeekBuffer(bytesRead);
+    } else {
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+      bytesRead = dataReader.read(buffer);
+    }
+    commitBytesRead(bytesRead);
+    return bytesRead;
+  }
+
   @Override
   public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
       throws IOException {
@@ -17,6 +17,7 @@ package androidx.media3.extractor;
 
 import androidx.media3.common.util.UnstableApi;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** An overridable {@link ExtractorInput} implementation forwarding all methods to another input. */
 @UnstableApi
@@ -33,6 +34,11 @@ public class ForwardingExtractorInput implements ExtractorInput {
     return input.read(buffer, offset, length);
   }
 
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    return input.read(buffer);
+  }
+
   @Override
   public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
       throws IOException {
@@ -236,17 +236,26 @@ public final class H264Reader implements ElementaryStreamReader {
           seiReader.setReorderingQueueSize(spsData.maxNumReorderFrames);
           sampleReader.putSps(spsData);
           sampleReader.putPps(ppsData);
+          sps.retainNalUnit();
+          pps.retainNalUnit();
           sps.reset();
           pps.reset();
         }
       } else if (sps.isCompleted()) {
-        NalUnitUtil.SpsData spsData = NalUnitUtil.parseSpsNalUnit(sps.nalData, 3, sps.nalLength);
-        seiReader.setReorderingQueueSize(spsData.maxNumReorderFrames);
-        sampleReader.putSps(spsData);
+        // Skip parsing parameter sets that are repeated unchanged, which is usually the case.
+        if (!sps.matchesRetainedNalUnit()) {
+          NalUnitUtil.SpsData spsData = NalUnitUtil.parseSpsNalUnit(sps.nalData, 3, sps.nalLength);
+          seiReader.setReorderingQueueSize(spsData.maxNumReorderFrames);
+          sampleReader.putSps(spsData);
+          sps.retainNalUnit();
+        }
         sps.reset();
       } else if (pps.isCompleted()) {
-        NalUnitUtil.PpsData ppsData = NalUnitUtil.parsePpsNalUnit(pps.nalData, 3, pps.nalLength);
-        sampleReader.putPps(ppsData);
+        if (!pps.matchesRetainedNalUnit()) {
+          NalUnitUtil.PpsData ppsData = NalUnitUtil.parsePpsNalUnit(pps.nalData, 3, pps.nalLength);
+          sampleReader.putPps(ppsData);
+          pps.retainNalUnit();
+        }
         pps.reset();
       }
     }
@@ -15,8 +15,10 @@
  */
 package androidx.media3.extractor.ts;
 
+import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
 import java.util.Arrays;
 
 /**
@@ -34,6 +36,9 @@ public final class NalUnitTargetBuffer {
   public byte[] nalData;
   public int nalLength;
 
+  private byte[] retainedNalData;
+  private int retainedNalLength;
+
   /**
    * Creates the buffer.
    *
@@ -46,6 +51,8 @@ public final class NalUnitTargetBuffer {
     // Initialize data with a start code in the first three bytes.
     nalData = new byte[3 + initialCapacity];
     nalData[2] = 1;
+    retainedNalData = Util.EMPTY_BYTE_ARRAY;
+    retainedNalLength = C.LENGTH_UNSET;
   }
 
   /** Resets the buffer, clearing any data that it holds. */
@@ -109,4 +116,36 @@ public final class NalUnitTargetBuffer {
     isCompleted = true;
     return true;
   }
+
+  /**
+   * Retains a copy of the complete NAL unit that the buffer holds, for comparison by {@link
+   * #matchesRetainedNalUnit()}.
+   */
+  public void retainNalUnit() {
+    Assertions.checkState(isCompleted);
+    if (retainedNalData.length < nalLength) {
+      retainedNalData = new byte[nalLength];
+    }
+    System.arraycopy(nalData, 0, retainedNalData, 0, nalLength);
+    retainedNalLength = nalLength;
+  }
+
+  /**
+   * Returns whether the buffer holds a complete NAL unit that's identical to the one that was last
+   * {@linkplain #retainNalUnit() retained}.
+   *
+   * <p>Parameter sets are usually repeated before each keyframe, so this can be used to avoid
+   * parsing them again when they haven't changed.
+   */
+  public boolean matchesRetainedNalUnit() {
+    if (!isCompleted || nalLength != retainedNalLength) {
+      return false;
+    }
+    for (int i = 0; i < nalLength; i++) {
+      if (nalData[i] != retainedNalData[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.ts;
+
+import static androidx.media3.common.util.Util.castNonNull;
+
+import android.util.SparseArray;
+import androidx.annotation.Nullable;
+import androidx.media3.common.ParserException;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.common.util.NullableType;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.common.util.Util;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consumes the payloads of TS packets that belong to different programs in parallel.
+ *
+ * <p>The loading thread queues the payloads of packets whose PIDs have been added, and then calls
+ * {@link #consumeQueuedPayloads()}, which consumes the payloads of each program on an {@link
+ * Executor} and blocks until they have all been consumed. The payloads of a program are consumed in
+ * order, by one thread at a time, and payload readers are only called while {@link
+ * #consumeQueuedPayloads()} is blocking. Payloads aren't copied when they're queued, so the packet
+ * data mustn't be modified until they've been consumed. Anything that's thrown while consuming a
+ * payload, on any thread, is rethrown by {@link #consumeQueuedPayloads()} on the loading thread.
+ */
+/* package */ final class ProgramPayloadDispatcher {
+
+  private static final int INITIAL_QUEUE_CAPACITY = 16;
+
+  private final Executor executor;
+  private final byte[] packetData;
+  private final SparseArray<ProgramQueue> queuesByPid;
+  private final SparseArray<ProgramQueue> queuesByProgramNumber;
+  private final ArrayList<ProgramQueue> pendingQueues;
+  private final AtomicInteger remainingQueueCount;
+  private final ConditionVariable queuesConsumed;
+
+  /**
+   * Creates an instance.
+   *
+   * @param executor The {@link Executor} on which queued payloads are consumed.
+   * @param packetData The array containing the packets whose payloads are queued.
+   */
+  public ProgramPayloadDispatcher(Executor executor, byte[] packetData) {
+    this.executor = executor;
+    this.packetData = packetData;
+    queuesByPid = new SparseArray<>();
+    queuesByProgramNumber = new SparseArray<>();
+    pendingQueues = new ArrayList<>();
+    remainingQueueCount = new AtomicInteger();
+    queuesConsumed = new ConditionVariable();
+  }
+
+  /**
+   * Adds the PID of an elementary stream that belongs to a program, so that the payloads of its
+   * packets can be queued. Does nothing if the PID has already been added.
+   *
+   * @param programNumber The program number.
+   * @param pid The PID of the elementary stream.
+   */
+  public void addPid(int programNumber, int pid) {
+    if (queuesByPid.get(pid) != null) {
+      return;
+    }
+    @Nullable ProgramQueue queue = queuesByProgramNumber.get(programNumber);
+    if (queue == null) {
+      queue = new ProgramQueue();
+      queuesByProgramNumber.put(programNumber, queue);
+    }
+    queuesByPid.put(pid, queue);
+  }
+
+  /**
+   * Queues the payload of a packet, if its PID has been added.
+   *
+   * @param pid The PID of the packet.
+   * @param reader The {@link TsPayloadReader} that should consume the payload.
+   * @param position The position of the payload in the packet data.
+   * @param limit The limit of the payload in the packet data.
+   * @param flags The {@link TsPayloadReader.Flags} to pass when consuming the payload.
+   * @param isDiscontinuity Whether {@code reader} should be {@link TsPayloadReader#seek() seeked}
+   *     before it consumes the payload.
+   * @return Whether the payload was queued.
+   */
+  public boolean queuePayload(
+      int pid,
+      TsPayloadReader reader,
+      int position,
+      int limit,
+      @TsPayloadReader.Flags int flags,
+      boolean isDiscontinuity) {
+    @Nullable ProgramQueue queue = queuesByPid.get(pid);
+    if (queue == null) {
+      return false;
+    }
+    queue.add(reader, position, limit, flags, isDiscontinuity);
+    return true;
+  }
+
+  /**
+   * Consumes all of the queued payloads, blocking until they have been consumed. One program's
+   * payloads are consumed on the calling thread.
+   *
+   * @throws ParserException If a payload reader failed to parse a payload. Any other exception or
+   *     error that a payload reader throws is also rethrown, once all of the payloads have been
+   *     consumed.
+   */
+  public void consumeQueuedPayloads() throws ParserException {
+    pendingQueues.clear();
+    for (int i = 0; i < queuesByProgramNumber.size(); i++) {
+      ProgramQueue queue = queuesByProgramNumber.valueAt(i);
+      if (queue.size > 0) {
+        pendingQueues.add(queue);
+      }
+    }
+    int pendingQueueCount = pendingQueues.size();
+    if (pendingQueueCount == 0) {
+      return;
+    }
+    queuesConsumed.close();
+    remainingQueueCount.set(pendingQueueCount);
+    for (int i = 1; i < pendingQueueCount; i++) {
+      ProgramQueue queue = pendingQueues.get(i);
+      try {
+        executor.execute(queue);
+      } catch (RejectedExecutionException e) {
+        queue.run();
+      }
+    }
+    pendingQueues.get(0).run();
+    queuesConsumed.blockUninterruptible();
+
+    @Nullable Throwable throwable = null;
+    for (int i = 0; i < pendingQueueCount; i++) {
+      ProgramQueue queue = pendingQueues.get(i);
+      if (throwable == null) {
+        throwable = queue.throwable;
+      }
+      queue.throwable = null;
+    }
+    pendingQueues.clear();
+    if (throwable instanceof ParserException) {
+      throw (ParserException) throwable;
+    } else if (throwable != null) {
+      Util.sneakyThrow(throwable);
+    }
+  }
+
+  private void onQueueConsumed() {
+    if (remainingQueueCount.decrementAndGet() == 0) {
+      queuesConsumed.open();
+    }
+  }
+
+  /** The queued payloads of a program. */
+  private final class ProgramQueue implements Runnable {
+
+    private final ParsableByteArray payload;
+
+    private @NullableType TsPayloadReader[] readers;
+    private int[] positions;
+    private int[] limits;
+    private int[] flags;
+    private boolean[] isDiscontinuity;
+    private int size;
+    @Nullable private Throwable throwable;
+
+    public ProgramQueue() {
+      payload = new ParsableByteArray();
+      readers = new TsPayloadReader[INITIAL_QUEUE_CAPACITY];
+      positions = new int[INITIAL_QUEUE_CAPACITY];
+      limits = new int[INITIAL_QUEUE_CAPACITY];
+      flags = new int[INITIAL_QUEUE_CAPACITY];
+      isDiscontinuity = new boolean[INITIAL_QUEUE_CAPACITY];
+    }
+
+    public void add(
+        TsPayloadReader reader,
+        int position,
+        int limit,
+        @TsPayloadReader.Flags int flags,
+        boolean isDiscontinuity) {
+      if (size == readers.length) {
+        int newCapacity = size * 2;
+        readers = Arrays.copyOf(readers, newCapacity);
+        positions = Arrays.copyOf(positions, newCapacity);
+        limits = Arrays.copyOf(limits, newCapacity);
+        this.flags = Arrays.copyOf(this.flags, newCapacity);
+        this.isDiscontinuity = Arrays.copyOf(this.isDiscontinuity, newCapacity);
+      }
+      readers[size] = reader;
+      positions[size] = position;
+      limits[size] = limit;
+      this.flags[size] = flags;
+      this.isDiscontinuity[size] = isDiscontinuity;
+      size++;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (int i = 0; i < size; i++) {
+          TsPayloadReader reader = castNonNull(readers[i]);
+          if (isDiscontinuity[i]) {
+            reader.seek();
+          }
+          payload.reset(packetData, limits[i]);
+          payload.setPosition(positions[i]);
+          reader.consume(payload, flags[i]);
+        }
+      } catch (Throwable e) {
+        // Errors are also caught, so that they're rethrown on the loading thread rather than
+        // being lost on a thread of the executor.
+        throwable = e;
+      } finally {
+        size = 0;
+        onQueueConsumed();
+      }
+    }
+  }
+}
@@ -46,6 +46,7 @@ import androidx.media3.extractor.text.SubtitleTranscodingExtractorOutput;
 import androidx.media3.extractor.ts.TsPayloadReader.DvbSubtitleInfo;
 import androidx.media3.extractor.ts.TsPayloadReader.EsInfo;
 import androidx.media3.extractor.ts.TsPayloadReader.TrackIdGenerator;
+import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
@@ -55,6 +56,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /** Extracts data from the MPEG-2 TS container format. */
@@ -157,6 +160,9 @@ public final class TsExtractor implements Extractor {
   private static final long HEVC_FORMAT_IDENTIFIER = 0x48455643;
 
   private static final int BUFFER_SIZE = TS_PACKET_SIZE * 50;
+  // Larger buffer used when payloads are consumed in parallel, so that more packets are read per
+  // call to read().
+  private static final int PARALLEL_BUFFER_SIZE = TS_PACKET_SIZE * 500;
   private static final int SNIFF_TS_PACKET_COUNT = 5;
 
   private final @Mode int mode;
@@ -171,6 +177,8 @@ public final class TsExtractor implements Extractor {
   private final SparseBooleanArray trackIds;
   private final SparseBooleanArray trackPids;
   private final TsDurationReader durationReader;
+  private final SparseBooleanArray selectedProgramNumbers;
+  @Nullable private final ProgramPayloadDispatcher payloadDispatcher;
 
   // Accessed only by the loading thread.
   private @MonotonicNonNull TsBinarySearchSeeker tsBinarySearchSeeker;
@@ -326,6 +334,48 @@ public final class TsExtractor implements Extractor {
       TimestampAdjuster timestampAdjuster,
       TsPayloadReader.Factory payloadReaderFactory,
       int timestampSearchBytes) {
+    this(
+        mode,
+        extractorFlags,
+        subtitleParserFactory,
+        timestampAdjuster,
+        payloadReaderFactory,
+        timestampSearchBytes,
+        /* programNumbers= */ ImmutableSet.of(),
+        /* payloadExecutor= */ null);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param mode Mode for the extractor. One of {@link #MODE_MULTI_PMT}, {@link #MODE_SINGLE_PMT}
+   *     and {@link #MODE_HLS}.
+   * @param extractorFlags Flags that control the extractor's behavior.
+   * @param subtitleParserFactory The {@link SubtitleParser.Factory} for parsing subtitles during
+   *     extraction.
+   * @param timestampAdjuster A timestamp adjuster for offsetting and scaling sample timestamps.
+   * @param payloadReaderFactory Factory for injecting a custom set of payload readers.
+   * @param timestampSearchBytes The number of bytes searched from a given position in the stream to
+   *     find a PCR timestamp. See {@link #TsExtractor(int, int, SubtitleParser.Factory,
+   *     TimestampAdjuster, TsPayloadReader.Factory, int)}.
+   * @param programNumbers The numbers of the programs to extract, or an empty set to extract all
+   *     of the programs declared by the PAT. The PMTs of other programs aren't read, so the packets
+   *     of their elementary streams are skipped without being parsed.
+   * @param payloadExecutor An {@link Executor} on which the payloads of different programs are
+   *     parsed in parallel, or null to parse all payloads on the loading thread. When set, each
+   *     call to {@link #read} reads all of the packets that are available in the buffer, and blocks
+   *     until their payloads have been parsed. Must be null in {@link #MODE_HLS}.
+   */
+  public TsExtractor(
+      @Mode int mode,
+      @Flags int extractorFlags,
+      SubtitleParser.Factory subtitleParserFactory,
+      TimestampAdjuster timestampAdjuster,
+      TsPayloadReader.Factory payloadReaderFactory,
+      int timestampSearchBytes,
+      Set<Integer> programNumbers,
+      @Nullable Executor payloadExecutor) {
+    Assertions.checkArgument(mode != MODE_HLS || payloadExecutor == null);
     this.payloadReaderFactory = Assertions.checkNotNull(payloadReaderFactory);
     this.timestampSearchBytes = timestampSearchBytes;
     this.mode = mode;
@@ -337,7 +387,17 @@ public final class TsExtractor implements Extractor {
       timestampAdjusters = new ArrayList<>();
       timestampAdjusters.add(timestampAdjuster);
     }
-    tsPacketBuffer = new ParsableByteArray(new byte[BUFFER_SIZE], 0);
+    tsPacketBuffer =
+        new ParsableByteArray(
+            new byte[payloadExecutor != null ? PARALLEL_BUFFER_SIZE : BUFFER_SIZE], /* limit= */ 0);
+    selectedProgramNumbers = new SparseBooleanArray();
+    for (int programNumber : programNumbers) {
+      selectedProgramNumbers.put(programNumber, true);
+    }
+    payloadDispatcher =
+        payloadExecutor != null
+            ? new ProgramPayloadDispatcher(payloadExecutor, tsPacketBuffer.getData())
+            : null;
     trackIds = new SparseBooleanArray();
     trackPids = new SparseBooleanArray();
     tsPayloadReaders = new SparseArray<>();
@@ -461,10 +521,34 @@ public final class TsExtractor implements Extractor {
       return RESULT_END_OF_INPUT;
     }
 
+    if (payloadDispatcher == null) {
+      readPacket(inputLength);
+      return RESULT_CONTINUE;
+    }
+    // Read all of the packets in the buffer, so that the payloads of different programs can be
+    // consumed in parallel. Stop early if the tracks end, since the extractor may need to seek.
+    boolean wereTracksEnded = tracksEnded;
+    while (tracksEnded == wereTracksEnded && readPacket(inputLength)) {
+      // Do nothing.
+    }
+    payloadDispatcher.consumeQueuedPayloads();
+    return RESULT_CONTINUE;
+  }
+
+  // Internals.
+
+  /**
+   * Reads the first TS packet in the buffer, if the buffer contains a whole packet.
+   *
+   * @param inputLength The length of the input, or {@link C#LENGTH_UNSET} if unknown.
+   * @return Whether a packet was read.
+   * @throws ParserException If an error occurred parsing the packet.
+   */
+  private boolean readPacket(long inputLength) throws ParserException {
     int endOfPacket = findEndOfFirstTsPacketInBuffer();
     int limit = tsPacketBuffer.limit();
     if (endOfPacket > limit) {
-      return RESULT_CONTINUE;
+      return false;
     }
 
     @TsPayloadReader.Flags int packetHeaderFlags = 0;
@@ -474,7 +558,7 @@ public final class TsExtractor implements Extractor {
     if ((tsPacketHeader & 0x800000) != 0) { // transport_error_indicator
       // There are uncorrectable errors in this packet.
       tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return true;
     }
     packetHeaderFlags |= (tsPacketHeader & 0x400000) != 0 ? FLAG_PAYLOAD_UNIT_START_INDICATOR : 0;
     // Ignoring transport_priority (tsPacketHeader & 0x200000)
@@ -486,10 +570,11 @@ public final class TsExtractor implements Extractor {
     TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders.get(pid) : null;
     if (payloadReader == null) {
       tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return true;
     }
 
     // Discontinuity check.
+    boolean isDiscontinuity = false;
     if (mode != MODE_HLS) {
       int continuityCounter = tsPacketHeader & 0xF;
       int previousCounter = continuityCounters.get(pid, continuityCounter - 1);
@@ -497,10 +582,10 @@ public final class TsExtractor implements Extractor {
       if (previousCounter == continuityCounter) {
         // Duplicate packet found.
         tsPacketBuffer.setPosition(endOfPacket);
-        return RESULT_CONTINUE;
+        return true;
       } else if (continuityCounter != ((previousCounter + 1) & 0xF)) {
         // Discontinuity found.
-        payloadReader.seek();
+        isDiscontinuity = true;
       }
     }
 
@@ -518,10 +603,24 @@ public final class TsExtractor implements Extractor {
 
     // Read the payload.
     boolean wereTracksEnded = tracksEnded;
-    if (shouldConsumePacketPayload(pid)) {
-      tsPacketBuffer.setLimit(endOfPacket);
-      payloadReader.consume(tsPacketBuffer, packetHeaderFlags);
-      tsPacketBuffer.setLimit(limit);
+    boolean shouldConsumePayload = shouldConsumePacketPayload(pid);
+    if (!shouldConsumePayload
+        || payloadDispatcher == null
+        || !payloadDispatcher.queuePayload(
+            pid,
+            payloadReader,
+            tsPacketBuffer.getPosition(),
+            endOfPacket,
+            packetHeaderFlags,
+            isDiscontinuity)) {
+      if (isDiscontinuity) {
+        payloadReader.seek();
+      }
+      if (shouldConsumePayload) {
+        tsPacketBuffer.setLimit(endOfPacket);
+        payloadReader.consume(tsPacketBuffer, packetHeaderFlags);
+        tsPacketBuffer.setLimit(limit);
+      }
     }
     if (mode != MODE_HLS && !wereTracksEnded && tracksEnded && inputLength != C.LENGTH_UNSET) {
       // We have read all tracks from all PMTs in this non-live stream. Now seek to the beginning
@@ -531,11 +630,9 @@ public final class TsExtractor implements Extractor {
     }
 
     tsPacketBuffer.setPosition(endOfPacket);
-    return RESULT_CONTINUE;
+    return true;
   }
 
-  // Internals.
-
   private void maybeOutputSeekMap(long inputLength) {
     if (!hasOutputSeekMap) {
       hasOutputSeekMap = true;
@@ -555,10 +652,14 @@ public final class TsExtractor implements Extractor {
   }
 
   private boolean fillBufferWithAtLeastOnePacket(ExtractorInput input) throws IOException {
+    if (tsPacketBuffer.bytesLeft() >= TS_PACKET_SIZE) {
+      return true;
+    }
+    // Shift the remaining bytes to the start of the buffer, so that each read can fill the rest of
+    // it. Packets are then parsed in place, without being copied out of the buffer.
     byte[] data = tsPacketBuffer.getData();
-    // Shift bytes to the start of the buffer if there isn't enough space left at the end.
-    if (BUFFER_SIZE - tsPacketBuffer.getPosition() < TS_PACKET_SIZE) {
-      int bytesLeft = tsPacketBuffer.bytesLeft();
+    int bytesLeft = tsPacketBuffer.bytesLeft();
+    if (tsPacketBuffer.getPosition() > 0) {
       if (bytesLeft > 0) {
         System.arraycopy(data, tsPacketBuffer.getPosition(), data, 0, bytesLeft);
       }
@@ -567,7 +668,7 @@ public final class TsExtractor implements Extractor {
     // Read more bytes until we have at least one packet.
     while (tsPacketBuffer.bytesLeft() < TS_PACKET_SIZE) {
       int limit = tsPacketBuffer.limit();
-      int read = input.read(data, limit, BUFFER_SIZE - limit);
+      int read = input.read(data, limit, data.length - limit);
       if (read == C.RESULT_END_OF_INPUT) {
         return false;
       }
@@ -666,6 +767,11 @@ public final class TsExtractor implements Extractor {
           patScratch.skipBits(13); // network_PID (13)
         } else {
           int pid = patScratch.readBits(13);
+          if (selectedProgramNumbers.size() > 0
+              && !selectedProgramNumbers.get(programNumber, /* valueIfKeyNotFound= */ false)) {
+            // Don't read the PMT of a program that isn't extracted, so its streams are ignored.
+            continue;
+          }
           if (tsPayloadReaders.get(pid) == null) {
             tsPayloadReaders.put(pid, new SectionReader(new PmtReader(pid)));
             remainingPmts++;
@@ -699,11 +805,16 @@ public final class TsExtractor implements Extractor {
     private final SparseIntArray trackIdToPidScratch;
     private final int pid;
 
+    private byte[] previousSectionData;
+    private int previousSectionLength;
+
     public PmtReader(int pid) {
       pmtScratch = new ParsableBitArray(new byte[5]);
       trackIdToReaderScratch = new SparseArray<>();
       trackIdToPidScratch = new SparseIntArray();
       this.pid = pid;
+      previousSectionData = Util.EMPTY_BYTE_ARRAY;
+      previousSectionLength = C.LENGTH_UNSET;
     }
 
     @Override
@@ -716,6 +827,11 @@ public final class TsExtractor implements Extractor {
 
     @Override
     public void consume(ParsableByteArray sectionData) {
+      if (isRepeatOfPreviousSection(sectionData)) {
+        // The PMT is repeated throughout the stream, and in HLS mode it's consumed each time.
+        // Parsing an unchanged section has no effect, so skip it to avoid allocating.
+        return;
+      }
       int tableId = sectionData.readUnsignedByte();
       if (tableId != 0x02 /* TS_program_map_section */) {
         // See ISO/IEC 13818-1, section 2.4.4.4 for more information on table id assignment.
@@ -821,6 +937,9 @@ public final class TsExtractor implements Extractor {
                 new TrackIdGenerator(programNumber, trackId, MAX_PID_PLUS_ONE));
           }
           tsPayloadReaders.put(trackPid, reader);
+          if (payloadDispatcher != null) {
+            payloadDispatcher.addPid(programNumber, trackPid);
+          }
         }
       }
 
@@ -840,6 +959,29 @@ public final class TsExtractor implements Extractor {
       }
     }
 
+    /**
+     * Returns whether {@code sectionData} is identical to the section that was previously passed to
+     * this method, and retains a copy of it otherwise. Does not modify the position of {@code
+     * sectionData}.
+     */
+    private boolean isRepeatOfPreviousSection(ParsableByteArray sectionData) {
+      byte[] data = sectionData.getData();
+      int position = sectionData.getPosition();
+      int length = sectionData.bytesLeft();
+      boolean isRepeat = length == previousSectionLength;
+      for (int i = 0; isRepeat && i < length; i++) {
+        isRepeat = data[position + i] == previousSectionData[i];
+      }
+      if (!isRepeat) {
+        if (previousSectionData.length < length) {
+          previousSectionData = new byte[length];
+        }
+        System.arraycopy(data, position, previousSectionData, 0, length);
+        previousSectionLength = length;
+      }
+      return isRepeat;
+    }
+
     /**
      * Returns the stream info read from the available descriptors. Sets {@code data}'s position to
      * the end of the descriptors.
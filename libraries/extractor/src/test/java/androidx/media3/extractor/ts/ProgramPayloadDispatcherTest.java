@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.common.util.TimestampAdjuster;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ProgramPayloadDispatcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class ProgramPayloadDispatcherTest {
+
+  private static final int PACKET_LENGTH = 188;
+
+  private ExecutorService executorService;
+  private ProgramPayloadDispatcher dispatcher;
+
+  @Before
+  public void setUp() {
+    executorService = Executors.newSingleThreadExecutor();
+    dispatcher = new ProgramPayloadDispatcher(executorService, new byte[PACKET_LENGTH]);
+    dispatcher.addPid(/* programNumber= */ 1, /* pid= */ 100);
+    dispatcher.addPid(/* programNumber= */ 2, /* pid= */ 200);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdown();
+  }
+
+  @Test
+  public void consumeQueuedPayloads_readerOnExecutorThrowsError_rethrowsError() throws Exception {
+    CountingPayloadReader countingReader = new CountingPayloadReader();
+    StackOverflowError error = new StackOverflowError();
+    TsPayloadReader throwingReader =
+        new CountingPayloadReader() {
+          @Override
+          public void consume(ParsableByteArray data, @Flags int flags) {
+            throw error;
+          }
+        };
+    // The payloads of the first program are consumed on the calling thread, and those of the second
+    // program on the executor.
+    queuePayload(/* pid= */ 100, countingReader);
+    queuePayload(/* pid= */ 200, throwingReader);
+
+    StackOverflowError thrownError =
+        assertThrows(StackOverflowError.class, dispatcher::consumeQueuedPayloads);
+
+    assertThat(thrownError).isSameInstanceAs(error);
+    assertThat(countingReader.consumeCount).isEqualTo(1);
+  }
+
+  @Test
+  public void consumeQueuedPayloads_afterError_consumesPayloads() throws Exception {
+    CountingPayloadReader countingReader = new CountingPayloadReader();
+    TsPayloadReader throwingReader =
+        new CountingPayloadReader() {
+          @Override
+          public void consume(ParsableByteArray data, @Flags int flags) {
+            throw new StackOverflowError();
+          }
+        };
+    queuePayload(/* pid= */ 100, countingReader);
+    queuePayload(/* pid= */ 200, throwingReader);
+    assertThrows(StackOverflowError.class, dispatcher::consumeQueuedPayloads);
+
+    queuePayload(/* pid= */ 100, countingReader);
+    queuePayload(/* pid= */ 200, countingReader);
+    dispatcher.consumeQueuedPayloads();
+
+    assertThat(countingReader.consumeCount).isEqualTo(3);
+  }
+
+  private void queuePayload(int pid, TsPayloadReader reader) {
+    assertThat(
+            dispatcher.queuePayload(
+                pid,
+                reader,
+                /* position= */ 4,
+                /* limit= */ PACKET_LENGTH,
+                /* flags= */ 0,
+                /* isDiscontinuity= */ false))
+        .isTrue();
+  }
+
+  private static class CountingPayloadReader implements TsPayloadReader {
+
+    private int consumeCount;
+
+    @Override
+    public void init(
+        TimestampAdjuster timestampAdjuster,
+        ExtractorOutput extractorOutput,
+        TrackIdGenerator idGenerator) {}
+
+    @Override
+    public void seek() {}
+
+    @Override
+    public synchronized void consume(ParsableByteArray data, @Flags int flags) {
+      consumeCount++;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.ts;
+
+import static androidx.media3.extractor.ts.DefaultTsPayloadReaderFactory.FLAG_DETECT_ACCESS_UNITS;
+import static androidx.media3.extractor.ts.TsExtractor.DEFAULT_TIMESTAMP_SEARCH_BYTES;
+import static androidx.media3.extractor.ts.TsExtractor.MODE_HLS;
+import static androidx.media3.extractor.ts.TsExtractor.MODE_SINGLE_PMT;
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import androidx.media3.common.util.TimestampAdjuster;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.NoOpExtractorOutput;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.text.SubtitleParser;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests that {@link TsExtractor} doesn't allocate once it has warmed up. */
+@RunWith(AndroidJUnit4.class)
+public final class TsExtractorAllocationTest {
+
+  /**
+   * The number of times each stream is read. The JVM occasionally allocates on the reading thread
+   * for its own purposes, so the minimum number of bytes allocated over all of the passes is used.
+   */
+  private static final int PASS_COUNT = 3;
+
+  private MethodHandle allocatedBytesHandle;
+
+  @Before
+  public void setUp() throws Throwable {
+    allocatedBytesHandle = getCurrentThreadAllocatedBytesHandle();
+    // The JVM customizes method handles after they've been invoked a number of times, which
+    // allocates.
+    for (int i = 0; i < 1000; i++) {
+      long unused = (long) allocatedBytesHandle.invokeExact();
+    }
+  }
+
+  @Test
+  public void read_singlePmtMode_doesNotAllocateAfterWarmUp() throws Throwable {
+    long allocatedBytes =
+        readAndGetBytesAllocatedAfterWarmUp(
+            "media/ts/bbb_2500ms.ts", MODE_SINGLE_PMT, /* payloadReaderFlags= */ 0);
+
+    assertThat(allocatedBytes).isEqualTo(0);
+  }
+
+  @Test
+  public void read_hlsMode_doesNotAllocateAfterWarmUp() throws Throwable {
+    long allocatedBytes =
+        readAndGetBytesAllocatedAfterWarmUp(
+            "media/ts/bbb_2500ms.ts", MODE_HLS, /* payloadReaderFlags= */ 0);
+
+    assertThat(allocatedBytes).isEqualTo(0);
+  }
+
+  @Test
+  public void read_h264WithAccessUnitDetection_doesNotAllocateAfterWarmUp() throws Throwable {
+    long allocatedBytes =
+        readAndGetBytesAllocatedAfterWarmUp(
+            "media/ts/sample_h264_iframes_only.ts", MODE_SINGLE_PMT, FLAG_DETECT_ACCESS_UNITS);
+
+    assertThat(allocatedBytes).isEqualTo(0);
+  }
+
+  /**
+   * Reads a stream, using its first half to warm up, and returns the number of bytes allocated
+   * while reading the second half.
+   */
+  private long readAndGetBytesAllocatedAfterWarmUp(
+      String path, @TsExtractor.Mode int mode, int payloadReaderFlags) throws Throwable {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), path);
+    long minAllocatedBytes = Long.MAX_VALUE;
+    for (int i = 0; i < PASS_COUNT; i++) {
+      TsExtractor extractor =
+          new TsExtractor(
+              mode,
+              TsExtractor.FLAG_EMIT_RAW_SUBTITLE_DATA,
+              SubtitleParser.Factory.UNSUPPORTED,
+              new TimestampAdjuster(0),
+              new DefaultTsPayloadReaderFactory(payloadReaderFlags),
+              DEFAULT_TIMESTAMP_SEARCH_BYTES);
+      extractor.init(new NoOpExtractorOutput());
+      // Simulate an unknown length, so that the extractor doesn't read the duration or seek back to
+      // the start of the stream once it has read the tracks.
+      FakeExtractorInput input =
+          new FakeExtractorInput.Builder().setData(data).setSimulateUnknownLength(true).build();
+      PositionHolder positionHolder = new PositionHolder();
+      while (input.getPosition() < data.length / 2) {
+        assertThat(extractor.read(input, positionHolder)).isEqualTo(Extractor.RESULT_CONTINUE);
+      }
+
+      long allocatedBytesBefore = (long) allocatedBytesHandle.invokeExact();
+      int readResult = Extractor.RESULT_CONTINUE;
+      while (input.getPosition() < data.length && readResult == Extractor.RESULT_CONTINUE) {
+        readResult = extractor.read(input, positionHolder);
+      }
+      long allocatedBytesAfter = (long) allocatedBytesHandle.invokeExact();
+
+      assertThat(readResult).isEqualTo(Extractor.RESULT_CONTINUE);
+      minAllocatedBytes = min(minAllocatedBytes, allocatedBytesAfter - allocatedBytesBefore);
+    }
+    return minAllocatedBytes;
+  }
+
+  /**
+   * Returns a handle to a method that returns the number of bytes allocated by the current thread.
+   */
+  private static MethodHandle getCurrentThreadAllocatedBytesHandle()
+      throws ReflectiveOperationException {
+    // The management API isn't part of the Android SDK, but it's provided by the JVM that runs the
+    // test.
+    Object threadMxBean =
+        Class.forName("java.lang.management.ManagementFactory")
+            .getMethod("getThreadMXBean")
+            .invoke(/* obj= */ null);
+    return MethodHandles.publicLookup()
+        .findVirtual(
+            Class.forName("com.sun.management.ThreadMXBean"),
+            "getCurrentThreadAllocatedBytes",
+            MethodType.methodType(long.class))
+        .bindTo(threadMxBean);
+  }
+}
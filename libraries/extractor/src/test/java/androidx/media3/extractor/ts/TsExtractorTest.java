@@ -43,8 +43,11 @@ import androidx.media3.test.utils.FakeExtractorOutput;
 import androidx.media3.test.utils.FakeTrackOutput;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
+import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
@@ -441,6 +444,94 @@ public final class TsExtractorTest {
     assertThat(factory.sdtReader.consumedSdts).isEqualTo(2);
   }
 
+  @Test
+  public void multiProgramStream_withSelectedProgram_onlyOutputsTracksOfSelectedProgram()
+      throws Exception {
+    TsExtractor tsExtractor =
+        new TsExtractor(
+            MODE_MULTI_PMT,
+            TsExtractor.FLAG_EMIT_RAW_SUBTITLE_DATA,
+            SubtitleParser.Factory.UNSUPPORTED,
+            new TimestampAdjuster(0),
+            new DefaultTsPayloadReaderFactory(),
+            DEFAULT_TIMESTAMP_SEARCH_BYTES,
+            /* programNumbers= */ ImmutableSet.of(2),
+            /* payloadExecutor= */ null);
+
+    FakeExtractorOutput output = extractAll(tsExtractor, "media/ts/sample_multi_program.ts");
+
+    assertThat(output.numberOfTracks).isEqualTo(2);
+    assertThat(output.trackOutputs.get(272 /* PID of program 2 video track. */)).isNotNull();
+    assertThat(output.trackOutputs.get(273 /* PID of program 2 audio track. */)).isNotNull();
+  }
+
+  @Test
+  public void multiProgramStream_withPayloadExecutor_outputsSameSamples() throws Exception {
+    TsExtractor tsExtractor =
+        new TsExtractor(
+            MODE_MULTI_PMT,
+            TsExtractor.FLAG_EMIT_RAW_SUBTITLE_DATA,
+            SubtitleParser.Factory.UNSUPPORTED,
+            new TimestampAdjuster(0),
+            new DefaultTsPayloadReaderFactory(),
+            DEFAULT_TIMESTAMP_SEARCH_BYTES,
+            /* programNumbers= */ ImmutableSet.of(),
+            /* payloadExecutor= */ null);
+    ExecutorService payloadExecutor = Executors.newFixedThreadPool(/* nThreads= */ 2);
+    TsExtractor parallelTsExtractor =
+        new TsExtractor(
+            MODE_MULTI_PMT,
+            TsExtractor.FLAG_EMIT_RAW_SUBTITLE_DATA,
+            SubtitleParser.Factory.UNSUPPORTED,
+            new TimestampAdjuster(0),
+            new DefaultTsPayloadReaderFactory(),
+            DEFAULT_TIMESTAMP_SEARCH_BYTES,
+            /* programNumbers= */ ImmutableSet.of(),
+            payloadExecutor);
+
+    FakeExtractorOutput output = extractAll(tsExtractor, "media/ts/sample_multi_program.ts");
+    FakeExtractorOutput parallelOutput =
+        extractAll(parallelTsExtractor, "media/ts/sample_multi_program.ts");
+    payloadExecutor.shutdown();
+
+    assertThat(output.numberOfTracks).isEqualTo(6);
+    assertThat(parallelOutput.numberOfTracks).isEqualTo(6);
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      FakeTrackOutput trackOutput = output.trackOutputs.valueAt(i);
+      FakeTrackOutput parallelTrackOutput =
+          parallelOutput.trackOutputs.get(output.trackOutputs.keyAt(i));
+      assertThat(parallelTrackOutput.lastFormat).isEqualTo(trackOutput.lastFormat);
+      assertThat(parallelTrackOutput.getSampleTimesUs())
+          .containsExactlyElementsIn(trackOutput.getSampleTimesUs())
+          .inOrder();
+      for (int j = 0; j < trackOutput.getSampleCount(); j++) {
+        assertThat(parallelTrackOutput.getSampleData(j)).isEqualTo(trackOutput.getSampleData(j));
+      }
+    }
+  }
+
+  private static FakeExtractorOutput extractAll(TsExtractor tsExtractor, String path)
+      throws Exception {
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), path))
+            .setSimulateIOErrors(false)
+            .setSimulateUnknownLength(false)
+            .setSimulatePartialReads(false)
+            .build();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    tsExtractor.init(output);
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = tsExtractor.read(input, seekPositionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) seekPositionHolder.position);
+      }
+    }
+    return output;
+  }
+
   private static ExtractorAsserts.ExtractorFactory getExtractorFactory(
       boolean subtitlesParsedDuringExtraction) {
     return getExtractorFactory(
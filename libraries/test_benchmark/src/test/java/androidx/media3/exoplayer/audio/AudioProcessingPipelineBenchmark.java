@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.audio;
+
+import static java.lang.Math.min;
+
+import androidx.media3.common.C;
+import androidx.media3.common.audio.AudioProcessingPipeline;
+import androidx.media3.common.audio.AudioProcessor;
+import androidx.media3.common.audio.AudioProcessor.AudioFormat;
+import androidx.media3.common.audio.ChannelMixingAudioProcessor;
+import androidx.media3.common.audio.ChannelMixingMatrix;
+import androidx.media3.common.audio.SonicAudioProcessor;
+import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks common chains of audio processors in an {@link AudioProcessingPipeline}, with and
+ * without fusing its stateless audio processors.
+ *
+ * <p>Each operation processes one input frame of 5.1 audio, so the average time is the time it
+ * takes to process a frame.
+ *
+ * <p>The benchmark is in the same package as {@link ToFloatPcmAudioProcessor}, which isn't public.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class AudioProcessingPipelineBenchmark {
+
+  private static final int SAMPLE_RATE_HZ = 48_000;
+  private static final int CHANNEL_COUNT = 6;
+  private static final int FRAME_COUNT = SAMPLE_RATE_HZ;
+  private static final int FRAMES_PER_BUFFER = 1024;
+
+  /**
+   * The chain of audio processors:
+   *
+   * <ul>
+   *   <li>{@code "downmix"}: Downmixes 16-bit audio to stereo.
+   *   <li>{@code "floatConvertAndDownmix"}: Converts 24-bit audio to float, and downmixes it to
+   *       stereo.
+   *   <li>{@code "floatConvertDownmixAndSpeed"}: Converts 24-bit audio to float, downmixes it to
+   *       stereo, and changes its speed.
+   * </ul>
+   */
+  @Param({"downmix", "floatConvertAndDownmix", "floatConvertDownmixAndSpeed"})
+  public String chain;
+
+  @Param({"true", "false"})
+  public boolean fuseStatelessAudioProcessors;
+
+  private AudioProcessingPipeline pipeline;
+  private ByteBuffer inputBuffer;
+
+  @Setup
+  public void setUp() throws AudioProcessor.UnhandledAudioFormatException {
+    ChannelMixingAudioProcessor downmixingAudioProcessor = new ChannelMixingAudioProcessor();
+    downmixingAudioProcessor.putChannelMixingMatrix(
+        new ChannelMixingMatrix(
+            CHANNEL_COUNT,
+            /* outputChannelCount= */ 2,
+            new float[] {
+              /* L */ 1, 0, /* R */ 0, 1, /* C */ 0.7f, 0.7f,
+              /* LFE */ 0, 0, /* Ls */ 0.7f, 0, /* Rs */ 0, 0.7f
+            }));
+    ImmutableList.Builder<AudioProcessor> audioProcessors = ImmutableList.builder();
+    @C.PcmEncoding int inputEncoding;
+    if (chain.equals("downmix")) {
+      inputEncoding = C.ENCODING_PCM_16BIT;
+      audioProcessors.add(downmixingAudioProcessor);
+    } else {
+      inputEncoding = C.ENCODING_PCM_24BIT;
+      audioProcessors.add(new ToFloatPcmAudioProcessor(), downmixingAudioProcessor);
+      if (chain.equals("floatConvertDownmixAndSpeed")) {
+        SonicAudioProcessor sonicAudioProcessor = new SonicAudioProcessor();
+        sonicAudioProcessor.setSpeed(1.5f);
+        audioProcessors.add(sonicAudioProcessor);
+      }
+    }
+    pipeline = new AudioProcessingPipeline(audioProcessors.build(), fuseStatelessAudioProcessors);
+    AudioFormat inputAudioFormat = new AudioFormat(SAMPLE_RATE_HZ, CHANNEL_COUNT, inputEncoding);
+    pipeline.configure(inputAudioFormat);
+    pipeline.flush();
+
+    byte[] input = new byte[FRAME_COUNT * inputAudioFormat.bytesPerFrame];
+    new Random(/* seed= */ 0).nextBytes(input);
+    inputBuffer = ByteBuffer.allocateDirect(input.length).order(ByteOrder.nativeOrder());
+    inputBuffer.put(input).flip();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FRAME_COUNT)
+  public long processFrames() {
+    pipeline.flush();
+    inputBuffer.rewind();
+    int bytesPerBuffer = FRAMES_PER_BUFFER * (inputBuffer.limit() / FRAME_COUNT);
+    long outputBytes = 0;
+    while (inputBuffer.hasRemaining()) {
+      // Queue input in buffers of the size that decoders typically output.
+      int limit = inputBuffer.limit();
+      inputBuffer.limit(min(limit, inputBuffer.position() + bytesPerBuffer));
+      while (inputBuffer.hasRemaining()) {
+        pipeline.queueInput(inputBuffer);
+        outputBytes += drainOutput();
+      }
+      inputBuffer.limit(limit);
+    }
+    pipeline.queueEndOfStream();
+    while (!pipeline.isEnded()) {
+      outputBytes += drainOutput();
+    }
+    return outputBytes;
+  }
+
+  private int drainOutput() {
+    ByteBuffer outputBuffer = pipeline.getOutput();
+    int outputBytes = outputBuffer.remaining();
+    outputBuffer.position(outputBuffer.limit());
+    return outputBytes;
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.StreamKey;
+import androidx.media3.common.util.SystemClock;
+import androidx.media3.common.util.Util;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.NoOpCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+import androidx.media3.exoplayer.offline.AdaptiveParallelismController;
+import androidx.media3.exoplayer.offline.FilterableManifest;
+import androidx.media3.exoplayer.offline.SegmentDownloader;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the time it takes a {@link SegmentDownloader} to download a segmented stream over a
+ * simulated network, with a fixed number of parallel requests and with an {@link
+ * AdaptiveParallelismController}.
+ *
+ * <p>The network has a round trip latency, a bandwidth that's shared by all connections, and a
+ * throughput limit per connection, so that the download is fastest when it makes as many parallel
+ * requests as it takes to saturate the bandwidth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(0)
+public class AdaptiveParallelismBenchmark {
+
+  private static final String MANIFEST_URI = "https://example.test/manifest";
+  private static final int SEGMENT_COUNT = 128;
+  private static final int SEGMENT_SIZE = 64 * 1024;
+  private static final long LATENCY_MS = 50;
+  private static final long BANDWIDTH_BYTES_PER_SECOND = 8 * 1024 * 1024;
+  private static final long CONNECTION_BYTES_PER_SECOND = 512 * 1024;
+  private static final int MAX_PARALLEL_REQUESTS = 16;
+
+  /**
+   * The number of parallel requests, or {@code "adaptive"} to adapt the number with an {@link
+   * AdaptiveParallelismController}.
+   */
+  @Param({"2", "6", "16", "adaptive"})
+  public String parallelism;
+
+  private StandaloneDatabaseProvider databaseProvider;
+  private File cacheDir;
+  private SimpleCache cache;
+  private CacheDataSource.Factory cacheDataSourceFactory;
+  private ExecutorService executorService;
+  @Nullable private AdaptiveParallelismController parallelismController;
+  private SegmentListDownloader downloader;
+
+  @Setup
+  public void setUp() throws IOException {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet().setData(MANIFEST_URI, Util.getUtf8Bytes("manifest"));
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      fakeDataSet.setRandomData(getSegmentUri(i), SEGMENT_SIZE);
+    }
+    databaseProvider = new StandaloneDatabaseProvider(ApplicationProvider.getApplicationContext());
+    cacheDir = Files.createTempDirectory("AdaptiveParallelismBenchmark").toFile();
+    cache = new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
+    cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(
+                new ThrottledDataSource.Factory(
+                    new FakeDataSource.Factory().setFakeDataSet(fakeDataSet), new Network()));
+    if (parallelism.equals("adaptive")) {
+      executorService = Executors.newFixedThreadPool(MAX_PARALLEL_REQUESTS);
+      parallelismController =
+          new AdaptiveParallelismController.Builder()
+              .setMaxParallelRequests(MAX_PARALLEL_REQUESTS)
+              .setMaxParallelRequestsPerDownload(MAX_PARALLEL_REQUESTS)
+              .setClock(new RealTimeClock())
+              .build();
+    } else {
+      executorService = Executors.newFixedThreadPool(Integer.parseInt(parallelism));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    executorService.shutdown();
+    cache.release();
+    Util.recursiveDelete(cacheDir);
+    databaseProvider.close();
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpDownloader() {
+    downloader = new SegmentListDownloader(cacheDataSourceFactory, executorService);
+    downloader.setParallelismController(parallelismController);
+  }
+
+  @TearDown(Level.Invocation)
+  public void clearCache() {
+    for (String key : cache.getKeys()) {
+      cache.removeResource(key);
+    }
+  }
+
+  @Benchmark
+  public void download() throws IOException, InterruptedException {
+    downloader.download(/* progressListener= */ null);
+  }
+
+  private static Uri getSegmentUri(int index) {
+    return Uri.parse("https://example.test/segment-" + index);
+  }
+
+  /** A manifest that lists {@link #SEGMENT_COUNT} segments. */
+  private static final class SegmentList implements FilterableManifest<SegmentList> {
+
+    @Override
+    public SegmentList copy(List<StreamKey> streamKeys) {
+      return this;
+    }
+  }
+
+  private static final class SegmentListDownloader extends SegmentDownloader<SegmentList> {
+
+    public SegmentListDownloader(
+        CacheDataSource.Factory cacheDataSourceFactory, Executor executor) {
+      super(
+          MediaItem.fromUri(MANIFEST_URI),
+          (uri, inputStream) -> new SegmentList(),
+          cacheDataSourceFactory,
+          executor,
+          /* maxMergedSegmentStartTimeDiffMs= */ 0);
+    }
+
+    @Override
+    protected List<Segment> getSegments(
+        DataSource dataSource, SegmentList manifest, boolean removing) {
+      List<Segment> segments = new ArrayList<>();
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+        DataSpec dataSpec = new DataSpec(getSegmentUri(i));
+        segments.add(new Segment(/* startTimeUs= */ i * C.MICROS_PER_SECOND, dataSpec));
+      }
+      return segments;
+    }
+  }
+
+  /** Schedules transfers on a link whose bandwidth is shared by all connections. */
+  private static final class Network {
+
+    private long linkAvailableTimeNs;
+
+    /**
+     * Schedules the transfer of a number of bytes on the link.
+     *
+     * @return The {@link System#nanoTime()} at which the transfer finishes.
+     */
+    public synchronized long transfer(int bytes) {
+      linkAvailableTimeNs =
+          max(System.nanoTime(), linkAvailableTimeNs)
+              + bytes * C.NANOS_PER_SECOND / BANDWIDTH_BYTES_PER_SECOND;
+      return linkAvailableTimeNs;
+    }
+  }
+
+  /**
+   * A {@link DataSource} that delays opening by the {@link #LATENCY_MS round trip latency} and
+   * throttles reads to the throughput of a connection on the {@link Network}.
+   */
+  private static final class ThrottledDataSource implements DataSource {
+
+    public static final class Factory implements DataSource.Factory {
+
+      private final DataSource.Factory upstreamDataSourceFactory;
+      private final Network network;
+
+      public Factory(DataSource.Factory upstreamDataSourceFactory, Network network) {
+        this.upstreamDataSourceFactory = upstreamDataSourceFactory;
+        this.network = network;
+      }
+
+      @Override
+      public DataSource createDataSource() {
+        return new ThrottledDataSource(upstreamDataSourceFactory.createDataSource(), network);
+      }
+    }
+
+    private static final int MAX_READ_LENGTH = 16 * 1024;
+
+    private final DataSource upstream;
+    private final Network network;
+
+    private long connectionAvailableTimeNs;
+
+    private ThrottledDataSource(DataSource upstream, Network network) {
+      this.upstream = upstream;
+      this.network = network;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      sleep(LATENCY_MS * C.NANOS_PER_SECOND / C.MILLIS_PER_SECOND);
+      connectionAvailableTimeNs = System.nanoTime();
+      return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int bytesRead = upstream.read(buffer, offset, min(length, MAX_READ_LENGTH));
+      if (bytesRead > 0) {
+        connectionAvailableTimeNs =
+            max(System.nanoTime(), connectionAvailableTimeNs)
+                + bytesRead * C.NANOS_PER_SECOND / CONNECTION_BYTES_PER_SECOND;
+        long linkAvailableTimeNs = network.transfer(bytesRead);
+        sleep(max(connectionAvailableTimeNs, linkAvailableTimeNs) - System.nanoTime());
+      }
+      return bytesRead;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      return upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+      upstream.close();
+    }
+
+    private static void sleep(long durationNs) throws InterruptedIOException {
+      if (durationNs <= 0) {
+        return;
+      }
+      try {
+        TimeUnit.NANOSECONDS.sleep(durationNs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  /**
+   * A clock whose elapsed realtime advances in real time, unlike that of Robolectric's {@code
+   * SystemClock}.
+   */
+  private static final class RealTimeClock extends SystemClock {
+
+    @Override
+    public long elapsedRealtime() {
+      return System.nanoTime() / (C.NANOS_PER_SECOND / C.MILLIS_PER_SECOND);
+    }
+  }
+}
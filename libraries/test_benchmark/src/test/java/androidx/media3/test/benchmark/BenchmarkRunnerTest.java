@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import static org.junit.Assume.assumeFalse;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks in this module that match the {@code benchmark.include} Gradle property, and
+ * prints a summary of their results.
+ *
+ * <p>Benchmarks run in the Robolectric test environment, so that they can use Android framework
+ * classes.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class BenchmarkRunnerTest {
+
+  /** The name of the secondary result in which JMH's GC profiler reports bytes allocated per op. */
+  private static final String ALLOCATED_BYTES_PER_OP_RESULT_NAME = "gc.alloc.rate.norm";
+
+  @Test
+  public void runBenchmarks() throws Exception {
+    String include = System.getProperty("androidx.media3.benchmark.include", "");
+    assumeFalse("No benchmarks requested", include.isEmpty());
+    Options options =
+        new OptionsBuilder()
+            .include(include)
+            .forks(0)
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(System.getProperty("androidx.media3.benchmark.resultFile", "results.json"))
+            .build();
+
+    Collection<RunResult> results = new Runner(options).run();
+
+    for (RunResult result : results) {
+      System.out.println(formatSummary(result));
+    }
+  }
+
+  private static String formatSummary(RunResult runResult) {
+    StringBuilder summary = new StringBuilder(runResult.getParams().getBenchmark());
+    for (String key : runResult.getParams().getParamsKeys()) {
+      summary.append(' ').append(key).append('=').append(runResult.getParams().getParam(key));
+    }
+    Result<?> primaryResult = runResult.getPrimaryResult();
+    summary.append(
+        String.format(
+            Locale.US, ": %.1f %s", primaryResult.getScore(), primaryResult.getScoreUnit()));
+    Map<String, Result> secondaryResults = runResult.getSecondaryResults();
+    @Nullable Result<?> bytesResult = secondaryResults.get(ByteCounter.NAME);
+    if (bytesResult != null) {
+      // The counter is reported in bytes per second.
+      summary.append(String.format(Locale.US, ", %.1f MB/s", bytesResult.getScore() / 1_000_000));
+    }
+    @Nullable
+    Result<?> allocatedBytesResult = secondaryResults.get(ALLOCATED_BYTES_PER_OP_RESULT_NAME);
+    if (allocatedBytesResult == null) {
+      // Older versions of JMH prefix the names of profiler results.
+      allocatedBytesResult = secondaryResults.get("\u00b7" + ALLOCATED_BYTES_PER_OP_RESULT_NAME);
+    }
+    if (allocatedBytesResult != null) {
+      summary.append(
+          String.format(Locale.US, ", %.0f B allocated/op", allocatedBytesResult.getScore()));
+    }
+    return summary.toString();
+  }
+}
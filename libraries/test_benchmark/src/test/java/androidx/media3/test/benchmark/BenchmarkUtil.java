@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.NoOpExtractorOutput;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.TestUtil;
+import java.io.File;
+import java.io.IOException;
+
+/** Utilities for benchmarks. */
+/* package */ final class BenchmarkUtil {
+
+  private BenchmarkUtil() {}
+
+  /** Returns the contents of an asset in the test data module. */
+  public static byte[] getAsset(String path) throws IOException {
+    File assetsDir = new File(System.getProperty("androidx.media3.benchmark.assetsDir", ""));
+    return TestUtil.getByteArrayFromFilePath(new File(assetsDir, path).getPath());
+  }
+
+  /**
+   * Reads all of the data with an extractor, discarding the output.
+   *
+   * @param extractor The extractor, which must not have been initialized.
+   * @param data The data to extract.
+   */
+  public static void extractAll(Extractor extractor, byte[] data) throws IOException {
+    extractor.init(new NoOpExtractorOutput());
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, positionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+    extractor.release();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import android.content.Context;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.cache.Cache;
+import androidx.media3.datasource.cache.ContentMetadataMutations;
+import androidx.media3.datasource.cache.NoOpCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks storing a change to a single key of the index of a {@link SimpleCache} that holds
+ * many keys, for each type of index storage.
+ *
+ * <p>Each operation changes the metadata of one key, which causes the index to be stored.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class CacheIndexStoreBenchmark {
+
+  private static final String METADATA_NAME = "benchmark";
+
+  /**
+   * The storage of the index. One of {@code legacy} (a file that's rewritten on each store), {@code
+   * database} or {@code journal}.
+   */
+  @Param({"legacy", "database", "journal"})
+  public String storage;
+
+  /** The number of keys in the index. */
+  @Param({"1000", "10000", "100000"})
+  public int keyCount;
+
+  private File cacheDir;
+  private StandaloneDatabaseProvider databaseProvider;
+  private SimpleCache cache;
+  private long nextMetadataValue;
+
+  @Setup
+  public void setUp() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    context.deleteDatabase(StandaloneDatabaseProvider.DATABASE_NAME);
+    databaseProvider = new StandaloneDatabaseProvider(context);
+    cacheDir = Files.createTempDirectory("CacheIndexStoreBenchmark").toFile();
+    switch (storage) {
+      case "legacy":
+        cache =
+            new SimpleCache(
+                cacheDir,
+                new NoOpCacheEvictor(),
+                /* databaseProvider= */ null,
+                /* legacyIndexSecretKey= */ null,
+                /* legacyIndexEncrypt= */ false,
+                /* preferLegacyIndex= */ false);
+        break;
+      case "database":
+        cache =
+            new SimpleCache(
+                cacheDir, new NoOpCacheEvictor(), databaseProvider, /* useJournalIndex= */ false);
+        break;
+      case "journal":
+        cache =
+            new SimpleCache(
+                cacheDir, new NoOpCacheEvictor(), databaseProvider, /* useJournalIndex= */ true);
+        break;
+      default:
+        throw new IllegalArgumentException(storage);
+    }
+    // Lock a range of each key, which adds the key to the index without storing it, and keeps the
+    // key in the index without having to write any cache files. Then store all keys at once.
+    for (int i = 0; i < keyCount; i++) {
+      cache.startReadWriteNonBlocking(getKey(i), /* position= */ 0, /* length= */ 1);
+    }
+    setMetadata(/* keyIndex= */ 0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    cache.release();
+    SimpleCache.delete(cacheDir, databaseProvider);
+    databaseProvider.close();
+  }
+
+  @Benchmark
+  public void storeChangedKey() throws Cache.CacheException {
+    setMetadata((int) (nextMetadataValue % keyCount));
+  }
+
+  private void setMetadata(int keyIndex) throws Cache.CacheException {
+    cache.applyContentMetadataMutations(
+        getKey(keyIndex), new ContentMetadataMutations().set(METADATA_NAME, nextMetadataValue++));
+  }
+
+  private static String getKey(int index) {
+    return "https://example.test/media/" + index;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import android.net.Uri;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.dash.manifest.DashManifest;
+import androidx.media3.exoplayer.dash.manifest.DashManifestParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks parsing DASH manifests whose representations use a segment timeline, with {@link
+ * DashManifestParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class DashManifestParserBenchmark {
+
+  /** The number of entries in each segment timeline. */
+  @Param({"100", "1000", "10000"})
+  public int timelineEntryCount;
+
+  private Uri uri;
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    uri = Uri.parse("https://example.com/manifest.mpd");
+    data = Util.getUtf8Bytes(buildManifest(timelineEntryCount));
+  }
+
+  @Benchmark
+  public DashManifest parse(ByteCounter byteCounter) throws IOException {
+    DashManifest manifest = new DashManifestParser().parse(uri, new ByteArrayInputStream(data));
+    byteCounter.bytes += data.length;
+    return manifest;
+  }
+
+  private static String buildManifest(int timelineEntryCount) {
+    StringBuilder manifest = new StringBuilder();
+    manifest
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"dynamic\"")
+        .append(" availabilityStartTime=\"2024-01-01T00:00:00Z\"")
+        .append(" minimumUpdatePeriod=\"PT2S\" timeShiftBufferDepth=\"PT1H\"")
+        .append(" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n")
+        .append("<Period id=\"0\" start=\"PT0S\">\n");
+    appendAdaptationSet(
+        manifest,
+        "video/mp4",
+        new String[] {"avc1.640028", "avc1.64001f", "avc1.64001e"},
+        new int[] {5_000_000, 2_500_000, 1_000_000},
+        timelineEntryCount);
+    appendAdaptationSet(
+        manifest,
+        "audio/mp4",
+        new String[] {"mp4a.40.2"},
+        new int[] {128_000},
+        timelineEntryCount);
+    manifest.append("</Period>\n").append("</MPD>\n");
+    return manifest.toString();
+  }
+
+  private static void appendAdaptationSet(
+      StringBuilder manifest,
+      String mimeType,
+      String[] codecs,
+      int[] bitrates,
+      int timelineEntryCount) {
+    manifest
+        .append("<AdaptationSet mimeType=\"")
+        .append(mimeType)
+        .append("\" segmentAlignment=\"true\">\n")
+        .append("<SegmentTemplate timescale=\"90000\"")
+        .append(" initialization=\"$RepresentationID$/init.mp4\"")
+        .append(" media=\"$RepresentationID$/$Time$.m4s\">\n")
+        .append("<SegmentTimeline>\n");
+    long time = 0;
+    for (int i = 0; i < timelineEntryCount; i++) {
+      // Alternate between two durations so that entries can't be merged using a repeat count.
+      long duration = i % 2 == 0 ? 180_180 : 180_000;
+      manifest.append("<S t=\"").append(time).append("\" d=\"").append(duration).append("\"/>\n");
+      time += duration;
+    }
+    manifest.append("</SegmentTimeline>\n").append("</SegmentTemplate>\n");
+    for (int i = 0; i < codecs.length; i++) {
+      manifest
+          .append("<Representation id=\"")
+          .append(mimeType.substring(0, mimeType.indexOf('/')))
+          .append(i)
+          .append("\" codecs=\"")
+          .append(codecs[i])
+          .append("\" bandwidth=\"")
+          .append(bitrates[i])
+          .append("\"/>\n");
+    }
+    manifest.append("</AdaptationSet>\n");
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.dash.DashSegmentIndex;
+import androidx.media3.exoplayer.dash.manifest.DashManifest;
+import androidx.media3.exoplayer.dash.manifest.DashManifestParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks looking up segments in the {@link DashSegmentIndex} of a representation whose segments
+ * are described by a segment timeline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class DashSegmentIndexBenchmark {
+
+  private static final int LOOKUP_COUNT = 1000;
+
+  /** The number of segments in the segment timeline. */
+  @Param({"1000", "43200"})
+  public int segmentCount;
+
+  /**
+   * Whether the segment timeline describes runs of segments with a repeat count, rather than with
+   * one entry per segment.
+   */
+  @Param({"true", "false"})
+  public boolean useRepeatCount;
+
+  private DashSegmentIndex segmentIndex;
+  private long periodDurationUs;
+  private long[] lookupTimesUs;
+
+  @Setup
+  public void setUp() throws IOException {
+    byte[] data = Util.getUtf8Bytes(buildManifest(segmentCount, useRepeatCount));
+    DashManifest manifest =
+        new DashManifestParser()
+            .parse(Uri.parse("https://example.com/manifest.mpd"), new ByteArrayInputStream(data));
+    segmentIndex =
+        checkNotNull(manifest.getPeriod(0).adaptationSets.get(0).representations.get(0).getIndex());
+    periodDurationUs = C.TIME_UNSET;
+    long lastSegmentNum = segmentIndex.getFirstSegmentNum() + segmentCount - 1;
+    long durationUs =
+        segmentIndex.getTimeUs(lastSegmentNum)
+            + segmentIndex.getDurationUs(lastSegmentNum, periodDurationUs);
+    Random random = new Random(/* seed= */ 0);
+    lookupTimesUs = new long[LOOKUP_COUNT];
+    for (int i = 0; i < LOOKUP_COUNT; i++) {
+      lookupTimesUs[i] = (long) (random.nextDouble() * durationUs);
+    }
+  }
+
+  @Benchmark
+  public long getSegmentNum() {
+    long result = 0;
+    for (long timeUs : lookupTimesUs) {
+      result += segmentIndex.getSegmentNum(timeUs, periodDurationUs);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public long getSegmentNumAndTime() {
+    long result = 0;
+    for (long timeUs : lookupTimesUs) {
+      long segmentNum = segmentIndex.getSegmentNum(timeUs, periodDurationUs);
+      result += segmentIndex.getTimeUs(segmentNum);
+      result += segmentIndex.getDurationUs(segmentNum, periodDurationUs);
+    }
+    return result;
+  }
+
+  private static String buildManifest(int segmentCount, boolean useRepeatCount) {
+    StringBuilder manifest = new StringBuilder();
+    manifest
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"static\"")
+        .append(" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n")
+        .append("<Period id=\"0\" start=\"PT0S\">\n")
+        .append("<AdaptationSet mimeType=\"video/mp4\" segmentAlignment=\"true\">\n")
+        .append("<SegmentTemplate timescale=\"90000\"")
+        .append(" initialization=\"$RepresentationID$/init.mp4\"")
+        .append(" media=\"$RepresentationID$/$Time$.m4s\">\n")
+        .append("<SegmentTimeline>\n");
+    long time = 0;
+    int segmentIndex = 0;
+    while (segmentIndex < segmentCount) {
+      long duration = getSegmentDuration(segmentIndex);
+      int runLength = 1;
+      while (useRepeatCount
+          && segmentIndex + runLength < segmentCount
+          && getSegmentDuration(segmentIndex + runLength) == duration) {
+        runLength++;
+      }
+      manifest.append("<S t=\"").append(time).append("\" d=\"").append(duration);
+      if (runLength > 1) {
+        manifest.append("\" r=\"").append(runLength - 1);
+      }
+      manifest.append("\"/>\n");
+      time += runLength * duration;
+      segmentIndex += runLength;
+    }
+    manifest
+        .append("</SegmentTimeline>\n")
+        .append("</SegmentTemplate>\n")
+        .append("<Representation id=\"video0\" codecs=\"avc1.640028\" bandwidth=\"5000000\"/>\n")
+        .append("<Representation id=\"video1\" codecs=\"avc1.64001f\" bandwidth=\"2500000\"/>\n")
+        .append("</AdaptationSet>\n")
+        .append("</Period>\n")
+        .append("</MPD>\n");
+    return manifest.toString();
+  }
+
+  private static long getSegmentDuration(int segmentIndex) {
+    // Make every 100th segment shorter, as happens around ad breaks.
+    return segmentIndex % 100 == 99 ? 90_090 : 180_180;
+  }
+}
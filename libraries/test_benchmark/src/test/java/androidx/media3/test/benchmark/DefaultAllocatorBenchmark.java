@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import androidx.media3.common.C;
+import androidx.media3.exoplayer.upstream.Allocation;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks allocating and releasing {@link Allocation Allocations} from a {@link
+ * DefaultAllocator} that's shared between threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class DefaultAllocatorBenchmark {
+
+  /** The number of allocations each thread holds before releasing them. */
+  private static final int BATCH_SIZE = 16;
+
+  @Param({"false", "true"})
+  public boolean useThreadLocalCaches;
+
+  private DefaultAllocator allocator;
+
+  /** The allocations held by a thread. */
+  @State(Scope.Thread)
+  public static class ThreadState {
+
+    public final Allocation[] allocations = new Allocation[BATCH_SIZE];
+  }
+
+  @Setup
+  public void setUp() {
+    allocator =
+        new DefaultAllocator.Builder()
+            .setTrimOnReset(false)
+            .setIndividualAllocationSize(C.DEFAULT_BUFFER_SEGMENT_SIZE)
+            .setUseThreadLocalCaches(useThreadLocalCaches)
+            .build();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void allocateAndRelease1Thread(ThreadState threadState) {
+    allocateAndRelease(threadState);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void allocateAndRelease4Threads(ThreadState threadState) {
+    allocateAndRelease(threadState);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void allocateAndRelease16Threads(ThreadState threadState) {
+    allocateAndRelease(threadState);
+  }
+
+  private void allocateAndRelease(ThreadState threadState) {
+    Allocation[] allocations = threadState.allocations;
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      allocator.release(allocations[i]);
+    }
+  }
+}
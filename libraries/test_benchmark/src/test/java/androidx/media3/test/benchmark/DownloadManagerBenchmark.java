@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import androidx.annotation.Nullable;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.exoplayer.offline.DefaultDownloadIndex;
+import androidx.media3.exoplayer.offline.Download;
+import androidx.media3.exoplayer.offline.DownloadManager;
+import androidx.media3.exoplayer.offline.DownloadRequest;
+import androidx.test.core.app.ApplicationProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks state changes of single downloads in a {@link DownloadManager} that holds many
+ * downloads.
+ *
+ * <p>Each operation stops one download and starts it again, and waits for the application thread
+ * to be notified of both changes. The downloads are paused, so no data is downloaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class DownloadManagerBenchmark {
+
+  private static final int STOP_REASON = 1;
+
+  /** The number of downloads held by the manager. */
+  @Param({"100", "10000", "50000"})
+  public int downloadCount;
+
+  private StandaloneDatabaseProvider databaseProvider;
+  private HandlerThread applicationThread;
+  private Handler applicationHandler;
+  private DownloadManager downloadManager;
+  private Semaphore downloadChanges;
+  private int nextDownloadIndex;
+
+  @Setup
+  public void setUp() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    context.deleteDatabase(StandaloneDatabaseProvider.DATABASE_NAME);
+    databaseProvider = new StandaloneDatabaseProvider(context);
+    DefaultDownloadIndex downloadIndex = new DefaultDownloadIndex(databaseProvider);
+    List<Download> downloads = new ArrayList<>();
+    for (int i = 0; i < downloadCount; i++) {
+      downloads.add(
+          new Download(
+              createDownloadRequest(i),
+              Download.STATE_QUEUED,
+              /* startTimeMs= */ i,
+              /* updateTimeMs= */ i,
+              /* contentLength= */ 1000,
+              Download.STOP_REASON_NONE,
+              Download.FAILURE_REASON_NONE));
+    }
+    downloadIndex.putDownloads(downloads);
+
+    // Create the manager on a thread with a looper of its own, so that its application thread
+    // handles messages while the benchmark thread waits for them.
+    applicationThread = new HandlerThread("DownloadManagerBenchmark");
+    applicationThread.start();
+    applicationHandler = new Handler(applicationThread.getLooper());
+    downloadChanges = new Semaphore(/* permits= */ 0);
+    CountDownLatch initialized = new CountDownLatch(1);
+    applicationHandler.post(
+        () -> {
+          downloadManager =
+              new DownloadManager(
+                  context,
+                  downloadIndex,
+                  request -> {
+                    throw new UnsupportedOperationException();
+                  });
+          downloadManager.addListener(
+              new DownloadManager.Listener() {
+                @Override
+                public void onInitialized(DownloadManager downloadManager) {
+                  initialized.countDown();
+                }
+
+                @Override
+                public void onDownloadChanged(
+                    DownloadManager downloadManager,
+                    Download download,
+                    @Nullable Exception finalException) {
+                  downloadChanges.release();
+                }
+              });
+        });
+    initialized.await();
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    CountDownLatch released = new CountDownLatch(1);
+    applicationHandler.post(
+        () -> {
+          downloadManager.release();
+          released.countDown();
+        });
+    released.await();
+    applicationThread.quit();
+    databaseProvider.close();
+  }
+
+  @Benchmark
+  public void stopAndRestartDownload() throws InterruptedException {
+    String id = String.valueOf(nextDownloadIndex);
+    nextDownloadIndex = (nextDownloadIndex + 1) % downloadCount;
+    applicationHandler.post(
+        () -> {
+          downloadManager.setStopReason(id, STOP_REASON);
+          downloadManager.setStopReason(id, Download.STOP_REASON_NONE);
+        });
+    downloadChanges.acquire(/* permits= */ 2);
+  }
+
+  private static DownloadRequest createDownloadRequest(int index) {
+    String id = String.valueOf(index);
+    return new DownloadRequest.Builder(id, Uri.parse("https://example.test/media/" + id))
+        .setMimeType(MimeTypes.VIDEO_MP4)
+        .build();
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.FileDataSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading a local file with {@link FileDataSource}, into a heap array, into a direct
+ * buffer through a heap array, and into a direct buffer with {@link
+ * FileDataSource#read(ByteBuffer)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class FileDataSourceReadBenchmark {
+
+  private static final int FILE_SIZE = 32 * 1024 * 1024;
+
+  /** The number of bytes requested by each read. */
+  @Param({"16384", "65536"})
+  public int readSize;
+
+  /**
+   * How the data is read. One of {@code array}, {@code arrayToDirectBuffer} or {@code
+   * directBuffer}.
+   */
+  @Param({"array", "arrayToDirectBuffer", "directBuffer"})
+  public String readMode;
+
+  private File file;
+  private FileDataSource dataSource;
+  private byte[] array;
+  private ByteBuffer directBuffer;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = File.createTempFile("FileDataSourceReadBenchmark", /* suffix= */ null);
+    byte[] data = new byte[FILE_SIZE];
+    new Random(/* seed= */ 0).nextBytes(data);
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(data);
+    }
+    dataSource = new FileDataSource();
+    array = new byte[readSize];
+    directBuffer = ByteBuffer.allocateDirect(readSize);
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public void read(ByteCounter byteCounter) throws IOException {
+    dataSource.open(new DataSpec(Uri.fromFile(file)));
+    try {
+      int bytesRead = 0;
+      while (bytesRead != C.RESULT_END_OF_INPUT) {
+        bytesRead = readOnce();
+        if (bytesRead > 0) {
+          byteCounter.bytes += bytesRead;
+        }
+      }
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private int readOnce() throws IOException {
+    switch (readMode) {
+      case "array":
+        return dataSource.read(array, /* offset= */ 0, readSize);
+      case "arrayToDirectBuffer":
+        int bytesRead = dataSource.read(array, /* offset= */ 0, readSize);
+        if (bytesRead > 0) {
+          directBuffer.clear();
+          directBuffer.put(array, /* offset= */ 0, bytesRead);
+        }
+        return bytesRead;
+      case "directBuffer":
+        directBuffer.clear();
+        return dataSource.read(directBuffer);
+      default:
+        throw new IllegalStateException(readMode);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import android.net.Uri;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist;
+import androidx.media3.exoplayer.hls.playlist.HlsMultivariantPlaylist;
+import androidx.media3.exoplayer.hls.playlist.HlsPlaylist;
+import androidx.media3.exoplayer.hls.playlist.HlsPlaylistParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks parsing a refreshed live HLS media playlist with {@link HlsPlaylistParser}, where two
+ * segments have been added to and removed from the sliding window since the previous refresh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class HlsMediaPlaylistRefreshBenchmark {
+
+  private static final long PREVIOUS_MEDIA_SEQUENCE = 1000;
+  private static final int NEW_SEGMENT_COUNT = 2;
+
+  /** The number of segments in the playlist. */
+  @Param({"1000", "5000", "20000"})
+  public int segmentCount;
+
+  /** Whether the segments that are unchanged since the previous refresh are reused. */
+  @Param({"false", "true"})
+  public boolean reuseUnchangedSegments;
+
+  private Uri uri;
+  private HlsMediaPlaylist previousPlaylist;
+  private byte[] data;
+
+  @Setup
+  public void setUp() throws IOException {
+    uri = Uri.parse("https://example.com/live.m3u8");
+    byte[] previousData =
+        Util.getUtf8Bytes(buildLiveMediaPlaylist(PREVIOUS_MEDIA_SEQUENCE, segmentCount));
+    previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser().parse(uri, new ByteArrayInputStream(previousData));
+    data =
+        Util.getUtf8Bytes(
+            buildLiveMediaPlaylist(PREVIOUS_MEDIA_SEQUENCE + NEW_SEGMENT_COUNT, segmentCount));
+  }
+
+  @Benchmark
+  public HlsPlaylist parse(ByteCounter byteCounter) throws IOException {
+    HlsPlaylist playlist =
+        new HlsPlaylistParser(
+                HlsMultivariantPlaylist.EMPTY, previousPlaylist, reuseUnchangedSegments)
+            .parse(uri, new ByteArrayInputStream(data));
+    byteCounter.bytes += data.length;
+    return playlist;
+  }
+
+  private static String buildLiveMediaPlaylist(long mediaSequence, int segmentCount) {
+    StringBuilder playlist = new StringBuilder();
+    playlist
+        .append("#EXTM3U\n")
+        .append("#EXT-X-VERSION:6\n")
+        .append("#EXT-X-TARGETDURATION:6\n")
+        .append("#EXT-X-MEDIA-SEQUENCE:")
+        .append(mediaSequence)
+        .append('\n')
+        .append("#EXT-X-DISCONTINUITY-SEQUENCE:")
+        .append(mediaSequence / 100)
+        .append('\n')
+        .append("#EXT-X-INDEPENDENT-SEGMENTS\n")
+        .append("#EXT-X-PROGRAM-DATE-TIME:2024-01-01T00:00:00.000Z\n")
+        .append("#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key\",IV=0x1234\n");
+    for (int i = 0; i < segmentCount; i++) {
+      long segmentMediaSequence = mediaSequence + i;
+      if (i > 0 && segmentMediaSequence % 100 == 0) {
+        playlist.append("#EXT-X-DISCONTINUITY\n");
+      }
+      playlist
+          .append("#EXTINF:6.006,\n")
+          .append("https://cdn.example.com/video/1080p/segment")
+          .append(segmentMediaSequence)
+          .append(".ts\n");
+    }
+    return playlist.toString();
+  }
+}
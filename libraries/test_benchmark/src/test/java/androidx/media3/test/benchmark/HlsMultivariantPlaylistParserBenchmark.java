@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import android.net.Uri;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.hls.playlist.HlsPlaylist;
+import androidx.media3.exoplayer.hls.playlist.HlsPlaylistParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks parsing HLS multivariant playlists with {@link HlsPlaylistParser}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class HlsMultivariantPlaylistParserBenchmark {
+
+  private static final int AUDIO_RENDITION_COUNT = 4;
+
+  /** The number of variants in the playlist. */
+  @Param({"10", "100", "500"})
+  public int variantCount;
+
+  private Uri uri;
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    uri = Uri.parse("https://example.com/multivariant.m3u8");
+    data = Util.getUtf8Bytes(buildMultivariantPlaylist(variantCount));
+  }
+
+  @Benchmark
+  public HlsPlaylist parse(ByteCounter byteCounter) throws IOException {
+    HlsPlaylist playlist = new HlsPlaylistParser().parse(uri, new ByteArrayInputStream(data));
+    byteCounter.bytes += data.length;
+    return playlist;
+  }
+
+  private static String buildMultivariantPlaylist(int variantCount) {
+    StringBuilder playlist = new StringBuilder();
+    playlist.append("#EXTM3U\n").append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+    for (int i = 0; i < AUDIO_RENDITION_COUNT; i++) {
+      playlist
+          .append("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"audio\",LANGUAGE=\"en")
+          .append(i)
+          .append("\",NAME=\"Audio ")
+          .append(i)
+          .append("\",AUTOSELECT=YES,DEFAULT=")
+          .append(i == 0 ? "YES" : "NO")
+          .append(",CHANNELS=\"2\",URI=\"audio/")
+          .append(i)
+          .append(".m3u8\"\n");
+    }
+    for (int i = 0; i < variantCount; i++) {
+      playlist
+          .append("#EXT-X-STREAM-INF:BANDWIDTH=")
+          .append(200_000 + i * 10_000)
+          .append(",AVERAGE-BANDWIDTH=")
+          .append(180_000 + i * 10_000)
+          .append(",CODECS=\"avc1.640028,mp4a.40.2\",RESOLUTION=1920x1080,FRAME-RATE=29.970")
+          .append(",AUDIO=\"audio\",CLOSED-CAPTIONS=NONE\n")
+          .append("https://cdn.example.com/video/")
+          .append(i)
+          .append("/media.m3u8\n");
+    }
+    return playlist.toString();
+  }
+}
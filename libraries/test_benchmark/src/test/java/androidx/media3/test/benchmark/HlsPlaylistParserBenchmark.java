@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import android.net.Uri;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.hls.playlist.HlsPlaylist;
+import androidx.media3.exoplayer.hls.playlist.HlsPlaylistParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks parsing HLS media playlists with {@link HlsPlaylistParser}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class HlsPlaylistParserBenchmark {
+
+  /** The number of segments in the playlist. */
+  @Param({"100", "1000", "10000"})
+  public int segmentCount;
+
+  private Uri uri;
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    uri = Uri.parse("https://example.com/media.m3u8");
+    data = Util.getUtf8Bytes(buildMediaPlaylist(segmentCount));
+  }
+
+  @Benchmark
+  public HlsPlaylist parse(ByteCounter byteCounter) throws IOException {
+    HlsPlaylist playlist = new HlsPlaylistParser().parse(uri, new ByteArrayInputStream(data));
+    byteCounter.bytes += data.length;
+    return playlist;
+  }
+
+  private static String buildMediaPlaylist(int segmentCount) {
+    StringBuilder playlist = new StringBuilder();
+    playlist
+        .append("#EXTM3U\n")
+        .append("#EXT-X-VERSION:6\n")
+        .append("#EXT-X-TARGETDURATION:6\n")
+        .append("#EXT-X-MEDIA-SEQUENCE:1000\n")
+        .append("#EXT-X-INDEPENDENT-SEGMENTS\n")
+        .append("#EXT-X-PROGRAM-DATE-TIME:2024-01-01T00:00:00.000Z\n")
+        .append("#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key\",IV=0x1234\n");
+    for (int i = 0; i < segmentCount; i++) {
+      if (i > 0 && i % 100 == 0) {
+        playlist.append("#EXT-X-DISCONTINUITY\n");
+      }
+      playlist
+          .append("#EXTINF:6.006,\n")
+          .append("https://cdn.example.com/video/1080p/segment")
+          .append(i)
+          .append(".ts\n");
+    }
+    playlist.append("#EXT-X-ENDLIST\n");
+    return playlist.toString();
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.mkv.MatroskaExtractor;
+import androidx.media3.extractor.text.SubtitleParser;
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks {@link MatroskaExtractor}. */
+public class MatroskaExtractorBenchmark extends ExtractorBenchmark {
+
+  @Param({"media/mkv/sample.mkv", "media/mkv/full_blocks.mkv", "media/mkv/sample_with_srt.mkv"})
+  public String assetPath;
+
+  @Override
+  protected String getAssetPath() {
+    return assetPath;
+  }
+
+  @Override
+  protected Extractor createExtractor() {
+    return new MatroskaExtractor(SubtitleParser.Factory.UNSUPPORTED);
+  }
+}
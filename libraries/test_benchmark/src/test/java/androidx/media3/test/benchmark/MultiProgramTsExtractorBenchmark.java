@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.TimestampAdjuster;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.text.SubtitleParser;
+import androidx.media3.extractor.ts.DefaultTsPayloadReaderFactory;
+import androidx.media3.extractor.ts.TsExtractor;
+import com.google.common.collect.ImmutableSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks {@link TsExtractor} in {@link TsExtractor#MODE_MULTI_PMT} on a stream with three
+ * programs, extracting either all of the programs or only one of them, and parsing the payloads of
+ * different programs either on the loading thread or in parallel.
+ */
+public class MultiProgramTsExtractorBenchmark extends ExtractorBenchmark {
+
+  @Param({"false", "true"})
+  public boolean extractSingleProgram;
+
+  @Param({"false", "true"})
+  public boolean parseInParallel;
+
+  @Nullable private ExecutorService payloadExecutor;
+
+  @Setup
+  public void setUpPayloadExecutor() {
+    if (parseInParallel) {
+      payloadExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+  }
+
+  @TearDown
+  public void tearDownPayloadExecutor() {
+    if (payloadExecutor != null) {
+      payloadExecutor.shutdown();
+      payloadExecutor = null;
+    }
+  }
+
+  @Override
+  protected String getAssetPath() {
+    return "media/ts/sample_multi_program.ts";
+  }
+
+  @Override
+  protected Extractor createExtractor() {
+    return new TsExtractor(
+        TsExtractor.MODE_MULTI_PMT,
+        /* extractorFlags= */ 0,
+        SubtitleParser.Factory.UNSUPPORTED,
+        new TimestampAdjuster(0),
+        new DefaultTsPayloadReaderFactory(),
+        TsExtractor.DEFAULT_TIMESTAMP_SEARCH_BYTES,
+        /* programNumbers= */ extractSingleProgram ? ImmutableSet.of(1) : ImmutableSet.of(),
+        payloadExecutor);
+  }
+}
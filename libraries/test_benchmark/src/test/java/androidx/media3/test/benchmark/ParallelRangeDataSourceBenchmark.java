@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.DefaultHttpDataSource;
+import androidx.media3.datasource.ParallelRangeDataSource;
+import androidx.media3.test.utils.WebServerDispatcher;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading a progressive file from a local HTTP server with {@link
+ * ParallelRangeDataSource}, with different numbers of parallel requests.
+ *
+ * <p>Each response is delayed and its body is throttled, to simulate a network with a round trip
+ * latency and connections whose throughput is limited by their congestion window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 4)
+@Fork(0)
+public class ParallelRangeDataSourceBenchmark {
+
+  private static final String PATH = "/media.mp4";
+  private static final int FILE_SIZE = 4 * 1024 * 1024;
+  private static final int CHUNK_SIZE = 512 * 1024;
+  private static final long LATENCY_MS = 50;
+  private static final long THROTTLE_BYTES_PER_PERIOD = 32 * 1024;
+  private static final long THROTTLE_PERIOD_MS = 10;
+
+  /** The maximum number of concurrent range requests. */
+  @Param({"1", "2", "4", "8"})
+  public int maxParallelRequests;
+
+  private MockWebServer server;
+  private DataSource dataSource;
+  private byte[] buffer;
+
+  @Setup
+  public void setUp() throws IOException {
+    byte[] data = new byte[FILE_SIZE];
+    new Random(/* seed= */ 0).nextBytes(data);
+    WebServerDispatcher webServerDispatcher =
+        WebServerDispatcher.forResources(
+            ImmutableList.of(
+                new WebServerDispatcher.Resource.Builder()
+                    .setPath(PATH)
+                    .setData(data)
+                    .supportsRangeRequests(true)
+                    .build()));
+    server = new MockWebServer();
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            return webServerDispatcher
+                .dispatch(request)
+                .setHeadersDelay(LATENCY_MS, TimeUnit.MILLISECONDS)
+                .throttleBody(
+                    THROTTLE_BYTES_PER_PERIOD, THROTTLE_PERIOD_MS, TimeUnit.MILLISECONDS);
+          }
+        });
+    server.start();
+    dataSource =
+        new ParallelRangeDataSource.Factory(new DefaultHttpDataSource.Factory())
+            .setChunkSize(CHUNK_SIZE)
+            .setMaxParallelRequests(maxParallelRequests)
+            .createDataSource();
+    buffer = new byte[16 * 1024];
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Benchmark
+  public void read(ByteCounter byteCounter) throws IOException {
+    dataSource.open(new DataSpec(Uri.parse(server.url(PATH).toString())));
+    try {
+      int bytesRead = 0;
+      while (bytesRead != C.RESULT_END_OF_INPUT) {
+        bytesRead = dataSource.read(buffer, /* offset= */ 0, buffer.length);
+        if (bytesRead > 0) {
+          byteCounter.bytes += bytesRead;
+        }
+      }
+    } finally {
+      dataSource.close();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import static androidx.media3.common.util.Assertions.checkState;
+
+import android.content.Context;
+import androidx.media3.common.C;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.cache.CacheSpan;
+import androidx.media3.datasource.cache.NoOpCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the time taken for a {@link SimpleCache} holding many cache files to become available
+ * for use, with and without a database.
+ *
+ * <p>Each operation creates a cache instance on the same populated directory, and queries it, which
+ * blocks until the cache has been initialized.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class SimpleCacheStartupBenchmark {
+
+  private static final int SPANS_PER_KEY = 10;
+  private static final String KEY_PREFIX = "https://example.test/media/";
+
+  /**
+   * Where the cache index is stored. {@code database} initializes the cache from the file metadata
+   * in the database, and {@code legacy} by scanning the cache directory.
+   */
+  @Param({"database", "legacy"})
+  public String index;
+
+  /** The number of cache files. */
+  @Param({"1000", "10000", "50000"})
+  public int spanCount;
+
+  private File cacheDir;
+  private StandaloneDatabaseProvider databaseProvider;
+  private SimpleCache cache;
+
+  @Setup
+  public void setUp() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    context.deleteDatabase(StandaloneDatabaseProvider.DATABASE_NAME);
+    databaseProvider = new StandaloneDatabaseProvider(context);
+    cacheDir = Files.createTempDirectory("SimpleCacheStartupBenchmark").toFile();
+    SimpleCache populatingCache = createCache();
+    for (int i = 0; i < spanCount; i++) {
+      String key = KEY_PREFIX + (i / SPANS_PER_KEY);
+      long position = i % SPANS_PER_KEY;
+      CacheSpan holeSpan = populatingCache.startReadWrite(key, position, /* length= */ 1);
+      File file = populatingCache.startFile(key, position, /* length= */ 1);
+      try (FileOutputStream outputStream = new FileOutputStream(file)) {
+        outputStream.write(0);
+      }
+      populatingCache.commitFile(file, /* length= */ 1);
+      populatingCache.releaseHoleSpan(holeSpan);
+    }
+    populatingCache.release();
+  }
+
+  @TearDown
+  public void tearDown() {
+    SimpleCache.delete(cacheDir, databaseProvider);
+    databaseProvider.close();
+  }
+
+  @TearDown(Level.Invocation)
+  public void releaseCache() {
+    cache.release();
+  }
+
+  @Benchmark
+  public void startCache() {
+    cache = createCache();
+    checkState(cache.getCachedBytes(KEY_PREFIX + 0, /* position= */ 0, C.LENGTH_UNSET) > 0);
+  }
+
+  private SimpleCache createCache() {
+    return index.equals("database")
+        ? new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider)
+        : new SimpleCache(
+            cacheDir,
+            new NoOpCacheEvictor(),
+            /* databaseProvider= */ null,
+            /* legacyIndexSecretKey= */ null,
+            /* legacyIndexEncrypt= */ false,
+            /* preferLegacyIndex= */ false);
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static androidx.media3.common.util.Assertions.checkState;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.cache.Cache;
+import androidx.media3.datasource.cache.CacheDataSink;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheSpan;
+import androidx.media3.datasource.cache.NoOpCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+import androidx.media3.datasource.cache.SlabCache;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks writing and reading small spans through {@link CacheDataSink} and {@link
+ * CacheDataSource}, for a {@link SimpleCache} and a {@link SlabCache} that already hold many spans.
+ *
+ * <p>Each write operation caches one new span, and each read operation reads one existing span
+ * chosen at random. Spans are {@value #SPAN_LENGTH} bytes, as for the partial segments of low
+ * latency streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class SlabCacheBenchmark {
+
+  private static final int SPAN_LENGTH = 1024;
+  private static final int SPANS_PER_KEY = 100;
+  private static final String KEY_PREFIX = "https://example.test/media/";
+  private static final Uri URI = Uri.parse(KEY_PREFIX);
+
+  /** The cache implementation, either {@code simple} or {@code slab}. */
+  @Param({"simple", "slab"})
+  public String cacheType;
+
+  /** The number of spans in the cache before the benchmark starts. */
+  @Param({"10000", "100000", "1000000"})
+  public int spanCount;
+
+  private File cacheDir;
+  private StandaloneDatabaseProvider databaseProvider;
+  private Cache cache;
+  private CacheDataSink dataSink;
+  private CacheDataSource dataSource;
+  private byte[] data;
+  private byte[] readBuffer;
+  private Random random;
+  private int nextSpanIndex;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    Context context = ApplicationProvider.getApplicationContext();
+    context.deleteDatabase(StandaloneDatabaseProvider.DATABASE_NAME);
+    databaseProvider = new StandaloneDatabaseProvider(context);
+    cacheDir = Files.createTempDirectory("SlabCacheBenchmark").toFile();
+    cache =
+        cacheType.equals("slab")
+            ? new SlabCache(cacheDir, new NoOpCacheEvictor())
+            : new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
+    dataSink = new CacheDataSink(cache, CacheDataSink.DEFAULT_FRAGMENT_SIZE);
+    dataSource = new CacheDataSource(cache, /* upstreamDataSource= */ null);
+    data = new byte[SPAN_LENGTH];
+    readBuffer = new byte[SPAN_LENGTH];
+    random = new Random(/* seed= */ 0);
+    random.nextBytes(data);
+    for (int i = 0; i < spanCount; i++) {
+      writeSpan();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    cache.release();
+    SimpleCache.delete(cacheDir, databaseProvider);
+    databaseProvider.close();
+  }
+
+  @Benchmark
+  public void writeSpan() throws IOException, InterruptedException {
+    DataSpec dataSpec = createDataSpec(nextSpanIndex++);
+    CacheSpan holeSpan =
+        cache.startReadWrite(checkNotNull(dataSpec.key), dataSpec.position, SPAN_LENGTH);
+    try {
+      dataSink.open(dataSpec);
+      dataSink.write(data, /* offset= */ 0, SPAN_LENGTH);
+      dataSink.close();
+    } finally {
+      cache.releaseHoleSpan(holeSpan);
+    }
+  }
+
+  @Benchmark
+  public int readSpan() throws IOException {
+    int bytesRead = 0;
+    try {
+      dataSource.open(createDataSpec(random.nextInt(spanCount)));
+      while (bytesRead < SPAN_LENGTH) {
+        int result = dataSource.read(readBuffer, bytesRead, SPAN_LENGTH - bytesRead);
+        checkState(result != C.RESULT_END_OF_INPUT);
+        bytesRead += result;
+      }
+    } finally {
+      dataSource.close();
+    }
+    return bytesRead;
+  }
+
+  private static DataSpec createDataSpec(int spanIndex) {
+    return new DataSpec.Builder()
+        .setUri(URI)
+        .setKey(KEY_PREFIX + (spanIndex / SPANS_PER_KEY))
+        .setPosition((long) (spanIndex % SPANS_PER_KEY) * SPAN_LENGTH)
+        .setLength(SPAN_LENGTH)
+        .build();
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.benchmark;
+
+import androidx.media3.common.C;
+import androidx.media3.common.audio.AudioProcessingPipeline;
+import androidx.media3.common.audio.AudioProcessor;
+import androidx.media3.common.audio.AudioProcessor.AudioFormat;
+import androidx.media3.common.audio.SonicAudioProcessor;
+import androidx.media3.common.audio.ToInt16PcmAudioProcessor;
+import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks changing the speed of one second of audio with a {@link SonicAudioProcessor}, for
+ * each sample format and a range of channel counts.
+ *
+ * <p>Each operation processes one second of audio, so the throughput is the number of seconds of
+ * audio that are processed per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class SonicAudioProcessorBenchmark {
+
+  private static final int SAMPLE_RATE_HZ = 48_000;
+  private static final float SPEED = 1.5f;
+
+  /**
+   * The sample format of the input audio. {@code "floatViaInt16"} is float audio that's converted
+   * to 16-bit integer samples before the speed is changed, as was needed before {@link
+   * SonicAudioProcessor} supported float samples.
+   */
+  @Param({"int16", "float", "floatViaInt16"})
+  public String sampleFormat;
+
+  @Param({"2", "6", "8"})
+  public int channelCount;
+
+  private AudioProcessingPipeline pipeline;
+  private ByteBuffer inputBuffer;
+
+  @Setup
+  public void setUp() throws AudioProcessor.UnhandledAudioFormatException {
+    boolean isFloat = !sampleFormat.equals("int16");
+    AudioFormat inputAudioFormat =
+        new AudioFormat(
+            SAMPLE_RATE_HZ, channelCount, isFloat ? C.ENCODING_PCM_FLOAT : C.ENCODING_PCM_16BIT);
+    SonicAudioProcessor sonicAudioProcessor = new SonicAudioProcessor();
+    sonicAudioProcessor.setSpeed(SPEED);
+    pipeline =
+        new AudioProcessingPipeline(
+            sampleFormat.equals("floatViaInt16")
+                ? ImmutableList.of(new ToInt16PcmAudioProcessor(), sonicAudioProcessor)
+                : ImmutableList.of(sonicAudioProcessor));
+    pipeline.configure(inputAudioFormat);
+    pipeline.flush();
+
+    // A tone with a different phase in each channel.
+    inputBuffer =
+        ByteBuffer.allocateDirect(SAMPLE_RATE_HZ * inputAudioFormat.bytesPerFrame)
+            .order(ByteOrder.nativeOrder());
+    for (int i = 0; i < SAMPLE_RATE_HZ; i++) {
+      for (int channel = 0; channel < channelCount; channel++) {
+        double sample = 0.5 * Math.sin(2 * Math.PI * 220 * i / SAMPLE_RATE_HZ + channel);
+        if (isFloat) {
+          inputBuffer.putFloat((float) sample);
+        } else {
+          inputBuffer.putShort((short) (sample * Short.MAX_VALUE));
+        }
+      }
+    }
+    inputBuffer.flip();
+  }
+
+  @Benchmark
+  public long changeSpeed() {
+    pipeline.flush();
+    inputBuffer.rewind();
+    long outputBytes = 0;
+    while (inputBuffer.hasRemaining()) {
+      pipeline.queueInput(inputBuffer);
+      outputBytes += drainOutput();
+    }
+    pipeline.queueEndOfStream();
+    while (!pipeline.isEnded()) {
+      outputBytes += drainOutput();
+    }
+    return outputBytes;
+  }
+
+  private int drainOutput() {
+    ByteBuffer outputBuffer = pipeline.getOutput();
+    int outputBytes = outputBuffer.remaining();
+    outputBuffer.position(outputBuffer.limit());
+    return outputBytes;
+  }
+}
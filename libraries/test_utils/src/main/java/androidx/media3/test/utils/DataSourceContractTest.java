@@ -47,6 +47,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.ForOverride;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -223,6 +224,59 @@ public abstract class DataSourceContractTest {
         });
   }
 
+  @Test
+  public void unboundedDataSpec_readIntoDirectByteBuffer() throws Exception {
+    forAllTestResourcesAndDataSources(
+        (resource, dataSource) -> {
+          try {
+            dataSource.open(new DataSpec(resource.getUri()));
+            int expectedLength = resource.getExpectedBytes().length;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(expectedLength + 2);
+            buffer.limit(expectedLength + 1);
+            buffer.position(1);
+
+            while (buffer.hasRemaining()) {
+              if (dataSource.read(buffer) == C.RESULT_END_OF_INPUT) {
+                break;
+              }
+            }
+
+            assertThat(buffer.position()).isEqualTo(expectedLength + 1);
+            assertThat(buffer.limit()).isEqualTo(expectedLength + 1);
+            byte[] data = new byte[expectedLength];
+            buffer.position(1);
+            buffer.get(data);
+            assertThat(data).isEqualTo(resource.getExpectedBytes());
+          } finally {
+            dataSource.close();
+          }
+        });
+  }
+
+  @Test
+  public void dataSpecWithLength_readIntoDirectByteBuffer_readsExpectedRange() throws Exception {
+    forAllTestResourcesAndDataSources(
+        (resource, dataSource) -> {
+          try {
+            dataSource.open(new DataSpec.Builder().setUri(resource.getUri()).setLength(4).build());
+            ByteBuffer buffer = ByteBuffer.allocateDirect(resource.getExpectedBytes().length);
+
+            int bytesRead = 0;
+            while (bytesRead != C.RESULT_END_OF_INPUT) {
+              bytesRead = dataSource.read(buffer);
+            }
+
+            assertThat(buffer.position()).isEqualTo(4);
+            byte[] data = new byte[4];
+            buffer.flip();
+            buffer.get(data);
+            assertThat(data).isEqualTo(Arrays.copyOf(resource.getExpectedBytes(), 4));
+          } finally {
+            dataSource.close();
+          }
+        });
+  }
+
   @Test
   public void dataSpecWithPosition_readUntilEnd() throws Exception {
     forAllTestResourcesAndDataSources(